@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.util.BDecoder;
+import com.biglybt.core.util.BEncoder;
+
+/**
+ * Decode/encode of synthetic torrent metadata - single file, a typical multi-file torrent and one with
+ * a large file list
+ */
+
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class
+BEncodingBenchmark
+{
+	private static final long	TOTAL_SIZE	= 4L*1024*1024*1024;
+
+	@Param({ "1", "100", "10000" })
+	public int	files;
+
+	private Map<String,Object>	map;
+	private byte[]				encoded;
+
+	@Setup
+	public void
+	setup()
+
+		throws Exception
+	{
+		BenchmarkSupport.init();
+
+			// fixed 4GB total so the piece hashes are the same size whatever the file count
+
+		map = SyntheticTorrent.createMap( new Random( 0 ), "bencoding", files, TOTAL_SIZE/files, 256*1024 );
+
+		encoded = BEncoder.encode( map );
+	}
+
+	@Benchmark
+	public Map<String,Object>
+	decode()
+
+		throws Exception
+	{
+		return( BDecoder.decode( encoded ));
+	}
+
+	@Benchmark
+	public byte[]
+	encode()
+
+		throws Exception
+	{
+		return( BEncoder.encode( map ));
+	}
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.networkmanager.Transport;
+import com.biglybt.core.peermanager.messaging.Message;
+import com.biglybt.core.peermanager.messaging.bittorrent.BTMessageDecoder;
+import com.biglybt.core.peermanager.messaging.bittorrent.BTMessageFactory;
+
+/**
+ * Stream decoding of BitTorrent messages from a synthetic connection that endlessly replays a fixed
+ * sequence of messages. Each operation decodes (and releases) one read's worth of data.
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class
+BTMessageDecoderBenchmark
+{
+	private static final byte	BT_HAVE		= 4;
+	private static final byte	BT_REQUEST	= 6;
+	private static final byte	BT_PIECE	= 7;
+
+	private static final int	BLOCK_SIZE	= 16*1024;
+
+		/**
+		 * control - have/request traffic only, piece - block transfer with the odd have
+		 */
+
+	@Param({ "control", "piece" })
+	public String	traffic;
+
+	@Param({ "65536" })
+	public int		readSize;
+
+	private ByteBuffer			stream;
+	private Transport			transport;
+	private BTMessageDecoder	decoder;
+
+	@Setup
+	public void
+	setup()
+	{
+		BenchmarkSupport.init();
+
+		BTMessageFactory.init();
+
+		Random	random = new Random( 0 );
+
+		ByteBuffer	buffer = ByteBuffer.allocate( 1024*1024 );
+
+		if ( traffic.equals( "control" )){
+
+			while( buffer.remaining() >= 17 ){
+
+				if ( random.nextBoolean()){
+
+					buffer.putInt( 5 );
+					buffer.put( BT_HAVE );
+					buffer.putInt( random.nextInt( 10000 ));
+
+				}else{
+
+					buffer.putInt( 13 );
+					buffer.put( BT_REQUEST );
+					buffer.putInt( random.nextInt( 10000 ));
+					buffer.putInt( random.nextInt( 16 ) * BLOCK_SIZE );
+					buffer.putInt( BLOCK_SIZE );
+				}
+			}
+		}else{
+
+			byte[]	block = new byte[ BLOCK_SIZE ];
+
+			random.nextBytes( block );
+
+			while( buffer.remaining() >= 13 + BLOCK_SIZE + 9 ){
+
+				buffer.putInt( 9 + BLOCK_SIZE );
+				buffer.put( BT_PIECE );
+				buffer.putInt( random.nextInt( 10000 ));
+				buffer.putInt( random.nextInt( 16 ) * BLOCK_SIZE );
+				buffer.put( block );
+
+				buffer.putInt( 5 );
+				buffer.put( BT_HAVE );
+				buffer.putInt( random.nextInt( 10000 ));
+			}
+		}
+
+		buffer.flip();
+
+		stream = buffer;
+
+		transport =
+			BenchmarkSupport.stub(
+				Transport.class,
+				(method,args)->{
+					if ( method.equals( "read" )){
+
+						return( read((ByteBuffer[])args[0], (Integer)args[1], (Integer)args[2] ));
+					}
+
+					return( BenchmarkSupport.DEFAULT );
+				});
+
+		decoder = new BTMessageDecoder();
+	}
+
+	@TearDown
+	public void
+	tearDown()
+	{
+		decoder.destroy();
+	}
+
+	private long
+	read(
+		ByteBuffer[]	buffers,
+		int				offset,
+		int				length )
+	{
+		long	total = 0;
+
+		for ( int i=offset;i<offset+length;i++){
+
+			ByteBuffer	target = buffers[i];
+
+			if ( target == null ){
+
+				continue;
+			}
+
+			while( target.hasRemaining()){
+
+				if ( !stream.hasRemaining()){
+
+						// stream only contains complete messages so wrapping keeps us aligned
+
+					stream.rewind();
+				}
+
+				int	chunk = Math.min( target.remaining(), stream.remaining());
+
+				int	limit = stream.limit();
+
+				stream.limit( stream.position() + chunk );
+
+				target.put( stream );
+
+				stream.limit( limit );
+
+				total += chunk;
+			}
+		}
+
+		return( total );
+	}
+
+	@Benchmark
+	public int
+	decode()
+
+		throws Exception
+	{
+		int	read = decoder.performStreamDecode( transport, readSize );
+
+		Message[]	messages = decoder.removeDecodedMessages();
+
+		if ( messages != null ){
+
+			for ( Message message: messages ){
+
+				message.destroy();
+			}
+		}
+
+		return( read );
+	}
+}
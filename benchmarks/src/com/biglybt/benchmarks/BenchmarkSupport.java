@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Locale;
+
+import com.biglybt.core.util.SystemProperties;
+
+/**
+ * Shared setup for the benchmarks. Core classes pick up configuration lazily so {@link #init()} must be
+ * called before any of them are touched to keep the benchmarks away from the user's real config.
+ * <p>
+ * The core is built around large interfaces (peer manager, peers, disk manager, DHT control...) so
+ * synthetic collaborators are created with {@link #stub(Class, Answer)} which only needs to implement the
+ * methods exercised by the path being measured.
+ */
+
+public class
+BenchmarkSupport
+{
+	public static final Object	DEFAULT	= new Object();
+
+	private static boolean	initialised;
+
+	public static synchronized void
+	init()
+	{
+		if ( initialised ){
+
+			return;
+		}
+
+		initialised = true;
+
+		File	dir = createTempDir( "config" );
+
+		System.setProperty( SystemProperties.SYSPROP_CONFIG_PATH, dir.getAbsolutePath());
+
+			// the core's security manager otherwise blocks the forked benchmark VM from exiting
+
+		System.setProperty( SystemProperties.SYSPROP_SECURITY_MANAGER_PERMITEXIT, "true" );
+
+		Locale.setDefault( Locale.ENGLISH );
+	}
+
+	public static File
+	createTempDir(
+		String		name )
+	{
+		try{
+			File	dir = File.createTempFile( "biglybt-bm-" + name, "" );
+
+			dir.delete();
+
+			if ( !dir.mkdirs()){
+
+				throw( new RuntimeException( "Failed to create " + dir ));
+			}
+
+			dir.deleteOnExit();
+
+			return( dir );
+
+		}catch( Throwable e ){
+
+			throw( new RuntimeException( e ));
+		}
+	}
+
+	public interface
+	Answer
+	{
+			/**
+			 * @return the result or {@link BenchmarkSupport#DEFAULT} to return the default for the method's type
+			 */
+
+		public Object
+		answer(
+			String		method,
+			Object[]	args )
+
+			throws Throwable;
+	}
+
+		/**
+		 * Creates an instance of the interface backed by the answer. Unanswered methods return null/false/zero,
+		 * equals/hashCode are identity based
+		 */
+
+	@SuppressWarnings("unchecked")
+	public static <T> T
+	stub(
+		Class<T>		type,
+		final Answer	answer )
+	{
+		InvocationHandler handler =
+			new InvocationHandler()
+			{
+				@Override
+				public Object
+				invoke(
+					Object		proxy,
+					Method		method,
+					Object[]	args )
+
+					throws Throwable
+				{
+					String	name = method.getName();
+
+					if ( method.getDeclaringClass() == Object.class ){
+
+						if ( name.equals( "equals" )){
+
+							return( proxy == args[0] );
+
+						}else if ( name.equals( "hashCode" )){
+
+							return( System.identityHashCode( proxy ));
+
+						}else{
+
+							return( type.getSimpleName() + "@" + Integer.toHexString( System.identityHashCode( proxy )));
+						}
+					}
+
+					Object	result = answer==null?DEFAULT:answer.answer( name, args==null?new Object[0]:args );
+
+					if ( result != DEFAULT ){
+
+						return( result );
+					}
+
+					return( getDefault( method.getReturnType()));
+				}
+			};
+
+		return((T)Proxy.newProxyInstance( type.getClassLoader(), new Class[]{ type }, handler ));
+	}
+
+	private static Object
+	getDefault(
+		Class<?>	type )
+	{
+		if ( !type.isPrimitive() || type == void.class ){
+
+			return( null );
+
+		}else if ( type == boolean.class ){
+
+			return( false );
+
+		}else if ( type == long.class ){
+
+			return( 0L );
+
+		}else if ( type == int.class ){
+
+			return( 0 );
+
+		}else if ( type == short.class ){
+
+			return((short)0 );
+
+		}else if ( type == byte.class ){
+
+			return((byte)0 );
+
+		}else if ( type == char.class ){
+
+			return((char)0 );
+
+		}else if ( type == float.class ){
+
+			return( 0f );
+
+		}else{
+
+			return( 0d );
+		}
+	}
+}
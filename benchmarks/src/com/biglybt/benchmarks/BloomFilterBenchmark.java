@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.util.bloom.BloomFilter;
+import com.biglybt.core.util.bloom.BloomFilterFactory;
+
+/**
+ * Bloom filters are used for per-IP connection/request limiting so the keys are address sized
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class
+BloomFilterBenchmark
+{
+	private static final int	KEY_COUNT	= 4096;		// power of 2
+
+	@Param({ "addOnly", "addRemove4Bit", "addRemove8Bit" })
+	public String	type;
+
+	@Param({ "10000", "100000" })
+	public int		size;
+
+	private BloomFilter	filter;
+
+	private byte[][]	present;
+	private byte[][]	absent;
+
+	private int			next;
+
+	@Setup
+	public void
+	setup()
+	{
+		BenchmarkSupport.init();
+
+		if ( type.equals( "addOnly" )){
+
+			filter = BloomFilterFactory.createAddOnly( size );
+
+		}else if ( type.equals( "addRemove4Bit" )){
+
+			filter = BloomFilterFactory.createAddRemove4Bit( size );
+
+		}else{
+
+			filter = BloomFilterFactory.createAddRemove8Bit( size );
+		}
+
+		Random	random = new Random( 0 );
+
+		present	= new byte[KEY_COUNT][];
+		absent	= new byte[KEY_COUNT][];
+
+		for ( int i=0;i<KEY_COUNT;i++){
+
+			present[i]	= new byte[6];
+			absent[i]	= new byte[6];
+
+			random.nextBytes( present[i] );
+			random.nextBytes( absent[i] );
+
+			filter.add( present[i] );
+		}
+	}
+
+	@Benchmark
+	public boolean
+	containsHit()
+	{
+		return( filter.contains( present[ next++ & ( KEY_COUNT - 1 )]));
+	}
+
+	@Benchmark
+	public boolean
+	containsMiss()
+	{
+		return( filter.contains( absent[ next++ & ( KEY_COUNT - 1 )]));
+	}
+
+	@Benchmark
+	public int
+	addRemove()
+	{
+		byte[]	key = absent[ next++ & ( KEY_COUNT - 1 )];
+
+		int	res = filter.add( key );
+
+		if ( !type.equals( "addOnly" )){
+
+			filter.remove( key );
+		}
+
+		return( res );
+	}
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.diskmanager.cache.CacheFile;
+import com.biglybt.core.diskmanager.cache.CacheFileManager;
+import com.biglybt.core.diskmanager.cache.CacheFileManagerFactory;
+import com.biglybt.core.diskmanager.cache.CacheFileOwner;
+import com.biglybt.core.diskmanager.cache.impl.CacheEntry;
+import com.biglybt.core.diskmanager.cache.impl.CacheEntryIndex;
+import com.biglybt.core.diskmanager.cache.impl.CacheFileWithCache;
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.torrent.TOTorrentFile;
+import com.biglybt.core.util.AEMonitor;
+import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.DirectByteBufferPool;
+import com.biglybt.core.util.StringInterner;
+
+/**
+ * Contention on the disk cache's entry index. Many files share one cache and each thread behaves like a
+ * disk thread serving its own subset of them: 'hit' reads blocks that are already cached, 'churn' mixes
+ * in reads of uncached blocks so that entries are inserted and evicted as well. The 'map' index is the
+ * single access-ordered LinkedHashMap behind a monitor that the segmented index replaced, kept here as
+ * the baseline.
+ */
+
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class
+CacheEntryIndexBenchmark
+{
+	private static final int	BLOCK_SIZE		= 16*1024;
+	private static final int	PIECE_LENGTH	= 256*1024;
+
+	private static final int	FILES			= 256;
+	private static final long	FILE_SIZE		= 4*1024*1024;
+	private static final int	FILE_BLOCKS		= (int)( FILE_SIZE / BLOCK_SIZE );
+
+		// the hot blocks of every file fit in the cache, the rest don't
+
+	private static final int	CACHE_MB		= 64;
+	private static final int	HOT_BLOCKS		= 8;
+	private static final int	CHURN_EVERY		= 16;
+
+	@Param({ "segmented", "map" })
+	public String	index;
+
+	private File				dir;
+	private CacheFile[]			cache_files;
+
+	@State( Scope.Thread )
+	public static class
+	ThreadState
+	{
+		private static int			next_id;
+
+		private DirectByteBuffer	buffer;
+		private Random				random;
+		private int					id;
+		private int					ops;
+
+		@Setup
+		public void
+		setup()
+		{
+			synchronized( ThreadState.class ){
+
+				id = next_id++;
+			}
+
+			random = new Random( id );
+
+			buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_OTHER, BLOCK_SIZE );
+		}
+
+		@TearDown
+		public void
+		tearDown()
+		{
+			buffer.returnToPool();
+		}
+
+		private int
+		nextFile()
+		{
+				// each disk thread tends to serve its own subset of files
+
+			return(( id + random.nextInt( FILES / 8 ) * 8 ) % FILES );
+		}
+	}
+
+		/**
+		 * The index as it was before segmentation: every hit, insert and removal goes through one
+		 * monitor and the map's access order gives LRU eviction
+		 */
+
+	private static class
+	MapIndex
+		extends CacheEntryIndex
+	{
+		private final AEMonitor		this_mon	= new AEMonitor( "CacheEntryIndexBenchmark:map" );
+
+		private final LinkedHashMap<CacheEntry,CacheEntry>	cache_entries = new LinkedHashMap<>( 1024, 0.75f, true );
+
+		@Override
+		protected void
+		add(
+			CacheEntry	entry )
+		{
+			try{
+				this_mon.enter();
+
+				cache_entries.put( entry, entry );
+
+			}finally{
+
+				this_mon.exit();
+			}
+		}
+
+		@Override
+		protected boolean
+		remove(
+			CacheEntry	entry )
+		{
+			try{
+				this_mon.enter();
+
+				return( cache_entries.remove( entry ) != null );
+
+			}finally{
+
+				this_mon.exit();
+			}
+		}
+
+		@Override
+		protected boolean
+		used(
+			CacheEntry	entry )
+		{
+			try{
+				this_mon.enter();
+
+					// note that the "get" operation updates the MRU in cache_entries
+
+				return( cache_entries.get( entry ) != null );
+
+			}finally{
+
+				this_mon.exit();
+			}
+		}
+
+		@Override
+		protected boolean
+		contains(
+			CacheEntry	entry )
+		{
+			try{
+				this_mon.enter();
+
+				return( cache_entries.containsKey( entry ));
+
+			}finally{
+
+				this_mon.exit();
+			}
+		}
+
+		@Override
+		protected int
+		size()
+		{
+			try{
+				this_mon.enter();
+
+				return( cache_entries.size());
+
+			}finally{
+
+				this_mon.exit();
+			}
+		}
+
+		@Override
+		protected CacheEntry
+		getEvictionCandidate()
+		{
+			try{
+				this_mon.enter();
+
+				Iterator<CacheEntry>	it = cache_entries.keySet().iterator();
+
+				return( it.hasNext()?it.next():null );
+
+			}finally{
+
+				this_mon.exit();
+			}
+		}
+
+		@Override
+		protected List<CacheEntry>
+		getEntries()
+		{
+			try{
+				this_mon.enter();
+
+				return( new ArrayList<>( cache_entries.keySet()));
+
+			}finally{
+
+				this_mon.exit();
+			}
+		}
+
+		@Override
+		protected Set<CacheFileWithCache>
+		getDirtyFiles()
+		{
+			Set<CacheFileWithCache>	result = new HashSet<>();
+
+			try{
+				this_mon.enter();
+
+				for ( CacheEntry entry: cache_entries.keySet()){
+
+					if ( entry.isDirty()){
+
+						result.add( entry.getFile());
+					}
+				}
+			}finally{
+
+				this_mon.exit();
+			}
+
+			return( result );
+		}
+	}
+
+	@Setup
+	public void
+	setup()
+
+		throws Exception
+	{
+		BenchmarkSupport.init();
+
+		COConfigurationManager.setParameter( "diskmanager.perf.cache.enable", true );
+		COConfigurationManager.setParameter( "diskmanager.perf.cache.enable.read", true );
+		COConfigurationManager.setParameter( "diskmanager.perf.cache.size", CACHE_MB );
+
+		if ( index.equals( "map" )){
+
+				// each run is forked so the manager is fresh and has no entries yet
+
+			CacheFileManager manager = CacheFileManagerFactory.getSingleton();
+
+			Field field = manager.getClass().getDeclaredField( "cache_entries" );
+
+			field.setAccessible( true );
+
+			field.set( manager, new MapIndex());
+		}
+
+		Random random = new Random( 0 );
+
+		dir = BenchmarkSupport.createTempDir( "cacheindex" );
+
+		TOTorrent torrent = SyntheticTorrent.create( random, "cacheindex", FILES, FILE_SIZE, PIECE_LENGTH );
+
+		cache_files = new CacheFile[FILES];
+
+		DirectByteBuffer buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_OTHER, BLOCK_SIZE );
+
+		try{
+			for ( int i=0;i<FILES;i++){
+
+				File	file = new File( dir, "file_" + i + ".dat" );
+
+				try( RandomAccessFile raf = new RandomAccessFile( file, "rw" )){
+
+					raf.setLength( FILE_SIZE );
+				}
+
+				final TOTorrentFile	torrent_file = torrent.getFiles()[i];
+
+				CacheFileOwner	owner =
+					BenchmarkSupport.stub(
+						CacheFileOwner.class,
+						(method,args)->{
+							switch( method ){
+								case "getCacheFileOwnerName":		return( "CacheEntryIndexBenchmark" );
+								case "getCacheFileTorrentFile":		return( torrent_file );
+								case "getCacheFileControlFileDir":	return( dir );
+								case "getCacheMode":				return( CacheFileOwner.CACHE_MODE_NORMAL );
+								case "getCacheFileLink":			return( args[0] );
+							}
+							return( BenchmarkSupport.DEFAULT );
+						});
+
+				CacheFile	cache_file = CacheFileManagerFactory.getSingleton().createFile( owner, new StringInterner.FileKey( file ), CacheFile.CT_LINEAR, false );
+
+				cache_file.setAccessMode( CacheFile.CF_READ );
+
+				cache_files[i] = cache_file;
+
+					// pull the working set into the cache
+
+				for ( int j=0;j<HOT_BLOCKS;j++){
+
+					buffer.clear( DirectByteBuffer.SS_EXTERNAL );
+
+					cache_file.read( buffer, (long)j * BLOCK_SIZE, CacheFile.CP_READ_CACHE );
+				}
+			}
+		}finally{
+
+			buffer.returnToPool();
+		}
+	}
+
+	@TearDown
+	public void
+	tearDown()
+
+		throws Exception
+	{
+		for ( CacheFile cache_file: cache_files ){
+
+			cache_file.close();
+
+			cache_file.delete();
+		}
+
+		dir.delete();
+	}
+
+	private void
+	read(
+		ThreadState		state,
+		boolean			churn )
+
+		throws Exception
+	{
+		CacheFile	cache_file = cache_files[ state.nextFile()];
+
+		int	block;
+
+		if ( churn && ++state.ops % CHURN_EVERY == 0 ){
+
+			block = HOT_BLOCKS + state.random.nextInt( FILE_BLOCKS - HOT_BLOCKS );
+
+		}else{
+
+			block = state.random.nextInt( HOT_BLOCKS );
+		}
+
+		state.buffer.clear( DirectByteBuffer.SS_EXTERNAL );
+
+		cache_file.read( state.buffer, (long)block * BLOCK_SIZE, CacheFile.CP_READ_CACHE );
+	}
+
+	@Benchmark
+	@Threads( 1 )
+	public void
+	hit_1_thread(
+		ThreadState		state )
+
+		throws Exception
+	{
+		read( state, false );
+	}
+
+	@Benchmark
+	@Threads( 8 )
+	public void
+	hit_8_threads(
+		ThreadState		state )
+
+		throws Exception
+	{
+		read( state, false );
+	}
+
+	@Benchmark
+	@Threads( 32 )
+	public void
+	hit_32_threads(
+		ThreadState		state )
+
+		throws Exception
+	{
+		read( state, false );
+	}
+
+	@Benchmark
+	@Threads( 8 )
+	public void
+	churn_8_threads(
+		ThreadState		state )
+
+		throws Exception
+	{
+		read( state, true );
+	}
+
+	@Benchmark
+	@Threads( 32 )
+	public void
+	churn_32_threads(
+		ThreadState		state )
+
+		throws Exception
+	{
+		read( state, true );
+	}
+}
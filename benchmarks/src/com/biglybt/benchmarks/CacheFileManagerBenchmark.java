@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.diskmanager.cache.CacheFile;
+import com.biglybt.core.diskmanager.cache.CacheFileManagerFactory;
+import com.biglybt.core.diskmanager.cache.CacheFileOwner;
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.DirectByteBufferPool;
+import com.biglybt.core.util.StringInterner;
+
+/**
+ * Block reads through the disk cache. Hits come from a working set that fits in the cache, misses from
+ * the rest of the file with the cache bypassed (the file itself will be in the OS page cache so this
+ * measures our overhead rather than the disk).
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class
+CacheFileManagerBenchmark
+{
+	private static final int	BLOCK_SIZE		= 16*1024;
+	private static final int	PIECE_LENGTH	= 256*1024;
+	private static final long	FILE_SIZE		= 256*1024*1024;
+
+	private static final int	CACHE_MB		= 64;
+	private static final int	HOT_BLOCKS		= 16*1024*1024/BLOCK_SIZE;	// power of 2
+	private static final int	COLD_BLOCKS		= (int)( FILE_SIZE / BLOCK_SIZE ) - HOT_BLOCKS;
+
+	private File				dir;
+	private CacheFile			cache_file;
+	private DirectByteBuffer	buffer;
+
+	private Random				random;
+
+	@Setup
+	public void
+	setup()
+
+		throws Exception
+	{
+		BenchmarkSupport.init();
+
+		COConfigurationManager.setParameter( "diskmanager.perf.cache.enable", true );
+		COConfigurationManager.setParameter( "diskmanager.perf.cache.enable.read", true );
+		COConfigurationManager.setParameter( "diskmanager.perf.cache.size", CACHE_MB );
+
+		random = new Random( 0 );
+
+		dir = BenchmarkSupport.createTempDir( "cache" );
+
+		final TOTorrent torrent = SyntheticTorrent.create( random, "cache", 1, FILE_SIZE, PIECE_LENGTH );
+
+		File	file = new File( dir, "cache.dat" );
+
+		try( RandomAccessFile raf = new RandomAccessFile( file, "rw" )){
+
+			raf.setLength( FILE_SIZE );
+		}
+
+		CacheFileOwner	owner =
+			BenchmarkSupport.stub(
+				CacheFileOwner.class,
+				(method,args)->{
+					switch( method ){
+						case "getCacheFileOwnerName":		return( "CacheFileManagerBenchmark" );
+						case "getCacheFileTorrentFile":		return( torrent.getFiles()[0] );
+						case "getCacheFileControlFileDir":	return( dir );
+						case "getCacheMode":				return( CacheFileOwner.CACHE_MODE_NORMAL );
+						case "getCacheFileLink":			return( args[0] );
+					}
+					return( BenchmarkSupport.DEFAULT );
+				});
+
+		cache_file = CacheFileManagerFactory.getSingleton().createFile( owner, new StringInterner.FileKey( file ), CacheFile.CT_LINEAR, false );
+
+		cache_file.setAccessMode( CacheFile.CF_READ );
+
+		buffer = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_OTHER, BLOCK_SIZE );
+
+			// pull the working set into the cache
+
+		for ( int i=0;i<HOT_BLOCKS;i++){
+
+			read( i, CacheFile.CP_READ_CACHE );
+		}
+	}
+
+	@TearDown
+	public void
+	tearDown()
+
+		throws Exception
+	{
+		buffer.returnToPool();
+
+		cache_file.close();
+
+		cache_file.delete();
+
+		dir.delete();
+	}
+
+	private void
+	read(
+		int		block,
+		short	policy )
+
+		throws Exception
+	{
+		buffer.clear( DirectByteBuffer.SS_EXTERNAL );
+
+		cache_file.read( buffer, (long)block * BLOCK_SIZE, policy );
+	}
+
+	@Benchmark
+	public void
+	hit()
+
+		throws Exception
+	{
+		read( random.nextInt( HOT_BLOCKS ), CacheFile.CP_READ_CACHE );
+	}
+
+	@Benchmark
+	public void
+	miss()
+
+		throws Exception
+	{
+		read( HOT_BLOCKS + random.nextInt( COLD_BLOCKS ), CacheFile.CP_NONE );
+	}
+}
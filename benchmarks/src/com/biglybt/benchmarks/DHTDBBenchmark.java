@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.dht.DHTLogger;
+import com.biglybt.core.dht.control.DHTControl;
+import com.biglybt.core.dht.db.DHTDB;
+import com.biglybt.core.dht.db.DHTDBFactory;
+import com.biglybt.core.dht.transport.DHTTransport;
+import com.biglybt.core.dht.transport.DHTTransportContact;
+import com.biglybt.core.dht.transport.DHTTransportValue;
+import com.biglybt.core.dht.transport.udp.DHTTransportUDP;
+import com.biglybt.core.util.HashWrapper;
+import com.biglybt.core.util.SystemTime;
+
+/**
+ * Lookups against a DHT database holding values cached on behalf of remote contacts, as happens when
+ * serving find-value requests
+ */
+
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class
+DHTDBBenchmark
+{
+	private static final int	VALUES_PER_KEY	= 4;
+
+	@Param({ "1000", "50000" })
+	public int	keys;
+
+		// not a constant - the transport reads config when loaded so it can't be touched before init
+
+	private static byte				VERSION;
+
+	private DHTDB					db;
+	private HashWrapper[]			present;
+	private HashWrapper[]			absent;
+	private DHTTransportContact		reader;
+
+	@State( Scope.Thread )
+	public static class
+	Cursor
+	{
+		int	next;
+	}
+
+	@Setup
+	public void
+	setup()
+
+		throws Exception
+	{
+		BenchmarkSupport.init();
+
+		VERSION = DHTTransportUDP.PROTOCOL_VERSION_BIGLYBT;
+
+		Random	random = new Random( 0 );
+
+		final DHTTransportContact	local = createContact( random );
+
+		reader = createContact( random );
+
+		final DHTTransport	transport =
+			BenchmarkSupport.stub(
+				DHTTransport.class,
+				(method,args)->{
+					switch( method ){
+						case "getLocalContact":		return( local );
+						case "getProtocolVersion":	return( VERSION );
+					}
+					return( BenchmarkSupport.DEFAULT );
+				});
+
+		DHTControl	control =
+			BenchmarkSupport.stub(
+				DHTControl.class,
+				(method,args)->{
+					switch( method ){
+						case "getTransport":	return( transport );
+					}
+					return( BenchmarkSupport.DEFAULT );
+				});
+
+		DHTLogger	logger = BenchmarkSupport.stub( DHTLogger.class, null );
+
+		db = DHTDBFactory.create( null, 0, 0, VERSION, logger );
+
+		db.setControl( control );
+
+		DHTTransportContact[]	senders = new DHTTransportContact[256];
+
+		for ( int i=0;i<senders.length;i++){
+
+			senders[i] = createContact( random );
+		}
+
+		present	= new HashWrapper[ keys ];
+		absent	= new HashWrapper[ keys ];
+
+		for ( int i=0;i<keys;i++){
+
+			present[i]	= randomKey( random );
+			absent[i]	= randomKey( random );
+
+			DHTTransportValue[]	values = new DHTTransportValue[VALUES_PER_KEY];
+
+			DHTTransportContact	sender = senders[ random.nextInt( senders.length )];
+
+			for ( int j=0;j<VALUES_PER_KEY;j++){
+
+				values[j] = createValue( random, senders[ random.nextInt( senders.length )]);
+			}
+
+			db.store( sender, present[i], values );
+		}
+	}
+
+	@TearDown
+	public void
+	tearDown()
+	{
+		db.destroy();
+	}
+
+	private static HashWrapper
+	randomKey(
+		Random	random )
+	{
+		byte[]	key = new byte[20];
+
+		random.nextBytes( key );
+
+		return( new HashWrapper( key ));
+	}
+
+	private static DHTTransportContact
+	createContact(
+		Random	random )
+
+		throws Exception
+	{
+		final byte[]	id = new byte[20];
+
+		random.nextBytes( id );
+
+		final byte[]	ip = { 10, (byte)random.nextInt( 256 ), (byte)random.nextInt( 256 ), (byte)( 1 + random.nextInt( 254 ))};
+
+		final InetSocketAddress	address = new InetSocketAddress( InetAddress.getByAddress( ip ), 1024 + random.nextInt( 60000 ));
+
+		final int	instance_id = random.nextInt();
+
+		return(
+			BenchmarkSupport.stub(
+				DHTTransportContact.class,
+				(method,args)->{
+					switch( method ){
+						case "getID":					return( id );
+						case "getBloomKey":				return( ip );
+						case "getAddress":
+						case "getTransportAddress":
+						case "getExternalAddress":		return( address );
+						case "getInstanceID":			return( instance_id );
+						case "getProtocolVersion":		return( VERSION );
+						case "isValid":					return( true );
+						case "getString":				return( address.toString());
+					}
+					return( BenchmarkSupport.DEFAULT );
+				}));
+	}
+
+	private static DHTTransportValue
+	createValue(
+		Random					random,
+		DHTTransportContact		originator )
+	{
+		final byte[]	value = new byte[ 16 + random.nextInt( 48 )];
+
+		random.nextBytes( value );
+
+		final long	created = SystemTime.getCurrentTime();
+
+		final int	version = random.nextInt( Integer.MAX_VALUE );
+
+		return(
+			BenchmarkSupport.stub(
+				DHTTransportValue.class,
+				(method,args)->{
+					switch( method ){
+						case "getValue":				return( value );
+						case "getCreationTime":			return( created );
+						case "getVersion":				return( version );
+						case "getOriginator":			return( originator );
+						case "getReplicationFactor":	return((byte)-1 );
+						case "getReplicationFrequencyHours":	return((byte)-1 );
+						case "getString":				return( "value" );
+					}
+					return( BenchmarkSupport.DEFAULT );
+				}));
+	}
+
+	@Benchmark
+	public Object
+	getHit(
+		Cursor	cursor )
+	{
+		return( db.get( reader, present[ cursor.next++ % keys ], 0, (short)0, true ));
+	}
+
+	@Benchmark
+	public Object
+	getMiss(
+		Cursor	cursor )
+	{
+		return( db.get( reader, absent[ cursor.next++ % keys ], 0, (short)0, true ));
+	}
+
+	@Benchmark
+	public boolean
+	hasKey(
+		Cursor	cursor )
+	{
+		return( db.hasKey( present[ cursor.next++ % keys ]));
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.DirectByteBufferPool;
+
+/**
+ * Allocation/free of pooled buffers at the sizes used for messages, disk blocks and cache writes. Run with
+ * -t to measure contention between network and disk threads.
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class
+DirectByteBufferPoolBenchmark
+{
+	private static final int	BATCH	= 64;
+
+	@Param({ "68", "16384", "262144" })
+	public int	length;
+
+	private final DirectByteBuffer[]	buffers = new DirectByteBuffer[BATCH];
+
+	@Setup
+	public void
+	setup()
+	{
+		BenchmarkSupport.init();
+	}
+
+	@Benchmark
+	public void
+	allocFree()
+	{
+		DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG, length ).returnToPool();
+	}
+
+		/**
+		 * Holds a number of buffers at once, as a peer connection's read/write queues do
+		 */
+
+	@Benchmark
+	@OperationsPerInvocation( BATCH )
+	public void
+	allocFreeBatch()
+	{
+		for ( int i=0;i<BATCH;i++){
+
+			buffers[i] = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG, length );
+		}
+
+		for ( int i=0;i<BATCH;i++){
+
+			buffers[i].returnToPool();
+
+			buffers[i] = null;
+		}
+	}
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.torrent.TOTorrentFactory;
+import com.biglybt.core.util.*;
+
+/**
+ * Opening torrents with very large file lists, with and without the UTF-8 copies of the paths that
+ * many clients add. footprint() reports the heap retained per file as the "bytesPerFile" counter.
+ * <p>
+ * The 'objects' layout is the baseline: one object per file holding its own path arrays and property
+ * map, as files were held before the file table. It only decodes the torrent, computes the info hash
+ * and builds the files, so its open time leaves out the rest of the torrent's fields.
+ */
+
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2 )
+@Measurement( iterations = 5 )
+@Fork( value = 1, jvmArgsAppend = { "-Xmx4g" })
+public class
+FileTableBenchmark
+{
+	@Param({ "100000", "1000000" })
+	public int		files;
+
+	@Param({ "false", "true" })
+	public boolean	utf8;
+
+	@Param({ "table", "objects" })
+	public String	layout;
+
+	private byte[]	encoded;
+
+	@AuxCounters( AuxCounters.Type.EVENTS )
+	@State( Scope.Thread )
+	public static class
+	Footprint
+	{
+		public long	bytesPerFile;
+	}
+
+	@Setup
+	public void
+	setup()
+
+		throws Exception
+	{
+		BenchmarkSupport.init();
+
+		Map<String,Object>	map = SyntheticTorrent.createMap( new Random( 0 ), "filetable", files, 16*1024, 4*1024*1024 );
+
+		if ( utf8 ){
+
+			Map<String,Object>	info = (Map<String,Object>)map.get( "info" );
+
+			for ( Map<String,Object> file: (List<Map<String,Object>>)info.get( "files" )){
+
+				file.put( "path.utf-8", new ArrayList<>((List<byte[]>)file.get( "path" )));
+			}
+		}
+
+		encoded = BEncoder.encode( map );
+	}
+
+	@Benchmark
+	public Object
+	open()
+
+		throws Exception
+	{
+		if ( layout.equals( "objects" )){
+
+			return( openAsObjects());
+		}
+
+		return( TOTorrentFactory.deserialiseFromBEncodedByteArray( new TOTorrentFactory.TorrentDataHolder( encoded )));
+	}
+
+	@Benchmark
+	public int
+	footprint(
+		Footprint	footprint )
+
+		throws Exception
+	{
+		long	before = getUsedHeap();
+
+		Object	result = open();
+
+		long	after = getUsedHeap();
+
+		footprint.bytesPerFile = ( after - before ) / files;
+
+		return( result instanceof TOTorrent?((TOTorrent)result).getFiles().length:((ObjectFile[])result).length );
+	}
+
+		/**
+		 * The file list part of decoding as it was done for the per-file objects, directory
+		 * components are shared between files but every other key of a file's map is kept
+		 */
+
+	private ObjectFile[]
+	openAsObjects()
+
+		throws Exception
+	{
+		Map<String,Object>	map = BDecoder.decode( encoded );
+
+		Map<String,Object>	info = (Map<String,Object>)map.get( "info" );
+
+		new SHA1Hasher().calculateHash( BEncoder.encode( info ));
+
+		long	piece_length = (Long)info.get( "piece length" );
+
+		List<Map<String,Object>>	meta_files = (List<Map<String,Object>>)info.get( "files" );
+
+		boolean	has_utf8_keys = info.containsKey( "name.utf-8" );
+
+		for ( Map<String,Object> file_map: meta_files ){
+
+			has_utf8_keys &= file_map.containsKey( "path.utf-8" );
+		}
+
+		ObjectFile[]	result = new ObjectFile[ meta_files.size()];
+
+		ByteArrayHashMap<byte[]>	comp_cache = new ByteArrayHashMap<>();
+
+		long	total_length = 0;
+
+		for ( int i=0;i<result.length;i++){
+
+			Map<String,Object>	file_map = meta_files.get( i );
+
+			long	len = (Long)file_map.get( "length" );
+
+			byte[][]	path_comps		= internComponents( comp_cache, (List<byte[]>)file_map.get( "path" ));
+			byte[][]	path_comps8		= has_utf8_keys?internComponents( comp_cache, (List<byte[]>)file_map.get( "path.utf-8" )):null;
+
+			ObjectFile	file = result[i] = new ObjectFile( i, total_length, len, piece_length, path_comps, path_comps8 );
+
+			total_length += len;
+
+				// preserve any non-standard attributes, including path.utf-8
+
+			for ( String key: file_map.keySet()){
+
+				if ( !( key.equals( "length" ) || key.equals( "path" ))){
+
+					file.setAdditionalProperty( key, file_map.get( key ));
+				}
+			}
+		}
+
+		return( result );
+	}
+
+	private static byte[][]
+	internComponents(
+		ByteArrayHashMap<byte[]>	comp_cache,
+		List<byte[]>				paths )
+	{
+		int	limit = paths.size()-1;
+
+		byte[][]	path_comps = new byte[limit+1][];
+
+		for ( int j=0;j<=limit;j++){
+
+			byte[]	comp = paths.get( j );
+
+			if ( j < limit ){
+
+				byte[]	existing = comp_cache.get( comp );
+
+				if ( existing == null ){
+
+					comp_cache.put( comp, comp );
+
+				}else{
+
+					comp = existing;
+				}
+			}
+
+			path_comps[j] = comp;
+		}
+
+		return( path_comps );
+	}
+
+		/**
+		 * The fields each file had before the file table
+		 */
+
+	private static class
+	ObjectFile
+	{
+		private final Object	torrent	= null;
+
+		private final int		index;
+		private final long		file_length;
+		private final long		offset_in_torrent;
+
+		private final byte[][]	path_components;
+		private final byte[][]	path_components_utf8;
+
+		private final int		first_piece_number;
+		private final int		last_piece_number;
+
+		private Map				additional_properties_maybe_null;
+
+		private final boolean	is_utf8	= false;
+
+		private byte			flags;
+
+		private Object			hash_tree;
+		private byte[]			root_hash;
+
+		ObjectFile(
+			int			_index,
+			long		_torrent_offset,
+			long		_len,
+			long		_piece_length,
+			byte[][]	_path_components,
+			byte[][]	_path_components_utf8 )
+		{
+			index				= _index;
+			file_length			= _len;
+			offset_in_torrent	= _torrent_offset;
+
+			path_components			= _path_components;
+			path_components_utf8	= _path_components_utf8;
+
+			first_piece_number 	= (int)( _torrent_offset / _piece_length );
+			last_piece_number	= (int)(( _torrent_offset + file_length - 1 ) / _piece_length );
+		}
+
+		void
+		setAdditionalProperty(
+			String		name,
+			Object		value )
+		{
+			if ( additional_properties_maybe_null == null ){
+
+				additional_properties_maybe_null = new LightHashMap();
+			}
+
+			additional_properties_maybe_null.put( name, value );
+		}
+	}
+
+	private static long
+	getUsedHeap()
+	{
+		Runtime	runtime = Runtime.getRuntime();
+
+		for ( int i=0;i<4;i++){
+
+			System.gc();
+		}
+
+		return( runtime.totalMemory() - runtime.freeMemory());
+	}
+}
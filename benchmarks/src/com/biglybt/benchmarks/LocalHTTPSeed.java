@@ -0,0 +1,416 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal HTTP/1.1 server standing in for a web seed on the loopback interface. It serves one
+ * block of content for any path, honours single and multi-range requests and keeps connections
+ * open, answering pipelined requests in order.
+ * <p>
+ * Network latency is simulated by holding each response until 'latency' milliseconds after its
+ * request arrived, so pipelined requests overlap their waits as they would on a real link.
+ */
+
+public class
+LocalHTTPSeed
+{
+	private static final String	NL = "\r\n";
+
+	private final byte[]		content;
+	private final int			latency;
+	private final ServerSocket	server;
+
+	private volatile boolean	multi_range		= true;
+	private volatile boolean	chunked;
+	private volatile boolean	close_each;
+
+	private final AtomicLong	connections	= new AtomicLong();
+	private final AtomicLong	requests	= new AtomicLong();
+
+	private final List<Socket>	sockets = Collections.synchronizedList( new ArrayList<Socket>());
+
+	private volatile boolean	closed;
+
+	public
+	LocalHTTPSeed(
+		byte[]		_content,
+		int			_latency )
+
+		throws IOException
+	{
+		content	= _content;
+		latency	= _latency;
+
+		server = new ServerSocket( 0, 64, InetAddress.getByName( "127.0.0.1" ));
+
+		Thread	t =
+			new Thread( "LocalHTTPSeed:accept" )
+			{
+				@Override
+				public void
+				run()
+				{
+					while( !closed ){
+
+						try{
+							Socket	socket = server.accept();
+
+							connections.incrementAndGet();
+
+							sockets.add( socket );
+
+							serve( socket );
+
+						}catch( Throwable e ){
+						}
+					}
+				}
+			};
+
+		t.setDaemon( true );
+
+		t.start();
+	}
+
+		/**
+		 * @param b	false to answer multi-range requests with the whole content, as some servers do
+		 */
+
+	public void
+	setMultiRange(
+		boolean		b )
+	{
+		multi_range = b;
+	}
+
+	public void
+	setChunked(
+		boolean		b )
+	{
+		chunked = b;
+	}
+
+	public void
+	setCloseEachResponse(
+		boolean		b )
+	{
+		close_each = b;
+	}
+
+	public URL
+	getURL(
+		String		path )
+
+		throws IOException
+	{
+		return( new URL( "http://127.0.0.1:" + server.getLocalPort() + path ));
+	}
+
+	public long
+	getConnections()
+	{
+		return( connections.get());
+	}
+
+	public long
+	getRequests()
+	{
+		return( requests.get());
+	}
+
+	public void
+	close()
+	{
+		closed = true;
+
+		try{
+			server.close();
+
+		}catch( Throwable e ){
+		}
+
+		synchronized( sockets ){
+
+			for ( Socket socket: sockets ){
+
+				try{
+					socket.close();
+
+				}catch( Throwable e ){
+				}
+			}
+		}
+	}
+
+	private void
+	serve(
+		final Socket	socket )
+
+		throws IOException
+	{
+		socket.setTcpNoDelay( true );
+
+		final LinkedBlockingQueue<Object[]>	pending = new LinkedBlockingQueue<>();
+
+		final InputStream	is = new BufferedInputStream( socket.getInputStream());
+
+		Thread	reader =
+			new Thread( "LocalHTTPSeed:read" )
+			{
+				@Override
+				public void
+				run()
+				{
+					try{
+						while( true ){
+
+							String	range = null;
+
+							String	line = readLine( is );
+
+							if ( line == null ){
+
+								break;
+							}
+
+							if ( line.length() == 0 ){
+
+								continue;
+							}
+
+							while( true ){
+
+								String	header = readLine( is );
+
+								if ( header == null || header.length() == 0 ){
+
+									break;
+								}
+
+								if ( header.toLowerCase( Locale.US ).startsWith( "range:" )){
+
+									range = header.substring( 6 ).trim();
+								}
+							}
+
+							pending.put( new Object[]{ System.currentTimeMillis(), range });
+						}
+					}catch( Throwable e ){
+					}
+
+					try{
+						pending.put( new Object[0] );
+
+					}catch( Throwable e ){
+					}
+				}
+			};
+
+		reader.setDaemon( true );
+
+		reader.start();
+
+		Thread	writer =
+			new Thread( "LocalHTTPSeed:write" )
+			{
+				@Override
+				public void
+				run()
+				{
+					try{
+						OutputStream	os = new BufferedOutputStream( socket.getOutputStream(), 64*1024 );
+
+						while( true ){
+
+							Object[]	request = pending.take();
+
+							if ( request.length == 0 ){
+
+								break;
+							}
+
+							long	wait = (Long)request[0] + latency - System.currentTimeMillis();
+
+							if ( wait > 0 ){
+
+								Thread.sleep( wait );
+							}
+
+							requests.incrementAndGet();
+
+							respond( os, (String)request[1] );
+
+							os.flush();
+
+							if ( close_each ){
+
+								break;
+							}
+						}
+					}catch( Throwable e ){
+					}
+
+					try{
+						socket.close();
+
+					}catch( Throwable e ){
+					}
+				}
+			};
+
+		writer.setDaemon( true );
+
+		writer.start();
+	}
+
+	private void
+	respond(
+		OutputStream	os,
+		String			range )
+
+		throws IOException
+	{
+		List<long[]>	ranges = new ArrayList<>();
+
+		if ( range != null && range.startsWith( "bytes=" )){
+
+			for ( String spec: range.substring( 6 ).split( "," )){
+
+				String[]	bits = spec.trim().split( "-" );
+
+				ranges.add( new long[]{ Long.parseLong( bits[0] ), Long.parseLong( bits[1] )});
+			}
+		}
+
+		String	connection = close_each?"close":"keep-alive";
+
+		if ( ranges.isEmpty() || ( ranges.size() > 1 && !multi_range )){
+
+			writeResponse( os, "200 OK", "Content-Type: application/octet-stream" + NL + "Connection: " + connection + NL, content, 0, content.length );
+
+		}else if ( ranges.size() == 1 ){
+
+			long[]	r = ranges.get(0);
+
+			writeResponse(
+				os, "206 Partial Content",
+				"Content-Type: application/octet-stream" + NL + "Content-Range: bytes " + r[0] + "-" + r[1] + "/" + content.length + NL + "Connection: " + connection + NL,
+				content, (int)r[0], (int)( r[1] - r[0] + 1 ));
+
+		}else{
+
+			String	boundary = "SEED_BOUNDARY";
+
+			ByteArrayOutputStream	body = new ByteArrayOutputStream();
+
+			for ( long[] r: ranges ){
+
+				body.write(( NL + "--" + boundary + NL + "Content-Type: application/octet-stream" + NL + "Content-Range: bytes " + r[0] + "-" + r[1] + "/" + content.length + NL + NL ).getBytes( StandardCharsets.ISO_8859_1 ));
+
+				body.write( content, (int)r[0], (int)( r[1] - r[0] + 1 ));
+			}
+
+			body.write(( NL + "--" + boundary + "--" + NL ).getBytes( StandardCharsets.ISO_8859_1 ));
+
+			byte[]	bytes = body.toByteArray();
+
+			writeResponse( os, "206 Partial Content", "Content-Type: multipart/byteranges; boundary=" + boundary + NL + "Connection: " + connection + NL, bytes, 0, bytes.length );
+		}
+	}
+
+	private void
+	writeResponse(
+		OutputStream	os,
+		String			status,
+		String			headers,
+		byte[]			data,
+		int				offset,
+		int				length )
+
+		throws IOException
+	{
+		String	framing = chunked?( "Transfer-Encoding: chunked" + NL ):( "Content-Length: " + length + NL );
+
+		os.write(( "HTTP/1.1 " + status + NL + headers + framing + NL ).getBytes( StandardCharsets.ISO_8859_1 ));
+
+		if ( chunked ){
+
+			int	pos = 0;
+
+			while( pos < length ){
+
+				int	chunk = Math.min( 8191, length - pos );
+
+				os.write(( Integer.toHexString( chunk ) + NL ).getBytes( StandardCharsets.ISO_8859_1 ));
+
+				os.write( data, offset + pos, chunk );
+
+				os.write( NL.getBytes( StandardCharsets.ISO_8859_1 ));
+
+				pos += chunk;
+			}
+
+			os.write(( "0" + NL + NL ).getBytes( StandardCharsets.ISO_8859_1 ));
+
+		}else{
+
+			os.write( data, offset, length );
+		}
+	}
+
+	private static String
+	readLine(
+		InputStream		is )
+
+		throws IOException
+	{
+		StringBuilder	line = new StringBuilder();
+
+		while( true ){
+
+			int	c = is.read();
+
+			if ( c < 0 ){
+
+				return( line.length()==0?null:line.toString());
+			}
+
+			if ( c == '\n' ){
+
+				int	len = line.length();
+
+				if ( len > 0 && line.charAt( len-1 ) == '\r' ){
+
+					line.setLength( len-1 );
+				}
+
+				return( line.toString());
+			}
+
+			line.append((char)c );
+		}
+	}
+}
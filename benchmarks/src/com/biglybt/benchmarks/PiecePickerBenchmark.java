@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.disk.DiskManagerFileInfo;
+import com.biglybt.core.disk.DiskManagerPiece;
+import com.biglybt.core.disk.DiskManagerReadRequest;
+import com.biglybt.core.disk.impl.DiskManagerHelper;
+import com.biglybt.core.disk.impl.DiskManagerPieceImpl;
+import com.biglybt.core.disk.impl.piecemapper.DMPieceMap;
+import com.biglybt.core.disk.impl.piecemapper.DMPieceMapper;
+import com.biglybt.core.disk.impl.piecemapper.DMPieceMapperFactory;
+import com.biglybt.core.disk.impl.piecemapper.DMPieceMapperFile;
+import com.biglybt.core.internat.LocaleUtil;
+import com.biglybt.core.peer.PEPeer;
+import com.biglybt.core.peer.PEPeerListener;
+import com.biglybt.core.peer.PEPeerManagerListener;
+import com.biglybt.core.peer.PEPeerStats;
+import com.biglybt.core.peer.PEPiece;
+import com.biglybt.core.peer.impl.PEPeerControl;
+import com.biglybt.core.peer.impl.PEPeerTransport;
+import com.biglybt.core.peermanager.piecepicker.PiecePicker;
+import com.biglybt.core.peermanager.piecepicker.PiecePickerFactory;
+import com.biglybt.core.peermanager.piecepicker.util.BitFlags;
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.util.AENetworkClassifier;
+
+/**
+ * One round of request allocation for a fresh download across a swarm of synthetic peers, the work done
+ * by the peer manager on every scheduling loop. Each invocation starts from no active pieces and no
+ * outstanding requests.
+ */
+
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class
+PiecePickerBenchmark
+{
+	private static final int	PIECE_LENGTH	= 256*1024;
+	private static final int	FILES			= 16;
+
+	@Param({ "4096", "65536" })
+	public int		pieces;
+
+	@Param({ "50", "500" })
+	public int		peers;
+
+	@Param({ "false", "true" })
+	public boolean	indexed;
+
+	private PiecePicker					picker;
+	private PEPeerManagerListener		manager_listener;
+
+	private PEPiece[]					pe_pieces;
+	private int							active_pieces;
+
+	private final List<PEPeerTransport>	peer_list	= new ArrayList<>();
+	private int[]						peer_requests;
+
+	@Setup
+	public void
+	setup()
+
+		throws Exception
+	{
+		BenchmarkSupport.init();
+
+		COConfigurationManager.setParameter( "Piece Picker Indexed Selection Enabled", indexed );
+
+		Random	random = new Random( 0 );
+
+		TOTorrent torrent = SyntheticTorrent.create( random, "picker", FILES, (long)pieces*PIECE_LENGTH/FILES, PIECE_LENGTH );
+
+		DMPieceMapper	mapper = DMPieceMapperFactory.create( torrent );
+
+		mapper.construct( LocaleUtil.getSingleton().getSystemDecoder(), "picker" );
+
+		final DMPieceMapperFile[]	mapper_files	= mapper.getFiles();
+		final DiskManagerFileInfo[]	files			= new DiskManagerFileInfo[ mapper_files.length ];
+
+		long	offset = 0;
+
+		for ( int i=0;i<files.length;i++){
+
+			final DMPieceMapperFile	mf = mapper_files[i];
+
+			final int	first_piece = (int)( offset / PIECE_LENGTH );
+
+			offset += mf.getLength();
+
+			final int	last_piece	= (int)(( offset - 1 ) / PIECE_LENGTH );
+			final int	index		= i;
+
+			files[i] =
+				BenchmarkSupport.stub(
+					DiskManagerFileInfo.class,
+					(method,args)->{
+						switch( method ){
+							case "getLength":			return( mf.getLength());
+							case "getTorrentFile":		return( mf.getTorrentFile());
+							case "getIndex":			return( index );
+							case "getFirstPieceNumber":	return( first_piece );
+							case "getLastPieceNumber":	return( last_piece );
+							case "getNbPieces":			return( last_piece - first_piece + 1 );
+						}
+						return( BenchmarkSupport.DEFAULT );
+					});
+
+			mf.setFileInfo( files[i] );
+		}
+
+			// needs the file infos to be set
+
+		final DMPieceMap	piece_map = mapper.getPieceMap();
+
+		final DiskManagerPiece[]	dm_pieces		= new DiskManagerPiece[pieces];
+
+		final DiskManagerHelper	disk_manager =
+			BenchmarkSupport.stub(
+				DiskManagerHelper.class,
+				(method,args)->{
+					switch( method ){
+						case "getTorrent":					return( torrent );
+						case "getPieces":					return( dm_pieces );
+						case "getNbPieces":					return( pieces );
+						case "getPieceLength":				return( PIECE_LENGTH );
+						case "getPieceMap":					return( piece_map );
+						case "getPieceList":				return( piece_map.getPieceList((Integer)args[0] ));
+						case "getFiles":					return( files );
+						case "getTotalLength":
+						case "getRemainingExcludingDND":	return( torrent.getSize());
+					}
+					return( BenchmarkSupport.DEFAULT );
+				});
+
+			// real pieces as the picker hits these hard, proxies would dominate the measurement
+
+		for ( int i=0;i<pieces;i++){
+
+			dm_pieces[i] = new DiskManagerPieceImpl( disk_manager, i, PIECE_LENGTH );
+		}
+
+		pe_pieces = new PEPiece[pieces];
+
+		final PEPeerControl[]	control	= { null };
+
+		control[0] =
+			BenchmarkSupport.stub(
+				PEPeerControl.class,
+				(method,args)->{
+					switch( method ){
+						case "getDiskManager":		return( disk_manager );
+						case "getPieces":			return( pe_pieces );
+						case "getPeers":			return( peer_list );
+						case "getNbPeers":			return( peer_list.size());
+						case "getDisplayName":		return( "PiecePickerBenchmark" );
+						case "getPiecePicker":		return( picker );
+						case "getNbActivePieces":	return( active_pieces );
+						case "addListener":{
+							manager_listener = (PEPeerManagerListener)args[0];
+							return( null );
+						}
+						case "addPiece":{
+							PEPiece	piece = (PEPiece)args[0];
+							pe_pieces[(Integer)args[1]] = piece;
+							active_pieces++;
+							manager_listener.pieceAdded( control[0], piece, (PEPeer)args[2] );
+							return( null );
+						}
+					}
+					return( BenchmarkSupport.DEFAULT );
+				});
+
+		picker = PiecePickerFactory.create( control[0] );
+
+		peer_requests = new int[peers];
+
+		for ( int i=0;i<peers;i++){
+
+			final int	peer_index = i;
+
+				// a fifth of the swarm are seeds, the rest have a random 10-90% of the pieces
+
+			final BitFlags	available = new BitFlags( pieces );
+
+			if ( i % 5 == 0 ){
+
+				available.setAll();
+
+			}else{
+
+				int	percent = 10 + random.nextInt( 81 );
+
+				for ( int j=0;j<pieces;j++){
+
+					if ( random.nextInt( 100 ) < percent ){
+
+						available.set( j );
+					}
+				}
+			}
+
+			final long	rate = 1024*( 1 + random.nextInt( 1024 ));
+
+			final PEPeerStats	stats =
+				BenchmarkSupport.stub(
+					PEPeerStats.class,
+					(method,args)->{
+						switch( method ){
+							case "getDataReceiveRate":
+							case "getSmoothDataReceiveRate":	return( rate );
+							case "getTotalDataBytesReceived":	return( rate*60 );
+						}
+						return( BenchmarkSupport.DEFAULT );
+					});
+
+			final String	ip = "10.0." + ( i / 256 ) + "." + ( i % 256 );
+
+			final DiskManagerReadRequest	request = BenchmarkSupport.stub( DiskManagerReadRequest.class, null );
+
+			final PEPeerListener[]	listener = { null };
+
+			PEPeerTransport peer =
+				BenchmarkSupport.stub(
+					PEPeerTransport.class,
+					(method,args)->{
+						switch( method ){
+							case "getPeerState":			return( PEPeer.TRANSFERING );
+							case "getAvailable":			return( available );
+							case "isPieceAvailable":		return( available.get((Integer)args[0]) );
+							case "getStats":				return( stats );
+							case "getIp":					return( ip );
+							case "getNetwork":				return( AENetworkClassifier.AT_PUBLIC );
+							case "isDownloadPossible":		return( true );
+							case "getMaxNbRequests":		return( -1 );
+							case "getLastPiece":			return( -1 );
+							case "getUnchokedForMillis":	return( 60*1000L );
+							case "getNbRequests":			return( peer_requests[peer_index] );
+							case "request":{
+								peer_requests[peer_index]++;
+								return( request );
+							}
+							case "addListener":{
+								listener[0] = (PEPeerListener)args[0];
+								return( null );
+							}
+						}
+						return( BenchmarkSupport.DEFAULT );
+					});
+
+			peer_list.add( peer );
+
+			manager_listener.peerAdded( control[0], peer );
+
+			listener[0].addAvailability( peer, available );
+		}
+
+			// availability updates are rate limited, wait for the window to pass so the swarm is seen
+
+		Thread.sleep( 1000 );
+
+		picker.updateAvailability();
+	}
+
+	@Setup( Level.Invocation )
+	public void
+	reset()
+	{
+		for ( int i=0;i<pe_pieces.length;i++){
+
+			PEPiece	piece = pe_pieces[i];
+
+			if ( piece != null ){
+
+				pe_pieces[i] = null;
+
+				manager_listener.pieceRemoved( null, piece );
+			}
+		}
+
+		active_pieces = 0;
+
+		Arrays.fill( peer_requests, 0 );
+
+		picker.updateAvailability();
+	}
+
+	@Benchmark
+	public void
+	allocateRequests()
+	{
+		picker.allocateRequests();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.util.*;
+
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.torrent.TOTorrentFactory;
+
+/**
+ * Builds torrents with random piece hashes and no backing data
+ */
+
+public class
+SyntheticTorrent
+{
+	public static Map<String,Object>
+	createMap(
+		Random		random,
+		String		name,
+		int			num_files,
+		long		file_size,
+		int			piece_length )
+	{
+		Map<String,Object>	map 	= new HashMap<>();
+		Map<String,Object>	info	= new HashMap<>();
+
+		map.put( "announce", "http://tracker.invalid/announce".getBytes());
+		map.put( "comment", ( "synthetic torrent " + name ).getBytes());
+		map.put( "creation date", 1600000000L );
+		map.put( "info", info );
+
+		info.put( "name", name.getBytes());
+		info.put( "piece length", (long)piece_length );
+
+		long	total;
+
+		if ( num_files == 1 ){
+
+			info.put( "length", file_size );
+
+			total = file_size;
+
+		}else{
+
+			List<Map<String,Object>>	files = new ArrayList<>( num_files );
+
+			total = 0;
+
+			for ( int i=0;i<num_files;i++){
+
+				Map<String,Object>	file = new HashMap<>();
+
+				List<byte[]>	path = new ArrayList<>( 2 );
+
+				path.add(( "dir" + ( i % 16 )).getBytes());
+				path.add(( "file_" + i + ".dat" ).getBytes());
+
+				file.put( "path", path );
+				file.put( "length", file_size );
+
+				files.add( file );
+
+				total += file_size;
+			}
+
+			info.put( "files", files );
+		}
+
+		int	num_pieces = (int)(( total + piece_length - 1 ) / piece_length );
+
+		byte[]	pieces = new byte[ num_pieces * 20 ];
+
+		random.nextBytes( pieces );
+
+		info.put( "pieces", pieces );
+
+		return( map );
+	}
+
+	public static TOTorrent
+	create(
+		Random		random,
+		String		name,
+		int			num_files,
+		long		file_size,
+		int			piece_length )
+	{
+		try{
+			return( TOTorrentFactory.deserialiseFromMap( createMap( random, name, num_files, file_size, piece_length )));
+
+		}catch( Throwable e ){
+
+			throw( new RuntimeException( e ));
+		}
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.core.util.Timer;
+import com.biglybt.core.util.TimerEvent;
+import com.biglybt.core.util.TimerEventPerformer;
+
+/**
+ * Scheduling and cancelling events on a Timer that already has a backlog of pending events, the common
+ * pattern for connection and request timeouts
+ */
+
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class
+TimerBenchmark
+{
+	private static final TimerEventPerformer	NOP =
+		new TimerEventPerformer()
+		{
+			@Override
+			public void
+			perform(
+				TimerEvent	event )
+			{
+			}
+		};
+
+	@Param({ "0", "1000", "100000" })
+	public int	pending;
+
+	private Timer	timer;
+
+	@Setup
+	public void
+	setup()
+	{
+		BenchmarkSupport.init();
+
+		timer = new Timer( "TimerBenchmark" );
+
+		long	now = SystemTime.getCurrentTime();
+
+			// spread the backlog over the next hour so new events land in the middle of it
+
+		for ( int i=0;i<pending;i++){
+
+			timer.addEvent( now + 60*1000 + ( i * 3600*1000L / Math.max( 1, pending )), NOP );
+		}
+	}
+
+	@TearDown
+	public void
+	tearDown()
+	{
+		timer.destroy();
+	}
+
+	@Benchmark
+	public TimerEvent
+	scheduleCancel()
+	{
+		TimerEvent	event = timer.addEvent( SystemTime.getCurrentTime() + 30*60*1000, NOP );
+
+		event.cancel();
+
+		return( event );
+	}
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.biglybt.plugin.extseed.ExternalSeedException;
+import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloaderListener;
+import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloaderRange;
+import com.biglybt.plugin.extseed.util.ExternalSeedHTTPPipeline;
+
+/**
+ * Fetching a file in piece sized ranges from a {@link LocalHTTPSeed} with simulated latency, one
+ * range at a time with the blocking downloader versus the pipelined client. The counters report
+ * throughput and how many requests each connection carried.
+ */
+
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 1 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class
+WebSeedPipelineBenchmark
+{
+	private static final int	BLOCK_SIZE	= 256*1024;
+	private static final int	BLOCKS		= 128;
+
+	@Param({ "0", "20" })
+	public int		latency;
+
+	@Param({ "blocking", "pipelined" })
+	public String	client;
+
+	@Param({ "4" })
+	public int		connections;
+
+	@Param({ "4" })
+	public int		depth;
+
+	private byte[]			content;
+	private LocalHTTPSeed	seed;
+
+	@AuxCounters( AuxCounters.Type.EVENTS )
+	@State( Scope.Thread )
+	public static class
+	Counters
+	{
+		public double	mbPerSec;
+		public double	requestsPerConnection;
+	}
+
+	@Setup
+	public void
+	setup()
+
+		throws Exception
+	{
+		BenchmarkSupport.init();
+
+		content = new byte[ BLOCK_SIZE * BLOCKS ];
+
+		new Random( 0 ).nextBytes( content );
+
+		seed = new LocalHTTPSeed( content, latency );
+	}
+
+	@TearDown
+	public void
+	tearDown()
+	{
+		seed.close();
+	}
+
+	@Benchmark
+	public void
+	download(
+		Counters	counters )
+
+		throws Exception
+	{
+		long	start_cons	= seed.getConnections();
+		long	start_reqs	= seed.getRequests();
+		long	start		= System.nanoTime();
+
+		if ( client.equals( "blocking" )){
+
+			downloadBlocking();
+
+		}else{
+
+			downloadPipelined();
+		}
+
+		long	elapsed = System.nanoTime() - start;
+
+		long	cons = seed.getConnections() - start_cons;
+
+		counters.mbPerSec				= ((double)content.length/(1024*1024)) / ( elapsed / 1000000000.0 );
+		counters.requestsPerConnection	= cons==0?( seed.getRequests() - start_reqs ):((double)( seed.getRequests() - start_reqs ) / cons );
+	}
+
+	private void
+	downloadBlocking()
+
+		throws Exception
+	{
+		ExternalSeedHTTPDownloaderRange	downloader = new ExternalSeedHTTPDownloaderRange( seed.getURL( "/file" ), "benchmark" );
+
+		for ( int i=0;i<BLOCKS;i++){
+
+			downloader.downloadRange((long)i*BLOCK_SIZE, BLOCK_SIZE, new Buffer(), false );
+		}
+	}
+
+	private void
+	downloadPipelined()
+
+		throws Exception
+	{
+		ExternalSeedHTTPPipeline	pipeline = new ExternalSeedHTTPPipeline( seed.getURL( "/file" ), "benchmark", connections, depth, null );
+
+		final Semaphore			slots	= new Semaphore( pipeline.getMaxOutstanding());
+		final CountDownLatch	latch	= new CountDownLatch( BLOCKS );
+
+		final ExternalSeedException[]	error = { null };
+
+		ExternalSeedHTTPPipeline.TransferListener	listener =
+			new ExternalSeedHTTPPipeline.TransferListener()
+			{
+				@Override
+				public void
+				complete(
+					ExternalSeedHTTPPipeline.Transfer	transfer )
+				{
+					slots.release();
+
+					latch.countDown();
+				}
+
+				@Override
+				public void
+				failed(
+					ExternalSeedHTTPPipeline.Transfer	transfer,
+					ExternalSeedException				e )
+				{
+					error[0] = e;
+
+					slots.release();
+
+					latch.countDown();
+				}
+			};
+
+		for ( int i=0;i<BLOCKS;i++){
+
+			slots.acquire();
+
+			ExternalSeedHTTPPipeline.Transfer	transfer = new ExternalSeedHTTPPipeline.Transfer( new Buffer(), listener, false );
+
+			transfer.addSegment( "/file", (long)i*BLOCK_SIZE, BLOCK_SIZE );
+
+			pipeline.submit( transfer );
+		}
+
+		latch.await();
+
+		if ( error[0] != null ){
+
+			throw( error[0] );
+		}
+	}
+
+	private static class
+	Buffer
+		implements ExternalSeedHTTPDownloaderListener
+	{
+		private final byte[]	buffer = new byte[ BLOCK_SIZE ];
+
+		private int		position;
+
+		@Override
+		public byte[]
+		getBuffer()
+		{
+			return( buffer );
+		}
+
+		@Override
+		public void
+		setBufferPosition(
+			int		_position )
+		{
+			position = _position;
+		}
+
+		@Override
+		public int
+		getBufferPosition()
+		{
+			return( position );
+		}
+
+		@Override
+		public int
+		getBufferLength()
+		{
+			return( buffer.length );
+		}
+
+		@Override
+		public int
+		getPermittedBytes()
+		{
+			return( buffer.length );
+		}
+
+		@Override
+		public int
+		getPermittedTime()
+		{
+			return( 0 );
+		}
+
+		@Override
+		public void
+		reportBytesRead(
+			int		num )
+		{
+		}
+
+		@Override
+		public boolean
+		isCancelled()
+		{
+			return( false );
+		}
+
+		@Override
+		public void
+		done()
+		{
+		}
+	}
+}
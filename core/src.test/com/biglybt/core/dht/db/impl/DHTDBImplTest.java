@@ -0,0 +1,409 @@
+package com.biglybt.core.dht.db.impl;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.biglybt.core.dht.DHT;
+import com.biglybt.core.dht.DHTFactory;
+import com.biglybt.core.dht.DHTLogger;
+import com.biglybt.core.dht.DHTStorageAdapter;
+import com.biglybt.core.dht.DHTStorageBlock;
+import com.biglybt.core.dht.DHTStorageKey;
+import com.biglybt.core.dht.DHTStorageKeyStats;
+import com.biglybt.core.dht.db.DHTDBStats;
+import com.biglybt.core.dht.db.DHTDBValue;
+import com.biglybt.core.dht.transport.DHTTransportContact;
+import com.biglybt.core.dht.transport.DHTTransportFactory;
+import com.biglybt.core.dht.transport.DHTTransportValue;
+import com.biglybt.core.util.HashWrapper;
+import com.biglybt.pif.PluginInterface;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the sharded mapping store keeps its keys, values and totals consistent
+ */
+public class DHTDBImplTest
+{
+	@Test
+	public void localValuesAreStoredAndVisitedAcrossShards() {
+		TestAdapter adapter = new TestAdapter();
+
+		DHT dht = createDHT(adapter);
+
+		DHTDBImpl db = (DHTDBImpl) dht.getDataBase();
+
+		Random random = new Random(1);
+
+		Map<HashWrapper, byte[]> stored = new HashMap<>();
+
+		// random keys cover every shard, keys with a common first byte fill several visit slices of one
+
+		for (int i = 0; i < 1600; i++) {
+			byte[] key = new byte[20];
+
+			random.nextBytes(key);
+
+			if (i >= 1000) {
+				key[0] = 0x42;
+			}
+
+			byte[] value = new byte[1 + random.nextInt(20)];
+
+			random.nextBytes(value);
+
+			db.store(new HashWrapper(key), value, (short) 0, (byte) 0, (byte) 0);
+
+			stored.put(new HashWrapper(key), value);
+		}
+
+		assertThat(db.getKeyCount()).isEqualTo(stored.size());
+		assertThat(db.getLocalKeyCount()).isEqualTo(stored.size());
+		assertThat(adapter.keys.get()).isEqualTo(stored.size());
+
+		assertThat(keys(db)).isEqualTo(stored.keySet());
+
+		// getValueDetails is a full pass over the shards
+
+		assertThat(db.getValueDetails()[DHTDBStats.VD_VALUE_COUNT]).isEqualTo(stored.size());
+
+		for (Map.Entry<HashWrapper, byte[]> entry : stored.entrySet()) {
+			assertThat(db.hasKey(entry.getKey())).isTrue();
+
+			DHTDBValue value = db.get(entry.getKey());
+
+			assertThat(value).isNotNull();
+			assertThat(value.getValue()).isEqualTo(entry.getValue());
+		}
+
+		dht.destroy();
+	}
+
+	@Test
+	public void removingTheLastValueDropsTheMapping() {
+		TestAdapter adapter = new TestAdapter();
+
+		DHT dht = createDHT(adapter);
+
+		DHTDBImpl db = (DHTDBImpl) dht.getDataBase();
+
+		DHTTransportContact local = dht.getTransport().getLocalContact();
+
+		List<HashWrapper> keys = new ArrayList<>();
+
+		for (int i = 0; i < 512; i++) {
+			byte[] bytes = new byte[20];
+
+			bytes[0] = (byte) i;
+			bytes[1] = (byte) (i >> 8);
+
+			HashWrapper key = new HashWrapper(bytes);
+
+			db.store(key, new byte[] { (byte) i }, (short) 0, (byte) 0, (byte) 0);
+
+			keys.add(key);
+		}
+
+		Set<HashWrapper> remaining = new HashSet<>(keys);
+
+		for (int i = 0; i < keys.size(); i += 2) {
+			HashWrapper key = keys.get(i);
+
+			assertThat(db.remove(local, key)).isNotNull();
+
+			// nothing left to remove
+
+			assertThat(db.remove(local, key)).isNull();
+
+			remaining.remove(key);
+
+			assertThat(db.hasKey(key)).isFalse();
+			assertThat(db.get(key)).isNull();
+		}
+
+		assertThat(db.getKeyCount()).isEqualTo(remaining.size());
+		assertThat(db.getLocalKeyCount()).isEqualTo(remaining.size());
+		assertThat(adapter.keys.get()).isEqualTo(remaining.size());
+		assertThat(keys(db)).isEqualTo(remaining);
+		assertThat(db.getValueDetails()[DHTDBStats.VD_VALUE_COUNT]).isEqualTo(remaining.size());
+
+		// and a removed key can be stored again
+
+		db.store(keys.get(0), new byte[] { 9 }, (short) 0, (byte) 0, (byte) 0);
+
+		assertThat(db.get(keys.get(0)).getValue()).isEqualTo(new byte[] { 9 });
+		assertThat(db.getKeyCount()).isEqualTo(remaining.size() + 1);
+
+		dht.destroy();
+	}
+
+	@Test
+	public void concurrentStoresRemovesAndPassesKeepTotalsConsistent()
+			throws Exception {
+		TestAdapter adapter = new TestAdapter();
+
+		DHT dht = createDHT(adapter);
+
+		DHTDBImpl db = (DHTDBImpl) dht.getDataBase();
+
+		DHTTransportContact local = dht.getTransport().getLocalContact();
+
+		Set<HashWrapper> live = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+		AtomicBoolean done = new AtomicBoolean();
+
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+		List<Thread> workers = new ArrayList<>();
+
+		for (int t = 0; t < 8; t++) {
+			int id = t;
+
+			workers.add(new Thread(() -> {
+				try {
+					Random random = new Random(id);
+
+					// each thread owns the keys ending in its id, spread over all the shards
+
+					for (int i = 0; i < 5000; i++) {
+						byte[] bytes = new byte[20];
+
+						bytes[0] = (byte) random.nextInt(256);
+						bytes[1] = (byte) random.nextInt(32);
+						bytes[2] = (byte) id;
+
+						HashWrapper key = new HashWrapper(bytes);
+
+						if (random.nextBoolean()) {
+							db.store(key, new byte[] { (byte) i }, (short) 0, (byte) 0, (byte) 0);
+
+							live.add(key);
+						} else {
+							db.remove(local, key);
+
+							live.remove(key);
+						}
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			}));
+		}
+
+		Thread passes = new Thread(() -> {
+			try {
+				while (!done.get()) {
+					db.getValueDetails();
+
+					for (Iterator<HashWrapper> it = db.getKeys(); it.hasNext();) {
+						db.hasKey(it.next());
+					}
+				}
+			} catch (Throwable e) {
+				errors.add(e);
+			}
+		});
+
+		passes.start();
+
+		for (Thread worker : workers) {
+			worker.start();
+		}
+
+		for (Thread worker : workers) {
+			worker.join();
+		}
+
+		done.set(true);
+
+		passes.join();
+
+		assertThat(errors).isEmpty();
+
+		// the local key count goes up on every local store so isn't checked, keys are stored repeatedly here
+
+		assertThat(keys(db)).isEqualTo(live);
+		assertThat(db.getKeyCount()).isEqualTo(live.size());
+		assertThat(adapter.keys.get()).isEqualTo(live.size());
+		assertThat(db.getValueDetails()[DHTDBStats.VD_VALUE_COUNT]).isEqualTo(live.size());
+
+		dht.destroy();
+	}
+
+	private static Set<HashWrapper> keys(DHTDBImpl db) {
+		Set<HashWrapper> result = new HashSet<>();
+
+		for (Iterator<HashWrapper> it = db.getKeys(); it.hasNext();) {
+			assertThat(result.add(it.next())).isTrue();
+		}
+
+		return result;
+	}
+
+	private static DHT createDHT(DHTStorageAdapter adapter) {
+		return DHTFactory.create(DHTTransportFactory.createLoopback(20), new Properties(), adapter, null, new TestLogger());
+	}
+
+	private static class TestLogger
+		implements DHTLogger
+	{
+		@Override
+		public void log(String str) {
+		}
+
+		@Override
+		public void log(Throwable e) {
+		}
+
+		@Override
+		public void log(int logType, String str) {
+		}
+
+		@Override
+		public boolean isEnabled(int logType) {
+			return false;
+		}
+
+		@Override
+		public PluginInterface getPluginInterface() {
+			return null;
+		}
+	}
+
+	// no diversification or key blocks, just counts the keys the database reports
+
+	private static class TestAdapter
+		implements DHTStorageAdapter
+	{
+		final AtomicInteger keys = new AtomicInteger();
+
+		final AtomicInteger versions = new AtomicInteger();
+
+		@Override
+		public int getNetwork() {
+			return DHT.NW_AZ_MAIN;
+		}
+
+		@Override
+		public DHTStorageKey keyCreated(HashWrapper key, boolean local) {
+			keys.incrementAndGet();
+
+			return new DHTStorageKey() {
+				@Override
+				public byte getDiversificationType() {
+					return DHT.DT_NONE;
+				}
+
+				@Override
+				public void serialiseStats(DataOutputStream os) {
+				}
+			};
+		}
+
+		@Override
+		public void keyDeleted(DHTStorageKey adapterKey) {
+			keys.decrementAndGet();
+		}
+
+		@Override
+		public void keyRead(DHTStorageKey adapterKey, DHTTransportContact contact) {
+		}
+
+		@Override
+		public DHTStorageKeyStats deserialiseStats(DataInputStream is) {
+			return null;
+		}
+
+		@Override
+		public void valueAdded(DHTStorageKey key, DHTTransportValue value) {
+		}
+
+		@Override
+		public void valueUpdated(DHTStorageKey key, DHTTransportValue oldValue, DHTTransportValue newValue) {
+		}
+
+		@Override
+		public void valueDeleted(DHTStorageKey key, DHTTransportValue value) {
+		}
+
+		@Override
+		public boolean isDiversified(byte[] key) {
+			return false;
+		}
+
+		@Override
+		public byte[][] getExistingDiversification(byte[] key, boolean putOperation, boolean exhaustiveGet, int maxDepth) {
+			return new byte[][] { key };
+		}
+
+		@Override
+		public byte[][] createNewDiversification(String description, DHTTransportContact cause, byte[] key, boolean putOperation,
+				byte diversificationType, boolean exhaustiveGet, int maxDepth) {
+			return new byte[][] { key };
+		}
+
+		@Override
+		public int getNextValueVersions(int num) {
+			return versions.getAndAdd(num);
+		}
+
+		@Override
+		public DHTStorageBlock keyBlockRequest(DHTTransportContact directSender, byte[] request, byte[] signature) {
+			return null;
+		}
+
+		@Override
+		public DHTStorageBlock getKeyBlockDetails(byte[] key) {
+			return null;
+		}
+
+		@Override
+		public DHTStorageBlock[] getDirectKeyBlocks() {
+			return new DHTStorageBlock[0];
+		}
+
+		@Override
+		public byte[] getKeyForKeyBlock(byte[] request) {
+			return null;
+		}
+
+		@Override
+		public void setStorageForKey(String key, byte[] data) {
+		}
+
+		@Override
+		public byte[] getStorageForKey(String key) {
+			return null;
+		}
+
+		@Override
+		public int getRemoteFreqDivCount() {
+			return 0;
+		}
+
+		@Override
+		public int getRemoteSizeDivCount() {
+			return 0;
+		}
+
+		@Override
+		public int getKeyCount() {
+			return keys.get();
+		}
+	}
+}
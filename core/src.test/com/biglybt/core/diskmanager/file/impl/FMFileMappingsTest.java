@@ -0,0 +1,358 @@
+package com.biglybt.core.diskmanager.file.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.diskmanager.file.FMFile;
+import com.biglybt.core.diskmanager.file.FMFileOwner;
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.torrent.TOTorrentFactory;
+import com.biglybt.core.torrent.TOTorrentFile;
+import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.DirectByteBufferPool;
+import com.biglybt.core.util.IndentWriter;
+import com.biglybt.core.util.StringInterner;
+import com.biglybt.testutil.junit5.DefaultTestCoreConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that reads served from the mapped windows return the file's contents, with windows
+ * evicted under the mapped size limit and released when their file is closed
+ */
+@ExtendWith(DefaultTestCoreConfiguration.class)
+public class FMFileMappingsTest
+{
+	private static final int MB = 1024 * 1024;
+
+	// not a multiple of the window so each file ends with a partial window
+
+	private static final int FILE_SIZE = 3 * MB + 12345;
+
+	@TempDir
+	File tempDir;
+
+	List<FMFile> opened = new ArrayList<>();
+
+	@BeforeEach
+	public void setUp() {
+		COConfigurationManager.setParameter("diskmanager.perf.read.mmap.window.mb", 1);
+		COConfigurationManager.setParameter("diskmanager.perf.read.mmap.max.mb", 2);
+		COConfigurationManager.setParameter("diskmanager.perf.read.mmap.enable", true);
+	}
+
+	@AfterEach
+	public void tearDown()
+			throws Exception {
+		for (FMFile file : opened) {
+			file.close();
+		}
+
+		COConfigurationManager.removeParameter("diskmanager.perf.read.mmap.enable");
+		COConfigurationManager.removeParameter("diskmanager.perf.read.mmap.window.mb");
+		COConfigurationManager.removeParameter("diskmanager.perf.read.mmap.max.mb");
+	}
+
+	@Test
+	public void readsMatchTheFileContents()
+			throws Exception {
+		Random random = new Random(1);
+
+		List<byte[]> contents = new ArrayList<>();
+		List<FMFile> files = new ArrayList<>();
+
+		for (int i = 0; i < 3; i++) {
+			byte[] content = randomContent(random, FILE_SIZE);
+
+			contents.add(content);
+			files.add(openForRead("file_" + i, content));
+		}
+
+		for (int i = 0; i < 500; i++) {
+			int index = random.nextInt(files.size());
+
+			checkRead(random, files.get(index), contents.get(index));
+
+			// three files' worth of windows don't fit so some have been evicted
+
+			assertThat(stat("windows")).isLessThanOrEqualTo(2);
+		}
+
+		// the last partial window and a read ending exactly at the end of the file
+
+		byte[] content = contents.get(0);
+
+		checkRead(files.get(0), content, 3 * MB, new int[] { FILE_SIZE - 3 * MB });
+		checkRead(files.get(0), content, FILE_SIZE - 10, new int[] { 4, 6 });
+
+		assertThat(stat("hits")).isGreaterThan(0);
+		assertThat(stat("misses")).isGreaterThan(0);
+		assertThat(stat("failures")).isEqualTo(0);
+
+		// closing a file drops its windows
+
+		for (FMFile file : files) {
+			file.close();
+		}
+
+		assertThat(stat("windows")).isEqualTo(0);
+	}
+
+	@Test
+	public void concurrentReadsDuringEvictionMatchTheFileContents()
+			throws Exception {
+		Random random = new Random(2);
+
+		List<byte[]> contents = new ArrayList<>();
+		List<FMFile> files = new ArrayList<>();
+
+		for (int i = 0; i < 3; i++) {
+			byte[] content = randomContent(random, FILE_SIZE);
+
+			contents.add(content);
+			files.add(openForRead("file_" + i, content));
+		}
+
+		List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+		List<Thread> readers = new ArrayList<>();
+
+		// windows are evicted and unmapped while other threads are still copying from them
+
+		for (int t = 0; t < 6; t++) {
+			int seed = t;
+
+			readers.add(new Thread(() -> {
+				try {
+					Random r = new Random(seed);
+
+					for (int i = 0; i < 300; i++) {
+						int index = r.nextInt(files.size());
+
+						checkRead(r, files.get(index), contents.get(index));
+					}
+				} catch (Throwable e) {
+					errors.add(e);
+				}
+			}));
+		}
+
+		for (Thread reader : readers) {
+			reader.start();
+		}
+
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		assertThat(errors).isEmpty();
+		assertThat(stat("windows")).isLessThanOrEqualTo(2);
+
+		for (FMFile file : files) {
+			file.close();
+		}
+
+		assertThat(stat("windows")).isEqualTo(0);
+	}
+
+	@Test
+	public void readsSeeDataAppendedAfterTheWindowWasMapped()
+			throws Exception {
+		Random random = new Random(3);
+
+		byte[] content = randomContent(random, MB / 2);
+
+		FMFile file = openForRead("growing", content);
+
+		checkRead(file, content, 0, new int[] { content.length });
+
+		byte[] extra = randomContent(random, MB / 4);
+
+		try (FileOutputStream fos = new FileOutputStream(new File(tempDir, "growing"), true)) {
+			fos.write(extra);
+		}
+
+		byte[] grown = Arrays.copyOf(content, content.length + extra.length);
+
+		System.arraycopy(extra, 0, grown, content.length, extra.length);
+
+		// the same window, now longer than when it was first mapped
+
+		checkRead(file, grown, content.length - 100, new int[] { 100 + extra.length });
+		checkRead(file, grown, 0, new int[] { grown.length });
+	}
+
+	@Test
+	public void disabledMappingsStillReadTheFile()
+			throws Exception {
+		COConfigurationManager.setParameter("diskmanager.perf.read.mmap.enable", false);
+
+		Random random = new Random(4);
+
+		byte[] content = randomContent(random, 2 * MB);
+
+		FMFile file = openForRead("unmapped", content);
+
+		for (int i = 0; i < 50; i++) {
+			checkRead(random, file, content);
+		}
+
+		assertThat(stat("windows")).isEqualTo(0);
+	}
+
+	private static void checkRead(Random random, FMFile file, byte[] content)
+			throws Exception {
+		int[] lengths = new int[1 + random.nextInt(3)];
+
+		int total = 0;
+
+		for (int i = 0; i < lengths.length; i++) {
+			// mostly block sized, sometimes large enough to span windows
+
+			lengths[i] = random.nextInt(10) == 0 ? 1 + random.nextInt(MB + MB / 2) : 1 + random.nextInt(16 * 1024);
+
+			total += lengths[i];
+		}
+
+		if (total > content.length) {
+			lengths = new int[] { 1 + random.nextInt(content.length) };
+
+			total = lengths[0];
+		}
+
+		checkRead(file, content, random.nextInt(content.length - total + 1), lengths);
+	}
+
+	private static void checkRead(FMFile file, byte[] content, int offset, int[] lengths)
+			throws Exception {
+		DirectByteBuffer[] buffers = new DirectByteBuffer[lengths.length];
+
+		for (int i = 0; i < lengths.length; i++) {
+			buffers[i] = DirectByteBufferPool.getBuffer(DirectByteBuffer.AL_OTHER, lengths[i]);
+		}
+
+		try {
+			file.read(buffers, offset);
+
+			int pos = offset;
+
+			for (DirectByteBuffer buffer : buffers) {
+				ByteBuffer bb = buffer.getBuffer(DirectByteBuffer.SS_OTHER);
+
+				assertThat(bb.hasRemaining()).isFalse();
+
+				bb.flip();
+
+				byte[] data = new byte[bb.remaining()];
+
+				bb.get(data);
+
+				assertThat(data).isEqualTo(Arrays.copyOfRange(content, pos, pos + data.length));
+
+				pos += data.length;
+			}
+		} finally {
+			for (DirectByteBuffer buffer : buffers) {
+				buffer.returnToPool();
+			}
+		}
+	}
+
+	private FMFile openForRead(String name, byte[] content)
+			throws Exception {
+		File source = new File(tempDir, name);
+
+		try (FileOutputStream fos = new FileOutputStream(source)) {
+			fos.write(content);
+		}
+
+		TOTorrent torrent = TOTorrentFactory.createFromFileOrDirWithFixedPieceLength(
+				TOTorrent.TT_V1, source, new URL("http://localhost/announce"), false, 256 * 1024).create();
+
+		FMFile file = FMFileManagerImpl.getSingleton().createFile(
+				new TestOwner(torrent.getFiles()[0], tempDir), new StringInterner.FileKey(source), FMFile.FT_LINEAR, false);
+
+		file.setAccessMode(FMFile.FM_READ);
+
+		opened.add(file);
+
+		return file;
+	}
+
+	private static byte[] randomContent(Random random, int length) {
+		byte[] content = new byte[length];
+
+		random.nextBytes(content);
+
+		return content;
+	}
+
+	// the counters are only exposed through the evidence output
+
+	private static long stat(String name) {
+		StringWriter sw = new StringWriter();
+
+		PrintWriter pw = new PrintWriter(sw);
+
+		((FMFileManagerImpl) FMFileManagerImpl.getSingleton()).getMappings().generate(new IndentWriter(pw));
+
+		pw.flush();
+
+		Matcher matcher = Pattern.compile(name + "=(\\d+)").matcher(sw.toString());
+
+		assertThat(matcher.find()).describedAs(sw.toString()).isTrue();
+
+		return Long.parseLong(matcher.group(1));
+	}
+
+	private static class TestOwner
+		implements FMFileOwner
+	{
+		private final TOTorrentFile torrentFile;
+
+		private final File controlDir;
+
+		TestOwner(TOTorrentFile torrentFile, File controlDir) {
+			this.torrentFile = torrentFile;
+			this.controlDir = controlDir;
+		}
+
+		@Override
+		public String getName() {
+			return torrentFile.getRelativePath();
+		}
+
+		@Override
+		public TOTorrentFile getTorrentFile() {
+			return torrentFile;
+		}
+
+		@Override
+		public File getControlFileDir() {
+			return controlDir;
+		}
+
+		@Override
+		public StringInterner.FileKey getFileLink(StringInterner.FileKey file) {
+			return file;
+		}
+	}
+}
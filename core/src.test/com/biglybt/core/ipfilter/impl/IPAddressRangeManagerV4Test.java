@@ -0,0 +1,230 @@
+package com.biglybt.core.ipfilter.impl;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.biglybt.core.tracker.protocol.PRHelpers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks lookups over individual ranges and range tables against a linear search of the live ranges
+ */
+public class IPAddressRangeManagerV4Test
+{
+	// clusters at the ends of the address space and either side of the sign bit
+
+	private static final long[] CLUSTERS = { 0L, 0x80000000L - 600, 0xfffffb00L };
+
+	private static final int CLUSTER_SIZE = 1200;
+
+	@Test
+	public void lookupsMatchLinearSearch()
+			throws Exception {
+		Random random = new Random(1);
+
+		IPAddressRangeManagerV4 manager = new IPAddressRangeManagerV4();
+
+		List<long[]> live = new ArrayList<>();
+
+		for (int i = 0; i < 300; i++) {
+			IpRangeV4Impl range = randomRange(random);
+
+			manager.addRange(range);
+
+			live.add(new long[] { range.getStartIpLong(), range.getEndIpLong() });
+		}
+
+		for (int t = 0; t < 2; t++) {
+			manager.addTable(randomTable(random, 400, live));
+		}
+
+		assertThat(manager.getEntryCount()).isEqualTo(live.size());
+		assertThat(manager.getEntries()).hasSize(live.size());
+
+		checkLookups(manager, live);
+
+		assertThat(manager.total_span).isEqualTo(span(live));
+	}
+
+	@Test
+	public void removedAndEditedTableEntriesLeaveTheirTable()
+			throws Exception {
+		Random random = new Random(2);
+
+		IPAddressRangeManagerV4 manager = new IPAddressRangeManagerV4();
+
+		List<long[]> live = new ArrayList<>();
+
+		IpRangeTableV4 table = randomTable(random, 500, live);
+
+		manager.addTable(table);
+
+		checkLookups(manager, live);
+
+		List<IpRangeV4Impl> entries = manager.getEntries();
+
+		IpRangeV4Impl removed = entries.get(10);
+		IpRangeV4Impl edited = entries.get(20);
+
+		manager.removeRange(removed);
+
+		// removing twice only counts once
+
+		manager.removeRange(removed);
+
+		live.remove(10);
+
+		assertThat(manager.getEntryCount()).isEqualTo(499);
+
+		// an edited entry is re-added, as the filter does on a change, and is then held individually
+
+		manager.addRange(edited);
+
+		assertThat(table.getLiveCount()).isEqualTo(498);
+		assertThat(manager.getEntryCount()).isEqualTo(499);
+		assertThat(manager.getEntries()).hasSize(499);
+		assertThat(manager.getEntries()).contains(edited);
+
+		checkLookups(manager, live);
+
+		manager.clearAllEntries();
+
+		rebuildNow(manager);
+
+		assertThat(manager.getEntryCount()).isEqualTo(0);
+		assertThat(manager.isInRange(toAddress(live.get(0)[0]))).isNull();
+	}
+
+	@Test
+	public void nestedAndAdjacentRangesAreFound()
+			throws Exception {
+		IPAddressRangeManagerV4 manager = new IPAddressRangeManagerV4();
+
+		IpRangeV4Impl outer = range("10.0.0.0", "10.0.0.255");
+		IpRangeV4Impl inner = range("10.0.0.10", "10.0.0.20");
+		IpRangeV4Impl next = range("10.0.1.0", "10.0.1.0");
+		IpRangeV4Impl top = range("255.255.255.0", "255.255.255.255");
+
+		manager.addRange(outer);
+		manager.addRange(inner);
+		manager.addRange(next);
+		manager.addRange(top);
+
+		assertThat(manager.isInRange(address("9.255.255.255"))).isNull();
+		assertThat(manager.isInRange(address("10.0.0.0"))).isSameAs(outer);
+		assertThat(manager.isInRange(address("10.0.0.15"))).isNotNull();
+		assertThat(manager.isInRange(address("10.0.0.255"))).isSameAs(outer);
+		assertThat(manager.isInRange(address("10.0.1.0"))).isSameAs(next);
+		assertThat(manager.isInRange(address("10.0.1.1"))).isNull();
+		assertThat(manager.isInRange(address("255.255.255.255"))).isSameAs(top);
+
+		assertThat(manager.total_span).isEqualTo(256 + 1 + 256);
+	}
+
+	private static void checkLookups(IPAddressRangeManagerV4 manager, List<long[]> live)
+			throws Exception {
+		rebuildNow(manager);
+
+		for (long base : CLUSTERS) {
+			for (long address = Math.max(0, base - 5); address <= Math.min(0xffffffffL, base + CLUSTER_SIZE + 60); address++) {
+				IpRangeV4Impl match = manager.isInRange(toAddress(address));
+
+				boolean expected = false;
+
+				for (long[] range : live) {
+					if (address >= range[0] && address <= range[1]) {
+						expected = true;
+						break;
+					}
+				}
+
+				assertThat(match != null).describedAs(Long.toHexString(address)).isEqualTo(expected);
+
+				if (match != null) {
+					assertThat(address).isGreaterThanOrEqualTo(match.getStartIpLong());
+					assertThat(address).isLessThanOrEqualTo(match.getEndIpLong());
+				}
+			}
+		}
+	}
+
+	// rebuilds are rate limited, so let the next lookup pick up the changes straight away
+
+	private static void rebuildNow(IPAddressRangeManagerV4 manager) {
+		manager.last_rebuild_time = -1;
+	}
+
+	// the public constructors validate the range through the global filter, which isn't wanted here
+
+	private static IpRangeV4Impl randomRange(Random random) {
+		long[] r = randomBounds(random);
+
+		return new IpRangeV4Impl((int) r[0], (int) r[1]);
+	}
+
+	private static IpRangeV4Impl range(String start, String end)
+			throws Exception {
+		return new IpRangeV4Impl(PRHelpers.addressToInt(start), PRHelpers.addressToInt(end));
+	}
+
+	private static IpRangeTableV4 randomTable(Random random, int size, List<long[]> live) {
+		int[] starts = new int[size];
+		int[] ends = new int[size];
+
+		for (int i = 0; i < size; i++) {
+			long[] r = randomBounds(random);
+
+			starts[i] = (int) r[0];
+			ends[i] = (int) r[1];
+
+			live.add(r);
+		}
+
+		return new IpRangeTableV4(starts, ends, new int[size]);
+	}
+
+	private static long[] randomBounds(Random random) {
+		long base = CLUSTERS[random.nextInt(CLUSTERS.length)];
+
+		long start = base + random.nextInt(CLUSTER_SIZE);
+
+		long end = Math.min(0xffffffffL, start + (random.nextInt(4) == 0 ? random.nextInt(100) : random.nextInt(3)));
+
+		return new long[] { start, end };
+	}
+
+	private static long span(List<long[]> live) {
+		long total = 0;
+
+		for (long base : CLUSTERS) {
+			for (long address = base; address < base + CLUSTER_SIZE + 100 && address <= 0xffffffffL; address++) {
+				for (long[] range : live) {
+					if (address >= range[0] && address <= range[1]) {
+						total++;
+						break;
+					}
+				}
+			}
+		}
+
+		return total;
+	}
+
+	private static Inet4Address toAddress(long address)
+			throws Exception {
+		return (Inet4Address) InetAddress.getByAddress(new byte[] {
+			(byte) (address >> 24), (byte) (address >> 16), (byte) (address >> 8), (byte) address
+		});
+	}
+
+	private static Inet4Address address(String address)
+			throws Exception {
+		return (Inet4Address) InetAddress.getByName(address);
+	}
+}
@@ -0,0 +1,170 @@
+package com.biglybt.core.ipfilter.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.biglybt.core.util.FileUtil;
+import com.biglybt.testutil.junit5.DefaultTestCoreConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the binary IPv4 list cache restores the parsed ranges and is only used for the
+ * source file it was written from
+ */
+@ExtendWith(DefaultTestCoreConfiguration.class)
+public class IpFilterAutoLoaderImplTest
+{
+	private static final String[] DESCRIPTIONS = { "", "first list", "second list", "\u00e9t\u00e9" };
+
+	@TempDir
+	File tempDir;
+
+	File source;
+
+	IpFilterAutoLoaderImpl loader;
+
+	@BeforeEach
+	public void setUp()
+			throws Exception {
+		cacheFile().delete();
+
+		source = new File(tempDir, "ipfilter.dat");
+
+		try (FileOutputStream fos = new FileOutputStream(source)) {
+			fos.write(new byte[1000]);
+		}
+
+		loader = new IpFilterAutoLoaderImpl(null);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		cacheFile().delete();
+	}
+
+	@Test
+	public void cachedRangesMatchThoseWritten()
+			throws Exception {
+		Random random = new Random(1);
+
+		List<IpRangeImpl> ranges = new ArrayList<>();
+
+		for (int i = 0; i < 1000; i++) {
+			int start = random.nextInt();
+
+			IpRangeV4Impl range = new IpRangeV4Impl(start, start + random.nextInt(1000));
+
+			String description = DESCRIPTIONS[i % DESCRIPTIONS.length];
+
+			if (description.length() > 0) {
+				range.setDescription(description);
+			}
+
+			ranges.add(range);
+		}
+
+		// invalid ranges aren't cached
+
+		ranges.add(new IpRangeV4Impl(100, 99));
+
+		loader.writeCache(source, ranges);
+
+		List<IpRangeTableV4> tables = new ArrayList<>();
+
+		assertThat(loader.loadCache(source, tables)).isTrue();
+		assertThat(tables).hasSize(1);
+
+		IpRangeTableV4 table = tables.get(0);
+
+		int expected = 0;
+
+		for (IpRangeImpl r : ranges) {
+			IpRangeV4Impl range = (IpRangeV4Impl) r;
+
+			if (!range.isValid()) {
+				continue;
+			}
+
+			IpRangeV4Impl cached = table.getRange(expected++);
+
+			assertThat(cached.getStartIpLong()).isEqualTo(range.getStartIpLong());
+			assertThat(cached.getEndIpLong()).isEqualTo(range.getEndIpLong());
+			assertThat(cached.getDescription()).isEqualTo(range.getDescription());
+		}
+
+		assertThat(table.size()).isEqualTo(expected);
+		assertThat(table.getLiveCount()).isEqualTo(1000);
+	}
+
+	@Test
+	public void cacheIsIgnoredWhenTheSourceChanges()
+			throws Exception {
+		List<IpRangeImpl> ranges = new ArrayList<>();
+
+		ranges.add(new IpRangeV4Impl(1, 2));
+
+		loader.writeCache(source, ranges);
+
+		assertThat(loader.loadCache(source, new ArrayList<>())).isTrue();
+
+		// a different source file
+
+		File other = new File(tempDir, "other");
+
+		assertThat(loader.loadCache(other, new ArrayList<>())).isFalse();
+
+		assertThat(source.setLastModified(source.lastModified() - 10000)).isTrue();
+
+		List<IpRangeTableV4> tables = new ArrayList<>();
+
+		assertThat(loader.loadCache(source, tables)).isFalse();
+		assertThat(tables).isEmpty();
+
+		loader.writeCache(source, ranges);
+
+		try (FileOutputStream fos = new FileOutputStream(source, true)) {
+			fos.write(1);
+		}
+
+		assertThat(loader.loadCache(source, tables)).isFalse();
+		assertThat(tables).isEmpty();
+	}
+
+	@Test
+	public void truncatedCacheIsIgnored()
+			throws Exception {
+		List<IpRangeImpl> ranges = new ArrayList<>();
+
+		for (int i = 0; i < 10; i++) {
+			ranges.add(new IpRangeV4Impl(i * 10, i * 10 + 5));
+		}
+
+		loader.writeCache(source, ranges);
+
+		for (long length : new long[] { cacheFile().length() - 4, 1, 0 }) {
+			try (RandomAccessFile raf = new RandomAccessFile(cacheFile(), "rw")) {
+				raf.setLength(length);
+			}
+
+			List<IpRangeTableV4> tables = new ArrayList<>();
+
+			assertThat(loader.loadCache(source, tables)).isFalse();
+			assertThat(tables).isEmpty();
+		}
+	}
+
+	private static File cacheFile() {
+		return FileUtil.getUserFile("ipfilter.bin");
+	}
+}
@@ -0,0 +1,238 @@
+package com.biglybt.core.peermanager.piecepicker.util;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the packed flags against java.util.BitSet over random operations, for lengths either side
+ * of the word boundaries
+ */
+public class BitFlagsTest
+{
+	private static final int[] LENGTHS = { 0, 1, 7, 8, 63, 64, 65, 127, 128, 129, 1000 };
+
+	@Test
+	public void randomOperationsMatchBitSet() {
+		Random random = new Random(1);
+
+		for (int length : LENGTHS) {
+			BitFlags flags = new BitFlags(length);
+			BitSet expected = new BitSet();
+
+			for (int op = 0; op < 2000; op++) {
+				int i = length == 0 ? 0 : random.nextInt(length);
+
+				switch (length == 0 ? 5 : random.nextInt(20)) {
+					case 0:
+						flags.setOnly(i);
+						expected.clear();
+						expected.set(i);
+						break;
+					case 1:
+						flags.clear();
+						expected.clear();
+						break;
+					case 2:
+						flags.setAll();
+						expected.set(0, length);
+						break;
+					case 3:
+						// only valid for a flag that's known to be before the first set, the end is left alone
+
+						if (!expected.isEmpty() && i < expected.nextSetBit(0)) {
+							flags.setStart(i);
+							expected.set(i);
+						}
+						break;
+					case 4:
+						// only valid for a flag that's known to be after the last set, the start is left alone
+
+						if (!expected.isEmpty() && i > expected.length() - 1) {
+							flags.setEnd(i);
+							expected.set(i);
+						}
+						break;
+					case 5:
+						break;
+					default:
+						if (random.nextBoolean()) {
+							flags.set(i);
+							expected.set(i);
+						} else {
+							flags.unset(i);
+							expected.clear(i);
+						}
+				}
+
+				check(flags, expected, length);
+			}
+		}
+	}
+
+	@Test
+	public void bulkOperationsMatchBitSet() {
+		Random random = new Random(2);
+
+		for (int length : LENGTHS) {
+			for (int round = 0; round < 200; round++) {
+				BitSet a = randomBits(random, length);
+				BitSet b = randomBits(random, length);
+
+				BitFlags flagsA = toFlags(a, length, random);
+				BitFlags flagsB = toFlags(b, length, random);
+
+				BitSet and = (BitSet) a.clone();
+				and.and(b);
+
+				BitSet andNot = (BitSet) a.clone();
+				andNot.andNot(b);
+
+				check(flagsA.and(flagsB), and, length);
+				check(flagsA.andNot(flagsB), andNot, length);
+
+				assertThat(flagsA.intersects(flagsB)).isEqualTo(a.intersects(b));
+				assertThat(flagsB.intersects(flagsA)).isEqualTo(a.intersects(b));
+				assertThat(flagsA.andCardinality(flagsB)).isEqualTo(and.cardinality());
+
+				// the operands are left alone
+
+				check(flagsA, a, length);
+				check(flagsB, b, length);
+			}
+		}
+	}
+
+	@Test
+	public void bitfieldsDecodeHighBitFirst() {
+		Random random = new Random(3);
+
+		for (int length : LENGTHS) {
+			for (int round = 0; round < 50; round++) {
+				byte[] data = new byte[(length + 7) / 8];
+
+				// spare bits after the last piece are set too, they should be ignored
+
+				random.nextBytes(data);
+
+				BitSet expected = new BitSet();
+
+				for (int i = 0; i < length; i++) {
+					if ((data[i / 8] & (0x80 >> (i % 8))) != 0) {
+						expected.set(i);
+					}
+				}
+
+				check(BitFlags.fromBitfield(data, length), expected, length);
+			}
+		}
+	}
+
+	@Test
+	public void copiesAreIndependentAndEqual() {
+		BitFlags flags = new BitFlags(130);
+
+		flags.set(0);
+		flags.set(64);
+		flags.set(129);
+
+		BitFlags copy = (BitFlags) flags.clone();
+
+		assertThat(copy).isEqualTo(flags);
+		assertThat(copy.hashCode()).isEqualTo(flags.hashCode());
+
+		copy.unset(64);
+
+		assertThat(flags.get(64)).isTrue();
+		assertThat(copy).isNotEqualTo(flags);
+
+		assertThat(new BitFlags(flags.toBooleanArray())).isEqualTo(flags);
+	}
+
+	private static void check(BitFlags flags, BitSet expected, int length) {
+		assertThat(flags.size()).isEqualTo(length);
+		assertThat(flags.nbSet).isEqualTo(expected.cardinality());
+
+		for (int i = 0; i < length; i++) {
+			assertThat(flags.get(i)).isEqualTo(expected.get(i));
+		}
+
+		for (int i = 0; i <= length; i++) {
+			assertThat(flags.nextSetBit(i)).isEqualTo(expected.nextSetBit(i) < length ? expected.nextSetBit(i) : -1);
+		}
+
+		boolean[] array = flags.toBooleanArray();
+
+		assertThat(array.length).isEqualTo(length);
+
+		for (int i = 0; i < length; i++) {
+			assertThat(array[i]).isEqualTo(expected.get(i));
+		}
+
+		// start and end bound the set flags, clearing a flag may leave them loose
+
+		if (!expected.isEmpty()) {
+			assertThat(flags.start).isLessThanOrEqualTo(expected.nextSetBit(0));
+			assertThat(flags.end).isGreaterThanOrEqualTo(expected.length() - 1);
+		}
+	}
+
+	private static BitSet randomBits(Random random, int length) {
+		BitSet bits = new BitSet();
+
+		// sparse, dense and clustered sets
+
+		int kind = random.nextInt(4);
+
+		int from = length == 0 ? 0 : random.nextInt(length);
+		int to = from + (length == 0 ? 0 : random.nextInt(length - from + 1));
+
+		for (int i = 0; i < length; i++) {
+			boolean set;
+
+			switch (kind) {
+				case 0:
+					set = random.nextInt(20) == 0;
+					break;
+				case 1:
+					set = random.nextInt(20) != 0;
+					break;
+				case 2:
+					set = i >= from && i < to && random.nextBoolean();
+					break;
+				default:
+					set = false;
+			}
+
+			if (set) {
+				bits.set(i);
+			}
+		}
+
+		return bits;
+	}
+
+	// built by setting and then clearing so the bounds are sometimes loose
+
+	private static BitFlags toFlags(BitSet bits, int length, Random random) {
+		BitFlags flags = new BitFlags(length);
+
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			flags.set(i);
+		}
+
+		if (length > 0 && random.nextBoolean()) {
+			int extra = random.nextInt(length);
+
+			if (!bits.get(extra)) {
+				flags.set(extra);
+				flags.unset(extra);
+			}
+		}
+
+		return flags;
+	}
+}
@@ -0,0 +1,241 @@
+package com.biglybt.core.stats.transfer.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.biglybt.core.stats.transfer.LongTermStats.RecordAccepter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the binary series totals against a straightforward sum of the per-minute records
+ */
+public class LongTermStatsSeriesTest
+{
+	private static final long MIN = 60 * 1000;
+
+	private static final long DAY = 24 * 60 * MIN;
+
+	private static final int ENTRIES = 3;
+
+	// 2020-02-27 UTC, so the recorded days span a leap day and a month boundary
+
+	private static final long FIRST_DAY = 18319 * DAY;
+
+	private static final int DAYS = 4;
+
+	@TempDir
+	File tempDir;
+
+	@Test
+	public void totalsMatchRecordsWhileRecordingAndAfterReopen()
+			throws Exception {
+		Random random = new Random(1);
+
+		long[][] expected = new long[DAYS * 1440][ENTRIES];
+
+		LongTermStatsSeries series = new LongTermStatsSeries(tempDir, ENTRIES);
+
+		for (int min = 0; min < expected.length; min++) {
+			if (random.nextInt(6) != 0) {
+				continue;
+			}
+
+			long[] values = new long[ENTRIES];
+
+			for (int i = 0; i < ENTRIES; i++) {
+				values[i] = random.nextInt(4) == 0 ? 0 : random.nextInt(1000000);
+				expected[min][i] = values[i];
+			}
+
+			// records land somewhere within their minute
+
+			series.addRecord(FIRST_DAY + min * MIN + random.nextInt((int) MIN), values);
+		}
+
+		// the last day is still open so is summed from memory
+
+		checkRanges(series, expected, random);
+
+		series.close();
+
+		// reopened, the rollups and month indexes come from disk
+
+		series = new LongTermStatsSeries(tempDir, ENTRIES);
+
+		checkRanges(series, expected, random);
+
+		assertThat(new File(tempDir, "2020/02/index.lts").exists()).isTrue();
+		assertThat(new File(tempDir, "2020/03/01.lts").exists()).isTrue();
+
+		series.close();
+	}
+
+	@Test
+	public void textRecordsAreConvertedWhenFirstQueried()
+			throws Exception {
+		long day = FIRST_DAY - 400 * DAY;
+
+		long sessionStart = day + 90 * MIN;
+
+		long[][] expected = new long[1440][ENTRIES];
+
+		// a session start with absolute values, then one record per minute, the last a session end
+
+		File textFile = new File(tempDir, "2019/01/23.dat");
+
+		textFile.getParentFile().mkdirs();
+
+		try (PrintWriter pw = new PrintWriter(new FileOutputStream(textFile))) {
+			pw.println("s,1," + sessionStart / MIN + ",5000,6000,7000");
+
+			for (int i = 1; i <= 100; i++) {
+				long[] values = { i, i * 2, i % 7 == 0 ? 0 : 1000 };
+
+				if (i == 100) {
+					pw.println("e,1," + (sessionStart / MIN + i) + "," + values[0] + "," + values[1] + "," + values[2]);
+				} else {
+					pw.println(values[0] + "," + values[1] + "," + values[2]);
+				}
+
+				expected[90 + i] = values;
+			}
+
+			// malformed lines are skipped
+
+			pw.println("1,2");
+			pw.println("x,y,z");
+		}
+
+		LongTermStatsSeries series = new LongTermStatsSeries(tempDir, ENTRIES);
+
+		assertThat(series.getTotals(day, day + DAY - 1, null)).isEqualTo(sum(expected, day, day, day + DAY - 1, null));
+
+		assertThat(new File(tempDir, "2019/01/23.lts").exists()).isTrue();
+
+		series.close();
+
+		// once converted the text isn't needed
+
+		textFile.delete();
+
+		series = new LongTermStatsSeries(tempDir, ENTRIES);
+
+		assertThat(series.getTotals(day, day + DAY - 1, null)).isEqualTo(sum(expected, day, day, day + DAY - 1, null));
+
+		long start = day + 120 * MIN + 1;
+		long end = day + 185 * MIN;
+
+		assertThat(series.getTotals(start, end, null)).isEqualTo(sum(expected, day, start, end, null));
+
+		series.close();
+	}
+
+	@Test
+	public void unreadableDayFileIsRebuiltFromText()
+			throws Exception {
+		long day = FIRST_DAY - 400 * DAY;
+
+		File textFile = new File(tempDir, "2019/01/23.dat");
+
+		textFile.getParentFile().mkdirs();
+
+		try (PrintWriter pw = new PrintWriter(new FileOutputStream(textFile))) {
+			pw.println("s,1," + (day + 10 * MIN) / MIN + ",0,0,0");
+			pw.println("1,2,3");
+			pw.println("4,5,6");
+		}
+
+		try (FileOutputStream fos = new FileOutputStream(new File(tempDir, "2019/01/23.lts"))) {
+			fos.write(new byte[100]);
+		}
+
+		LongTermStatsSeries series = new LongTermStatsSeries(tempDir, ENTRIES);
+
+		assertThat(series.getTotals(day, day + 11 * MIN, null)).isEqualTo(new long[] { 1, 2, 3 });
+		assertThat(series.getTotals(day, day + DAY - 1, null)).isEqualTo(new long[] { 5, 7, 9 });
+
+		series.close();
+	}
+
+	@Test
+	public void emptyAndMissingRangesHaveZeroTotals()
+			throws Exception {
+		LongTermStatsSeries series = new LongTermStatsSeries(tempDir, ENTRIES);
+
+		assertThat(series.getTotals(FIRST_DAY, FIRST_DAY + 3 * DAY, null)).isEqualTo(new long[ENTRIES]);
+		assertThat(series.getTotals(FIRST_DAY + DAY, FIRST_DAY, null)).isEqualTo(new long[ENTRIES]);
+
+		series.addRecord(FIRST_DAY + 30 * MIN, new long[] { 1, 2, 3 });
+
+		// a range within a single minute that excludes the minute's start
+
+		assertThat(series.getTotals(FIRST_DAY + 30 * MIN + 1, FIRST_DAY + 31 * MIN - 1, null)).isEqualTo(new long[ENTRIES]);
+		assertThat(series.getTotals(FIRST_DAY + 30 * MIN, FIRST_DAY + 30 * MIN, null)).isEqualTo(new long[] { 1, 2, 3 });
+
+		series.close();
+	}
+
+	private void checkRanges(LongTermStatsSeries series, long[][] expected, Random random)
+			throws Exception {
+		long end = FIRST_DAY + DAYS * DAY - 1;
+
+		RecordAccepter evenMinutes = timestamp -> (timestamp / MIN) % 2 == 0;
+
+		// whole days and the whole span
+
+		for (int d = 0; d < DAYS; d++) {
+			checkRange(series, expected, FIRST_DAY + d * DAY, FIRST_DAY + (d + 1) * DAY - 1, null);
+		}
+
+		checkRange(series, expected, FIRST_DAY, end, null);
+		checkRange(series, expected, FIRST_DAY, end, evenMinutes);
+
+		// ranges either side of hour and day boundaries
+
+		for (long edge : new long[] { 60 * MIN, DAY, 2 * DAY + 60 * MIN }) {
+			for (long offset : new long[] { -MIN - 1, -MIN, -1, 0, 1, MIN, MIN + 1 }) {
+				checkRange(series, expected, FIRST_DAY, FIRST_DAY + edge + offset, null);
+				checkRange(series, expected, FIRST_DAY + edge + offset, end, null);
+			}
+		}
+
+		for (int i = 0; i < 500; i++) {
+			long a = FIRST_DAY + (long) (random.nextDouble() * DAYS * DAY);
+			long b = FIRST_DAY + (long) (random.nextDouble() * DAYS * DAY);
+
+			checkRange(series, expected, Math.min(a, b), Math.max(a, b), i % 3 == 0 ? evenMinutes : null);
+		}
+	}
+
+	private void checkRange(LongTermStatsSeries series, long[][] expected, long start, long end, RecordAccepter accepter)
+			throws Exception {
+		assertThat(series.getTotals(start, end, accepter)).describedAs(start + " -> " + end).isEqualTo(
+				sum(expected, FIRST_DAY, start, end, accepter));
+	}
+
+	// records are stamped with the start of their minute
+
+	private static long[] sum(long[][] expected, long base, long start, long end, RecordAccepter accepter) {
+		long[] result = new long[ENTRIES];
+
+		for (int min = 0; min < expected.length; min++) {
+			long time = base + min * MIN;
+
+			if (time < start || time > end || (accepter != null && !accepter.acceptRecord(time))) {
+				continue;
+			}
+
+			for (int i = 0; i < ENTRIES; i++) {
+				result[i] += expected[min][i];
+			}
+		}
+
+		return result;
+	}
+}
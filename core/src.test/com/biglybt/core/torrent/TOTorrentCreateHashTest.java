@@ -0,0 +1,280 @@
+package com.biglybt.core.torrent;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.biglybt.testutil.junit5.DefaultTestCoreConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the hashes of created torrents against a straightforward sequential computation, as
+ * done before piece hashing went concurrent
+ */
+@ExtendWith(DefaultTestCoreConfiguration.class)
+public class TOTorrentCreateHashTest
+{
+	private static final int BLOCK_SIZE = 16 * 1024;
+
+	private static final int[] PIECE_SIZES = { 16 * 1024, 64 * 1024 };
+
+	// file == piece size, < 16KiB, exact power of two, and either side of the block and piece boundaries
+	private static final int[] FILE_SIZES = {
+		1, 1000, 16 * 1024 - 1, 16 * 1024, 16 * 1024 + 1, 64 * 1024, 64 * 1024 + 1,
+		300 * 1000, 1024 * 1024
+	};
+
+	private static final int[] TORRENT_TYPES = { TOTorrent.TT_V1, TOTorrent.TT_V2, TOTorrent.TT_V1_V2 };
+
+	@TempDir
+	File tempDir;
+
+	@Test
+	public void singleFileHashesMatchSequentialHashing()
+			throws Exception {
+		for (int fileSize : FILE_SIZES) {
+			File file = createFile(new File(tempDir, "single"), "file_" + fileSize, fileSize);
+
+			for (int pieceSize : PIECE_SIZES) {
+				for (int type : TORRENT_TYPES) {
+					checkTorrent(file, type, pieceSize);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void multiFileHashesMatchSequentialHashing()
+			throws Exception {
+		File dir = new File(tempDir, "multi");
+
+		for (int i = 0; i < FILE_SIZES.length; i++) {
+			createFile(dir, "file_" + i, FILE_SIZES[i]);
+		}
+
+		for (int pieceSize : PIECE_SIZES) {
+			for (int type : TORRENT_TYPES) {
+				TOTorrent torrent = checkTorrent(dir, type, pieceSize);
+
+				if (type == TOTorrent.TT_V1_V2) {
+					assertThat(Arrays.stream(torrent.getFiles()).anyMatch(TOTorrentFile::isPadFile))
+							.describedAs("hybrid torrent has pad files")
+							.isTrue();
+				}
+			}
+		}
+	}
+
+	private static TOTorrent checkTorrent(File source, int type, int pieceSize)
+			throws Exception {
+		TOTorrent torrent = TOTorrentFactory.createFromFileOrDirWithFixedPieceLength(
+				type, source, new URL("http://localhost/announce"), false, pieceSize).create();
+
+		String desc = source.getName() + ", type " + type + ", piece size " + pieceSize;
+
+		assertThat(torrent.getPieceLength()).describedAs(desc).isEqualTo(pieceSize);
+
+		if (type != TOTorrent.TT_V2) {
+			assertThat(torrent.getPieces())
+					.describedAs("v1 pieces of " + desc)
+					.isDeepEqualTo(v1Pieces(torrent, source, pieceSize));
+		}
+
+		if (type != TOTorrent.TT_V1) {
+			Map pieceLayers = torrent.getAdditionalMapProperty("piece layers");
+
+			for (TOTorrentFile tf : torrent.getFiles()) {
+				if (tf.isPadFile()) {
+					continue;
+				}
+
+				byte[] data = Files.readAllBytes(getFile(torrent, source, tf).toPath());
+
+				byte[] rootHash = tf.getRootHash();
+
+				assertThat(rootHash)
+						.describedAs("v2 root hash of " + tf.getLength() + " byte file, " + desc)
+						.isEqualTo(merkleRoot(data, 0, data.length, 0));
+
+				if (data.length > pieceSize) {
+					Object layer = pieceLayers.get(new String(rootHash, StandardCharsets.ISO_8859_1));
+
+					assertThat((byte[]) layer)
+							.describedAs("piece layer of " + tf.getLength() + " byte file, " + desc)
+							.isEqualTo(pieceLayer(data, pieceSize));
+				}
+			}
+		}
+
+		return torrent;
+	}
+
+	private static File createFile(File dir, String name, int size)
+			throws Exception {
+		dir.mkdirs();
+
+		byte[] data = new byte[size];
+
+		new Random(size).nextBytes(data);
+
+		File file = new File(dir, name);
+
+		try (FileOutputStream fos = new FileOutputStream(file)) {
+			fos.write(data);
+		}
+
+		return file;
+	}
+
+	private static File getFile(TOTorrent torrent, File source, TOTorrentFile tf) {
+		if (torrent.isSimpleTorrent()) {
+			return source;
+		}
+
+		File file = source;
+
+		for (byte[] comp : tf.getPathComponents()) {
+			file = new File(file, new String(comp, StandardCharsets.UTF_8));
+		}
+
+		return file;
+	}
+
+	/**
+	 * SHA-1 of each piece of the torrent's data in file order, pad files being zeros
+	 */
+	private static byte[][] v1Pieces(TOTorrent torrent, File source, int pieceSize)
+			throws Exception {
+		List<byte[]> pieces = new ArrayList<>();
+
+		MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+
+		byte[] buffer = new byte[pieceSize];
+
+		int used = 0;
+
+		for (TOTorrentFile tf : torrent.getFiles()) {
+			long remaining = tf.getLength();
+
+			InputStream is = tf.isPadFile() ? null : new FileInputStream(getFile(torrent, source, tf));
+
+			try {
+				while (remaining > 0) {
+					int len = (int) Math.min(remaining, pieceSize - used);
+
+					if (is == null) {
+						Arrays.fill(buffer, used, used + len, (byte) 0);
+					} else {
+						int pos = used;
+						int end = used + len;
+
+						while (pos < end) {
+							pos += is.read(buffer, pos, end - pos);
+						}
+					}
+
+					used += len;
+					remaining -= len;
+
+					if (used == pieceSize) {
+						sha1.update(buffer, 0, used);
+						pieces.add(sha1.digest());
+						used = 0;
+					}
+				}
+			} finally {
+				if (is != null) {
+					is.close();
+				}
+			}
+		}
+
+		if (used > 0) {
+			sha1.update(buffer, 0, used);
+			pieces.add(sha1.digest());
+		}
+
+		return pieces.toArray(new byte[pieces.size()][]);
+	}
+
+	/**
+	 * BEP 52 piece layer: the root of each piece's subtree, the last one padded with zero leaves
+	 */
+	private static byte[] pieceLayer(byte[] data, int pieceSize)
+			throws Exception {
+		int numPieces = (data.length + pieceSize - 1) / pieceSize;
+
+		byte[] layer = new byte[numPieces * 32];
+
+		for (int i = 0; i < numPieces; i++) {
+			int start = i * pieceSize;
+
+			byte[] hash = merkleRoot(data, start, Math.min(pieceSize, data.length - start), pieceSize / BLOCK_SIZE);
+
+			System.arraycopy(hash, 0, layer, i * 32, 32);
+		}
+
+		return layer;
+	}
+
+	/**
+	 * Merkle root over the SHA-256 of each 16KiB block, padded with zero leaves to a power of two
+	 * and to at least minLeaves
+	 */
+	private static byte[] merkleRoot(byte[] data, int offset, int length, int minLeaves)
+			throws Exception {
+		MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+
+		int numBlocks = Math.max(1, (length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+
+		int numLeaves = 1;
+
+		while (numLeaves < Math.max(numBlocks, minLeaves)) {
+			numLeaves <<= 1;
+		}
+
+		byte[][] level = new byte[numLeaves][];
+
+		for (int i = 0; i < numLeaves; i++) {
+			if (i < numBlocks) {
+				int start = offset + i * BLOCK_SIZE;
+
+				sha256.update(data, start, Math.min(BLOCK_SIZE, offset + length - start));
+
+				level[i] = sha256.digest();
+			} else {
+				level[i] = new byte[32];
+			}
+		}
+
+		while (level.length > 1) {
+			byte[][] next = new byte[level.length / 2][];
+
+			for (int i = 0; i < next.length; i++) {
+				sha256.update(level[i * 2]);
+				sha256.update(level[i * 2 + 1]);
+
+				next[i] = sha256.digest();
+			}
+
+			level = next;
+		}
+
+		return level[0];
+	}
+}
@@ -0,0 +1,330 @@
+package com.biglybt.core.tracker.server.impl;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.biglybt.core.tracker.server.TRTrackerServerPeer;
+import com.biglybt.core.util.HashWrapper;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks compact peer selection against the eligibility rules applied to each peer in turn
+ */
+public class TRTrackerServerPeerTableTest
+{
+	private static final long NOW = 100000;
+
+	@Test
+	public void selectionsAreDistinctEligiblePeers()
+			throws Exception {
+		Random random = new Random(1);
+
+		for (int round = 0; round < 200; round++) {
+			TRTrackerServerPeerTable table = new TRTrackerServerPeerTable();
+
+			List<TRTrackerServerPeerImpl> peers = new ArrayList<>();
+
+			int size = 1 + random.nextInt(300);
+
+			for (int id = 0; id < size; id++) {
+				TRTrackerServerPeerImpl peer = randomPeer(random, id);
+
+				peers.add(peer);
+
+				table.add(peer);
+			}
+
+			TRTrackerServerPeerImpl requesting = peers.get(random.nextInt(size));
+
+			int numWant = 1 + random.nextInt(2 * size);
+
+			boolean includeSeeds = random.nextBoolean();
+
+			byte cryptoLevel = random.nextBoolean() ? TRTrackerServerPeer.CRYPTO_NONE : TRTrackerServerPeer.CRYPTO_SUPPORTED;
+
+			boolean preferGoodNAT = random.nextBoolean();
+
+			int added = table.select(random, requesting, numWant, includeSeeds, cryptoLevel, preferGoodNAT, NOW);
+
+			List<TRTrackerServerPeerImpl> selected = decode(table, peers);
+
+			assertThat(selected).hasSize(added);
+			assertThat(new HashSet<>(selected)).hasSize(added);
+			assertThat(added).isLessThanOrEqualTo(numWant);
+
+			int good = 0;
+			int bad = 0;
+
+			for (TRTrackerServerPeerImpl peer : peers) {
+				if (isEligible(peer, requesting, includeSeeds, cryptoLevel)) {
+					if (preferGoodNAT && peer.isNATStatusBad()) {
+						bad++;
+					} else {
+						good++;
+					}
+				}
+			}
+
+			for (TRTrackerServerPeerImpl peer : selected) {
+				assertThat(isEligible(peer, requesting, includeSeeds, cryptoLevel)).isTrue();
+			}
+
+			// wanting a third or more of the table scans the lot, otherwise only a sample is looked at
+
+			if (numWant * 3 > size) {
+				assertThat(added).isEqualTo(Math.min(numWant, good + bad));
+
+				int selectedBad = 0;
+
+				for (TRTrackerServerPeerImpl peer : selected) {
+					if (preferGoodNAT && peer.isNATStatusBad()) {
+						selectedBad++;
+					}
+				}
+
+				assertThat(selectedBad).isEqualTo(Math.max(0, added - good));
+
+				if (added < numWant) {
+					Set<TRTrackerServerPeerImpl> timedOut = new HashSet<>();
+
+					for (TRTrackerServerPeerImpl peer : peers) {
+						if (NOW > peer.getTimeout()) {
+							timedOut.add(peer);
+						}
+					}
+
+					assertThat(new HashSet<>(table.getTimedOut())).isEqualTo(timedOut);
+				}
+			}
+
+			for (TRTrackerServerPeerImpl peer : table.getTimedOut()) {
+				assertThat(NOW > peer.getTimeout()).isTrue();
+			}
+		}
+	}
+
+	@Test
+	public void singlePeerSelectionIsUniform() {
+		Random random = new Random(2);
+
+		TRTrackerServerPeerTable table = new TRTrackerServerPeerTable();
+
+		List<TRTrackerServerPeerImpl> peers = new ArrayList<>();
+
+		for (int id = 0; id < 10; id++) {
+			TRTrackerServerPeerImpl peer = peer(id, v4(id), 1000 + id, TRTrackerServerPeer.CRYPTO_NONE, false,
+					TRTrackerServerPeer.NAT_CHECK_OK, NOW * 2);
+
+			peers.add(peer);
+
+			table.add(peer);
+		}
+
+		int[] counts = new int[10];
+
+		for (int i = 0; i < 10000; i++) {
+			assertThat(table.select(random, null, 1, true, TRTrackerServerPeer.CRYPTO_NONE, false, NOW)).isEqualTo(1);
+
+			counts[peers.indexOf(decode(table, peers).get(0))]++;
+		}
+
+		for (int count : counts) {
+			assertThat(count).isGreaterThan(850);
+			assertThat(count).isLessThan(1150);
+		}
+	}
+
+	@Test
+	public void removalKeepsTheTableDense()
+			throws Exception {
+		Random random = new Random(3);
+
+		TRTrackerServerPeerTable table = new TRTrackerServerPeerTable();
+
+		List<TRTrackerServerPeerImpl> live = new ArrayList<>();
+
+		for (int id = 0; id < 500; id++) {
+			TRTrackerServerPeerImpl peer = peer(id, id % 2 == 0 ? v4(id) : v6(id), 1000 + id, TRTrackerServerPeer.CRYPTO_NONE, false,
+					TRTrackerServerPeer.NAT_CHECK_OK, NOW * 2);
+
+			table.add(peer);
+
+			// adding twice has no effect
+
+			table.add(peer);
+
+			live.add(peer);
+		}
+
+		List<TRTrackerServerPeerImpl> all = new ArrayList<>(live);
+
+		// shrink far enough for the table to give back space, selecting as we go so slots get shuffled
+
+		while (live.size() > 20) {
+			TRTrackerServerPeerImpl peer = live.remove(random.nextInt(live.size()));
+
+			table.remove(peer);
+
+			// removing twice has no effect
+
+			table.remove(peer);
+
+			assertThat(peer.getTableSlot()).isEqualTo(-1);
+			assertThat(table.size()).isEqualTo(live.size());
+
+			if (live.size() % 50 == 0) {
+				table.select(random, null, 10, true, TRTrackerServerPeer.CRYPTO_NONE, false, NOW);
+			}
+		}
+
+		assertThat(table.select(random, null, 1000, true, TRTrackerServerPeer.CRYPTO_NONE, false, NOW)).isEqualTo(live.size());
+
+		assertThat(new HashSet<>(decode(table, all))).isEqualTo(new HashSet<>(live));
+
+		// and the space can be reused
+
+		for (TRTrackerServerPeerImpl peer : all) {
+			if (!live.contains(peer)) {
+				table.add(peer);
+			}
+		}
+
+		assertThat(table.select(random, null, 1000, true, TRTrackerServerPeer.CRYPTO_NONE, false, NOW)).isEqualTo(all.size());
+
+		assertThat(new HashSet<>(decode(table, all))).isEqualTo(new HashSet<>(all));
+	}
+
+	@Test
+	public void peersAreEncodedOnceResolved()
+			throws Exception {
+		TRTrackerServerPeerTable table = new TRTrackerServerPeerTable();
+
+		TRTrackerServerPeerImpl peer = peer(1, null, 6881, TRTrackerServerPeer.CRYPTO_REQUIRED, false,
+				TRTrackerServerPeer.NAT_CHECK_OK, NOW * 2);
+
+		table.add(peer);
+
+		assertThat(table.select(new Random(), null, 10, true, TRTrackerServerPeer.CRYPTO_SUPPORTED, false, NOW)).isEqualTo(0);
+
+		peer.hostNameResolutionComplete(InetAddress.getByAddress(new byte[] { 1, 2, 3, 4 }));
+
+		assertThat(table.select(new Random(), null, 10, true, TRTrackerServerPeer.CRYPTO_SUPPORTED, false, NOW)).isEqualTo(1);
+
+		assertThat(table.getV4Peers()).isEqualTo(new byte[] { 1, 2, 3, 4, 0x1a, (byte) 0xe1 });
+		assertThat(table.getV6Peers()).isEqualTo(new byte[0]);
+		assertThat(table.getCryptoFlags()).isEqualTo(new byte[] { 1 });
+
+		// and again when the address changes
+
+		peer.hostNameResolutionComplete(InetAddress.getByAddress(v6(7)));
+
+		assertThat(table.select(new Random(), null, 10, true, TRTrackerServerPeer.CRYPTO_SUPPORTED, false, NOW)).isEqualTo(1);
+
+		assertThat(table.getV4Peers()).isEqualTo(new byte[0]);
+		assertThat(table.getV6Count()).isEqualTo(1);
+		assertThat(peerId(table.getV6Peers(), 0, 16)).isEqualTo(7);
+	}
+
+	private static boolean isEligible(TRTrackerServerPeerImpl peer, TRTrackerServerPeerImpl requesting, boolean includeSeeds, byte cryptoLevel) {
+		return NOW <= peer.getTimeout()
+				&& peer != requesting
+				&& peer.getTCPPort() != 0
+				&& peer.getIPAddressBytes() != null
+				&& !(cryptoLevel == TRTrackerServerPeer.CRYPTO_NONE && peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED)
+				&& (includeSeeds || !peer.isSeed());
+	}
+
+	// maps the compact entries of the last selection back to peers, checking ports and crypto flags on the way
+
+	private static List<TRTrackerServerPeerImpl> decode(TRTrackerServerPeerTable table, List<TRTrackerServerPeerImpl> peers) {
+		List<TRTrackerServerPeerImpl> result = new ArrayList<>();
+
+		byte[] v4 = table.getV4Peers();
+		byte[] v6 = table.getV6Peers();
+
+		assertThat(v4.length).isEqualTo(table.getV4Count() * TRTrackerServerPeerTable.V4_ENTRY_SIZE);
+		assertThat(v6.length).isEqualTo(table.getV6Count() * TRTrackerServerPeerTable.V6_ENTRY_SIZE);
+
+		for (int pos = 0; pos < v4.length; pos += TRTrackerServerPeerTable.V4_ENTRY_SIZE) {
+			result.add(decode(v4, pos, 4, peers));
+		}
+
+		for (int pos = 0; pos < v6.length; pos += TRTrackerServerPeerTable.V6_ENTRY_SIZE) {
+			result.add(decode(v6, pos, 16, peers));
+		}
+
+		byte[] cryptoFlags = table.getCryptoFlags();
+
+		assertThat(cryptoFlags.length).isEqualTo(result.size());
+
+		for (int i = 0; i < result.size(); i++) {
+			assertThat(cryptoFlags[i] == 1).isEqualTo(result.get(i).getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED);
+		}
+
+		return result;
+	}
+
+	private static TRTrackerServerPeerImpl decode(byte[] entries, int pos, int addressLength, List<TRTrackerServerPeerImpl> peers) {
+		TRTrackerServerPeerImpl peer = peers.get(peerId(entries, pos, addressLength));
+
+		int port = ((entries[pos + addressLength] & 0xff) << 8) | (entries[pos + addressLength + 1] & 0xff);
+
+		assertThat(port).isEqualTo(peer.getTCPPort());
+
+		return peer;
+	}
+
+	// the peer's id is held in the last two bytes of its address
+
+	private static int peerId(byte[] entries, int pos, int addressLength) {
+		return ((entries[pos + addressLength - 2] & 0xff) << 8) | (entries[pos + addressLength - 1] & 0xff);
+	}
+
+	private static TRTrackerServerPeerImpl randomPeer(Random random, int id) {
+		int kind = random.nextInt(10);
+
+		byte[] address = kind == 0 ? null : kind < 4 ? v6(id) : v4(id);
+
+		int port = random.nextInt(10) == 0 ? 0 : 1000 + random.nextInt(60000);
+
+		byte crypto = (byte) random.nextInt(3);
+
+		byte natStatus = random.nextInt(4) == 0 ? TRTrackerServerPeer.NAT_CHECK_FAILED : TRTrackerServerPeer.NAT_CHECK_OK;
+
+		long timeout = random.nextInt(10) == 0 ? NOW - 1 : NOW + random.nextInt(1000);
+
+		return peer(id, address, port, crypto, random.nextInt(3) == 0, natStatus, timeout);
+	}
+
+	private static TRTrackerServerPeerImpl peer(int id, byte[] address, int port, byte crypto, boolean seed, byte natStatus, long timeout) {
+		byte[] peerId = new byte[20];
+
+		peerId[0] = (byte) (id >> 8);
+		peerId[1] = (byte) id;
+
+		return new TRTrackerServerPeerImpl(new HashWrapper(peerId), id, "peer".getBytes(), false, (short) port, (short) 0, (short) 0,
+				crypto, (byte) 0, "peer", address, natStatus, timeout, 0, 0, seed ? 0 : 1000, 0, false, false, (short) 0);
+	}
+
+	private static byte[] v4(int id) {
+		return new byte[] { 10, 0, (byte) (id >> 8), (byte) id };
+	}
+
+	private static byte[] v6(int id) {
+		byte[] address = new byte[16];
+
+		address[0] = 0x20;
+		address[1] = 0x01;
+		address[14] = (byte) (id >> 8);
+		address[15] = (byte) id;
+
+		return address;
+	}
+}
@@ -0,0 +1,169 @@
+package com.biglybt.core.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BLazyDecoderTest
+{
+
+	@Test
+	public void reEncodingUnchangedViewGivesOriginalBytes()
+			throws Exception {
+		byte[] data = BEncoder.encode(sample());
+
+		Map<String, Object> lazy = BLazyDecoder.decode(ByteBuffer.wrap(data));
+
+		assertThat(BEncoder.encode(lazy)).isEqualTo(data);
+		assertThat(BEncoder.encode((Map) BLazyDecoder.materialise(lazy))).isEqualTo(data);
+		assertThat(BEncoder.mapsAreIdentical(lazy, BDecoder.decode(data))).isTrue();
+	}
+
+	@Test
+	public void listElementsAreStable()
+			throws Exception {
+		Map<String, Object> lazy = BLazyDecoder.decode(ByteBuffer.wrap(BEncoder.encode(sample())));
+
+		List<Object> files = (List<Object>) lazy.get("files");
+
+		assertThat(files.get(0)).isSameAs(files.get(0));
+		assertThat(lazy.get("files")).isSameAs(files);
+		assertThat(((Map) files.get(1)).get("path")).isSameAs(((Map) files.get(1)).get("path"));
+	}
+
+	@Test
+	public void changesToNestedContainersAreKept()
+			throws Exception {
+		Map<String, Object> lazy = BLazyDecoder.decode(ByteBuffer.wrap(BEncoder.encode(sample())));
+
+		List<Object> files = (List<Object>) lazy.get("files");
+
+		((Map<String, Object>) files.get(0)).put("length", 99L);
+		((List<Object>) ((Map) files.get(1)).get("path")).add(bytes("extra"));
+		((Map<String, Object>) lazy.get("info")).put("name", bytes("renamed"));
+
+		Map<String, Object> expected = sample();
+
+		List<Object> expectedFiles = (List<Object>) expected.get("files");
+
+		((Map<String, Object>) expectedFiles.get(0)).put("length", 99L);
+		((List<Object>) ((Map) expectedFiles.get(1)).get("path")).add(bytes("extra"));
+		((Map<String, Object>) expected.get("info")).put("name", bytes("renamed"));
+
+		assertThat(((Map) files.get(0)).get("length")).isEqualTo(99L);
+		assertThat(BEncoder.encode(lazy)).isEqualTo(BEncoder.encode(expected));
+		assertThat(BEncoder.encode((Map) BLazyDecoder.materialise(lazy))).isEqualTo(BEncoder.encode(expected));
+	}
+
+	@Test
+	public void modifyingListViewKeepsDecodedElements()
+			throws Exception {
+		Map<String, Object> lazy = BLazyDecoder.decode(ByteBuffer.wrap(BEncoder.encode(sample())));
+
+		List<Object> files = (List<Object>) lazy.get("files");
+
+		Map<String, Object> first = (Map<String, Object>) files.get(0);
+
+		first.put("length", 5L);
+
+		files.add(file("c", 3));
+		files.remove(1);
+		files.set(0, files.get(0));
+
+		assertThat(files).hasSize(2);
+		assertThat(files.get(0)).isSameAs(first);
+
+		Map<String, Object> expected = sample();
+
+		List<Object> expectedFiles = (List<Object>) expected.get("files");
+
+		((Map<String, Object>) expectedFiles.get(0)).put("length", 5L);
+		expectedFiles.add(file("c", 3));
+		expectedFiles.remove(1);
+
+		assertThat(BEncoder.encode(lazy)).isEqualTo(BEncoder.encode(expected));
+	}
+
+	@Test
+	public void topLevelPutAndRemove()
+			throws Exception {
+		Map<String, Object> lazy = BLazyDecoder.decode(ByteBuffer.wrap(BEncoder.encode(sample())));
+
+		assertThat(lazy.put("announce", bytes("http://b/"))).isEqualTo(bytes("http://a/"));
+		assertThat(lazy.remove("comment")).isEqualTo(bytes("hello"));
+		assertThat(lazy.put("added", 1L)).isNull();
+
+		Map<String, Object> expected = sample();
+
+		expected.put("announce", bytes("http://b/"));
+		expected.remove("comment");
+		expected.put("added", 1L);
+
+		assertThat(BEncoder.encode(lazy)).isEqualTo(BEncoder.encode(expected));
+	}
+
+	@Test
+	public void slicesMatchDecodedStrings()
+			throws Exception {
+		Map<String, Object> lazy = BLazyDecoder.decode(ByteBuffer.wrap(BEncoder.encode(sample())));
+
+		assertThat(((BLazyDecoder.LazyMap) lazy).getSlice("comment")).isEqualTo(ByteBuffer.wrap(bytes("hello")));
+		assertThat(((BLazyDecoder.LazyMap) lazy).getSlice("files")).isNull();
+
+		BLazyDecoder.LazyList path = (BLazyDecoder.LazyList) ((Map) ((List) lazy.get("files")).get(1)).get("path");
+
+		assertThat(path.getSlice(1)).isEqualTo(ByteBuffer.wrap(bytes("b")));
+
+		path.set(1, bytes("z"));
+
+		assertThat(path.getSlice(1)).isEqualTo(ByteBuffer.wrap(bytes("z")));
+	}
+
+	private static Map<String, Object> sample() {
+		Map<String, Object> map = new HashMap<>();
+
+		map.put("announce", bytes("http://a/"));
+		map.put("comment", bytes("hello"));
+
+		List<Object> files = new ArrayList<>();
+
+		files.add(file("a", 1));
+		files.add(file("b", 2));
+
+		map.put("files", files);
+
+		Map<String, Object> info = new HashMap<>();
+
+		info.put("name", bytes("sample"));
+		info.put("piece length", 16384L);
+
+		map.put("info", info);
+
+		return map;
+	}
+
+	private static Map<String, Object> file(String name, long length) {
+		Map<String, Object> file = new HashMap<>();
+
+		List<Object> path = new ArrayList<>();
+
+		path.add(bytes("dir"));
+		path.add(bytes(name));
+
+		file.put("path", path);
+		file.put("length", length);
+
+		return file;
+	}
+
+	private static byte[] bytes(String str) {
+		return str.getBytes(StandardCharsets.UTF_8);
+	}
+}
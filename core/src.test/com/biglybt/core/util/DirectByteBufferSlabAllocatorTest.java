@@ -0,0 +1,135 @@
+package com.biglybt.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.biglybt.core.disk.DiskManager;
+import com.biglybt.testutil.junit5.DefaultTestCoreConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the free byte accounting of the slabs and that idle regions are released by compaction
+ */
+@ExtendWith(DefaultTestCoreConfiguration.class)
+public class DirectByteBufferSlabAllocatorTest
+{
+	private static final int REGION_SIZE = 1024 * 1024;
+
+	private static final int BLOCK = DiskManager.BLOCK_SIZE + 128;
+
+	private static final int SLICES_PER_REGION = REGION_SIZE / BLOCK;
+
+	@Test
+	public void freeSlicesAreCountedAndIdleRegionsReleased()
+			throws Exception {
+		DirectByteBufferSlabAllocator slabs = newSlabs();
+
+		List<DirectByteBuffer> held = new ArrayList<>();
+
+		// two regions' worth, allocated and freed by threads that then die so nothing is left in
+		// their magazines once reclaimed
+
+		onThread(() -> {
+			for (int i = 0; i < SLICES_PER_REGION + 1; i++) {
+				held.add(slabs.allocate(DirectByteBuffer.AL_OTHER, BLOCK));
+			}
+		});
+
+		assertThat(slabs.getFreeBytes()).isEqualTo((SLICES_PER_REGION - 1) * (long) BLOCK);
+
+		onThread(() -> {
+			for (DirectByteBuffer buffer : held) {
+				assertThat(slabs.free(buffer)).isTrue();
+			}
+		});
+
+		slabs.reclaimDeadThreads();
+
+		assertThat(slabs.getFreeBytes()).isEqualTo(2 * SLICES_PER_REGION * (long) BLOCK);
+
+		// a region is only released once it's been idle for a whole period
+
+		assertThat(slabs.releaseIdleRegions()).isEqualTo(0);
+		assertThat(slabs.releaseIdleRegions()).isEqualTo(2 * SLICES_PER_REGION * (long) BLOCK);
+
+		assertThat(slabs.getFreeBytes()).isEqualTo(0);
+		assertThat(slabs.releaseIdleRegions()).isEqualTo(0);
+
+		// and new regions are added when needed again
+
+		onThread(() -> {
+			DirectByteBuffer buffer = slabs.allocate(DirectByteBuffer.AL_OTHER, BLOCK);
+
+			assertThat(buffer).isNotNull();
+			assertThat(buffer.remaining(DirectByteBuffer.SS_OTHER)).isEqualTo(BLOCK);
+
+			slabs.free(buffer);
+		});
+
+		slabs.reclaimDeadThreads();
+
+		assertThat(slabs.getFreeBytes()).isEqualTo(SLICES_PER_REGION * (long) BLOCK);
+	}
+
+	@Test
+	public void regionsInUseOrUsedSinceTheLastPassAreKept()
+			throws Exception {
+		DirectByteBufferSlabAllocator slabs = newSlabs();
+
+		List<DirectByteBuffer> held = new ArrayList<>();
+
+		onThread(() -> held.add(slabs.allocate(DirectByteBuffer.AL_OTHER, BLOCK)));
+
+		slabs.reclaimDeadThreads();
+
+		// one slice is out so the region isn't idle
+
+		assertThat(slabs.releaseIdleRegions()).isEqualTo(0);
+		assertThat(slabs.releaseIdleRegions()).isEqualTo(0);
+
+		onThread(() -> slabs.free(held.remove(0)));
+
+		slabs.reclaimDeadThreads();
+
+		assertThat(slabs.releaseIdleRegions()).isEqualTo(0);
+
+		// taken and returned between passes, so not idle for the whole period
+
+		onThread(() -> slabs.free(slabs.allocate(DirectByteBuffer.AL_OTHER, BLOCK)));
+
+		slabs.reclaimDeadThreads();
+
+		assertThat(slabs.releaseIdleRegions()).isEqualTo(0);
+		assertThat(slabs.releaseIdleRegions()).isEqualTo(SLICES_PER_REGION * (long) BLOCK);
+	}
+
+	private static DirectByteBufferSlabAllocator newSlabs() {
+		// the real pool's statics are only set up when initialised through the base class
+
+		DirectByteBufferPool.getBuffer(DirectByteBuffer.AL_OTHER, 1).returnToPool();
+
+		return new DirectByteBufferSlabAllocator(new DirectByteBufferPoolReal(), REGION_SIZE);
+	}
+
+	private static void onThread(Runnable runnable)
+			throws Exception {
+		List<Throwable> errors = new ArrayList<>();
+
+		Thread thread = new Thread(() -> {
+			try {
+				runnable.run();
+			} catch (Throwable e) {
+				errors.add(e);
+			}
+		});
+
+		thread.start();
+		thread.join();
+
+		assertThat(errors).isEmpty();
+	}
+}
@@ -0,0 +1,269 @@
+package com.biglybt.core.util;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerWheelTest
+{
+	private static final long BASE = 1600000000000L;
+
+	private static final long TICK = 16;
+
+	// first level covers 256 ticks, each further level 64 times the one below, then overflow
+
+	private static final long L1_START = 256 * TICK;
+
+	private static final long L2_START = L1_START * 64;
+
+	private static final long L3_START = L2_START * 64;
+
+	private static final long OVERFLOW_START = L3_START * 64;
+
+	// steps stay below the gap at which the wheel is rebuilt rather than stepped
+
+	private static final long MAX_STEP = ( 1L << 19 ) * TICK;
+
+	@Test
+	public void eventsCascadeAcrossLevelBoundaries() {
+		TimerWheel wheel = newWheel();
+
+		List<TimerEvent> events = new ArrayList<>();
+
+		for (long start : new long[] { L1_START, L2_START, L3_START, OVERFLOW_START }) {
+			for (long offset : new long[] { -TICK, -1, 0, 1, TICK, 3 * start / 2 }) {
+				events.add(add(wheel, BASE + start + offset));
+			}
+		}
+
+		stepAndCheck(wheel, events, new Random(1), BASE + 3 * OVERFLOW_START);
+	}
+
+	@Test
+	public void randomEventsAreHandedOutOnTime() {
+		Random random = new Random(2);
+
+		TimerWheel wheel = newWheel();
+
+		List<TimerEvent> events = new ArrayList<>();
+
+		for (int i = 0; i < 2000; i++) {
+			long range = i % 4 == 0 ? 2 * OVERFLOW_START : i % 2 == 0 ? L2_START : L1_START;
+
+			events.add(add(wheel, BASE + (long) (random.nextDouble() * range)));
+		}
+
+		stepAndCheck(wheel, events, random, BASE + 2 * OVERFLOW_START + TICK);
+	}
+
+	@Test
+	public void nextWhenIsTheEarliestEvent() {
+		Random random = new Random(3);
+
+		TimerWheel wheel = newWheel();
+
+		List<TimerEvent> events = new ArrayList<>();
+
+		for (int i = 0; i < 500; i++) {
+			events.add(add(wheel, BASE + 1 + (long) (random.nextDouble() * 2 * OVERFLOW_START)));
+		}
+
+		long now = BASE;
+
+		while (!events.isEmpty()) {
+			assertThat(wheel.getNextWhen()).isEqualTo(earliest(events));
+
+			if (random.nextBoolean()) {
+				TimerEvent event = events.remove(random.nextInt(events.size()));
+
+				assertThat(wheel.remove(event)).isTrue();
+			} else {
+				now = Math.min(earliest(events), now + MAX_STEP);
+
+				List<TimerEvent> due = new ArrayList<>();
+
+				wheel.getDue(now, due);
+
+				events.removeAll(due);
+			}
+		}
+
+		assertThat(wheel.isEmpty()).isTrue();
+		assertThat(wheel.getNextWhen()).isEqualTo(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void longGapRebuildsWithoutLosingEvents() {
+		TimerWheel wheel = newWheel();
+
+		TimerEvent soon = add(wheel, BASE + TICK);
+		TimerEvent middle = add(wheel, BASE + L3_START);
+		TimerEvent later = add(wheel, BASE + 2 * OVERFLOW_START);
+
+		// well beyond the rebuild gap
+
+		long jump = BASE + OVERFLOW_START;
+
+		List<TimerEvent> due = new ArrayList<>();
+
+		wheel.getDue(jump, due);
+
+		assertThat(due).containsExactlyInAnyOrder(soon, middle);
+		assertThat(wheel.size()).isEqualTo(1);
+		assertThat(wheel.getNextWhen()).isEqualTo(later.getWhen());
+
+		due.clear();
+
+		wheel.getDue(later.getWhen() - 1, due);
+
+		assertThat(due).isEmpty();
+
+		wheel.getDue(later.getWhen(), due);
+
+		assertThat(due).containsExactly(later);
+		assertThat(wheel.isEmpty()).isTrue();
+	}
+
+	@Test
+	public void removingAnEventAlreadyHandedOutIsIgnored() {
+		TimerWheel wheel = newWheel();
+
+		TimerEvent first = add(wheel, BASE + TICK);
+		TimerEvent second = add(wheel, BASE + 2 * TICK);
+
+		List<TimerEvent> due = new ArrayList<>();
+
+		wheel.getDue(BASE + TICK, due);
+
+		assertThat(due).containsExactly(first);
+
+		assertThat(wheel.remove(first)).isFalse();
+		assertThat(wheel.size()).isEqualTo(1);
+
+		assertThat(wheel.remove(second)).isTrue();
+		assertThat(wheel.remove(second)).isFalse();
+		assertThat(wheel.isEmpty()).isTrue();
+	}
+
+	@Test
+	public void eventsAddedInThePastAreDueImmediately() {
+		TimerWheel wheel = newWheel();
+
+		TimerEvent pending = add(wheel, BASE + L1_START * 2);
+
+		long now = BASE + L1_START;
+
+		List<TimerEvent> due = new ArrayList<>();
+
+		wheel.getDue(now, due);
+
+		assertThat(due).isEmpty();
+
+		TimerEvent late = add(wheel, now - L1_START / 2);
+		TimerEvent veryLate = add(wheel, BASE - L2_START);
+
+		assertThat(wheel.getNextWhen()).isEqualTo(veryLate.getWhen());
+
+		wheel.getDue(now, due);
+
+		assertThat(due).containsExactlyInAnyOrder(late, veryLate);
+
+		assertThat(wheel.getNextWhen()).isEqualTo(pending.getWhen());
+	}
+
+	@Test
+	public void rebuildReplacesEventsWithChangedTimes() {
+		TimerWheel wheel = newWheel();
+
+		TimerEvent event = add(wheel, BASE + L3_START);
+
+		event.setWhen(BASE + TICK);
+
+		wheel.rebuild(BASE);
+
+		assertThat(wheel.getNextWhen()).isEqualTo(BASE + TICK);
+
+		List<TimerEvent> due = new ArrayList<>();
+
+		wheel.getDue(BASE + TICK, due);
+
+		assertThat(due).containsExactly(event);
+	}
+
+	private static TimerWheel newWheel() {
+		TimerWheel wheel = new TimerWheel();
+
+		// an empty wheel just moves to the time given
+
+		wheel.getDue(BASE, new ArrayList<>());
+
+		return wheel;
+	}
+
+	private static TimerEvent add(TimerWheel wheel, long when) {
+		TimerEvent event = new TimerEvent(null, 0, BASE, when, true, null);
+
+		wheel.add(event);
+
+		return event;
+	}
+
+	private static long earliest(List<TimerEvent> events) {
+		long result = Long.MAX_VALUE;
+
+		for (TimerEvent event : events) {
+			result = Math.min(result, event.getWhen());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Moves time forward in random steps, sometimes landing exactly on an event, and checks that
+	 * each event is handed out by the first call whose limit reaches it
+	 */
+	private static void stepAndCheck(TimerWheel wheel, List<TimerEvent> events, Random random, long end) {
+		Set<TimerEvent> remaining = new HashSet<>(events);
+
+		long now = BASE;
+
+		List<TimerEvent> due = new ArrayList<>();
+
+		while (now < end) {
+			long previous = now;
+
+			long next = earliest(new ArrayList<>(remaining));
+
+			if (next > now && next - now <= MAX_STEP && random.nextBoolean()) {
+				now = next;
+			} else {
+				now += 1 + (long) (random.nextDouble() * MAX_STEP);
+			}
+
+			due.clear();
+
+			wheel.getDue(now, due);
+
+			for (TimerEvent event : due) {
+				assertThat(remaining.remove(event)).isTrue();
+				assertThat(event.getWhen()).isGreaterThan(previous);
+				assertThat(event.getWhen()).isLessThanOrEqualTo(now);
+			}
+
+			for (TimerEvent event : remaining) {
+				assertThat(event.getWhen()).isGreaterThan(now);
+			}
+
+			assertThat(wheel.size()).isEqualTo(remaining.size());
+		}
+
+		assertThat(remaining).isEmpty();
+		assertThat(wheel.isEmpty()).isTrue();
+	}
+}
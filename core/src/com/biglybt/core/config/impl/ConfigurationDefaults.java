@@ -160,6 +160,9 @@ public class ConfigurationDefaults {
     def.put(ConfigKeys.Connection.BCFG_PEERCONTROL_UDP_PUBLIC_ENABLE, TRUE );
     def.put(ConfigKeys.Connection.BCFG_WEBSEED_ACTIVATION_USES_AVAILABILITY, TRUE );
     def.put(ConfigKeys.Connection.BCFG_WEBSEED_ACTIVATION_MIN_SPEED_KBPS, 5 );
+    def.put(ConfigKeys.Connection.BCFG_WEBSEED_PIPELINE_ENABLE, FALSE );
+    def.put(ConfigKeys.Connection.ICFG_WEBSEED_PIPELINE_CONNECTIONS, 4 );
+    def.put(ConfigKeys.Connection.ICFG_WEBSEED_PIPELINE_DEPTH, 4 );
     def.put("IPV6 Enable Support", FALSE );
     def.put(ConfigKeys.Connection.BCFG_IPV_6_CHECK_MULTIPLE_ADDRESS_CHECKS, TRUE );
     def.put("IPV6 Prefer Addresses",FALSE );
@@ -437,6 +440,7 @@ public class ConfigurationDefaults {
     def.put( "Prioritize Most Completed Files", FALSE );
     def.put( ConfigKeys.Transfer.ICFG_SET_FILE_PRIORITY_REM_PIECE, ZERO );
     def.put( "Piece Picker Request Hint Enabled", TRUE );
+    def.put( "Piece Picker Indexed Selection Enabled", FALSE );
     def.put( "Use Lazy Bitfield", FALSE );
     def.put( "Zero New", FALSE );
     def.put( "Zero New Stop", FALSE );
@@ -614,6 +618,8 @@ public class ConfigurationDefaults {
     def.put( "config.style.doNotUseGB", FALSE );
 
     def.put( "Save Torrent Backup", FALSE );
+    def.put( "download.state.journal.enable", TRUE );
+    def.put( "downloads.config.sharded", TRUE );
 
     def.put( "Sharing Protocol", "DHT" );
     def.put( "Sharing Add Hashes", FALSE );
@@ -646,6 +652,8 @@ public class ConfigurationDefaults {
     def.put( ConfigKeys.File.BCFG_DISKMANAGER_ONE_OP_PER_FS, FALSE );
     def.put( ConfigKeys.File.BCFG_DISKMANAGER_ONE_OP_PER_FS_CONC_READ, FALSE );
     def.put( "diskmanager.hashchecking.maxactive", ONE );
+    def.put( "diskmanager.hashchecking.queue.depth.mb", new Long(32) );
+    def.put( "diskmanager.hashchecking.device.budget.mb", ZERO );
     def.put( "Default Start Torrents Stopped", FALSE);
     def.put( "Default Start Torrents Stopped Auto Pause", FALSE );
     def.put( "Server Enable UDP", TRUE); // this actually means the UDP tracker client
@@ -659,6 +667,9 @@ public class ConfigurationDefaults {
     def.put( "diskmanager.perf.cache.notsmallerthan", new Long(1024));	// 1024 K
     def.put( "diskmanager.perf.read.maxthreads", new Long(32));
     def.put( "diskmanager.perf.read.maxmb", new Long(10));
+    def.put( "diskmanager.perf.read.mmap.enable", FALSE );
+    def.put( "diskmanager.perf.read.mmap.window.mb", new Long(16));
+    def.put( "diskmanager.perf.read.mmap.max.mb", new Long(1024));
     def.put( "diskmanager.perf.write.maxthreads", new Long(32));
     def.put( "diskmanager.perf.write.maxmb", new Long(10));
     def.put( "diskmanager.perf.cache.trace", FALSE);
@@ -680,6 +691,7 @@ public class ConfigurationDefaults {
     def.put( "peercontrol.udp.probe.enable", FALSE );
     def.put( ConfigKeys.Transfer.BCFG_PEERCONTROL_HIDE_PIECE, FALSE );
     def.put( "peercontrol.scheduler.use.priorities", TRUE );
+    def.put( "peercontrol.scheduler.work.stealing", FALSE );
     def.put( "peercontrol.prefer.udp", FALSE );
     def.put( ConfigKeys.Connection.BCFG_PEERCONTROL_PREFER_IPV6_CONNECTIONS, FALSE );
 
@@ -710,6 +722,7 @@ public class ConfigurationDefaults {
     def.put( "network.tcp.write.select.min.time", ZERO );
     def.put( "network.tcp.connect.select.time", new Long( 100 ));
     def.put( "network.tcp.connect.select.min.time", ZERO );
+    def.put( "network.tcp.sendfile.enable", FALSE );
 
     def.put( "network.tracker.tcp.select.time", new Long( 100 ));
 
@@ -719,6 +732,9 @@ public class ConfigurationDefaults {
     def.put( "network.control.read.aggressive", FALSE );
     def.put( "network.control.read.processor.count", new Long(1));
     def.put( "network.control.write.processor.count", new Long(1));
+    def.put( "network.control.read.worker.count", new Long(1));
+    def.put( "network.control.write.worker.count", new Long(1));
+    def.put( "network.transport.write.gather.max.bytes", new Long(64*1024));
     def.put( "peermanager.schedule.time", new Long(100));
     def.put( "enable_small_osx_fonts", TRUE );
     def.put( "Play Download Finished Announcement", FALSE);
@@ -751,6 +767,8 @@ public class ConfigurationDefaults {
     // Memory settings
 
     def.put( "memory.slice.limit.multiplier", new Long(1));
+    def.put( "memory.slab.enable", FALSE );
+    def.put( "memory.slab.region.size.mb", new Long(16));
 
     // Move on completion settings.
     def.put( "Move Completed When Done", FALSE );
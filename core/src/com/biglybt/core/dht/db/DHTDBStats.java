@@ -29,6 +29,11 @@ DHTDBStats
 	public static final int	VD_DIV_FREQ			= 4;		// diversifications caused by frequency
 	public static final int	VD_DIV_SIZE			= 5;		// diversifications caused by size
 
+	public static final int	LT_GET				= 0;
+	public static final int	LT_STORE			= 1;
+
+	public static final int	LATENCY_BUCKETS		= 24;
+
 	public int
 	getKeyCount();
 
@@ -51,4 +56,15 @@ DHTDBStats
 
 	public int[]
 	getValueDetails();
+
+		/**
+		 * Latency histogram for local and remote gets (LT_GET) or stores (LT_STORE). Bucket 0
+		 * counts operations under 1 microsecond, bucket i those taking [2^(i-1),2^i) microseconds
+		 * and the last bucket everything longer
+		 * @return LATENCY_BUCKETS counts
+		 */
+
+	public long[]
+	getLatencyHistogram(
+		int		type );
 }
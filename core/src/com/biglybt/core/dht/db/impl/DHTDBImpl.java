@@ -22,7 +22,8 @@ package com.biglybt.core.dht.db.impl;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.util.*;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import com.biglybt.core.dht.*;
 import com.biglybt.core.dht.control.DHTControl;
@@ -69,13 +70,16 @@ DHTDBImpl
 	private final int			cache_republish_interval;
 
 	private static final long		MIN_CACHE_EXPIRY_CHECK_INTERVAL		= 60*1000;
-	private long		last_cache_expiry_check;
+	private volatile long	last_cache_expiry_check;
 
 	private static final long	IP_BLOOM_FILTER_REBUILD_PERIOD		= 15*60*1000;
 	private static final int	IP_COUNT_BLOOM_SIZE_INCREASE_CHUNK	= 1000;
 
 	private BloomFilter	ip_count_bloom_filter = BloomFilterFactory.createAddRemove8Bit( IP_COUNT_BLOOM_SIZE_INCREASE_CHUNK );
 
+	private final Object		bloom_lock	= new Object();
+	private volatile boolean	bloom_rebuild_pending;
+
 	private static final int	VALUE_VERSION_CHUNK = 128;
 	private int	next_value_version;
 	private int next_value_version_left;
@@ -84,8 +88,14 @@ DHTDBImpl
 	protected static final int		QUERY_STORE_REQUEST_ENTRY_SIZE	= 6;
 	protected static final int		QUERY_STORE_REPLY_ENTRY_SIZE	= 2;
 
-	final Map<HashWrapper,DHTDBMapping>				stored_values 				= new HashMap<>();
-	private final Map<DHTDBMapping.ShortHash,DHTDBMapping>	stored_values_prefix_map	= new HashMap<>();
+		// mappings are sharded on the first byte of their key so that a mapping and its short-key
+		// prefix map entry always live in the same shard. Single key operations only take the
+		// monitor of their shard, full passes visit the shards a slice at a time
+
+	private static final int	SHARD_COUNT			= 16;	// power of 2, at most 256
+	private static final int	VISIT_SLICE_SIZE	= 256;
+
+	private final Shard[]		shards	= new Shard[ SHARD_COUNT ];
 
 	DHTControl				control;
 	private final DHTStorageAdapter		adapter;
@@ -95,18 +105,26 @@ DHTDBImpl
 
 	private static final long	MAX_TOTAL_SIZE	= 4*1024*1024;
 
-	int		total_size;
-	int		total_values;
-	int		total_keys;
-	private int		total_local_keys;
+	private final AtomicInteger	total_size			= new AtomicInteger();
+	private final AtomicInteger	total_values		= new AtomicInteger();
+	private final AtomicInteger	total_keys			= new AtomicInteger();
+	private final AtomicInteger	total_local_keys	= new AtomicInteger();
 
 
 	boolean force_original_republish;
 
 	private final IpFilter	ip_filter	= IpFilterManagerFactory.getSingleton().getIPFilter();
 
+		// protects the survey state and value versions. A shard monitor may be held when entering
+		// this but a shard monitor must never be entered while holding it
+
 	final AEMonitor	this_mon	= new AEMonitor( "DHTDB" );
 
+	private final AsyncDispatcher	maintenance_dispatcher	= new AsyncDispatcher( "DHTDB:maintenance" );
+
+	private final LatencyHistogram	get_latency		= new LatencyHistogram();
+	private final LatencyHistogram	store_latency	= new LatencyHistogram();
+
 	private static final boolean	DEBUG_SURVEY		= false;
 	private static final boolean	SURVEY_ONLY_RF_KEYS	= true;
 
@@ -142,8 +160,8 @@ DHTDBImpl
 	private TimerEventPeriodic		survey_timer;
 
 
-	private boolean	sleeping;
-	private boolean	suspended;
+	private volatile boolean	sleeping;
+	private volatile boolean	suspended;
 
 	private volatile boolean	destroyed;
 
@@ -155,6 +173,11 @@ DHTDBImpl
 		byte				_protocol_version,
 		DHTLogger			_logger )
 	{
+		for ( int i=0;i<SHARD_COUNT;i++){
+
+			shards[i] = new Shard( i );
+		}
+
 		adapter							= _adapter==null?null:new adapterFacade( _adapter );
 		original_republish_interval		= _original_republish_interval;
 		cache_republish_interval		= _cache_republish_interval;
@@ -275,15 +298,7 @@ DHTDBImpl
 					perform(
 						TimerEvent	event )
 					{
-						try{
-							this_mon.enter();
-
-							rebuildIPBloomFilter( false );
-
-						}finally{
-
-							this_mon.exit();
-						}
+						rebuildIPBloomFilter( false );
 					}
 				});
 
@@ -328,18 +343,24 @@ DHTDBImpl
 
 			survey_state.clear();
 
-			Iterator<DHTDBMapping>	it = stored_values.values().iterator();
-
-			while( it.hasNext()){
-
-				DHTDBMapping	mapping = it.next();
-
-				mapping.updateLocalContact( local_contact );
-			}
 		}finally{
 
 			this_mon.exit();
 		}
+
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					mapping.updateLocalContact( local_contact );
+
+					return( false );
+				}
+			});
 	}
 
 	@Override
@@ -371,23 +392,27 @@ DHTDBImpl
 				}
 			}
 
+			long	start = SystemTime.getHighPrecisionCounter();
+
+			Shard	shard = getShard( key );
+
 			try{
-				this_mon.enter();
+				shard.mon.enter();
 
-				total_local_keys++;
+				total_local_keys.incrementAndGet();
 
 					// don't police max check for locally stored data
 					// only that received
 
-				DHTDBMapping	mapping = stored_values.get( key );
+				DHTDBMapping	mapping = shard.values.get( key );
 
 				if ( mapping == null ){
 
 					mapping = new DHTDBMapping( this, key, true );
 
-					stored_values.put( key, mapping );
+					shard.values.put( key, mapping );
 
-					addToPrefixMap( mapping );
+					addToPrefixMap( shard, mapping );
 				}
 
 				DHTDBValueImpl res =
@@ -408,7 +433,9 @@ DHTDBImpl
 
 			}finally{
 
-				this_mon.exit();
+				shard.mon.exit();
+
+				store_latency.record( start );
 			}
 		}else{
 
@@ -450,7 +477,7 @@ DHTDBImpl
 			// allow 4 bytes per value entry to deal with overhead (prolly should be more but we're really
 			// trying to deal with 0-length value stores)
 
-		if ( total_size + ( total_values*4 ) > MAX_TOTAL_SIZE ){
+		if ( total_size.get() + ( total_values.get()*4 ) > MAX_TOTAL_SIZE ){
 
 			DHTLog.log( "Not storing " + DHTLog.getString2(key.getHash()) + " as maximum storage limit exceeded" );
 
@@ -459,25 +486,34 @@ DHTDBImpl
 
 		// logStoreOps();
 
+		if ( sleeping || suspended ){
+
+			return( DHT.DT_NONE );
+		}
+
+		checkCacheExpirationAsync();
+
+		long	start = SystemTime.getHighPrecisionCounter();
+
+		Shard	shard = getShard( key );
+
 		try{
-			this_mon.enter();
+			shard.mon.enter();
 
 			if ( sleeping || suspended ){
 
 				return( DHT.DT_NONE );
 			}
 
-			checkCacheExpiration( false );
-
-			DHTDBMapping	mapping = stored_values.get( key );
+			DHTDBMapping	mapping = shard.values.get( key );
 
 			if ( mapping == null ){
 
 				mapping = new DHTDBMapping( this, key, false );
 
-				stored_values.put( key, mapping );
+				shard.values.put( key, mapping );
 
-				addToPrefixMap( mapping );
+				addToPrefixMap( shard, mapping );
 			}
 
 				// we carry on an update as its ok to replace existing entries
@@ -494,7 +530,9 @@ DHTDBImpl
 
 		}finally{
 
-			this_mon.exit();
+			shard.mon.exit();
+
+			store_latency.record( start );
 		}
 	}
 
@@ -507,12 +545,16 @@ DHTDBImpl
 		short					flags,
 		boolean					external_request )
 	{
-		try{
-			this_mon.enter();
+		checkCacheExpirationAsync();
 
-			checkCacheExpiration( false );
+		long	start = SystemTime.getHighPrecisionCounter();
 
-			final DHTDBMapping mapping = stored_values.get(key);
+		Shard	shard = getShard( key );
+
+		try{
+			shard.mon.enter();
+
+			final DHTDBMapping mapping = shard.values.get(key);
 
 			if ( mapping == null ){
 
@@ -546,7 +588,9 @@ DHTDBImpl
 
 		}finally{
 
-			this_mon.exit();
+			shard.mon.exit();
+
+			get_latency.record( start );
 		}
 	}
 
@@ -557,10 +601,14 @@ DHTDBImpl
 	{
 			// local get
 
+		long	start = SystemTime.getHighPrecisionCounter();
+
+		Shard	shard = getShard( key );
+
 		try{
-			this_mon.enter();
+			shard.mon.enter();
 
-			DHTDBMapping mapping = stored_values.get( key );
+			DHTDBMapping mapping = shard.values.get( key );
 
 			if ( mapping != null ){
 
@@ -571,7 +619,9 @@ DHTDBImpl
 
 		}finally{
 
-			this_mon.exit();
+			shard.mon.exit();
+
+			get_latency.record( start );
 		}
 	}
 
@@ -580,10 +630,12 @@ DHTDBImpl
 	getAnyValue(
 		HashWrapper				key )
 	{
+		Shard	shard = getShard( key );
+
 		try{
-			this_mon.enter();
+			shard.mon.enter();
 
-			DHTDBMapping mapping = stored_values.get( key );
+			DHTDBMapping mapping = shard.values.get( key );
 
 			if ( mapping != null ){
 
@@ -594,7 +646,7 @@ DHTDBImpl
 
 		}finally{
 
-			this_mon.exit();
+			shard.mon.exit();
 		}
 	}
 
@@ -603,10 +655,12 @@ DHTDBImpl
 	getAllValues(
 		HashWrapper				key )
 	{
+		Shard	shard = getShard( key );
+
 		try{
-			this_mon.enter();
+			shard.mon.enter();
 
-			DHTDBMapping mapping = stored_values.get( key );
+			DHTDBMapping mapping = shard.values.get( key );
 
 			List<DHTDBValue> result = new ArrayList<>();
 
@@ -619,7 +673,7 @@ DHTDBImpl
 
 		}finally{
 
-			this_mon.exit();
+			shard.mon.exit();
 		}
 	}
 
@@ -628,14 +682,16 @@ DHTDBImpl
 	hasKey(
 		HashWrapper		key )
 	{
+		Shard	shard = getShard( key );
+
 		try{
-			this_mon.enter();
+			shard.mon.enter();
 
-			return( stored_values.containsKey( key ));
+			return( shard.values.containsKey( key ));
 
 		}finally{
 
-			this_mon.exit();
+			shard.mon.exit();
 		}
 	}
 
@@ -657,13 +713,15 @@ DHTDBImpl
 	{
 			// local remove
 
+		Shard	shard = getShard( key );
+
 		try{
 			
 			DHTDBValue	result;
 			
-			this_mon.enter();
+			shard.mon.enter();
 
-			DHTDBMapping mapping = stored_values.get( key );
+			DHTDBMapping mapping = shard.values.get( key );
 
 			if ( mapping != null ){
 
@@ -671,13 +729,13 @@ DHTDBImpl
 
 				if ( res != null ){
 
-					total_local_keys--;
+					total_local_keys.decrementAndGet();
 
 					if ( !mapping.getValues().hasNext()){
 
-						stored_values.remove( key );
+						shard.values.remove( key );
 
-						removeFromPrefixMap( mapping );
+						removeFromPrefixMap( shard, mapping );
 
 						mapping.destroy();
 					}
@@ -718,7 +776,7 @@ DHTDBImpl
 
 		}finally{
 
-			this_mon.exit();
+			shard.mon.exit();
 		}
 	}
 
@@ -810,84 +868,80 @@ DHTDBImpl
 	public boolean
 	isEmpty()
 	{
-		return( total_keys == 0 );
+		return( total_keys.get() == 0 );
 	}
 
 	@Override
 	public int
 	getKeyCount()
 	{
-		return total_keys;
+		return( total_keys.get());
 	}
 
 	@Override
 	public int
 	getLocalKeyCount()
 	{
-		return( total_local_keys );
+		return( total_local_keys.get());
 	}
 
 	@Override
 	public int
 	getValueCount()
 	{
-		return total_values;
+		return( total_values.get());
 	}
 
 	@Override
 	public int
 	getSize()
 	{
-		return total_size;
+		return( total_size.get());
 	}
 
 	@Override
 	public int[]
 	getValueDetails()
 	{
-		try{
-			this_mon.enter();
-
-			int[]	res = new int[6];
+		final int[]	res = new int[6];
 
-			for (DHTDBMapping mapping : stored_values.values()) {
-
-				res[DHTDBStats.VD_VALUE_COUNT] += mapping.getValueCount();
-				res[DHTDBStats.VD_LOCAL_SIZE] += mapping.getLocalSize();
-				res[DHTDBStats.VD_DIRECT_SIZE] += mapping.getDirectSize();
-				res[DHTDBStats.VD_INDIRECT_SIZE] += mapping.getIndirectSize();
-
-				int	dt = mapping.getDiversificationType();
-
-				if ( dt == DHT.DT_FREQUENCY ){
-
-					res[DHTDBStats.VD_DIV_FREQ]++;
-
-				}else if ( dt == DHT.DT_SIZE ){
-
-					res[DHTDBStats.VD_DIV_SIZE]++;
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					res[DHTDBStats.VD_VALUE_COUNT] += mapping.getValueCount();
+					res[DHTDBStats.VD_LOCAL_SIZE] += mapping.getLocalSize();
+					res[DHTDBStats.VD_DIRECT_SIZE] += mapping.getDirectSize();
+					res[DHTDBStats.VD_INDIRECT_SIZE] += mapping.getIndirectSize();
 
-					/*
-					Iterator<DHTDBValueImpl> it2 = mapping.getIndirectValues();
+					int	dt = mapping.getDiversificationType();
 
-					System.out.println( "values=" + mapping.getValueCount());
+					if ( dt == DHT.DT_FREQUENCY ){
 
-					while( it2.hasNext()){
+						res[DHTDBStats.VD_DIV_FREQ]++;
 
-						DHTDBValueImpl val = it2.next();
+					}else if ( dt == DHT.DT_SIZE ){
 
-						System.out.println( new String( val.getValue()) + " - " + val.getOriginator().getAddress());
+						res[DHTDBStats.VD_DIV_SIZE]++;
 					}
-					*/
-				}
-			}
 
-			return( res );
+					return( false );
+				}
+			});
 
-		}finally{
+		return( res );
+	}
 
-			this_mon.exit();
-		}
+	@Override
+	public long[]
+	getLatencyHistogram(
+		int		type )
+	{
+		return( type==LT_GET?get_latency.getBuckets():store_latency.getBuckets());
 	}
 
 	@Override
@@ -906,15 +960,22 @@ DHTDBImpl
 	public Iterator<HashWrapper>
 	getKeys()
 	{
-		try{
-			this_mon.enter();
+		List<HashWrapper>	keys = new ArrayList<>();
 
-			return(new ArrayList<>(stored_values.keySet()).iterator());
+		for ( Shard shard: shards ){
 
-		}finally{
+			try{
+				shard.mon.enter();
 
-			this_mon.exit();
+				keys.addAll( shard.values.keySet());
+
+			}finally{
+
+				shard.mon.exit();
+			}
 		}
+
+		return( keys.iterator());
 	}
 
 	protected int
@@ -929,45 +990,43 @@ DHTDBImpl
 
 		int	values_published	= 0;
 
-		Map<HashWrapper,List<DHTDBValueImpl>>	republish = new HashMap<>();
-
-		try{
-			this_mon.enter();
+		final Map<HashWrapper,List<DHTDBValueImpl>>	republish = new HashMap<>();
 
-			for (Entry<HashWrapper, DHTDBMapping> entry : stored_values.entrySet()) {
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
 
-				HashWrapper		key		= entry.getKey();
+					List<DHTDBValueImpl>	values = new ArrayList<>();
 
-				DHTDBMapping	mapping	= entry.getValue();
+					while( it2.hasNext()){
 
-				Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
+						DHTDBValueImpl	value = it2.next();
 
-				List<DHTDBValueImpl>	values = new ArrayList<>();
+						if ( value != null && value.isLocal()){
 
-				while( it2.hasNext()){
+							// we're republising the data, reset the creation time
 
-					DHTDBValueImpl	value = it2.next();
+							value.setCreationTime();
 
-					if ( value != null && value.isLocal()){
+							values.add( value );
+						}
+					}
 
-						// we're republising the data, reset the creation time
+					if ( values.size() > 0 ){
 
-						value.setCreationTime();
+						republish.put( mapping.getKey(), values );
 
-						values.add( value );
 					}
-				}
-
-				if ( values.size() > 0 ){
-
-					republish.put( key, values );
 
+					return( false );
 				}
-			}
-		}finally{
-
-			this_mon.exit();
-		}
+			});
 
 		Iterator<Map.Entry<HashWrapper,List<DHTDBValueImpl>>>	it = republish.entrySet().iterator();
 
@@ -1020,92 +1079,92 @@ DHTDBImpl
 
 		final Map<HashWrapper,List<DHTDBValueImpl>>	republish = new HashMap<>();
 
-		List<DHTDBMapping>	republish_via_survey = new ArrayList<>();
+		final List<DHTDBMapping>	republish_via_survey = new ArrayList<>();
 
-		long	now = System.currentTimeMillis();
+		final long	now = System.currentTimeMillis();
 
-		try{
-			this_mon.enter();
-
-			checkCacheExpiration( true );
-
-			for (Entry<HashWrapper, DHTDBMapping> entry : stored_values.entrySet()) {
+		checkCacheExpiration( true );
 
-				HashWrapper			key		= entry.getKey();
-
-				DHTDBMapping		mapping	= entry.getValue();
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					HashWrapper			key		= mapping.getKey();
 
-					// assume that if we've diversified then the other k-1 locations are under similar
-					// stress and will have done likewise - no point in republishing cache values to them
-					// New nodes joining will have had stuff forwarded to them regardless of diversification
-					// status
+						// assume that if we've diversified then the other k-1 locations are under similar
+						// stress and will have done likewise - no point in republishing cache values to them
+						// New nodes joining will have had stuff forwarded to them regardless of diversification
+						// status
 
-				if ( mapping.getDiversificationType() != DHT.DT_NONE ){
+					if ( mapping.getDiversificationType() != DHT.DT_NONE ){
 
-					continue;
-				}
+						return( false );
+					}
 
-				Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
+					Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
 
-				boolean	all_rf_values = it2.hasNext();
+					boolean	all_rf_values = it2.hasNext();
 
-				List<DHTDBValueImpl>	values = new ArrayList<>();
+					List<DHTDBValueImpl>	values = new ArrayList<>();
 
-				while( it2.hasNext()){
+					while( it2.hasNext()){
 
-					DHTDBValueImpl	value = it2.next();
+						DHTDBValueImpl	value = it2.next();
 
-					if ( value.isLocal()){
+						if ( value.isLocal()){
 
-						all_rf_values = false;
+							all_rf_values = false;
 
-					}else{
+						}else{
 
-						if ( value.getReplicationFactor() == DHT.REP_FACT_DEFAULT ){
+							if ( value.getReplicationFactor() == DHT.REP_FACT_DEFAULT ){
 
-							all_rf_values = false;
-						}
+								all_rf_values = false;
+							}
 
-							// if this value was stored < period ago then we assume that it was
-							// also stored to the other k-1 locations at the same time and therefore
-							// we don't need to re-store it
+								// if this value was stored < period ago then we assume that it was
+								// also stored to the other k-1 locations at the same time and therefore
+								// we don't need to re-store it
 
-						if ( now < value.getStoreTime()){
+							if ( now < value.getStoreTime()){
 
-								// deal with clock changes
+									// deal with clock changes
 
-							value.setStoreTime( now );
+								value.setStoreTime( now );
 
-						}else if ( now - value.getStoreTime() <= cache_republish_interval ){
+							}else if ( now - value.getStoreTime() <= cache_republish_interval ){
 
-							// System.out.println( "skipping store" );
+								// System.out.println( "skipping store" );
 
-						}else{
+							}else{
 
-							values.add( value );
+								values.add( value );
+							}
 						}
 					}
-				}
 
-				if ( all_rf_values ){
+					if ( all_rf_values ){
 
-						// if surveying is disabled then we swallow values here to prevent them
-						// from being replicated using the existing technique and muddying the waters
+							// if surveying is disabled then we swallow values here to prevent them
+							// from being replicated using the existing technique and muddying the waters
 
-					values.clear();	// handled by the survey process
+						values.clear();	// handled by the survey process
 
-					republish_via_survey.add( mapping );
-				}
+						republish_via_survey.add( mapping );
+					}
 
-				if ( values.size() > 0 ){
+					if ( values.size() > 0 ){
 
-					republish.put( key, values );
-				}
-			}
-		}finally{
+						republish.put( key, values );
+					}
 
-			this_mon.exit();
-		}
+					return( false );
+				}
+			});
 
 		if ( republish_via_survey.size() > 0 ){
 
@@ -1144,26 +1203,9 @@ DHTDBImpl
 				}
 			}
 
-			if ( stop_caching.size() > 0 ){
-
-				try{
-					this_mon.enter();
-
-					for (int i=0;i<stop_caching.size();i++){
-
-						DHTDBMapping	mapping = stored_values.remove( stop_caching.get(i));
-
-						if ( mapping != null ){
-
-							removeFromPrefixMap( mapping );
-
-							mapping.destroy();
-						}
-					}
-				}finally{
+			for ( HashWrapper key: stop_caching ){
 
-					this_mon.exit();
-				}
+				removeMapping( key );
 			}
 		}
 
@@ -1366,23 +1408,9 @@ DHTDBImpl
 				}
 			}
 
-			try{
-				this_mon.enter();
-
-				for (int i=0;i<stop_caching.size();i++){
+			for ( HashWrapper key: stop_caching ){
 
-					DHTDBMapping	mapping = stored_values.remove( stop_caching.get(i));
-
-					if ( mapping != null ){
-
-						removeFromPrefixMap( mapping );
-
-						mapping.destroy();
-					}
-				}
-			}finally{
-
-				this_mon.exit();
+				removeMapping( key );
 			}
 		}
 
@@ -1507,7 +1535,7 @@ DHTDBImpl
 	checkCacheExpiration(
 		boolean		force )
 	{
-		long	 now = SystemTime.getCurrentTime();
+		final long	 now = SystemTime.getCurrentTime();
 
 		if ( !force ){
 
@@ -1519,93 +1547,132 @@ DHTDBImpl
 			}
 		}
 
-		try{
-			this_mon.enter();
+		last_cache_expiry_check	= now;
 
-			last_cache_expiry_check	= now;
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					if ( mapping.getValueCount() == 0 ){
 
-			Iterator<DHTDBMapping>	it = stored_values.values().iterator();
+						return( true );
 
-			while( it.hasNext()){
+					}else{
 
-				DHTDBMapping	mapping = it.next();
+						Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
 
-				if ( mapping.getValueCount() == 0 ){
+						while( it2.hasNext()){
 
-					it.remove();
+							DHTDBValueImpl	value = it2.next();
 
-					removeFromPrefixMap( mapping );
+							if ( !value.isLocal()){
 
-					mapping.destroy();
+									// distance 1 = initial store location. We use the initial creation date
+									// when deciding whether or not to remove this, plus a bit, as the
+									// original publisher is supposed to republish these
 
-				}else{
+								int life_hours = value.getLifeTimeHours();
 
-					Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
+								int	max_age;
 
-					while( it2.hasNext()){
+								if ( life_hours < 1 ){
 
-						DHTDBValueImpl	value = it2.next();
+									max_age = original_republish_interval;
 
-						if ( !value.isLocal()){
+								}else{
 
-								// distance 1 = initial store location. We use the initial creation date
-								// when deciding whether or not to remove this, plus a bit, as the
-								// original publisher is supposed to republish these
+									max_age = life_hours * 60*60*1000;
 
-							int life_hours = value.getLifeTimeHours();
+									if ( max_age > MAX_VALUE_LIFETIME ){
 
-							int	max_age;
+										max_age = MAX_VALUE_LIFETIME;
+									}
+								}
 
-							if ( life_hours < 1 ){
+								int	grace;
 
-								max_age = original_republish_interval;
+								if (( value.getFlags() & DHT.FLAG_PUT_AND_FORGET ) != 0 ){
 
-							}else{
+									grace = 0;
 
-								max_age = life_hours * 60*60*1000;
+								}else{
 
-								if ( max_age > MAX_VALUE_LIFETIME ){
+										// scale the grace period for short lifetimes
 
-									max_age = MAX_VALUE_LIFETIME;
+									grace = Math.min( ORIGINAL_REPUBLISH_INTERVAL_GRACE, max_age/4 );
 								}
-							}
 
-							int	grace;
+								if ( now > value.getCreationTime() + max_age + grace ){
 
-							if (( value.getFlags() & DHT.FLAG_PUT_AND_FORGET ) != 0 ){
+									DHTLog.log( "removing cache entry (" + value.getString() + ")" );
 
-								grace = 0;
+									it2.remove();
+								}
+							}
+						}
+					}
 
-							}else{
+					return( false );
+				}
+			});
+	}
 
-									// scale the grace period for short lifetimes
+		/**
+		 * Runs the periodic expiry check on the maintenance dispatcher if it is due, so that the
+		 * get/store paths never pay for a full pass
+		 */
 
-								grace = Math.min( ORIGINAL_REPUBLISH_INTERVAL_GRACE, max_age/4 );
-							}
+	private void
+	checkCacheExpirationAsync()
+	{
+		long	 now = SystemTime.getCurrentTime();
 
-							if ( now > value.getCreationTime() + max_age + grace ){
+		long elapsed = now - last_cache_expiry_check;
 
-								DHTLog.log( "removing cache entry (" + value.getString() + ")" );
+		if ( elapsed > 0 && elapsed < MIN_CACHE_EXPIRY_CHECK_INTERVAL ){
 
-								it2.remove();
-							}
-						}
-					}
+			return;
+		}
+
+		last_cache_expiry_check	= now;
+
+		maintenance_dispatcher.dispatch(
+			new AERunnable()
+			{
+				@Override
+				public void
+				runSupport()
+				{
+					checkCacheExpiration( true );
 				}
-			}
-		}finally{
+			});
+	}
 
-			this_mon.exit();
-		}
+	private Shard
+	getShard(
+		HashWrapper		key )
+	{
+		byte[]	bytes = key.getBytes();
+
+		return( shards[ bytes.length==0?0:((( bytes[0]&0xff ) * SHARD_COUNT ) >>> 8 )]);
 	}
 
+		/**
+		 * called with the shard's monitor held
+		 */
+
 	protected void
 	addToPrefixMap(
+		Shard				shard,
 		DHTDBMapping		mapping )
 	{
 		DHTDBMapping.ShortHash key = mapping.getShortKey();
 
-		DHTDBMapping existing = stored_values_prefix_map.get( key );
+		DHTDBMapping existing = shard.prefix_map.get( key );
 
 			// possible to have clashes, be consistent in which one we use to avoid
 			// confusing other nodes
@@ -1621,9 +1688,9 @@ DHTDBImpl
 			}
 		}
 
-		stored_values_prefix_map.put( key, mapping );
+		shard.prefix_map.put( key, mapping );
 
-		if ( stored_values_prefix_map.size() > stored_values.size()){
+		if ( shard.prefix_map.size() > shard.values.size()){
 
 			Debug.out( "inconsistent" );
 		}
@@ -1631,71 +1698,215 @@ DHTDBImpl
 
 	protected void
 	removeFromPrefixMap(
+		Shard				shard,
 		DHTDBMapping		mapping )
 	{
 		DHTDBMapping.ShortHash key = mapping.getShortKey();
 
-		DHTDBMapping existing = stored_values_prefix_map.get( key );
+		DHTDBMapping existing = shard.prefix_map.get( key );
 
 		if ( existing == mapping ){
 
-			stored_values_prefix_map.remove( key );
+			shard.prefix_map.remove( key );
 		}
 	}
 
-	protected void
-	checkPreciousStuff()
+	private DHTDBMapping
+	getPrefixMapping(
+		DHTDBMapping.ShortHash	short_key,
+		byte[]					key_prefix )
 	{
-		long	 now = SystemTime.getCurrentTime();
-
-		Map<HashWrapper,List<DHTDBValueImpl>>	republish = new HashMap<>();
+		Shard	shard = shards[((( key_prefix[0]&0xff ) * SHARD_COUNT ) >>> 8 )];
 
 		try{
+			shard.mon.enter();
 
-			this_mon.enter();
+			return( shard.prefix_map.get( short_key ));
 
-			Iterator<Map.Entry<HashWrapper,DHTDBMapping>>	it = stored_values.entrySet().iterator();
+		}finally{
 
-			while( it.hasNext()){
+			shard.mon.exit();
+		}
+	}
 
-				Map.Entry<HashWrapper,DHTDBMapping>	entry = it.next();
+	private DHTDBMapping
+	getMapping(
+		HashWrapper		key )
+	{
+		Shard	shard = getShard( key );
 
-				HashWrapper		key		= entry.getKey();
+		try{
+			shard.mon.enter();
 
-				DHTDBMapping	mapping	= entry.getValue();
+			return( shard.values.get( key ));
 
-				Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
+		}finally{
 
-				List<DHTDBValueImpl>	values = new ArrayList<>();
+			shard.mon.exit();
+		}
+	}
 
-				while( it2.hasNext()){
+	private int
+	getMaxReplicationFactor(
+		DHTDBMapping	mapping )
+	{
+		Shard	shard = getShard( mapping.getKey());
 
-					DHTDBValueImpl	value = it2.next();
+		try{
+			shard.mon.enter();
 
-					if ( value.isLocal()){
+			int	max_replication_factor = -1;
 
-						if (( value.getFlags() & DHT.FLAG_PRECIOUS ) != 0 ){
+			Iterator<DHTDBValueImpl> values = mapping.getValues();
 
-							if ( now - value.getCreationTime() > PRECIOUS_CHECK_INTERVAL ){
+			while( values.hasNext()){
 
-								value.setCreationTime();
+				DHTDBValueImpl value = values.next();
 
-								values.add( value );
-							}
-						}
-					}
+				int	rf = value.getReplicationFactor();
+
+				if ( rf > max_replication_factor ){
+
+					max_replication_factor = rf;
 				}
+			}
 
-				if ( values.size() > 0 ){
+			return( max_replication_factor );
 
-					republish.put( key, values );
+		}finally{
 
-				}
+			shard.mon.exit();
+		}
+	}
+
+	private void
+	removeMapping(
+		HashWrapper		key )
+	{
+		Shard	shard = getShard( key );
+
+		try{
+			shard.mon.enter();
+
+			DHTDBMapping	mapping = shard.values.remove( key );
+
+			if ( mapping != null ){
+
+				removeFromPrefixMap( shard, mapping );
+
+				mapping.destroy();
 			}
 		}finally{
 
-			this_mon.exit();
+			shard.mon.exit();
 		}
+	}
+
+		/**
+		 * Visits all mappings a shard at a time, taking the shard's monitor for at most VISIT_SLICE_SIZE
+		 * mappings at once so that full passes don't hold up lookups and stores
+		 */
+
+	protected void
+	visitMappings(
+		MappingVisitor		visitor )
+	{
+		for ( Shard shard: shards ){
+
+			DHTDBMapping[]	mappings;
+
+			try{
+				shard.mon.enter();
+
+				mappings = shard.values.values().toArray( new DHTDBMapping[ shard.values.size()]);
+
+			}finally{
+
+				shard.mon.exit();
+			}
+
+			for ( int start=0;start<mappings.length;start+=VISIT_SLICE_SIZE ){
+
+				int	end = Math.min( start + VISIT_SLICE_SIZE, mappings.length );
+
+				try{
+					shard.mon.enter();
+
+					for ( int i=start;i<end;i++){
+
+						DHTDBMapping	mapping = mappings[i];
+
+						HashWrapper		key		= mapping.getKey();
+
+							// skip anything removed since the snapshot was taken
+
+						if ( shard.values.get( key ) != mapping ){
+
+							continue;
+						}
+
+						if ( visitor.visit( mapping )){
+
+							shard.values.remove( key );
+
+							removeFromPrefixMap( shard, mapping );
+
+							mapping.destroy();
+						}
+					}
+				}finally{
+
+					shard.mon.exit();
+				}
+			}
+		}
+	}
+
+	protected void
+	checkPreciousStuff()
+	{
+		final long	 now = SystemTime.getCurrentTime();
+
+		final Map<HashWrapper,List<DHTDBValueImpl>>	republish = new HashMap<>();
+
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
+
+					List<DHTDBValueImpl>	values = new ArrayList<>();
+
+					while( it2.hasNext()){
+
+						DHTDBValueImpl	value = it2.next();
+
+						if ( value.isLocal()){
+
+							if (( value.getFlags() & DHT.FLAG_PRECIOUS ) != 0 ){
+
+								if ( now - value.getCreationTime() > PRECIOUS_CHECK_INTERVAL ){
+
+									value.setCreationTime();
+
+									values.add( value );
+								}
+							}
+						}
+					}
+
+					if ( values.size() > 0 ){
+
+						republish.put( mapping.getKey(), values );
+					}
+
+					return( false );
+				}
+			});
 
 		Iterator<Map.Entry<HashWrapper,List<DHTDBValueImpl>>>	it = republish.entrySet().iterator();
 
@@ -1772,11 +1983,10 @@ DHTDBImpl
 			id_map.put( contact.getID(), contact );
 		}
 
-		byte[]	max_key 	= my_id;
-		byte[]	max_dist	= null;
-
 		final List<HashWrapper> applicable_keys = new ArrayList<>();
 
+		int	survey_state_size;
+
 		try{
 			this_mon.enter();
 
@@ -1792,61 +2002,75 @@ DHTDBImpl
 				}
 			}
 
-			Iterator<DHTDBMapping>	it = stored_values.values().iterator();
+			survey_state_size = survey_state.size();
 
-			Set<HashWrapper>	existing_times = new HashSet<>(survey_mapping_times.keySet());
+		}finally{
 
-			while( it.hasNext()){
+			this_mon.exit();
+		}
 
-				DHTDBMapping	mapping = it.next();
+		final Set<HashWrapper>	existing_times;
 
-				HashWrapper hw = mapping.getKey();
+		synchronized( survey_mapping_times ){
 
-				if ( existing_times.size() > 0 ){
+			existing_times = new HashSet<>(survey_mapping_times.keySet());
+		}
 
-					existing_times.remove( hw );
-				}
+		final int[]		all_keys	= { 0 };
+		final byte[][]	max			= { my_id, null };	// key, distance
 
-				if ( !applyRF( mapping )){
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					all_keys[0]++;
 
-					continue;
-				}
+					HashWrapper hw = mapping.getKey();
+
+					if ( existing_times.size() > 0 ){
+
+						existing_times.remove( hw );
+					}
 
-				applicable_keys.add( hw );
+					if ( !applyRF( mapping )){
 
-				byte[] key = hw.getBytes();
+						return( false );
+					}
 
-				/*
-				List<DHTTransportContact>	contacts = control.getClosestKContactsList( key, true );
+					applicable_keys.add( hw );
 
-				for ( DHTTransportContact c: contacts ){
+					byte[] key = hw.getBytes();
 
-					id_map.put( c.getID(), c );
-				}
-				*/
+					byte[] distance = control.computeDistance( my_id, key );
 
-				byte[] distance = control.computeDistance( my_id, key );
+					if ( max[1] == null || control.compareDistances( distance, max[1]  ) > 0 ){
 
-				if ( max_dist == null || control.compareDistances( distance, max_dist  ) > 0 ){
+						max[1]	= distance;
+						max[0] 	= key;
+					}
 
-					max_dist	= distance;
-					max_key 	= key;
+					return( false );
 				}
-			}
+			});
+
+			// remove dead mappings
 
-				// remove dead mappings
+		synchronized( survey_mapping_times ){
 
 			for ( HashWrapper hw: existing_times ){
 
 				survey_mapping_times.remove( hw );
 			}
+		}
 
-			logger.log( "Survey starts: state size=" + survey_state.size() + ", all keys=" + stored_values.size() + ", applicable keys=" + applicable_keys.size());
-
-		}finally{
+		byte[]	max_key 	= max[0];
+		byte[]	max_dist	= max[1];
 
-			this_mon.exit();
-		}
+		logger.log( "Survey starts: state size=" + survey_state_size + ", all keys=" + all_keys[0] + ", applicable keys=" + applicable_keys.size());
 
 		if ( DEBUG_SURVEY ){
 			System.out.println( "    max_key=" + ByteFormatter.encodeString( max_key ) + ", dist=" + ByteFormatter.encodeString( max_dist ) + ", initial_contacts=" + id_map.size());
@@ -2042,225 +2266,220 @@ DHTDBImpl
 
 			int max_nodes = Math.min( node_ids.length, router.getK());
 
-			try{
-				this_mon.enter();
+				// only the mapping lookups need a monitor, the rest works on local state
 
-				Iterator<HashWrapper>	it = applicable_keys.iterator();
+			Iterator<HashWrapper>	it = applicable_keys.iterator();
 
-				int	value_count = 0;
+			int	value_count = 0;
 
-				while( it.hasNext()){
+			while( it.hasNext()){
 
-					DHTDBMapping	mapping = stored_values.get( it.next());
+				DHTDBMapping	mapping = getMapping( it.next());
 
-					if ( mapping == null ){
+				if ( mapping == null ){
 
-						continue;
-					}
+					continue;
+				}
 
-					value_count++;
+				value_count++;
 
-					final byte[] key = mapping.getKey().getBytes();
+				final byte[] key = mapping.getKey().getBytes();
 
-						// find closest nodes to this key in order to asses availability
+					// find closest nodes to this key in order to asses availability
 
-					Arrays.sort(
-						node_ids,
-						new Comparator<byte[]>()
+				Arrays.sort(
+					node_ids,
+					new Comparator<byte[]>()
+					{
+						@Override
+						public int
+						compare(
+							byte[] o1,
+							byte[] o2 )
 						{
-							@Override
-							public int
-							compare(
-								byte[] o1,
-								byte[] o2 )
-							{
-								return( control.computeAndCompareDistances( o1, o2, key ));
-							}
-						});
+							return( control.computeAndCompareDistances( o1, o2, key ));
+						}
+					});
 
-					boolean	found_myself = false;
+				boolean	found_myself = false;
 
-					for ( int i=0;i<max_nodes;i++ ){
+				for ( int i=0;i<max_nodes;i++ ){
 
-						byte[]	id = node_ids[i];
+					byte[]	id = node_ids[i];
 
-						if ( Arrays.equals( survey_my_id, id )){
+					if ( Arrays.equals( survey_my_id, id )){
 
-							found_myself = true;
+						found_myself = true;
 
-							break;
-						}
+						break;
 					}
+				}
 
-						// if we're not in the closest set to this key then ignore it
+					// if we're not in the closest set to this key then ignore it
 
-					if ( !found_myself ){
+				if ( !found_myself ){
 
-						if ( DEBUG_SURVEY ){
-							System.out.println( "we're not in closest set for " + ByteFormatter.encodeString( key ) + " - ignoring" );
-						}
-
-						continue;
+					if ( DEBUG_SURVEY ){
+						System.out.println( "we're not in closest set for " + ByteFormatter.encodeString( key ) + " - ignoring" );
 					}
 
-					List<DHTTransportContact>	node_list = new ArrayList<>(max_nodes);
-
-					mapping_to_node_map.put( mapping, node_list );
+					continue;
+				}
 
-					for ( int i=0;i<max_nodes;i++ ){
+				List<DHTTransportContact>	node_list = new ArrayList<>(max_nodes);
 
-						byte[]	id = node_ids[i];
+				mapping_to_node_map.put( mapping, node_list );
 
-							// remove ourselves from the equation here as we don't want to end
-							// up querying ourselves and we account for the replica we have later
-							// on
+				for ( int i=0;i<max_nodes;i++ ){
 
-						if ( Arrays.equals( survey_my_id, id )){
+					byte[]	id = node_ids[i];
 
-							continue;
-						}
+						// remove ourselves from the equation here as we don't want to end
+						// up querying ourselves and we account for the replica we have later
+						// on
 
-						List<DHTDBMapping> list = value_map.get( id );
+					if ( Arrays.equals( survey_my_id, id )){
 
-						if ( list == null ){
+						continue;
+					}
 
-							list = new ArrayList<>();
+					List<DHTDBMapping> list = value_map.get( id );
 
-							value_map.put( id, list );
-						}
+					if ( list == null ){
 
-						list.add( mapping );
+						list = new ArrayList<>();
 
-						node_list.add( survey.get( id ));
+						value_map.put( id, list );
 					}
-				}
 
-				if ( DEBUG_SURVEY ){
-					System.out.println( "Total values: " + value_count );
+					list.add( mapping );
+
+					node_list.add( survey.get( id ));
 				}
+			}
 
-					// build a list of requests to send to nodes to check their replicas
+			if ( DEBUG_SURVEY ){
+				System.out.println( "Total values: " + value_count );
+			}
 
-				for ( byte[] id: node_ids ){
+				// build a list of requests to send to nodes to check their replicas
 
-					final int MAX_PREFIX_TEST = 3;
+			for ( byte[] id: node_ids ){
 
-					List<DHTDBMapping> all_entries = value_map.remove( id );
+				final int MAX_PREFIX_TEST = 3;
 
-					ByteArrayHashMap<List<DHTDBMapping>> prefix_map = new ByteArrayHashMap<>();
+				List<DHTDBMapping> all_entries = value_map.remove( id );
 
-					if ( all_entries != null ){
+				ByteArrayHashMap<List<DHTDBMapping>> prefix_map = new ByteArrayHashMap<>();
 
-						prefix_map.put( new byte[0], all_entries );
+				if ( all_entries != null ){
 
-						for (int i=0;i<MAX_PREFIX_TEST;i++){
+					prefix_map.put( new byte[0], all_entries );
 
-							List<byte[]> prefixes = prefix_map.keys();
+					for (int i=0;i<MAX_PREFIX_TEST;i++){
 
-							for ( byte[] prefix: prefixes ){
+						List<byte[]> prefixes = prefix_map.keys();
 
-								if ( prefix.length == i ){
+						for ( byte[] prefix: prefixes ){
 
-									List<DHTDBMapping> list = prefix_map.get( prefix );
+							if ( prefix.length == i ){
 
-									if ( list.size() < 2 ){
+								List<DHTDBMapping> list = prefix_map.get( prefix );
 
-										continue;
-									}
+								if ( list.size() < 2 ){
 
-									ByteArrayHashMap<List<DHTDBMapping>> temp_map = new ByteArrayHashMap<>();
+									continue;
+								}
 
-									for ( DHTDBMapping mapping: list ){
+								ByteArrayHashMap<List<DHTDBMapping>> temp_map = new ByteArrayHashMap<>();
 
-										byte[] key = mapping.getKey().getBytes();
+								for ( DHTDBMapping mapping: list ){
 
-										byte[] sub_prefix = new byte[ i+1 ];
+									byte[] key = mapping.getKey().getBytes();
 
-										System.arraycopy( key, 0, sub_prefix, 0, i+1 );
+									byte[] sub_prefix = new byte[ i+1 ];
 
-										List<DHTDBMapping> entries = temp_map.get( sub_prefix );
+									System.arraycopy( key, 0, sub_prefix, 0, i+1 );
 
-										if ( entries == null ){
+									List<DHTDBMapping> entries = temp_map.get( sub_prefix );
 
-											entries = new ArrayList<>();
+									if ( entries == null ){
 
-											temp_map.put( sub_prefix, entries );
-										}
+										entries = new ArrayList<>();
 
-										entries.add( mapping );
+										temp_map.put( sub_prefix, entries );
 									}
 
-									List<DHTDBMapping> new_list = new ArrayList<>(list.size());
+									entries.add( mapping );
+								}
 
-									List<byte[]> temp_keys = temp_map.keys();
+								List<DHTDBMapping> new_list = new ArrayList<>(list.size());
 
-									for ( byte[] k: temp_keys ){
+								List<byte[]> temp_keys = temp_map.keys();
 
-										List<DHTDBMapping> entries = temp_map.get( k );
+								for ( byte[] k: temp_keys ){
 
-										int	num	= entries.size();
+									List<DHTDBMapping> entries = temp_map.get( k );
 
-											// prefix spread over multiple entries so ignore and just count suffix cost
+									int	num	= entries.size();
 
-										int outer_cost 	= num * ( QUERY_STORE_REQUEST_ENTRY_SIZE - i );
+										// prefix spread over multiple entries so ignore and just count suffix cost
 
-											// include new prefix, one byte prefix len, 2 bytes num-suffixes, then suffixes
-											// yes, this code should be elsewhere, but whatever
+									int outer_cost 	= num * ( QUERY_STORE_REQUEST_ENTRY_SIZE - i );
 
-										int inner_cost	= i+4 + num * (QUERY_STORE_REQUEST_ENTRY_SIZE - i - 1 );
+										// include new prefix, one byte prefix len, 2 bytes num-suffixes, then suffixes
+										// yes, this code should be elsewhere, but whatever
 
-										if ( inner_cost < outer_cost ){
+									int inner_cost	= i+4 + num * (QUERY_STORE_REQUEST_ENTRY_SIZE - i - 1 );
 
-											prefix_map.put( k, entries );
+									if ( inner_cost < outer_cost ){
 
-										}else{
+										prefix_map.put( k, entries );
 
-											new_list.addAll( entries );
-										}
+									}else{
+
+										new_list.addAll( entries );
 									}
+								}
 
-									if ( new_list.size() == 0 ){
+								if ( new_list.size() == 0 ){
 
-										prefix_map.remove( prefix );
+									prefix_map.remove( prefix );
 
-									}else{
+								}else{
 
-										prefix_map.put( prefix, new_list );
-									}
+									prefix_map.put( prefix, new_list );
 								}
 							}
 						}
+					}
 
-						String str = "";
+					String str = "";
 
-						int encoded_size = 1;	// header size
+					int encoded_size = 1;	// header size
 
-						List<byte[]> prefixes = prefix_map.keys();
+					List<byte[]> prefixes = prefix_map.keys();
 
-						for ( byte[] prefix: prefixes ){
+					for ( byte[] prefix: prefixes ){
 
-							encoded_size += 3 + prefix.length;
+						encoded_size += 3 + prefix.length;
 
-							List<DHTDBMapping> entries = prefix_map.get( prefix );
+						List<DHTDBMapping> entries = prefix_map.get( prefix );
 
-							encoded_size += ( QUERY_STORE_REQUEST_ENTRY_SIZE - prefix.length ) * entries.size();
+						encoded_size += ( QUERY_STORE_REQUEST_ENTRY_SIZE - prefix.length ) * entries.size();
 
-							str += (str.length()==0?"":", ")+ ByteFormatter.encodeString( prefix ) + "->" + entries.size();
-						}
+						str += (str.length()==0?"":", ")+ ByteFormatter.encodeString( prefix ) + "->" + entries.size();
+					}
 
-						if ( DEBUG_SURVEY ){
-							System.out.println( "node " + ByteFormatter.encodeString( id ) + " -> " + (all_entries==null?0:all_entries.size()) + ", encoded=" + encoded_size + ", prefix=" + str );
-						}
+					if ( DEBUG_SURVEY ){
+						System.out.println( "node " + ByteFormatter.encodeString( id ) + " -> " + (all_entries==null?0:all_entries.size()) + ", encoded=" + encoded_size + ", prefix=" + str );
+					}
 
-						if ( prefixes.size() > 0 ){
+					if ( prefixes.size() > 0 ){
 
-							request_map.put( survey.get( id ), prefix_map );
-						}
+						request_map.put( survey.get( id ), prefix_map );
 					}
 				}
-			}finally{
-
-				this_mon.exit();
 			}
 
 			LinkedList<Map.Entry<DHTTransportContact,ByteArrayHashMap<List<DHTDBMapping>>>> to_do = new LinkedList<>(request_map.entrySet());
@@ -2332,7 +2551,12 @@ DHTDBImpl
 
 				HashWrapper hw = mapping.getKey();
 
-				Long	next_time = survey_mapping_times.get( hw );
+				Long	next_time;
+
+				synchronized( survey_mapping_times ){
+
+					next_time = survey_mapping_times.get( hw );
+				}
 
 				long now = SystemTime.getMonotonousTime();
 
@@ -2358,7 +2582,10 @@ DHTDBImpl
 					System.out.println( "allocated next time with value relative " + (new_next_time-now) + ": period=" + period + ", offset=" + offset_time + ", rand=" + rand );
 				}
 
-				survey_mapping_times.put( hw, new_next_time );
+				synchronized( survey_mapping_times ){
+
+					survey_mapping_times.put( hw, new_next_time );
+				}
 
 				if ( next_time == null ){
 
@@ -2555,6 +2782,38 @@ DHTDBImpl
 	{
 		Map<SurveyContactState,List<DHTDBMapping>>	store_ops = new HashMap<>();
 
+			// gather what we need from the mappings up front as their shard monitors can't be
+			// entered while holding this_mon
+
+		Map<DHTDBMapping.ShortHash,DHTDBMapping>	prefix_mappings = new HashMap<>();
+
+		for ( Object[] reply: replies.values()){
+
+			List<DHTDBMapping>	mappings 	= (List<DHTDBMapping>)reply[0];
+
+			if ( reply[1] == null ){
+
+				continue;
+			}
+
+			for ( DHTDBMapping mapping: mappings ){
+
+				DHTDBMapping.ShortHash short_key = mapping.getShortKey();
+
+				if ( !prefix_mappings.containsKey( short_key )){
+
+					prefix_mappings.put( short_key, getPrefixMapping( short_key, mapping.getKey().getBytes()));
+				}
+			}
+		}
+
+		Map<DHTDBMapping,Integer>	max_replication_factors = new HashMap<>();
+
+		for ( DHTDBMapping mapping: mapping_to_node_map.keySet()){
+
+			max_replication_factors.put( mapping, getMaxReplicationFactor( mapping ));
+		}
+
 		try{
 			this_mon.enter();
 
@@ -2628,7 +2887,7 @@ DHTDBImpl
 
 								// must match against our short-key mapping for consistency
 
-							DHTDBMapping mapping_to_check = stored_values_prefix_map.get( mapping.getShortKey());
+							DHTDBMapping mapping_to_check = prefix_mappings.get( mapping.getShortKey());
 
 							if ( mapping_to_check == null ){
 
@@ -2711,23 +2970,9 @@ DHTDBImpl
 					copies = t[0];
 				}
 
-				Iterator<DHTDBValueImpl> values = mapping.getValues();
+				int	max_replication_factor = max_replication_factors.get( mapping );
 
-				if ( values.hasNext()){
-
-					int	max_replication_factor = -1;
-
-					while( values.hasNext()){
-
-						DHTDBValueImpl value = values.next();
-
-						int	rf = value.getReplicationFactor();
-
-						if ( rf > max_replication_factor ){
-
-							max_replication_factor = rf;
-						}
-					}
+				if ( max_replication_factor >= 0 ){
 
 					if ( max_replication_factor == 0 ){
 
@@ -2906,16 +3151,25 @@ DHTDBImpl
 
 				List<DHTTransportValue> v = new ArrayList<>();
 
-				Iterator<DHTDBValueImpl> it = mapping.getValues();
+				Shard	shard = getShard( mapping.getKey());
 
-				while( it.hasNext()){
+				try{
+					shard.mon.enter();
+
+					Iterator<DHTDBValueImpl> it = mapping.getValues();
+
+					while( it.hasNext()){
 
-					DHTDBValueImpl value = it.next();
+						DHTDBValueImpl value = it.next();
 
-					if ( !value.isLocal()){
+						if ( !value.isLocal()){
 
-						v.add( value.getValueForRelay(local_contact));
+							v.add( value.getValueForRelay(local_contact));
+						}
 					}
+				}finally{
+
+					shard.mon.exit();
 				}
 
 				store_values[i] = v.toArray( new DHTTransportValue[v.size()]);
@@ -3019,41 +3273,33 @@ DHTDBImpl
 	private void
 	sleep()
 	{
-		Iterator<Map.Entry<HashWrapper,DHTDBMapping>>	it = stored_values.entrySet().iterator();
-
-		while( it.hasNext()){
-
-			Map.Entry<HashWrapper,DHTDBMapping>	entry = it.next();
-
-			HashWrapper			key		= entry.getKey();
-
-			DHTDBMapping		mapping	= entry.getValue();
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
 
-			Iterator<DHTDBValueImpl>	it2 = mapping.getValues();
+					boolean	all_remote = it2.hasNext();
 
-			boolean	all_remote = it2.hasNext();
+					while( it2.hasNext()){
 
-			while( it2.hasNext()){
+						DHTDBValueImpl	value = it2.next();
 
-				DHTDBValueImpl	value = it2.next();
+						if ( value.isLocal()){
 
-				if ( value.isLocal()){
+							all_remote = false;
 
-					all_remote = false;
+							break;
+						}
+					}
 
-					break;
+					return( all_remote );
 				}
-			}
-
-			if ( all_remote ){
-
-				it.remove();
-
-				removeFromPrefixMap( mapping );
-
-				mapping.destroy();
-			}
-		}
+			});
 	}
 
 	@Override
@@ -3061,18 +3307,11 @@ DHTDBImpl
 	setSleeping(
 		boolean	asleep )
 	{
-		try{
-			this_mon.enter();
+		sleeping = asleep;
 
-			sleeping = asleep;
-
-			if ( asleep ){
-
-				sleep();
-			}
-		}finally{
+		if ( asleep ){
 
-			this_mon.exit();
+			sleep();
 		}
 	}
 
@@ -3090,16 +3329,16 @@ DHTDBImpl
 
 			suspended = susp;
 
-			if ( susp ){
-
-				sleep();
-			}
-
 		}finally{
 
 			this_mon.exit();
 		}
 
+		if ( susp ){
+
+			sleep();
+		}
+
 		if ( waking_up ){
 
 			new AEThread2( "DHTB:resume" )
@@ -3140,53 +3379,57 @@ DHTDBImpl
 	{
 		final List<byte[]> reply = new ArrayList<>();
 
-		try{
-			this_mon.enter();
+		List<DHTDBMapping>	found = new ArrayList<>();
 
-			SurveyContactState	existing_state = survey_state.get( new HashWrapper( originating_contact.getID()));
+		for (Object[] entry: keys ){
 
-			if ( existing_state != null ){
+			byte[]			prefix 		= (byte[])entry[0];
+			List<byte[]>	suffixes 	= (List<byte[]>)entry[1];
 
-				existing_state.updateContactDetails( originating_contact );
-			}
+			byte[]	header = new byte[header_len];
 
-			for (Object[] entry: keys ){
+			int		prefix_len	= prefix.length;
+			int		suffix_len	= header_len - prefix_len;
 
-				byte[]			prefix 		= (byte[])entry[0];
-				List<byte[]>	suffixes 	= (List<byte[]>)entry[1];
+			System.arraycopy( prefix, 0, header, 0, prefix_len );
 
-				byte[]	header = new byte[header_len];
+			for ( byte[] suffix: suffixes ){
 
-				int		prefix_len	= prefix.length;
-				int		suffix_len	= header_len - prefix_len;
+				System.arraycopy( suffix, 0, header, prefix_len, suffix_len );
 
-				System.arraycopy( prefix, 0, header, 0, prefix_len );
+				DHTDBMapping mapping = getPrefixMapping( new DHTDBMapping.ShortHash( header.clone()), header );
 
-				for ( byte[] suffix: suffixes ){
+				if ( mapping == null ){
 
-					System.arraycopy( suffix, 0, header, prefix_len, suffix_len );
+					reply.add( null );
 
-					DHTDBMapping mapping = stored_values_prefix_map.get( new DHTDBMapping.ShortHash( header ));
+				}else{
 
-					if ( mapping == null ){
+					found.add( mapping );
 
-						reply.add( null );
+					byte[] k = mapping.getKey().getBytes();
 
-					}else{
+					byte[] r = new byte[QUERY_STORE_REPLY_ENTRY_SIZE];
 
-						if ( existing_state != null ){
+					System.arraycopy( k, k.length-QUERY_STORE_REPLY_ENTRY_SIZE, r, 0, QUERY_STORE_REPLY_ENTRY_SIZE );
 
-							existing_state.addMapping( mapping );
-						}
+					reply.add( r );
+				}
+			}
+		}
+
+		try{
+			this_mon.enter();
+
+			SurveyContactState	existing_state = survey_state.get( new HashWrapper( originating_contact.getID()));
 
-						byte[] k = mapping.getKey().getBytes();
+			if ( existing_state != null ){
 
-						byte[] r = new byte[QUERY_STORE_REPLY_ENTRY_SIZE];
+				existing_state.updateContactDetails( originating_contact );
 
-						System.arraycopy( k, k.length-QUERY_STORE_REPLY_ENTRY_SIZE, r, 0, QUERY_STORE_REPLY_ENTRY_SIZE );
+				for ( DHTDBMapping mapping: found ){
 
-						reply.add( r );
-					}
+					existing_state.addMapping( mapping );
 				}
 			}
 
@@ -3219,161 +3462,123 @@ DHTDBImpl
 	print(
 		boolean	full )
 	{
-		Map<Integer,Object[]>	count = new TreeMap<>();
-
-		try{
-			this_mon.enter();
-
-			logger.log( "Stored keys = " + stored_values.size() + ", values = " + getValueDetails()[DHTDBStats.VD_VALUE_COUNT]);
+		final Map<Integer,Object[]>	count = new TreeMap<>();
 
-			if ( !full ){
+		logger.log( "Stored keys = " + getKeyCount() + ", values = " + getValueDetails()[DHTDBStats.VD_VALUE_COUNT]);
 
-				return;
-			}
-
-			Iterator<Map.Entry<HashWrapper,DHTDBMapping>>	it1 = stored_values.entrySet().iterator();
-
-			// ByteArrayHashMap<Integer> blah = new ByteArrayHashMap<>();
-
-			while( it1.hasNext()){
-
-				Map.Entry<HashWrapper,DHTDBMapping>		entry = it1.next();
-
-				HashWrapper		value_key	= entry.getKey();
+		if ( !full ){
 
-				DHTDBMapping	mapping 	= entry.getValue();
+			return;
+		}
 
-				/*
-				if ( mapping.getIndirectSize() > 1000 ){
-					mapping.print();
-				}
-				*/
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					HashWrapper		value_key	= mapping.getKey();
 
-				DHTDBValue[]	values = mapping.get(null,0,(byte)0);
+					DHTDBValue[]	values = mapping.get(null,0,(byte)0);
 
-				for (int i=0;i<values.length;i++){
+					for (int i=0;i<values.length;i++){
 
-					DHTDBValue	value = values[i];
+						DHTDBValue	value = values[i];
 
-					/*
-					byte[] v = value.getValue();
+						Integer key = new Integer( value.isLocal()?0:1);
 
-					Integer y = blah.get( v );
+						Object[]	data = count.get( key );
 
-					if ( y == null ){
-						blah.put( v, 1 );
-					}else{
-						blah.put( v, y+1 );
-					}
-					*/
+						if ( data == null ){
 
-					Integer key = new Integer( value.isLocal()?0:1);
+							data = new Object[2];
 
-					Object[]	data = count.get( key );
+							data[0] = new Integer(1);
 
-					if ( data == null ){
+							data[1] = "";
 
-						data = new Object[2];
+							count.put( key, data );
 
-						data[0] = new Integer(1);
+						}else{
 
-						data[1] = "";
+							data[0] = new Integer(((Integer)data[0]).intValue() + 1 );
+						}
 
-						count.put( key, data );
+						String	s = (String)data[1];
 
-					}else{
+						s += (s.length()==0?"":", ") + "key=" + DHTLog.getString2(value_key.getHash()) + ",val=" + value.getString();
 
-						data[0] = new Integer(((Integer)data[0]).intValue() + 1 );
+						data[1]	= s;
 					}
 
-					String	s = (String)data[1];
-
-					s += (s.length()==0?"":", ") + "key=" + DHTLog.getString2(value_key.getHash()) + ",val=" + value.getString();
-
-					data[1]	= s;
-				}
-			}
-
-			/*
-			long	total_dup = 0;
-
-			for ( byte[] k: blah.keys()){
-
-				int c = blah.get( k );
-
-				if ( c > 1 ){
-
-					total_dup += ( c * k.length );
-
-					System.out.println( "Dup: " + new String(k) + " -> " + c );
+					return( false );
 				}
-			}
-
-			System.out.println( "Total dup: " + total_dup );
-			*/
-
-			Iterator<Integer> it2 = count.keySet().iterator();
+			});
 
-			while( it2.hasNext()){
-
-				Integer	k = it2.next();
+		Iterator<Integer> it2 = count.keySet().iterator();
 
-				Object[]	data = count.get(k);
-
-				logger.log( "    " + k + " -> " + data[0] + " entries" ); // ": " + data[1]);
-			}
+		while( it2.hasNext()){
 
-			Iterator<Map.Entry<HashWrapper,DHTDBMapping>> it3 = stored_values.entrySet().iterator();
+			Integer	k = it2.next();
 
-			StringBuilder	sb = new StringBuilder( 1024 );
+			Object[]	data = count.get(k);
 
-			int		str_entries	= 0;
+			logger.log( "    " + k + " -> " + data[0] + " entries" ); // ": " + data[1]);
+		}
 
-			while( it3.hasNext()){
+		final StringBuilder[]	sb 			= { new StringBuilder( 1024 )};
+		final int[]				str_entries	= { 0 };
 
-				Map.Entry<HashWrapper,DHTDBMapping>		entry = it3.next();
+		visitMappings(
+			new MappingVisitor()
+			{
+				@Override
+				public boolean
+				visit(
+					DHTDBMapping	mapping )
+				{
+					HashWrapper		value_key	= mapping.getKey();
 
-				HashWrapper		value_key	= entry.getKey();
+					if ( str_entries[0] == 16 ){
 
-				DHTDBMapping	mapping 	= entry.getValue();
+						logger.log( sb[0].toString());
 
-				if ( str_entries == 16 ){
+						sb[0] = new StringBuilder( 1024 );
 
-					logger.log( sb.toString());
+						sb[0].append( "    " );
 
-					sb = new StringBuilder( 1024 );
+						str_entries[0]	= 0;
+					}
 
-					sb.append( "    " );
+					str_entries[0]++;
 
-					str_entries	= 0;
-				}
+					StringBuilder	b = sb[0];
 
-				str_entries++;
+					if ( str_entries[0] > 1 ){
+						b.append( ", ");
+					}
+					b.append( DHTLog.getString2(value_key.getHash()));
+					b.append( " -> " );
+					b.append( mapping.getValueCount());
+					b.append( "/" );
+					b.append( mapping.getHits());
+					b.append( "[" );
+					b.append( mapping.getLocalSize());
+					b.append( "," );
+					b.append( mapping.getDirectSize());
+					b.append( "," );
+					b.append( mapping.getIndirectSize());
+					b.append( "]" );
 
-				if ( str_entries > 1 ){
-					sb.append( ", ");
+					return( false );
 				}
-				sb.append( DHTLog.getString2(value_key.getHash()));
-				sb.append( " -> " );
-				sb.append( mapping.getValueCount());
-				sb.append( "/" );
-				sb.append( mapping.getHits());
-				sb.append( "[" );
-				sb.append( mapping.getLocalSize());
-				sb.append( "," );
-				sb.append( mapping.getDirectSize());
-				sb.append( "," );
-				sb.append( mapping.getIndirectSize());
-				sb.append( "]" );
-			}
-
-			if ( str_entries > 0 ){
+			});
 
-				logger.log( sb.toString());
-			}
-		}finally{
+		if ( str_entries[0] > 0 ){
 
-			this_mon.exit();
+			logger.log( sb[0].toString());
 		}
 	}
 
@@ -3399,51 +3604,47 @@ DHTDBImpl
 					// delete their data on a separate thread so as not to
 					// interfere with the current action
 
-				try{
-					this_mon.enter();
-
-					Iterator<DHTDBMapping>	it = stored_values.values().iterator();
+				final boolean[]	overall_deleted = { false };
 
-					boolean	overall_deleted = false;
+				final HashWrapper value_id = new HashWrapper( contact.getID());
 
-					HashWrapper value_id = new HashWrapper( contact.getID());
-
-					while( it.hasNext()){
-
-						DHTDBMapping	mapping = it.next();
-
-						boolean	deleted = false;
+				visitMappings(
+					new MappingVisitor()
+					{
+						@Override
+						public boolean
+						visit(
+							DHTDBMapping	mapping )
+						{
+							boolean	deleted = false;
 
-						if ( mapping.removeDirectValue( value_id ) != null ){
+							if ( mapping.removeDirectValue( value_id ) != null ){
 
-							deleted = true;
-						}
+								deleted = true;
+							}
 
-						if ( mapping.removeIndirectValue( value_id ) != null ){
+							if ( mapping.removeIndirectValue( value_id ) != null ){
 
-							deleted = true;
-						}
+								deleted = true;
+							}
 
+							if ( deleted && !ban_ip ){
 
-						if ( deleted && !ban_ip ){
+									// if we're not banning then rebuild bloom to avoid us continually
+									// going through this ban code
 
-								// if we're not banning then rebuild bloom to avoid us continually
-								// going through this ban code
+								mapping.rebuildIPBloomFilter( false );
 
-							mapping.rebuildIPBloomFilter( false );
+								overall_deleted[0] = true;
+							}
 
-							overall_deleted = true;
+							return( false );
 						}
-					}
-
-					if ( overall_deleted && !ban_ip ){
-
-						rebuildIPBloomFilter( false );
-					}
-				}finally{
+					});
 
-					this_mon.exit();
+				if ( overall_deleted[0] && !ban_ip ){
 
+					rebuildIPBloomFilter( false );
 				}
 			}
 		}.start();
@@ -3473,18 +3674,43 @@ DHTDBImpl
 
 		byte[] bloom_key = contact.getBloomKey();
 
-		int	hit_count = ip_count_bloom_filter.add( bloom_key );
+		int		hit_count;
+		boolean	rebuild;
+
+		synchronized( bloom_lock ){
+
+			hit_count = ip_count_bloom_filter.add( bloom_key );
+
+				// allow up to 10% bloom filter utilisation
+
+			rebuild = ip_count_bloom_filter.getSize() / ip_count_bloom_filter.getEntryCount() < 10 && !bloom_rebuild_pending;
+
+			if ( rebuild ){
+
+				bloom_rebuild_pending = true;
+			}
+		}
 
 		if ( DHTLog.GLOBAL_BLOOM_TRACE ){
 
 			System.out.println( "direct add from " + contact.getAddress() + ", hit count = " + hit_count );
 		}
 
-			// allow up to 10% bloom filter utilisation
+		if ( rebuild ){
 
-		if ( ip_count_bloom_filter.getSize() / ip_count_bloom_filter.getEntryCount() < 10 ){
+				// we're usually called with a shard monitor held so the rebuild, which walks
+				// all of the shards, has to happen elsewhere
 
-			rebuildIPBloomFilter( true );
+			maintenance_dispatcher.dispatch(
+				new AERunnable()
+				{
+					@Override
+					public void
+					runSupport()
+					{
+						rebuildIPBloomFilter( true );
+					}
+				});
 		}
 
 		if ( hit_count > 64 ){
@@ -3501,7 +3727,12 @@ DHTDBImpl
 	{
 		byte[] bloom_key = contact.getBloomKey();
 
-		int	hit_count = ip_count_bloom_filter.remove( bloom_key );
+		int	hit_count;
+
+		synchronized( bloom_lock ){
+
+			hit_count = ip_count_bloom_filter.remove( bloom_key );
+		}
 
 		if ( DHTLog.GLOBAL_BLOOM_TRACE ){
 
@@ -3513,7 +3744,7 @@ DHTDBImpl
 	rebuildIPBloomFilter(
 		boolean	increase_size )
 	{
-		BloomFilter	new_filter;
+		final BloomFilter	new_filter;
 
 		if ( increase_size ){
 
@@ -3525,93 +3756,101 @@ DHTDBImpl
 
 		}
 
+			// values added or removed while the shards are being walked are only reflected
+			// in the old filter, the counts are approximate anyway
+
 		try{
 
 			//Map		sender_map	= new HashMap();
 			//List	senders		= new ArrayList();
 
-			Iterator<DHTDBMapping>	it = stored_values.values().iterator();
+			final int[]	max_hits = { 0 };
 
-			int	max_hits = 0;
-
-			while( it.hasNext()){
+			visitMappings(
+				new MappingVisitor()
+				{
+					@Override
+					public boolean
+					visit(
+						DHTDBMapping	mapping )
+					{
+						mapping.rebuildIPBloomFilter( false );
 
-				DHTDBMapping	mapping = it.next();
+						Iterator<DHTDBValueImpl>	it2 = mapping.getDirectValues();
 
-				mapping.rebuildIPBloomFilter( false );
+						while( it2.hasNext()){
 
-				Iterator<DHTDBValueImpl>	it2 = mapping.getDirectValues();
+							DHTDBValueImpl	val = it2.next();
 
-				while( it2.hasNext()){
+							if ( !val.isLocal()){
 
-					DHTDBValueImpl	val = it2.next();
+								// logger.log( "    adding " + val.getOriginator().getAddress());
 
-					if ( !val.isLocal()){
+								byte[] bloom_key = val.getOriginator().getBloomKey();
 
-						// logger.log( "    adding " + val.getOriginator().getAddress());
+								int	hits = new_filter.add( bloom_key );
 
-						byte[] bloom_key = val.getOriginator().getBloomKey();
+								if ( hits > max_hits[0] ){
 
-						int	hits = new_filter.add( bloom_key );
+									max_hits[0] = hits;
+								}
+							}
+						}
 
-						if ( hits > max_hits ){
+							// survey our neighbourhood
 
-							max_hits = hits;
-						}
-					}
-				}
+						/*
+						 * its is non-trivial to do anything about nodes that get "close" to us and then
+						 * spam us with crap. Ultimately, of course, to take a key out you "just" create
+						 * the 20 closest nodes to the key and then run nodes that swallow all registrations
+						 * and return nothing.
+						 * Protecting against one or two such nodes that flood crap requires crap to be
+						 * identified. Tracing shows a large disparity between number of values registered
+						 * per neighbour (factors of 100), so an approach based on number of registrations
+						 * is non-trivial (assuming future scaling of the DHT, what do we consider crap?)
+						 * A further approach would be to query the claimed originators of values (obviously
+						 * a low bandwidth approach, e.g. query 3 values from the contact with highest number
+						 * of forwarded values). This requires originators to support long term knowledge of
+						 * what they've published (we don't want to blacklist a neighbour because an originator
+						 * has deleted a value/been restarted). We also then have to consider how to deal with
+						 * non-responses to queries (assuming an affirmative Yes -> value has been forwarded
+						 * correnctly, No -> probably crap). We can't treat non-replies as No. Thus a bad
+						 * neighbour only has to forward crap with originators that aren't AZ nodes (very
+						 * easy to do!) to break this approach.
+						 *
+						 *
+						it2 = mapping.getIndirectValues();
 
-					// survey our neighbourhood
+						while( it2.hasNext()){
 
-				/*
-				 * its is non-trivial to do anything about nodes that get "close" to us and then
-				 * spam us with crap. Ultimately, of course, to take a key out you "just" create
-				 * the 20 closest nodes to the key and then run nodes that swallow all registrations
-				 * and return nothing.
-				 * Protecting against one or two such nodes that flood crap requires crap to be
-				 * identified. Tracing shows a large disparity between number of values registered
-				 * per neighbour (factors of 100), so an approach based on number of registrations
-				 * is non-trivial (assuming future scaling of the DHT, what do we consider crap?)
-				 * A further approach would be to query the claimed originators of values (obviously
-				 * a low bandwidth approach, e.g. query 3 values from the contact with highest number
-				 * of forwarded values). This requires originators to support long term knowledge of
-				 * what they've published (we don't want to blacklist a neighbour because an originator
-				 * has deleted a value/been restarted). We also then have to consider how to deal with
-				 * non-responses to queries (assuming an affirmative Yes -> value has been forwarded
-				 * correnctly, No -> probably crap). We can't treat non-replies as No. Thus a bad
-				 * neighbour only has to forward crap with originators that aren't AZ nodes (very
-				 * easy to do!) to break this approach.
-				 *
-				 *
-				it2 = mapping.getIndirectValues();
+							DHTDBValueImpl	val = (DHTDBValueImpl)it2.next();
 
-				while( it2.hasNext()){
+							DHTTransportContact sender = val.getSender();
 
-					DHTDBValueImpl	val = (DHTDBValueImpl)it2.next();
+							HashWrapper	hw = new HashWrapper( sender.getID());
 
-					DHTTransportContact sender = val.getSender();
+							Integer	sender_count = (Integer)sender_map.get( hw );
 
-					HashWrapper	hw = new HashWrapper( sender.getID());
+							if ( sender_count == null ){
 
-					Integer	sender_count = (Integer)sender_map.get( hw );
+								sender_count = new Integer(1);
 
-					if ( sender_count == null ){
+								senders.add( sender );
 
-						sender_count = new Integer(1);
+							}else{
 
-						senders.add( sender );
+								sender_count = new Integer( sender_count.intValue() + 1 );
+							}
 
-					}else{
+							sender_map.put( hw, sender_count );
+						}
+						*/
 
-						sender_count = new Integer( sender_count.intValue() + 1 );
+						return( false );
 					}
+				});
 
-					sender_map.put( hw, sender_count );
-				}
-				*/
-			}
-
-			logger.log( "Rebuilt global IP bloom filter, size=" + new_filter.getSize() + ", entries=" + new_filter.getEntryCount()+", max hits=" + max_hits );
+			logger.log( "Rebuilt global IP bloom filter, size=" + new_filter.getSize() + ", entries=" + new_filter.getEntryCount()+", max hits=" + max_hits[0] );
 
 			/*
 			senders = control.sortContactsByDistance( senders );
@@ -3626,7 +3865,12 @@ DHTDBImpl
 
 		}finally{
 
-			ip_count_bloom_filter	= new_filter;
+			synchronized( bloom_lock ){
+
+				ip_count_bloom_filter	= new_filter;
+
+				bloom_rebuild_pending	= false;
+			}
 		}
 	}
 
@@ -3796,7 +4040,7 @@ DHTDBImpl
 
 			reportSizes( "keyAdded" );
 
-			total_keys++;
+			total_keys.incrementAndGet();
 
 			return( delegate.keyCreated( key, local ));
 		}
@@ -3806,7 +4050,7 @@ DHTDBImpl
 		keyDeleted(
 			DHTStorageKey	adapter_key )
 		{
-			total_keys--;
+			total_keys.decrementAndGet();
 
 			delegate.keyDeleted( adapter_key );
 
@@ -3847,8 +4091,8 @@ DHTDBImpl
 			DHTStorageKey		key,
 			DHTTransportValue	value )
 		{
-			total_values++;
-			total_size += value.getValue().length;
+			total_values.incrementAndGet();
+			total_size.addAndGet( value.getValue().length );
 
 			reportSizes( "valueAdded");
 
@@ -3874,7 +4118,7 @@ DHTDBImpl
 			DHTTransportValue	old_value,
 			DHTTransportValue	new_value )
 		{
-			total_size += (new_value.getValue().length - old_value.getValue().length );
+			total_size.addAndGet( new_value.getValue().length - old_value.getValue().length );
 
 			reportSizes("valueUpdated");
 
@@ -3887,8 +4131,8 @@ DHTDBImpl
 			DHTStorageKey		key,
 			DHTTransportValue	value )
 		{
-			total_values--;
-			total_size -= value.getValue().length;
+			total_values.decrementAndGet();
+			total_size.addAndGet( -value.getValue().length );
 
 			reportSizes("valueDeleted");
 
@@ -4015,6 +4259,64 @@ DHTDBImpl
 		}
 	}
 
+	private static class
+	Shard
+	{
+		final AEMonitor		mon;
+
+		final Map<HashWrapper,DHTDBMapping>				values		= new HashMap<>();
+		final Map<DHTDBMapping.ShortHash,DHTDBMapping>	prefix_map	= new HashMap<>();
+
+		Shard(
+			int		index )
+		{
+			mon = new AEMonitor( "DHTDB:shard" + index );
+		}
+	}
+
+	private interface
+	MappingVisitor
+	{
+			/**
+			 * Called with the mapping's shard monitor held
+			 * @return true if the mapping should be removed
+			 */
+
+		public boolean
+		visit(
+			DHTDBMapping	mapping );
+	}
+
+	private static class
+	LatencyHistogram
+	{
+		private final AtomicLongArray	buckets = new AtomicLongArray( LATENCY_BUCKETS );
+
+		void
+		record(
+			long	start_nanos )
+		{
+			long	micros = ( SystemTime.getHighPrecisionCounter() - start_nanos ) / 1000;
+
+			int	bucket = micros<=0?0:Math.min( 64 - Long.numberOfLeadingZeros( micros ), LATENCY_BUCKETS - 1 );
+
+			buckets.incrementAndGet( bucket );
+		}
+
+		long[]
+		getBuckets()
+		{
+			long[]	result = new long[LATENCY_BUCKETS];
+
+			for ( int i=0;i<result.length;i++){
+
+				result[i] = buckets.get( i );
+			}
+
+			return( result );
+		}
+	}
+
 	protected static class
 	SurveyContactState
 	{
@@ -27,6 +27,7 @@ import java.net.URL;
 import com.biglybt.core.dht.transport.udp.impl.DHTUDPPacketHelper;
 import com.biglybt.core.dht.transport.udp.impl.DHTUDPPacketReply;
 import com.biglybt.core.dht.transport.udp.impl.DHTUDPPacketRequest;
+import com.biglybt.core.stats.CoreMetrics;
 import com.biglybt.core.util.*;
 import com.biglybt.core.util.bloom.BloomFilter;
 import com.biglybt.core.util.bloom.BloomFilterFactory;
@@ -49,6 +50,10 @@ DHTUDPPacketHandler
 
 	private static final int							BLOOM_FILTER_SIZE		= 10000;
 	private static final int			BLOOM_ROTATION_PERIOD	= 3*60*1000;
+
+	static final CoreMetrics.Histogram	rpc_latency_histogram =
+		CoreMetrics.getHistogram( CoreMetrics.MT_DHT_RPC_LATENCY, "Time taken for DHT requests to be replied to" );
+
 	private BloomFilter					bloom1;
 	private BloomFilter					bloom2;
 	private long						last_bloom_rotation_time;
@@ -181,7 +186,11 @@ DHTUDPPacketHandler
 
 								if ( reply.getNetwork() == network ){
 
-									receiver.packetReceived(reply, from_address, request.getElapsedTime());
+									long	elapsed = request.getElapsedTime();
+
+									rpc_latency_histogram.record( elapsed );
+
+									receiver.packetReceived(reply, from_address, elapsed );
 
 								}else{
 
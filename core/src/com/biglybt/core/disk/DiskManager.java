@@ -29,6 +29,7 @@ import com.biglybt.core.download.DownloadManager;
 import com.biglybt.core.peermanager.piecepicker.util.BitFlags;
 import com.biglybt.core.torrent.TOTorrent;
 import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.FileRegion;
 import com.biglybt.core.util.IndentWriter;
 
 /**
@@ -147,6 +148,19 @@ DiskManager
 	hasOutstandingReadRequestForPiece(
 		int		piece_number );
 
+		/**
+		 * Prepares a block as file ranges that a transport can send without reading the data in.
+		 * The listener is informed asynchronously, with a null region if not supported for this block
+		 */
+
+	public default void
+	getFileRegion(
+		DiskManagerReadRequest		request,
+		FileRegionListener			listener )
+	{
+		listener.regionPrepared( request, null );
+	}
+
 		/**
 		 * Create a request to check a particular piece
 		 * @param pieceNumber	-1 for a complete recheck request
@@ -205,6 +219,15 @@ DiskManager
 
 	public BitFlags
 	getAvailability();
+
+		/**
+		 * @return the pieces that are needed and not yet done (i.e. those for which
+		 * {@link #isInteresting(int)} is true), kept up to date as the pieces change state.
+		 * May be null, in which case callers should fall back to checking pieces individually
+		 */
+
+	public BitFlags
+	getInterestingPieces();
 	
 	public DiskManagerFileInfo[] getFiles();
 	public DiskManagerFileInfoSet getFileSet();
@@ -409,4 +432,17 @@ DiskManager
 		public boolean
 		isComplete();
 	}
+
+	public interface
+	FileRegionListener
+	{
+			/**
+			 * @param region null if the block can't be sent as a region, the caller must release it otherwise
+			 */
+
+		public void
+		regionPrepared(
+			DiskManagerReadRequest		request,
+			FileRegion					region );
+	}
 }
\ No newline at end of file
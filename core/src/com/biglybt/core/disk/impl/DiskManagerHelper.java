@@ -76,6 +76,11 @@ DiskManagerHelper
 		DiskManagerPieceImpl	piece,
 		boolean					done );
 
+	public void
+	setPieceInteresting(
+		int						piece_number,
+		boolean					interesting );
+
 	public boolean
 	isUploadOnly();
 	
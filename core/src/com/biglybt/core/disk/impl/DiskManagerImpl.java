@@ -309,6 +309,7 @@ DiskManagerImpl
     private final Object   file_piece_lock  = new Object();
 
     private final BitFlags	availability;
+    private final BitFlags	interesting;
     
     private volatile boolean switched_to_upload_only;
     
@@ -332,6 +333,7 @@ DiskManagerImpl
             setErrorState( "Torrent not available" );
 
             availability = null;
+            interesting	 = null;
             
             return;
         }
@@ -339,6 +341,7 @@ DiskManagerImpl
         nbPieces    = torrent.getNumberOfPieces();
 
         availability = new BitFlags( nbPieces );
+        interesting	 = new BitFlags( nbPieces );
 
         LocaleUtilDecoder   locale_decoder = null;
 
@@ -391,6 +394,10 @@ DiskManagerImpl
             pieces[i] =new DiskManagerPieceImpl(this, i, i==nbPieces-1?lastPieceLength:pieceLength);
         }
 
+        	// pieces start off needed and not done
+        
+        interesting.setAll();
+
         reader          = DMAccessFactory.createReader(this);
 
         checker         = DMAccessFactory.createChecker(this);
@@ -1708,6 +1715,15 @@ DiskManagerImpl
         reader.readBlock( request, listener );
     }
 
+    @Override
+    public void
+    getFileRegion(
+        DiskManagerReadRequest		request,
+        FileRegionListener			listener )
+    {
+        reader.createFileRegion( request, listener );
+    }
+
 	@Override
 	public boolean
 	hasOutstandingReadRequestForPiece(
@@ -1856,6 +1872,8 @@ DiskManagerImpl
 	            	
 	                dmPiece.setDoneSupport(done);
 	
+	                setPieceInteresting( piece_number, dmPiece.isInteresting());
+	
 	                if (done){
 	                
 	                	availability.set( piece_number );
@@ -2079,6 +2097,32 @@ DiskManagerImpl
     	return( availability );
     }
     
+    @Override
+    public BitFlags
+    getInterestingPieces()
+    {
+    	return( interesting );
+    }
+    
+    @Override
+    public void
+    setPieceInteresting(
+    	int			piece_number,
+    	boolean		is_interesting )
+    {
+    	synchronized( interesting ){
+    		
+    		if ( is_interesting ){
+    			
+    			interesting.set( piece_number );
+    			
+    		}else{
+    			
+    			interesting.unset( piece_number );
+    		}
+    	}
+    }
+    
     @Override
     public DiskManagerPiece[] getPieces()
     {
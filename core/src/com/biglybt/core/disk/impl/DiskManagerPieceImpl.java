@@ -185,13 +185,8 @@ public class DiskManagerPieceImpl
 			final long fileLength =file.getLength();
 			filesNeeded |=fileLength >0 &&file.getDownloaded() <fileLength &&!file.isSkipped();
 		}
-		if (filesNeeded)
-		{
-			statusFlags |=PIECE_STATUS_NEEDED;
-			return true;
-		}
-		statusFlags &=~PIECE_STATUS_NEEDED;
-		return false;
+		setNeeded(filesNeeded);
+		return filesNeeded;
 	}
 
 	@Override
@@ -212,22 +207,26 @@ public class DiskManagerPieceImpl
 	@Override
 	public void clearNeeded()
 	{
-		statusFlags &=~PIECE_STATUS_NEEDED;
+		setNeeded(false);
 	}
 
 	@Override
 	public void setNeeded()
 	{
-		statusFlags |=PIECE_STATUS_NEEDED;
+		setNeeded(true);
 	}
 
 	@Override
 	public void setNeeded(boolean b)
 	{
+		if (b ==isNeeded())
+			return;
 		if (b)
 			statusFlags |=PIECE_STATUS_NEEDED;
 		else
 			statusFlags &=~PIECE_STATUS_NEEDED;
+		// keep the disk manager's packed set of interesting pieces in step
+		diskManager.setPieceInteresting(pieceNumber, isInteresting());
 	}
 
 	@Override
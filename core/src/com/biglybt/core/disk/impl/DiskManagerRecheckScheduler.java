@@ -22,8 +22,10 @@ package com.biglybt.core.disk.impl;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import com.biglybt.core.Core;
 import com.biglybt.core.CoreFactory;
@@ -34,20 +36,30 @@ import com.biglybt.core.CoreOperationTask.ProgressCallbackAdapter;
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.download.DownloadManager;
+import com.biglybt.core.logging.LogEvent;
+import com.biglybt.core.logging.LogIDs;
+import com.biglybt.core.logging.Logger;
 import com.biglybt.core.torrent.TOTorrent;
 import com.biglybt.core.util.AERunnable;
 import com.biglybt.core.util.AESemaphore;
 import com.biglybt.core.util.AsyncDispatcher;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.DisplayFormatters;
 import com.biglybt.core.util.RealTimeInfo;
+import com.biglybt.core.util.SystemTime;
 
 public class
 DiskManagerRecheckScheduler
 {
 	private static Core core = CoreFactory.getSingleton();
 
+	private static final LogIDs LOGID = LogIDs.DISK;
+
 	static int	 	strategy;
 	static boolean 	smallest_first;
 	static int		max_active;
+	static long		queue_depth;
+	static long		device_budget;
 	
 	private static AsyncDispatcher async = new AsyncDispatcher(2000);
 	
@@ -67,6 +79,12 @@ DiskManagerRecheckScheduler
     	   	    	  
     	   	    	max_active = Integer.MAX_VALUE;
     	   	    }
+    	   	    
+    	   	    queue_depth		= Math.max( 1, COConfigurationManager.getIntParameter( "diskmanager.hashchecking.queue.depth.mb" )) * 1024*1024L;
+    	   	    
+    	   	    	// 0 -> unlimited
+    	   	    
+    	   	    device_budget	= Math.max( 0, COConfigurationManager.getIntParameter( "diskmanager.hashchecking.device.budget.mb" )) * 1024*1024L;
     	    }
     	 };
 
@@ -74,12 +92,18 @@ DiskManagerRecheckScheduler
  				new String[]{
  					"diskmanager.hashchecking.strategy",
  					"diskmanager.hashchecking.smallestfirst",
- 					"diskmanager.hashchecking.maxactive"},
+ 					"diskmanager.hashchecking.maxactive",
+ 					"diskmanager.hashchecking.queue.depth.mb",
+ 					"diskmanager.hashchecking.device.budget.mb" },
  				param_listener );
     }
 
     private final Object								lock			= new Object();
 	private final List<DiskManagerRecheckInstance>		entries			= new ArrayList<>();
+	
+		// bytes of check reads outstanding per file system, guarded by lock
+	
+	private final Map<String,long[]>					device_usage	= new HashMap<>();
 
 	public DiskManagerRecheckInstance
 	register(
@@ -139,6 +163,8 @@ DiskManagerRecheckScheduler
 		boolean	result 	= false;
 		int		delay	= 250;
 
+		String[]	file_systems = instance.getFileSystems();
+		
 		synchronized( lock ){
 
 			int	to_process = max_active;
@@ -194,7 +220,18 @@ DiskManagerRecheckScheduler
 			            result	= true;
 					}
 					
-					instance.setActive( result );
+					if ( result && instance.needsBudget() && !instance.reserveBudget( file_systems )){
+						
+							// device budget used up by other rechecks, retry shortly without
+							// flipping the active state
+						
+						result	= false;
+						delay	= 10;
+						
+					}else{
+					
+						instance.setActive( result );
+					}
 					
 					break;
 				}
@@ -214,6 +251,70 @@ DiskManagerRecheckScheduler
 		return( result );
 	}
 
+		/**
+		 * Attempts to account a check read of 'bytes' against the per-device budget of every file system
+		 * the instance uses. A read is always permitted if nothing else is outstanding on the device so
+		 * that pieces bigger than the budget can't stall. Must be called holding the lock
+		 */
+	
+	private boolean
+	reserveDeviceBudget(
+		String[]	file_systems,
+		long		bytes )
+	{
+		long	budget = device_budget;
+
+		if ( budget > 0 ){
+			
+			for ( String fs: file_systems ){
+				
+				long[] usage = device_usage.get( fs );
+				
+				if ( usage != null && usage[0] > 0 && usage[0] + bytes > budget ){
+					
+					return( false );
+				}
+			}
+		}
+		
+		for ( String fs: file_systems ){
+			
+			long[] usage = device_usage.get( fs );
+			
+			if ( usage == null ){
+				
+				usage = new long[1];
+				
+				device_usage.put( fs, usage );
+			}
+			
+			usage[0] += bytes;
+		}
+		
+		return( true );
+	}
+	
+	private void
+	releaseDeviceBudget(
+		String[]	file_systems,
+		long		bytes )
+	{
+		for ( String fs: file_systems ){
+			
+			long[] usage = device_usage.get( fs );
+			
+			if ( usage != null ){
+				
+				usage[0] -= bytes;
+				
+				if ( usage[0] <= 0 ){
+					
+					device_usage.remove( fs );
+				}
+			}
+		}
+	}
+	
 	protected void
 	unregister(
 		DiskManagerRecheckInstance	instance )
@@ -261,6 +362,14 @@ DiskManagerRecheckScheduler
 		
 		private long							metric;
 
+		private volatile String[]		file_systems;
+		
+		private long					budget_held;	// guarded by lock
+		private int						slots_held;		// guarded by lock
+		
+		private volatile long			start_time	= -1;
+		private volatile long			bytes_checked;
+
 		private volatile boolean		active;
 		private volatile boolean		paused;
 		
@@ -368,15 +477,21 @@ DiskManagerRecheckScheduler
 			
 			if ( strategy <= 1 ){
 			
-				return( piece_length>32*1024*1024?1:2 );
+					// the complete recheck (the only low priority user) has always kept two reads
+					// in flight, the resume check drops to one for very large pieces
+				
+				return( low_priority || piece_length<=32*1024*1024?2:1 );
 				
 			}else{
 				
-					// limit to 32MB
+					// keep up to the configured queue depth of piece reads in flight, enough to keep
+					// all the hashing threads busy and let the device see sequential read-ahead
+				
+				int num = (int)Math.min( Integer.MAX_VALUE, queue_depth/piece_length );
 				
-				int num = 32*1024*1024/piece_length;
+				int	max = Math.max( 8, 2*Runtime.getRuntime().availableProcessors());
 				
-				return( Math.min( 8, num ));
+				return( Math.max( 1, Math.min( max, num )));
 			}
 		}
 
@@ -408,14 +523,134 @@ DiskManagerRecheckScheduler
 		reserveSlot()
 		{
 			slot_sem.reserve();
+			
+			synchronized( lock ){
+				
+				slots_held++;
+			}
+			
+			if ( start_time == -1 ){
+				
+				start_time = SystemTime.getMonotonousTime();
+			}
 		}
 		
+			/**
+			 * @param bytes_hashed	the number of bytes actually read and hashed under the slot, zero
+			 * if the check was cancelled, failed or was decided without reading the piece
+			 */
+		
 		public void
-		releaseSlot()
+		releaseSlot(
+			long		bytes_hashed )
 		{
+			synchronized( lock ){
+				
+				bytes_checked += bytes_hashed;
+				
+				slots_held--;
+				
+				if ( budget_held > slots_held*(long)piece_length ){
+					
+					budget_held -= piece_length;
+					
+					releaseDeviceBudget( getFileSystems(), piece_length );
+				}
+			}
+			
 			slot_sem.release();
 		}
 		
+			/**
+			 * Device budget is only accounted for reads made under a slot so that it is always given
+			 * back by the matching releaseSlot, permissions sought without one just pace the caller.
+			 * Must be called holding the lock
+			 */
+		
+		private boolean
+		needsBudget()
+		{
+			return( budget_held < slots_held*(long)piece_length );
+		}
+		
+		private boolean
+		reserveBudget(
+			String[]	fs )
+		{
+			if ( !reserveDeviceBudget( fs, piece_length )){
+				
+				return( false );
+			}
+			
+			budget_held += piece_length;
+			
+			return( true );
+		}
+		
+		private void
+		releaseBudget()
+		{
+			synchronized( lock ){
+				
+				if ( budget_held > 0 ){
+				
+					releaseDeviceBudget( getFileSystems(), budget_held );
+					
+					budget_held = 0;
+				}
+			}
+		}
+		
+		private String[]
+		getFileSystems()
+		{
+			String[] result = file_systems;
+			
+			if ( result == null ){
+				
+				try{
+					result = op.getTask().getAffectedFileSystems();
+					
+				}catch( Throwable e ){
+					
+					Debug.out( e );
+				}
+				
+				if ( result == null ){
+					
+					result = new String[0];
+				}
+				
+				file_systems = result;
+			}
+			
+			return( result );
+		}
+		
+			/**
+			 * @return bytes/sec or -1 if not yet started
+			 */
+		
+		public long
+		getRate()
+		{
+			long	start = start_time;
+			
+			if ( start == -1 ){
+				
+				return( -1 );
+			}
+			
+			long	elapsed = SystemTime.getMonotonousTime() - start;
+			
+			if ( elapsed <= 0 ){
+				
+				return( 0 );
+			}
+			
+			return( bytes_checked*1000/elapsed );
+		}
+		
 		public boolean
 		getPermission()
 		{
@@ -457,6 +692,19 @@ DiskManagerRecheckScheduler
 		public void
 		unregister()
 		{
+			long	rate = getRate();
+			
+			if ( rate >= 0 && Logger.isEnabled()){
+				
+				Logger.log(
+					new LogEvent(
+						helper, LOGID, 
+						"Recheck ended: checked " + DisplayFormatters.formatByteCountToKiBEtc( bytes_checked ) + 
+						" at " + DisplayFormatters.formatByteCountToKiBEtcPerSec( rate )));
+			}
+			
+			releaseBudget();
+			
 			DiskManagerRecheckScheduler.this.unregister( this );
 		}
 
@@ -552,6 +800,20 @@ DiskManagerRecheckScheduler
 				return( helper.getSizeExcludingDND());
 			}
 			
+			@Override
+			public String 
+			getSubTaskName()
+			{
+				long rate = getRate();
+				
+				if ( rate < 0 ){
+					
+					return( super.getSubTaskName());
+				}
+				
+				return( DisplayFormatters.formatByteCountToKiBEtcPerSec( rate ));
+			}
+			
 			@Override
 			public int 
 			compareTo(
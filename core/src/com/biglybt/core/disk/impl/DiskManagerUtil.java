@@ -1860,6 +1860,11 @@ DiskManagerUtil
 						return null;
 					}
 					
+					@Override
+					public BitFlags getInterestingPieces(){
+						return null;
+					}
+					
 					@Override
 					public int getPieceLength(int piece_number){
 						return( piece_number==nbPieces-1?lastPieceLength:pieceLength );
@@ -2028,6 +2033,10 @@ DiskManagerUtil
 					public void setPieceDone(DiskManagerPieceImpl piece, boolean done){
 						piece.setDoneSupport( done );
 					}
+					
+					@Override
+					public void setPieceInteresting(int piece_number, boolean interesting){
+					}
 										
 					@Override
 					public void setFailedAndRecheck(DiskManagerFileInfo file, String reason){
@@ -19,6 +19,7 @@
 
 package com.biglybt.core.disk.impl.access;
 
+import com.biglybt.core.disk.DiskManager;
 import com.biglybt.core.disk.DiskManagerReadRequest;
 import com.biglybt.core.disk.DiskManagerReadRequestListener;
 import com.biglybt.core.util.DirectByteBuffer;
@@ -63,6 +64,16 @@ DMReader
 	hasOutstandingReadRequestForPiece(
 		int		piece_number );
 
+		/**
+		 * Asynchronously prepares a region for sending the block straight from its files, the listener
+		 * gets null if the storage doesn't allow it
+		 */
+
+	public void
+	createFileRegion(
+		DiskManagerReadRequest				request,
+		DiskManager.FileRegionListener		listener );
+
 		/**
 		 * 2 entries, first = read-ops, second = read-bytes
 		 * @return
@@ -328,7 +328,9 @@ DMCheckerImpl
 
 		  				int	checks_submitted	= 0;
 
-			            final AESemaphore	 run_sem = new AESemaphore( "DMChecker::completeRecheck:runsem", 2 );
+		  					// pieces are submitted in order so the reads are sequential, the number in flight
+		  					// (and hence the read-ahead and hashing parallelism) is governed by the recheck
+		  					// scheduler's queue depth and device budget
 
 			            int nbPieces = disk_manager.getNbPieces();
 
@@ -343,7 +345,7 @@ DMCheckerImpl
 
 		  					if ( dm_piece.isDone() || !dm_piece.isSkipped()){
 
-			  					run_sem.reserve();
+			  					recheck_inst.reserveSlot();
 
 				  				while( !stopped ){
 
@@ -355,6 +357,8 @@ DMCheckerImpl
 
 			  					if ( stopped ){
 
+			  						recheck_inst.releaseSlot( 0 );
+
 			  						break;
 			  					}
 
@@ -429,7 +433,9 @@ DMCheckerImpl
 					  	       			protected void
 					  	       			complete()
 					  	       			{
-			  	       						run_sem.release();
+			  	       							// the hash is only set once the piece has been read and hashed
+
+			  	       						recheck_inst.releaseSlot( this_request.getHash()==null?0:disk_manager.getPieceLength( this_request.getPieceNumber()));
 
 			  	       						sem.release();
 				  	       				}
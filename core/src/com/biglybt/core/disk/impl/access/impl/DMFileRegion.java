@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.disk.impl.access.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.biglybt.core.diskmanager.cache.CacheFile;
+import com.biglybt.core.util.FileRegion;
+
+/**
+ * A block of piece data as a sequence of file ranges, a block spans more than one file
+ * when it crosses a file boundary. The ranges are prepared (cache flushed, file opened and
+ * validated) when the region is created so sending is just the channel transfers
+ */
+
+final class
+DMFileRegion
+	implements FileRegion
+{
+	private final CacheFile.TransferChannel[]	channels;
+	private final long[]						offsets;
+	private final int[]							lengths;
+	private final int							length;
+
+	private int		chunk;
+	private int		chunk_done;
+	private int		done;
+
+	private boolean	released;
+
+	protected
+	DMFileRegion(
+		CacheFile.TransferChannel[]		_channels,
+		long[]							_offsets,
+		int[]							_lengths )
+	{
+		channels	= _channels;
+		offsets		= _offsets;
+		lengths		= _lengths;
+
+		int	total = 0;
+
+		for ( int len: lengths ){
+
+			total += len;
+		}
+
+		length	= total;
+	}
+
+	@Override
+	public int
+	getLength()
+	{
+		return( length );
+	}
+
+	@Override
+	public synchronized int
+	remaining()
+	{
+		return( length - done );
+	}
+
+	@Override
+	public synchronized long
+	transferTo(
+		WritableByteChannel		channel,
+		int						max_bytes )
+
+		throws IOException
+	{
+		if ( released ){
+
+			throw( new IOException( "File region has been released" ));
+		}
+
+		int	total = 0;
+
+		while( chunk < channels.length && total < max_bytes ){
+
+			int	len = Math.min( lengths[chunk] - chunk_done, max_bytes - total );
+
+			FileChannel	fc = channels[chunk].getChannel();
+
+			int	written = (int)fc.transferTo( offsets[chunk] + chunk_done, len, channel );
+
+			total		+= written;
+			chunk_done	+= written;
+			done		+= written;
+
+			if ( chunk_done == lengths[chunk] ){
+
+				channels[chunk].release();
+
+				chunk++;
+
+				chunk_done = 0;
+
+			}else if ( written < len ){
+
+					// channel is full
+
+				break;
+			}
+		}
+
+		return( total );
+	}
+
+	@Override
+	public synchronized void
+	release()
+	{
+		if ( released ){
+
+			return;
+		}
+
+		released = true;
+
+		for ( int i=chunk;i<channels.length;i++){
+
+			channels[i].release();
+		}
+	}
+}
@@ -49,6 +49,10 @@ DMReaderImpl
 {
 	private static final LogIDs LOGID = LogIDs.DISK;
 
+		// regions are prepared off the caller's thread as this can flush the cache and open files
+
+	private static final AsyncDispatcher	region_dispatcher = new AsyncDispatcher( "DMReader:regions" );
+
 	private final DiskManagerHelper		disk_manager;
 	private final DiskAccessController	disk_access;
 
@@ -330,6 +334,164 @@ DMReaderImpl
 		}
 	}
 
+	@Override
+	public void
+	createFileRegion(
+		DiskManagerReadRequest				request,
+		DiskManager.FileRegionListener		listener )
+	{
+		region_dispatcher.dispatch(
+			new AERunnable()
+			{
+				@Override
+				public void
+				runSupport()
+				{
+					FileRegion	region = null;
+
+					try{
+						region = createFileRegion( request.getPieceNumber(), request.getOffset(), request.getLength());
+
+					}catch( Throwable e ){
+
+						Debug.out( e );
+					}
+
+					listener.regionPrepared( request, region );
+				}
+			});
+	}
+
+	private FileRegion
+	createFileRegion(
+		int pieceNumber,
+		int offset,
+		int length )
+	{
+		try{
+			this_mon.enter();
+
+			if ( !started || stopped || suspended > 0 ){
+
+				return( null );
+			}
+		}finally{
+
+			this_mon.exit();
+		}
+
+		DMPieceList pieceList = disk_manager.getPieceList( pieceNumber );
+
+		if ( pieceList.size() == 0 ){
+
+			return( null );
+		}
+
+		long previousFilesLength = 0;
+
+		int currentFile = 0;
+
+		long fileOffset = pieceList.get(0).getOffset();
+
+		while (currentFile < pieceList.size() && pieceList.getCumulativeLengthToPiece(currentFile) < offset) {
+
+			previousFilesLength = pieceList.getCumulativeLengthToPiece(currentFile);
+
+			currentFile++;
+
+			fileOffset = 0;
+		}
+
+		fileOffset += offset - previousFilesLength;
+
+		List<CacheFile>	files	= new ArrayList<>( 2 );
+		List<long[]>	ranges	= new ArrayList<>( 2 );
+
+		int	position = 0;
+
+		while ( position < length && currentFile < pieceList.size()){
+
+			DMPieceMapEntry map_entry = pieceList.get( currentFile );
+
+			DiskManagerFileInfoImpl	file = (DiskManagerFileInfoImpl)map_entry.getFile();
+
+			CacheFile	cache_file = file.getCacheFile();
+
+				// only linear storage maps file offsets directly to disk, pad files have nothing on disk
+
+			if ( cache_file.getStorageType() != CacheFile.CT_LINEAR || file.getTorrentFile().isPadFile()){
+
+				return( null );
+			}
+
+			int	length_available = map_entry.getLength() - (int)( fileOffset - map_entry.getOffset());
+
+			int	chunk_length = Math.min( length - position, length_available );
+
+			files.add( cache_file );
+			ranges.add( new long[]{ fileOffset, chunk_length });
+
+			position += chunk_length;
+
+			currentFile++;
+
+			fileOffset = 0;
+		}
+
+		if ( position != length ){
+
+			return( null );
+		}
+
+		int	num = files.size();
+
+		CacheFile.TransferChannel[]	channels = new CacheFile.TransferChannel[num];
+
+		long[]	offsets = new long[num];
+		int[]	lengths	= new int[num];
+
+			// flush, open and validate here so that the network thread sending the region
+			// does nothing but the channel transfers
+
+		try{
+			for ( int i=0;i<num;i++){
+
+				long[]	range = ranges.get(i);
+
+				offsets[i]	= range[0];
+				lengths[i]	= (int)range[1];
+
+				channels[i] = files.get(i).prepareTransfer( offsets[i], lengths[i] );
+			}
+		}catch( Throwable e ){
+
+			for ( CacheFile.TransferChannel channel: channels ){
+
+				if ( channel != null ){
+
+					channel.release();
+				}
+			}
+
+				// fall back to a buffered read which will report any error properly
+
+			return( null );
+		}
+
+		try{
+			this_mon.enter();
+
+			total_read_ops++;
+			total_read_bytes += length;
+
+		}finally{
+
+			this_mon.exit();
+		}
+
+		return( new DMFileRegion( channels, offsets, lengths ));
+	}
+
 	@Override
 	public long[]
 	getStats()
@@ -530,14 +530,16 @@ RDResumeHandler
 													
 													forceRecheckErrorReporter.accept( cause );
 												}
-												
+
 												complete();
 											}
 
 											protected void
 											complete()
 											{
-												recheck_inst.releaseSlot();
+													// the hash is only set once the piece has been read and hashed
+
+												recheck_inst.releaseSlot( request.getHash()==null?0:disk_manager.getPieceLength( request.getPieceNumber()));
 
 												pending_checks_sem.release();
 											}
@@ -29,6 +29,7 @@ import com.biglybt.core.diskmanager.access.DiskAccessControllerStats;
 import com.biglybt.core.diskmanager.access.DiskAccessRequest;
 import com.biglybt.core.diskmanager.access.DiskAccessRequestListener;
 import com.biglybt.core.diskmanager.cache.CacheFile;
+import com.biglybt.core.stats.CoreMetrics;
 import com.biglybt.core.stats.CoreStats;
 import com.biglybt.core.stats.CoreStatsProvider;
 import com.biglybt.core.util.Debug;
@@ -100,6 +101,16 @@ DiskAccessControllerImpl
 		types.add( CoreStats.ST_DISK_WRITE_IO_TIME );
 
 		CoreStats.registerProvider( types, this );
+
+		CoreMetrics.registerGauge(
+			CoreMetrics.MT_DISK_READ_QUEUE_LENGTH,
+			"Number of queued disk read requests",
+			()->read_dispatcher.getQueueSize());
+
+		CoreMetrics.registerGauge(
+			CoreMetrics.MT_DISK_WRITE_QUEUE_LENGTH,
+			"Number of queued disk write requests",
+			()->write_dispatcher.getQueueSize());
 	}
 
 	@Override
@@ -20,6 +20,7 @@
 package com.biglybt.core.diskmanager.cache;
 
 import java.io.File;
+import java.nio.channels.FileChannel;
 
 import com.biglybt.core.torrent.TOTorrentFile;
 import com.biglybt.core.util.DirectByteBuffer;
@@ -123,6 +124,19 @@ CacheFile
 
 		throws CacheFileManagerException;
 
+		/**
+		 * Prepares the range for sending straight from the file to a network channel, bypassing the
+		 * cache. Only valid for linear storage. Any dirty cache entries in the range are flushed and the
+		 * file kept open so the channel can be used without locking or disk access until released
+		 */
+
+	public TransferChannel
+	prepareTransfer(
+		long				position,
+		int					length )
+
+		throws CacheFileManagerException;
+
 	public void
 	write(
 		DirectByteBuffer	buffer,
@@ -207,4 +221,18 @@ CacheFile
 	delete()
 
 		throws CacheFileManagerException;
+
+	public interface
+	TransferChannel
+	{
+		public FileChannel
+		getChannel();
+
+			/**
+			 * Must be called once the transfer is complete or abandoned, subsequent calls are ignored
+			 */
+
+		public void
+		release();
+	}
 }
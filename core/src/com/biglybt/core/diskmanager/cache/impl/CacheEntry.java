@@ -48,6 +48,13 @@ CacheEntry
 	protected int				entry_type;
 	protected int				usage_count;
 
+		// CacheEntryIndex state
+
+	private int					segment_hash;
+	private long				clock_stamp;
+	private volatile boolean	referenced;
+	private volatile boolean	indexed;
+
 	/**
 	 * Constructs a dummy cache entry used to search in a Set
 	 * @param offset
@@ -76,6 +83,7 @@ CacheEntry
 		buffer			= _buffer;
 		file_position	= _file_position;
 		size			= _size;
+		segment_hash	= System.identityHashCode( file );
 
 		buffer_pos		= buffer.position(DirectByteBuffer.SS_CACHE);
 		buffer_limit	= buffer.limit(DirectByteBuffer.SS_CACHE);
@@ -140,6 +148,51 @@ CacheEntry
 		usage_count++;
 	}
 
+	protected int
+	getSegmentHash()
+	{
+		return( segment_hash );
+	}
+
+	protected long
+	getClockStamp()
+	{
+		return( clock_stamp );
+	}
+
+	protected void
+	setClockStamp(
+		long		stamp )
+	{
+		clock_stamp	= stamp;
+	}
+
+	protected boolean
+	isReferenced()
+	{
+		return( referenced );
+	}
+
+	protected void
+	setReferenced(
+		boolean		b )
+	{
+		referenced	= b;
+	}
+
+	protected boolean
+	isIndexed()
+	{
+		return( indexed );
+	}
+
+	protected void
+	setIndexed(
+		boolean		b )
+	{
+		indexed	= b;
+	}
+
 	protected long
 	getLastUsed()
 	{
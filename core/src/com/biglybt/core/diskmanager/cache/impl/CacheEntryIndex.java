@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.diskmanager.cache.impl;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.biglybt.core.util.AEMonitor;
+
+/**
+ * Global index of cache entries, split into segments so that lookups and updates for
+ * different files don't contend on a single monitor.
+ * <p>
+ * All entries for a given file live in the same segment. Eviction uses a CLOCK (second chance)
+ * policy - each segment is kept in insertion order and the globally oldest segment head is
+ * selected as the victim unless it has been referenced since it was last considered, in which
+ * case it is moved to the tail of its segment and the search continues.
+ * <p>
+ * Marking an entry as used only sets its reference bit and never takes a segment monitor.
+ */
+
+public class
+CacheEntryIndex
+{
+	private static final int	SEGMENT_COUNT	= 32;	// must be power of 2
+	private static final int	SEGMENT_MASK	= SEGMENT_COUNT - 1;
+
+	private final Segment[]		segments = new Segment[SEGMENT_COUNT];
+
+	private final AtomicLong	clock	= new AtomicLong();
+
+	protected
+	CacheEntryIndex()
+	{
+		for ( int i=0;i<SEGMENT_COUNT;i++){
+
+			segments[i] = new Segment( i );
+		}
+	}
+
+	private Segment
+	getSegment(
+		CacheEntry	entry )
+	{
+		int	h = entry.getSegmentHash();
+
+			// spread the identity hash bits as done by HashMap
+
+		h ^= ( h >>> 16 );
+
+		return( segments[ h & SEGMENT_MASK ] );
+	}
+
+	protected void
+	add(
+		CacheEntry	entry )
+	{
+		getSegment( entry ).add( entry );
+	}
+
+	protected boolean
+	remove(
+		CacheEntry	entry )
+	{
+		return( getSegment( entry ).remove( entry ));
+	}
+
+		/**
+		 * Records usage of the entry without taking any monitor
+		 * @return false if the entry isn't in the index
+		 */
+
+	protected boolean
+	used(
+		CacheEntry	entry )
+	{
+		if ( !entry.isIndexed()){
+
+			return( false );
+		}
+
+		entry.setReferenced( true );
+
+		return( true );
+	}
+
+	protected boolean
+	contains(
+		CacheEntry	entry )
+	{
+		return( entry.isIndexed());
+	}
+
+	protected int
+	size()
+	{
+		int	res = 0;
+
+		for ( Segment segment: segments ){
+
+			res += segment.size;
+		}
+
+		return( res );
+	}
+
+		/**
+		 * Selects the next entry to be evicted but does NOT remove it - the caller is expected to
+		 * flush the owning file, which will release the entry via the normal path
+		 * @return null if the index is empty
+		 */
+
+	protected CacheEntry
+	getEvictionCandidate()
+	{
+			// bound the number of second chances we hand out so that a stream of concurrent
+			// hits can't keep us here indefinitely
+
+		int	chances = size() + SEGMENT_COUNT;
+
+		while( true ){
+
+			Segment	oldest_segment	= null;
+			long	oldest_stamp	= Long.MAX_VALUE;
+
+			for ( Segment segment: segments ){
+
+				long	stamp = segment.head_stamp;
+
+				if ( stamp < oldest_stamp ){
+
+					oldest_stamp	= stamp;
+					oldest_segment	= segment;
+				}
+			}
+
+			if ( oldest_segment == null ){
+
+				return( null );
+			}
+
+			CacheEntry	candidate = oldest_segment.clockHead( chances-- > 0 );
+
+			if ( candidate != null ){
+
+				return( candidate );
+			}
+		}
+	}
+
+		/**
+		 * @return a snapshot of the entries, oldest first within each segment
+		 */
+
+	protected List<CacheEntry>
+	getEntries()
+	{
+		List<CacheEntry>	result = new ArrayList<>( size());
+
+		for ( Segment segment: segments ){
+
+			segment.getEntries( result );
+		}
+
+		return( result );
+	}
+
+	protected Set<CacheFileWithCache>
+	getDirtyFiles()
+	{
+		Set<CacheFileWithCache>	result = new HashSet<>();
+
+		for ( Segment segment: segments ){
+
+			segment.getDirtyFiles( result );
+		}
+
+		return( result );
+	}
+
+	private class
+	Segment
+	{
+		private final AEMonitor		mon;
+
+			// insertion order, the head is the next CLOCK candidate
+
+		private final LinkedHashMap<CacheEntry,CacheEntry>	entries = new LinkedHashMap<>( 64 );
+
+		volatile long	head_stamp	= Long.MAX_VALUE;
+		volatile int	size;
+
+		Segment(
+			int		index )
+		{
+			mon = new AEMonitor( "CacheEntryIndex:" + index );
+		}
+
+		void
+		add(
+			CacheEntry	entry )
+		{
+			try{
+				mon.enter();
+
+				entry.setClockStamp( clock.incrementAndGet());
+
+				entry.setReferenced( false );
+
+				entries.put( entry, entry );
+
+				entry.setIndexed( true );
+
+				updateHead();
+
+			}finally{
+
+				mon.exit();
+			}
+		}
+
+		boolean
+		remove(
+			CacheEntry	entry )
+		{
+			try{
+				mon.enter();
+
+				if ( entries.remove( entry ) == null ){
+
+					return( false );
+				}
+
+				entry.setIndexed( false );
+
+				updateHead();
+
+				return( true );
+
+			}finally{
+
+				mon.exit();
+			}
+		}
+
+		CacheEntry
+		clockHead(
+			boolean		allow_second_chance )
+		{
+			try{
+				mon.enter();
+
+				if ( entries.isEmpty()){
+
+					return( null );
+				}
+
+				CacheEntry	head = entries.keySet().iterator().next();
+
+				if ( allow_second_chance && head.isReferenced()){
+
+						// second chance - move to the tail with a fresh stamp
+
+					head.setReferenced( false );
+
+					entries.remove( head );
+
+					head.setClockStamp( clock.incrementAndGet());
+
+					entries.put( head, head );
+
+					updateHead();
+
+					return( null );
+				}
+
+				return( head );
+
+			}finally{
+
+				mon.exit();
+			}
+		}
+
+		void
+		getEntries(
+			List<CacheEntry>	result )
+		{
+			try{
+				mon.enter();
+
+				result.addAll( entries.keySet());
+
+			}finally{
+
+				mon.exit();
+			}
+		}
+
+		void
+		getDirtyFiles(
+			Set<CacheFileWithCache>	result )
+		{
+			try{
+				mon.enter();
+
+				for ( CacheEntry entry: entries.keySet()){
+
+					if ( entry.isDirty()){
+
+						result.add( entry.getFile());
+					}
+				}
+			}finally{
+
+				mon.exit();
+			}
+		}
+
+		private void
+		updateHead()
+		{
+			size = entries.size();
+
+			if ( size == 0 ){
+
+				head_stamp = Long.MAX_VALUE;
+
+			}else{
+
+				head_stamp = entries.keySet().iterator().next().getClockStamp();
+			}
+		}
+	}
+}
@@ -26,6 +26,7 @@ package com.biglybt.core.diskmanager.cache.impl;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.diskmanager.cache.*;
@@ -33,6 +34,7 @@ import com.biglybt.core.diskmanager.file.*;
 import com.biglybt.core.logging.LogEvent;
 import com.biglybt.core.logging.LogIDs;
 import com.biglybt.core.logging.Logger;
+import com.biglybt.core.stats.CoreMetrics;
 import com.biglybt.core.torrent.TOTorrent;
 import com.biglybt.core.torrent.TOTorrentFile;
 import com.biglybt.core.util.*;
@@ -109,7 +111,8 @@ CacheFileManagerImpl
 	protected long		cache_files_not_smaller_than;
 
 	protected long		cache_minimum_free_size;
-	protected long		cache_space_free;
+
+	protected final AtomicLong	cache_space_free	= new AtomicLong();
 
 	private long	cache_file_id_next	= 0;
 
@@ -120,24 +123,24 @@ CacheFileManagerImpl
 	protected WeakHashMap		cache_files			= new WeakHashMap();
 	protected WeakHashMap		updated_cache_files	= null;
 
-		// access order
+		// segmented so that files don't contend with each other, CLOCK eviction order
 
-	protected final LinkedHashMap		cache_entries = new LinkedHashMap(1024, 0.75f, true );
+	protected final CacheEntryIndex		cache_entries = new CacheEntryIndex();
 
 	protected CacheFileManagerStatsImpl	stats;
 
 
 	protected final Map	torrent_to_cache_file_map	= new LightHashMap();
 
-	protected long				cache_bytes_written;
-	protected long				cache_bytes_read;
-	protected long				file_bytes_written;
-	protected long				file_bytes_read;
+	protected final AtomicLong	cache_bytes_written	= new AtomicLong();
+	protected final AtomicLong	cache_bytes_read	= new AtomicLong();
+	protected final AtomicLong	file_bytes_written	= new AtomicLong();
+	protected final AtomicLong	file_bytes_read		= new AtomicLong();
 
-	protected long				cache_read_count;
-	protected long				cache_write_count;
-	protected long				file_read_count;
-	protected long				file_write_count;
+	protected final AtomicLong	cache_read_count	= new AtomicLong();
+	protected final AtomicLong	cache_write_count	= new AtomicLong();
+	protected final AtomicLong	file_read_count		= new AtomicLong();
+	protected final AtomicLong	file_write_count	= new AtomicLong();
 
 	protected final AEMonitor			this_mon	= new AEMonitor( "CacheFileManager" );
 
@@ -196,10 +199,29 @@ CacheFileManagerImpl
 
 		cache_minimum_free_size	= cache_size/4;
 
-		cache_space_free		= cache_size;
+		cache_space_free.set( cache_size );
 
 		stats = new CacheFileManagerStatsImpl( this );
 
+		CoreMetrics.registerCounter(
+			CoreMetrics.MT_DISK_CACHE_READ_CACHE_BYTES,
+			"Bytes read that were satisfied by the disk cache",
+			()->cache_bytes_read.get());
+
+		CoreMetrics.registerCounter(
+			CoreMetrics.MT_DISK_CACHE_READ_FILE_BYTES,
+			"Bytes read from file by the disk cache",
+			()->file_bytes_read.get());
+
+		CoreMetrics.registerGauge(
+			CoreMetrics.MT_DISK_CACHE_READ_HIT_RATIO,
+			"Proportion of bytes read that were satisfied by the disk cache",
+			()->{
+				long	from_cache	= cache_bytes_read.get();
+				long	total		= from_cache + file_bytes_read.get();
+
+				return( total==0?0:((double)from_cache/total ));
+			});
 
 		cacheStatsAndCleaner();
 
@@ -379,27 +401,30 @@ CacheFileManagerImpl
 
 			CacheEntry	oldest_entry	= null;
 
-			try{
-				this_mon.enter();
+			long	free = cache_space_free.get();
 
-				if ( length < cache_space_free || cache_space_free == cache_size ){
+			if ( length < free || free == cache_size ){
 
-					ok	= true;
+				ok	= true;
 
-				}else{
+			}else{
 
-					oldest_entry = (CacheEntry)cache_entries.keySet().iterator().next();
-				}
-			}finally{
+				oldest_entry = cache_entries.getEvictionCandidate();
 
-				this_mon.exit();
+				if ( oldest_entry == null ){
+
+						// nothing left to evict (entries released since we looked at the free
+						// space) so treat as the 'cache empty' case above
+
+					ok	= true;
+				}
 			}
 
 			if ( !ok ){
 
 				log	= true;
 
-				long	old_free	= cache_space_free;
+				long	old_free	= free;
 
 				CacheFileWithCache	oldest_file = oldest_entry.getFile();
 
@@ -423,7 +448,7 @@ CacheFileManagerImpl
 					}
 				}
 
-				long	flushed = cache_space_free - old_free;
+				long	flushed = cache_space_free.get() - old_free;
 
 				if (Logger.isEnabled()) {
 					TOTorrentFile tf = file.getTorrentFile();
@@ -435,20 +460,12 @@ CacheFileManagerImpl
 
 				if ( flushed == 0 ){
 
-					try{
-						this_mon.enter();
+					if ( cache_entries.contains( oldest_entry )){
 
-						if (	cache_entries.size() > 0 &&
-								(CacheEntry)cache_entries.keySet().iterator().next() == oldest_entry ){
-
-								// hmm, something wrong with cache as the flush should have got rid
-								// of at least the oldest entry
-
-							throw( new CacheFileManagerException( null, "Cache inconsistent: 0 flushed"));
-						}
-					}finally{
+							// hmm, something wrong with cache as the flush should have got rid
+							// of at least the oldest entry
 
-						this_mon.exit();
+						throw( new CacheFileManagerException( null, "Cache inconsistent: 0 flushed"));
 					}
 				}
 			}
@@ -461,8 +478,8 @@ CacheFileManagerImpl
 			TOTorrent torrent = tf == null ? null : tf.getTorrent();
 
 			Logger.log(new LogEvent(torrent, LOGID, "DiskCache: cr="
-					+ cache_bytes_read + ",cw=" + cache_bytes_written + ",fr="
-					+ file_bytes_read + ",fw=" + file_bytes_written));
+					+ cache_bytes_read.get() + ",cw=" + cache_bytes_written.get() + ",fr="
+					+ file_bytes_read.get() + ",fw=" + file_bytes_written.get()));
 		}
 
 		return( entry );
@@ -496,8 +513,6 @@ CacheFileManagerImpl
 
 						cleaner_ticks	= CACHE_CLEANER_TICKS;
 
-						final Set	dirty_files	= new HashSet();
-
 						final long	oldest	=SystemTime.getCurrentTime() - DIRTY_CACHE_WRITE_MAX_AGE;
 
 						try{
@@ -510,23 +525,6 @@ CacheFileManagerImpl
 								updated_cache_files	= null;
 							}
 
-							if ( cache_entries.size() > 0 ){
-
-								Iterator it = cache_entries.keySet().iterator();
-
-								while( it.hasNext()){
-
-									CacheEntry	entry = (CacheEntry)it.next();
-
-									// System.out.println( "oldest entry = " + ( now - entry.getLastUsed()));
-
-									if ( entry.isDirty()){
-
-										dirty_files.add( entry.getFile());
-									}
-								}
-							}
-
 							// System.out.println( "cache file = " + cache_files.size() + ", torrent map = " + torrent_to_cache_file_map.size());
 
 						}finally{
@@ -534,6 +532,8 @@ CacheFileManagerImpl
 							this_mon.exit();
 						}
 
+						final Set	dirty_files	= cache_entries.getDirtyFiles();
+
 						Iterator	it = dirty_files.iterator();
 
 						while( it.hasNext()){
@@ -585,16 +585,16 @@ CacheFileManagerImpl
 
 		throws CacheFileManagerException
 	{
-		try{
-			this_mon.enter();
+		cache_space_free.addAndGet( -new_entry.getLength());
 
-			cache_space_free	-= new_entry.getLength();
+			// 	System.out.println( "Total cache space = " + cache_space_free );
 
-				// 	System.out.println( "Total cache space = " + cache_space_free );
+		cache_entries.add( new_entry );
 
-			cache_entries.put( new_entry, new_entry );
+		if ( DEBUG ){
 
-			if ( DEBUG ){
+			try{
+				this_mon.enter();
 
 				CacheFileWithCache	file	= new_entry.getFile();
 
@@ -602,7 +602,7 @@ CacheFileManagerImpl
 
 				int		my_count = 0;
 
-				Iterator it = cache_entries.keySet().iterator();
+				Iterator it = cache_entries.getEntries().iterator();
 
 				while( it.hasNext()){
 
@@ -627,7 +627,7 @@ CacheFileManagerImpl
 					//System.out.println( "Cache: file_count = " + my_count );
 				}
 
-				if ( total_cache_size != cache_size - cache_space_free ){
+				if ( total_cache_size != cache_size - cache_space_free.get()){
 
 					Debug.out( "Cache inconsistency: used_size = " + total_cache_size + ", free = " + cache_space_free + ", size = " + cache_size );
 
@@ -637,10 +637,10 @@ CacheFileManagerImpl
 
 					//System.out.println( "Cache: usage = " + total_cache_size );
 				}
-			}
-		}finally{
+			}finally{
 
-			this_mon.exit();
+				this_mon.exit();
+			}
 		}
 	}
 
@@ -650,24 +650,18 @@ CacheFileManagerImpl
 
 		throws CacheFileManagerException
 	{
-		try{
-			this_mon.enter();
-
-				// note that the "get" operation update the MRU in cache_entries
+			// marks the entry as referenced for the CLOCK eviction, no global monitor required
+			// as the caller holds the file's monitor
 
-			if ( cache_entries.get( entry ) == null ){
+		if ( !cache_entries.used( entry )){
 
-				Debug.out( "Cache inconsistency: entry missing on usage" );
+			Debug.out( "Cache inconsistency: entry missing on usage" );
 
-				throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on usage"));
+			throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on usage"));
 
-			}else{
-
-				entry.used();
-			}
-		}finally{
+		}else{
 
-			this_mon.exit();
+			entry.used();
 		}
 	}
 
@@ -679,37 +673,30 @@ CacheFileManagerImpl
 	{
 		entry.getBuffer().returnToPool();
 
-		try{
-			this_mon.enter();
-
-			cache_space_free	+= entry.getLength();
+		cache_space_free.addAndGet( entry.getLength());
 
-			if ( cache_entries.remove( entry ) == null ){
+		if ( !cache_entries.remove( entry )){
 
-				Debug.out( "Cache inconsistency: entry missing on removal" );
+			Debug.out( "Cache inconsistency: entry missing on removal" );
 
-				throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on removal"));
-			}
+			throw( new CacheFileManagerException( null, "Cache inconsistency: entry missing on removal"));
+		}
 
 			/*
-			if ( 	entry.getType() == CacheEntry.CT_READ_AHEAD ){
+		if ( 	entry.getType() == CacheEntry.CT_READ_AHEAD ){
 
-				if ( entry.getUsageCount() < 2 ){
+			if ( entry.getUsageCount() < 2 ){
 
-					System.out.println( "ra: not used" );
+				System.out.println( "ra: not used" );
 
-				}else{
+			}else{
 
-					System.out.println( "ra: used" );
-				}
+				System.out.println( "ra: used" );
 			}
-			*/
-
-			// System.out.println( "Total cache space = " + cache_space_free );
-		}finally{
-
-			this_mon.exit();
 		}
+		*/
+
+		// System.out.println( "Total cache space = " + cache_space_free );
 	}
 
 	protected long
@@ -721,7 +708,7 @@ CacheFileManagerImpl
 	protected long
 	getCacheUsed()
 	{
-		long free = cache_space_free;
+		long free = cache_space_free.get();
 
 		if ( free < 0 ){
 
@@ -735,115 +722,84 @@ CacheFileManagerImpl
 	cacheBytesWritten(
 		long		num )
 	{
-		try{
-			this_mon.enter();
-
-			cache_bytes_written	+= num;
+		cache_bytes_written.addAndGet( num );
 
-			cache_write_count++;
-
-		}finally{
-
-			this_mon.exit();
-		}
+		cache_write_count.incrementAndGet();
 	}
 
 	protected void
 	cacheBytesRead(
 		int		num )
 	{
-		try{
-			this_mon.enter();
-
-			cache_bytes_read	+= num;
-
-			cache_read_count++;
-
-		}finally{
+		cache_bytes_read.addAndGet( num );
 
-			this_mon.exit();
-		}
+		cache_read_count.incrementAndGet();
 	}
 
 	protected void
 	fileBytesWritten(
 		long	num )
 	{
-		try{
-			this_mon.enter();
+		file_bytes_written.addAndGet( num );
 
-			file_bytes_written	+= num;
-
-			file_write_count++;
-
-		}finally{
-
-			this_mon.exit();
-		}
+		file_write_count.incrementAndGet();
 	}
 
 	protected void
 	fileBytesRead(
 		int		num )
 	{
-		try{
-			this_mon.enter();
-
-			file_bytes_read	+= num;
+		file_bytes_read.addAndGet( num );
 
-			file_read_count++;
-		}finally{
-
-			this_mon.exit();
-		}
+		file_read_count.incrementAndGet();
 	}
 
 	protected long
 	getBytesWrittenToCache()
 	{
-		return( cache_bytes_written );
+		return( cache_bytes_written.get());
 	}
 
 	protected long
 	getBytesWrittenToFile()
 	{
-		return( file_bytes_written );
+		return( file_bytes_written.get());
 	}
 
 	protected long
 	getBytesReadFromCache()
 	{
-		return( cache_bytes_read );
+		return( cache_bytes_read.get());
 	}
 
 	protected long
 	getBytesReadFromFile()
 	{
-		return( file_bytes_read );
+		return( file_bytes_read.get());
 	}
 
 	public long
 	getCacheReadCount()
 	{
-		return( cache_read_count );
+		return( cache_read_count.get());
 	}
 
 	public long
 	getCacheWriteCount()
 	{
-		return( cache_write_count );
+		return( cache_write_count.get());
 	}
 
 	public long
 	getFileReadCount()
 	{
-		return( file_read_count );
+		return( file_read_count.get());
 	}
 
 	public long
 	getFileWriteCount()
 	{
-		return( file_write_count );
+		return( file_write_count.get());
 	}
 
 	protected void
@@ -987,22 +943,14 @@ CacheFileManagerImpl
 		try{
 			writer.indent();
 
-			Iterator it;
-
 				// grab a copy to avoid potential deadlock as we never take the manager monitor
 				// and then the file's own monitor, always the other way around
 
-			try{
-				this_mon.enter();
-
-				it = new ArrayList( cache_entries.keySet()).iterator();
-
-			}finally{
+			List<CacheEntry>	entries = cache_entries.getEntries();
 
-				this_mon.exit();
-			}
+			Iterator it = entries.iterator();
 
-			writer.println( "Entries = " + cache_entries.size());
+			writer.println( "Entries = " + entries.size());
 
 			Set	files = new HashSet();
 
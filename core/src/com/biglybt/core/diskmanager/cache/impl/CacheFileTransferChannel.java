@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.diskmanager.cache.impl;
+
+import java.nio.channels.FileChannel;
+
+import com.biglybt.core.diskmanager.cache.CacheFile;
+import com.biglybt.core.diskmanager.file.FMFile;
+
+/**
+ * Holds the underlying file open for a transfer until released
+ */
+
+final class
+CacheFileTransferChannel
+	implements CacheFile.TransferChannel
+{
+	private final FMFile		file;
+	private final FileChannel	channel;
+
+	private boolean	released;
+
+	CacheFileTransferChannel(
+		FMFile			_file,
+		FileChannel		_channel )
+	{
+		file	= _file;
+		channel	= _channel;
+	}
+
+	@Override
+	public FileChannel
+	getChannel()
+	{
+		return( channel );
+	}
+
+	@Override
+	public void
+	release()
+	{
+		synchronized( this ){
+
+			if ( released ){
+
+				return;
+			}
+
+			released = true;
+		}
+
+		file.releaseTransferChannel();
+	}
+}
@@ -1794,6 +1794,35 @@ CacheFileWithCache
 		readCache( buffer, position, false, !read_cache );
 	}
 
+	@Override
+	public TransferChannel
+	prepareTransfer(
+		long				position,
+		int					length )
+
+		throws CacheFileManagerException
+	{
+		try{
+				// the file has to be up to date, generally a no-op as served pieces are complete
+
+			flushCache( position, length, false, -1, 0, -1 );
+
+			TransferChannel	result = new CacheFileTransferChannel( file, file.acquireTransferChannel( position, length ));
+
+			manager.fileBytesRead( length );
+
+			bytes_read += length;
+
+			return( result );
+
+		}catch( FMFileManagerException e ){
+
+			manager.rethrow(this,e);
+
+			return( null );
+		}
+	}
+
 	@Override
 	public void
 	write(
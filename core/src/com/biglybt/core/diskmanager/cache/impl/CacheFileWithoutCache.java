@@ -268,6 +268,31 @@ CacheFileWithoutCache
 		}
 	}
 
+	@Override
+	public TransferChannel
+	prepareTransfer(
+		long				position,
+		int					length )
+
+		throws CacheFileManagerException
+	{
+		try{
+			TransferChannel	result = new CacheFileTransferChannel( file, file.acquireTransferChannel( position, length ));
+
+			manager.fileBytesRead( length );
+
+			bytes_read += length;
+
+			return( result );
+
+		}catch( FMFileManagerException e ){
+
+			manager.rethrow(this,e);
+
+			return( null );
+		}
+	}
+
 	@Override
 	public void
 	write(
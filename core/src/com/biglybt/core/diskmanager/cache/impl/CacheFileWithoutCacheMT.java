@@ -529,6 +529,42 @@ CacheFileWithoutCacheMT
 		}
 	}
 
+	@Override
+	public TransferChannel
+	prepareTransfer(
+		long				position,
+		int					length )
+
+		throws CacheFileManagerException
+	{
+			// the transfer channel holds the file open, no need to keep the clone checked out as
+			// positional transfers don't interfere with other users
+
+		FMFile file = null;
+
+		try{
+			file	= getFile();
+
+			TransferChannel	result = new CacheFileTransferChannel( file, file.acquireTransferChannel( position, length ));
+
+			manager.fileBytesRead( length );
+
+			bytes_read += length;
+
+			return( result );
+
+		}catch( FMFileManagerException e ){
+
+			manager.rethrow(this,e);
+
+			return( null );
+
+		}finally{
+
+			releaseFile( file );
+		}
+	}
+
 	@Override
 	public void
 	write(
@@ -26,6 +26,7 @@ package com.biglybt.core.diskmanager.file;
  */
 
 import java.io.File;
+import java.nio.channels.FileChannel;
 
 import com.biglybt.core.util.DirectByteBuffer;
 import com.biglybt.core.util.FileUtil;
@@ -121,6 +122,22 @@ FMFile
 
 		throws FMFileManagerException;
 
+		/**
+		 * Opens the file for sending the range straight to a network channel, only supported for linear
+		 * storage. The file is kept open until released so the channel can be used without any further
+		 * locking or disk access
+		 */
+
+	public FileChannel
+	acquireTransferChannel(
+		long				position,
+		int					length )
+
+		throws FMFileManagerException;
+
+	public void
+	releaseTransferChannel();
+
 	public void
 	write(
 		DirectByteBuffer	buffer,
@@ -62,6 +62,19 @@ FMFileAccess
 
 		throws FMFileManagerException;
 
+		/**
+		 * Only supported by linear storage where file offsets are the actual positions on disk
+		 * @return the channel, validated as covering the range
+		 */
+
+	public FileChannel
+	getTransferChannel(
+		FileAccessor			fa,
+		long					position,
+		int						length )
+
+		throws FMFileManagerException;
+
 	public void
 	flush()
 
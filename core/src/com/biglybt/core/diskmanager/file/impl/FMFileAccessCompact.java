@@ -20,6 +20,7 @@
 package com.biglybt.core.diskmanager.file.impl;
 
 import java.io.File;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -417,6 +418,18 @@ FMFileAccessCompact
 		}
 	}
 
+	@Override
+	public FileChannel
+	getTransferChannel(
+		FileAccessor			fa,
+		long					position,
+		int						length )
+
+		throws FMFileManagerException
+	{
+		throw( new FMFileManagerException( FMFileManagerException.OP_READ, "transfer not supported for compact storage" ));
+	}
+
 	protected void
 	write(
 		FileAccessor		fa,
@@ -490,6 +490,18 @@ FMFileAccessController
 		file_access.read( fa, buffers, offset );
 	}
 
+	@Override
+	public FileChannel
+	getTransferChannel(
+		FileAccessor			fa,
+		long					position,
+		int						length )
+
+		throws FMFileManagerException
+	{
+		return( file_access.getTransferChannel( fa, position, length ));
+	}
+
 	@Override
 	public void
 	write(
@@ -26,6 +26,7 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileChannel.MapMode;
 import java.util.Locale;
 
+import com.biglybt.core.diskmanager.file.FMFile;
 import com.biglybt.core.diskmanager.file.FMFileManagerException;
 import com.biglybt.core.util.*;
 
@@ -276,14 +277,31 @@ FMFileAccessLinear
 
 			} else {
 
-				fc.position(offset);
 				ByteBuffer[]	bbs = new ByteBuffer[buffers.length];
 
-				ByteBuffer	last_bb	= null;
 				for (int i=0;i<bbs.length;i++){
 					ByteBuffer bb = bbs[i] = buffers[i].getBuffer(DirectByteBuffer.SS_FILE);
-					int	pos = original_positions[i] = bb.position();
-					if ( pos != bb.limit()){
+					original_positions[i] = bb.position();
+				}
+
+					// files opened for read aren't being written to so can be served from mappings,
+					// whatever can't be is picked up by the positioned read below
+
+				long	mapped = 0;
+
+				FMFileMappings	mappings = owner.getManager().getMappings();
+
+				if ( mappings.isEnabled() && owner.getAccessMode() == FMFile.FM_READ ){
+
+					mapped = mappings.read( owner, fc, buffers, offset );
+				}
+
+				fc.position(offset + mapped);
+
+				ByteBuffer	last_bb	= null;
+				for (int i=0;i<bbs.length;i++){
+					ByteBuffer bb = bbs[i];
+					if ( bb.position() != bb.limit()){
 						last_bb	= bbs[i];
 					}
 				}
@@ -403,6 +421,50 @@ FMFileAccessLinear
 		}
 	}
 
+	@Override
+	public FileChannel
+	getTransferChannel(
+		FileAccessor			fa,
+		long					position,
+		int						length )
+
+		throws FMFileManagerException
+	{
+		if ( fa == null ){
+
+			throw( new FMFileManagerException( FMFileManagerException.OP_READ, "transfer failed: accessor is null" ));
+		}
+
+		FileChannel fc = fa.getChannel();
+
+		if ( !fc.isOpen()){
+
+			Debug.out("FileChannel is closed: " + owner.getName());
+
+			throw( new FMFileManagerException( FMFileManagerException.OP_READ, "transfer failed: file is closed"));
+		}
+
+		try{
+				// transferTo silently writes nothing beyond the end of the file which would
+				// leave the connection stalled
+
+			if ( position + length > fc.size()){
+
+				throw( new FMFileManagerException( FMFileManagerException.OP_READ, "transfer failed: " + position + "+" + length + " beyond file end " + fc.size()));
+			}
+
+			return( fc );
+
+		}catch( FMFileManagerException e ){
+
+			throw( e );
+
+		}catch( Throwable e ){
+
+			throw( new FMFileManagerException( FMFileManagerException.OP_READ, "transfer failed", e ));
+		}
+	}
+
 	@Override
 	public void
 	write(
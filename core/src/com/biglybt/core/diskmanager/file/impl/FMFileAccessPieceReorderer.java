@@ -22,6 +22,7 @@ package com.biglybt.core.diskmanager.file.impl;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -516,6 +517,18 @@ FMFileAccessPieceReorderer
 		}
 	}
 
+	@Override
+	public FileChannel
+	getTransferChannel(
+		FileAccessor			fa,
+		long					position,
+		int						length )
+
+		throws FMFileManagerException
+	{
+		throw( new FMFileManagerException( FMFileManagerException.OP_READ, "transfer not supported for piece-reorder storage" ));
+	}
+
 	@Override
 	public void
 	write(
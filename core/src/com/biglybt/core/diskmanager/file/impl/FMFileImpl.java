@@ -27,6 +27,7 @@ package com.biglybt.core.diskmanager.file.impl;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 import com.biglybt.core.config.COConfigurationManager;
@@ -588,6 +589,10 @@ FMFileImpl
 
 		throws FMFileManagerException
 	{		
+			// a mapping over a truncated region faults on access
+
+		manager.getMappings().release( this );
+
 		try{
 			file_access.setLength( fa, length );
 
@@ -646,6 +651,8 @@ FMFileImpl
 			throw( cause );
 		}
 
+		manager.getMappings().release( this );
+
 		if ( fa != null ){
 
 			try{
@@ -747,6 +754,11 @@ FMFileImpl
 			flush_exception = e;
 		}
 
+			// mappings stop the file being moved or deleted on some platforms so drop them now
+			// rather than leave it to the garbage collector
+
+		manager.getMappings().release( this );
+
 		if ( fa == null ){
 
 				// may have previously been implicitly closed, tidy up if required
@@ -867,6 +879,16 @@ FMFileImpl
 		}
 	}
 
+	protected FileChannel
+	getTransferChannelSupport(
+		long					position,
+		int						length )
+
+		throws FMFileManagerException
+	{
+		return( file_access.getTransferChannel( fa, position, length ));
+	}
+
 	protected void
 	writeSupport(
 		DirectByteBuffer		buffer,
@@ -25,9 +25,12 @@ package com.biglybt.core.diskmanager.file.impl;
  *
  */
 
+import java.nio.channels.FileChannel;
+
 import com.biglybt.core.diskmanager.file.FMFile;
 import com.biglybt.core.diskmanager.file.FMFileManagerException;
 import com.biglybt.core.diskmanager.file.FMFileOwner;
+import com.biglybt.core.util.Debug;
 import com.biglybt.core.util.DirectByteBuffer;
 import com.biglybt.core.util.StringInterner;
 
@@ -35,6 +38,11 @@ public class
 FMFileLimited
 	extends FMFileImpl
 {
+		// outstanding transfer channels, the file mustn't be closed to free up its slot while
+		// any are in use
+
+	private volatile int	transfer_pins;
+
 	protected
 	FMFileLimited(
 		FMFileOwner					owner,
@@ -120,6 +128,12 @@ FMFileLimited
 		getManager().usedSlot(this);
 	}
 
+	protected boolean
+	isTransferPinned()
+	{
+		return( transfer_pins > 0 );
+	}
+
 	@Override
 	public void
 	setAccessMode(
@@ -277,6 +291,52 @@ FMFileLimited
 		}
 	}
 
+	@Override
+	public FileChannel
+	acquireTransferChannel(
+		long				position,
+		int					length )
+
+		throws FMFileManagerException
+	{
+		try{
+			this_mon.enter();
+
+			ensureOpen( "FMFileLimited:acquireTransferChannel" );
+
+			FileChannel	channel = getTransferChannelSupport( position, length );
+
+			transfer_pins++;
+
+			return( channel );
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	@Override
+	public void
+	releaseTransferChannel()
+	{
+		try{
+			this_mon.enter();
+
+			if ( transfer_pins > 0 ){
+
+				transfer_pins--;
+
+			}else{
+
+				Debug.out( "Transfer channel released too many times" );
+			}
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
 	@Override
 	public void
 	read(
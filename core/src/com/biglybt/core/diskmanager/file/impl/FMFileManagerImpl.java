@@ -77,6 +77,8 @@ FMFileManagerImpl
 	protected List<FMFile>				files;
 	protected final AEMonitor			files_mon		= new AEMonitor( "FMFileManager:File");
 
+	protected final FMFileMappings		mappings		= new FMFileMappings();
+
 	protected
 	FMFileManagerImpl()
 	{
@@ -160,6 +162,12 @@ FMFileManagerImpl
 		return( res );
 	}
 
+	protected FMFileMappings
+	getMappings()
+	{
+		return( mappings );
+	}
+
 	protected void
 	getSlot(
 		FMFileLimited	file )
@@ -177,11 +185,24 @@ FMFileManagerImpl
 
 			if ( map.size() >= limit_size ){
 
-				Iterator it = map.keySet().iterator();
+					// files with transfers outstanding have to stay open, if they all do then the
+					// limit is exceeded until they're released
+
+				Iterator<FMFileLimited> it = map.keySet().iterator();
+
+				while( it.hasNext()){
+
+					FMFileLimited	candidate = it.next();
+
+					if ( !candidate.isTransferPinned()){
+
+						oldest_file = candidate;
 
-				oldest_file = (FMFileLimited)it.next();
+						it.remove();
 
-				it.remove();
+						break;
+					}
+				}
 			}
 
 			map.put( file, file );
@@ -362,6 +383,8 @@ FMFileManagerImpl
 
 			writer.exdent();
 		}
+
+		mappings.generate( writer );
 	}
 	
 	protected void
@@ -0,0 +1,485 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.diskmanager.file.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.config.ParameterListener;
+import com.biglybt.core.util.*;
+
+/**
+ * Read-only memory mappings of files opened for reading, used by linear storage to serve
+ * reads by copying from a mapping rather than issuing a positioned read per request.
+ * <p>
+ * Files are mapped in fixed size windows which are held in a single LRU shared by all files
+ * and bounded by a total mapped size. A mapping is unmapped as soon as it is evicted, or its
+ * file is closed, unless a read is in progress on it in which case it is unmapped when that
+ * read completes. Closing promptly matters as mapped files can't be moved or deleted on some
+ * platforms.
+ * <p>
+ * If a mapping can't be created (typically because address space is exhausted) the idle
+ * mappings are dropped and the map retried once, after that mapping is suspended for a while
+ * and reads fall back to the positioned read path.
+ */
+
+final class
+FMFileMappings
+{
+	private static final String	CFG_ENABLE		= "diskmanager.perf.read.mmap.enable";
+	private static final String	CFG_WINDOW_MB	= "diskmanager.perf.read.mmap.window.mb";
+	private static final String	CFG_MAX_MB		= "diskmanager.perf.read.mmap.max.mb";
+
+	private static final int	MAX_WINDOW_MB		= 1024;
+	private static final int	MAX_MB_32BIT		= 128;
+
+	private static final int	FAILURE_BACKOFF		= 60*1000;
+
+	private final LinkedHashMap<WindowKey,Mapping>	mappings = new LinkedHashMap<>( 64, 0.75f, true );
+
+	private final AEMonitor		this_mon	= new AEMonitor( "FMFileMappings" );
+
+	private volatile boolean	enabled;
+
+	private long	window_size;
+	private long	max_mapped;
+
+	private long	mapped_bytes;
+	private long	disabled_until;
+
+	private long	hits;
+	private long	misses;
+	private long	failures;
+	private long	bytes_read;
+
+	protected
+	FMFileMappings()
+	{
+		COConfigurationManager.addAndFireParameterListeners(
+			new String[]{
+				CFG_ENABLE,
+				CFG_WINDOW_MB,
+				CFG_MAX_MB,
+			},
+			new ParameterListener()
+			{
+				@Override
+				public void
+				parameterChanged(
+					String	name )
+				{
+					int	window_mb	= Math.min( MAX_WINDOW_MB, Math.max( 1, COConfigurationManager.getIntParameter( CFG_WINDOW_MB )));
+					int	max_mb		= Math.max( window_mb, COConfigurationManager.getIntParameter( CFG_MAX_MB ));
+
+					if ( !Constants.is64Bit ){
+
+						max_mb = Math.min( max_mb, Math.max( window_mb, MAX_MB_32BIT ));
+					}
+
+					try{
+						this_mon.enter();
+
+						window_size	= window_mb*1024L*1024;
+						max_mapped	= max_mb*1024L*1024;
+
+							// existing windows no longer line up
+
+						releaseAll();
+
+						enabled = COConfigurationManager.getBooleanParameter( CFG_ENABLE );
+
+					}finally{
+
+						this_mon.exit();
+					}
+				}
+			});
+	}
+
+	protected boolean
+	isEnabled()
+	{
+		return( enabled );
+	}
+
+		/**
+		 * Copies as much of the requested range as can be served from mappings into the buffers,
+		 * stopping at the end of the file
+		 * @return number of bytes copied, the buffers' positions are advanced by this amount
+		 */
+
+	protected long
+	read(
+		FMFileImpl			file,
+		FileChannel			fc,
+		DirectByteBuffer[]	buffers,
+		long				offset )
+
+		throws IOException
+	{
+		long	file_size	= fc.size();
+		long	pos			= offset;
+
+		for ( DirectByteBuffer buffer: buffers ){
+
+			ByteBuffer	target = buffer.getBuffer( DirectByteBuffer.SS_FILE );
+
+			while( target.hasRemaining() && pos < file_size ){
+
+				Mapping	mapping = getMapping( file, fc, pos, file_size );
+
+				if ( mapping == null ){
+
+					return( pos - offset );
+				}
+
+				try{
+					ByteBuffer	source = mapping.buffer.duplicate();
+
+					int	rel = (int)( pos - mapping.start );
+					int	len = (int)Math.min( target.remaining(), mapping.length - rel );
+
+					source.limit( rel + len );
+					source.position( rel );
+
+					target.put( source );
+
+					pos += len;
+
+				}finally{
+
+					releaseMapping( mapping );
+				}
+			}
+		}
+
+		long	read = pos - offset;
+
+		try{
+			this_mon.enter();
+
+			bytes_read += read;
+
+		}finally{
+
+			this_mon.exit();
+		}
+
+		return( read );
+	}
+
+		/**
+		 * Drops all of the file's mappings, must be called before the file is closed, truncated,
+		 * moved or deleted
+		 */
+
+	protected void
+	release(
+		FMFileImpl		file )
+	{
+		try{
+			this_mon.enter();
+
+			if ( mappings.isEmpty()){
+
+				return;
+			}
+
+			Iterator<Mapping> it = mappings.values().iterator();
+
+			while( it.hasNext()){
+
+				Mapping mapping = it.next();
+
+				if ( mapping.key.file == file ){
+
+					it.remove();
+
+					retire( mapping );
+				}
+			}
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	private Mapping
+	getMapping(
+		FMFileImpl		file,
+		FileChannel		fc,
+		long			pos,
+		long			file_size )
+	{
+		try{
+			this_mon.enter();
+
+			if ( !enabled ){
+
+				return( null );
+			}
+
+			if ( disabled_until > 0 ){
+
+				if ( SystemTime.getMonotonousTime() < disabled_until ){
+
+					return( null );
+				}
+
+				disabled_until = 0;
+			}
+
+			WindowKey	key = new WindowKey( file, pos / window_size );
+
+			Mapping	mapping = mappings.get( key );
+
+			if ( mapping != null ){
+
+				if ( pos < mapping.start + mapping.length ){
+
+					hits++;
+
+					mapping.users++;
+
+					return( mapping );
+				}
+
+					// file has grown since the last window was mapped
+
+				mappings.remove( key );
+
+				retire( mapping );
+			}
+
+			long	start	= key.window * window_size;
+			long	length	= Math.min( window_size, file_size - start );
+
+			Iterator<Mapping>	it = mappings.values().iterator();
+
+			while( mapped_bytes + length > max_mapped && it.hasNext()){
+
+				Mapping	oldest = it.next();
+
+				it.remove();
+
+				retire( oldest );
+			}
+
+			MappedByteBuffer	buffer;
+
+			try{
+				buffer = fc.map( MapMode.READ_ONLY, start, length );
+
+			}catch( Throwable e ){
+
+				if ( !( e instanceof OutOfMemoryError || e.getCause() instanceof OutOfMemoryError )){
+
+						// e.g. file closed under us, just fall back for this read
+
+					return( null );
+				}
+
+					// out of address space, free up what we can and retry
+
+				releaseAll();
+
+				try{
+					buffer = fc.map( MapMode.READ_ONLY, start, length );
+
+				}catch( Throwable f ){
+
+					failures++;
+
+					disabled_until = SystemTime.getMonotonousTime() + FAILURE_BACKOFF;
+
+					Debug.outNoStack( "Failed to map " + file.getName() + ", falling back to positioned reads: " + Debug.getNestedExceptionMessage( f ));
+
+					return( null );
+				}
+			}
+
+			misses++;
+
+			mapping = new Mapping( key, start, (int)length, buffer );
+
+			mappings.put( key, mapping );
+
+			mapped_bytes += length;
+
+			mapping.users++;
+
+			return( mapping );
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	private void
+	releaseMapping(
+		Mapping		mapping )
+	{
+		try{
+			this_mon.enter();
+
+			mapping.users--;
+
+			if ( mapping.retired && mapping.users == 0 ){
+
+				unmap( mapping );
+			}
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	private void
+	releaseAll()
+	{
+		List<Mapping>	all = new ArrayList<>( mappings.values());
+
+		mappings.clear();
+
+		for ( Mapping mapping: all ){
+
+			retire( mapping );
+		}
+	}
+
+	private void
+	retire(
+		Mapping		mapping )
+	{
+		mapping.retired = true;
+
+		if ( mapping.users == 0 ){
+
+			unmap( mapping );
+		}
+	}
+
+	private void
+	unmap(
+		Mapping		mapping )
+	{
+		if ( mapping.buffer == null ){
+
+			return;
+		}
+
+		MappedByteBuffer	buffer = mapping.buffer;
+
+		mapping.buffer = null;
+
+		mapped_bytes -= mapping.length;
+
+		FileUtil.unmap( buffer );
+	}
+
+	protected void
+	generate(
+		IndentWriter	writer )
+	{
+		try{
+			this_mon.enter();
+
+			writer.println(
+				"Mappings: enabled=" + enabled + ", windows=" + mappings.size() +
+				", mapped=" + DisplayFormatters.formatByteCountToKiBEtc( mapped_bytes ) +
+				", hits=" + hits + ", misses=" + misses + ", failures=" + failures +
+				", read=" + DisplayFormatters.formatByteCountToKiBEtc( bytes_read ));
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	private static final class
+	WindowKey
+	{
+		final FMFileImpl	file;
+		final long			window;
+
+		WindowKey(
+			FMFileImpl	_file,
+			long		_window )
+		{
+			file	= _file;
+			window	= _window;
+		}
+
+		@Override
+		public int
+		hashCode()
+		{
+			return( System.identityHashCode( file ) * 31 + (int)( window ^ ( window >>> 32 )));
+		}
+
+		@Override
+		public boolean
+		equals(
+			Object	other )
+		{
+			if ( other instanceof WindowKey ){
+
+				WindowKey	o = (WindowKey)other;
+
+				return( o.file == file && o.window == window );
+			}
+
+			return( false );
+		}
+	}
+
+	private static final class
+	Mapping
+	{
+		final WindowKey		key;
+		final long			start;
+		final int			length;
+
+		MappedByteBuffer	buffer;
+
+		int			users;
+		boolean		retired;
+
+		Mapping(
+			WindowKey			_key,
+			long				_start,
+			int					_length,
+			MappedByteBuffer	_buffer )
+		{
+			key		= _key;
+			start	= _start;
+			length	= _length;
+			buffer	= _buffer;
+		}
+	}
+}
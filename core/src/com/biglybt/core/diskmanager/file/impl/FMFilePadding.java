@@ -19,6 +19,7 @@
 package com.biglybt.core.diskmanager.file.impl;
 
 import java.io.File;
+import java.nio.channels.FileChannel;
 
 import com.biglybt.core.diskmanager.file.FMFile;
 import com.biglybt.core.diskmanager.file.FMFileManagerException;
@@ -192,6 +193,21 @@ FMFilePadding
 		}
 	}
 
+	public FileChannel
+	acquireTransferChannel(
+		long				position,
+		int					length )
+
+		throws FMFileManagerException
+	{
+		throw( new FMFileManagerException( FMFileManagerException.OP_READ, "transfer not supported for padding file" ));
+	}
+
+	public void
+	releaseTransferChannel()
+	{
+	}
+
 	public void
 	write(
 		DirectByteBuffer	buffer,
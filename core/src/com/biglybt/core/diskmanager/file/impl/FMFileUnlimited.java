@@ -26,6 +26,7 @@ package com.biglybt.core.diskmanager.file.impl;
  */
 
 import java.io.File;
+import java.nio.channels.FileChannel;
 
 import com.biglybt.core.diskmanager.file.FMFile;
 import com.biglybt.core.diskmanager.file.FMFileManagerException;
@@ -253,6 +254,34 @@ FMFileUnlimited
 		}
 	}
 
+	@Override
+	public FileChannel
+	acquireTransferChannel(
+		long				position,
+		int					length )
+
+		throws FMFileManagerException
+	{
+		try{
+			this_mon.enter();
+
+			ensureOpen( "FMFileUnlimited:acquireTransferChannel" );
+
+			return( getTransferChannelSupport( position, length ));
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	@Override
+	public void
+	releaseTransferChannel()
+	{
+			// only closed explicitly so nothing to release
+	}
+
 
 	@Override
 	public void
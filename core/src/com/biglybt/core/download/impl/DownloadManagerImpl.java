@@ -816,7 +816,9 @@ DownloadManagerImpl
 						
 						@Override
 						public void torrentChanged(TOTorrent torrent, int change_type, Object data){
-							buildURLGroupMap( torrent );
+							if ( change_type == CT_ANNOUNCE_URLS ){
+								buildURLGroupMap( torrent );
+							}
 						}
 					});
 				
@@ -22,6 +22,7 @@ package com.biglybt.core.download.impl;
 import java.io.*;
 import java.lang.ref.WeakReference;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -86,6 +87,7 @@ DownloadManagerStateImpl
 	}
 	
 	private static boolean disable_interim_saves;
+	private static boolean journal_enabled;
 	// private static LoggerChannel 	save_log;
 	
 	
@@ -106,8 +108,16 @@ DownloadManagerStateImpl
 				}
 				*/
 			});
+
+		COConfigurationManager.addAndFireParameterListener(
+			"download.state.journal.enable",
+			(n)->{
+				journal_enabled = COConfigurationManager.getBooleanParameter( n );
+			});
 	}
 
+	private static final AsyncDispatcher	journal_dispatcher = new AsyncDispatcher( "DownloadManagerState:journal" );
+
 	private static final Random	random = RandomUtils.SECURE_RANDOM;
 
 	private static final Map	default_parameters;
@@ -286,6 +296,21 @@ DownloadManagerStateImpl
 
 	private final TorrentUtils.ExtendedTorrent	torrent;
 	private final File							state_dir;
+
+		// write-ahead journal of changes, null if disabled
+
+	private final DownloadManagerStateJournal	journal;
+	private final AEMonitor						journal_mon	= new AEMonitor( "DownloadManagerState:journal" );
+
+		// attributes changed since last persisted (guarded by this_mon), torrent properties changed
+		// and whether the torrent has changed in a way that the journal can't represent (both guarded
+		// by dirty_properties as torrent listeners can fire with the torrent's monitor held)
+
+	private final Set<String>			dirty_attributes	= new HashSet<>();
+	private final Set<String>			dirty_properties	= new HashSet<>();
+	private boolean						full_write_required;
+	private boolean						compaction_pending;
+	private volatile boolean			deleted;
 	
 	private boolean						write_required_soon;
 	private long						write_required_sometime = -1;
@@ -398,7 +423,7 @@ DownloadManagerStateImpl
 		if ( FileUtil.exists( saved_file )){
 
 			try{
-				saved_state = TorrentUtils.readDelegateFromFile( saved_file, false );
+				saved_state = readStateFromFile( saved_file, false );
 
 			}catch( Throwable e ){
 
@@ -414,7 +439,7 @@ DownloadManagerStateImpl
 
 			copyTorrentToActive( original_torrent, saved_file, was_corrupt );
 
-			saved_state = TorrentUtils.readDelegateFromFile( saved_file, false );
+			saved_state = readStateFromFile( saved_file, false );
 		}
 
 		DownloadManagerStateImpl state = getDownloadState( null, original_torrent, saved_state );
@@ -478,7 +503,7 @@ DownloadManagerStateImpl
 							FileUtil.log("    saved state 1 exists" );
 						}
 
-						saved_state = TorrentUtils.readDelegateFromFile( saved_file, discard_pieces );
+						saved_state = readStateFromFile( saved_file, discard_pieces );
 						
 						if ( debug_on ){
 
@@ -519,7 +544,7 @@ DownloadManagerStateImpl
 				}
 				
 				try{
-					saved_state = TorrentUtils.readDelegateFromFile( saved_file, discard_pieces );
+					saved_state = readStateFromFile( saved_file, discard_pieces );
 
 					if ( debug_on ){
 
@@ -548,7 +573,7 @@ DownloadManagerStateImpl
 
 				copyTorrentToActive( original_torrent, saved_file, was_corrupt );
 
-				saved_state = TorrentUtils.readDelegateFromFile( saved_file, discard_pieces );
+				saved_state = readStateFromFile( saved_file, discard_pieces );
 				
 				if ( debug_on ){
 
@@ -620,6 +645,20 @@ DownloadManagerStateImpl
 		}
 	}
 	
+	private static TorrentUtils.ExtendedTorrent
+	readStateFromFile(
+		File		state_file,
+		boolean		discard_pieces )
+
+		throws TOTorrentException
+	{
+		TorrentUtils.ExtendedTorrent torrent = TorrentUtils.readDelegateFromFile( state_file, discard_pieces );
+
+		DownloadManagerStateJournal.replay( state_file, torrent, ATTRIBUTE_KEY );
+
+		return( torrent );
+	}
+
 	protected static File
 	getStateFile(
 		byte[]		torrent_hash )
@@ -647,26 +686,79 @@ DownloadManagerStateImpl
 				BufferedInputStream is = new BufferedInputStream( new GZIPInputStream( fis ))){
 
 			try{
+				if ( BLazyDecoder.ENABLED ){
+
+						// entries are left as views over the decompressed data and only decoded as
+						// they are used - retained parts are materialised on fixup
+
+					BLazyDecoder.decode(
+						ByteBuffer.wrap( FileUtil.readInputStreamAsByteArray( is )),
+						new BDecoder.StreamDecodeListener()
+						{
+							@Override
+							public int
+							containerStarted(
+								String		context,
+								boolean		is_map,
+								int			nesting )
+							{
+								if ( nesting == 0 ){
 
-				Map	map = BDecoder.decode( is );
+									return( ACT_STREAM );
 
-				List	cache = (List)map.get( "state" );
+								}else if ( nesting == 1 ){
 
-				if ( cache != null ){
+									return( !is_map && context.equals( "state" )?ACT_STREAM:ACT_SKIP );
 
-					for (int i=0;i<cache.size();i++){
+								}else{
 
-						Map	entry = (Map)cache.get(i);
+									return( is_map?ACT_COLLECT:ACT_SKIP );
+								}
+							}
+
+							@Override
+							public void
+							containerEnded(
+								String		context,
+								boolean		is_map,
+								int			nesting )
+							{
+							}
 
-						byte[]	hash = (byte[])entry.get( "hash" );
+							@Override
+							public void
+							valueDecoded(
+								String		context,
+								Object		value,
+								int			nesting )
+							{
+							}
 
-						if ( hash != null ){
+							@Override
+							public void
+							mapDecoded(
+								String				context,
+								Map<String,Object>	entry,
+								int					nesting )
+							{
+								addGlobalStateCacheEntry( entry );
+							}
+						});
 
-							global_state_cache.put( new HashWrapper( hash ), entry );
+				}else{
+
+					Map	map = BDecoder.decode( is );
+
+					List	cache = (List)map.get( "state" );
+
+					if ( cache != null ){
+
+						for (int i=0;i<cache.size();i++){
+
+							addGlobalStateCacheEntry((Map)cache.get(i));
 						}
 					}
 				}
-
 			}catch( IOException e){
 
 				Debug.printStackTrace( e );
@@ -677,6 +769,18 @@ DownloadManagerStateImpl
 		}
 	}
 
+	private static void
+	addGlobalStateCacheEntry(
+		Map		entry )
+	{
+		byte[]	hash = (byte[])entry.get( "hash" );
+
+		if ( hash != null ){
+
+			global_state_cache.put( new HashWrapper( hash ), entry );
+		}
+	}
+
 	public static void
 	saveGlobalStateCache()
 	{
@@ -780,6 +884,8 @@ DownloadManagerStateImpl
 
 			target_state_file.delete();
 
+			DownloadManagerStateJournal.delete( target_state_file );
+
 			//throw( new DownloadManagerException( "Target state file already exists: " + target_state_file ));
 		}
 
@@ -860,6 +966,8 @@ DownloadManagerStateImpl
 			}
 		}
 
+		DownloadManagerStateJournal.delete( target_state_file );
+
 		File	target_state_dir = FileUtil.newFile( source_dir, hash_str );
 
 		if ( FileUtil.exists( target_state_dir )){
@@ -879,11 +987,16 @@ DownloadManagerStateImpl
 		download_manager	= _download_manager;
 		torrent				= _torrent;
 
-		File	_state_dir;
+		File							_state_dir;
+		DownloadManagerStateJournal		_journal = null;
 		
 		try{
 			_state_dir = FileUtil.newFile( ACTIVE_DIR, ByteFormatter.encodeString( torrent.getHash()));
 
+			if ( journal_enabled ){
+
+				_journal = new DownloadManagerStateJournal( getStateFile( torrent.getHash()));
+			}
 		}catch( Throwable e ){
 
 			Debug.printStackTrace(e);
@@ -891,7 +1004,8 @@ DownloadManagerStateImpl
 			_state_dir = null;
 		}
 		
-		state_dir = _state_dir;
+		state_dir	= _state_dir;
+		journal		= _journal;
 		
 		attributes = torrent.getAdditionalMapProperty( ATTRIBUTE_KEY );
 
@@ -900,6 +1014,46 @@ DownloadManagerStateImpl
 			attributes	= new HashMap();
         }
 
+			// if the state has been read from the file (+ journal) then what we have is what is persisted and
+			// subsequent saves can go to the journal. Cached state might be behind the file so in this
+			// case the first save is a full one
+
+		if ( journal != null ){
+
+			if ( !( torrent instanceof CachedStateWrapper )){
+
+				journal.setBaseline();
+			}
+
+			torrent.addListener(
+				( t, type, data )->{
+
+					if ( type == TOTorrentListener.CT_PROPERTY ){
+
+						String	name = (String)data;
+
+							// attributes are tracked by key and the fluff properties by the setters
+							// here (fluff discard/restore fires too and must be ignored)
+
+						if ( 	!name.equals( ATTRIBUTE_KEY ) &&
+								!name.equals( RESUME_KEY ) &&
+								!name.equals( RESUME_HISTORY_KEY ) &&
+								!name.equals( TRACKER_CACHE_KEY )){
+
+							propertyChanged( name );
+						}
+					}else{
+
+							// announce URLs, comment etc. aren't journalled
+
+						synchronized( dirty_properties ){
+
+							full_write_required = true;
+						}
+					}
+				});
+		}
+
         String cat_string = getStringAttribute( AT_CATEGORY );
 
         if ( cat_string != null ){
@@ -1062,6 +1216,8 @@ DownloadManagerStateImpl
 				setDirty( false );
 
 				torrent.setAdditionalMapProperty( TRACKER_CACHE_KEY, value );
+
+				propertyChanged( TRACKER_CACHE_KEY );
 			}
 
 		}finally{
@@ -1118,6 +1274,8 @@ DownloadManagerStateImpl
 				
 					torrent.removeAdditionalProperty( RESUME_KEY );
 
+					propertyChanged( RESUME_KEY );
+
 					changed = true;
 				}
 			}else{
@@ -1125,6 +1283,8 @@ DownloadManagerStateImpl
 				changed = !BEncoder.mapsAreIdentical( existing_data, new_data );
 
 				torrent.setAdditionalMapProperty( RESUME_KEY, new_data );
+
+				propertyChanged( RESUME_KEY );
 				
 				boolean complete = DiskManagerFactory.isTorrentResumeDataComplete( this );
 
@@ -1191,6 +1351,8 @@ DownloadManagerStateImpl
 						}
 						
 						torrent.setAdditionalMapProperty( RESUME_HISTORY_KEY, history  );
+
+						propertyChanged( RESUME_HISTORY_KEY );
 					}
 				}
 				
@@ -1337,11 +1499,15 @@ DownloadManagerStateImpl
 	exportState(
 		File	target_dir )
 	{
+		saveSupport( false, true );
+
+			// exported state must be self contained
+
+		compactState();
+
 		try{
 			this_mon.enter();
 
-			saveSupport( false, true );
-
 			byte[]	hash = torrent.getHash();
 
 			String	hash_str = ByteFormatter.encodeString( hash );
@@ -1487,9 +1653,7 @@ DownloadManagerStateImpl
 				}
 				*/
 				
-				torrent.setAdditionalMapProperty( ATTRIBUTE_KEY, attributes );
-
-				TorrentUtils.writeToFile(torrent, true);
+				writeState();
 
 			}catch ( Throwable e ){
 				
@@ -1501,6 +1665,170 @@ DownloadManagerStateImpl
 		}
 	}
 
+	private void
+	propertyChanged(
+		String		name )
+	{
+		synchronized( dirty_properties ){
+
+			dirty_properties.add( name );
+		}
+	}
+
+	private void
+	writeState()
+
+		throws TOTorrentException
+	{
+		try{
+			journal_mon.enter();
+
+			torrent.setAdditionalMapProperty( ATTRIBUTE_KEY, attributes );
+
+			if ( journal != null && journal.canAppend()){
+
+				byte[]	delta = null;
+
+				boolean	append = false;
+
+				try{
+					this_mon.enter();
+
+					Set<String>	properties_changed;
+
+					synchronized( dirty_properties ){
+
+						properties_changed = full_write_required?null:new HashSet<>( dirty_properties );
+					}
+
+					if ( properties_changed != null ){
+
+						Map<String,Object>	properties = new HashMap<>();
+
+						for ( String name: properties_changed ){
+
+							properties.put( name, torrent.getAdditionalProperty( name ));
+						}
+
+						delta = journal.getChanges( attributes, dirty_attributes, properties );
+
+						dirty_attributes.clear();
+
+						synchronized( dirty_properties ){
+
+							dirty_properties.removeAll( properties_changed );
+						}
+
+						append = true;
+					}
+				}catch( Throwable e ){
+
+					Debug.out( e );
+
+				}finally{
+
+					this_mon.exit();
+				}
+
+					// on failure the full write below picks up the changes
+
+				if ( append && journal.append( delta )){
+
+					if ( journal.isCompactionRequired() && !compaction_pending ){
+
+						compaction_pending = true;
+
+						journal_dispatcher.dispatch( this::compactState );
+					}
+
+					return;
+				}
+			}
+
+			writeFullState();
+
+		}finally{
+
+			journal_mon.exit();
+		}
+	}
+
+		/**
+		 * Rewrites the state file in full, discarding the journal. journal_mon must be held
+		 */
+
+	private void
+	writeFullState()
+
+		throws TOTorrentException
+	{
+			// anything changed while the write is in progress gets marked dirty again and
+			// journalled next time, which is harmless if it made it into the file
+
+		try{
+			this_mon.enter();
+
+			dirty_attributes.clear();
+
+			synchronized( dirty_properties ){
+
+				full_write_required	= false;
+
+				dirty_properties.clear();
+			}
+		}finally{
+
+			this_mon.exit();
+		}
+
+		boolean	ok = false;
+
+		try{
+			TorrentUtils.writeToFile(torrent, true);
+
+			ok = true;
+
+		}finally{
+
+			if ( journal != null ){
+
+				if ( ok ){
+
+					journal.written();
+
+				}else{
+
+					synchronized( dirty_properties ){
+
+						full_write_required = true;
+					}
+				}
+			}
+		}
+	}
+
+	private void
+	compactState()
+	{
+		try{
+			journal_mon.enter();
+
+			compaction_pending = false;
+
+			if ( journal != null && journal.hasEntries() && !deleted ){
+
+				writeFullState();
+			}
+		}catch( Throwable e ){
+
+			Logger.log(new LogEvent(torrent, LOGID, "Compacting state", e));
+
+		}finally{
+
+			journal_mon.exit();
+		}
+	}
+
 	@Override
 	public void
 	delete()
@@ -1512,6 +1840,8 @@ DownloadManagerStateImpl
 
 			boolean removed = state_map.remove( wrapper ) != null;
 
+			deleted = true;
+
 			if ( debug_on ){
 
 				FileUtil.log("deleteDownloadState: hash = " + (wrapper==null?"null":ByteFormatter.encodeString(wrapper.getBytes())) + ", removed=" + removed );
@@ -1534,6 +1864,8 @@ DownloadManagerStateImpl
 			}
 
 			FileUtil.newFile( ACTIVE_DIR, state_file + ".bak" ).delete();
+
+			DownloadManagerStateJournal.delete( target_state_file );
 			
 			File	dir = FileUtil.newFile( ACTIVE_DIR, hash_str );
 
@@ -1562,6 +1894,13 @@ DownloadManagerStateImpl
 
 			if ( write ){
 
+					// announce details aren't journalled
+
+				synchronized( dirty_properties ){
+
+					full_write_required = true;
+				}
+
 				saveSupport(false,false);
 
 				if ( download_manager != null ){
@@ -2741,6 +3080,8 @@ DownloadManagerStateImpl
 
 					attributes.remove( attribute_name );
 
+					dirty_attributes.add( attribute_name );
+
 					changed = true;
 					
 					if ( set_dirty ){
@@ -2755,6 +3096,7 @@ DownloadManagerStateImpl
 
 				if (existing_bytes == null || !Arrays.equals(existing_bytes, new_bytes)) {
 					attributes.put(attribute_name, new_bytes);
+					dirty_attributes.add( attribute_name );
 					changed = true;
 					if ( set_dirty ){
 						setDirty( attribute_name == DownloadManagerState.AT_AGGREGATE_SCRAPE_CACHE );
@@ -2815,6 +3157,8 @@ DownloadManagerStateImpl
 
 					attributes.put( attribute_name, new Long( res ));
 
+					dirty_attributes.add( attribute_name );
+
 					setDirty( false );
 
 					return( res );
@@ -2849,6 +3193,8 @@ DownloadManagerStateImpl
 
 				attributes.put( attribute_name, new Long( attribute_value) );
 
+				dirty_attributes.add( attribute_name );
+
 				changed = true;
 					
 				boolean	set_dirty = true;
@@ -3031,6 +3377,8 @@ DownloadManagerStateImpl
 
 					attributes.remove( attribute_name );
 
+					dirty_attributes.add( attribute_name );
+
 					changed = true;
 					
 					setDirty( false );
@@ -3043,6 +3391,8 @@ DownloadManagerStateImpl
 
 					attributes.put( attribute_name, attribute_value );
 
+					dirty_attributes.add( attribute_name );
+
 					changed = true;
 					
 					setDirty( false );
@@ -3061,6 +3411,8 @@ DownloadManagerStateImpl
 						setDirty( false );
 
 						attributes.put( attribute_name, attribute_value );
+
+						dirty_attributes.add( attribute_name );
 					}
 				}
 			}
@@ -3117,6 +3469,8 @@ DownloadManagerStateImpl
 			}
 			
 			attributes.put( attribute_name, attribute_value );
+
+			dirty_attributes.add( attribute_name );
 			
 		}finally{
 
@@ -3175,6 +3529,8 @@ DownloadManagerStateImpl
 
 					attributes.remove( attribute_name );
 
+					dirty_attributes.add( attribute_name );
+
 					changed = true;
 					
 					setDirty( false );
@@ -3187,6 +3543,8 @@ DownloadManagerStateImpl
 
 					attributes.put( attribute_name, attribute_value );
 
+					dirty_attributes.add( attribute_name );
+
 					changed = true;
 					
 					setDirty( false );
@@ -3205,6 +3563,8 @@ DownloadManagerStateImpl
 						setDirty( false );
 
 						attributes.put( attribute_name, attribute_value );
+
+						dirty_attributes.add( attribute_name );
 					}
 				}
 			}
@@ -3251,6 +3611,8 @@ DownloadManagerStateImpl
 			if ( attributes != null ){
 
 				if ( attributes.remove( attribute_name ) != null ){
+
+					dirty_attributes.add( attribute_name );
 					
 					changed = true;
 				}
@@ -4473,21 +4835,21 @@ DownloadManagerStateImpl
 
 							if ( cache_attributes != null ){
 
-								delegate.setAdditionalMapProperty( ATTRIBUTE_KEY, cache_attributes );
+								delegate.setAdditionalMapProperty( ATTRIBUTE_KEY, (Map)BLazyDecoder.materialise( cache_attributes ));
 
 								cache_attributes = null;
 							}
 
 							if ( cache_azp != null ){
 
-								delegate.setAdditionalMapProperty( AZUREUS_PROPERTIES_KEY, cache_azp );
+								delegate.setAdditionalMapProperty( AZUREUS_PROPERTIES_KEY, (Map)BLazyDecoder.materialise( cache_azp ));
 
 								cache_azp = null;
 							}
 							
 							if ( cache_azpp != null ){
 
-								delegate.setAdditionalMapProperty( AZUREUS_PRIVATE_PROPERTIES_KEY, cache_azpp );
+								delegate.setAdditionalMapProperty( AZUREUS_PRIVATE_PROPERTIES_KEY, (Map)BLazyDecoder.materialise( cache_azpp ));
 
 								cache_azpp = null;
 							}
@@ -4560,7 +4922,7 @@ DownloadManagerStateImpl
 
 				try{
 
-					return( TorrentUtils.readDelegateFromFile( saved_file, discard_pieces ));
+					return( readStateFromFile( saved_file, discard_pieces ));
 
 				}catch( Throwable e ){
 
@@ -4581,7 +4943,7 @@ DownloadManagerStateImpl
 			if ( FileUtil.exists( saved_file )){
 
 				try{
-					return( TorrentUtils.readDelegateFromFile( saved_file, discard_pieces ));
+					return( readStateFromFile( saved_file, discard_pieces ));
 
 				}catch( Throwable e ){
 
@@ -4606,7 +4968,7 @@ DownloadManagerStateImpl
 				}
 			}
 			
-			return( TorrentUtils.readDelegateFromFile( saved_file, discard_pieces ));
+			return( readStateFromFile( saved_file, discard_pieces ));
 		}
 
 
@@ -0,0 +1,524 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.download.impl;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import com.biglybt.core.torrent.TOTorrent;
+import com.biglybt.core.util.*;
+
+/**
+ * Append-only journal of download state changes that sits alongside the active/&lt;hash&gt;.dat
+ * state file.
+ * <p>
+ * Rather than re-serialising the whole torrent (pieces, resume data, attributes...) each time the
+ * state is saved we append a record containing just the attributes and torrent properties that
+ * have changed since the state file was last written. The owning state tracks which keys are
+ * dirty, changes the journal can't represent (announce URLs, comment...) force a full write. The journal is replayed over the state file
+ * when it is next read and is discarded whenever the state file is rewritten in full, which happens
+ * when the journal grows beyond the size of the state file itself.
+ * <p>
+ * The journal starts with a record identifying the state file it applies to (length and
+ * modification time) so that if anything else rewrites the state file the journal is ignored.
+ * Records are length and CRC prefixed - a torn record at the end of the file (crash mid-append) is
+ * dropped along with anything after it.
+ * <p>
+ * Not thread safe, the owning state serialises access.
+ */
+
+class
+DownloadManagerStateJournal
+{
+	private static final String	JOURNAL_SUFFIX		= ".jnl";
+
+	private static final int	COMPACT_MIN_BYTES	= 256*1024;
+	private static final int	MAX_RECORD_BYTES	= 64*1024*1024;
+
+	private static final String	RK_BASE					= "b";
+	private static final String	RK_ATTRIBUTES			= "a";
+	private static final String	RK_ATTRIBUTES_REMOVED	= "ar";
+	private static final String	RK_PROPERTIES			= "p";
+	private static final String	RK_PROPERTIES_REMOVED	= "pr";
+
+	protected static File
+	getJournalFile(
+		File		state_file )
+	{
+		String	name = state_file.getName();
+
+		int	pos = name.lastIndexOf( '.' );
+
+		if ( pos != -1 ){
+
+			name = name.substring( 0, pos );
+		}
+
+		return( FileUtil.newFile( state_file.getParentFile(), name + JOURNAL_SUFFIX ));
+	}
+
+	protected static void
+	delete(
+		File		state_file )
+	{
+		File	journal_file = getJournalFile( state_file );
+
+		if ( FileUtil.exists( journal_file )){
+
+			journal_file.delete();
+		}
+	}
+
+		/**
+		 * Applies any valid journal for the state file to the torrent that has just been read from it
+		 */
+
+	protected static void
+	replay(
+		File				state_file,
+		TOTorrent			torrent,
+		String				attribute_key )
+	{
+		File	journal_file = getJournalFile( state_file );
+
+		if ( !FileUtil.exists( journal_file )){
+
+			return;
+		}
+
+		List<Map>	records = new ArrayList<>();
+
+		try{
+			readRecords( journal_file, records );
+
+		}catch( Throwable e ){
+
+			Debug.out( "Failed to read download state journal " + journal_file, e );
+		}
+
+		if ( records.isEmpty()){
+
+			return;
+		}
+
+		List<Long>	base = (List<Long>)records.get(0).get( RK_BASE );
+
+		if ( 	base == null ||
+				base.size() != 2 ||
+				base.get(0) != state_file.length() ||
+				base.get(1) != state_file.lastModified()){
+
+				// state file has been rewritten since the journal was started so it is already
+				// at least as up to date
+
+			return;
+		}
+
+		Map	attributes = torrent.getAdditionalMapProperty( attribute_key );
+
+		if ( attributes == null ){
+
+			attributes = new HashMap();
+		}
+
+		for ( int i=1;i<records.size();i++){
+
+			Map	record = records.get(i);
+
+			Map	attrs = (Map)record.get( RK_ATTRIBUTES );
+
+			if ( attrs != null ){
+
+				attributes.putAll( attrs );
+			}
+
+			List	attrs_removed = (List)record.get( RK_ATTRIBUTES_REMOVED );
+
+			if ( attrs_removed != null ){
+
+				for ( Object key: attrs_removed ){
+
+					attributes.remove( new String((byte[])key, Constants.UTF_8 ));
+				}
+			}
+
+			Map<String,Object>	props = (Map<String,Object>)record.get( RK_PROPERTIES );
+
+			if ( props != null ){
+
+				for ( Map.Entry<String,Object> entry: props.entrySet()){
+
+					torrent.setAdditionalProperty( entry.getKey(), entry.getValue());
+				}
+			}
+
+			List	props_removed = (List)record.get( RK_PROPERTIES_REMOVED );
+
+			if ( props_removed != null ){
+
+				for ( Object key: props_removed ){
+
+					torrent.removeAdditionalProperty( new String((byte[])key, Constants.UTF_8 ));
+				}
+			}
+		}
+
+		torrent.setAdditionalMapProperty( attribute_key, attributes );
+	}
+
+	private static void
+	readRecords(
+		File		journal_file,
+		List<Map>	records )
+
+		throws IOException
+	{
+		try( DataInputStream dis = new DataInputStream( new BufferedInputStream( FileUtil.newFileInputStream( journal_file )))){
+
+			CRC32	crc = new CRC32();
+
+			while( true ){
+
+				int	len;
+				int	checksum;
+
+				try{
+					len			= dis.readInt();
+					checksum	= dis.readInt();
+
+				}catch( EOFException e ){
+
+					return;
+				}
+
+				if ( len <= 0 || len > MAX_RECORD_BYTES ){
+
+					Debug.out( "Invalid record length in " + journal_file + ", ignoring remainder" );
+
+					return;
+				}
+
+				byte[]	body = new byte[len];
+
+				try{
+					dis.readFully( body );
+
+				}catch( EOFException e ){
+
+						// torn write
+
+					return;
+				}
+
+				crc.reset();
+
+				crc.update( body );
+
+				if ((int)crc.getValue() != checksum ){
+
+					Debug.out( "Checksum mismatch in " + journal_file + ", ignoring remainder" );
+
+					return;
+				}
+
+				records.add( BDecoder.decode( body ));
+			}
+		}
+	}
+
+	private final File	state_file;
+	private final File	journal_file;
+
+		// false -> what is persisted isn't known so the next save must be a full one
+
+	private boolean	base_valid;
+
+	private long	base_length;
+	private long	base_modified;
+
+	private long	journal_length	= -1;
+
+	protected
+	DownloadManagerStateJournal(
+		File		_state_file )
+	{
+		state_file		= _state_file;
+		journal_file	= getJournalFile( state_file );
+	}
+
+		/**
+		 * Marks the state as it currently exists in memory as being what is in the state file + journal.
+		 * Called after a load so that the first save doesn't have to be a full one
+		 */
+
+	protected void
+	setBaseline()
+	{
+		if ( !FileUtil.exists( state_file )){
+
+			return;
+		}
+
+		base_valid		= true;
+
+		base_length		= state_file.length();
+		base_modified	= state_file.lastModified();
+
+		journal_length	= FileUtil.exists( journal_file )?journal_file.length():0;
+
+		if ( journal_length > 0 && !isJournalForBase()){
+
+				// stale journal, restart it
+
+			journal_file.delete();
+
+			journal_length = 0;
+		}
+	}
+
+	private boolean
+	isJournalForBase()
+	{
+		try{
+			List<Map>	records = new ArrayList<>(1);
+
+			readRecords( journal_file, records );
+
+			if ( records.isEmpty()){
+
+				return( false );
+			}
+
+			List<Long>	base = (List<Long>)records.get(0).get( RK_BASE );
+
+			return( base != null && base.size() == 2 && base.get(0) == base_length && base.get(1) == base_modified );
+
+		}catch( Throwable e ){
+
+			return( false );
+		}
+	}
+
+		/**
+		 * @return true if a save can be appended to the journal rather than rewriting the state file
+		 */
+
+	protected boolean
+	canAppend()
+	{
+		return(	base_valid &&
+				state_file.length() == base_length &&
+				state_file.lastModified() == base_modified );
+	}
+
+	protected boolean
+	isCompactionRequired()
+	{
+		return( journal_length > Math.max( COMPACT_MIN_BYTES, base_length ));
+	}
+
+	protected boolean
+	hasEntries()
+	{
+		return( journal_length > 0 );
+	}
+
+		/**
+		 * Must be called with the state's monitor held as the values are encoded here
+		 * @param dirty_attributes	names of the attributes changed since last persisted
+		 * @param properties		torrent properties changed since last persisted, null values indicate removal
+		 * @return null if nothing has changed
+		 */
+
+	protected byte[]
+	getChanges(
+		Map						attributes,
+		Set<String>				dirty_attributes,
+		Map<String,Object>		properties )
+
+		throws IOException
+	{
+		Map<String,Object>	changed	= new HashMap<>();
+		List<String>		removed	= new ArrayList<>();
+
+		for ( String key: dirty_attributes ){
+
+			Object	value = attributes.get( key );
+
+			if ( value == null ){
+
+				removed.add( key );
+
+			}else{
+
+				changed.put( key, value );
+			}
+		}
+
+		Map<String,Object>	props			= new HashMap<>();
+		List<String>		props_removed	= new ArrayList<>();
+
+		for ( Map.Entry<String,Object> entry: properties.entrySet()){
+
+			Object	value = entry.getValue();
+
+			if ( value == null ){
+
+				props_removed.add( entry.getKey());
+
+			}else{
+
+				props.put( entry.getKey(), value );
+			}
+		}
+
+		if ( changed.isEmpty() && removed.isEmpty() && props.isEmpty() && props_removed.isEmpty()){
+
+			return( null );
+		}
+
+		Map<String,Object>	record = new HashMap<>();
+
+		if ( !changed.isEmpty()){
+
+			record.put( RK_ATTRIBUTES, changed );
+		}
+
+		if ( !removed.isEmpty()){
+
+			record.put( RK_ATTRIBUTES_REMOVED, removed );
+		}
+
+		if ( !props.isEmpty()){
+
+			record.put( RK_PROPERTIES, props );
+		}
+
+		if ( !props_removed.isEmpty()){
+
+			record.put( RK_PROPERTIES_REMOVED, props_removed );
+		}
+
+		return( BEncoder.encode( record ));
+	}
+
+		/**
+		 * Appends the changes to the journal, on failure the caller should fall back to a full write
+		 */
+
+	protected boolean
+	append(
+		byte[]		delta )
+	{
+		if ( delta == null ){
+
+			return( true );
+		}
+
+		try{
+			if ( journal_length <= 0 ){
+
+				Map<String,Object>	header = new HashMap<>();
+
+				List<Long>	base = new ArrayList<>(2);
+
+				base.add( base_length );
+				base.add( base_modified );
+
+				header.put( RK_BASE, base );
+
+				writeRecords( false, BEncoder.encode( header ), delta );
+
+			}else{
+
+				writeRecords( true, delta );
+			}
+
+			return( true );
+
+		}catch( Throwable e ){
+
+			Debug.out( "Failed to append to download state journal " + journal_file, e );
+
+			return( false );
+		}
+	}
+
+	private void
+	writeRecords(
+		boolean		append,
+		byte[]...	bodies )
+
+		throws IOException
+	{
+		CRC32	crc = new CRC32();
+
+		ByteArrayOutputStream	baos = new ByteArrayOutputStream();
+
+		DataOutputStream	dos = new DataOutputStream( baos );
+
+		for ( byte[] body: bodies ){
+
+			crc.reset();
+
+			crc.update( body );
+
+			dos.writeInt( body.length );
+			dos.writeInt((int)crc.getValue());
+			dos.write( body );
+		}
+
+		dos.flush();
+
+		try( FileOutputStream fos = FileUtil.newFileOutputStream( journal_file, append )){
+
+			baos.writeTo( fos );
+		}
+
+		journal_length = append?( journal_length + baos.size()):baos.size();
+	}
+
+		/**
+		 * The state file has been rewritten in full, drop the journal and start again
+		 */
+
+	protected void
+	written()
+	{
+		if ( FileUtil.exists( journal_file )){
+
+			journal_file.delete();
+		}
+
+		journal_length = 0;
+
+		if ( FileUtil.exists( state_file )){
+
+			base_valid		= true;
+
+			base_length		= state_file.length();
+			base_modified	= state_file.lastModified();
+
+		}else{
+
+			base_valid		= false;
+		}
+	}
+}
@@ -0,0 +1,437 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.global.impl;
+
+import java.io.File;
+import java.util.*;
+
+import com.biglybt.core.config.COConfigurationManager;
+import com.biglybt.core.util.*;
+
+/**
+ * Persistence for the global download list.
+ * <p>
+ * Originally everything was held in downloads.config which is rewritten in full every save. For large
+ * libraries this is expensive so the downloads are also spread over a fixed number of shard files
+ * (keyed on torrent hash) in the 'downloads' directory. The per-download transfer stats change all the
+ * time so they are kept apart from the rest of a download's details in a matching set of stats shards.
+ * The details and stats last written for each download are remembered and a save only rewrites the
+ * shards holding a download that was added, removed or changed, so its cost follows the changes.
+ * <p>
+ * downloads.config remains a complete list in the legacy format and is rewritten on every full
+ * (non-interim) save, so versions that know nothing of the shards still find the downloads as of the
+ * last clean shutdown. Each save bumps a generation held in the shard index. After writing downloads.config
+ * a small stamp file records the generation along with the file's size and modification time, so on
+ * startup the shards can be used without reading downloads.config at all provided they are at least as
+ * new as the stamp and downloads.config hasn't since been rewritten by a version that doesn't know about
+ * them. Otherwise downloads.config is loaded and the shards are rebuilt on the next save.
+ */
+
+class
+DownloadsConfigStore
+{
+	private static final String	CONFIG_FILE		= "downloads.config";
+	private static final String	SHARD_DIR		= "downloads";
+	private static final String	INDEX_FILE		= "index.config";
+	private static final String	STAMP_FILE		= "config_stamp.config";
+	private static final int	SHARD_COUNT		= 64;
+
+	private static final String	KEY_DOWNLOADS	= "downloads";
+	private static final String	KEY_SHARDS		= "shards";
+	private static final String	KEY_GENERATION	= "generation";
+	private static final String	KEY_SIZE		= "size";
+	private static final String	KEY_MODIFIED	= "modified";
+	private static final String	KEY_PAUSE_DATA	= "pause_data";
+	private static final String	KEY_HASH		= "torrent_hash";
+
+	private static final String[]	VOLATILE_KEYS = {
+		"downloaded", "uploaded", "completedbytes", "discarded", "hashfailbytes", "secondsDownloading", "secondsOnlySeeding"
+	};
+
+	private final File			shard_dir;
+
+		// content of each shard as last read/written keyed by torrent hash, null -> unknown so rewrite
+
+	private final Map<HashWrapper,Map>[]	shard_details 	= new Map[SHARD_COUNT];
+	private final Map<HashWrapper,Map>[]	shard_stats 	= new Map[SHARD_COUNT];
+
+	private long				generation;
+
+	protected
+	DownloadsConfigStore()
+	{
+		shard_dir = FileUtil.newFile( SystemProperties.getUserPath(), SHARD_DIR );
+	}
+
+		/**
+		 * @return map in the legacy format, i.e. with the downloads in a "downloads" list ordered by position
+		 */
+
+	protected Map
+	load()
+	{
+		boolean use_backups = COConfigurationManager.getBooleanParameter( "Use Config File Backups" );
+
+		Map	stamp = FileUtil.readResilientFile( shard_dir, STAMP_FILE, use_backups );
+		Map	index = FileUtil.readResilientFile( shard_dir, INDEX_FILE, use_backups );
+
+		Long	stamp_generation	= (Long)stamp.get( KEY_GENERATION );
+		Long	stamp_size			= (Long)stamp.get( KEY_SIZE );
+		Long	stamp_modified		= (Long)stamp.get( KEY_MODIFIED );
+		Long	index_generation 	= (Long)index.get( KEY_GENERATION );
+		Long	shard_count			= (Long)index.get( KEY_SHARDS );
+
+		File	config_file = FileUtil.newFile( SystemProperties.getUserPath(), CONFIG_FILE );
+
+		if ( 	stamp_generation == null || stamp_size == null || stamp_modified == null ||
+				index_generation == null || shard_count == null ||
+				index_generation < stamp_generation ||
+				( config_file.exists() &&
+					( config_file.length() != stamp_size || config_file.lastModified() != stamp_modified ))){
+
+			Map	map = FileUtil.readResilientConfigFile( CONFIG_FILE );
+
+			Long	config_generation = (Long)map.get( KEY_GENERATION );
+
+			if ( config_generation != null ){
+
+				generation = config_generation;
+			}
+
+			return( map );
+		}
+
+		generation = index_generation;
+
+		boolean	track = shard_count.intValue() == SHARD_COUNT;
+
+		List<Map>	downloads = new ArrayList<>();
+
+		for ( int i=0;i<shard_count.intValue();i++){
+
+			List<Map>	list 		= (List<Map>)FileUtil.readResilientFile( shard_dir, getShardName( "shard_", i ), use_backups ).get( KEY_DOWNLOADS );
+			List<Map>	stats_list 	= (List<Map>)FileUtil.readResilientFile( shard_dir, getShardName( "stats_", i ), use_backups ).get( KEY_DOWNLOADS );
+
+			Map<HashWrapper,Map>	details = new HashMap<>();
+			Map<HashWrapper,Map>	stats	= new HashMap<>();
+
+			if ( stats_list != null ){
+
+				for ( Map s: stats_list ){
+
+					byte[]	hash = (byte[])s.get( KEY_HASH );
+
+					if ( hash != null ){
+
+						stats.put( new HashWrapper( hash ), s );
+					}
+				}
+			}
+
+			boolean	keyed = true;
+
+			if ( list != null ){
+
+				for ( Map download: list ){
+
+					byte[]	hash = (byte[])download.get( KEY_HASH );
+
+					if ( hash == null || hash.length == 0 ){
+
+						keyed = false;
+
+						downloads.add( download );
+
+						continue;
+					}
+
+					HashWrapper	hw = new HashWrapper( hash );
+
+					details.put( hw, download );
+
+						// merge the stats back in, missing stats just mean the download starts from zero as before
+
+					Map	merged	= new HashMap( download );
+					Map	s 		= stats.get( hw );
+
+					if ( s != null ){
+
+						for ( String key: VOLATILE_KEYS ){
+
+							Object	value = s.get( key );
+
+							if ( value != null ){
+
+								merged.put( key, value );
+							}
+						}
+					}
+
+					downloads.add( merged );
+				}
+			}
+
+			if ( track && list != null && stats_list != null ){
+
+				shard_details[i]	= keyed?details:null;
+				shard_stats[i]		= stats;
+			}
+		}
+
+			// shards are by hash, restore the overall position based ordering
+
+		Collections.sort(
+			downloads,
+			new Comparator<Map>()
+			{
+				@Override
+				public int
+				compare(
+					Map		m1,
+					Map		m2 )
+				{
+					return( Long.compare( getPosition( m1 ), getPosition( m2 )));
+				}
+			});
+
+		Map	result = new HashMap();
+
+		List	pause_data = (List)index.get( KEY_PAUSE_DATA );
+
+		if ( pause_data != null ){
+
+			result.put( KEY_PAUSE_DATA, pause_data );
+		}
+
+		result.put( KEY_DOWNLOADS, downloads );
+
+		return( result );
+	}
+
+	private static long
+	getPosition(
+		Map		download )
+	{
+		Long	position = (Long)download.get( "position" );
+
+		return( position==null?Long.MAX_VALUE:position );
+	}
+
+		/**
+		 * @param interim	periodic save - when sharded only the changed shards are written,
+		 * 					otherwise downloads.config is rewritten in full too
+		 */
+
+	protected void
+	save(
+		List<Map>		downloads,
+		List			pause_data,
+		boolean			sharded,
+		boolean			interim )
+	{
+		generation++;
+
+		if ( sharded ){
+
+			saveShards( downloads, pause_data );
+		}
+
+		if ( !sharded || !interim ){
+
+			Map	map = new HashMap();
+
+			if ( pause_data != null ){
+
+				map.put( KEY_PAUSE_DATA, pause_data );
+			}
+
+			map.put( KEY_DOWNLOADS, downloads );
+
+			map.put( KEY_GENERATION, new Long( generation ));
+
+			FileUtil.writeResilientConfigFile( CONFIG_FILE, map );
+
+			if ( sharded ){
+
+				File	config_file = FileUtil.newFile( SystemProperties.getUserPath(), CONFIG_FILE );
+
+				Map	stamp = new HashMap();
+
+				stamp.put( KEY_GENERATION, new Long( generation ));
+				stamp.put( KEY_SIZE, new Long( config_file.length()));
+				stamp.put( KEY_MODIFIED, new Long( config_file.lastModified()));
+
+				FileUtil.writeResilientFile( shard_dir, STAMP_FILE, stamp, COConfigurationManager.getBooleanParameter( "Use Config File Backups" ));
+			}
+		}
+	}
+
+	private void
+	saveShards(
+		List<Map>		downloads,
+		List			pause_data )
+	{
+		List<Map>[]				shards 		= new List[SHARD_COUNT];
+		List<Map>[]				stats 		= new List[SHARD_COUNT];
+		Map<HashWrapper,Map>[]	details_map	= new Map[SHARD_COUNT];
+		Map<HashWrapper,Map>[]	stats_map	= new Map[SHARD_COUNT];
+
+		boolean[]	unkeyed	= new boolean[SHARD_COUNT];
+
+		for ( int i=0;i<SHARD_COUNT;i++){
+
+			shards[i] 		= new ArrayList<>();
+			stats[i] 		= new ArrayList<>();
+			details_map[i]	= new HashMap<>();
+			stats_map[i]	= new HashMap<>();
+		}
+
+		for ( Map download: downloads ){
+
+			byte[]	hash = (byte[])download.get( KEY_HASH );
+
+			if ( hash == null || hash.length == 0 ){
+
+					// nothing to key the stats or changes on so they stay with the download
+					// and the shard is always rewritten
+
+				shards[0].add( download );
+
+				unkeyed[0] = true;
+
+			}else{
+
+				int	index = ( hash[0]&0xff ) % SHARD_COUNT;
+
+				Map	shard_download	= new HashMap( download );
+				Map	download_stats	= new HashMap();
+
+				download_stats.put( KEY_HASH, hash );
+
+				for ( String key: VOLATILE_KEYS ){
+
+					Object	value = shard_download.remove( key );
+
+					if ( value != null ){
+
+						download_stats.put( key, value );
+					}
+				}
+
+				HashWrapper	hw = new HashWrapper( hash );
+
+				shards[index].add( shard_download );
+				stats[index].add( download_stats );
+
+				details_map[index].put( hw, shard_download );
+				stats_map[index].put( hw, download_stats );
+			}
+		}
+
+		if ( !shard_dir.exists()){
+
+			FileUtil.mkdirs( shard_dir );
+		}
+
+		boolean use_backups = COConfigurationManager.getBooleanParameter( "Use Config File Backups" );
+
+		for ( int i=0;i<SHARD_COUNT;i++){
+
+			String	shard_name = getShardName( "shard_", i );
+
+			if ( 	unkeyed[i] ||
+					!isUnchanged( shard_details[i], details_map[i] ) ||
+					!FileUtil.newFile( shard_dir, shard_name ).exists()){
+
+				Map	shard = new HashMap();
+
+				shard.put( KEY_DOWNLOADS, shards[i] );
+
+				FileUtil.writeResilientFile( shard_dir, shard_name, shard, use_backups );
+
+				shard_details[i] = unkeyed[i]?null:details_map[i];
+			}
+
+			String	stats_name = getShardName( "stats_", i );
+
+			if ( 	!isUnchanged( shard_stats[i], stats_map[i] ) ||
+					!FileUtil.newFile( shard_dir, stats_name ).exists()){
+
+				Map	shard = new HashMap();
+
+				shard.put( KEY_DOWNLOADS, stats[i] );
+
+				FileUtil.writeResilientFile( shard_dir, stats_name, shard, use_backups );
+
+				shard_stats[i] = stats_map[i];
+			}
+		}
+
+			// index last so that an interrupted save falls back to downloads.config
+
+		Map	index = new HashMap();
+
+		if ( pause_data != null ){
+
+			index.put( KEY_PAUSE_DATA, pause_data );
+		}
+
+		index.put( KEY_SHARDS, new Long( SHARD_COUNT ));
+
+		index.put( KEY_GENERATION, new Long( generation ));
+
+		FileUtil.writeResilientFile( shard_dir, INDEX_FILE, index, use_backups );
+	}
+
+		/**
+		 * Compares a shard's downloads with those last written. The order within a shard follows
+		 * the download positions which are part of the details, so it needn't be checked separately
+		 */
+
+	private static boolean
+	isUnchanged(
+		Map<HashWrapper,Map>	old_map,
+		Map<HashWrapper,Map>	new_map )
+	{
+		if ( old_map == null || old_map.size() != new_map.size()){
+
+			return( false );
+		}
+
+		for ( Map.Entry<HashWrapper,Map> entry: new_map.entrySet()){
+
+			Map	old_download = old_map.get( entry.getKey());
+
+			if ( old_download == null || !BEncoder.mapsAreIdentical( old_download, entry.getValue())){
+
+				return( false );
+			}
+		}
+
+		return( true );
+	}
+
+	private static String
+	getShardName(
+		String	prefix,
+		int		index )
+	{
+		return( prefix + ( index<10?"0":"" ) + index + ".config" );
+	}
+}
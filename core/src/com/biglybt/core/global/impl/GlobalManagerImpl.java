@@ -324,6 +324,8 @@ public class GlobalManagerImpl
 
 	private Object						download_history_manager;
 
+	private final DownloadsConfigStore	downloads_store = new DownloadsConfigStore();
+
 		// for non-persistent downloads
 	private final Map<HashWrapper,Map>			saved_download_manager_state	= new HashMap<>();
 	private final Map<HashWrapper,Boolean> 		paused_list_initial 			= new HashMap<>();
@@ -2932,7 +2934,7 @@ public class GlobalManagerImpl
 				  progress_listener.reportCurrentTask(MessageText.getString("splash.loadingTorrents"));
 			  }
 
-			  Map map = FileUtil.readResilientConfigFile("downloads.config");
+			  Map map = downloads_store.load();
 
 			  ArrayList pause_data = (ArrayList)map.get( "pause_data" );
 
@@ -3131,8 +3133,6 @@ public class GlobalManagerImpl
 			  Logger.log(new LogEvent(LOGID, "Saving Download List ("	+ managers_temp.length + " items)"));
 		  }
 
-		  Map map = new HashMap();
-
 		  int nbDownloads = managers_temp.length;
 
 		  List<Map> list = new ArrayList<>(nbDownloads);
@@ -3155,12 +3155,12 @@ public class GlobalManagerImpl
 			  list.add(dmMap);
 		  }
 
-		  map.put("downloads", list);
+		  ArrayList pause_data = null;
 
 		  //save pause/resume state
 		  try {  paused_list_mon.enter();
 			  if( !paused_list.isEmpty() ) {
-				  ArrayList pause_data = new ArrayList();
+				  pause_data = new ArrayList();
 				  for ( Map.Entry<HashWrapper,Boolean> entry: paused_list.entrySet()){
 	
 					  HashWrapper 	hash 	= entry.getKey();
@@ -3173,13 +3173,12 @@ public class GlobalManagerImpl
 	
 					  pause_data.add( m );
 				  }
-				  map.put( "pause_data", pause_data );
 			  }
 		  }
 		  finally {  paused_list_mon.exit();  }
 
 
-		  FileUtil.writeResilientConfigFile("downloads.config", map );
+		  downloads_store.save( list, pause_data, COConfigurationManager.getBooleanParameter( "downloads.config.sharded" ), interim );
 	  }
   }
 
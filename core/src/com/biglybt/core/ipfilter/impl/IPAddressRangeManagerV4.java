@@ -42,14 +42,26 @@ IPAddressRangeManagerV4
 {
 	private static final LogIDs LOGID = LogIDs.CORE;
 
+		// addresses are held as ints with the top bit flipped so that signed comparison gives unsigned order
+
+	private static final int	SIGN_FLIP	= 0x80000000;
+
 	protected final Set<IpRangeV4Impl> entries = new IdentityHashSet<>();
 
+		// bulk lists are held as tables rather than as individual range objects
+
+	private final List<IpRangeTableV4>	tables = new ArrayList<>();
+
+	private volatile int	table_entry_count;
+
 	protected long		total_span;
 
-	protected boolean	rebuild_required;
-	protected long		last_rebuild_time = -1;
+	protected volatile boolean	rebuild_required;
+	protected long				last_rebuild_time = -1;
 
-	protected IpRangeV4Impl[] mergedRanges = new IpRangeV4Impl[0];
+		// immutable lookup table, replaced as a whole on rebuild so that lookups don't need the monitor
+
+	private volatile Snapshot	snapshot = new Snapshot( new int[0], new int[0], new int[]{ 0 }, new int[0], new int[0], new int[0], new IpRangeV4Impl[0], new IpRangeTableV4[0], new int[0] );
 
 	protected final AEMonitor	this_mon	= new AEMonitor( "IPAddressRangeManager" );
 
@@ -68,6 +80,8 @@ IPAddressRangeManagerV4
 			// rebuilding and searching ips) is slow.  Skip check, merge will take
 			// care of it
 
+			detach( range );
+
 			entries.add( range);
 
 			rebuild_required	= true;
@@ -82,6 +96,8 @@ IPAddressRangeManagerV4
 		try{
 			this_mon.enter();
 
+			detach( range );
+
 			entries.remove( range );
 
 			rebuild_required	= true;
@@ -92,32 +108,18 @@ IPAddressRangeManagerV4
 		}
 	}
 
-	public IpRangeV4Impl
-	isInRange(
-		Inet4Address	ip )
+	protected void
+	addTable(
+		IpRangeTableV4	table )
 	{
-			// optimise for pretty normal case where there are no ranges
-
-		if ( entries.size() == 0 ){
-
-			return( null );
-		}
-		
 		try{
 			this_mon.enter();
 
-			long address_long = PRHelpers.addressToInt( ip );
-
-			if ( address_long < 0 ){
-
-				address_long += 0x100000000L;
-			}
-
-			IpRangeV4Impl res = isInRange( address_long );
+			tables.add( table );
 
-			// LGLogger.log( "IPAddressRangeManager: checking '" + ip + "' against " + entries.size() + "/" + merged_entries.length + " -> " + res );
+			table_entry_count += table.getLiveCount();
 
-			return( res );
+			rebuild_required	= true;
 
 		}finally{
 
@@ -125,104 +127,96 @@ IPAddressRangeManagerV4
 		}
 	}
 
-	private IpRangeV4Impl
-	isInRange(
-		long	address_long )
+		/**
+		 * A range handed out by a table that is then changed or removed drops out of the table and, if
+		 * still wanted, is managed as an individual range from then on
+		 */
+
+	private void
+	detach(
+		IpRangeV4Impl	range )
 	{
-		try{
-			this_mon.enter();
+		if ( range instanceof IpRangeTableV4.Entry ){
 
-			checkRebuild();
+			IpRangeTableV4.Entry	entry = (IpRangeTableV4.Entry)range;
 
-			if ( mergedRanges.length == 0 ){
+			IpRangeTableV4	table = entry.getTable();
 
-				return( null );
-			}
+			if ( tables.contains( table ) && table.remove( entry.getIndex())){
 
-				// assisted binary chop
+				table_entry_count--;
+			}
+		}
+	}
 
-			int	bottom 	= 0;
-			int	top		= mergedRanges.length-1;
+	public IpRangeV4Impl
+	isInRange(
+		Inet4Address	ip )
+	{
+			// optimise for pretty normal case where there are no ranges
 
-			int	current	= -1;
+		if ( entries.size() == 0 && table_entry_count == 0 ){
 
-			while( top >= 0 && bottom < mergedRanges.length && bottom <= top){
+			return( null );
+		}
 
-				current = (bottom+top)/2;
+		IpRangeV4Impl res = isInRange( PRHelpers.addressToInt( ip ));
 
-				IpRangeV4Impl	e = mergedRanges[current];
+		// LGLogger.log( "IPAddressRangeManager: checking '" + ip + "' against " + entries.size() + " -> " + res );
 
-				long	this_start 	= e.getStartIpLong();
-				long 	this_end	= e.getMergedEndLong();
+		return( res );
+	}
 
-				if ( address_long == this_start ){
+	private IpRangeV4Impl
+	isInRange(
+		int		address )
+	{
+		if ( rebuild_required ){
 
-					break;
+			checkRebuild();
+		}
 
-				}else if ( address_long > this_start ){
+		Snapshot	snap = snapshot;
 
-					if ( address_long <= this_end ){
+		int[]	starts = snap.starts;
 
-						break;
-					}
+		int	key = address ^ SIGN_FLIP;
 
-						// lies to the right of this entry
+			// find the last group starting at or before the address
 
-					bottom	= current + 1;
+		int	bottom 	= 0;
+		int	top		= starts.length - 1;
 
-				}else if ( address_long == this_end ){
+		while( bottom <= top ){
 
-					break;
+			int	current = ( bottom + top ) >>> 1;
 
-				}else{
-					// < this_end
+			if ( starts[current] <= key ){
 
-					if ( address_long >= this_start ){
+				bottom	= current + 1;
 
-						break;
-					}
+			}else{
 
-					top = current - 1;
-				}
+				top		= current - 1;
 			}
+		}
 
-			if ( top >= 0 && bottom < mergedRanges.length && bottom <= top ){
-
-				IpRangeV4Impl	e = mergedRanges[current];
-
-				if ( address_long <= e.getEndIpLong()){
-
-					return( e );
-				}
-
-				IpRangeV4Impl[]	merged = e.getMergedEntries();
-
-				if ( merged == null ){
-
-					Debug.out( "IPAddressRangeManager: inconsistent merged details - no entries" );
-
-					return( null );
-				}
-
-				for (int i=0;i<merged.length;i++){
+		if ( top < 0 || key > snap.merged_ends[top] ){
 
-					IpRangeV4Impl	me = merged[i];
+			return( null );
+		}
 
-					if ( me.getStartIpLong() <= address_long && me.getEndIpLong() >= address_long ){
+		for ( int i=snap.offsets[top];i<snap.offsets[top+1];i++){
 
-						return( me );
-					}
-				}
+			if ( key >= snap.member_starts[i] && key <= snap.member_ends[i] ){
 
-				Debug.out( "IPAddressRangeManager: inconsistent merged details - entry not found" );
+				return( snap.getRange( snap.member_refs[i] ));
 			}
+		}
 
-			return( null );
-
-		}finally{
+		Debug.out( "IPAddressRangeManager: inconsistent merged details - entry not found" );
 
-			this_mon.exit();
-		}
+		return( null );
 	}
 
 	private void
@@ -241,7 +235,7 @@ IPAddressRangeManagerV4
 
 					// allow one second per 2000 entries
 
-				if ( last_rebuild_time == -1 || (now - last_rebuild_time)/1000 > entries.size()/2000 ){
+				if ( last_rebuild_time == -1 || (now - last_rebuild_time)/1000 > getEntryCount()/2000 ){
 
 					last_rebuild_time	= now;
 
@@ -259,132 +253,142 @@ IPAddressRangeManagerV4
 	private void
 	rebuild()
 	{
+		int	num_entries = getEntryCount();
+
 		if (Logger.isEnabled())
 			Logger.log(new LogEvent(LOGID, "IPAddressRangeManager: rebuilding "
-					+ entries.size() + " entries starts"));
+					+ num_entries + " entries starts"));
+
+			// entries are referred to by position: individual ranges first, followed by the
+			// rows of each table from its base onwards
 
-		IpRangeV4Impl[]	ents = new IpRangeV4Impl[entries.size()];
+		IpRangeV4Impl[]	objs = new IpRangeV4Impl[entries.size()];
 
-		entries.toArray(ents);
+		entries.toArray(objs);
 
-		for (int i=0;i<ents.length;i++){
+		IpRangeTableV4[]	tabs 	= tables.toArray( new IpRangeTableV4[tables.size()]);
+		int[]				bases	= new int[tabs.length];
 
-			ents[i].resetMergeInfo();
+		int	num_refs = objs.length;
+
+		for (int i=0;i<tabs.length;i++){
+
+			bases[i]	= num_refs;
+
+			num_refs	+= tabs[i].size();
 		}
 
-			// sort based on start address
+			// sort on start address, with the reference in the low half so that the
+			// end can be picked up from the table when merging
 
-		Arrays.sort(
-			ents,
-			new Comparator<IpRangeV4Impl>()
-			{
-				@Override
-				public int
-				compare(
-					IpRangeV4Impl e1,
-					IpRangeV4Impl e2 )
-				{
-					long diff = e1.getStartIpLong() - e2.getStartIpLong();
+		int[]	end_keys 	= new int[num_refs];
+		long[]	order		= new long[num_entries];
 
-					if (diff == 0) {
+		int	num = 0;
 
-						diff = e2.getEndIpLong() - e1.getEndIpLong();
-					}
+		for (int i=0;i<objs.length;i++){
 
-					return signum(diff);
-				}
-			});
+			IpRangeV4Impl	e = objs[i];
 
-			// now merge overlapping ranges
+			end_keys[i] = toKey( e.getEndIpLong());
 
-		List me = new ArrayList( ents.length );
+			order[num++] = ((long)toKey( e.getStartIpLong()) << 32 ) | i;
+		}
 
-		for (int i=0;i<ents.length;i++){
+		for (int i=0;i<tabs.length;i++){
 
-			IpRangeV4Impl	entry = ents[i];
+			IpRangeTableV4	table	= tabs[i];
+			int				base	= bases[i];
 
-			if ( entry.getMerged()){
+			for (int j=0;j<table.size();j++){
 
-				continue;
-			}
+				if ( !table.isRemoved( j )){
 
-			me.add( entry );
+					end_keys[base+j] = table.getEnd( j ) ^ SIGN_FLIP;
 
-			int	pos = i+1;
+					order[num++] = ((long)( table.getStart( j ) ^ SIGN_FLIP ) << 32 ) | ( base + j );
+				}
+			}
+		}
 
-			while( pos < ents.length ){
+		Arrays.sort( order, 0, num );
 
-				long	end_pos = entry.getMergedEndLong();
+			// now merge overlapping ranges, each group lists its head followed by the entries
+			// that extended it
 
-				IpRangeV4Impl	e2 = ents[pos++];
+		int[]	starts			= new int[num];
+		int[]	merged_ends		= new int[num];
+		int[]	offsets			= new int[num+1];
+		int[]	member_starts	= new int[num];
+		int[]	member_ends		= new int[num];
+		int[]	member_refs		= new int[num];
 
-				if (!e2.getMerged()){
+		int	groups	= 0;
+		int	members	= 0;
 
-					if ( end_pos >= e2.getStartIpLong()){
+		total_span	= 0;
 
-						e2.setMerged();
+		for (int i=0;i<num;i++){
 
-						if ( e2.getEndIpLong() > end_pos ){
+			int	start	= (int)( order[i] >> 32 );
+			int	ref		= (int)order[i];
+			int	end		= end_keys[ref];
 
-							entry.setMergedEnd( e2.getEndIpLong() );
+			if ( groups > 0 && start <= merged_ends[groups-1] ){
 
-							entry.addMergedEntry( e2 );
-						}
-					}else{
+				if ( end <= merged_ends[groups-1] ){
 
-						break;
-					}
+					continue;
 				}
-			}
-		}
 
-		/*
-		for (int i=0;i<ents.length;i++){
+				merged_ends[groups-1] = end;
 
-			entry	e = ents[i];
+			}else{
 
-			System.out.println( Long.toHexString(e.getStart()) + " - " + Long.toHexString(e.getEnd()) + ": " + e.getMerged() + "/" + Long.toHexString(e.getMergedEnd()));
-		}
-		*/
+				if ( groups > 0 ){
 
-		mergedRanges = new IpRangeV4Impl[me.size()];
+						// span is inclusive
 
-		me.toArray( mergedRanges );
+					total_span += ((long)merged_ends[groups-1] - starts[groups-1]) + 1;
+				}
 
-		total_span	= 0;
+				starts[groups]		= start;
+				merged_ends[groups]	= end;
+				offsets[groups++]	= members;
+			}
 
-		for (int i=0;i<mergedRanges.length;i++){
+			member_starts[members]	= start;
+			member_ends[members]	= end;
+			member_refs[members++]	= ref;
+		}
 
-			IpRangeV4Impl	e = mergedRanges[i];
+		if ( groups > 0 ){
 
-				// span is inclusive
+			total_span += ((long)merged_ends[groups-1] - starts[groups-1]) + 1;
+		}
 
-			long	span = ( e.getMergedEndLong() - e.getStartIpLong()) + 1;
+		offsets[groups] = members;
 
-			total_span	+= span;
-		}
-			//	System.out.println( "non_merged = " + merged_entries.length );
+		snapshot = new Snapshot(
+						Arrays.copyOf( starts, groups ),
+						Arrays.copyOf( merged_ends, groups ),
+						Arrays.copyOf( offsets, groups+1 ),
+						Arrays.copyOf( member_starts, members ),
+						Arrays.copyOf( member_ends, members ),
+						Arrays.copyOf( member_refs, members ),
+						objs, tabs, bases );
 
 		if (Logger.isEnabled())
 			Logger.log(new LogEvent(LOGID, "IPAddressRangeManager: rebuilding "
-					+ entries.size() + " entries ends"));
+					+ num_entries + " entries ends"));
 
 	}
 
-	/**
-	 * @param diff
-	 * @return
-	 */
-	private int signum(long diff) {
-		if (diff > 0) {
-			return 1;
-		}
-
-		if (diff < 0) {
-			return -1;
-		}
-
-		return 0;
+	private static int
+	toKey(
+		long	address_long )
+	{
+		return(((int)address_long) ^ SIGN_FLIP );
 	}
 
 	public static void
@@ -500,7 +504,22 @@ IPAddressRangeManagerV4
 		try{
 			this_mon.enter();
 		
-			return( new ArrayList<>( entries ));
+			List<IpRangeV4Impl>	result = new ArrayList<>( getEntryCount());
+
+			result.addAll( entries );
+
+			for ( IpRangeTableV4 table: tables ){
+
+				for (int i=0;i<table.size();i++){
+
+					if ( !table.isRemoved( i )){
+
+						result.add( table.getRange( i ));
+					}
+				}
+			}
+
+			return( result );
 			
 		}finally{
 
@@ -511,7 +530,7 @@ IPAddressRangeManagerV4
 	protected int
 	getEntryCount()
 	{
-		return( entries.size());
+		return( entries.size() + table_entry_count );
 	}
 	
 	protected void 
@@ -522,6 +541,10 @@ IPAddressRangeManagerV4
 
 			entries.clear();
 
+			tables.clear();
+
+			table_entry_count	= 0;
+
 			rebuild_required	= true;
 
 		}finally{
@@ -529,4 +552,61 @@ IPAddressRangeManagerV4
 			this_mon.exit();
 		}
 	}
+
+	private static final class
+	Snapshot
+	{
+		final int[]		starts;
+		final int[]		merged_ends;
+		final int[]		offsets;
+		final int[]		member_starts;
+		final int[]		member_ends;
+		final int[]		member_refs;
+
+		final IpRangeV4Impl[]	objs;
+		final IpRangeTableV4[]	tabs;
+		final int[]				bases;
+
+		Snapshot(
+			int[]				_starts,
+			int[]				_merged_ends,
+			int[]				_offsets,
+			int[]				_member_starts,
+			int[]				_member_ends,
+			int[]				_member_refs,
+			IpRangeV4Impl[]		_objs,
+			IpRangeTableV4[]	_tabs,
+			int[]				_bases )
+		{
+			starts			= _starts;
+			merged_ends		= _merged_ends;
+			offsets			= _offsets;
+			member_starts	= _member_starts;
+			member_ends		= _member_ends;
+			member_refs		= _member_refs;
+			objs			= _objs;
+			tabs			= _tabs;
+			bases			= _bases;
+		}
+
+		IpRangeV4Impl
+		getRange(
+			int		ref )
+		{
+			if ( ref < objs.length ){
+
+				return( objs[ref] );
+			}
+
+			for (int i=tabs.length-1;i>=0;i--){
+
+				if ( ref >= bases[i] ){
+
+					return( tabs[i].getRange( ref - bases[i] ));
+				}
+			}
+
+			return( null );
+		}
+	}
 }
@@ -32,19 +32,14 @@ IPAddressRangeManagerV6
 	
 	private volatile int	range_count;
 	
-	private IpRangeV6Impl[]	sorted_ranges;
-	
-	protected boolean	rebuild_required;
-	protected long		last_rebuild_time	= -1;
-	
+		// immutable lookup table of disjoint ranges, replaced as a whole on rebuild so that lookups
+		// don't need to synchronize. Addresses are split into two longs with the top bits flipped so
+		// that signed comparison gives unsigned order
+
+	private volatile Snapshot	snapshot;
 	
-	private Comparator<IpRangeV6Impl> range_comparator = 
-		new Comparator<IpRangeV6Impl>(){
-		@Override
-			public int compare(IpRangeV6Impl o1, IpRangeV6Impl o2){
-				return( o1.compareStartIpTo( o2 ));
-			}
-		};
+	protected volatile boolean	rebuild_required;
+	protected long				last_rebuild_time	= -1;
 	
 	protected void
 	addRange(
@@ -111,52 +106,99 @@ IPAddressRangeManagerV6
 			
 			if ( ranges.isEmpty()){
 				
-				sorted_ranges = null;
+				snapshot = null;
 				
-			}else{
+				return;
+			}
+			
+			final long[]	start_hi	= new long[ranges.size()];
+			final long[]	start_lo	= new long[ranges.size()];
+			final long[]	end_hi		= new long[ranges.size()];
+			final long[]	end_lo		= new long[ranges.size()];
+
+			IpRangeV6Impl[]	all = new IpRangeV6Impl[ranges.size()];
+			
+			List<Integer>	order = new ArrayList<>( all.length );
+			
+			int	num = 0;
+			
+			for ( IpRangeV6Impl range: ranges ){
+				
+				if ( !range.isValid()){
 					
-				sorted_ranges = new IpRangeV6Impl[ranges.size()];
-								
-				ranges.toArray( sorted_ranges );
+					continue;
+				}
 				
-				Arrays.sort( sorted_ranges, range_comparator );
-
-					// remove prefix overlaps
+				byte[]	prefix	= range.getStartPrefix();
+				int		mask	= range.getStartMask();
 				
-				Set<IpRangeV6Impl>	temp = new HashSet<>( ranges );
+				long	hi = getLong( prefix, 0 );
+				long	lo = getLong( prefix, 8 );
 				
-				for ( int i=0;i<sorted_ranges.length-1;i++){
-					
-					IpRangeV6Impl r1 = sorted_ranges[i];
-					
-					for ( int j=i+1;j<sorted_ranges.length;j++){
-						
-						IpRangeV6Impl r2 = sorted_ranges[j];
+				long	mask_hi = mask>=64?-1L:(mask==0?0:( -1L << ( 64 - mask )));
+				long	mask_lo = mask<=64?0:(mask==128?-1L:( -1L << ( 128 - mask )));
+				
+				start_hi[num]	= ( hi & mask_hi ) ^ Long.MIN_VALUE;
+				start_lo[num]	= ( lo & mask_lo ) ^ Long.MIN_VALUE;
+				end_hi[num]		= ( hi | ~mask_hi ) ^ Long.MIN_VALUE;
+				end_lo[num]		= ( lo | ~mask_lo ) ^ Long.MIN_VALUE;
+				
+				all[num] = range;
+				
+				order.add( num++ );
+			}
+			
+				// by start, widest first so that nested prefixes follow the one covering them
+			
+			Collections.sort(
+				order,
+				new Comparator<Integer>()
+				{
+					@Override
+					public int 
+					compare(
+						Integer	i1, 
+						Integer	i2 )
+					{
+						int res = compareAddress( start_hi[i1], start_lo[i1], start_hi[i2], start_lo[i2] );
 						
-						if ( r1.isInRange( r2.getStartPrefix())){
-								
-							// System.out.println( "Dup: " + r2 );
-							
-							temp.remove( r2 );
+						if ( res == 0 ){
 							
-							i++;
-							
-						}else{
-							
-							break;
+							res = compareAddress( end_hi[i2], end_lo[i2], end_hi[i1], end_lo[i1] );
 						}
+						
+						return( res );
 					}
-				}
+				});
+			
+				// prefixes either nest or are disjoint so dropping those that start within the
+				// previous one leaves a disjoint set
+			
+			Snapshot	snap = new Snapshot( num );
+			
+			int	count = 0;
+			
+			for ( int i: order ){
 				
-				if ( temp.size() < ranges.size()){
+				if ( count > 0 && compareAddress( start_hi[i], start_lo[i], snap.end_hi[count-1], snap.end_lo[count-1] ) <= 0 ){
 					
-					sorted_ranges = new IpRangeV6Impl[temp.size()];
+					// System.out.println( "Dup: " + all[i] );
 					
-					temp.toArray( sorted_ranges );
-										
-					Arrays.sort( sorted_ranges, range_comparator );
+					continue;
 				}
+				
+				snap.start_hi[count]	= start_hi[i];
+				snap.start_lo[count]	= start_lo[i];
+				snap.end_hi[count]		= end_hi[i];
+				snap.end_lo[count]		= end_lo[i];
+				snap.ranges[count]		= all[i];
+				
+				count++;
 			}
+			
+			snap.count = count;
+			
+			snapshot = snap;
 		}
 	}
 		
@@ -169,55 +211,117 @@ IPAddressRangeManagerV6
 			return( null );
 		}
 
-		IpRangeV6Impl ia_range = new IpRangeV6Impl( "", ia, true );
-
-		synchronized( ranges ){
-
-			if ( rebuild_required ){
-
-				long	now = SystemTime.getMonotonousTime();
-
-				if ( last_rebuild_time == -1 || (now - last_rebuild_time)/1000 > range_count/2000 ){
-
-					last_rebuild_time	= now;
-
-					rebuild_required	= false;
-
-					rebuild();
-				}
-			}
+		if ( rebuild_required ){
 			
-			if ( sorted_ranges == null ){
-
-				return( null );
+			synchronized( ranges ){
+	
+				if ( rebuild_required ){
+	
+					long	now = SystemTime.getMonotonousTime();
+	
+					if ( last_rebuild_time == -1 || (now - last_rebuild_time)/1000 > range_count/2000 ){
+	
+						last_rebuild_time	= now;
+	
+						rebuild_required	= false;
+	
+						rebuild();
+					}
+				}
 			}
+		}
+		
+		Snapshot	snap = snapshot;
+		
+		if ( snap == null ){
 
-			int res = Arrays.binarySearch( sorted_ranges, ia_range, range_comparator );
+			return( null );
+		}
+		
+		byte[]	address = ia.getAddress();
+		
+		long	hi = getLong( address, 0 ) ^ Long.MIN_VALUE;
+		long	lo = getLong( address, 8 ) ^ Long.MIN_VALUE;
+		
+			// find the last range starting at or before the address
+		
+		int	bottom	= 0;
+		int	top		= snap.count - 1;
+		
+		while( bottom <= top ){
 			
-			if ( res >= 0 ){
-				
-					// exact match
+			int	current = ( bottom + top ) >>> 1;
+			
+			if ( compareAddress( snap.start_hi[current], snap.start_lo[current], hi, lo ) <= 0 ){
 				
-				return( sorted_ranges[res] );
+				bottom	= current + 1;
 				
 			}else{
-			
-				int prev = (-res) - 2;
 				
-				if ( prev >= 0 ){
-						
-					IpRangeV6Impl range = sorted_ranges[ prev ];
-					
-					if ( range.isInRange( ia.getAddress())){
-						
-						return( range );
-					}
-				}
+				top		= current - 1;
 			}
 		}
+		
+		if ( top >= 0 && compareAddress( hi, lo, snap.end_hi[top], snap.end_lo[top] ) <= 0 ){
+			
+			return( snap.ranges[top] );
+		}
 
 		//System.out.println( "No match for " + ia );
 		
 		return( null );
 	}
+	
+	private static long
+	getLong(
+		byte[]		bytes,
+		int			offset )
+	{
+		long	res = 0;
+		
+		for ( int i=offset;i<offset+8;i++){
+			
+			res = ( res << 8 ) | ( bytes[i] & 0xff );
+		}
+		
+		return( res );
+	}
+	
+	private static int
+	compareAddress(
+		long	hi1,
+		long	lo1,
+		long	hi2,
+		long	lo2 )
+	{
+		if ( hi1 != hi2 ){
+			
+			return( hi1 < hi2?-1:1 );
+		}
+		
+		return( lo1 < lo2?-1:(lo1==lo2?0:1));
+	}
+	
+	private static final class
+	Snapshot
+	{
+		final long[]	start_hi;
+		final long[]	start_lo;
+		final long[]	end_hi;
+		final long[]	end_lo;
+		
+		final IpRangeV6Impl[]	ranges;
+		
+		int		count;
+		
+		Snapshot(
+			int		size )
+		{
+			start_hi	= new long[size];
+			start_lo	= new long[size];
+			end_hi		= new long[size];
+			end_lo		= new long[size];
+			ranges		= new IpRangeV6Impl[size];
+		}
+	}
 }
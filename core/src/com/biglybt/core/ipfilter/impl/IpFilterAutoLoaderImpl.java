@@ -20,9 +20,13 @@ package com.biglybt.core.ipfilter.impl;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -31,7 +35,8 @@ import java.util.zip.ZipInputStream;
 
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.*;
-import com.biglybt.core.ipfilter.IpRange;
+import com.biglybt.core.ipfilter.IpFilterManager;
+import com.biglybt.core.ipfilter.IpFilterManagerFactory;
 import com.biglybt.core.logging.LogEvent;
 import com.biglybt.core.logging.LogIDs;
 import com.biglybt.core.logging.Logger;
@@ -58,6 +63,13 @@ public class IpFilterAutoLoaderImpl
 	static final AEMonitor class_mon = new AEMonitor(
 			"IpFilterAutoLoaderImpl:class");
 
+		// binary copy of the last parsed IPv4 list, reused while the source file is unchanged. Not to
+		// be confused with "ipfilter.cache", the description store that IpFilterManagerImpl recreates
+
+	private static final String CACHE_FILE = "ipfilter.bin";
+	private static final int CACHE_MAGIC = 0x49504643;	// "IPFC"
+	private static final int CACHE_VERSION = 1;
+
 	private Object timerEventFilterReload;
 
 	final IpFilterImpl ipFilter;
@@ -71,16 +83,15 @@ public class IpFilterAutoLoaderImpl
 	/**
 	 * Load dat filter as specified at http://wiki.phoenixlabs.org/wiki/DAT_Format
 	 * @param fin
+	 * @param new_ipRanges receives the parsed ranges, the caller validates them
 	 * @throws Exception
 	 *
 	 * @since 3.0.1.5
 	 */
-	private void loadDATFilters(InputStream fin) {
+	private void loadDATFilters(InputStream fin, List<IpRangeImpl> new_ipRanges) {
 		try {
 			class_mon.enter();
 
-			List new_ipRanges = new ArrayList(1024);
-
 			InputStreamReader streamReader = null;
 			BufferedReader reader = null;
 			try {
@@ -210,20 +221,11 @@ public class IpFilterAutoLoaderImpl
 					} catch (Throwable e) {
 					}
 				}
-
-				Iterator it = new_ipRanges.iterator();
-
-				while (it.hasNext()) {
-
-					((IpRange) it.next()).checkValid();
-				}
 			}
 		} finally {
 
 			class_mon.exit();
 		}
-		
-		ipFilter.markAsUpToDate();
 	}
 
 	private int getP2BFileVersion(InputStream is) {
@@ -271,18 +273,22 @@ public class IpFilterAutoLoaderImpl
 		try{
 			class_mon.enter();
 
-			List<IpRangeImpl> new_ipRanges = new ArrayList<>(1024);
+			List<IpRangeImpl> v4_ranges = new ArrayList<>(1024);
+
+			List<IpRangeTableV4> new_tables = new ArrayList<>(1);
+
+			List<IpRangeImpl> v6_ranges = new ArrayList<>(1024);
 
 			try {
 				
-				boolean isURL = loadIPv4( allowAsyncDownloading, loadOldWhileAsyncDownloading, new_ipRanges );
+				boolean isURL = loadIPv4( allowAsyncDownloading, loadOldWhileAsyncDownloading, v4_ranges, new_tables );
 				
 				if ( !isURL ){
 					
 					setFileReloadTimer = true;
 				}
 				
-				isURL = loadIPv6( allowAsyncDownloading, loadOldWhileAsyncDownloading, new_ipRanges );
+				isURL = loadIPv6( allowAsyncDownloading, loadOldWhileAsyncDownloading, v6_ranges );
 				
 				if ( !isURL ){
 					
@@ -291,8 +297,21 @@ public class IpFilterAutoLoaderImpl
 				
 			} finally {
 
-	
-				Iterator<IpRangeImpl> it = new_ipRanges.iterator();
+					// parsed IPv4 ranges are folded into a table and the objects dropped
+
+				if ( !v4_ranges.isEmpty()){
+
+					new_tables.add( IpRangeTableV4.create( v4_ranges ));
+
+					v4_ranges.clear();
+				}
+
+				for ( IpRangeTableV4 table: new_tables ){
+
+					ipFilter.addRangeTable( table );
+				}
+
+				Iterator<IpRangeImpl> it = v6_ranges.iterator();
 
 				while (it.hasNext()) {
 
@@ -315,8 +334,9 @@ public class IpFilterAutoLoaderImpl
 	private boolean
 	loadIPv4(
 		boolean 			allowAsyncDownloading,
-		boolean 			loadOldWhileAsyncDownloading,
-		List<IpRangeImpl>	new_ipRanges )
+		boolean 				loadOldWhileAsyncDownloading,
+		List<IpRangeImpl>		new_ipRanges,
+		List<IpRangeTableV4>	new_tables )
 	{
 		int p2bVersion = -1;
 		
@@ -365,6 +385,12 @@ public class IpFilterAutoLoaderImpl
 				}
 			}
 	
+			File sourceFile = filtersFile;
+			
+			if (loadCache(sourceFile, new_tables)) {
+				return( isURL );
+			}
+	
 			fin = FileUtil.newFileInputStream(filtersFile);
 			bin = new BufferedInputStream(fin, 16384);
 	
@@ -424,7 +450,8 @@ public class IpFilterAutoLoaderImpl
 	
 			if (p2bVersion < 1 || p2bVersion > 3) {
 				bin.reset();
-				loadDATFilters(bin);
+				loadDATFilters(bin, new_ipRanges);
+				writeCache(sourceFile, new_ipRanges);
 				return( isURL );
 			}
 	
@@ -500,6 +527,9 @@ public class IpFilterAutoLoaderImpl
 					new_ipRanges.add(ipRange);
 				}
 			}
+			
+			writeCache(sourceFile, new_ipRanges);
+			
 		} catch (IOException e) {
 			Debug.out(e);
 		} finally {
@@ -521,6 +551,235 @@ public class IpFilterAutoLoaderImpl
 		return( isURL );
 	}
 	
+	/**
+	 * Restores the ranges from the binary cache written by {@link #writeCache}, avoiding the cost
+	 * of decompressing and parsing the list again. The ranges go straight into a table without
+	 * creating an object per range, with each distinct description registered just once
+	 * @return true if the cache was valid for the source and the table has been added
+	 */
+	boolean
+	loadCache(
+		File					sourceFile,
+		List<IpRangeTableV4>	new_tables )
+	{
+		File cacheFile = FileUtil.getUserFile(CACHE_FILE);
+
+		if (!cacheFile.exists()) {
+			return( false );
+		}
+
+		RandomAccessFile raf = null;
+
+		ByteBuffer buffer = null;
+
+		try {
+			raf = new RandomAccessFile(cacheFile, "r");
+
+			FileChannel fc = raf.getChannel();
+
+			buffer = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+
+			if (buffer.getInt() != CACHE_MAGIC || buffer.getInt() != CACHE_VERSION) {
+				return( false );
+			}
+
+			byte[] pathBytes = new byte[buffer.getShort() & 0xffff];
+
+			buffer.get(pathBytes);
+
+			if (!new String(pathBytes, Constants.UTF_8).equals(sourceFile.getAbsolutePath())
+					|| buffer.getLong() != sourceFile.length()
+					|| buffer.getLong() != sourceFile.lastModified()
+					|| (buffer.get() != 0) != hasDescriptions()) {
+				return( false );
+			}
+
+			int numDescs = buffer.getInt();
+
+			byte[][] descs = new byte[numDescs][];
+
+			for (int i = 0; i < numDescs; i++) {
+				descs[i] = new byte[buffer.getShort() & 0xffff];
+
+				buffer.get(descs[i]);
+			}
+
+			int numRanges = buffer.getInt();
+
+			if (buffer.remaining() != numRanges * 12) {
+				return( false );
+			}
+
+			IpFilterManager filterManager = IpFilterManagerFactory.getSingleton();
+
+			int[] descRefs = new int[numDescs];
+
+			for (int i = 0; i < numDescs; i++) {
+				Object ref = filterManager.addDescription(null, descs[i]);
+
+				descRefs[i] = ref instanceof Integer ? (Integer)ref : 0;
+			}
+
+			int[] starts = new int[numRanges];
+			int[] ends = new int[numRanges];
+			int[] rangeDescRefs = new int[numRanges];
+
+			for (int i = 0; i < numRanges; i++) {
+				int descIdx = buffer.getInt();
+
+				starts[i] = buffer.getInt();
+				ends[i] = buffer.getInt();
+				rangeDescRefs[i] = descIdx < numDescs && descIdx >= 0 ? descRefs[descIdx] : 0;
+			}
+
+			new_tables.add(new IpRangeTableV4(starts, ends, rangeDescRefs));
+
+			Logger.log(new LogEvent(LOGID, "IP Filter: loaded " + numRanges
+					+ " ranges from cache"));
+
+			return( true );
+
+		} catch (Throwable e) {
+			// corrupt or truncated cache, fall back to parsing the source
+
+			Logger.log(new LogEvent(LOGID, LogEvent.LT_WARNING,
+					"IP Filter: ignoring cache - " + Debug.getNestedExceptionMessage(e)));
+
+			return( false );
+
+		} finally {
+
+				// release the mapping now rather than when it is collected so that the cache
+				// can be rewritten (Windows won't replace a mapped file)
+
+			FileUtil.unmap(buffer);
+
+			if (raf != null) {
+				try {
+					raf.close();
+				} catch (Throwable e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Saves the valid ranges parsed from the source file in a compact binary form. Descriptions are
+	 * stored once in a table and referenced by index from the fixed size range records
+	 */
+	void
+	writeCache(
+		File				sourceFile,
+		List<IpRangeImpl>	new_ipRanges )
+	{
+		File cacheFile = FileUtil.getUserFile(CACHE_FILE);
+		File tempFile = FileUtil.getUserFile(CACHE_FILE + ".tmp");
+
+		DataOutputStream dos = null;
+
+		try {
+			Map<String,Integer> descIndexes = new HashMap<>();
+
+			List<String> descs = new ArrayList<>();
+
+			List<IpRangeV4Impl> ranges = new ArrayList<>(new_ipRanges.size());
+
+			for (IpRangeImpl r : new_ipRanges) {
+				IpRangeV4Impl range = (IpRangeV4Impl)r;
+
+				if (!range.isValid()) {
+					continue;
+				}
+
+				String desc = range.getDescription();
+
+				if (desc.length() > 0 && !descIndexes.containsKey(desc)) {
+					descIndexes.put(desc, descs.size());
+					descs.add(desc);
+				}
+
+				ranges.add(range);
+			}
+
+			dos = new DataOutputStream(new BufferedOutputStream(
+					FileUtil.newFileOutputStream(tempFile), 65536));
+
+			dos.writeInt(CACHE_MAGIC);
+			dos.writeInt(CACHE_VERSION);
+
+			writeBytes(dos, sourceFile.getAbsolutePath().getBytes(Constants.UTF_8));
+
+			dos.writeLong(sourceFile.length());
+			dos.writeLong(sourceFile.lastModified());
+			dos.writeBoolean(hasDescriptions());
+
+			dos.writeInt(descs.size());
+
+			for (String desc : descs) {
+				writeBytes(dos, desc.getBytes(Constants.UTF_8));
+			}
+
+			dos.writeInt(ranges.size());
+
+			for (IpRangeV4Impl range : ranges) {
+				String desc = range.getDescription();
+
+				dos.writeInt(desc.length() == 0 ? -1 : descIndexes.get(desc));
+				dos.writeInt((int)range.getStartIpLong());
+				dos.writeInt((int)range.getEndIpLong());
+			}
+
+			dos.close();
+
+			dos = null;
+
+			cacheFile.delete();
+
+			if (!FileUtil.renameFile(tempFile, cacheFile)) {
+				tempFile.delete();
+			}
+		} catch (Throwable e) {
+
+			Debug.out(e);
+
+			tempFile.delete();
+
+		} finally {
+
+			if (dos != null) {
+				try {
+					dos.close();
+				} catch (Throwable e) {
+				}
+
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Descriptions aren't retained when the description cache is disabled so a cache written
+	 * in that mode can't be used once it is enabled
+	 */
+	private static boolean
+	hasDescriptions()
+	{
+		return( COConfigurationManager.getBooleanParameter(ConfigKeys.IPFilter.BCFG_IP_FILTER_ENABLE_DESCRIPTION_CACHE));
+	}
+
+	private static void
+	writeBytes(
+		DataOutputStream	dos,
+		byte[]				bytes )
+
+		throws IOException
+	{
+		int len = Math.min(bytes.length, 0xffff);
+
+		dos.writeShort(len);
+		dos.write(bytes, 0, len);
+	}
+
 	private boolean
 	loadIPv6(
 		boolean 			allowAsyncDownloading,
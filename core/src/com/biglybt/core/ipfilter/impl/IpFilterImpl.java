@@ -865,6 +865,13 @@ IpFilterImpl
 		markAsUpToDate();
 	}
 
+	protected void
+	addRangeTable(
+		IpRangeTableV4	table )
+	{
+		range_manager_v4.addTable( table );
+	}
+
 	@Override
 	public int 
 	getNbRanges() 
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.ipfilter.impl;
+
+import java.util.BitSet;
+import java.util.List;
+
+import com.biglybt.core.ipfilter.IpFilterManagerFactory;
+import com.biglybt.core.util.Constants;
+
+/**
+ * Compact form of a large IPv4 list, such as an auto-loaded block list. Ranges are held in parallel
+ * int arrays with the descriptions as references into the filter manager's description store, so no
+ * objects exist per range. IpRange objects are only created on demand, e.g. for a match or a listing,
+ * and are backed by their table row.
+ */
+
+final class
+IpRangeTableV4
+{
+	private final int[]		starts;
+	private final int[]		ends;
+	private final int[]		desc_refs;		// 0 -> no description
+
+		// guarded by the owning range manager's monitor
+
+	private BitSet			removed;
+	private int				removed_count;
+
+	IpRangeTableV4(
+		int[]		_starts,
+		int[]		_ends,
+		int[]		_desc_refs )
+	{
+		starts		= _starts;
+		ends		= _ends;
+		desc_refs	= _desc_refs;
+	}
+
+		/**
+		 * Builds a table from the valid ranges in the list, which can then be discarded
+		 */
+
+	static IpRangeTableV4
+	create(
+		List<IpRangeImpl>	ranges )
+	{
+		int	num = 0;
+
+		for ( IpRangeImpl range: ranges ){
+
+			if ( range.isV4() && range.isValid()){
+
+				num++;
+			}
+		}
+
+		int[]	starts		= new int[num];
+		int[]	ends		= new int[num];
+		int[]	desc_refs	= new int[num];
+
+		int	pos = 0;
+
+		for ( IpRangeImpl range: ranges ){
+
+			if ( range.isV4() && range.isValid()){
+
+				IpRangeV4Impl	r = (IpRangeV4Impl)range;
+
+				starts[pos]	= (int)r.getStartIpLong();
+				ends[pos]	= (int)r.getEndIpLong();
+
+				Object	ref = r.getDescRef();
+
+				if ( ref instanceof Object[] ){
+
+						// description cache is active, the position is held alongside
+
+					ref = ((Object[])ref)[1];
+				}
+
+				desc_refs[pos++] = ref instanceof Integer?(Integer)ref:0;
+			}
+		}
+
+		return( new IpRangeTableV4( starts, ends, desc_refs ));
+	}
+
+	int
+	size()
+	{
+		return( starts.length );
+	}
+
+	int
+	getStart(
+		int		index )
+	{
+		return( starts[index] );
+	}
+
+	int
+	getEnd(
+		int		index )
+	{
+		return( ends[index] );
+	}
+
+	boolean
+	isRemoved(
+		int		index )
+	{
+		return( removed != null && removed.get( index ));
+	}
+
+	boolean
+	remove(
+		int		index )
+	{
+		if ( removed == null ){
+
+			removed = new BitSet( starts.length );
+
+		}else if ( removed.get( index )){
+
+			return( false );
+		}
+
+		removed.set( index );
+
+		removed_count++;
+
+		return( true );
+	}
+
+	int
+	getLiveCount()
+	{
+		return( starts.length - removed_count );
+	}
+
+	IpRangeV4Impl
+	getRange(
+		int		index )
+	{
+		return( new Entry( index ));
+	}
+
+	final class
+	Entry
+		extends IpRangeV4Impl
+	{
+		private final int	index;
+
+		private boolean		description_set;
+
+		private
+		Entry(
+			int		_index )
+		{
+			super( starts[_index], ends[_index] );
+
+			index	= _index;
+		}
+
+		IpRangeTableV4
+		getTable()
+		{
+			return( IpRangeTableV4.this );
+		}
+
+		int
+		getIndex()
+		{
+			return( index );
+		}
+
+		@Override
+		public String
+		getDescription()
+		{
+			if ( description_set ){
+
+				return( super.getDescription());
+			}
+
+			int	ref = desc_refs[index];
+
+			if ( ref == 0 ){
+
+				return( "" );
+			}
+
+			return( new String( IpFilterManagerFactory.getSingleton().getDescription( ref ), Constants.UTF_8 ));
+		}
+
+		@Override
+		public void
+		setDescription(
+			String		str )
+		{
+			description_set = true;
+
+			super.setDescription( str );
+		}
+	}
+}
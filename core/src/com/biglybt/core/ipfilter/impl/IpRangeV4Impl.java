@@ -39,13 +39,6 @@ IpRangeV4Impl
 
 	private int ipEnd;
 
-	// Merging stuff
-	private final static byte FLAG_MERGED = 0x4;
-
-	private int merged_end;
-
-	private IpRangeV4Impl[] my_merged_entries;
-
 	public IpRangeV4Impl(String _description, String _startIp, String _endIp,
 			boolean _sessionOnly) {
 		if (_sessionOnly) {
@@ -100,6 +93,17 @@ IpRangeV4Impl
 		checkValid();
 	}
 
+	/**
+	 * For ranges backed by a row of an {@link IpRangeTableV4}, these are valid and already
+	 * in the range list so aren't put through the validity check
+	 */
+	IpRangeV4Impl(int _startIp, int _endIp) {
+		flags = FLAG_SESSION_ONLY | FLAG_ADDED_TO_RANGE_LIST;
+
+		ipStart = _startIp;
+		ipEnd = _endIp;
+	}
+
 	protected final boolean
 	isV4()
 	{
@@ -292,52 +296,6 @@ IpRangeV4Impl
 		}
 	}
 
-	protected long getMergedEndLong() {
-		return (merged_end < 0 ? (merged_end + 0x100000000L) : merged_end);
-	}
-
-	protected IpRangeV4Impl[] getMergedEntries() {
-		return (my_merged_entries);
-	}
-
-	protected void resetMergeInfo() {
-		flags &= ~FLAG_MERGED;
-
-		if ((flags & FLAG_INVALID_END) == 0) {
-			merged_end = ipEnd;
-		}
-	}
-
-	protected boolean getMerged() {
-		return (flags & FLAG_MERGED) != 0;
-	}
-
-	protected void setMerged() {
-		flags |= FLAG_MERGED;
-	}
-
-	protected void setMergedEnd(long endIpLong) {
-		merged_end = (int) (endIpLong >= 0x100000000L ? endIpLong - 0x100000000L
-				: endIpLong);
-	}
-
-	protected void addMergedEntry(IpRangeV4Impl e2) {
-		if (my_merged_entries == null) {
-
-			my_merged_entries = new IpRangeV4Impl[] { e2 };
-
-		} else {
-
-			IpRangeV4Impl[] x = new IpRangeV4Impl[my_merged_entries.length + 1];
-
-			System.arraycopy(my_merged_entries, 0, x, 0, my_merged_entries.length);
-
-			x[x.length - 1] = e2;
-
-			my_merged_entries = x;
-		}
-	}
-	
 	@Override
 	public String 
 	getStringSlow()
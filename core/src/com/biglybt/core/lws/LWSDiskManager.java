@@ -62,6 +62,7 @@ LWSDiskManager
 
 	private final sePiece[]					pieces;
 	private final BitFlags					availability;
+	private final BitFlags					interesting;
 
 	private DiskManagerFileInfoImpl[]	files;
 	private String						internal_name;
@@ -96,6 +97,8 @@ LWSDiskManager
 		availability = new BitFlags( pieces.length );
 		
 		availability.setAll();
+		
+		interesting = new BitFlags( pieces.length );
 	}
 
 	public String
@@ -262,6 +265,14 @@ LWSDiskManager
 	{
 	}
 
+	@Override
+	public void
+	setPieceInteresting(
+		int			piece_number,
+		boolean		is_interesting )
+	{
+	}
+
 	@Override
 	public boolean
 	stop(
@@ -443,6 +454,12 @@ LWSDiskManager
 	{
 		return( availability );
 	}
+
+	@Override
+	public BitFlags getInterestingPieces()
+	{
+		return( interesting );
+	}
 	
 	@Override
 	public DiskManagerPiece
@@ -74,6 +74,8 @@ public class NetworkManager {
 
   static boolean	USE_REQUEST_LIMITING;
 
+  static int	write_gather_max_bytes;
+
 
   static {
 	  COConfigurationManager.addAndFireParameterListeners(
@@ -90,7 +92,8 @@ public class NetworkManager {
     									"Max LAN Download Speed KBs",
     									"network.tcp.mtu.size",
   										"network.udp.mtu.size",
-  										"Use Request Limiting"},
+  										"Use Request Limiting",
+  										"network.transport.write.gather.max.bytes" },
 
     		new ParameterListener()	{
   				boolean first = true;
@@ -103,6 +106,8 @@ public class NetworkManager {
 
     				 USE_REQUEST_LIMITING					= COConfigurationManager.getBooleanParameter("Use Request Limiting");
 
+    				 write_gather_max_bytes					= COConfigurationManager.getIntParameter("network.transport.write.gather.max.bytes");
+
     				 max_upload_rate_bps_normal = COConfigurationManager.getIntParameter( "Max Upload Speed KBs" ) * 1024;
     				 if( max_upload_rate_bps_normal < 1024 )  max_upload_rate_bps_normal = UNLIMITED_RATE;
     				 if( max_upload_rate_bps_normal > UNLIMITED_RATE )  max_upload_rate_bps_normal = UNLIMITED_RATE;
@@ -204,7 +209,7 @@ public class NetworkManager {
 				  {
 				  }
 			  },
-			  write_controllers.size() > 1 );
+			  write_controllers.size() > 1 || WriteController.getWorkerCount() > 1 );
 	  
 	  download_processor = new TransferProcessor(
 			  this,
@@ -236,7 +241,7 @@ public class NetworkManager {
 				  {
 				  }
 			  },
-			  read_controllers.size() > 1 );
+			  read_controllers.size() > 1 || ReadController.getWorkerCount() > 1 );
 	  
 	  lan_upload_processor = new TransferProcessor(
 			  this,
@@ -268,7 +273,7 @@ public class NetworkManager {
 				  {
 				  }
 			  },
-			  write_controllers.size() > 1 );
+			  write_controllers.size() > 1 || WriteController.getWorkerCount() > 1 );
 	  
 	  lan_download_processor = new TransferProcessor(
 			  this,
@@ -300,7 +305,7 @@ public class NetworkManager {
 				  {
 				  }
 			  },
-			  read_controllers.size() > 1 );
+			  read_controllers.size() > 1 || ReadController.getWorkerCount() > 1 );
   }
 
 
@@ -323,6 +328,15 @@ public class NetworkManager {
 	  return Math.min( TCPNetworkManager.getTcpMssSize(), UDPNetworkManager.getUdpMssSize());
   }
 
+  /**
+   * Byte budget for a single gathering write to a connection. Queued messages are
+   * coalesced up to this amount rather than being written a packet at a time.
+   * @return max bytes, never less than the given mss
+   */
+  public static int getWriteGatherMaxBytes( int mss_size ) {
+	  return Math.max( mss_size, write_gather_max_bytes );
+  }
+
 
   static void refreshRates() {
     if( isSeedingOnlyUploadRate() ) {
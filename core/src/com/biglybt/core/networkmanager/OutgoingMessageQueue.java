@@ -80,6 +80,12 @@ OutgoingMessageQueue
 
   public boolean isBlocked();
 
+  /**
+   * Whether or not the transport can currently send message data directly from file regions.
+   * @return true if file region payloads can be queued
+   */
+  public default boolean isFileRegionCapable(){  return( false );  }
+
   public boolean getPriorityBoost();
 
   public void setPriorityBoost( boolean	boost );
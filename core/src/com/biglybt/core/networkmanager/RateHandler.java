@@ -34,4 +34,16 @@ public interface RateHandler {
    * @param num_bytes_processed
    */
   public void bytesProcessed( int data_bytes, int protocol_bytes );
+
+  /**
+   * As getCurrentNumBytesAllowed but called by an entity that is about to process the bytes. Handlers shared
+   * by concurrently processed entities set the allowance aside so that it can't be granted twice.
+   * @return number of bytes allowed
+   */
+  public default int[] reserveBytesAllowed(){  return( getCurrentNumBytesAllowed());  }
+
+  /**
+   * Releases any allowance still reserved, bytesProcessed does this implicitly.
+   */
+  public default void releaseBytesAllowed(){}
 }
@@ -21,6 +21,7 @@ package com.biglybt.core.networkmanager;
 
 import com.biglybt.core.peermanager.messaging.Message;
 import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.FileRegion;
 
 
 
@@ -75,4 +76,10 @@ public interface RawMessage extends Message {
    * @return original message
    */
   public Message getBaseMessage();
+
+  /**
+   * Get the file data that follows the raw data payload, if any.
+   * @return region sent directly from disk; null if none
+   */
+  public default FileRegion getFileRegion(){  return( null );  }
 }
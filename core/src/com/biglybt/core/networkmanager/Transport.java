@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import com.biglybt.core.proxy.AEProxyFactory.PluginProxy;
+import com.biglybt.core.util.FileRegion;
 
 /**
  * Represents a peer Transport connection (eg. a network socket).
@@ -111,6 +112,30 @@ Transport
    */
   public long write( ByteBuffer[] buffers, int array_offset, int length ) throws IOException;
 
+  /**
+   * Whether or not file regions can currently be written directly, i.e. a plain
+   * (unencrypted) TCP stream with sendfile enabled.
+   * @return true if transferFileRegion can be used
+   */
+  public default boolean isFileRegionCapable(){  return( false );  }
+
+  /**
+   * Write file data straight to the transport.
+   * @param region to write from
+   * @param max_bytes maximum number of bytes to write
+   * @return number of bytes written
+   * @throws IOException on write error
+   */
+  public default long
+  transferFileRegion(
+	FileRegion		region,
+	int				max_bytes )
+
+	throws IOException
+  {
+	throw( new IOException( "File regions not supported" ));
+  }
+
 
 
   /**
@@ -65,16 +65,19 @@ ByteBucketMT
 	   */
 	  @Override
 	  public int getAvailableByteCount() {
-		if ( avail_bytes < NetworkManager.UNLIMITED_RATE ){
-			update_avail_byte_count();
+		  // read under the same monitor as the refill and deductions so consumers see a consistent value
+		synchronized( this ){
+			if ( avail_bytes < NetworkManager.UNLIMITED_RATE ){
+				update_avail_byte_count();
+			}
+
+		    int res = (int)avail_bytes;
+
+		    if ( res < 0 ){
+		    	res = 0;
+		    }
+		    return( res );
 		}
-
-	    int res = (int)avail_bytes;
-
-	    if ( res < 0 ){
-	    	res = 0;
-	    }
-	    return( res );
 	  }
 
 
@@ -88,7 +91,11 @@ ByteBucketMT
 		  return;
 		}
 
-	    avail_bytes -= bytes_used;
+	    	// multiple processor threads can be consuming from the same bucket, don't lose updates
+
+	    synchronized( this ){
+	    	avail_bytes -= bytes_used;
+	    }
 	    //if( avail_bytes < 0 ) Debug.out( "avail_bytes < 0: " + avail_bytes);
 	  }
 
@@ -139,12 +146,14 @@ ByteBucketMT
 	      Debug.out("burst_rate [" +burst_rate+ "] < rate_bytes_per_sec [" +rate_bytes_per_sec+ "]");
 	      burst_rate = rate_bytes_per_sec;
 	    }
-	    this.rate = rate_bytes_per_sec;
-	    this.burst_rate = burst_rate;
-	    if ( avail_bytes > burst_rate ){
-	    	avail_bytes = burst_rate;
+	    synchronized( this ){
+		    this.rate = rate_bytes_per_sec;
+		    this.burst_rate = burst_rate;
+		    if ( avail_bytes > burst_rate ){
+		    	avail_bytes = burst_rate;
+		    }
+		    ensureByteBucketMinBurstRate();
 	    }
-	    ensureByteBucketMinBurstRate();
 	  }
 
 
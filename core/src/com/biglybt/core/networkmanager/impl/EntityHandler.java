@@ -34,13 +34,15 @@ import com.biglybt.core.util.Debug;
  * connections by default.  Connections can also be "upgraded"
  * to a higher connection control level, i.e. each connection
  * has its own specialized entity for performance purposes.
+ * When the controllers run multiple workers the global pool is split
+ * into one entity per worker so that it can be processed in parallel.
  */
 public class EntityHandler {
   private final HashMap upgraded_connections = new HashMap();
   private final AEMonitor lock = new AEMonitor( "EntityHandler" );
-  private final MultiPeerUploader global_uploader;
-  private final MultiPeerDownloader2 global_downloader;
-  private boolean global_registered = false;
+  private final MultiPeerUploader[] global_uploaders;
+  private final MultiPeerDownloader2[] global_downloaders;
+  private final boolean[] global_registered;
   private final int handler_type;
 
   private final NetworkManager net_man;
@@ -60,15 +62,57 @@ public class EntityHandler {
 	
     this.handler_type = type;
     if( handler_type == TransferProcessor.TYPE_UPLOAD ) {
-      global_uploader = new MultiPeerUploader( rate_handler );
-      global_downloader = null;
+      global_uploaders = new MultiPeerUploader[ WriteController.getWorkerCount() ];
+      SharedRateHandler shared = global_uploaders.length==1?null:new SharedRateHandler( rate_handler );
+      for ( int i=0;i<global_uploaders.length;i++ ){
+    	  global_uploaders[i] = new MultiPeerUploader( shared==null?rate_handler:shared.createHandler());	// pools share the rate handler so the limit stays global
+      }
+      global_downloaders = null;
+      global_registered = new boolean[ global_uploaders.length ];
     }
     else {  //download type
-      global_downloader = new MultiPeerDownloader2( rate_handler );
-      global_uploader = null;
+      global_downloaders = new MultiPeerDownloader2[ ReadController.getWorkerCount() ];
+      SharedRateHandler shared = global_downloaders.length==1?null:new SharedRateHandler( rate_handler );
+      for ( int i=0;i<global_downloaders.length;i++ ){
+    	  global_downloaders[i] = new MultiPeerDownloader2( shared==null?rate_handler:shared.createHandler());
+      }
+      global_uploaders = null;
+      global_registered = new boolean[ global_downloaders.length ];
     }
   }
 
+  private int
+  getPoolIndex(
+	NetworkConnectionBase	connection )
+  {
+	  int	pools = global_registered.length;
+
+	  if ( pools == 1 ){
+
+		  return( 0 );
+	  }
+
+	  int	h = System.identityHashCode( connection );
+
+	  h ^= ( h >>> 16 );
+
+	  return(( h & 0x7fffffff ) % pools );
+  }
+
+  private MultiPeerUploader
+  getGlobalUploader(
+	NetworkConnectionBase	connection )
+  {
+	  return( global_uploaders[ getPoolIndex( connection )]);
+  }
+
+  private MultiPeerDownloader2
+  getGlobalDownloader(
+	NetworkConnectionBase	connection )
+  {
+	  return( global_downloaders[ getPoolIndex( connection )]);
+  }
+
 
 
   /**
@@ -81,27 +125,29 @@ public class EntityHandler {
 	  try{  
 		  lock.enter();
 		  
-		  if ( !global_registered ){
+		  int	pool = getPoolIndex( connection );
+
+		  if ( !global_registered[pool] ){
 			  
 			  if ( handler_type == TransferProcessor.TYPE_UPLOAD ){
 				  
-				  net_man.addWriteEntity( global_uploader, -1 );  //register global upload entity
+				  net_man.addWriteEntity( global_uploaders[pool], -1 );  //register global upload entity
 				  
 			  }else{
 				  
-				  net_man.addReadEntity( global_downloader, -1 );  //register global download entity
+				  net_man.addReadEntity( global_downloaders[pool], -1 );  //register global download entity
 			  }
 
-			  global_registered = true;
+			  global_registered[pool] = true;
 		  }
 
 		  if ( handler_type == TransferProcessor.TYPE_UPLOAD ) {
 
-			  global_uploader.addPeerConnection( connection );
+			  global_uploaders[pool].addPeerConnection( connection );
 
 		  }else{
 
-			  global_downloader.addPeerConnection( connection );
+			  global_downloaders[pool].addPeerConnection( connection );
 		  }
 	  }
 	  finally{
@@ -131,7 +177,7 @@ public class EntityHandler {
 		  
 		  if ( handler_type == TransferProcessor.TYPE_UPLOAD ){
 			  
-			  if ( !global_uploader.removePeerConnection( connection )){  //if not found in the pool entity
+			  if ( !getGlobalUploader( connection ).removePeerConnection( connection )){  //if not found in the pool entity
 				  
 				  SinglePeerUploader upload_entity = (SinglePeerUploader)upgraded_connections.remove( connection );  //check for it in the upgraded list
 				  
@@ -145,7 +191,7 @@ public class EntityHandler {
 			  }
 		  }
 		  else {
-			  if ( !global_downloader.removePeerConnection( connection ) ) {  //if not found in the pool entity
+			  if ( !getGlobalDownloader( connection ).removePeerConnection( connection ) ) {  //if not found in the pool entity
 				  
 				  SinglePeerDownloader download_entity = (SinglePeerDownloader)upgraded_connections.remove( connection );  //check for it in the upgraded list
 				  
@@ -191,7 +237,7 @@ public class EntityHandler {
 		  
 		  if( handler_type == TransferProcessor.TYPE_UPLOAD ) {
 			  SinglePeerUploader upload_entity = new SinglePeerUploader( connection, handler );
-			  if( !global_uploader.removePeerConnection( connection ) ) {  //remove it from the general upload pool
+			  if( !getGlobalUploader( connection ).removePeerConnection( connection ) ) {  //remove it from the general upload pool
 				  Debug.out( "upgradePeerConnection:: upload entity not found/removed !" );
 			  }
 			  net_man.addWriteEntity( upload_entity, partition_id );  //register it for write processing
@@ -199,7 +245,7 @@ public class EntityHandler {
 		  }
 		  else {
 			  SinglePeerDownloader download_entity = new SinglePeerDownloader( connection, handler );
-			  if( !global_downloader.removePeerConnection( connection ) ) {  //remove it from the general upload pool
+			  if( !getGlobalDownloader( connection ).removePeerConnection( connection ) ) {  //remove it from the general upload pool
 				  Debug.out( "upgradePeerConnection:: download entity not found/removed !" );
 			  }
 			  net_man.addReadEntity( download_entity, partition_id );  //register it for read processing
@@ -242,7 +288,7 @@ public class EntityHandler {
 				  Debug.out( "upload_entity == null" );
 			  }
 			  
-			  global_uploader.addPeerConnection( connection );  //move back to the general pool
+			  getGlobalUploader( connection ).addPeerConnection( connection );  //move back to the general pool
 			  
 		  }else{
 			  
@@ -257,7 +303,7 @@ public class EntityHandler {
 				  Debug.out( "download_entity == null" );
 			  }
 			  
-			  global_downloader.addPeerConnection( connection );  //move back to the general pool
+			  getGlobalDownloader( connection ).addPeerConnection( connection );  //move back to the general pool
 		  }
 	  }finally{
 		  
@@ -288,7 +334,7 @@ public class EntityHandler {
 				  return( upload_entity.getRateHandler());
 			  }else{
 
-				  return( global_uploader.getRateHandler());
+				  return( getGlobalUploader( connection ).getRateHandler());
 			  }
 		  }else{
 
@@ -300,7 +346,7 @@ public class EntityHandler {
 				  
 			  }else{
 
-				  return( global_downloader.getRateHandler());
+				  return( getGlobalDownloader( connection ).getRateHandler());
 			  }
 		  }
 	  }finally{
@@ -239,7 +239,7 @@ public class MultiPeerDownloader2 implements RateControlledEntity {
 
 			// System.out.println( "MPD: do process - " + connections_cow.size() + "/" + active_connections.size() + "/" + idle_connections.size());
 
-			int[] bytes_allowed = main_handler.getCurrentNumBytesAllowed();
+			int[] bytes_allowed = main_handler.reserveBytesAllowed();
 
 			int num_bytes_allowed = bytes_allowed[0];
 
@@ -427,6 +427,10 @@ public class MultiPeerDownloader2 implements RateControlledEntity {
 			Debug.out( getString(), e );
 			
 			throw( e );
+			
+		}finally{
+			
+			main_handler.releaseBytesAllowed();
 		}
 	}
 
@@ -24,6 +24,7 @@ import java.util.*;
 
 import com.biglybt.core.networkmanager.EventWaiter;
 import com.biglybt.core.networkmanager.NetworkConnectionBase;
+import com.biglybt.core.networkmanager.NetworkManager;
 import com.biglybt.core.networkmanager.OutgoingMessageQueue;
 import com.biglybt.core.networkmanager.RateHandler;
 import com.biglybt.core.networkmanager.TransportBase;
@@ -40,7 +41,8 @@ import com.biglybt.core.util.SystemTime;
  * emphasis on transmitting packets with full payloads, i.e. it writes to the
  * transport in mss-sized chunks if at all possible. It also employs fair,
  * round-robin write scheduling, where connections each take turns writing a
- * single full packet per round.
+ * batch of full packets per round. The batch is coalesced into a single
+ * gathering write of up to {@link NetworkManager#getWriteGatherMaxBytes(int)}.
  */
 public class MultiPeerUploader implements RateControlledEntity {
 	private static final int FLUSH_CHECK_LOOP_TIME = 500;  //500ms
@@ -369,8 +371,13 @@ public class MultiPeerUploader implements RateControlledEntity {
 				}
 
 				int mss_size = conn.getMssSize();
-				int num_bytes_allowed = num_bytes_remaining > mss_size ? mss_size : num_bytes_remaining;  //allow a single full packet at most
-				int num_bytes_available = total_size > mss_size ? mss_size : total_size;  //allow a single full packet at most
+				int gather_size = NetworkManager.getWriteGatherMaxBytes( mss_size );
+				int num_bytes_allowed = num_bytes_remaining > gather_size ? gather_size : num_bytes_remaining;  //allow a single batch at most
+				int num_bytes_available = total_size > gather_size ? gather_size : total_size;  //allow a single batch at most
+
+				if( num_bytes_allowed < num_bytes_available && num_bytes_allowed >= mss_size ) {  //can't have the whole batch, settle for as many full packets as allowed
+					num_bytes_available = ( num_bytes_allowed / mss_size ) * mss_size;
+				}
 
 				if( num_bytes_allowed >= num_bytes_available ) { //we're allowed enough (for either a full packet or to drain any remaining data)
 					int written = 0;
@@ -597,7 +604,7 @@ public class MultiPeerUploader implements RateControlledEntity {
 		int max_bytes ) 
 	{
 		try{
-			int[] allowed = rate_handler.getCurrentNumBytesAllowed();
+			int[] allowed = rate_handler.reserveBytesAllowed();
 	
 			int 	num_bytes_allowed 	= allowed[0];
 			boolean	protocol_is_free 	= allowed[1] > 0;
@@ -615,6 +622,10 @@ public class MultiPeerUploader implements RateControlledEntity {
 			Debug.out( getString(), e );
 			
 			throw( e );
+			
+		}finally{
+			
+			rate_handler.releaseBytesAllowed();
 		}
 	}
 
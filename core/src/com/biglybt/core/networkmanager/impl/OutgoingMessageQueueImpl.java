@@ -37,6 +37,7 @@ import com.biglybt.core.peermanager.messaging.MessageStreamEncoder;
 import com.biglybt.core.util.AEMonitor;
 import com.biglybt.core.util.Debug;
 import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.FileRegion;
 import com.biglybt.core.util.TimeFormatter;
 
 
@@ -191,6 +192,15 @@ OutgoingMessageQueueImpl
 
 	 return( !transport.isReadyForWrite( null ));
   }
+
+  @Override
+  public boolean
+  isFileRegionCapable()
+  {
+	 Transport	t = transport;
+
+	 return( t != null && t.isFileRegionCapable());
+  }
   /**
    * Whether or not an urgent message (one that needs an immediate send, i.e. a no-delay message) is queued.
    * @return true if there's a message tagged for immediate write
@@ -279,6 +289,10 @@ OutgoingMessageQueueImpl
 	      for( int j=0; j < payload.length; j++ ) {
 	    	  remaining += payload[j].remaining(DirectByteBuffer.SS_NET);
 	      }
+	      FileRegion region = rmesg.getFileRegion();
+	      if ( region != null ){
+	    	  remaining += region.remaining();
+	      }
 	      total_size += remaining;
 	      if ( rmesg.getType() == Message.TYPE_DATA_PAYLOAD ){
 	    	  total_data_size += remaining;
@@ -345,6 +359,10 @@ OutgoingMessageQueueImpl
             for( int x=0; x < payload.length; x++ ) {
             	remaining += payload[x].remaining(DirectByteBuffer.SS_NET);
             }
+            FileRegion region = msg.getFileRegion();
+            if ( region != null ){
+            	remaining += region.remaining();
+            }
             total_size -= remaining;
             if ( msg.getType() == Message.TYPE_DATA_PAYLOAD ){
             	total_data_size -= remaining;
@@ -434,6 +452,10 @@ OutgoingMessageQueueImpl
             for( int x=0; x < payload.length; x++ ) {
             	remaining += payload[x].remaining(DirectByteBuffer.SS_NET);
             }
+            FileRegion region = raw.getFileRegion();
+            if ( region != null ){
+            	remaining += region.remaining();
+            }
             total_size -= remaining;
             if ( raw.getType() == Message.TYPE_DATA_PAYLOAD ){
             	total_data_size -= remaining;
@@ -605,6 +627,13 @@ outer:
 						  buffer_limit 		= new_buffer_limit;
 					  }
 				  }
+
+				  if ( message.getFileRegion() != null ){
+
+					  	// the file data goes out separately so nothing after it can be gathered
+
+					  break;
+				  }
 			  }
 
 			  ByteBuffer last_buff = (ByteBuffer)raw_buffers[buffer_count - 1 ];
@@ -624,14 +653,21 @@ outer:
 
 				  last_buff.limit( orig_last_limit );
 
-				  return( new int[2] );
-			  }
+				  	// headers of a file region message might already be out
+
+				  if ( queue.getFirst().getFileRegion() == null ){
+
+					  return( new int[2] );
+				  }
+			  }else{
 
-			  transport.write( raw_buffers, 0, buffer_count );
+				  transport.write( raw_buffers, 0, buffer_count );
 
-			  last_buff.limit( orig_last_limit );
+				  last_buff.limit( orig_last_limit );
+			  }
 
 			  int pos = 0;
+			  int charged = 0;
 			  boolean stop = false;
 
 			  while( !queue.isEmpty() && !stop ) {
@@ -654,6 +690,10 @@ outer:
 						  protocol_written += bytes_written;
 					  }
 
+					  if ( !( msg.getType() == Message.TYPE_PROTOCOL_PAYLOAD && protocol_is_free )){
+						  charged += bytes_written;
+					  }
+
 					  if( bb.hasRemaining() ) {  //still data left to send in this message
 						  stop = true;  //so don't bother checking later messages for completion
 
@@ -679,33 +719,14 @@ outer:
 						  break;
 					  }
 					  else if( x == payloads.length - 1 ) {  //last payload buffer of message is empty
-						  if( msg == urgent_message ) urgent_message = null;
-
-						  queue.remove( 0 );
+						  FileRegion region = msg.getFileRegion();
 
-
-						  if( TRACE_HISTORY ) {
-							  prev_sent.addLast( msg );
-							  if( prev_sent.size() > MAX_HISTORY_TRACES )  prev_sent.removeFirst();
+						  if ( region != null && region.remaining() > 0 ){
+							  stop = true;  //headers are out, the file data is sent below
+							  break;
 						  }
 
-
-						  progress = null;
-						  progress_id++;
-
-						  if( manual_listener_notify ) {
-							  NotificationItem item = new NotificationItem( NotificationItem.MESSAGE_SENT );
-							  item.message = msg;
-							  try {  delayed_notifications_mon.enter();
-							  delayed_notifications.add( item );
-							  } finally {  delayed_notifications_mon.exit();  }
-						  }
-						  else {
-							  if( messages_sent == null ) {
-								  messages_sent = new ArrayList<>();
-							  }
-							  messages_sent.add( msg );
-						  }
+						  messages_sent = messageSent( msg, manual_listener_notify, messages_sent );
 					  }
 
 					  pos++;
@@ -715,6 +736,44 @@ outer:
 					  }
 				  }
 			  }
+
+			  if ( !queue.isEmpty()){
+
+				  RawMessage msg = queue.getFirst();
+
+				  FileRegion region = msg.getFileRegion();
+
+				  int	allowed = max_bytes - charged;
+
+				  if ( region != null && region.remaining() > 0 && allowed > 0 ){
+
+					  DirectByteBuffer[] payloads = msg.getRawData();
+
+					  if ( !payloads[payloads.length-1].hasRemaining( DirectByteBuffer.SS_NET )){
+
+						  int bytes_written = (int)transport.transferFileRegion( region, allowed );
+
+						  total_size 		-= bytes_written;
+						  total_data_size	-= bytes_written;
+						  data_written 		+= bytes_written;
+
+						  if ( region.remaining() == 0 ){
+
+							  messages_sent = messageSent( msg, manual_listener_notify, messages_sent );
+
+						  }else{
+
+							  int headers_size = 0;
+
+							  for( int i=0; i < payloads.length; i++ ) {
+								  headers_size += payloads[i].limit( DirectByteBuffer.SS_NET );
+							  }
+
+							  progress = new int[]{ headers_size + region.getLength(), headers_size + region.getLength() - region.remaining(), progress_id };
+						  }
+					  }
+				  }
+			  }
 		  }
 	  }finally{
 		  queue_mon.exit();
@@ -790,6 +849,47 @@ outer:
 	  return( new int[]{ data_written, protocol_written });
   }
 
+  /**
+   * Remove a fully sent message from the head of the queue, caller must hold queue_mon.
+   * @return list of sent messages awaiting notification
+   */
+  private ArrayList<RawMessage>
+  messageSent(
+	 RawMessage				msg,
+	 boolean				manual_listener_notify,
+	 ArrayList<RawMessage>	messages_sent )
+  {
+	  if( msg == urgent_message ) urgent_message = null;
+
+	  queue.remove( 0 );
+
+
+	  if( TRACE_HISTORY ) {
+		  prev_sent.addLast( msg );
+		  if( prev_sent.size() > MAX_HISTORY_TRACES )  prev_sent.removeFirst();
+	  }
+
+
+	  progress = null;
+	  progress_id++;
+
+	  if( manual_listener_notify ) {
+		  NotificationItem item = new NotificationItem( NotificationItem.MESSAGE_SENT );
+		  item.message = msg;
+		  try {  delayed_notifications_mon.enter();
+		  delayed_notifications.add( item );
+		  } finally {  delayed_notifications_mon.exit();  }
+	  }
+	  else {
+		  if( messages_sent == null ) {
+			  messages_sent = new ArrayList<>();
+		  }
+		  messages_sent.add( msg );
+	  }
+
+	  return( messages_sent );
+  }
+
   @Override
   public void
   flush()
@@ -23,6 +23,7 @@ import com.biglybt.core.networkmanager.RawMessage;
 import com.biglybt.core.peermanager.messaging.Message;
 import com.biglybt.core.peermanager.messaging.MessageException;
 import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.FileRegion;
 
 
 /**
@@ -36,6 +37,7 @@ public class RawMessageImpl implements RawMessage {
   private final int priority;
   private boolean is_no_delay;
   private final Message[] to_remove;
+  private final FileRegion file_region;
 
 
 
@@ -52,8 +54,22 @@ public class RawMessageImpl implements RawMessage {
                             int _priority,
                             boolean _is_no_delay,
                             Message[] _to_remove ) {
+    this( source, raw_payload, null, _priority, _is_no_delay, _to_remove );
+  }
+
+  /**
+   * Create a new raw message whose data is sent from a file after the raw payload.
+   * @param file_region data following the headers; null if none
+   */
+  public RawMessageImpl( Message source,
+                            DirectByteBuffer[] raw_payload,
+                            FileRegion _file_region,
+                            int _priority,
+                            boolean _is_no_delay,
+                            Message[] _to_remove ) {
     this.message = source;
     this.payload = raw_payload;
+    this.file_region = _file_region;
     this.priority = _priority;
     this.is_no_delay = _is_no_delay;
     this.to_remove = _to_remove;
@@ -108,6 +124,9 @@ public class RawMessageImpl implements RawMessage {
   @Override
   public Message getBaseMessage() {  return message;  }
 
+  @Override
+  public FileRegion getFileRegion() {  return file_region;  }
+
 
   @Override
   public void destroy() {
@@ -118,6 +137,7 @@ public class RawMessageImpl implements RawMessage {
     for( int i=0; i < payload.length; i++ ) {
       payload[i].returnToPool();
     }
+    if( file_region != null ) file_region.release();
   }
 
 
@@ -24,14 +24,21 @@ import java.util.*;
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.networkmanager.EventWaiter;
+import com.biglybt.core.stats.CoreMetrics;
 import com.biglybt.core.stats.CoreStats;
 import com.biglybt.core.stats.CoreStatsProvider;
 import com.biglybt.core.util.*;
+import com.biglybt.core.util.average.AverageFactory;
+import com.biglybt.core.util.average.MovingImmediateAverage;
 
 
 
 /**
  * Processes reads of read-entities and handles the read selector.
+ * <p>
+ * Entities are sharded across a configurable number of worker threads, each with its own
+ * entity lists and event waiter. Rate limits are unaffected as they are enforced by the
+ * entities' shared rate handlers.
  */
 public class ReadController implements CoreStatsProvider, AEDiagnosticsEvidenceGenerator {
 
@@ -57,39 +64,68 @@ public class ReadController implements CoreStatsProvider, AEDiagnosticsEvidenceG
 			});
 	}
 
-  volatile ArrayList<RateControlledEntity> normal_priority_entities = new ArrayList<>();  //copied-on-write
-  volatile ArrayList<RateControlledEntity> high_priority_entities 	= new ArrayList<>();  //copied-on-write
-  private final AEMonitor entities_mon = new AEMonitor( "ReadController:EM" );
-  private int next_normal_position = 0;
-  private int next_high_position = 0;
 
-  private long	loop_count;
-  private long	wait_count;
-  private long	non_progress_count;
-  private long	progress_count;
+	private static final int	MAX_WORKERS	= 16;
+
+	private static int	next_worker_id;
+
+	static final CoreMetrics.Histogram	loop_time_histogram =
+		CoreMetrics.getHistogram( CoreMetrics.MT_NET_READ_CONTROL_LOOP_TIME, "Time spent processing per read controller loop, excluding waits" );
+
+		/**
+		 * Number of processor threads each controller shards its entities across. Read once as
+		 * the threads are created up front.
+		 */
+
+	public static int
+	getWorkerCount()
+	{
+		int	num = COConfigurationManager.getIntParameter( "network.control.read.worker.count" );
+
+		return( Math.max( 1, Math.min( num, MAX_WORKERS )));
+	}
+
+  private final Worker[]	workers;
 
-  private long	entity_check_count;
-  private long	last_entity_check_count;
+  private final Map<RateControlledEntity,Worker>	entity_workers = new IdentityHashMap<>();	// guarded by entities_mon
 
-  private final EventWaiter 	read_waiter = new EventWaiter();
+  private final AEMonitor entities_mon = new AEMonitor( "ReadController:EM" );
 
   private int			entity_count;
 
   public ReadController() {
 
-    //start read handler processing
-    AEThread2 read_processor_thread = new AEThread2( "ReadController:ReadProcessor" ) {
-      @Override
-      public void run() {
-        readProcessorLoop();
-      }
-    };
-    
-    read_processor_thread.setPriority( Thread.MAX_PRIORITY - 1 );
-    read_processor_thread.start();
+	int	num_workers = getWorkerCount();
+
+	workers = new Worker[ num_workers ];
 
     Set	types = new HashSet();
 
+    for ( int i=0;i<num_workers;i++){
+
+    	int	id;
+
+    	synchronized( ReadController.class ){
+
+    		id = next_worker_id++;
+    	}
+
+    	Worker worker = workers[i] = new Worker( id );
+
+        //start read handler processing
+        AEThread2 read_processor_thread = new AEThread2( num_workers==1?"ReadController:ReadProcessor":("ReadController:ReadProcessor:" + i )) {
+          @Override
+          public void run() {
+            worker.readProcessorLoop();
+          }
+        };
+
+        read_processor_thread.setPriority( Thread.MAX_PRIORITY - 1 );
+        read_processor_thread.start();
+
+        types.add( worker.util_stat );
+    }
+
     types.add( CoreStats.ST_NET_READ_CONTROL_LOOP_COUNT );
     types.add( CoreStats.ST_NET_READ_CONTROL_NP_COUNT );
     types.add( CoreStats.ST_NET_READ_CONTROL_P_COUNT );
@@ -115,26 +151,34 @@ public class ReadController implements CoreStatsProvider, AEDiagnosticsEvidenceG
 		try{
 			writer.indent();
 
-			ArrayList<RateControlledEntity> ref = normal_priority_entities;
+			for ( Worker worker: workers ){
 
-			writer.println( "normal - " + ref.size());
+				if ( workers.length > 1 ){
 
-			for (int i=0;i<ref.size();i++){
+					writer.println( "worker " + worker.id + " - util=" + worker.getUtilization() + "%" );
+				}
 
-				RateControlledEntity entity = ref.get( i );
+				ArrayList<RateControlledEntity> ref = worker.normal_priority_entities;
 
-				writer.println( entity.getString());
-			}
+				writer.println( "normal - " + ref.size());
+
+				for (int i=0;i<ref.size();i++){
+
+					RateControlledEntity entity = ref.get( i );
+
+					writer.println( entity.getString());
+				}
 
-			ref = high_priority_entities;
+				ref = worker.high_priority_entities;
 
-			writer.println( "priority - " + ref.size());
+				writer.println( "priority - " + ref.size());
 
-			for (int i=0;i<ref.size();i++){
+				for (int i=0;i<ref.size();i++){
 
-				RateControlledEntity entity = ref.get( i );
+					RateControlledEntity entity = ref.get( i );
 
-				writer.println( entity.getString());
+					writer.println( entity.getString());
+				}
 			}
 		}finally{
 
@@ -148,6 +192,24 @@ public class ReadController implements CoreStatsProvider, AEDiagnosticsEvidenceG
 		  Set		types,
 		  Map		values )
   {
+	  long	loop_count			= 0;
+	  long	non_progress_count	= 0;
+	  long	progress_count		= 0;
+	  long	wait_count			= 0;
+
+	  for ( Worker worker: workers ){
+
+		  loop_count			+= worker.loop_count;
+		  non_progress_count	+= worker.non_progress_count;
+		  progress_count		+= worker.progress_count;
+		  wait_count			+= worker.wait_count;
+
+		  if ( types.contains( worker.util_stat )){
+
+			  values.put( worker.util_stat, new Long( worker.getUtilization()));
+		  }
+	  }
+
 	  if ( types.contains( CoreStats.ST_NET_READ_CONTROL_LOOP_COUNT )){
 
 		  values.put( CoreStats.ST_NET_READ_CONTROL_LOOP_COUNT, new Long( loop_count  ));
@@ -170,7 +232,7 @@ public class ReadController implements CoreStatsProvider, AEDiagnosticsEvidenceG
 
 	  if ( types.contains( CoreStats.ST_NET_READ_CONTROL_ENTITY_COUNT )){
 
-		  values.put( CoreStats.ST_NET_READ_CONTROL_ENTITY_COUNT, new Long( high_priority_entities.size() + normal_priority_entities.size()));
+		  values.put( CoreStats.ST_NET_READ_CONTROL_ENTITY_COUNT, new Long( entity_count ));
 	  }
 
 	  if ( 	types.contains( CoreStats.ST_NET_READ_CONTROL_CON_COUNT ) ||
@@ -179,19 +241,23 @@ public class ReadController implements CoreStatsProvider, AEDiagnosticsEvidenceG
 		  int	ready_connections	= 0;
 		  int	connections			= 0;
 
-		  ArrayList[] refs = { normal_priority_entities, high_priority_entities };
+		  for ( Worker worker: workers ){
 
-		  for (int i=0;i<refs.length;i++){
+			  List<ArrayList<RateControlledEntity>> refs = new ArrayList<>( 2 );
 
-			  ArrayList	ref = refs[i];
+			  refs.add( worker.normal_priority_entities );
+			  refs.add( worker.high_priority_entities );
 
-			  for (int j=0;j<ref.size();j++){
+			  for ( ArrayList<RateControlledEntity> ref: refs ){
 
-			      RateControlledEntity entity = (RateControlledEntity)ref.get( j );
+				  for (int j=0;j<ref.size();j++){
 
-			      connections 		+= entity.getConnectionCount( read_waiter );
+				      RateControlledEntity entity = ref.get( j );
 
-			      ready_connections += entity.getReadyConnectionCount( read_waiter );
+				      connections 		+= entity.getConnectionCount( worker.read_waiter );
+
+				      ready_connections += entity.getReadyConnectionCount( worker.read_waiter );
+				  }
 			  }
 		  }
 
@@ -201,243 +267,396 @@ public class ReadController implements CoreStatsProvider, AEDiagnosticsEvidenceG
   }
 
 
+  /**
+   * Add the given entity to the controller for read processing.
+   * @param entity to process reads for
+   */
+  public void addReadEntity( RateControlledEntity entity ) {
+	Worker	worker;
+
+    try {  entities_mon.enter();
+
+      worker = selectWorker( workers, entity.getPriority());
+
+      worker.addEntity( entity );
+
+      entity_workers.put( entity, worker );
+
+      entity_count = entity_workers.size();
+    }
+    finally {  entities_mon.exit();  }
+
+    worker.read_waiter.eventOccurred();
+  }
+
+
+  /**
+   * Remove the given entity from the controller.
+   * @param entity to remove from read processing
+   */
+  public boolean removeReadEntity( RateControlledEntity entity ) {
+	boolean found = false;
+    try {  entities_mon.enter();
 
+      Worker worker = entity_workers.remove( entity );
 
-  void readProcessorLoop() {
-    boolean check_high_first = true;
+      if ( worker != null && worker.removeEntity( entity )){
 
-    while( true ) {
-      loop_count++;
-      try {
-        if( check_high_first ) {
-          check_high_first = false;
-          if( !doHighPriorityRead() ) {
-            if( !doNormalPriorityRead() ) {
-            	if ( read_waiter.waitForEvent( hasConnections()?IDLE_SLEEP_TIME:1000 )){
-            		wait_count++;
-            	}
-            }
-          }
-        }
-        else {
-          check_high_first = true;
-          if( !doNormalPriorityRead() ) {
-            if( !doHighPriorityRead() ) {
-            	if ( read_waiter.waitForEvent(hasConnections()?IDLE_SLEEP_TIME:1000 )){
-            		wait_count++;
-            	}
-            }
-          }
-        }
-      }catch( Throwable t ) {
-        Debug.out( "readProcessorLoop() EXCEPTION: ", t );
+    	  found = true;
+
+      }else{
+
+    	  Debug.out( "entity not found" );
       }
+
+      entity_count = entity_workers.size();
     }
+    finally {  entities_mon.exit();  }
+    
+    return( found );
   }
 
-  private boolean
-  hasConnections()
+  public int
+  getEntityCount()
   {
-	  if ( entity_count == 0 ){
+	  return( entity_count );
+  }
 
-		  return( false );
+  	/**
+  	 * Picks the worker with the fewest entities of the given priority so that the high priority
+  	 * pool entities, which typically carry most of the connections, end up on different threads
+  	 */
+
+  private static Worker
+  selectWorker(
+	Worker[]	workers,
+	int			priority )
+  {
+	  Worker	best = workers[0];
+
+	  for ( int i=1;i<workers.length;i++){
+
+		  Worker	worker = workers[i];
+
+		  int	diff = worker.getEntityCount( priority ) - best.getEntityCount( priority );
+
+		  if ( diff < 0 || ( diff == 0 && worker.entity_count < best.entity_count )){
+
+			  best = worker;
+		  }
 	  }
 
-	  List<RateControlledEntity> ref = high_priority_entities;
+	  return( best );
+  }
+
+  private class
+  Worker
+  {
+	  final int		id;
+	  final String	util_stat;
+
+	  volatile ArrayList<RateControlledEntity> normal_priority_entities = new ArrayList<>();  //copied-on-write
+	  volatile ArrayList<RateControlledEntity> high_priority_entities 	= new ArrayList<>();  //copied-on-write
+
+	  private int next_normal_position = 0;
+	  private int next_high_position = 0;
+
+	  long	loop_count;
+	  long	wait_count;
+	  long	non_progress_count;
+	  long	progress_count;
 
-	  for ( RateControlledEntity e: ref ){
+	  private long	entity_check_count;
+	  private long	last_entity_check_count;
 
-		  if ( e.getConnectionCount( read_waiter ) > 0 ){
+	  final EventWaiter 	read_waiter = new EventWaiter();
 
-			  return( true );
+	  int			entity_count;
+
+	  private long	wait_time;
+	  private long	util_period_start;
+	  private long	util_period_wait;
+
+	  private final MovingImmediateAverage	util_average = AverageFactory.MovingImmediateAverage( 5 );
+
+	  Worker(
+		int		_id )
+	  {
+		  id		= _id;
+		  util_stat	= CoreStats.ST_NET_READ_CONTROL_WORKER_UTIL + "." + id;
+	  }
+
+	  void readProcessorLoop() {
+	    boolean check_high_first = true;
+
+	    util_period_start = SystemTime.getMonotonousTime();
+
+	    while( true ) {
+	      loop_count++;
+
+	      long	loop_start	= SystemTime.getHighPrecisionCounter();
+	      long	loop_wait	= wait_time;
+
+	      try {
+	        if( check_high_first ) {
+	          check_high_first = false;
+	          if( !doHighPriorityRead() ) {
+	            if( !doNormalPriorityRead() ) {
+	            	waitForEvent( hasConnections()?IDLE_SLEEP_TIME:1000 );
+	            }
+	          }
+	        }
+	        else {
+	          check_high_first = true;
+	          if( !doNormalPriorityRead() ) {
+	            if( !doHighPriorityRead() ) {
+	            	waitForEvent( hasConnections()?IDLE_SLEEP_TIME:1000 );
+	            }
+	          }
+	        }
+	      }catch( Throwable t ) {
+	        Debug.out( "readProcessorLoop() EXCEPTION: ", t );
+	      }
+
+	      updateUtilization();
+
+	      loop_time_histogram.record(( SystemTime.getHighPrecisionCounter() - loop_start - ( wait_time - loop_wait ))/1000 );
+	    }
+	  }
+
+	  private void
+	  waitForEvent(
+		long	timeout )
+	  {
+		  long	start = SystemTime.getHighPrecisionCounter();
+
+		  try{
+			  if ( read_waiter.waitForEvent( timeout )){
+
+				  wait_count++;
+			  }
+		  }finally{
+
+			  wait_time += SystemTime.getHighPrecisionCounter() - start;
 		  }
 	  }
 
-	  ref = normal_priority_entities;
+	  private void
+	  updateUtilization()
+	  {
+		  long	now 	= SystemTime.getMonotonousTime();
+		  long	elapsed = now - util_period_start;
+
+		  if ( elapsed >= 1000 ){
 
-	  for ( RateControlledEntity e: ref ){
+			  long	waited = ( wait_time - util_period_wait )/1000000;
 
-		  if ( e.getConnectionCount( read_waiter ) > 0 ){
+			  util_average.update( Math.max( 0, 100 - ( waited*100/elapsed )));
 
-			  return( true );
+			  util_period_start	= now;
+			  util_period_wait	= wait_time;
 		  }
 	  }
 
-	  return( false );
-  }
+	  	/**
+	  	 * @return percentage of time spent processing rather than waiting, averaged over 5 seconds
+	  	 */
 
-  private boolean
-  doNormalPriorityRead()
-  {
-	  return( doRead( getNextReadyNormalPriorityEntity()));
-  }
+	  int
+	  getUtilization()
+	  {
+		  return((int)util_average.getAverage());
+	  }
 
-  private boolean
-  doHighPriorityRead()
-  {
-	  return( doRead( getNextReadyHighPriorityEntity()));
-  }
+	  private boolean
+	  hasConnections()
+	  {
+		  if ( entity_count == 0 ){
 
-  private boolean
-  doRead(
-	  RateControlledEntity	  ready_entity )
-  {
-	  if ( ready_entity != null ){
+			  return( false );
+		  }
 
-		  if ( AGGRESIVE_READ ){
+		  List<RateControlledEntity> ref = high_priority_entities;
 
-			  	// skip over failed readers to find a good one
+		  for ( RateControlledEntity e: ref ){
 
-			  if ( ready_entity.doProcessing( read_waiter, 0 ) > 0 ) {
+			  if ( e.getConnectionCount( read_waiter ) > 0 ){
 
-				  progress_count++;
+				  return( true );
+			  }
+		  }
+
+		  ref = normal_priority_entities;
+
+		  for ( RateControlledEntity e: ref ){
+
+			  if ( e.getConnectionCount( read_waiter ) > 0 ){
 
 				  return( true );
+			  }
+		  }
 
-			  }else{
+		  return( false );
+	  }
+
+	  private boolean
+	  doNormalPriorityRead()
+	  {
+		  return( doRead( getNextReadyNormalPriorityEntity()));
+	  }
+
+	  private boolean
+	  doHighPriorityRead()
+	  {
+		  return( doRead( getNextReadyHighPriorityEntity()));
+	  }
+
+	  private boolean
+	  doRead(
+		  RateControlledEntity	  ready_entity )
+	  {
+		  if ( ready_entity != null ){
+
+			  if ( AGGRESIVE_READ ){
+
+				  	// skip over failed readers to find a good one
+
+				  if ( ready_entity.doProcessing( read_waiter, 0 ) > 0 ) {
+
+					  progress_count++;
 
-				  non_progress_count++;
+					  return( true );
 
-				  if ( entity_check_count - last_entity_check_count >= normal_priority_entities.size() + high_priority_entities.size() ){
+				  }else{
 
-					  last_entity_check_count	= entity_check_count;
+					  non_progress_count++;
 
-					  	// force a wait
+					  if ( entity_check_count - last_entity_check_count >= normal_priority_entities.size() + high_priority_entities.size() ){
 
-					  if ( read_waiter.waitForEvent( IDLE_SLEEP_TIME )){
-		            		wait_count++;
+						  last_entity_check_count	= entity_check_count;
+
+						  	// force a wait
+
+						  waitForEvent( IDLE_SLEEP_TIME );
+
+						  return( false);
 					  }
 
-					  return( false);
+					  return( true );
 				  }
+			  }else{
 
-				  return( true );
+				  return( ready_entity.doProcessing( read_waiter, 0 ) > 0 );
 			  }
-		  }else{
-
-			  return( ready_entity.doProcessing( read_waiter, 0 ) > 0 );
 		  }
+
+		  return false;
 	  }
 
-	  return false;
-  }
 
+	  private RateControlledEntity getNextReadyNormalPriorityEntity() {
+	    ArrayList<RateControlledEntity> ref = normal_priority_entities;
 
-  private RateControlledEntity getNextReadyNormalPriorityEntity() {
-    ArrayList<RateControlledEntity> ref = normal_priority_entities;
+	    int size = ref.size();
+	    int num_checked = 0;
 
-    int size = ref.size();
-    int num_checked = 0;
+	    while( num_checked < size ) {
+	      entity_check_count++;
+	      next_normal_position = next_normal_position >= size ? 0 : next_normal_position;  //make circular
+	      RateControlledEntity entity = ref.get( next_normal_position );
+	      next_normal_position++;
+	      num_checked++;
+	      if( entity.canProcess( read_waiter ) ) {  //is ready
+	        return entity;
+	      }
+	    }
 
-    while( num_checked < size ) {
-      entity_check_count++;
-      next_normal_position = next_normal_position >= size ? 0 : next_normal_position;  //make circular
-      RateControlledEntity entity = ref.get( next_normal_position );
-      next_normal_position++;
-      num_checked++;
-      if( entity.canProcess( read_waiter ) ) {  //is ready
-        return entity;
-      }
-    }
+	    return null;  //none found ready
+	  }
 
-    return null;  //none found ready
-  }
 
+	  private RateControlledEntity getNextReadyHighPriorityEntity() {
+	    ArrayList<RateControlledEntity> ref = high_priority_entities;
 
-  private RateControlledEntity getNextReadyHighPriorityEntity() {
-    ArrayList<RateControlledEntity> ref = high_priority_entities;
+	    int size = ref.size();
+	    int num_checked = 0;
 
-    int size = ref.size();
-    int num_checked = 0;
+	    while( num_checked < size ) {
+	      entity_check_count++;
+	      next_high_position = next_high_position >= size ? 0 : next_high_position;  //make circular
+	      RateControlledEntity entity = ref.get( next_high_position );
+	      next_high_position++;
+	      num_checked++;
+	      if( entity.canProcess( read_waiter ) ) {  //is ready
+	        return entity;
+	      }
+	    }
 
-    while( num_checked < size ) {
-      entity_check_count++;
-      next_high_position = next_high_position >= size ? 0 : next_high_position;  //make circular
-      RateControlledEntity entity = ref.get( next_high_position );
-      next_high_position++;
-      num_checked++;
-      if( entity.canProcess( read_waiter ) ) {  //is ready
-        return entity;
-      }
-    }
+	    return null;  //none found ready
+	  }
 
-    return null;  //none found ready
-  }
+	  int
+	  getEntityCount(
+		int		priority )
+	  {
+		  return( priority == RateControlledEntity.PRIORITY_HIGH?high_priority_entities.size():normal_priority_entities.size());
+	  }
 
+	  	// add and remove are called with entities_mon held
+
+	  void
+	  addEntity(
+		RateControlledEntity	entity )
+	  {
+	      if( entity.getPriority() == RateControlledEntity.PRIORITY_HIGH ) {
+	        //copy-on-write
+	        ArrayList<RateControlledEntity> high_new = new ArrayList<>(high_priority_entities.size() + 1);
+	        high_new.addAll( high_priority_entities );
+	        high_new.add( entity );
+	        high_priority_entities = high_new;
+	      }
+	      else {
+	        //copy-on-write
+	        ArrayList<RateControlledEntity> norm_new = new ArrayList<>(normal_priority_entities.size() + 1);
+	        norm_new.addAll( normal_priority_entities );
+	        norm_new.add( entity );
+	        normal_priority_entities = norm_new;
+	      }
+
+	      entity_count = normal_priority_entities.size() + high_priority_entities.size();
+	  }
 
+	  boolean
+	  removeEntity(
+		RateControlledEntity	entity )
+	  {
+		  boolean found = false;
 
-  /**
-   * Add the given entity to the controller for read processing.
-   * @param entity to process reads for
-   */
-  public void addReadEntity( RateControlledEntity entity ) {
-    try {  entities_mon.enter();
-      if( entity.getPriority() == RateControlledEntity.PRIORITY_HIGH ) {
-        //copy-on-write
-        ArrayList<RateControlledEntity> high_new = new ArrayList<>(high_priority_entities.size() + 1);
-        high_new.addAll( high_priority_entities );
-        high_new.add( entity );
-        high_priority_entities = high_new;
-      }
-      else {
-        //copy-on-write
-        ArrayList<RateControlledEntity> norm_new = new ArrayList<>(normal_priority_entities.size() + 1);
-        norm_new.addAll( normal_priority_entities );
-        norm_new.add( entity );
-        normal_priority_entities = norm_new;
-      }
+	      if( entity.getPriority() == RateControlledEntity.PRIORITY_HIGH ) {
+	        //copy-on-write
+	        ArrayList<RateControlledEntity> high_new = new ArrayList<>(high_priority_entities);
+	        if ( high_new.remove( entity )){
 
-      entity_count = normal_priority_entities.size() + high_priority_entities.size();
-    }
-    finally {  entities_mon.exit();  }
+	        	high_priority_entities = high_new;
 
-    read_waiter.eventOccurred();
-  }
+	        	found = true;
+	        }
+	      }
+	      else {
+	        //copy-on-write
+	        ArrayList<RateControlledEntity> norm_new = new ArrayList<>(normal_priority_entities);
 
+	        if ( norm_new.remove( entity )){
 
-  /**
-   * Remove the given entity from the controller.
-   * @param entity to remove from read processing
-   */
-  public boolean removeReadEntity( RateControlledEntity entity ) {
-	boolean found = false;
-    try {  entities_mon.enter();
-      if( entity.getPriority() == RateControlledEntity.PRIORITY_HIGH ) {
-        //copy-on-write
-        ArrayList<RateControlledEntity> high_new = new ArrayList<>(high_priority_entities);
-        if ( high_new.remove( entity )){
-        	
-        	high_priority_entities = high_new;
-        	
-        	found = true;
-        }else{
-        	Debug.out( "entity not found" );
-        }
-      }
-      else {
-        //copy-on-write
-        ArrayList<RateControlledEntity> norm_new = new ArrayList<>(normal_priority_entities);
-       
-        if ( norm_new.remove( entity )){
-        
-        	normal_priority_entities = norm_new;
-        	
-        	found = true;
-        }else{
-        	Debug.out( "entity not found" );
-        }
-      }
+	        	normal_priority_entities = norm_new;
 
-      entity_count = normal_priority_entities.size() + high_priority_entities.size();
-    }
-    finally {  entities_mon.exit();  }
-    
-    return( found );
-  }
+	        	found = true;
+	        }
+	      }
 
-  public int
-  getEntityCount()
-  {
-	  return( entity_count );
+	      entity_count = normal_priority_entities.size() + high_priority_entities.size();
+
+	      return( found );
+	  }
   }
 }
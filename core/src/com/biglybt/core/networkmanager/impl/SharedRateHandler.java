@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.networkmanager.impl;
+
+import com.biglybt.core.networkmanager.RateHandler;
+
+/**
+ * Splits one rate handler between entities that are processed by different threads. Each entity
+ * reserves its allowance before processing and keeps it until it reports the bytes processed, so
+ * the same bytes can't be handed to several entities within one cycle.
+ */
+
+class
+SharedRateHandler
+{
+	private final RateHandler	handler;
+
+	private int					reserved;	// guarded by this
+
+	SharedRateHandler(
+		RateHandler		_handler )
+	{
+		handler	= _handler;
+	}
+
+	RateHandler
+	createHandler()
+	{
+		return(
+			new RateHandler()
+			{
+				private int	own_reservation;	// guarded by the SharedRateHandler
+
+				@Override
+				public int[]
+				getCurrentNumBytesAllowed()
+				{
+					synchronized( SharedRateHandler.this ){
+
+						int[]	allowed = handler.getCurrentNumBytesAllowed();
+
+						allowed[0] = Math.max( 0, allowed[0] - ( reserved - own_reservation ));
+
+						return( allowed );
+					}
+				}
+
+				@Override
+				public int[]
+				reserveBytesAllowed()
+				{
+					synchronized( SharedRateHandler.this ){
+
+						int[]	allowed = getCurrentNumBytesAllowed();
+
+						reserved += allowed[0] - own_reservation;
+
+						own_reservation = allowed[0];
+
+						return( allowed );
+					}
+				}
+
+				@Override
+				public void
+				releaseBytesAllowed()
+				{
+					synchronized( SharedRateHandler.this ){
+
+						reserved -= own_reservation;
+
+						own_reservation = 0;
+					}
+				}
+
+				@Override
+				public void
+				bytesProcessed(
+					int		data_bytes,
+					int		protocol_bytes )
+				{
+					synchronized( SharedRateHandler.this ){
+
+						releaseBytesAllowed();
+
+						handler.bytesProcessed( data_bytes, protocol_bytes );
+					}
+				}
+			});
+	}
+}
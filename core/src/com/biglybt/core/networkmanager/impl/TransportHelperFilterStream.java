@@ -22,6 +22,7 @@ package com.biglybt.core.networkmanager.impl;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import com.biglybt.core.networkmanager.NetworkManager;
 import com.biglybt.core.util.DirectByteBuffer;
 import com.biglybt.core.util.DirectByteBufferPool;
 
@@ -180,34 +181,63 @@ TransportHelperFilterStream
 
 			// problem - we must only crypt stuff once and when crypted it *has*
 			// to be sent (else the stream will get out of sync).
-			// so we have to turn this into single buffer operations
+			// so we crypt as many whole source buffers as fit in the gather budget into a
+			// single target buffer and write that, retaining any unsent crypted remainder
 
-		for (int i=array_offset;i<array_offset+length;i++){
+		int	gather_limit = NetworkManager.getWriteGatherMaxBytes( NetworkManager.getMinMssSize());
 
-			ByteBuffer	source_buffer = buffers[i];
+		int	next = array_offset;
+		int	end	 = array_offset + length;
 
-			int	position 	= source_buffer.position();
-			int	limit		= source_buffer.limit();
+		while( next < end ){
 
-			int	size = limit - position;
+			int	first 		= next;
+			int	crypt_size	= 0;
 
-			if ( size == 0 ){
+			while( next < end ){
+
+				int	size = buffers[next].remaining();
+
+				if ( crypt_size > 0 && crypt_size + size > gather_limit ){
+
+					break;
+				}
+
+				crypt_size += size;
+
+				next++;
+			}
+
+			if ( crypt_size == 0 ){
 
 				continue;
 			}
 
-			DirectByteBuffer	target_buffer_db = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_NET_CRYPT,  size );
+			int[]	positions = new int[ next - first ];
+
+			for (int i=first;i<next;i++){
+
+				positions[i-first] = buffers[i].position();
+			}
+
+			DirectByteBuffer	target_buffer_db = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_NET_CRYPT,  crypt_size );
 
 			try{
 				ByteBuffer	target_buffer = target_buffer_db.getBuffer( DirectByteBuffer.SS_NET );
 
-				cryptoOut( source_buffer, target_buffer );
+				for (int i=first;i<next;i++){
+
+					if ( buffers[i].hasRemaining()){
+
+						cryptoOut( buffers[i], target_buffer );
+					}
+				}
 
 				target_buffer.position( 0 );
 
 				boolean	partial_write = false;
 
-				for (int j=i+1;j<array_offset+length;j++){
+				for (int j=next;j<end;j++){
 
 					if ( buffers[j].hasRemaining()){
 
@@ -219,9 +249,31 @@ TransportHelperFilterStream
 
 				total_written += written;
 
-				source_buffer.position( position + written );
+					// the sources have been fully consumed by the crypt, wind them back to
+					// reflect what was actually sent
 
-				if ( written < size ){
+				int	sent = written;
+
+				for (int i=first;i<next;i++){
+
+					ByteBuffer	source_buffer = buffers[i];
+
+					int	position	= positions[i-first];
+					int	size		= source_buffer.limit() - position;
+
+					if ( sent >= size ){
+
+						sent -= size;
+
+					}else{
+
+						source_buffer.position( position + sent );
+
+						sent = 0;
+					}
+				}
+
+				if ( written < crypt_size ){
 
 					write_buffer_pending_db	= target_buffer_db;
 
@@ -234,7 +286,15 @@ TransportHelperFilterStream
 
 						write_buffer_pending_byte = ByteBuffer.wrap(new byte[]{target_buffer.get()});
 
-						source_buffer.get();
+						for (int i=first;i<next;i++){
+
+							if ( buffers[i].hasRemaining()){
+
+								buffers[i].get();
+
+								break;
+							}
+						}
 
 						total_written++;
 					}
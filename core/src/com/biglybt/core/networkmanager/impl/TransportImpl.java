@@ -29,6 +29,7 @@ import com.biglybt.core.networkmanager.TransportStartpoint;
 import com.biglybt.core.proxy.AEProxyFactory.PluginProxy;
 import com.biglybt.core.util.AEDiagnostics;
 import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.FileRegion;
 import com.biglybt.core.util.SystemTime;
 import com.biglybt.core.util.TimeFormatter;
 
@@ -313,6 +314,47 @@ TransportImpl
 	  	return written;
 	}
 
+	@Override
+	public long
+	transferFileRegion(
+		FileRegion		region,
+		int				max_bytes )
+
+		throws IOException
+	{
+	  	if ( write_select_failure != null ){
+
+	  		throw new IOException( "write_select_failure: " + write_select_failure.getMessage() );
+	  	}
+
+	  	TransportHelperFilter	current_filter = filter;
+
+	  	if ( current_filter == null )  return 0;
+
+	  	long written = transferFileRegionSupport( current_filter, region, max_bytes );
+
+	  	if ( stats != null )  stats.bytesWritten( (int)written );
+
+	  	if ( written < 1 )  requestWriteSelect();
+
+	  	return written;
+	}
+
+		/**
+		 * Override along with isFileRegionCapable for transports that can send from files directly
+		 */
+
+	protected long
+	transferFileRegionSupport(
+		TransportHelperFilter	filter,
+		FileRegion				region,
+		int						max_bytes )
+
+		throws IOException
+	{
+		throw( new IOException( "File regions not supported" ));
+	}
+
 	  /**
 	   * Read data from the transport into the given buffers.
 	   * NOTE: Works like ScatteringByteChannel.
@@ -19,10 +19,15 @@
 
 package com.biglybt.core.networkmanager.impl;
 
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.biglybt.core.stats.CoreStats;
+import com.biglybt.core.stats.CoreStatsProvider;
 import com.biglybt.core.util.Timer;
 import com.biglybt.core.util.TimerEvent;
 import com.biglybt.core.util.TimerEventPerformer;
@@ -32,6 +37,48 @@ public class TransportStats {
   private static final int PRINT_INTERVAL = 60*1000;
   private static final int GRANULARITY = 10;  //bytes
 
+  	// socket level write counters, always maintained so that the effect of write coalescing
+  	// can be seen without enabling the size tracing
+
+  private static final AtomicLong	channel_write_calls		= new AtomicLong();
+  private static final AtomicLong	channel_write_buffers	= new AtomicLong();
+  private static final AtomicLong	channel_write_bytes		= new AtomicLong();
+
+  static{
+	  Set	types = new HashSet();
+
+	  types.add( CoreStats.ST_NET_TCP_WRITE_CALL_COUNT );
+	  types.add( CoreStats.ST_NET_TCP_WRITE_BUFFER_COUNT );
+	  types.add( CoreStats.ST_NET_TCP_WRITE_BYTE_COUNT );
+
+	  CoreStats.registerProvider(
+		  types,
+		  new CoreStatsProvider()
+		  {
+			  @Override
+			  public void
+			  updateStats(
+				  Set		types,
+				  Map		values )
+			  {
+				  if ( types.contains( CoreStats.ST_NET_TCP_WRITE_CALL_COUNT )){
+
+					  values.put( CoreStats.ST_NET_TCP_WRITE_CALL_COUNT, new Long( channel_write_calls.get()));
+				  }
+
+				  if ( types.contains( CoreStats.ST_NET_TCP_WRITE_BUFFER_COUNT )){
+
+					  values.put( CoreStats.ST_NET_TCP_WRITE_BUFFER_COUNT, new Long( channel_write_buffers.get()));
+				  }
+
+				  if ( types.contains( CoreStats.ST_NET_TCP_WRITE_BYTE_COUNT )){
+
+					  values.put( CoreStats.ST_NET_TCP_WRITE_BYTE_COUNT, new Long( channel_write_bytes.get()));
+				  }
+			  }
+		  });
+  }
+
   private final TreeMap read_sizes = new TreeMap();
   private final TreeMap write_sizes = new TreeMap();
 
@@ -53,6 +100,18 @@ public class TransportStats {
   }
 
 
+  /**
+   * Records a single write system call on a socket channel.
+   * @param num_buffers number of buffers gathered into the call
+   * @param num_bytes_written bytes accepted by the socket
+   */
+  public static void channelWrite( int num_buffers, long num_bytes_written ) {
+    channel_write_calls.incrementAndGet();
+    channel_write_buffers.addAndGet( num_buffers );
+    if( num_bytes_written > 0 )  channel_write_bytes.addAndGet( num_bytes_written );
+  }
+
+
   public void bytesRead( int num_bytes_read ) {
     total_reads++;
     updateSizes( read_sizes, num_bytes_read );
@@ -93,6 +152,14 @@ public class TransportStats {
 
     System.out.println( "\n***** TCP SOCKET WRITE SIZE STATS *****" );
     printSizes( write_sizes, total_writes );
+
+    long calls = channel_write_calls.get();
+    long bytes = channel_write_bytes.get();
+
+    if( calls > 0 && bytes > 0 ) {
+      System.out.println( "\n***** TCP SOCKET WRITE CALLS *****" );
+      System.out.println( "calls=" +calls+ ", buffers/call=" +(channel_write_buffers.get() / calls)+ ", bytes/call=" +(bytes / calls)+ ", calls/MB=" +((calls * 1024 * 1024) / bytes) );
+    }
     System.out.println( "------------------------------" );
   }
 
@@ -25,6 +25,7 @@ import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.networkmanager.EventWaiter;
 import com.biglybt.core.networkmanager.NetworkManager;
+import com.biglybt.core.stats.CoreMetrics;
 import com.biglybt.core.stats.CoreStats;
 import com.biglybt.core.stats.CoreStatsProvider;
 import com.biglybt.core.util.*;
@@ -34,6 +35,10 @@ import com.biglybt.core.util.average.MovingImmediateAverage;
 
 /**
  * Processes writes of write-entities and handles the write selector.
+ * <p>
+ * Entities are sharded across a configurable number of worker threads, each with its own
+ * entity lists, booster state and event waiter. Rate limits are unaffected as they are
+ * enforced by the entities' shared rate handlers.
  */
 public class WriteController implements CoreStatsProvider, AEDiagnosticsEvidenceGenerator {
 
@@ -62,40 +67,31 @@ public class WriteController implements CoreStatsProvider, AEDiagnosticsEvidence
 			});
 	}
 
-  volatile ArrayList<RateControlledEntity> normal_priority_entities = new ArrayList<>();  //copied-on-write
-  volatile ArrayList<RateControlledEntity> boosted_priority_entities = new ArrayList<>();  //copied-on-write
-  volatile ArrayList<RateControlledEntity> high_priority_entities = new ArrayList<>();  //copied-on-write
-  private final AEMonitor entities_mon = new AEMonitor( "WriteController:EM" );
-  private int next_normal_position = 0;
-  private int next_boost_position = 0;
-  private int next_high_position = 0;
+	private static final int	MAX_WORKERS	= 16;
 
+	private static int	next_worker_id;
 
-  private long	booster_process_time;
-  private int	booster_normal_written;
-  private int	booster_boost_written;
-  private int	booster_stat_index;
-  private final int[]	booster_normal_writes 	= new int[5];
-  private final int[]	booster_gifts 			= new int[5];
+	static final CoreMetrics.Histogram	loop_time_histogram =
+		CoreMetrics.getHistogram( CoreMetrics.MT_NET_WRITE_CONTROL_LOOP_TIME, "Time spent processing per write controller loop, excluding waits" );
 
-  private MovingImmediateAverage	booster_boost_average 	= AverageFactory.MovingImmediateAverage( 5 );
-  private MovingImmediateAverage	booster_normal_average 	= AverageFactory.MovingImmediateAverage( 5 );
-  private MovingImmediateAverage	booster_boost_avail_average 	= AverageFactory.MovingImmediateAverage( 5 );
-  private MovingImmediateAverage	booster_normal_avail_average 	= AverageFactory.MovingImmediateAverage( 5 );
-  private MovingImmediateAverage	booster_boost_data_average 	= AverageFactory.MovingImmediateAverage( 5 );
-  private MovingImmediateAverage	booster_normal_data_average 	= AverageFactory.MovingImmediateAverage( 5 );
+		/**
+		 * Number of processor threads each controller shards its entities across. Read once as
+		 * the threads are created up front.
+		 */
 
-  private int aggressive_np_normal_priority_count;
-  private int aggressive_np_high_priority_count;
+	public static int
+	getWorkerCount()
+	{
+		int	num = COConfigurationManager.getIntParameter( "network.control.write.worker.count" );
+
+		return( Math.max( 1, Math.min( num, MAX_WORKERS )));
+	}
 
-  private long	process_loop_time;
-  private long	wait_count;
-  private long	progress_count;
-  private long	non_progress_count;
+  private final Worker[]	workers;
 
-  private final EventWaiter 	write_waiter = new EventWaiter();
+  private final Map<RateControlledEntity,Worker>	entity_workers = new IdentityHashMap<>();	// guarded by entities_mon
 
-  private NetworkManager	net_man;
+  final AEMonitor entities_mon = new AEMonitor( "WriteController:EM" );
 
   private int	entity_count = 0;
 
@@ -104,19 +100,37 @@ public class WriteController implements CoreStatsProvider, AEDiagnosticsEvidence
    */
   public WriteController() {
 
-    //start write handler processing
-    AEThread2 write_processor_thread = new AEThread2( "WriteController:WriteProcessor" ) {
-      @Override
-      public void run() {
-        writeProcessorLoop();
-      }
-    };
- 
-    write_processor_thread.setPriority( Thread.MAX_PRIORITY - 1 );
-    write_processor_thread.start();
+	int	num_workers = getWorkerCount();
+
+	workers = new Worker[ num_workers ];
 
     Set	types = new HashSet();
 
+    for ( int i=0;i<num_workers;i++){
+
+    	int	id;
+
+    	synchronized( WriteController.class ){
+
+    		id = next_worker_id++;
+    	}
+
+    	Worker worker = workers[i] = new Worker( id );
+
+        //start write handler processing
+        AEThread2 write_processor_thread = new AEThread2( num_workers==1?"WriteController:WriteProcessor":("WriteController:WriteProcessor:" + i )) {
+          @Override
+          public void run() {
+            worker.writeProcessorLoop();
+          }
+        };
+
+        write_processor_thread.setPriority( Thread.MAX_PRIORITY - 1 );
+        write_processor_thread.start();
+
+        types.add( worker.util_stat );
+    }
+
     types.add( CoreStats.ST_NET_WRITE_CONTROL_WAIT_COUNT );
     types.add( CoreStats.ST_NET_WRITE_CONTROL_NP_COUNT );
     types.add( CoreStats.ST_NET_WRITE_CONTROL_P_COUNT );
@@ -135,23 +149,24 @@ public class WriteController implements CoreStatsProvider, AEDiagnosticsEvidence
   public String
   getBiasDetails()
   {
-	  if ( boosted_priority_entities.size() == 0 ){
-		  
-		  return( "" );
-		  
-	  }else{
-		  
-		  return(
-			"n=" + normal_priority_entities.size()+" "+
-				DisplayFormatters.formatByteCountToKiBEtc((long)booster_normal_data_average.getAverage()) + "," +
-				DisplayFormatters.formatByteCountToKiBEtcPerSec((long)booster_normal_average.getAverage()) + "," +
-				DisplayFormatters.formatByteCountToKiBEtcPerSec((long)booster_normal_avail_average.getAverage()) + ";" +
-			"b=" + boosted_priority_entities.size()+" "+
-				DisplayFormatters.formatByteCountToKiBEtc((long)booster_boost_data_average.getAverage()) + "," +
-				DisplayFormatters.formatByteCountToKiBEtcPerSec((long)booster_boost_average.getAverage()) + "," +
-				DisplayFormatters.formatByteCountToKiBEtcPerSec((long)booster_boost_avail_average.getAverage()) + ";" +
-			"h=" + high_priority_entities.size());
+	  if ( workers.length == 1 ){
+
+		  return( workers[0].getBiasDetails());
+	  }
+
+	  String	str = "";
+
+	  for ( Worker worker: workers ){
+
+		  String	details = worker.getBiasDetails();
+
+		  if ( details.length() > 0 ){
+
+			  str += ( str.length()==0?"":" | " ) + details;
+		  }
 	  }
+
+	  return( str );
   }
   
 	@Override
@@ -164,37 +179,45 @@ public class WriteController implements CoreStatsProvider, AEDiagnosticsEvidence
 		try{
 			writer.indent();
 
-			ArrayList ref = normal_priority_entities;
+			for ( Worker worker: workers ){
+
+				if ( workers.length > 1 ){
 
-			writer.println( "normal - " + ref.size());
+					writer.println( "worker " + worker.id + " - util=" + worker.getUtilization() + "%" );
+				}
 
-			for (int i=0;i<ref.size();i++){
+				ArrayList<RateControlledEntity> ref = worker.normal_priority_entities;
 
-				RateControlledEntity entity = (RateControlledEntity)ref.get( i );
+				writer.println( "normal - " + ref.size());
 
-				writer.println( entity.getString());
-			}
+				for (int i=0;i<ref.size();i++){
 
-			ref = boosted_priority_entities;
+					RateControlledEntity entity = (RateControlledEntity)ref.get( i );
 
-			writer.println( "boosted - " + ref.size());
+					writer.println( entity.getString());
+				}
 
-			for (int i=0;i<ref.size();i++){
+				ref = worker.boosted_priority_entities;
 
-				RateControlledEntity entity = (RateControlledEntity)ref.get( i );
+				writer.println( "boosted - " + ref.size());
 
-				writer.println( entity.getString());
-			}
+				for (int i=0;i<ref.size();i++){
+
+					RateControlledEntity entity = (RateControlledEntity)ref.get( i );
+
+					writer.println( entity.getString());
+				}
 
-			ref = high_priority_entities;
+				ref = worker.high_priority_entities;
 
-			writer.println( "priority - " + ref.size());
+				writer.println( "priority - " + ref.size());
 
-			for (int i=0;i<ref.size();i++){
+				for (int i=0;i<ref.size();i++){
 
-				RateControlledEntity entity = (RateControlledEntity)ref.get( i );
+					RateControlledEntity entity = (RateControlledEntity)ref.get( i );
 
-				writer.println( entity.getString());
+					writer.println( entity.getString());
+				}
 			}
 		}finally{
 
@@ -208,6 +231,22 @@ public class WriteController implements CoreStatsProvider, AEDiagnosticsEvidence
 		  Set		types,
 		  Map		values )
   {
+	  long	wait_count			= 0;
+	  long	non_progress_count	= 0;
+	  long	progress_count		= 0;
+
+	  for ( Worker worker: workers ){
+
+		  wait_count			+= worker.wait_count;
+		  non_progress_count	+= worker.non_progress_count;
+		  progress_count		+= worker.progress_count;
+
+		  if ( types.contains( worker.util_stat )){
+
+			  values.put( worker.util_stat, new Long( worker.getUtilization()));
+		  }
+	  }
+
 	  if ( types.contains( CoreStats.ST_NET_WRITE_CONTROL_WAIT_COUNT )){
 
 		  values.put( CoreStats.ST_NET_WRITE_CONTROL_WAIT_COUNT, new Long( wait_count ));
@@ -225,7 +264,7 @@ public class WriteController implements CoreStatsProvider, AEDiagnosticsEvidence
 
 	  if ( types.contains( CoreStats.ST_NET_WRITE_CONTROL_ENTITY_COUNT )){
 
-		  values.put( CoreStats.ST_NET_WRITE_CONTROL_ENTITY_COUNT, new Long( high_priority_entities.size() + boosted_priority_entities.size() + normal_priority_entities.size()));
+		  values.put( CoreStats.ST_NET_WRITE_CONTROL_ENTITY_COUNT, new Long( entity_count ));
 	  }
 
 	  if ( 	types.contains( CoreStats.ST_NET_WRITE_CONTROL_CON_COUNT ) ||
@@ -236,21 +275,26 @@ public class WriteController implements CoreStatsProvider, AEDiagnosticsEvidence
 		  int	ready_connections	= 0;
 		  int	connections			= 0;
 
-		  ArrayList[] refs = { normal_priority_entities, boosted_priority_entities, high_priority_entities };
+		  for ( Worker worker: workers ){
 
-		  for (int i=0;i<refs.length;i++){
+			  List<ArrayList<RateControlledEntity>> refs = new ArrayList<>( 3 );
 
-			  ArrayList	ref = refs[i];
+			  refs.add( worker.normal_priority_entities );
+			  refs.add( worker.boosted_priority_entities );
+			  refs.add( worker.high_priority_entities );
 
-			  for (int j=0;j<ref.size();j++){
+			  for ( ArrayList<RateControlledEntity> ref: refs ){
 
-			      RateControlledEntity entity = (RateControlledEntity)ref.get( j );
+				  for (int j=0;j<ref.size();j++){
 
-			      connections 		+= entity.getConnectionCount( write_waiter );
+				      RateControlledEntity entity = ref.get( j );
 
-			      ready_connections += entity.getReadyConnectionCount( write_waiter );
+				      connections 		+= entity.getConnectionCount( worker.write_waiter );
 
-			      ready_bytes		+= entity.getBytesReadyToWrite();
+				      ready_connections += entity.getReadyConnectionCount( worker.write_waiter );
+
+				      ready_bytes		+= entity.getBytesReadyToWrite();
+				  }
 			  }
 		  }
 
@@ -260,594 +304,796 @@ public class WriteController implements CoreStatsProvider, AEDiagnosticsEvidence
 	  }
   }
 
-  void writeProcessorLoop() {
-    boolean check_high_first = true;
+  /**
+   * Add the given entity to the controller for write processing.
+   * @param entity to process writes for
+   */
+  public void addWriteEntity( RateControlledEntity entity ) {
+	Worker	worker;
+
+    try {  entities_mon.enter();
+
+      worker = selectWorker( workers, entity.getPriority());
+
+      worker.addEntity( entity );
+
+      entity_workers.put( entity, worker );
+
+      entity_count = entity_workers.size();
+    }
+    finally {  entities_mon.exit();  }
+
+    worker.write_waiter.eventOccurred();
+  }
+
+
+  /**
+   * Remove the given entity from the controller.
+   * @param entity to remove from write processing
+   */
+  public boolean removeWriteEntity( RateControlledEntity entity ) {
+	boolean found = false;
+    try {  entities_mon.enter();
+
+      Worker worker = entity_workers.remove( entity );
+
+      if ( worker != null && worker.removeEntity( entity )){
+
+    	  found = true;
+
+      }else{
+
+    	  Debug.out( "entity not found" );
+      }
+
+      entity_count = entity_workers.size();
+    }
+    finally {  entities_mon.exit();  }
+    
+    return( found );
+  }
+
+  public int
+  getEntityCount()
+  {
+	  return( entity_count );
+  }
+
+  	/**
+  	 * Picks the worker with the fewest entities of the given priority so that the high priority
+  	 * pool entities, which typically carry most of the connections, end up on different threads
+  	 */
+
+  private static Worker
+  selectWorker(
+	Worker[]	workers,
+	int			priority )
+  {
+	  Worker	best = workers[0];
+
+	  for ( int i=1;i<workers.length;i++){
+
+		  Worker	worker = workers[i];
+
+		  int	diff = worker.getEntityCount( priority ) - best.getEntityCount( priority );
+
+		  if ( diff < 0 || ( diff == 0 && worker.entity_count < best.entity_count )){
+
+			  best = worker;
+		  }
+	  }
+
+	  return( best );
+  }
+
+  private class
+  Worker
+  {
+	  final int		id;
+	  final String	util_stat;
+
+	  volatile ArrayList<RateControlledEntity> normal_priority_entities = new ArrayList<>();  //copied-on-write
+	  volatile ArrayList<RateControlledEntity> boosted_priority_entities = new ArrayList<>();  //copied-on-write
+	  volatile ArrayList<RateControlledEntity> high_priority_entities = new ArrayList<>();  //copied-on-write
+	  private int next_normal_position = 0;
+	  private int next_boost_position = 0;
+	  private int next_high_position = 0;
+
+
+	  private long	booster_process_time;
+	  private int	booster_normal_written;
+	  private int	booster_boost_written;
+	  private int	booster_stat_index;
+	  private final int[]	booster_normal_writes 	= new int[5];
+	  private final int[]	booster_gifts 			= new int[5];
+
+	  private MovingImmediateAverage	booster_boost_average 	= AverageFactory.MovingImmediateAverage( 5 );
+	  private MovingImmediateAverage	booster_normal_average 	= AverageFactory.MovingImmediateAverage( 5 );
+	  private MovingImmediateAverage	booster_boost_avail_average 	= AverageFactory.MovingImmediateAverage( 5 );
+	  private MovingImmediateAverage	booster_normal_avail_average 	= AverageFactory.MovingImmediateAverage( 5 );
+	  private MovingImmediateAverage	booster_boost_data_average 	= AverageFactory.MovingImmediateAverage( 5 );
+	  private MovingImmediateAverage	booster_normal_data_average 	= AverageFactory.MovingImmediateAverage( 5 );
+
+	  private int aggressive_np_normal_priority_count;
+	  private int aggressive_np_high_priority_count;
+
+	  private long	process_loop_time;
+	  long	wait_count;
+	  long	progress_count;
+	  long	non_progress_count;
+
+	  final EventWaiter 	write_waiter = new EventWaiter();
+
+	  private NetworkManager	net_man;
+
+	  int	entity_count = 0;
+
+	  private long	wait_time;
+	  private long	util_period_start;
+	  private long	util_period_wait;
+
+	  private final MovingImmediateAverage	util_average = AverageFactory.MovingImmediateAverage( 5 );
+
+	  Worker(
+		int		_id )
+	  {
+		  id		= _id;
+		  util_stat	= CoreStats.ST_NET_WRITE_CONTROL_WORKER_UTIL + "." + id;
+	  }
+
+	  private void
+	  waitForEvent(
+		long	timeout )
+	  {
+		  long	start = SystemTime.getHighPrecisionCounter();
+
+		  try{
+			  if ( write_waiter.waitForEvent( timeout )){
+
+				  wait_count++;
+			  }
+		  }finally{
+
+			  wait_time += SystemTime.getHighPrecisionCounter() - start;
+		  }
+	  }
+
+	  private void
+	  updateUtilization()
+	  {
+		  long	elapsed = process_loop_time - util_period_start;
+
+		  if ( elapsed >= 1000 ){
+
+			  long	waited = ( wait_time - util_period_wait )/1000000;
+
+			  util_average.update( Math.max( 0, 100 - ( waited*100/elapsed )));
+
+			  util_period_start	= process_loop_time;
+			  util_period_wait	= wait_time;
+		  }
+	  }
+
+	  	/**
+	  	 * @return percentage of time spent processing rather than waiting, averaged over 5 seconds
+	  	 */
+
+	  int
+	  getUtilization()
+	  {
+		  return((int)util_average.getAverage());
+	  }
+
+	  public String
+	  getBiasDetails()
+	  {
+		  if ( boosted_priority_entities.size() == 0 ){
+		  
+			  return( "" );
+		  
+		  }else{
+		  
+			  return(
+				"n=" + normal_priority_entities.size()+" "+
+					DisplayFormatters.formatByteCountToKiBEtc((long)booster_normal_data_average.getAverage()) + "," +
+					DisplayFormatters.formatByteCountToKiBEtcPerSec((long)booster_normal_average.getAverage()) + "," +
+					DisplayFormatters.formatByteCountToKiBEtcPerSec((long)booster_normal_avail_average.getAverage()) + ";" +
+				"b=" + boosted_priority_entities.size()+" "+
+					DisplayFormatters.formatByteCountToKiBEtc((long)booster_boost_data_average.getAverage()) + "," +
+					DisplayFormatters.formatByteCountToKiBEtcPerSec((long)booster_boost_average.getAverage()) + "," +
+					DisplayFormatters.formatByteCountToKiBEtcPerSec((long)booster_boost_avail_average.getAverage()) + ";" +
+				"h=" + high_priority_entities.size());
+		  }
+	  }
+
+	  void writeProcessorLoop() {
+	    boolean check_high_first = true;
 
-    long	last_check = SystemTime.getMonotonousTime();
+	    long	last_check = SystemTime.getMonotonousTime();
 
-    net_man = NetworkManager.getSingleton();
+	    net_man = NetworkManager.getSingleton();
 
-    int	tick_count = 0;
+	    util_period_start = last_check;
+
+	    int	tick_count = 0;
     
-    while( true ) {
+	    while( true ) {
+
+	      process_loop_time = SystemTime.getMonotonousTime();
 
-      process_loop_time = SystemTime.getMonotonousTime();
+	      tick_count++;
 
-      tick_count++;
+	      long	loop_start	= SystemTime.getHighPrecisionCounter();
+	      long	loop_wait	= wait_time;
       
-      try {
-        if( check_high_first ) {
-          check_high_first = false;
-          if( !doHighPriorityWrite() ) {
-            if( !doNormalPriorityWrite( tick_count ) ) {
-              if ( write_waiter.waitForEvent( hasConnections()?IDLE_SLEEP_TIME:1000 )){
-            	  wait_count++;
-              }
-            }
-          }
-        }
-        else {
-          check_high_first = true;
-          if( !doNormalPriorityWrite( tick_count ) ) {
-            if( !doHighPriorityWrite() ) {
-            	if ( write_waiter.waitForEvent( hasConnections()?IDLE_SLEEP_TIME:1000 )){
-            		wait_count++;
-            	}
-            }
-          }
-        }
-      }catch( Throwable t ){
+	      try {
+	        if( check_high_first ) {
+	          check_high_first = false;
+	          if( !doHighPriorityWrite() ) {
+	            if( !doNormalPriorityWrite( tick_count ) ) {
+	              waitForEvent( hasConnections()?IDLE_SLEEP_TIME:1000 );
+	            }
+	          }
+	        }
+	        else {
+	          check_high_first = true;
+	          if( !doNormalPriorityWrite( tick_count ) ) {
+	            if( !doHighPriorityWrite() ) {
+	            	waitForEvent( hasConnections()?IDLE_SLEEP_TIME:1000 );
+	            }
+	          }
+	        }
+	      }catch( Throwable t ){
     	  
-        Debug.out( "writeProcessorLoop() EXCEPTION: ", t );
-      }
+	        Debug.out( "writeProcessorLoop() EXCEPTION: ", t );
+	      }
 
-      if ( process_loop_time - last_check > 5000 ){
+	      updateUtilization();
 
-    	  last_check = process_loop_time;
+	      loop_time_histogram.record(( SystemTime.getHighPrecisionCounter() - loop_start - ( wait_time - loop_wait ))/1000 );
 
-    	  boolean	changed = false;
+	      if ( process_loop_time - last_check > 5000 ){
 
-    	  ArrayList<RateControlledEntity> ref = normal_priority_entities;
+	    	  last_check = process_loop_time;
 
-    	  for ( RateControlledEntity e: ref ){
+	    	  boolean	changed = false;
 
-    		 if ( e.getPriorityBoost()){
+	    	  ArrayList<RateControlledEntity> ref = normal_priority_entities;
 
-    			 changed = true;
+	    	  for ( RateControlledEntity e: ref ){
 
-    			 break;
-    		 }
-    	  }
+	    		 if ( e.getPriorityBoost()){
 
-    	  if ( !changed ){
+	    			 changed = true;
 
-    	  	 ref = boosted_priority_entities;
+	    			 break;
+	    		 }
+	    	  }
 
-        	 for ( RateControlledEntity e: ref ){
+	    	  if ( !changed ){
 
-        		 if ( !e.getPriorityBoost()){
+	    	  	 ref = boosted_priority_entities;
 
-        			 changed = true;
+	        	 for ( RateControlledEntity e: ref ){
 
-        			 break;
-        		 }
-        	  }
-    	  }
+	        		 if ( !e.getPriorityBoost()){
 
-    	  if ( changed ){
+	        			 changed = true;
 
- 		    try{
- 		    	entities_mon.enter();
+	        			 break;
+	        		 }
+	        	  }
+	    	  }
 
- 		    	ArrayList<RateControlledEntity> new_normal 	= new ArrayList<>();
- 		    	ArrayList<RateControlledEntity> new_boosted = new ArrayList<>();
+	    	  if ( changed ){
 
- 		    	for ( RateControlledEntity e: normal_priority_entities ){
+	 		    try{
+	 		    	entities_mon.enter();
 
- 		    		if ( e.getPriorityBoost()){
+	 		    	ArrayList<RateControlledEntity> new_normal 	= new ArrayList<>();
+	 		    	ArrayList<RateControlledEntity> new_boosted = new ArrayList<>();
 
- 		    			new_boosted.add( e );
+	 		    	for ( RateControlledEntity e: normal_priority_entities ){
 
- 		    		}else{
+	 		    		if ( e.getPriorityBoost()){
 
- 		    			new_normal.add( e );
- 		    		}
- 		    	}
+	 		    			new_boosted.add( e );
 
-		    	for ( RateControlledEntity e: boosted_priority_entities ){
+	 		    		}else{
 
- 		    		if ( e.getPriorityBoost()){
+	 		    			new_normal.add( e );
+	 		    		}
+	 		    	}
 
- 		    			new_boosted.add( e );
+			    	for ( RateControlledEntity e: boosted_priority_entities ){
 
- 		    		}else{
+	 		    		if ( e.getPriorityBoost()){
 
- 		    			new_normal.add( e );
- 		    		}
- 		    	}
+	 		    			new_boosted.add( e );
 
-		    	normal_priority_entities 	= new_normal;
-		    	boosted_priority_entities	= new_boosted;
+	 		    		}else{
 
- 		    }finally{
+	 		    			new_normal.add( e );
+	 		    		}
+	 		    	}
 
- 		    	entities_mon.exit();
- 		    }
-    	  }
-      }
-    }
-  }
+			    	normal_priority_entities 	= new_normal;
+			    	boosted_priority_entities	= new_boosted;
 
-  private boolean
-  hasConnections()
-  {
-	  if ( entity_count == 0 ){
+	 		    }finally{
 
-		  return( false );
+	 		    	entities_mon.exit();
+	 		    }
+	    	  }
+	      }
+	    }
 	  }
 
-	  List<RateControlledEntity> ref = high_priority_entities;
+	  private boolean
+	  hasConnections()
+	  {
+		  if ( entity_count == 0 ){
+
+			  return( false );
+		  }
 
-	  for ( RateControlledEntity e: ref ){
+		  List<RateControlledEntity> ref = high_priority_entities;
 
-		  if ( e.getConnectionCount( write_waiter ) > 0 ){
+		  for ( RateControlledEntity e: ref ){
 
-			  return( true );
+			  if ( e.getConnectionCount( write_waiter ) > 0 ){
+
+				  return( true );
+			  }
 		  }
-	  }
 
-	  ref = boosted_priority_entities;
+		  ref = boosted_priority_entities;
 
-	  for ( RateControlledEntity e: ref ){
+		  for ( RateControlledEntity e: ref ){
 
-		  if ( e.getConnectionCount( write_waiter ) > 0 ){
+			  if ( e.getConnectionCount( write_waiter ) > 0 ){
 
-			  return( true );
+				  return( true );
+			  }
 		  }
-	  }
 
-	  ref = normal_priority_entities;
+		  ref = normal_priority_entities;
 
-	  for ( RateControlledEntity e: ref ){
+		  for ( RateControlledEntity e: ref ){
 
-		  if ( e.getConnectionCount( write_waiter ) > 0 ){
+			  if ( e.getConnectionCount( write_waiter ) > 0 ){
 
-			  return( true );
+				  return( true );
+			  }
 		  }
-	  }
 
-	  return( false );
-  }
+		  return( false );
+	  }
 
-  private boolean
-  doNormalPriorityWrite(
-	 int tick_count )
-  {
-    int result = processNextReadyNormalPriorityEntity( tick_count );
+	  private boolean
+	  doNormalPriorityWrite(
+		 int tick_count )
+	  {
+	    int result = processNextReadyNormalPriorityEntity( tick_count );
 
-    if ( result > 0 ){
+	    if ( result > 0 ){
 
-    	progress_count++;
+	    	progress_count++;
 
-    	return true;
+	    	return true;
 
-    }else if ( result == 0 ){
+	    }else if ( result == 0 ){
 
-    	non_progress_count++;
+	    	non_progress_count++;
 
-    	if ( AGGRESIVE_WRITE ){
+	    	if ( AGGRESIVE_WRITE ){
 
-    		aggressive_np_normal_priority_count++;
+	    		aggressive_np_normal_priority_count++;
 
-    		if ( aggressive_np_normal_priority_count < ( normal_priority_entities.size() + boosted_priority_entities.size())){
+	    		if ( aggressive_np_normal_priority_count < ( normal_priority_entities.size() + boosted_priority_entities.size())){
 
-    			return( true );
+	    			return( true );
 
-    		}else{
+	    		}else{
 
-    			aggressive_np_normal_priority_count = 0;
-    		}
-    	}
-    }
+	    			aggressive_np_normal_priority_count = 0;
+	    		}
+	    	}
+	    }
 
-    return false;
-  }
+	    return false;
+	  }
 
-  private boolean doHighPriorityWrite() {
-    RateControlledEntity ready_entity = getNextReadyHighPriorityEntity();
-    if( ready_entity != null ){
-    	if ( ready_entity.doProcessing( write_waiter, 0 ) > 0 ) {
+	  private boolean doHighPriorityWrite() {
+	    RateControlledEntity ready_entity = getNextReadyHighPriorityEntity();
+	    if( ready_entity != null ){
+	    	if ( ready_entity.doProcessing( write_waiter, 0 ) > 0 ) {
 
-    		progress_count++;
+	    		progress_count++;
 
-    		return true;
+	    		return true;
 
-    	}else{
+	    	}else{
 
-    		non_progress_count++;
+	    		non_progress_count++;
 
-    		if ( AGGRESIVE_WRITE ){
+	    		if ( AGGRESIVE_WRITE ){
 
-    			aggressive_np_high_priority_count++;
+	    			aggressive_np_high_priority_count++;
 
-    			if ( aggressive_np_high_priority_count < high_priority_entities.size()){
+	    			if ( aggressive_np_high_priority_count < high_priority_entities.size()){
 
-    				return( true );
+	    				return( true );
 
-    			}else{
+	    			}else{
 
-    				aggressive_np_high_priority_count = 0;
-    			}
-    		}
-    	}
-    }
-    return false;
-  }
+	    				aggressive_np_high_priority_count = 0;
+	    			}
+	    		}
+	    	}
+	    }
+	    return false;
+	  }
 
 
-  private int
-  processNextReadyNormalPriorityEntity(
-		int	tick_count )
-  {
-	  ArrayList<RateControlledEntity> boosted_ref 	= boosted_priority_entities;
-	  ArrayList<RateControlledEntity> normal_ref	= normal_priority_entities;
+	  private int
+	  processNextReadyNormalPriorityEntity(
+			int	tick_count )
+	  {
+		  ArrayList<RateControlledEntity> boosted_ref 	= boosted_priority_entities;
+		  ArrayList<RateControlledEntity> normal_ref	= normal_priority_entities;
 
-	  final int boosted_size 	= boosted_ref.size();
-	  final int	normal_size		= normal_ref.size();
+		  final int boosted_size 	= boosted_ref.size();
+		  final int	normal_size		= normal_ref.size();
 	  
-	  boolean	frozen = false;
+		  boolean	frozen = false;
 	  
-	  boolean do_boosting = boosted_size > 0;
+		  boolean do_boosting = boosted_size > 0;
 	  
-	  /*
-	   * This attempt to not impact on non-boosted uploaders so much fails as they still manage to swamp lonely
-	   * boosted uploaders :(
+		  /*
+		   * This attempt to not impact on non-boosted uploaders so much fails as they still manage to swamp lonely
+		   * boosted uploaders :(
 	   
-	  if ( do_boosting ){
+		  if ( do_boosting ){
 		  
-		  if ( normal_size > 0 ){
+			  if ( normal_size > 0 ){
 			  
-			  int ratio = boosted_size / normal_size;
+				  int ratio = boosted_size / normal_size;
 			  
-			  if ( ratio > 5 ){
+				  if ( ratio > 5 ){
 				  
-				  ratio = 5;
+					  ratio = 5;
 				  
-			  }else if ( ratio < 2 ){
+				  }else if ( ratio < 2 ){
 				  
-				  ratio = 2;
-			  }
+					  ratio = 2;
+				  }
 			  
-			  if ( tick_count % ratio == 0 ){
+				  if ( tick_count % ratio == 0 ){
 				  
-				  do_boosting = false;
+					  do_boosting = false;
+				  }
 			  }
 		  }
-	  }
-	  */
+		  */
 	  
-	  try{
-		  if ( do_boosting ){
+		  try{
+			  if ( do_boosting ){
 
-			  if ( process_loop_time - booster_process_time >= 1000 ){
+				  if ( process_loop_time - booster_process_time >= 1000 ){
 
-				  booster_process_time = process_loop_time;
+					  booster_process_time = process_loop_time;
 
-				  booster_gifts[ booster_stat_index ] 			= BOOSTER_GIFT;
-				  booster_normal_writes[ booster_stat_index]	= booster_normal_written;
+					  booster_gifts[ booster_stat_index ] 			= BOOSTER_GIFT;
+					  booster_normal_writes[ booster_stat_index]	= booster_normal_written;
 
-				  booster_stat_index++;
+					  booster_stat_index++;
 
-				  if ( booster_stat_index >= booster_gifts.length ){
+					  if ( booster_stat_index >= booster_gifts.length ){
 
-					  booster_stat_index = 0;
-				  }
+						  booster_stat_index = 0;
+					  }
 
-				  booster_boost_average.update(booster_boost_written);
-				  booster_normal_average.update(booster_normal_written);
+					  booster_boost_average.update(booster_boost_written);
+					  booster_normal_average.update(booster_normal_written);
 				  
-				  booster_normal_written 	= 0;
-				  booster_boost_written		= 0;
+					  booster_normal_written 	= 0;
+					  booster_boost_written		= 0;
 				  
-				  int max_normal 	= 0;
-				  int normal_data	= 0;
+					  int max_normal 	= 0;
+					  int normal_data	= 0;
 				  
-				  for ( RateControlledEntity e: normal_ref ){
+					  for ( RateControlledEntity e: normal_ref ){
 					  
-					  if ( e.canProcess( write_waiter )){
+						  if ( e.canProcess( write_waiter )){
 						  
-						  normal_data += e.getBytesReadyToWrite();
+							  normal_data += e.getBytesReadyToWrite();
 						  
-						  int max = e.getRateHandler().getCurrentNumBytesAllowed()[0];
+							  int max = e.getRateHandler().getCurrentNumBytesAllowed()[0];
 						  
-						  if ( max > max_normal ){
+							  if ( max > max_normal ){
 							  
-							  max_normal = max;
+								  max_normal = max;
+							  }
 						  }
 					  }
-				  }
 				  
-				  booster_normal_data_average.update( normal_data );
-				  booster_normal_avail_average.update( max_normal );
+					  booster_normal_data_average.update( normal_data );
+					  booster_normal_avail_average.update( max_normal );
 				  
-				  int max_booster 	= 0;
-				  int booster_data	= 0;
+					  int max_booster 	= 0;
+					  int booster_data	= 0;
 				  
-				  for ( RateControlledEntity e: boosted_ref ){
+					  for ( RateControlledEntity e: boosted_ref ){
 					  
-					  if ( e.canProcess( write_waiter )){
+						  if ( e.canProcess( write_waiter )){
 						  
-						  booster_data += e.getBytesReadyToWrite();
+							  booster_data += e.getBytesReadyToWrite();
 						  
-						  int max = e.getRateHandler().getCurrentNumBytesAllowed()[0];
+							  int max = e.getRateHandler().getCurrentNumBytesAllowed()[0];
 						  
-						  if ( max > max_booster ){
+							  if ( max > max_booster ){
 							  
-							  max_booster = max;
+								  max_booster = max;
+							  }
 						  }
 					  }
-				  }
 				  
-				  booster_boost_data_average.update( booster_data );
-				  booster_boost_avail_average.update( max_booster );
+					  booster_boost_data_average.update( booster_data );
+					  booster_boost_avail_average.update( max_booster );
+				  }
 			  }
-		  }
 		  
-		  if ( do_boosting && booster_boost_data_average.getAverage() == 0 ){
+			  if ( do_boosting && booster_boost_data_average.getAverage() == 0 ){
 			
-			  	// no data queued for boosted peers on average so don't bother attempting to
-			  	// do anything. crank through one just to keep things turning over
+				  	// no data queued for boosted peers on average so don't bother attempting to
+				  	// do anything. crank through one just to keep things turning over
 			  
-			  next_boost_position = next_boost_position >= boosted_size ? 0 : next_boost_position;  //make circular
+				  next_boost_position = next_boost_position >= boosted_size ? 0 : next_boost_position;  //make circular
 			  
-			  RateControlledEntity entity = boosted_ref.get( next_boost_position );
+				  RateControlledEntity entity = boosted_ref.get( next_boost_position );
 			  
-			  next_boost_position++;
+				  next_boost_position++;
 			  
-			  if ( entity.canProcess( write_waiter )){ 
+				  if ( entity.canProcess( write_waiter )){ 
 				  
-				  int boosted = entity.doProcessing( write_waiter, 0 );
+					  int boosted = entity.doProcessing( write_waiter, 0 );
 				  
-				  if ( boosted > 0 ){
+					  if ( boosted > 0 ){
 					  
-					  booster_boost_written += boosted;
+						  booster_boost_written += boosted;
+					  }
 				  }
-			  }
 			  
-			  do_boosting = false;
-		  }
+				  do_boosting = false;
+			  }
 		  
-		  if ( do_boosting ){
+			  if ( do_boosting ){
 
-			  int	total_gifts 		= 0;
-			  int	total_normal_writes	= booster_normal_written;	// current accumulated normal writes
+				  int	total_gifts 		= 0;
+				  int	total_normal_writes	= booster_normal_written;	// current accumulated normal writes
 
-			  for (int i=0;i<booster_gifts.length;i++){
+				  for (int i=0;i<booster_gifts.length;i++){
 
-				  total_gifts			+= booster_gifts[i];
-				  total_normal_writes 	+= booster_normal_writes[i];
-			  }
+					  total_gifts			+= booster_gifts[i];
+					  total_normal_writes 	+= booster_normal_writes[i];
+				  }
 			  
-			  int	effective_gift = total_gifts - total_normal_writes;
+				  int	effective_gift = total_gifts - total_normal_writes;
 
-			  if ( effective_gift > 0 ){
+				  if ( effective_gift > 0 ){
 
-				  int num_checked = 0;
+					  int num_checked = 0;
 
-				  int gift_remaining = effective_gift;
+					  int gift_remaining = effective_gift;
 				  
-				  while( num_checked < normal_size && gift_remaining > 0 ) {
-					  next_normal_position = next_normal_position >= normal_size ? 0 : next_normal_position;  //make circular
-					  RateControlledEntity entity = (RateControlledEntity)normal_ref.get( next_normal_position );
-					  next_normal_position++;
-					  num_checked++;
-					  if ( entity.canProcess( write_waiter )){
+					  while( num_checked < normal_size && gift_remaining > 0 ) {
+						  next_normal_position = next_normal_position >= normal_size ? 0 : next_normal_position;  //make circular
+						  RateControlledEntity entity = (RateControlledEntity)normal_ref.get( next_normal_position );
+						  next_normal_position++;
+						  num_checked++;
+						  if ( entity.canProcess( write_waiter )){
 
-						  int gift_used = entity.doProcessing( write_waiter, gift_remaining );
+							  int gift_used = entity.doProcessing( write_waiter, gift_remaining );
 
-						  if ( gift_used > 0 ){
+							  if ( gift_used > 0 ){
 							  
-							  //  System.out.println( "gifted: " + gift_used );
+								  //  System.out.println( "gifted: " + gift_used );
 							  
-							  booster_normal_written += gift_used;
+								  booster_normal_written += gift_used;
 
-							  gift_remaining -= gift_used;
+								  gift_remaining -= gift_used;
+							  }
 						  }
 					  }
-				  }
 				  
-				  int gift_used = effective_gift - gift_remaining;
+					  int gift_used = effective_gift - gift_remaining;
 				  
-				  if ( gift_used > 0 ){
+					  if ( gift_used > 0 ){
 	
-					  for ( int i=booster_stat_index; gift_used > 0 && i<booster_stat_index+booster_gifts.length; i++){
+						  for ( int i=booster_stat_index; gift_used > 0 && i<booster_stat_index+booster_gifts.length; i++){
 
-						  int	avail = booster_gifts[i%booster_gifts.length];
+							  int	avail = booster_gifts[i%booster_gifts.length];
 
-						  if ( avail > 0 ){
+							  if ( avail > 0 ){
 
-							  int	temp = Math.min( avail, gift_used );
+								  int	temp = Math.min( avail, gift_used );
 
-							  avail 	-= temp;
-							  gift_used -= temp;
+								  avail 	-= temp;
+								  gift_used -= temp;
 
-							  booster_gifts[i%booster_gifts.length] = avail;
+								  booster_gifts[i%booster_gifts.length] = avail;
+							  }
 						  }
 					  }
 				  }
-			  }
 
-			  int num_checked = 0;
+				  int num_checked = 0;
 
-			  while( num_checked < boosted_size ) {
-				  next_boost_position = next_boost_position >= boosted_size ? 0 : next_boost_position;  //make circular
-				  RateControlledEntity entity = boosted_ref.get( next_boost_position );
-				  next_boost_position++;
-				  num_checked++;
-				  if( entity.canProcess( write_waiter ) ) {  //is ready
-					  int boosted = entity.doProcessing( write_waiter, 0 );
+				  while( num_checked < boosted_size ) {
+					  next_boost_position = next_boost_position >= boosted_size ? 0 : next_boost_position;  //make circular
+					  RateControlledEntity entity = boosted_ref.get( next_boost_position );
+					  next_boost_position++;
+					  num_checked++;
+					  if( entity.canProcess( write_waiter ) ) {  //is ready
+						  int boosted = entity.doProcessing( write_waiter, 0 );
 					  	
-					  	// if no progress is made we give others a chance otherwise this non-progress
-					  	// can prevent us from ever getting onto the normal entities below
+						  	// if no progress is made we give others a chance otherwise this non-progress
+						  	// can prevent us from ever getting onto the normal entities below
 					  
-					  if ( boosted > 0 ){
-						  //  System.out.println( "boosted: " + boosted );
+						  if ( boosted > 0 ){
+							  //  System.out.println( "boosted: " + boosted );
 						  
-						  booster_boost_written += boosted;
+							  booster_boost_written += boosted;
 						  
-						  return( boosted );
+							  return( boosted );
+						  }
 					  }
 				  }
-			  }
 
-			  	// give remaining normal peers a chance to use the bandwidth boosted peers couldn't, but prevent
-			  	// more from being allocated while doing so to prevent them from grabbing more than they should
+				  	// give remaining normal peers a chance to use the bandwidth boosted peers couldn't, but prevent
+				  	// more from being allocated while doing so to prevent them from grabbing more than they should
 
-			  frozen = true;
+				  frozen = true;
 			  
-			  net_man.getUploadProcessor().setRateLimiterFreezeState( true );
+				  net_man.getUploadProcessor().setRateLimiterFreezeState( true );
 
-		  }else{
+			  }else{
 
-			  booster_normal_written 	= 0;
-			  booster_boost_written		= 0;
-		  }
+				  booster_normal_written 	= 0;
+				  booster_boost_written		= 0;
+			  }
 
-		  int num_checked = 0;
+			  int num_checked = 0;
 		  
-		  while( num_checked < normal_size ) {
-			  next_normal_position = next_normal_position >= normal_size ? 0 : next_normal_position;  //make circular
-			  RateControlledEntity entity = (RateControlledEntity)normal_ref.get( next_normal_position );
-			  next_normal_position++;
-			  num_checked++;
-			  if( entity.canProcess( write_waiter ) ) {  //is ready
-				  int bytes = entity.doProcessing( write_waiter, 0 );
+			  while( num_checked < normal_size ) {
+				  next_normal_position = next_normal_position >= normal_size ? 0 : next_normal_position;  //make circular
+				  RateControlledEntity entity = (RateControlledEntity)normal_ref.get( next_normal_position );
+				  next_normal_position++;
+				  num_checked++;
+				  if( entity.canProcess( write_waiter ) ) {  //is ready
+					  int bytes = entity.doProcessing( write_waiter, 0 );
 
-				  if ( bytes > 0 ){
+					  if ( bytes > 0 ){
 
-					  booster_normal_written += bytes;
-				  }
+						  booster_normal_written += bytes;
+					  }
 				  
-				  return( bytes );
+					  return( bytes );
+				  }
 			  }
-		  }
 
-		  return( -1 );
+			  return( -1 );
 
-	  }finally{
+		  }finally{
 
-		  if ( frozen ){
+			  if ( frozen ){
 
-			  net_man.getUploadProcessor().setRateLimiterFreezeState( false );
+				  net_man.getUploadProcessor().setRateLimiterFreezeState( false );
+			  }
 		  }
 	  }
-  }
 
 
-  private RateControlledEntity getNextReadyHighPriorityEntity() {
-    ArrayList ref = high_priority_entities;
+	  private RateControlledEntity getNextReadyHighPriorityEntity() {
+	    ArrayList<RateControlledEntity> ref = high_priority_entities;
 
-    int size = ref.size();
-    int num_checked = 0;
-
-    while( num_checked < size ) {
-      next_high_position = next_high_position >= size ? 0 : next_high_position;  //make circular
-      RateControlledEntity entity = (RateControlledEntity)ref.get( next_high_position );
-      next_high_position++;
-      num_checked++;
-      if( entity.canProcess( write_waiter ) ) {  //is ready
-        return entity;
-      }
-    }
-
-    return null;  //none found ready
-  }
+	    int size = ref.size();
+	    int num_checked = 0;
 
+	    while( num_checked < size ) {
+	      next_high_position = next_high_position >= size ? 0 : next_high_position;  //make circular
+	      RateControlledEntity entity = ref.get( next_high_position );
+	      next_high_position++;
+	      num_checked++;
+	      if( entity.canProcess( write_waiter ) ) {  //is ready
+	        return entity;
+	      }
+	    }
 
+	    return null;  //none found ready
+	  }
 
-  /**
-   * Add the given entity to the controller for write processing.
-   * @param entity to process writes for
-   */
-  public void addWriteEntity( RateControlledEntity entity ) {
-    try {  entities_mon.enter();
-      if( entity.getPriority() == RateControlledEntity.PRIORITY_HIGH ) {
-        //copy-on-write
-        ArrayList high_new = new ArrayList( high_priority_entities.size() + 1 );
-        high_new.addAll( high_priority_entities );
-        high_new.add( entity );
-        high_priority_entities = high_new;
-      }
-      else {
-        if ( entity.getPriorityBoost()){
-	        ArrayList boost_new = new ArrayList( boosted_priority_entities.size() + 1 );
-	        boost_new.addAll( boosted_priority_entities );
-	        boost_new.add( entity );
-	        boosted_priority_entities = boost_new;
-        }else{
-	        ArrayList norm_new = new ArrayList( normal_priority_entities.size() + 1 );
-	        norm_new.addAll( normal_priority_entities );
-	        norm_new.add( entity );
-	        normal_priority_entities = norm_new;
-        }
-      }
+	  int
+	  getEntityCount(
+		int		priority )
+	  {
+		  if ( priority == RateControlledEntity.PRIORITY_HIGH ){
 
-      entity_count = normal_priority_entities.size() + boosted_priority_entities.size() + high_priority_entities.size();
-    }
-    finally {  entities_mon.exit();  }
+			  return( high_priority_entities.size());
 
-    write_waiter.eventOccurred();
-  }
+		  }else{
 
+			  return( normal_priority_entities.size() + boosted_priority_entities.size());
+		  }
+	  }
 
-  /**
-   * Remove the given entity from the controller.
-   * @param entity to remove from write processing
-   */
-  public boolean removeWriteEntity( RateControlledEntity entity ) {
-	boolean found = false;
-    try {  entities_mon.enter();
-      if( entity.getPriority() == RateControlledEntity.PRIORITY_HIGH ) {
-        //copy-on-write
-        ArrayList high_new = new ArrayList( high_priority_entities );
-        if ( high_new.remove( entity )){
-        	high_priority_entities = high_new;
-        	
-        	found = true;
-        }else{
-        	Debug.out( "entity not found" );
-        }
-      }
-      else {
-        //copy-on-write
-    	if ( boosted_priority_entities.contains( entity )){
-	        ArrayList boosted_new = new ArrayList( boosted_priority_entities );
-	        boosted_new.remove( entity );
-	        boosted_priority_entities = boosted_new;
-	        
-	        found = true;
-    	}else{
-	        ArrayList norm_new = new ArrayList( normal_priority_entities );
-	        if ( norm_new.remove( entity )){
-	        	normal_priority_entities = norm_new;
-	        	
-	        	found = true;
+	  	// add and remove are called with entities_mon held
+
+	  void
+	  addEntity(
+		RateControlledEntity	entity )
+	  {
+	      if( entity.getPriority() == RateControlledEntity.PRIORITY_HIGH ) {
+	        //copy-on-write
+	        ArrayList<RateControlledEntity> high_new = new ArrayList<>( high_priority_entities.size() + 1 );
+	        high_new.addAll( high_priority_entities );
+	        high_new.add( entity );
+	        high_priority_entities = high_new;
+	      }
+	      else {
+	        if ( entity.getPriorityBoost()){
+		        ArrayList<RateControlledEntity> boost_new = new ArrayList<>( boosted_priority_entities.size() + 1 );
+		        boost_new.addAll( boosted_priority_entities );
+		        boost_new.add( entity );
+		        boosted_priority_entities = boost_new;
 	        }else{
-	        	Debug.out( "entity not found" );
+		        ArrayList<RateControlledEntity> norm_new = new ArrayList<>( normal_priority_entities.size() + 1 );
+		        norm_new.addAll( normal_priority_entities );
+		        norm_new.add( entity );
+		        normal_priority_entities = norm_new;
 	        }
-    	}
-      }
+	      }
 
-      entity_count = normal_priority_entities.size() + boosted_priority_entities.size() + high_priority_entities.size();
-    }
-    finally {  entities_mon.exit();  }
-    
-    return( found );
-  }
+	      entity_count = normal_priority_entities.size() + boosted_priority_entities.size() + high_priority_entities.size();
+	  }
 
-  public int
-  getEntityCount()
-  {
-	  return( entity_count );
+	  boolean
+	  removeEntity(
+		RateControlledEntity	entity )
+	  {
+		  boolean found = false;
+
+	      if( entity.getPriority() == RateControlledEntity.PRIORITY_HIGH ) {
+	        //copy-on-write
+	        ArrayList<RateControlledEntity> high_new = new ArrayList<>( high_priority_entities );
+	        if ( high_new.remove( entity )){
+	        	high_priority_entities = high_new;
+
+	        	found = true;
+	        }
+	      }
+	      else {
+	        //copy-on-write
+	    	if ( boosted_priority_entities.contains( entity )){
+		        ArrayList<RateControlledEntity> boosted_new = new ArrayList<>( boosted_priority_entities );
+		        boosted_new.remove( entity );
+		        boosted_priority_entities = boosted_new;
+
+		        found = true;
+	    	}else{
+		        ArrayList<RateControlledEntity> norm_new = new ArrayList<>( normal_priority_entities );
+		        if ( norm_new.remove( entity )){
+		        	normal_priority_entities = norm_new;
+
+		        	found = true;
+		        }
+	    	}
+	      }
+
+	      entity_count = normal_priority_entities.size() + boosted_priority_entities.size() + high_priority_entities.size();
+
+	      return( found );
+	  }
   }
 }
@@ -54,6 +54,8 @@ TCPNetworkManager
 	public static boolean TCP_INCOMING_ENABLED;
 	public static boolean TCP_OUTGOING_ENABLED;
 
+	public static volatile boolean TCP_SENDFILE_ENABLED;
+
 	static{
 		COConfigurationManager.addAndFireParameterListeners(
 				new String[]{
@@ -97,6 +99,19 @@ TCPNetworkManager
 						READ_SELECT_MIN_LOOP_TIME 	= COConfigurationManager.getIntParameter(  "network.tcp.read.select.min.time" );
 					}
 				});
+
+		COConfigurationManager.addAndFireParameterListener(
+				"network.tcp.sendfile.enable",
+				new ParameterListener()
+				{
+					@Override
+					public void
+					parameterChanged(
+						String name )
+					{
+						TCP_SENDFILE_ENABLED = COConfigurationManager.getBooleanParameter( "network.tcp.sendfile.enable" );
+					}
+				});
 	}
 
 	 /**
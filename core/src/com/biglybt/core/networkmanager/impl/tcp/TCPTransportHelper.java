@@ -31,9 +31,11 @@ import java.util.Random;
 import com.biglybt.core.networkmanager.VirtualChannelSelector;
 import com.biglybt.core.networkmanager.VirtualChannelSelector.VirtualSelectorListener;
 import com.biglybt.core.networkmanager.impl.TransportHelper;
+import com.biglybt.core.networkmanager.impl.TransportStats;
 import com.biglybt.core.proxy.AEProxyAddressMapper;
 import com.biglybt.core.proxy.AEProxyFactory;
 import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.FileRegion;
 import com.biglybt.core.util.TimeFormatter;
 
 
@@ -283,6 +285,8 @@ TCPTransportHelper
 
 				written_sofar = channel.write(buffers, array_offset, length);
 
+				TransportStats.channelWrite( length, written_sofar );
+
 			}else{
 				  //single-buffer mode
 
@@ -310,6 +314,70 @@ TCPTransportHelper
 		return written_sofar;
 	}
 
+		/**
+		 * Writes file data directly to the channel (sendfile where the OS supports it)
+		 */
+
+	public long
+	transferFrom(
+		FileRegion		region,
+		int				max_bytes )
+
+		throws IOException
+	{
+		if( channel == null ){
+
+			Debug.out( "channel == null" );
+
+			return 0;
+		}
+
+		if ( delayed_write != null ){
+
+				// get the held-back bytes out first
+
+			write( new ByteBuffer[0], 0, 0 );
+
+			if ( delayed_write != null ){
+
+				return( 0 );
+			}
+		}
+
+		if ( remainingBytesToScatter > 0 ){
+
+			max_bytes = (int)Math.min( max_bytes, Math.min( remainingBytesToScatter, 50+rnd.nextInt(100)));
+		}
+
+		long written = region.transferTo( channel, max_bytes );
+
+		TransportStats.channelWrite( 1, written );
+
+		if ( remainingBytesToScatter > 0 ){
+
+			remainingBytesToScatter -= written;
+
+			if ( remainingBytesToScatter <= 0 ){
+
+				remainingBytesToScatter = 0;
+
+				try{
+					channel.socket().setTcpNoDelay(false);
+
+				}catch( SocketException e ){
+
+					Debug.printStackTrace(e);
+				}
+			}
+		}
+
+		if ( trace ){
+			TimeFormatter.milliTrace( "tcp: transfer " + written );
+		}
+
+		return written;
+	}
+
 	private static final Random rnd = new Random();
 
 	private int channelWrite(ByteBuffer buf) throws IOException
@@ -318,6 +386,7 @@ TCPTransportHelper
 		while(remainingBytesToScatter > 0 && buf.remaining() > 0)
 		{
 			int currentWritten = channel.write((ByteBuffer)(buf.slice().limit(Math.min(50+rnd.nextInt(100),buf.remaining()))));
+			TransportStats.channelWrite( 1, currentWritten );
 			if(currentWritten == 0)
 				break;
 			buf.position(buf.position()+currentWritten);
@@ -337,7 +406,11 @@ TCPTransportHelper
 		}
 
 		if(buf.remaining() > 0)
-			written += channel.write(buf);
+		{
+			int currentWritten = channel.write(buf);
+			TransportStats.channelWrite( 1, currentWritten );
+			written += currentWritten;
+		}
 
 		return written;
 	}
@@ -19,6 +19,7 @@
 
 package com.biglybt.core.networkmanager.impl.tcp;
 
+import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
@@ -38,6 +39,7 @@ import com.biglybt.core.proxy.AEProxyFactory.PluginProxy;
 import com.biglybt.core.util.AENetworkClassifier;
 import com.biglybt.core.util.AddressUtils;
 import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.FileRegion;
 
 
 
@@ -134,6 +136,39 @@ public class TCPTransportImpl extends TransportImpl implements Transport {
   	return helper.getSocketChannel();
   }
 
+  @Override
+  public boolean
+  isFileRegionCapable()
+  {
+	  if ( !TCPNetworkManager.TCP_SENDFILE_ENABLED ){
+
+		  return( false );
+	  }
+
+	  	// a transparent filter means no crypto and nothing buffered in the filter
+
+	  TransportHelperFilter filter = getFilter();
+
+	  return( filter instanceof TransportHelperFilterTransparent && filter.getHelper() instanceof TCPTransportHelper );
+  }
+
+  @Override
+  protected long
+  transferFileRegionSupport(
+	TransportHelperFilter	filter,
+	FileRegion				region,
+	int						max_bytes )
+
+	throws IOException
+  {
+	  if ( !( filter instanceof TransportHelperFilterTransparent )){
+
+		  throw( new IOException( "File regions not supported by " + filter.getName( false )));
+	  }
+
+	  return(((TCPTransportHelper)filter.getHelper()).transferFrom( region, max_bytes ));
+  }
+
   @Override
   public TransportEndpointTCP
   getTransportEndpoint()
@@ -128,6 +128,10 @@ PEPeerControl
 	checkSnubbing(
 		PEPeerTransport	peer );
 
+	public void
+	peerInterested(
+		PEPeerTransport	peer );
+
 	public void
 	badPieceReported(
 		PEPeerTransport		originator,
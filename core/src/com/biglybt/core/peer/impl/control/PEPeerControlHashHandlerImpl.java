@@ -536,7 +536,7 @@ PEPeerControlHashHandlerImpl
 			
 			BitFlags avail = peer.getAvailable();
 			
-			if ( avail != null && avail.flags[ piece_number ] ){
+			if ( avail != null && avail.get(piece_number) ){
 			
 				int req_count = peer.getOutgoingRequestCount();
 				
@@ -288,6 +288,11 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 
 	private long mainloop_loop_count;
 
+		// periods covered by the current tick, more than one when the scheduler has let us idle
+
+	private int schedule_periods = 1;
+	private volatile boolean schedule_activity;
+
 	private static final int MAINLOOP_ONE_SECOND_INTERVAL = 1000 / PeerControlScheduler.SCHEDULE_PERIOD_MILLIS;
 	private static final int MAINLOOP_FIVE_SECOND_INTERVAL = MAINLOOP_ONE_SECOND_INTERVAL * 5;
 	private static final int MAINLOOP_TEN_SECOND_INTERVAL = MAINLOOP_ONE_SECOND_INTERVAL * 10;
@@ -875,10 +880,73 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 		return(getDisplayName());
 	}
 
+	@Override
+	public void
+	schedule(
+		int		periods )
+	{
+		schedule_periods = periods;
+
+		try{
+			schedule();
+
+		}finally{
+
+			schedule_periods = 1;
+		}
+	}
+
+		/**
+		 * A seed with nobody interested in it has little to do between the one second checks so
+		 * is happy to be ticked once a second. Ticks are only stretched from a one second boundary
+		 * so that the interval checks on mainloop_loop_count keep firing
+		 */
+
+	@Override
+	public int
+	getScheduleIdlePeriods()
+	{
+		if ( 	!seeding_mode ||
+				superSeedMode ||
+				schedule_activity ||
+				finish_in_progress != null ||
+				mainloop_loop_count % MAINLOOP_ONE_SECOND_INTERVAL != 0 ){
+
+			return( 1 );
+		}
+
+		for ( PEPeerTransport peer: peer_transports_cow ){
+
+			if ( peer.isInterested()){
+
+				return( 1 );
+			}
+		}
+
+		return( MAINLOOP_ONE_SECOND_INTERVAL );
+	}
+
+	@Override
+	public boolean
+	hasScheduleActivity()
+	{
+		return( schedule_activity );
+	}
+
+	@Override
+	public void
+	peerInterested(
+		PEPeerTransport	peer )
+	{
+		schedule_activity = true;
+	}
+
 	@Override
 	public void 
 	schedule()
 	{
+		schedule_activity = false;
+
 		if ( finish_in_progress != null ){
 
 			// System.out.println( "Finish in prog" );
@@ -972,7 +1040,7 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 
 			Debug.printStackTrace(e);
 		}
-		mainloop_loop_count++;
+		mainloop_loop_count += schedule_periods;
 	}
 
 	/**
@@ -3113,6 +3181,8 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 
 	@Override
 	public boolean validateReadRequest(PEPeerTransport originator, int pieceNumber, int offset, int length){
+		schedule_activity = true;
+
 		if(disk_mgr.checkBlockConsistencyForRead(originator.getClient() + ": " + originator.getIp(), true, pieceNumber,
 				offset, length)){
 
@@ -3797,6 +3867,8 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 	peerAdded(
 		PEPeerTransport pc)
 	{
+		schedule_activity = true;
+
 		adapter.addPeer(pc); // async downloadmanager notification
 
 		// sync peermanager notification
@@ -5442,16 +5514,7 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 								continue;
 							}
 
-							boolean[] b1 = f1.flags;
-							boolean[] b2 = f2.flags;
-
-							int same_pieces = 0;
-
-							for(int k = 0; k < b1.length; k++){
-								if(b1[k] && b2[k]){
-									same_pieces++;
-								}
-							}
+							int same_pieces = f1.andCardinality(f2);
 
 							int max_pieces = Math.max(f1.nbSet, f2.nbSet);
 
@@ -6859,7 +6922,9 @@ public class PEPeerControlImpl extends LogRelation implements PEPeerControl, Dis
 
 	@Override
 	public void generateEvidence(IndentWriter writer){
-		writer.println("PeerManager: seeding=" + seeding_mode);
+		long[] lag = PeerControlSchedulerFactory.getSingleton(partition_id).getScheduleLag(this);
+
+		writer.println("PeerManager: seeding=" + seeding_mode + (lag == null ? "" : (", lag=" + lag[0] + "/" + lag[1] + "/" + lag[2])));
 
 		writer.println("    udp_fb=" + pending_nat_traversals.size() + ",udp_tc=" + udp_traversal_count + ",pd=["
 				+ peer_database.getString() + "]");
@@ -1659,11 +1659,11 @@ implements PEPeerTransport
 				 * as relative seed. Useful to disconnect not-useful pseudo-seeds during downloading
 				 */
 
-				for (int i = bitFlags.start;i <= bitFlags.end;i++){
+				for (int i = bitFlags.nextSetBit(0);i >= 0;i = bitFlags.nextSetBit(i+1)){
 
 						// relative seed if peer doesn't have the piece, we already have it or we don't need it
 
-					couldBeSeed &= !bitFlags.flags[i] || dmPieces[i].isDone() || !dmPieces[i].isNeeded();
+					couldBeSeed &= dmPieces[i].isDone() || !dmPieces[i].isNeeded();
 
 					if (!couldBeSeed){
 
@@ -1678,7 +1678,7 @@ implements PEPeerTransport
 
 						// relative seed if we don't have the piece or we have it and the peer has it too
 
-					couldBeSeed &= !(dmPieces[i].isDone()) || bitFlags.flags[i];
+					couldBeSeed &= !(dmPieces[i].isDone()) || bitFlags.get(i);
 
 					if( !couldBeSeed ){
 
@@ -1816,7 +1816,7 @@ implements PEPeerTransport
 		if ( current_peer_state != TRANSFERING || pieceNumber == manager.getHiddenPiece()) return;
 		//only force if the other peer doesn't have this piece and is not yet interested or we;ve disabled
 		// aggregation
-		final boolean force =!other_peer_interested_in_me &&peerHavePieces !=null &&!peerHavePieces.flags[pieceNumber];
+		final boolean force =!other_peer_interested_in_me &&peerHavePieces !=null &&!peerHavePieces.get(pieceNumber);
 
 		outgoing_have_message_aggregator.queueHaveMessage( pieceNumber, force || have_aggregation_disabled );
 		checkInterested();
@@ -1929,13 +1929,24 @@ implements PEPeerTransport
 
 						// check individually if don't have all
 
-					for (int i = peerHavePieces.start; i <= peerHavePieces.end; i++ ){
+					BitFlags needed = diskManager.getInterestingPieces();
 
-						if ( peerHavePieces.flags[i] && diskManager.isInteresting(i)){
+					if ( needed != null ){
 
-							is_interesting = true;
+							// a word's worth of pieces at a time against the pieces we still need
 
-							break;
+						is_interesting = peerHavePieces.intersects( needed );
+
+					}else{
+
+						for (int i = peerHavePieces.nextSetBit(0); i >= 0; i = peerHavePieces.nextSetBit(i+1)){
+
+							if ( diskManager.isInteresting(i)){
+
+								is_interesting = true;
+
+								break;
+							}
 						}
 					}
 				}else{
@@ -2228,7 +2239,7 @@ implements PEPeerTransport
 	public boolean isPieceAvailable(int pieceNumber)
 	{
 		if (peerHavePieces !=null)
-			return peerHavePieces.flags[pieceNumber];
+			return peerHavePieces.get(pieceNumber);
 		return false;
 	}
 
@@ -3680,6 +3691,8 @@ implements PEPeerTransport
 
 		field.get( DirectByteBuffer.SS_PEER, dataf );
 
+		final BitFlags received = BitFlags.fromBitfield( dataf, nbPieces );
+
 		try{
 			closing_mon.enter();
 			if (closing)
@@ -3689,23 +3702,16 @@ implements PEPeerTransport
 				final BitFlags tempHavePieces;
 				if (peerHavePieces ==null)
 				{
-					tempHavePieces =new BitFlags(nbPieces);
+					tempHavePieces =received;
 				} else
 				{
 					tempHavePieces =peerHavePieces;
 					removeAvailability();
 				}
-				for (int i =0; i <nbPieces; i++)
+				for (int i =received.nextSetBit(0); i >=0; i =received.nextSetBit(i +1))
 				{
-					final int index =i /8;
-					final int bit =7 -(i %8);
-					final byte bData =dataf[index];
-					final byte b =(byte) (bData >>bit);
-					if ((b &0x01) ==1)
-					{
-						tempHavePieces.set(i);
-						manager.updateSuperSeedPiece(this,i);
-					}
+					tempHavePieces.set(i);
+					manager.updateSuperSeedPiece(this,i);
 				}
 
 				bitfield.destroy();
@@ -3799,6 +3805,11 @@ implements PEPeerTransport
 
 		other_peer_interested_in_me = !(isSeed() || isRelativeSeed());
 
+		if ( other_peer_interested_in_me ){
+
+			manager.peerInterested( this );
+		}
+
 		if ( 	other_peer_interested_in_me &&
 				!is_upload_disabled &&
 				fast_unchoke_new_peers &&
@@ -3846,7 +3857,7 @@ implements PEPeerTransport
 		if (peerHavePieces ==null)
 			peerHavePieces =new BitFlags(nbPieces);
 
-		if (!peerHavePieces.flags[pieceNumber])
+		if (!peerHavePieces.get(pieceNumber))
 		{
 			if (!interested_in_other_peer &&diskManager.isInteresting(pieceNumber)&&!is_download_disabled)
 			{
@@ -3900,7 +3911,7 @@ implements PEPeerTransport
 	            return;
 	        }
 
-	        if ( !peerHavePieces.flags[pieceNumber]){
+	        if ( !peerHavePieces.get(pieceNumber)){
 
 	        	new_have	= true;
 
@@ -3942,12 +3953,12 @@ implements PEPeerTransport
     protected long
     getBytesDownloaded()
     {
-		if (peerHavePieces ==null ||peerHavePieces.flags.length ==0)
+		if (peerHavePieces ==null ||peerHavePieces.size() ==0)
 			return 0;
 
 		final long	total_done;
 
-		if ( peerHavePieces.flags[nbPieces-1] ){
+		if ( peerHavePieces.get(nbPieces-1) ){
 
 			total_done = ((long)(peerHavePieces.nbSet -1) *diskManager.getPieceLength()) +diskManager.getPieceLength( nbPieces -1 );
 
@@ -4651,7 +4662,7 @@ implements PEPeerTransport
 
 				int	piece_number = pieces[i][0];
 
-				if ( !flags.flags[ piece_number ] ){
+				if ( !flags.get(piece_number) ){
 
 					sendAllowFast( piece_number );
 				}
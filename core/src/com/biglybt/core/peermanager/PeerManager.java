@@ -1913,6 +1913,10 @@ public class PeerManager implements CoreStatsProvider {
 			checkSnubbing(
 					PEPeerTransport	peer ){log(); }
 
+			public void
+			peerInterested(
+					PEPeerTransport	peer ){}
+
 			public void
 			badPieceReported(
 					PEPeerTransport		originator,
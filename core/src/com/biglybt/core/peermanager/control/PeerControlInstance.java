@@ -21,6 +21,40 @@ PeerControlInstance
 	public void
 	schedule();
 
+		/**
+		 * Used instead of schedule() by schedulers that tick idle instances less often
+		 * @param periods number of schedule periods this tick covers, 1 unless the instance was idle
+		 */
+
+	public default void
+	schedule(
+		int		periods )
+	{
+		schedule();
+	}
+
+		/**
+		 * Queried after each tick
+		 * @return number of schedule periods that can pass before the next tick, 1 for every period
+		 */
+
+	public default int
+	getScheduleIdlePeriods()
+	{
+		return( 1 );
+	}
+
+		/**
+		 * @return true if something has happened that means an idle instance should be ticked now
+		 * rather than at the end of its idle periods
+		 */
+
+	public default boolean
+	hasScheduleActivity()
+	{
+		return( false );
+	}
+
 	public int
 	getSchedulePriority();
 
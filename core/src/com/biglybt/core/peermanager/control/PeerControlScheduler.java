@@ -48,4 +48,16 @@ PeerControlScheduler
 	
 	public int[]
 	getPieceCount();
+
+		/**
+		 * @return {latest, recent maximum, average} lateness in millis of the instance's ticks, null if
+		 * not available
+		 */
+
+	public default long[]
+	getScheduleLag(
+		PeerControlInstance	instance )
+	{
+		return( null );
+	}
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.peermanager.control.impl;
+
+/**
+ * Lateness of an instance's ticks relative to when they were due. Updated by the thread running the
+ * tick, read without synchronisation for reporting.
+ */
+
+final class
+PeerControlScheduleLag
+{
+	private static final long	MAX_RESET_MILLIS	= 60*1000;
+
+	private long	latest;
+	private long	max;
+	private long	max_time;
+	private long	average_x8;		// exponential moving average, scaled by 8
+
+	void
+	update(
+		long	lag,
+		long	now_mono )
+	{
+		latest = lag;
+
+		if ( lag >= max || now_mono - max_time > MAX_RESET_MILLIS ){
+
+			max			= lag;
+			max_time	= now_mono;
+		}
+
+		average_x8 += lag - ( average_x8 >> 3 );
+	}
+
+	long[]
+	get()
+	{
+		return( new long[]{ latest, max, average_x8 >> 3 });
+	}
+
+	String
+	getString()
+	{
+		return( "lag=" + latest + "/" + max + "/" + ( average_x8 >> 3 ));
+	}
+}
@@ -46,7 +46,6 @@ PeerControlSchedulerBasic
 	private final SpeedTokenDispenserBasic tokenDispenser = new SpeedTokenDispenserBasic();
 
 	private long	latest_time;
-	private long	last_lag_log;
 
 	private long	next_peer_count_time 	= SystemTime.getMonotonousTime();
 	private long	next_piece_count_time	= SystemTime.getMonotonousTime();
@@ -190,23 +189,39 @@ PeerControlSchedulerBasic
 
 				long	diff = latest_time - target;
 
+				int		periods;
+
 				if ( diff >= 0 ){
 
-					tick_count++;
+					periods = inst.getIdlePeriods();
 
-					inst.schedule( latest_time );
+				}else if ( inst.getIdlePeriods() > 1 && inst.hasActivity()){
 
-					schedule_count++;
+						// idle instance has something to do, bring its tick forward
 
-					long new_target = target + SCHEDULE_PERIOD_MILLIS;
+					periods = getEarlyPeriods( inst.getLastSchedule(), latest_time, inst.getIdlePeriods());
 
-					if ( new_target <= latest_time ){
+					target = latest_time;
 
-						new_target = latest_time + ( target % SCHEDULE_PERIOD_MILLIS );
-					}
+				}else{
 
-					inst.setNextTick( new_target );
+					continue;
 				}
+
+				tick_count++;
+
+				inst.schedule( latest_time, target, periods );
+
+				schedule_count++;
+
+				long new_target = target + SCHEDULE_PERIOD_MILLIS * inst.getIdlePeriods();
+
+				if ( new_target <= latest_time ){
+
+					new_target = latest_time + ( target % SCHEDULE_PERIOD_MILLIS );
+				}
+
+				inst.setNextTick( new_target );
 			}
 
 			synchronized( this ){
@@ -312,6 +327,16 @@ PeerControlSchedulerBasic
 	{
 	}
 
+	@Override
+	public long[]
+	getScheduleLag(
+		PeerControlInstance	instance )
+	{
+		instanceWrapper wrapper = instance_map.get( instance );
+
+		return( wrapper==null?null:wrapper.getLag());
+	}
+
 	@Override
 	public int[] getPeerCount()
 	{
@@ -338,6 +363,10 @@ PeerControlSchedulerBasic
 
 		private long					last_schedule;
 
+		private int						idle_periods = 1;
+
+		private final PeerControlScheduleLag	lag = new PeerControlScheduleLag();
+
 		protected
 		instanceWrapper(
 			PeerControlInstance	_instance )
@@ -376,38 +405,54 @@ PeerControlSchedulerBasic
 			return( instance.getName());
 		}
 
+		protected int
+		getIdlePeriods()
+		{
+			return( idle_periods );
+		}
+
+		protected boolean
+		hasActivity()
+		{
+			return( instance.hasScheduleActivity());
+		}
+
+		protected long
+		getLastSchedule()
+		{
+			return( last_schedule );
+		}
+
+		protected long[]
+		getLag()
+		{
+			return( lag.get());
+		}
+
 		protected void
 		schedule(
-			long	mono_now )
+			long	mono_now,
+			long	target,
+			int		periods )
 		{
 			if ( mono_now < 100000 ){
 
 				Debug.out("eh?");
 			}
 
-			if ( last_schedule > 0 ){
-
-
-				if ( mono_now - last_schedule > 1000 ){
-
-					if ( mono_now - last_lag_log > 1000 ){
-
-						last_lag_log = mono_now;
-
-						System.out.println( "Scheduling lagging: " + (mono_now - last_schedule ) + " - instances=" + instance_map.size());
-					}
-				}
-			}
+			lag.update( mono_now - target, mono_now );
 
 			last_schedule = mono_now;
 
 			try{
-				instance.schedule();
+				instance.schedule( periods );
 
 			}catch( Throwable e ){
 
 				Debug.printStackTrace(e);
 			}
+
+			idle_periods = PeerControlSchedulerImpl.getIdlePeriods( instance );
 		}
 	}
 }
@@ -21,6 +21,7 @@ import java.util.Set;
 
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.ParameterListener;
+import com.biglybt.core.peermanager.control.PeerControlInstance;
 import com.biglybt.core.peermanager.control.PeerControlScheduler;
 import com.biglybt.core.stats.CoreStats;
 import com.biglybt.core.stats.CoreStatsProvider;
@@ -33,28 +34,38 @@ PeerControlSchedulerImpl
 {
 	private static final PeerControlSchedulerImpl[]	singletons;
 
+		// upper limit on how far an idle instance can stretch the time between its ticks
+
+	protected static final int	MAX_IDLE_PERIODS	= 5000 / SCHEDULE_PERIOD_MILLIS;
+
+	private static final int	parallelism;
+	private static final boolean	work_stealing;
+
 	static{
 		int	num = COConfigurationManager.getIntParameter( "peercontrol.scheduler.parallelism", 1 );
 
 		if ( num < 1 ){
 
 			num = 1;
+		}
 
-		}else if ( num > 1 ){
-
-			if ( COConfigurationManager.getBooleanParameter( "peercontrol.scheduler.use.priorities" )){
+		boolean	use_priorities = COConfigurationManager.getBooleanParameter( "peercontrol.scheduler.use.priorities" );
 
-				Debug.out( "Multiple peer schedulers not supported for prioritised scheduling" );
+			// the prioritised scheduler can't be partitioned as priorities are relative across all
+			// instances, a single work-stealing scheduler with multiple workers is used instead
 
-				num = 1;
+		work_stealing =
+			COConfigurationManager.getBooleanParameter( "peercontrol.scheduler.work.stealing" ) ||
+			( num > 1 && use_priorities );
 
-			}else{
+		if ( num > 1 ){
 
-				System.out.println( "Peer control scheduler parallelism=" + num );
-			}
+			System.out.println( "Peer control scheduler parallelism=" + num + ( work_stealing?" (work stealing)":"" ));
 		}
 
-		singletons = new PeerControlSchedulerImpl[ num ];
+		parallelism = num;
+
+		singletons = new PeerControlSchedulerImpl[ work_stealing?1:num ];
 	}
 
 	protected boolean useWeights = true;
@@ -74,7 +85,11 @@ PeerControlSchedulerImpl
 
 			PeerControlSchedulerImpl singleton;
 
-			if ( COConfigurationManager.getBooleanParameter( "peercontrol.scheduler.use.priorities" )){
+			if ( work_stealing ){
+
+				singleton = new PeerControlSchedulerWorkStealing( parallelism );
+
+			}else if ( COConfigurationManager.getBooleanParameter( "peercontrol.scheduler.use.priorities" )){
 
 				singleton = new PeerControlSchedulerPrioritised();
 
@@ -181,6 +196,43 @@ PeerControlSchedulerImpl
 	protected abstract void
 	schedule();
 
+		/**
+		 * @return the number of periods the instance is happy to wait for its next tick
+		 */
+
+	protected static int
+	getIdlePeriods(
+		PeerControlInstance		instance )
+	{
+		try{
+			int	periods = instance.getScheduleIdlePeriods();
+
+			return( periods<1?1:( periods>MAX_IDLE_PERIODS?MAX_IDLE_PERIODS:periods ));
+
+		}catch( Throwable e ){
+
+			Debug.out( e );
+
+			return( 1 );
+		}
+	}
+
+		/**
+		 * @return the number of periods covered by a tick that was brought forward by activity, always
+		 * less than the periods the instance asked for so that it can tell the tick is early
+		 */
+
+	protected static int
+	getEarlyPeriods(
+		long	last_tick_mono,
+		long	now_mono,
+		int		idle_periods )
+	{
+		long	periods = ( now_mono - last_tick_mono ) / SCHEDULE_PERIOD_MILLIS;
+
+		return((int)Math.max( 1, Math.min( idle_periods - 1, periods )));
+	}
+
 	@Override
 	public void overrideWeightedPriorities(boolean override) {
 		if(override)
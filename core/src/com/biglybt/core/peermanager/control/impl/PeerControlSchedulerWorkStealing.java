@@ -0,0 +1,673 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.peermanager.control.impl;
+
+import java.util.*;
+
+import com.biglybt.core.peermanager.control.PeerControlInstance;
+import com.biglybt.core.peermanager.control.SpeedTokenDispenser;
+import com.biglybt.core.util.*;
+
+/**
+ * Runs instances on several worker threads while respecting their priorities.
+ * <p>
+ * Instances are sorted by priority and dealt round-robin to the workers so each worker gets a
+ * similar mix. Each period a worker queues its due instances in priority order and works from the
+ * head of its queue. A worker that runs out of work steals from the tail of the others' queues, so
+ * a slow instance delays only the lower priority work behind it and only until another worker is free.
+ * The download token bucket is refilled once per period, before any instance of the period runs,
+ * so higher priority instances get first go at it as with the single threaded prioritised scheduler.
+ * <p>
+ * Instances that report they are idle are ticked less often and are ticked again as soon as they
+ * report activity.
+ */
+
+public class
+PeerControlSchedulerWorkStealing
+	extends PeerControlSchedulerImpl
+	implements AEDiagnosticsEvidenceGenerator
+{
+	private final Worker[]	workers;
+
+		// copy-on-write under instance_lock, read without it
+
+	private volatile Map<PeerControlInstance,instanceWrapper>	instance_map = new HashMap<>();
+
+	private final Object	instance_lock = new Object();
+
+	private final SpeedTokenDispenserPrioritised tokenDispenser = new SpeedTokenDispenserPrioritised();
+
+	private long	next_refill_mono;
+
+	private long	next_peer_count_time_mono 	= SystemTime.getMonotonousTime();
+	private long	next_piece_count_time_mono 	= SystemTime.getMonotonousTime();
+
+	private volatile long		peer_count_active_time_mono		= 0;
+	private volatile long		piece_count_active_time_mono	= 0;
+
+	private volatile int[]		last_peer_count = { 0, 0 };
+	private volatile int[]		last_piece_count = { 0, 0 };
+
+	protected
+	PeerControlSchedulerWorkStealing(
+		int		num_workers )
+	{
+		workers = new Worker[ num_workers ];
+
+		for ( int i=0;i<num_workers;i++){
+
+			workers[i] = new Worker( i );
+		}
+
+		AEDiagnostics.addWeakEvidenceGenerator( this );
+	}
+
+	@Override
+	protected void
+	start()
+	{
+		next_refill_mono = SystemTime.getMonotonousTime();
+
+		SystemTime.registerMonotonousConsumer(
+			new SystemTime.TickConsumer()
+			{
+				@Override
+				public void
+				consume(
+					long	time_mono )
+				{
+					if ( time_mono >= next_refill_mono ){
+
+						next_refill_mono = Math.max( next_refill_mono + SCHEDULE_PERIOD_MILLIS, time_mono );
+
+						tokenDispenser.update( time_mono );
+
+						if ( useWeights ){
+
+							tokenDispenser.refill();
+						}
+					}
+
+					boolean count_peers 	= false;
+					boolean count_pieces 	= false;
+
+					synchronized( PeerControlSchedulerWorkStealing.this ){
+
+						if ( peer_count_active_time_mono > 0 && time_mono >= next_peer_count_time_mono ){
+
+							if ( time_mono - peer_count_active_time_mono > 15*1000 ){
+
+								peer_count_active_time_mono = 0;
+
+							}else{
+
+								count_peers = true;
+
+								next_peer_count_time_mono = time_mono+900;
+							}
+						}
+
+						if ( piece_count_active_time_mono > 0 && time_mono >= next_piece_count_time_mono ){
+
+							if ( time_mono - piece_count_active_time_mono > 15*1000 ){
+
+								piece_count_active_time_mono = 0;
+
+							}else{
+
+								count_pieces = true;
+
+								next_piece_count_time_mono = time_mono+900;
+							}
+						}
+
+						if ( instance_map.size() > 0 ){
+
+							PeerControlSchedulerWorkStealing.this.notifyAll();
+						}
+					}
+
+					if ( count_peers || count_pieces ){
+
+						int peer_count1 = 0;
+						int peer_count2 = 0;
+
+						int piece_count1 = 0;
+						int piece_count2 = 0;
+
+						for ( PeerControlInstance i: instance_map.keySet()){
+
+							if ( count_peers ){
+
+								int[] c = i.getPeerCount();
+
+								peer_count1 += c[0];
+								peer_count2 += c[1];
+							}
+
+							if ( count_pieces ){
+
+								int[] c = i.getPieceCount();
+
+								piece_count1 += c[0];
+								piece_count2 += c[1];
+							}
+						}
+
+						if ( count_peers ){
+							last_peer_count = new int[]{ peer_count1, peer_count2 };
+						}
+						if ( count_pieces ){
+							last_piece_count = new int[]{ piece_count1, piece_count2 };
+						}
+					}
+				}
+			});
+
+		for ( int i=1;i<workers.length;i++){
+
+			final Worker worker = workers[i];
+
+			new AEThread2( "PeerControlScheduler:" + i, true )
+			{
+				@Override
+				public void
+				run()
+				{
+					worker.run();
+				}
+			}.start();
+		}
+
+		super.start();
+	}
+
+	@Override
+	protected void
+	schedule()
+	{
+			// the thread started by the base class runs the first worker
+
+		workers[0].run();
+	}
+
+	@Override
+	public void
+	register(
+		PeerControlInstance	instance )
+	{
+		instanceWrapper wrapper = new instanceWrapper( instance );
+
+		wrapper.next_tick = SystemTime.getMonotonousTime() + RandomUtils.nextInt( SCHEDULE_PERIOD_MILLIS );
+
+		synchronized( instance_lock ){
+
+			Map<PeerControlInstance,instanceWrapper>	new_map = new HashMap<>( instance_map );
+
+			new_map.put( instance, wrapper );
+
+			instance_map = new_map;
+
+			distribute();
+		}
+	}
+
+	@Override
+	public void
+	unregister(
+		PeerControlInstance	instance )
+	{
+		synchronized( instance_lock ){
+
+			Map<PeerControlInstance,instanceWrapper>	new_map = new HashMap<>( instance_map );
+
+			instanceWrapper wrapper = new_map.remove( instance );
+
+			if ( wrapper == null ){
+
+				Debug.out( "instance wrapper not found" );
+
+				return;
+			}
+
+			wrapper.unregistered = true;
+
+			instance_map = new_map;
+
+			distribute();
+		}
+	}
+
+	@Override
+	public void
+	updateScheduleOrdering()
+	{
+		synchronized( instance_lock ){
+
+			distribute();
+		}
+	}
+
+		/**
+		 * Deals the instances, highest priority first, across the workers. Called with instance_lock held
+		 */
+
+	private void
+	distribute()
+	{
+		List<instanceWrapper>	sorted = new ArrayList<>( instance_map.values());
+
+		for ( instanceWrapper w: sorted ){
+
+			w.priority = w.instance.getSchedulePriority();
+		}
+
+		Collections.sort( sorted );
+
+		List<List<instanceWrapper>>	homes = new ArrayList<>( workers.length );
+
+		for ( int i=0;i<workers.length;i++){
+
+			homes.add( new ArrayList<>());
+		}
+
+		for ( int i=0;i<sorted.size();i++){
+
+			homes.get( i % workers.length ).add( sorted.get( i ));
+		}
+
+		for ( int i=0;i<workers.length;i++){
+
+			List<instanceWrapper>	home = homes.get( i );
+
+			workers[i].home = home.toArray( new instanceWrapper[ home.size()]);
+		}
+	}
+
+	private instanceWrapper
+	steal(
+		Worker		thief )
+	{
+		int	num = workers.length;
+
+		for ( int i=1;i<num;i++){
+
+			Worker victim = workers[( thief.index + i ) % num ];
+
+			instanceWrapper w = victim.pollLast();
+
+			if ( w != null ){
+
+				thief.steal_count++;
+
+				return( w );
+			}
+		}
+
+		return( null );
+	}
+
+	@Override
+	public SpeedTokenDispenser
+	getSpeedTokenDispenser()
+	{
+		return( tokenDispenser );
+	}
+
+	@Override
+	public long[]
+	getScheduleLag(
+		PeerControlInstance	instance )
+	{
+		instanceWrapper wrapper = instance_map.get( instance );
+
+		return( wrapper==null?null:wrapper.lag.get());
+	}
+
+	@Override
+	public int[]
+	getPeerCount()
+	{
+		peer_count_active_time_mono = SystemTime.getMonotonousTime();
+
+		return( last_peer_count );
+	}
+
+	@Override
+	public int[]
+	getPieceCount()
+	{
+		piece_count_active_time_mono = SystemTime.getMonotonousTime();
+
+		return( last_piece_count );
+	}
+
+	@Override
+	public void
+	updateStats(
+		Set		types,
+		Map		values )
+	{
+		long	schedules	= 0;
+		long	waits		= 0;
+		long	yields		= 0;
+		long	wait_time	= 0;
+
+		for ( Worker w: workers ){
+
+			schedules	+= w.schedule_count;
+			waits		+= w.wait_count;
+			yields		+= w.yield_count;
+			wait_time	+= w.total_wait_time;
+		}
+
+		schedule_count	= schedules;
+		wait_count		= waits;
+		yield_count		= yields;
+		total_wait_time	= wait_time;
+
+		super.updateStats( types, values );
+	}
+
+	@Override
+	public void
+	generate(
+		IndentWriter		writer )
+	{
+		writer.println( "Peer control scheduler: workers=" + workers.length + ", instances=" + instance_map.size());
+
+		try{
+			writer.indent();
+
+			for ( Worker worker: workers ){
+
+				writer.println( "worker " + worker.index + ": ticks=" + worker.schedule_count + ", stolen=" + worker.steal_count );
+
+				try{
+					writer.indent();
+
+					for ( instanceWrapper w: worker.home ){
+
+						writer.println( w.instance.getName() + ": pri=" + w.priority + ", periods=" + w.idle_periods + ", " + w.lag.getString());
+					}
+				}finally{
+
+					writer.exdent();
+				}
+			}
+		}finally{
+
+			writer.exdent();
+		}
+	}
+
+	private class
+	Worker
+	{
+		final int		index;
+
+		volatile instanceWrapper[]	home	= new instanceWrapper[0];
+
+		private final ArrayDeque<instanceWrapper>	ready = new ArrayDeque<>();
+
+		long	schedule_count;
+		long	wait_count;
+		long	yield_count;
+		long	total_wait_time;
+		long	steal_count;
+
+		Worker(
+			int		_index )
+		{
+			index	= _index;
+		}
+
+		synchronized void
+		add(
+			instanceWrapper	w )
+		{
+			ready.addLast( w );
+		}
+
+		synchronized instanceWrapper
+		pollFirst()
+		{
+			return( ready.pollFirst());
+		}
+
+		synchronized instanceWrapper
+		pollLast()
+		{
+			return( ready.pollLast());
+		}
+
+		void
+		run()
+		{
+			while( true ){
+
+				long	now = SystemTime.getMonotonousTime();
+
+				int	queued = 0;
+
+				for ( instanceWrapper w: home ){
+
+					if ( !w.unregistered && w.isDue( now ) && w.setQueued()){
+
+						add( w );
+
+						queued++;
+					}
+				}
+
+				if ( queued > 1 && workers.length > 1 ){
+
+						// let idle workers help out
+
+					synchronized( PeerControlSchedulerWorkStealing.this ){
+
+						PeerControlSchedulerWorkStealing.this.notifyAll();
+					}
+				}
+
+				boolean	did_work = false;
+
+				while( true ){
+
+					instanceWrapper w = pollFirst();
+
+					if ( w == null ){
+
+						w = steal( this );
+
+						if ( w == null ){
+
+							break;
+						}
+					}
+
+					if ( !w.unregistered ){
+
+						if ( !useWeights ){
+
+							tokenDispenser.update( SystemTime.getMonotonousTime());
+
+							tokenDispenser.refill();
+						}
+
+						w.schedule();
+
+						schedule_count++;
+
+						did_work = true;
+					}
+
+					w.clearQueued();
+				}
+
+				synchronized( PeerControlSchedulerWorkStealing.this ){
+
+					if ( !did_work ){
+
+						wait_count++;
+
+						try{
+							long wait_start = SystemTime.getHighPrecisionCounter();
+
+							PeerControlSchedulerWorkStealing.this.wait( SCHEDULE_PERIOD_MILLIS );
+
+							total_wait_time += SystemTime.getHighPrecisionCounter() - wait_start;
+
+						}catch( Throwable e ){
+
+							Debug.printStackTrace(e);
+						}
+					}else{
+
+						yield_count++;
+					}
+				}
+
+				if ( did_work ){
+
+					Thread.yield();
+				}
+			}
+		}
+	}
+
+	private static class
+	instanceWrapper
+		implements Comparable<instanceWrapper>
+	{
+		final PeerControlInstance		instance;
+
+		volatile boolean	unregistered;
+
+		int		priority;
+
+			// written by whichever worker runs the schedule, which may have stolen it, and read
+			// by the home worker when checking if it is due
+
+		volatile long	next_tick;
+		volatile long	last_schedule;
+		volatile int	idle_periods	= 1;
+
+		private boolean		queued;
+
+		final PeerControlScheduleLag	lag = new PeerControlScheduleLag();
+
+		instanceWrapper(
+			PeerControlInstance	_instance )
+		{
+			instance	= _instance;
+		}
+
+			/**
+			 * Called by the home worker without the wrapper's monitor. The wrapper may be queued or
+			 * being scheduled by another worker at the time, in which case the tick fields can be
+			 * mid-update - a stale answer is harmless as setQueued rejects an already queued wrapper
+			 * and anything not yet due is picked up on the worker's next pass
+			 */
+
+		boolean
+		isDue(
+			long	now )
+		{
+			if ( now >= next_tick ){
+
+				return( true );
+			}
+
+			return( idle_periods > 1 && instance.hasScheduleActivity());
+		}
+
+		synchronized boolean
+		setQueued()
+		{
+			if ( queued ){
+
+				return( false );
+			}
+
+			queued = true;
+
+			return( true );
+		}
+
+		synchronized void
+		clearQueued()
+		{
+			queued = false;
+		}
+
+		void
+		schedule()
+		{
+			long	now		= SystemTime.getMonotonousTime();
+			long	target	= next_tick;
+
+			int		periods;
+
+			if ( now >= target ){
+
+				periods = idle_periods;
+
+			}else{
+
+					// brought forward by activity
+
+				periods = getEarlyPeriods( last_schedule, now, idle_periods );
+
+				target	= now;
+			}
+
+			lag.update( now - target, now );
+
+			last_schedule = now;
+
+			try{
+				instance.schedule( periods );
+
+			}catch( Throwable e ){
+
+				Debug.printStackTrace(e);
+			}
+
+			idle_periods = getIdlePeriods( instance );
+
+			long	new_target = target + SCHEDULE_PERIOD_MILLIS * idle_periods;
+
+			if ( new_target <= now ){
+
+				new_target = now + ( target % SCHEDULE_PERIOD_MILLIS );
+			}
+
+			next_tick = new_target;
+		}
+
+		@Override
+		public int
+		compareTo(
+			instanceWrapper o )
+		{
+			return( priority - o.priority );
+		}
+	}
+}
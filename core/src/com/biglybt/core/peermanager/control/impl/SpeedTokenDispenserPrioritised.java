@@ -29,7 +29,7 @@ public class
 SpeedTokenDispenserPrioritised
 	implements SpeedTokenDispenser
 {
-	// crude TBF implementation
+	// crude TBF implementation, synchronised as the work-stealing scheduler uses it from several threads
 	private int		rateKiB;
 	{
 		COConfigurationManager.addAndFireParameterListeners(new String[] { "Max Download Speed KBs", "Use Request Limiting" }, new ParameterListener()
@@ -56,7 +56,7 @@ SpeedTokenDispenserPrioritised
 	private long	lastTimeMono	= SystemTime.getMonotonousTime();
 	private long	currentTimeMono;
 
-	public void update(long newTimeMono) {
+	public synchronized void update(long newTimeMono) {
 		currentTimeMono = newTimeMono;
 	}
 
@@ -67,7 +67,7 @@ SpeedTokenDispenserPrioritised
 	// n KiB buffer per 1KiB/s speed, that should be roughly n seconds max response time
 	private static final int	BUCKET_THRESHOLD_FACTOR			= 1024 * BUCKET_RESPONSE_TIME;
 
-	public void refill() {
+	public synchronized void refill() {
 		if (lastTimeMono == currentTimeMono || rateKiB == 0)
 			return;
 
@@ -92,7 +92,7 @@ SpeedTokenDispenserPrioritised
 	}
 
 	@Override
-	public int dispense(int numberOfChunks, int chunkSize) {
+	public synchronized int dispense(int numberOfChunks, int chunkSize) {
 		if (rateKiB == 0)
 			return numberOfChunks;
 		if (chunkSize > bucket)
@@ -108,12 +108,12 @@ SpeedTokenDispenserPrioritised
 	}
 
 	@Override
-	public void returnUnusedChunks(int unused, int chunkSize) {
+	public synchronized void returnUnusedChunks(int unused, int chunkSize) {
 		bucket += unused * chunkSize;
 	}
 
 	@Override
-	public int peek(int chunkSize) {
+	public synchronized int peek(int chunkSize) {
 		if (rateKiB != 0)
 			return (int)( bucket / chunkSize );
 		else
@@ -32,6 +32,7 @@ import com.biglybt.core.peermanager.messaging.MessageManager;
 import com.biglybt.core.util.Debug;
 import com.biglybt.core.util.DirectByteBuffer;
 import com.biglybt.core.util.DirectByteBufferPool;
+import com.biglybt.core.util.FileRegion;
 
 
 /**
@@ -277,6 +278,12 @@ public class BTMessageFactory {
       payload_size += payload[i].remaining( DirectByteBuffer.SS_MSG );
     }
 
+    FileRegion region = base_message instanceof BTPiece ? ((BTPiece)base_message).getPieceRegion() : null;
+
+    if( region != null ) {
+      payload_size += region.getLength();
+    }
+
     DirectByteBuffer header = DirectByteBufferPool.getBuffer( DirectByteBuffer.AL_MSG_BT_HEADER, 5 );
     header.putInt( DirectByteBuffer.SS_MSG, 1 + payload_size );
     header.put( DirectByteBuffer.SS_MSG, ld.bt_id );
@@ -286,7 +293,7 @@ public class BTMessageFactory {
     raw_buffs[0] = header;
     System.arraycopy(payload, 0, raw_buffs, 1, payload.length);
 
-    return new RawMessageImpl( base_message, raw_buffs, ld.priority, ld.is_no_delay, ld.to_remove );
+    return new RawMessageImpl( base_message, raw_buffs, region, ld.priority, ld.is_no_delay, ld.to_remove );
   }
 
 
@@ -24,6 +24,7 @@ import com.biglybt.core.peermanager.messaging.Message;
 import com.biglybt.core.peermanager.messaging.MessageException;
 import com.biglybt.core.util.DirectByteBuffer;
 import com.biglybt.core.util.DirectByteBufferPool;
+import com.biglybt.core.util.FileRegion;
 
 
 /**
@@ -32,6 +33,7 @@ import com.biglybt.core.util.DirectByteBufferPool;
 public class BTPiece implements BTMessage {
   private final byte version;
   private final DirectByteBuffer[] buffer = new DirectByteBuffer[ 2 ];
+  private final FileRegion region;
   private String description;
 
   private final int piece_number;
@@ -40,10 +42,18 @@ public class BTPiece implements BTMessage {
 
 
   public BTPiece( int piece_number, int piece_offset, DirectByteBuffer data, byte version ) {
+    this( piece_number, piece_offset, data, null, version );
+  }
+
+  /**
+   * @param region piece data sent directly from disk instead of the data buffer, only for queues that are file region capable
+   */
+  public BTPiece( int piece_number, int piece_offset, DirectByteBuffer data, FileRegion region, byte version ) {
     this.piece_number = piece_number;
     this.piece_offset = piece_offset;
-    this.piece_length = data == null ? 0 : data.remaining( DirectByteBuffer.SS_MSG );
+    this.piece_length = region != null ? region.getLength() : data == null ? 0 : data.remaining( DirectByteBuffer.SS_MSG );
     buffer[1] = data;
+    this.region = region;
     this.version = version;
   }
 
@@ -53,8 +63,13 @@ public class BTPiece implements BTMessage {
 
   public int getPieceOffset() {  return piece_offset;  }
 
+  /**
+   * @return piece data; null when sent from a file region
+   */
   public DirectByteBuffer getPieceData() {  return buffer[1];  }
 
+  public FileRegion getPieceRegion() {  return region;  }
+
 
 
   @Override
@@ -93,6 +108,10 @@ public class BTPiece implements BTMessage {
       buffer[0].flip( DirectByteBuffer.SS_MSG );
     }
 
+    if( region != null ) {  //data follows from the region
+      return new DirectByteBuffer[]{ buffer[0] };
+    }
+
     return buffer;
   }
 
@@ -126,5 +145,6 @@ public class BTPiece implements BTMessage {
   public void destroy() {
     if( buffer[0] != null ) buffer[0].returnToPool();
     if( buffer[1] != null ) buffer[1].returnToPool();
+    if( region != null ) region.release();
   }
 }
@@ -38,6 +38,7 @@ import com.biglybt.core.peermanager.control.PeerControlSchedulerFactory;
 import com.biglybt.core.peermanager.control.SpeedTokenDispenser;
 import com.biglybt.core.peermanager.piecepicker.*;
 import com.biglybt.core.peermanager.piecepicker.util.BitFlags;
+import com.biglybt.core.stats.CoreMetrics;
 import com.biglybt.core.util.*;
 
 /**
@@ -53,6 +54,9 @@ implements PiecePicker
 	
 	private static final LogIDs LOGID = LogIDs.PIECES;
 
+	private static final CoreMetrics.Histogram	allocate_time_histogram =
+		CoreMetrics.getHistogram( CoreMetrics.MT_PEER_PICKER_ALLOCATE_TIME, "Time taken to allocate requests to peers" );
+
 	/** min ms for recalculating availability - reducing this has serious ramifications */
 	private static final long TIME_MIN_AVAILABILITY	= 974;
 	private static final long TIME_MIN_FILE_AVAILABILITY	= 5*1000;
@@ -138,6 +142,8 @@ implements PiecePicker
 
 	private final List<PEPiece>	rarestStartedPieces; //List of pieces started as rarest first
 
+	private final PieceSelectionIndex	selectionIndex;	// null if the torrent has too many pieces to index
+
 	protected final AEMonitor availabilityMon = new AEMonitor("PiecePicker:avail");
 	
 	private final Object endGameModeChunkLock = new Object();
@@ -217,6 +223,7 @@ implements PiecePicker
 	private int[]				global_request_hint;
 
 	private static boolean		enable_request_hints;
+	private static boolean		enable_indexed_selection;
 	private static boolean		includeLanPeersInReqLimiting;
 
 	private final CopyOnWriteList<PiecePickerListener>		listeners = new CopyOnWriteList<>();
@@ -259,11 +266,13 @@ implements PiecePicker
 		COConfigurationManager.addAndFireParameterListeners(
 				new String[]{
 					"Piece Picker Request Hint Enabled",
+					"Piece Picker Indexed Selection Enabled",
 					"LAN Speed Enabled"
 				},
 				(n)->{
 					
 			    	enable_request_hints			= COConfigurationManager.getBooleanParameter( "Piece Picker Request Hint Enabled" );
+			    	enable_indexed_selection		= COConfigurationManager.getBooleanParameter( "Piece Picker Indexed Selection Enabled" );
 					includeLanPeersInReqLimiting 	= !COConfigurationManager.getBooleanParameter( "LAN Speed Enabled" );
 				});
 	}
@@ -282,6 +291,8 @@ implements PiecePicker
 
 		pePieces = pc.getPieces();
 
+		selectionIndex = PieceSelectionIndex.isSupported( nbPieces )?new PieceSelectionIndex( dmPieces, pePieces ):null;
+
 		// now do stuff related to availability
 		availability =new int[nbPieces];  //always needed
 
@@ -359,6 +370,9 @@ implements PiecePicker
 		}
 		++availabilityAsynch[pieceNumber];
 		availabilityChange++;
+		if ( selectionIndex != null ){
+			selectionIndex.availabilityChanged( pieceNumber );
+		}
 		} finally {availabilityMon.exit();}
 
 		// if this is an interesting piece then clear any record of "no requests" so the peer gets
@@ -410,6 +424,15 @@ implements PiecePicker
 					timeAvailRebuild++;
 			}
 
+			if ( selectionIndex != null ){
+				final int[]   old_availability =availabilityAsynch ==null ?availability :availabilityAsynch;
+				for (int i=0;i<new_availability.length;i++){
+					if ( new_availability[i] != old_availability[i]){
+						selectionIndex.availabilityChanged( i );
+					}
+				}
+			}
+
 			availabilityAsynch	= new_availability;
 
 			availabilityDrift =0;
@@ -429,6 +452,9 @@ implements PiecePicker
 		if ( availabilityAsynch != null ){
 			availability 		= availabilityAsynch;
 			availabilityAsynch	= null;
+			if ( selectionIndex != null ){
+				selectionIndex.availabilitySnapshot();
+			}
 		}
 		} finally {availabilityMon.exit();}
 
@@ -515,11 +541,8 @@ implements PiecePicker
 				final BitFlags peerHavePieces =peer.getAvailable();
 				if (peerHavePieces !=null &&peerHavePieces.nbSet >0)
 				{
-					for (j =peerHavePieces.start; j <=peerHavePieces.end; j++)
-					{
-						if (peerHavePieces.flags[j])
-							++newAvailability[j];
-					}
+					for (j =peerHavePieces.nextSetBit(0); j >=0; j =peerHavePieces.nextSetBit(j +1))
+						++newAvailability[j];
 				}
 			}
 		}
@@ -697,6 +720,19 @@ implements PiecePicker
 			return;
 		}
 
+		long	start = SystemTime.getHighPrecisionCounter();
+
+		try{
+			allocateRequestsSupport();
+
+		}finally{
+
+			allocate_time_histogram.record(( SystemTime.getHighPrecisionCounter() - start )/1000 );
+		}
+	}
+
+	private void allocateRequestsSupport()
+	{
 		allocate_request_loop_count++;
 
 		final List peers =peerControl.getPeers();
@@ -1787,7 +1823,7 @@ implements PiecePicker
 
 				long piece_rta = provider_piece_rtas[i];
 
-				if ( peerHavePieces.flags[i] && startPriorities[i] == PRIORITY_REALTIME && piece_rta > 0 ){
+				if ( peerHavePieces.get(i) && startPriorities[i] == PRIORITY_REALTIME && piece_rta > 0 ){
 
 					final DiskManagerPiece dmPiece =dmPieces[i];
 
@@ -2088,7 +2124,7 @@ implements PiecePicker
 
 					if ( peerReserved != null && peerReserved.equals( pt.getIp())){
 
-						if ( peerHavePieces.flags[reservedPieceNumber] &&pePiece.isRequestable()){
+						if ( peerHavePieces.get(reservedPieceNumber) &&pePiece.isRequestable()){
 
 							return reservedPieceNumber;
 						}else{
@@ -2175,13 +2211,42 @@ implements PiecePicker
 
         CopyOnWriteSet<Integer>	forced = forced_pieces;
 
+        	// when nothing peer specific affects the ordering we only need to look at the active pieces
+        	// and the best tier of startable pieces that the peer has, rather than everything it has
+
+        final int[]	indexed;
+        final int	nbIndexed;
+
+        if ( 	enable_indexed_selection &&
+        		selectionIndex != null &&
+        		startPriorities != null &&
+        		peerPriorities == null &&
+        		request_hint_piece_number == -1 &&
+        		forced == null &&
+        		sequentialDownload == 0 ){
+
+        	selectionIndex.update( startPriorities, availability, globalMinOthers );
+
+        	indexed 	= selectionIndex.getCandidates( peerHavePieces, rarestAllowed );
+        	nbIndexed	= selectionIndex.getCandidateCount();
+
+        }else{
+
+        	indexed 	= null;
+        	nbIndexed	= 0;
+        }
+
+        final int	scanLength = indexed==null?( endI - startI + 1 ):nbIndexed;
+
 			// Try to continue a piece already loaded, according to priority
 
-        for (i =startI; i <=endI; i++){
+        for ( int s=0; s<scanLength; s++ ){
+
+        	i = indexed==null?( startI + s ):indexed[s];
 
         		// is the piece available from this peer?
 
-        	if ( peerHavePieces.flags[i]){
+        	if ( peerHavePieces.get(i)){
 
         		priority = startPriorities[i];
 
@@ -2456,7 +2521,7 @@ implements PiecePicker
 		for (int i =startI; i <=startCandidates.end &&i >=startCandidates.start; i +=direction)
 		{
 			// is piece flagged
-			if (startCandidates.flags[i])
+			if (startCandidates.get(i))
 			{
 				foundNb++;
 				if (foundNb >=targetNb)
@@ -3250,6 +3315,22 @@ implements PiecePicker
 			final PEPeerListenerImpl peerListener =(PEPeerListenerImpl)peerListeners.remove(peer);
 			peer.removeListener(peerListener);
 		}
+
+		@Override
+		public final void pieceAdded(PEPeerManager manager, PEPiece piece, PEPeer for_peer )
+		{
+			if ( selectionIndex != null ){
+				selectionIndex.pieceAdded( piece.getPieceNumber());
+			}
+		}
+
+		@Override
+		public final void pieceRemoved(PEPeerManager manager, PEPiece piece )
+		{
+			if ( selectionIndex != null ){
+				selectionIndex.pieceRemoved( piece.getPieceNumber());
+			}
+		}
 	}
 
 	/**
@@ -3298,13 +3379,14 @@ implements PiecePicker
 			if ( availabilityAsynch == null ){
 				availabilityAsynch = (int[])availability.clone();
 			}
-			for (int i =peerHavePieces.start; i <=peerHavePieces.end; i++)
+			for (int i =peerHavePieces.nextSetBit(0); i >=0; i =peerHavePieces.nextSetBit(i +1))
 			{
-				if ( peerHavePieces.flags[i] ){
-					++availabilityAsynch[i];
-				}
+				++availabilityAsynch[i];
 			}
 			availabilityChange++;
+			if ( selectionIndex != null ){
+				selectionIndex.availabilityChanged( peerHavePieces );
+			}
 			} finally {availabilityMon.exit();}
 		}
 
@@ -3324,17 +3406,17 @@ implements PiecePicker
 			{
 				availabilityAsynch = (int[])availability.clone();
 			}
-			for (int i =peerHavePieces.start; i <=peerHavePieces.end; i++)
+			for (int i =peerHavePieces.nextSetBit(0); i >=0; i =peerHavePieces.nextSetBit(i +1))
 			{
-				if (peerHavePieces.flags[i])
-				{
-					if (availabilityAsynch[i] >(dmPieces[i].isDone() ?1 :0))
-						--availabilityAsynch[i];
-					else
-						availabilityDrift++;
-				}
+				if (availabilityAsynch[i] >(dmPieces[i].isDone() ?1 :0))
+					--availabilityAsynch[i];
+				else
+					availabilityDrift++;
 			}
 			availabilityChange++;
+			if ( selectionIndex != null ){
+				selectionIndex.availabilityChanged( peerHavePieces );
+			}
 			} finally {availabilityMon.exit();}
 		}
 	}
@@ -3429,6 +3511,9 @@ implements PiecePicker
 				else
 					availabilityDrift++;
 				availabilityChange++;
+				if ( selectionIndex != null ){
+					selectionIndex.availabilityChanged( pieceNumber );
+				}
 				} finally {availabilityMon.exit();}
 				nbPiecesDone--;
 				if (dmPiece.calcNeeded() &&!hasNeededUndonePiece)
@@ -0,0 +1,564 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.peermanager.piecepicker.impl;
+
+import java.util.Arrays;
+
+import com.biglybt.core.disk.DiskManagerPiece;
+import com.biglybt.core.peer.PEPiece;
+import com.biglybt.core.peermanager.piecepicker.util.BitFlags;
+
+/**
+ * Pre-ordered view of the pieces that can be started, used by the piece picker to avoid scanning
+ * every piece a peer has each time it looks for a request candidate.
+ * <p>
+ * The startable pieces are kept sorted into tiers - by (priority desc, availability asc) and,
+ * separately, the rarest pieces by priority desc. A candidate search then walks the tiers in order
+ * and stops at the first tier that the peer can supply, returning those pieces together with the
+ * active pieces the peer has. The picker runs its normal evaluation over this much smaller set and
+ * reaches the same decision as a full scan.
+ * <p>
+ * The tiers are maintained incrementally. The picker reports the pieces whose availability changes
+ * (have messages, peers arriving and leaving, pieces completing) as they happen and these are handed
+ * over along with each availability snapshot; changed priorities are found by comparing against the
+ * previous priorities. Only the changed pieces are re-keyed and sorted, and are then merged into the
+ * existing order. The rarest tier is a filter of that order. Packed sets of the indexed and rarest
+ * pieces let a search skip a tier with a word-at-a-time intersection when the peer has none of it.
+ * <p>
+ * Tier keys are packed into longs so the ordering is a primitive sort. Priorities and availabilities
+ * beyond the packed ranges are clamped, which can only merge tiers - the picker's evaluation then
+ * separates them again.
+ */
+
+class
+PieceSelectionIndex
+{
+	private static final int	PIECE_BITS		= 23;
+	private static final int	AVAIL_BITS		= 14;
+	private static final int	PRIORITY_BITS	= 26;
+
+	private static final long	PIECE_MASK		= ( 1L << PIECE_BITS ) - 1;
+	private static final int	AVAIL_MAX		= ( 1 << AVAIL_BITS ) - 1;
+	private static final int	PRIORITY_MAX	= ( 1 << PRIORITY_BITS ) - 1;
+
+	private static final int	NORMAL_TIER_SHIFT	= PIECE_BITS;
+	private static final int	RAREST_TIER_SHIFT	= AVAIL_BITS + PIECE_BITS;
+
+	private static final int[]	NO_PIECES		= {};
+
+	protected static boolean
+	isSupported(
+		int		nb_pieces )
+	{
+		return( nb_pieces <= PIECE_MASK );
+	}
+
+	private final DiskManagerPiece[]	dmPieces;
+	private final PEPiece[]				pePieces;
+	private final int					nbPieces;
+
+	private boolean		built;
+	private int[]		indexedPriorities;
+	private int[]		indexedAvailability;
+	private int			indexedMinOthers;
+
+	private long[]			normalOrder;
+	private int				normalCount;
+	private long[]			mergeOrder;
+	private final long[]	rarestOrder;
+	private int				rarestCount;
+	private long[]			changedKeys		= new long[64];
+
+	private final BitFlags	indexedPieces;
+	private final BitFlags	rarestPieces;
+
+		// availability changes since the last snapshot, guarded by the picker's availability monitor
+
+	private final BitFlags	availabilityChanges;
+
+		// changes included in snapshots but not yet applied, guarded by this
+
+	private BitFlags		pendingChanges;
+	private BitFlags		applyingChanges;
+
+	private volatile int[]	activePieces = NO_PIECES;
+
+	private int[]		candidates		= new int[64];
+	private int			nbCandidates;
+
+	protected
+	PieceSelectionIndex(
+		DiskManagerPiece[]	_dmPieces,
+		PEPiece[]			_pePieces )
+	{
+		dmPieces	= _dmPieces;
+		pePieces	= _pePieces;
+		nbPieces	= dmPieces.length;
+
+		normalOrder	= new long[nbPieces];
+		mergeOrder	= new long[nbPieces];
+		rarestOrder	= new long[nbPieces];
+
+		indexedPieces		= new BitFlags( nbPieces );
+		rarestPieces		= new BitFlags( nbPieces );
+		availabilityChanges	= new BitFlags( nbPieces );
+		pendingChanges		= new BitFlags( nbPieces );
+		applyingChanges		= new BitFlags( nbPieces );
+	}
+
+		/**
+		 * The following are called by the picker with its availability monitor held whenever it
+		 * changes the asynchronous availability
+		 */
+
+	protected void
+	availabilityChanged(
+		int		piece_number )
+	{
+		availabilityChanges.set( piece_number );
+	}
+
+	protected void
+	availabilityChanged(
+		BitFlags	pieces )
+	{
+		for ( int i=pieces.nextSetBit(0); i>=0; i=pieces.nextSetBit(i+1)){
+
+			availabilityChanges.set( i );
+		}
+	}
+
+		/**
+		 * Called, availability monitor held, as the asynchronous availability becomes the picker's snapshot
+		 */
+
+	protected synchronized void
+	availabilitySnapshot()
+	{
+		BitFlags	changes = availabilityChanges;
+
+		if ( changes.nbSet > 0 ){
+
+			for ( int i=changes.nextSetBit(0); i>=0; i=changes.nextSetBit(i+1)){
+
+				pendingChanges.set( i );
+			}
+
+			changes.clear();
+		}
+	}
+
+		/**
+		 * Brings the index into line with the picker's current priorities/availability, cheap if
+		 * neither has changed since the last call
+		 */
+
+	protected void
+	update(
+		int[]		priorities,
+		int[]		availability,
+		int			globalMinOthers )
+	{
+		if ( 	priorities == indexedPriorities &&
+				availability == indexedAvailability &&
+				globalMinOthers == indexedMinOthers ){
+
+			return;
+		}
+
+		BitFlags	changed;
+
+		synchronized( this ){
+
+			changed			= pendingChanges;
+			pendingChanges	= applyingChanges;
+		}
+
+		applyingChanges = changed;
+
+		if ( !built ){
+
+			build( priorities, availability, globalMinOthers );
+
+		}else{
+
+			int[]	old_priorities = indexedPriorities;
+
+			if ( priorities != old_priorities ){
+
+				for ( int i=0;i<nbPieces;i++){
+
+					if ( priorities[i] != old_priorities[i] ){
+
+						changed.set( i );
+					}
+				}
+			}
+
+			indexedPriorities	= priorities;
+			indexedAvailability	= availability;
+
+			if ( changed.nbSet > 0 ){
+
+				merge( changed );
+
+				filterRarest( globalMinOthers );
+
+			}else if ( globalMinOthers != indexedMinOthers ){
+
+				filterRarest( globalMinOthers );
+			}
+		}
+
+		changed.clear();
+	}
+
+	private void
+	build(
+		int[]		priorities,
+		int[]		availability,
+		int			globalMinOthers )
+	{
+		indexedPriorities	= priorities;
+		indexedAvailability	= availability;
+
+		int	normal	= 0;
+
+		for ( int i=0;i<nbPieces;i++){
+
+			long	key = getKey( i );
+
+			if ( key >= 0 ){
+
+				normalOrder[normal++] = key;
+
+				indexedPieces.set( i );
+			}
+		}
+
+		Arrays.sort( normalOrder, 0, normal );
+
+		normalCount	= normal;
+
+		filterRarest( globalMinOthers );
+
+		built = true;
+
+			// resync the active pieces in case we've missed any events (e.g. pieces added before the
+			// picker was registered)
+
+		synchronized( this ){
+
+			int[]	active		= new int[16];
+			int		nbActive	= 0;
+
+			for ( int i=0;i<nbPieces;i++){
+
+				if ( pePieces[i] != null ){
+
+					if ( nbActive == active.length ){
+
+						active = Arrays.copyOf( active, nbActive*2 );
+					}
+
+					active[nbActive++] = i;
+				}
+			}
+
+			activePieces = Arrays.copyOf( active, nbActive );
+		}
+	}
+
+		/**
+		 * @return the piece's tier key, -1 if it isn't to be indexed. Active pieces are kept in the
+		 * tiers so that they're still found once they become inactive - they're skipped at search time
+		 * while active. Done pieces are dropped as the picker reports completions as availability changes,
+		 * other pieces that can't currently be started are likewise skipped at search time
+		 */
+
+	private long
+	getKey(
+		int		piece )
+	{
+		int	priority = indexedPriorities[piece];
+
+		if ( priority < 0 || dmPieces[piece].isDone()){
+
+			return( -1 );
+		}
+
+		long	p = PRIORITY_MAX - Math.min( priority, PRIORITY_MAX );
+
+		return(
+			( p << ( AVAIL_BITS + PIECE_BITS )) |
+			((long)Math.min( getAvailability( piece ), AVAIL_MAX ) << PIECE_BITS ) |
+			piece );
+	}
+
+	private int
+	getAvailability(
+		int		piece )
+	{
+			// peers only get asked about pieces they have so a zero availability is treated
+			// as one, as the picker does
+
+		int	avail = indexedAvailability[piece];
+
+		return( avail==0?1:avail );
+	}
+
+		/**
+		 * Re-keys the changed pieces and merges them, sorted, into the existing order
+		 */
+
+	private void
+	merge(
+		BitFlags	changed )
+	{
+		if ( changedKeys.length < changed.nbSet ){
+
+			changedKeys = new long[Math.max( changed.nbSet, changedKeys.length*2 )];
+		}
+
+		int	nbChanged = 0;
+
+		for ( int i=changed.nextSetBit(0); i>=0; i=changed.nextSetBit(i+1)){
+
+			long	key = getKey( i );
+
+			if ( key >= 0 ){
+
+				changedKeys[nbChanged++] = key;
+
+				indexedPieces.set( i );
+
+			}else{
+
+				indexedPieces.unset( i );
+			}
+		}
+
+		Arrays.sort( changedKeys, 0, nbChanged );
+
+		long[]	from	= normalOrder;
+		long[]	to		= mergeOrder;
+		int		count	= normalCount;
+
+		int	f = 0;
+		int	c = 0;
+		int	t = 0;
+
+		while ( f < count ){
+
+			long	key = from[f];
+
+			if ( changed.get((int)( key & PIECE_MASK ))){
+
+					// superseded by the re-keyed entry, if any
+
+				f++;
+
+				continue;
+			}
+
+			if ( c < nbChanged && changedKeys[c] < key ){
+
+				to[t++] = changedKeys[c++];
+
+			}else{
+
+				to[t++] = key;
+
+				f++;
+			}
+		}
+
+		while ( c < nbChanged ){
+
+			to[t++] = changedKeys[c++];
+		}
+
+		normalOrder	= to;
+		mergeOrder	= from;
+		normalCount	= t;
+	}
+
+	private void
+	filterRarest(
+		int		globalMinOthers )
+	{
+		indexedMinOthers = globalMinOthers;
+
+		rarestPieces.clear();
+
+		int	rarest = 0;
+
+		for ( int i=0;i<normalCount;i++){
+
+			long	key		= normalOrder[i];
+			int		piece	= (int)( key & PIECE_MASK );
+
+			if ( getAvailability( piece ) <= globalMinOthers ){
+
+				rarestOrder[rarest++] = key;
+
+				rarestPieces.set( piece );
+			}
+		}
+
+		rarestCount	= rarest;
+	}
+
+	protected synchronized void
+	pieceAdded(
+		int		piece_number )
+	{
+		int[]	active = activePieces;
+
+		for ( int p: active ){
+
+			if ( p == piece_number ){
+
+				return;
+			}
+		}
+
+		int[]	new_active = Arrays.copyOf( active, active.length + 1 );
+
+		new_active[active.length] = piece_number;
+
+		activePieces = new_active;
+	}
+
+	protected synchronized void
+	pieceRemoved(
+		int		piece_number )
+	{
+		int[]	active = activePieces;
+
+		for ( int i=0;i<active.length;i++){
+
+			if ( active[i] == piece_number ){
+
+				int[]	new_active = new int[active.length-1];
+
+				System.arraycopy( active, 0, new_active, 0, i );
+				System.arraycopy( active, i+1, new_active, i, new_active.length - i );
+
+				activePieces = new_active;
+
+				return;
+			}
+		}
+	}
+
+		/**
+		 * Only called from the peer manager's request allocation so uses shared working storage
+		 * @return ascending piece numbers for the picker to evaluate - the active pieces the peer has
+		 * plus the best tier of startable pieces that the peer has. The array is reused by the next
+		 * call and only the first {@link #getCandidateCount()} entries are valid
+		 */
+
+	protected int[]
+	getCandidates(
+		BitFlags	peerHavePieces,
+		boolean		rarestAllowed )
+	{
+		nbCandidates = 0;
+
+		for ( int p: activePieces ){
+
+			if ( peerHavePieces.get( p ) && pePieces[p] != null ){
+
+				addCandidate( p );
+			}
+		}
+
+		int	nbActive = nbCandidates;
+
+		boolean	sort = false;
+
+		if ( rarestAllowed && peerHavePieces.intersects( rarestPieces )){
+
+				// the rarest tiers are by priority alone so the pieces aren't in piece order
+
+			addTier( rarestOrder, rarestCount, RAREST_TIER_SHIFT, peerHavePieces );
+
+			sort = nbCandidates > nbActive + 1;
+		}
+
+		if ( nbCandidates == nbActive && peerHavePieces.intersects( indexedPieces )){
+
+			addTier( normalOrder, normalCount, NORMAL_TIER_SHIFT, peerHavePieces );
+		}
+
+		if ( sort || ( nbCandidates > nbActive && nbActive > 0 )){
+
+			Arrays.sort( candidates, 0, nbCandidates );
+		}
+
+		return( candidates );
+	}
+
+	protected int
+	getCandidateCount()
+	{
+		return( nbCandidates );
+	}
+
+	private void
+	addTier(
+		long[]			order,
+		int				count,
+		int				tier_shift,
+		BitFlags		have )
+	{
+		long	tier = -1;
+
+		for ( int i=0;i<count;i++){
+
+			long	key		= order[i];
+			int		piece	= (int)( key & PIECE_MASK );
+
+			if ( tier != -1 && ( key >>> tier_shift ) != tier ){
+
+				break;
+			}
+
+			if ( have.get( piece ) && pePieces[piece] == null && dmPieces[piece].isDownloadable()){
+
+				addCandidate( piece );
+
+				tier = key >>> tier_shift;
+			}
+		}
+	}
+
+	private void
+	addCandidate(
+		int		piece )
+	{
+		if ( nbCandidates == candidates.length ){
+
+			candidates = Arrays.copyOf( candidates, nbCandidates*2 );
+		}
+
+		candidates[nbCandidates++] = piece;
+	}
+}
@@ -25,14 +25,18 @@ import com.biglybt.core.util.HashCodeUtils;
 
 /**
  * @author MjrTom
- * A fairly light-weight, versatile boolean array of bit flags with administrative fields and methods
+ * A fairly light-weight, versatile array of bit flags with administrative fields and methods
  * Originaly designed as a boolean array to correspond to the pieces in a torrent,
  * for example to show which pieces are; downloading, high priority, rarest, available, or whatever.
+ * The flags are packed 64 to a long so that a peer's bitfield costs one bit per piece and the
+ * bulk operations (and, andNot, counting, scanning for set bits) work a word at a time.
  * This class is subject to experimentation, although the important uses of the class must NOT be broken.
  */
 public class BitFlags
     implements Cloneable
 {
+	private static final int	WORD_SHIFT	= 6;
+
 	// These are public so they can be read quickly.
     // Please don't try to modify them outside of the given methods.
     /** Index of first set bit */
@@ -41,23 +45,26 @@ public class BitFlags
     public int          end;
     /** how many bits are set */
 	public int			nbSet;
-    /** The array of bit flags */
-	public final boolean[]	flags;
+
+    /** The packed bit flags, flag i is bit (i &63) of word (i >>6). Bits beyond length are always clear */
+	private final long[]	words;
+	private final int		length;
 
 	public BitFlags(final int count)
 	{
         start =count;
         end =0;
         nbSet =0;
-		flags =new boolean[count];
+        length =count;
+		words =new long[(count +63) >>WORD_SHIFT];
 	}
 
 	public BitFlags(final boolean[]	_flags )
 	{
-        start =_flags.length;
-		flags	= _flags;
-		for (int i=0;i<flags.length;i++){
-			if ( flags[i]){
+		this(_flags.length);
+		for (int i=0;i<_flags.length;i++){
+			if ( _flags[i]){
+				words[i >>WORD_SHIFT] |=1L <<i;
 				nbSet++;
 				if ( i < start ){
 					start = i;
@@ -73,7 +80,31 @@ public class BitFlags
         start =other.start;
         end =other.end;
         nbSet =other.nbSet;
-        flags =(boolean[])other.flags.clone();
+        length =other.length;
+        words =other.words.clone();
+    }
+
+    /**
+     * Decodes a BitTorrent bitfield, where the high bit of the first byte is the first piece.
+     * Spare bits after the last piece are ignored
+     * @param data at least (count +7) /8 bytes
+     * @param count the number of pieces
+     */
+    public static BitFlags fromBitfield(final byte[] data, final int count)
+    {
+        final BitFlags result =new BitFlags(count);
+        final long[] words =result.words;
+        final int nbBytes =(count +7) >>3;
+        for (int i =0; i <nbBytes; i++)
+        {
+            // reverse the bit order within the byte so that piece i ends up as bit i
+            final long b =Integer.reverse(data[i] &0xff) >>>24;
+            words[i >>3] |=b <<((i &7) <<3);
+        }
+        if ((count &63) !=0)
+            words[words.length -1] &=(1L <<count) -1;
+        result.recount();
+        return result;
     }
 
     @Override
@@ -84,7 +115,8 @@ public class BitFlags
 
     public int hashCode()
     {
-        int result =HashCodeUtils.hashMore(0, flags);
+        int result =Arrays.hashCode(words);
+        result =HashCodeUtils.hashMore(result, length);
         result =HashCodeUtils.hashMore(result, nbSet);
         result =HashCodeUtils.hashMore(result, end);
         return HashCodeUtils.hashMore(result, start);
@@ -101,33 +133,39 @@ public class BitFlags
             return false;
         if (this.nbSet !=other.nbSet)
             return false;
-        if (this.flags ==null &&other.flags ==null)
-            return true;
-        if (this.flags ==null ||other.flags ==null)
+        if (this.length !=other.length)
             return false;
-        if (this.flags.length !=other.flags.length)
-            return false;
-        for (int i =0; i <this.flags.length; i++)
-        {
-            if (this.flags[i] ^ other.flags[i])
-                return false;
-        }
-
-        return true;
+        return Arrays.equals(this.words, other.words);
     }
 
-    /** You can read flags.length instead (but please don't modify it)
+    /**
      * @return the number of elements in this array
      */
     public int size()
     {
-        return flags.length;
+        return length;
+    }
+
+    public boolean get(final int i)
+    {
+        return (words[checkIndex(i) >>WORD_SHIFT] &(1L <<i)) !=0;
+    }
+
+    /**
+     * @return a copy of the flags as a boolean array, for the occasional caller that needs one
+     */
+    public boolean[] toBooleanArray()
+    {
+        final boolean[] result =new boolean[length];
+        for (int i =nextSetBit(0); i >=0; i =nextSetBit(i +1))
+            result[i] =true;
+        return result;
     }
 
 	public void clear()
 	{
-		Arrays.fill(flags, false);
-		start =flags.length;
+		Arrays.fill(words, 0);
+		start =length;
 		end =0;
 		nbSet =0;
 	}
@@ -135,7 +173,7 @@ public class BitFlags
     /** for setting a flag that is already known to be the first true flag */
 	public void setStart(final int i)
 	{
-		flags[i] =true;
+		words[checkIndex(i) >>WORD_SHIFT] |=1L <<i;
 		nbSet++;
 		start =i;
 	}
@@ -143,9 +181,11 @@ public class BitFlags
     /** for setting a flag that is not known to be the first or last, or not */
 	public void set(final int i)
 	{
-		if (!flags[i])
+		final int w =checkIndex(i) >>WORD_SHIFT;
+		final long mask =1L <<i;
+		if ((words[w] &mask) ==0)
 		{
-			flags[i] =true;
+			words[w] |=mask;
 			nbSet++;
 			if (start >i)
 				start =i;
@@ -157,9 +197,11 @@ public class BitFlags
 	/** for setting a flag that is not known to be the first or last, or not */
 	public void unset(final int i)
 	{
-		if (flags[i])
+		final int w =checkIndex(i) >>WORD_SHIFT;
+		final long mask =1L <<i;
+		if ((words[w] &mask) !=0)
 		{
-			flags[i] =false;
+			words[w] &=~mask;
 			nbSet--;
 		}
 	}
@@ -167,7 +209,7 @@ public class BitFlags
     /** this is for setting a flag that is already known to be the last true flag */
 	public void setEnd(final int i)
 	{
-		flags[i] =true;
+		words[checkIndex(i) >>WORD_SHIFT] |=1L <<i;
 		nbSet++;
 		end =i;
 	}
@@ -175,20 +217,24 @@ public class BitFlags
     /** clears the array then sets the given flag */
 	public void setOnly(final int i)
 	{
-        if (start <flags.length)
-            Arrays.fill(flags, start, end, false);
+		checkIndex(i);
+		Arrays.fill(words, 0);
 		nbSet =1;
 		start =i;
 		end =i;
-		flags[i] =true;
+		words[i >>WORD_SHIFT] =1L <<i;
 	}
 
 	public void setAll()
 	{
+		if (length ==0)
+			return;
 		start =0;
-		end =flags.length -1;
-		Arrays.fill(flags, true);
-		nbSet =flags.length;
+		end =length -1;
+		Arrays.fill(words, -1L);
+		if ((length &63) !=0)
+			words[words.length -1] =(1L <<length) -1;
+		nbSet =length;
 	}
 
 	/**
@@ -199,37 +245,123 @@ public class BitFlags
 	 */
 	public BitFlags and(final BitFlags other)
 	{
-		final BitFlags result =new BitFlags(flags.length);
+		final BitFlags result =new BitFlags(length);
 		if (this.nbSet >0 &&other.nbSet >0)
 		{
-            // setup outer union bounds
-			int i =this.start >other.start ?this.start :other.start;
-			final int endI =this.end <other.end ?this.end :other.end;
-            // find the first common set bit
-			for (; i <=endI; i++)
-			{
-				if (this.flags[i] &&other.flags[i])
-				{
-                    result.flags[i] =true;
-                    result.nbSet++;
-                    result.start =i;
-					break;
-				}
-			}
-            // find any remaining common bits
-			for (; i <=endI; i++)
+			final long[] a =this.words;
+			final long[] b =other.words;
+			final long[] r =result.words;
+            // only the words within the outer union bounds can have common bits
+			final int startW =Math.max(this.start, other.start) >>WORD_SHIFT;
+			final int endW =Math.min(this.end, other.end) >>WORD_SHIFT;
+			for (int i =startW; i <=endW; i++)
+				r[i] =a[i] &b[i];
+			result.recount();
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a new BitFlags with the flags set in this BitFlags but not in the other.
+     * The length of both must be the same.
+	 */
+	public BitFlags andNot(final BitFlags other)
+	{
+		final BitFlags result =new BitFlags(length);
+		if (this.nbSet >0)
+		{
+			final long[] a =this.words;
+			final long[] b =other.words;
+			final long[] r =result.words;
+			for (int i =this.start >>WORD_SHIFT; i <=this.end >>WORD_SHIFT; i++)
+				r[i] =a[i] &~b[i];
+			result.recount();
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if any flag is set in both, stopping at the first common word.
+     * The length of both must be the same.
+	 */
+	public boolean intersects(final BitFlags other)
+	{
+		if (this.nbSet ==0 ||other.nbSet ==0)
+			return false;
+		final long[] a =this.words;
+		final long[] b =other.words;
+		final int endW =Math.min(this.end, other.end) >>WORD_SHIFT;
+		for (int i =Math.max(this.start, other.start) >>WORD_SHIFT; i <=endW; i++)
+		{
+			if ((a[i] &b[i]) !=0)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of flags set in both, without building the intersection.
+     * The length of both must be the same.
+	 */
+	public int andCardinality(final BitFlags other)
+	{
+		if (this.nbSet ==0 ||other.nbSet ==0)
+			return 0;
+		final long[] a =this.words;
+		final long[] b =other.words;
+		final int endW =Math.min(this.end, other.end) >>WORD_SHIFT;
+		int count =0;
+		for (int i =Math.max(this.start, other.start) >>WORD_SHIFT; i <=endW; i++)
+			count +=Long.bitCount(a[i] &b[i]);
+		return count;
+	}
+
+	/**
+	 * @return the index of the first set flag at or after from, -1 if none
+	 */
+	public int nextSetBit(final int from)
+	{
+		if (from >=length)
+			return -1;
+		int w =from >>WORD_SHIFT;
+		long word =words[w] &(-1L <<from);
+		while (true)
+		{
+			if (word !=0)
+				return (w <<WORD_SHIFT) +Long.numberOfTrailingZeros(word);
+			if (++w ==words.length)
+				return -1;
+			word =words[w];
+		}
+	}
+
+	private int checkIndex(final int i)
+	{
+		if (i <0 ||i >=length)
+			throw new ArrayIndexOutOfBoundsException(i);
+		return i;
+	}
+
+	/** recalculates nbSet, start and end from the words */
+	private void recount()
+	{
+		int count =0;
+		int first =-1;
+		int last =-1;
+		for (int i =0; i <words.length; i++)
+		{
+			final long word =words[i];
+			if (word !=0)
 			{
-				if (this.flags[i] &&other.flags[i])
-				{
-                    result.flags[i] =true;
-                    result.nbSet++;
-                    result.end =i;
-				}
+				count +=Long.bitCount(word);
+				if (first <0)
+					first =(i <<WORD_SHIFT) +Long.numberOfTrailingZeros(word);
+				last =(i <<WORD_SHIFT) +63 -Long.numberOfLeadingZeros(word);
 			}
-            if (result.end <result.start)
-                result.end =result.start;
 		}
-		return result;
+		nbSet =count;
+		start =first <0 ?length :first;
+		end =last <0 ?0 :last;
 	}
 
 }
@@ -21,17 +21,22 @@ package com.biglybt.core.peermanager.utils;
 
 import java.util.*;
 
+import com.biglybt.core.disk.DiskManager;
 import com.biglybt.core.disk.DiskManagerReadRequest;
 import com.biglybt.core.disk.DiskManagerReadRequestListener;
 import com.biglybt.core.networkmanager.OutgoingMessageQueue;
 import com.biglybt.core.peer.PEPeer;
 import com.biglybt.core.peermanager.messaging.Message;
+import com.biglybt.core.peermanager.messaging.MessageStreamEncoder;
 import com.biglybt.core.peermanager.messaging.bittorrent.BTMessage;
+import com.biglybt.core.peermanager.messaging.bittorrent.BTMessageEncoder;
 import com.biglybt.core.peermanager.messaging.bittorrent.BTPiece;
+import com.biglybt.core.peermanager.messaging.bittorrent.ltep.LTMessageEncoder;
 import com.biglybt.core.util.AEMonitor;
 import com.biglybt.core.util.Constants;
 import com.biglybt.core.util.Debug;
 import com.biglybt.core.util.DirectByteBuffer;
+import com.biglybt.core.util.FileRegion;
 import com.biglybt.core.util.SystemTime;
 
 
@@ -98,47 +103,9 @@ public class OutgoingBTPieceMessageHandler {
   private final DiskManagerReadRequestListener read_req_listener = new DiskManagerReadRequestListener() {
     @Override
     public void readCompleted(DiskManagerReadRequest request, DirectByteBuffer data ) {
-      try{
-      	lock_mon.enter();
-
-      	if( !loading_messages.contains( request ) || destroyed ) { //was canceled
-      	  data.returnToPool();
-      	  return;
-      	}
-      	
-      	loading_messages.remove( request );
-
-        BTPiece msg = new BTPiece( request.getPieceNumber(), request.getOffset(), data, piece_version );
-        
-        	// message moved from loading->queued, no need to update 'active'
-        
-        queued_messages.put( msg, request );
-
-        outgoing_message_queue.addMessage( msg, true );
-        
-        if ( recent_messages != null ){
-        	
-        	long now = SystemTime.getMonotonousTime();
-        	
-        	if ( now - recent_messages_last_access > 60*1000 ){
-        		
-        		recent_messages = null;
-        		
-        		recent_messages_last_access = -1;
-        		
-        	}else{
-        	
-        		trimRecentMessages();
-        		
-        		recent_messages.add( request );
-        	}
-        }
+      if ( !queuePiece( request, new BTPiece( request.getPieceNumber(), request.getOffset(), data, piece_version ))){
+    	data.returnToPool();
       }
-      finally{
-      	lock_mon.exit();
-      }
-
-      outgoing_message_queue.doListenerNotifications();
     }
     
     @Override
@@ -265,6 +232,105 @@ public class OutgoingBTPieceMessageHandler {
     public void flush(){}
   };
 
+  private boolean
+  queuePiece(
+	DiskManagerReadRequest		request,
+	BTPiece						msg )
+  {
+      try{
+      	lock_mon.enter();
+
+      	if( !loading_messages.contains( request ) || destroyed ) { //was canceled
+      	  return( false );
+      	}
+      	
+      	loading_messages.remove( request );
+        
+        	// message moved from loading->queued, no need to update 'active'
+        
+        queued_messages.put( msg, request );
+
+        outgoing_message_queue.addMessage( msg, true );
+        
+        if ( recent_messages != null ){
+        	
+        	long now = SystemTime.getMonotonousTime();
+        	
+        	if ( now - recent_messages_last_access > 60*1000 ){
+        		
+        		recent_messages = null;
+        		
+        		recent_messages_last_access = -1;
+        		
+        	}else{
+        	
+        		trimRecentMessages();
+        		
+        		recent_messages.add( request );
+        	}
+        }
+      }
+      finally{
+      	lock_mon.exit();
+      }
+
+      outgoing_message_queue.doListenerNotifications();
+
+      return( true );
+  }
+
+  	/**
+  	 * Plain TCP connections can send piece data straight from the files rather than reading it in first,
+  	 * as long as the encoder uses standard BT framing
+  	 */
+
+  private DiskManager
+  getFileRegionDiskManager()
+  {
+	  if ( !outgoing_message_queue.isFileRegionCapable()){
+
+		  return( null );
+	  }
+
+	  MessageStreamEncoder encoder = outgoing_message_queue.getEncoder();
+
+	  if ( !( encoder instanceof BTMessageEncoder || encoder instanceof LTMessageEncoder )){
+
+		  return( null );
+	  }
+
+	  return( peer.getManager().getDiskManager());
+  }
+
+  private final DiskManager.FileRegionListener region_listener =
+	new DiskManager.FileRegionListener()
+	{
+		@Override
+		public void
+		regionPrepared(
+			DiskManagerReadRequest		request,
+			FileRegion					region )
+		{
+			if ( region == null ){
+
+				peer.getManager().getAdapter().enqueueReadRequest( peer, request, read_req_listener );
+
+				return;
+			}
+
+			BTPiece piece = new BTPiece( request.getPieceNumber(), request.getOffset(), null, region, piece_version );
+
+			if ( queuePiece( request, piece )){
+
+				adapter.diskRequestCompleted( request.getLength());
+
+			}else{
+
+				piece.destroy();
+			}
+		}
+	};
+
   private void
   trimRecentMessages()
   {
@@ -524,9 +590,20 @@ public class OutgoingBTPieceMessageHandler {
 
     if ( to_submit != null ){
     	
+    		// regions are prepared on the disk side as this can run on the network thread
+
+    	DiskManager region_dm = getFileRegionDiskManager();
+
     	for (DiskManagerReadRequest req: to_submit ){
     		
-    		peer.getManager().getAdapter().enqueueReadRequest( peer, req, read_req_listener );
+    		if ( region_dm != null ){
+
+    			region_dm.getFileRegion( req, region_listener );
+
+    		}else{
+
+    			peer.getManager().getAdapter().enqueueReadRequest( peer, req, read_req_listener );
+    		}
     	}
     }
   }
@@ -0,0 +1,530 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.stats;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registry of metrics intended to be scraped frequently. Unlike CoreStats, values are either
+ * maintained as they change or read directly from a source, so exporting them doesn't involve
+ * calling every stats provider or any pattern matching.
+ * <p>
+ * Counters and histograms are recorded without locking. Registration is expected to be rare and is
+ * synchronized.
+ */
+
+public class
+CoreMetrics
+{
+		// DISK
+
+	public static final String MT_DISK_READ_QUEUE_LENGTH			= "disk.read.queue.length";
+	public static final String MT_DISK_WRITE_QUEUE_LENGTH			= "disk.write.queue.length";
+	public static final String MT_DISK_CACHE_READ_CACHE_BYTES		= "disk.cache.read.cache.bytes";
+	public static final String MT_DISK_CACHE_READ_FILE_BYTES		= "disk.cache.read.file.bytes";
+	public static final String MT_DISK_CACHE_READ_HIT_RATIO			= "disk.cache.read.hit.ratio";
+
+		// NETWORK
+
+	public static final String MT_NET_READ_CONTROL_LOOP_TIME		= "net.read.control.loop.time.micros";
+	public static final String MT_NET_WRITE_CONTROL_LOOP_TIME		= "net.write.control.loop.time.micros";
+
+		// PEER
+
+	public static final String MT_PEER_PICKER_ALLOCATE_TIME			= "peer.picker.allocate.time.micros";
+
+		// DHT
+
+	public static final String MT_DHT_RPC_LATENCY					= "dht.rpc.latency.millis";
+
+	public static final String	CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+	private static final String	NAME_PREFIX	= "biglybt_";
+
+	private static final int	TYPE_COUNTER	= 0;
+	private static final int	TYPE_GAUGE		= 1;
+	private static final int	TYPE_HISTOGRAM	= 2;
+
+	private static final String[]	TYPE_NAMES = { "counter", "gauge", "histogram" };
+
+	private static final Map<String,Metric>	metrics = new TreeMap<>();
+
+		/**
+		 * @return the counter with the given name, created if needed
+		 */
+
+	public static Counter
+	getCounter(
+		String		name,
+		String		help )
+	{
+		synchronized( metrics ){
+
+			Metric existing = metrics.get( name );
+
+			if ( existing instanceof Counter ){
+
+				return((Counter)existing );
+			}
+
+			Counter counter = new Counter( name, help );
+
+			metrics.put( name, counter );
+
+			return( counter );
+		}
+	}
+
+		/**
+		 * Registers a counter whose value is maintained elsewhere, replacing any existing metric of the same name
+		 */
+
+	public static void
+	registerCounter(
+		String			name,
+		String			help,
+		ValueSource		source )
+	{
+		register( new SourceMetric( name, help, TYPE_COUNTER, source ));
+	}
+
+		/**
+		 * Registers a gauge, replacing any existing metric of the same name
+		 */
+
+	public static void
+	registerGauge(
+		String			name,
+		String			help,
+		ValueSource		source )
+	{
+		register( new SourceMetric( name, help, TYPE_GAUGE, source ));
+	}
+
+		/**
+		 * @return the histogram with the given name, created if needed
+		 */
+
+	public static Histogram
+	getHistogram(
+		String		name,
+		String		help )
+	{
+		synchronized( metrics ){
+
+			Metric existing = metrics.get( name );
+
+			if ( existing instanceof Histogram ){
+
+				return((Histogram)existing );
+			}
+
+			Histogram histogram = new Histogram( name, help );
+
+			metrics.put( name, histogram );
+
+			return( histogram );
+		}
+	}
+
+	public static void
+	unregister(
+		String		name )
+	{
+		synchronized( metrics ){
+
+			metrics.remove( name );
+		}
+	}
+
+	private static void
+	register(
+		Metric		metric )
+	{
+		synchronized( metrics ){
+
+			metrics.put( metric.name, metric );
+		}
+	}
+
+		/**
+		 * Writes all metrics in the OpenMetrics text format
+		 */
+
+	public static void
+	writeOpenMetrics(
+		PrintWriter		pw )
+	{
+		List<Metric>	snapshot;
+
+		synchronized( metrics ){
+
+			snapshot = new ArrayList<>( metrics.values());
+		}
+
+		StringBuilder	sb = new StringBuilder( 1024 );
+
+		for ( Metric metric: snapshot ){
+
+			sb.setLength( 0 );
+
+			String	name = getExportName( metric.name );
+
+			sb.append( "# TYPE " ).append( name ).append( ' ' ).append( TYPE_NAMES[metric.type] ).append( '\n' );
+
+			if ( metric.help != null ){
+
+				sb.append( "# HELP " ).append( name ).append( ' ' ).append( escapeHelp( metric.help )).append( '\n' );
+			}
+
+			try{
+				metric.export( name, sb );
+
+			}catch( Throwable e ){
+
+					// a broken source shouldn't stop the others being exported
+
+				continue;
+			}
+
+			pw.print( sb );
+		}
+
+		pw.print( "# EOF\n" );
+	}
+
+	private static String
+	getExportName(
+		String		name )
+	{
+		StringBuilder	sb = new StringBuilder( NAME_PREFIX.length() + name.length());
+
+		sb.append( NAME_PREFIX );
+
+		for ( int i=0;i<name.length();i++){
+
+			char	c = name.charAt( i );
+
+			if (( c >= 'a' && c <= 'z' ) || ( c >= 'A' && c <= 'Z' ) || ( c >= '0' && c <= '9' )){
+
+				sb.append( c );
+
+			}else{
+
+				sb.append( '_' );
+			}
+		}
+
+		return( sb.toString());
+	}
+
+	private static String
+	escapeHelp(
+		String		help )
+	{
+		return( help.replace( "\\", "\\\\" ).replace( "\n", "\\n" ));
+	}
+
+	static String
+	formatValue(
+		double		value )
+	{
+		if ( value == (long)value ){
+
+			return( String.valueOf((long)value ));
+		}
+
+		if ( Double.isNaN( value )){
+
+			return( "NaN" );
+
+		}else if ( Double.isInfinite( value )){
+
+			return( value>0?"+Inf":"-Inf" );
+		}
+
+		return( String.format( Locale.US, "%.6g", value ));
+	}
+
+	public interface
+	ValueSource
+	{
+		public double
+		getValue();
+	}
+
+	private static abstract class
+	Metric
+	{
+		final String	name;
+		final String	help;
+		final int		type;
+
+		Metric(
+			String		_name,
+			String		_help,
+			int			_type )
+		{
+			name	= _name;
+			help	= _help;
+			type	= _type;
+		}
+
+		abstract void
+		export(
+			String			export_name,
+			StringBuilder	sb );
+	}
+
+	private static class
+	SourceMetric
+		extends Metric
+	{
+		private final ValueSource	source;
+
+		SourceMetric(
+			String			_name,
+			String			_help,
+			int				_type,
+			ValueSource		_source )
+		{
+			super( _name, _help, _type );
+
+			source	= _source;
+		}
+
+		@Override
+		void
+		export(
+			String			export_name,
+			StringBuilder	sb )
+		{
+			double	value = source.getValue();
+
+			sb.append( export_name );
+
+			if ( type == TYPE_COUNTER ){
+
+				sb.append( "_total" );
+			}
+
+			sb.append( ' ' ).append( formatValue( value )).append( '\n' );
+		}
+	}
+
+	public static class
+	Counter
+		extends Metric
+	{
+		private final AtomicLong	value = new AtomicLong();
+
+		private
+		Counter(
+			String		_name,
+			String		_help )
+		{
+			super( _name, _help, TYPE_COUNTER );
+		}
+
+		public void
+		increment()
+		{
+			value.incrementAndGet();
+		}
+
+		public void
+		add(
+			long	delta )
+		{
+			value.addAndGet( delta );
+		}
+
+		public long
+		getValue()
+		{
+			return( value.get());
+		}
+
+		@Override
+		void
+		export(
+			String			export_name,
+			StringBuilder	sb )
+		{
+			sb.append( export_name ).append( "_total " ).append( value.get()).append( '\n' );
+		}
+	}
+
+		/**
+		 * Log-linear histogram in the style of HdrHistogram - each power of two range is split into
+		 * 8 linear sub-buckets, giving a relative error of at most 12.5%. Values below 8 are exact and
+		 * values of 2^40 and above share the top bucket.
+		 */
+
+	public static class
+	Histogram
+		extends Metric
+	{
+		private static final int	SUB_BITS		= 3;
+		private static final int	SUB_COUNT		= 1 << SUB_BITS;
+		private static final int	MAX_EXPONENT	= 40;
+
+		private static final int	BUCKET_COUNT	= ( MAX_EXPONENT - SUB_BITS + 2 ) * SUB_COUNT;
+
+		private final AtomicLongArray	buckets = new AtomicLongArray( BUCKET_COUNT );
+
+		private final AtomicLong		sum		= new AtomicLong();
+
+		private
+		Histogram(
+			String		_name,
+			String		_help )
+		{
+			super( _name, _help, TYPE_HISTOGRAM );
+		}
+
+		public void
+		record(
+			long		value )
+		{
+			if ( value < 0 ){
+
+				value = 0;
+			}
+
+			buckets.incrementAndGet( getBucket( value ));
+
+			sum.addAndGet( value );
+		}
+
+		static int
+		getBucket(
+			long		value )
+		{
+			if ( value < SUB_COUNT ){
+
+				return((int)value );
+			}
+
+			int	exponent = 63 - Long.numberOfLeadingZeros( value );
+
+			if ( exponent > MAX_EXPONENT ){
+
+				return( BUCKET_COUNT - 1 );
+			}
+
+			int	sub = (int)( value >>> ( exponent - SUB_BITS )) & ( SUB_COUNT - 1 );
+
+			return(( exponent - SUB_BITS + 1 ) * SUB_COUNT + sub );
+		}
+
+			/**
+			 * @return the largest value that maps to the bucket
+			 */
+
+		static long
+		getBucketLimit(
+			int		bucket )
+		{
+			if ( bucket < SUB_COUNT ){
+
+				return( bucket );
+			}
+
+			int	exponent	= bucket / SUB_COUNT + SUB_BITS - 1;
+			int	sub			= bucket % SUB_COUNT;
+
+			long	width = 1L << ( exponent - SUB_BITS );
+
+			return(( SUB_COUNT + sub ) * width + width - 1 );
+		}
+
+			/**
+			 * @return approximate value at the given quantile (0..1), 0 if nothing has been recorded
+			 */
+
+		public long
+		getValueAtQuantile(
+			double		quantile )
+		{
+			long[]	counts = new long[BUCKET_COUNT];
+
+			long	total = 0;
+
+			for ( int i=0;i<BUCKET_COUNT;i++){
+
+				total += counts[i] = buckets.get( i );
+			}
+
+			if ( total == 0 ){
+
+				return( 0 );
+			}
+
+			long	target	= Math.max( 1, (long)Math.ceil( quantile * total ));
+			long	seen	= 0;
+
+			for ( int i=0;i<BUCKET_COUNT;i++){
+
+				seen += counts[i];
+
+				if ( seen >= target ){
+
+					return( getBucketLimit( i ));
+				}
+			}
+
+			return( getBucketLimit( BUCKET_COUNT - 1 ));
+		}
+
+		@Override
+		void
+		export(
+			String			export_name,
+			StringBuilder	sb )
+		{
+				// buckets are only exported at power of two boundaries to keep the output small
+
+			long	cumulative = 0;
+
+			for ( int i=0;i<BUCKET_COUNT-1;i++){
+
+				cumulative += buckets.get( i );
+
+				if ( i % SUB_COUNT == SUB_COUNT - 1 ){
+
+					sb.append( export_name ).append( "_bucket{le=\"" ).append( getBucketLimit( i )).append( ".0\"} " ).append( cumulative ).append( '\n' );
+				}
+			}
+
+			cumulative += buckets.get( BUCKET_COUNT - 1 );
+
+			sb.append( export_name ).append( "_bucket{le=\"+Inf\"} " ).append( cumulative ).append( '\n' );
+			sb.append( export_name ).append( "_count " ).append( cumulative ).append( '\n' );
+			sb.append( export_name ).append( "_sum " ).append( sum.get()).append( '\n' );
+		}
+	}
+}
@@ -60,6 +60,11 @@ CoreStats
 	public static final String ST_DISK_WRITE_IO_TIME			= "disk.write.io.time";
 	public static final String ST_DISK_WRITE_IO_COUNT			= "disk.write.io.count";
 
+	public static final String ST_DISK_HASH_SHA1_COUNT			= "disk.hash.sha1.count";
+	public static final String ST_DISK_HASH_SHA1_BYTES			= "disk.hash.sha1.bytes";
+	public static final String ST_DISK_HASH_SHA256_COUNT		= "disk.hash.sha256.count";
+	public static final String ST_DISK_HASH_SHA256_BYTES		= "disk.hash.sha256.bytes";
+
 		// NETWORK
 
 	public static final String ST_NET_WRITE_CONTROL_WAIT_COUNT			= "net.write.control.wait.count";
@@ -69,6 +74,7 @@ CoreStats
 	public static final String ST_NET_WRITE_CONTROL_CON_COUNT			= "net.write.control.con.count";
 	public static final String ST_NET_WRITE_CONTROL_READY_CON_COUNT		= "net.write.control.ready.con.count";
 	public static final String ST_NET_WRITE_CONTROL_READY_BYTE_COUNT	= "net.write.control.ready.byte.count";
+	public static final String ST_NET_WRITE_CONTROL_WORKER_UTIL			= "net.write.control.worker.util";	// suffixed with ".<worker>", percent
 
 	public static final String ST_NET_READ_CONTROL_LOOP_COUNT			= "net.read.control.loop.count";
 	public static final String ST_NET_READ_CONTROL_NP_COUNT				= "net.read.control.np.count";
@@ -77,6 +83,7 @@ CoreStats
 	public static final String ST_NET_READ_CONTROL_ENTITY_COUNT			= "net.read.control.entity.count";
 	public static final String ST_NET_READ_CONTROL_CON_COUNT			= "net.read.control.con.count";
 	public static final String ST_NET_READ_CONTROL_READY_CON_COUNT		= "net.read.control.ready.con.count";
+	public static final String ST_NET_READ_CONTROL_WORKER_UTIL			= "net.read.control.worker.util";	// suffixed with ".<worker>", percent
 
 		// TCP
 
@@ -88,6 +95,9 @@ CoreStats
 
 	public static final String ST_NET_TCP_SELECT_WRITE_COUNT			= "net.tcp.select.write.count";
 	public static final String ST_NET_TCP_SELECT_READ_COUNT				= "net.tcp.select.read.count";
+	public static final String ST_NET_TCP_WRITE_CALL_COUNT				= "net.tcp.write.call.count";
+	public static final String ST_NET_TCP_WRITE_BUFFER_COUNT			= "net.tcp.write.buffer.count";
+	public static final String ST_NET_TCP_WRITE_BYTE_COUNT				= "net.tcp.write.byte.count";
 
 		// UDP
 	
@@ -177,6 +187,11 @@ CoreStats
 		{ ST_DISK_WRITE_IO_TIME,					CUMULATIVE },
 		{ ST_DISK_WRITE_IO_COUNT,					CUMULATIVE },
 
+		{ ST_DISK_HASH_SHA1_COUNT,					CUMULATIVE },
+		{ ST_DISK_HASH_SHA1_BYTES,					CUMULATIVE },
+		{ ST_DISK_HASH_SHA256_COUNT,				CUMULATIVE },
+		{ ST_DISK_HASH_SHA256_BYTES,				CUMULATIVE },
+
 		{ ST_NET_WRITE_CONTROL_WAIT_COUNT,			CUMULATIVE },
 		{ ST_NET_WRITE_CONTROL_P_COUNT,				CUMULATIVE },
 		{ ST_NET_WRITE_CONTROL_NP_COUNT,			CUMULATIVE },
@@ -201,6 +216,9 @@ CoreStats
 
 		{ ST_NET_TCP_SELECT_WRITE_COUNT,			CUMULATIVE },
 		{ ST_NET_TCP_SELECT_READ_COUNT,				CUMULATIVE },
+		{ ST_NET_TCP_WRITE_CALL_COUNT,				CUMULATIVE },
+		{ ST_NET_TCP_WRITE_BUFFER_COUNT,			CUMULATIVE },
+		{ ST_NET_TCP_WRITE_BYTE_COUNT,				CUMULATIVE },
 
 		{ ST_NET_UDP_SEND_PACKET_COUNT,				CUMULATIVE },
 		{ ST_NET_UDP_SEND_BYTE_COUNT,				CUMULATIVE },
@@ -20,8 +20,6 @@ package com.biglybt.core.stats.transfer.impl;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
@@ -29,10 +27,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.TimeZone;
 
 import com.biglybt.core.config.COConfigurationManager;
@@ -102,21 +97,7 @@ LongTermStatsBase
 	private int	start_of_week 	= -1;
 	private int start_of_month	= -1;
 	
-	private DayCache			day_cache;
-
-	private static final int MONTH_CACHE_MAX = 3;
-
-	private final Map<String,MonthCache>	month_cache_map =
-		new LinkedHashMap<String,MonthCache>(MONTH_CACHE_MAX,0.75f,true)
-		{
-			@Override
-			protected boolean
-			removeEldestEntry(
-		   		Map.Entry<String,MonthCache> eldest)
-			{
-				return size() > MONTH_CACHE_MAX;
-			}
-		};
+	private LongTermStatsSeries	series;
 		
 	protected
 	LongTermStatsBase(
@@ -217,6 +198,11 @@ LongTermStatsBase
 
 			active = false;
 
+			if ( series != null ){
+
+				series.close();
+			}
+
 			if ( event != null ){
 
 				event.cancel();
@@ -280,7 +266,7 @@ LongTermStatsBase
 						line_stats_prev[i] = 0;
 					}
 
-					day_cache = null;
+					recordSeries( now, null );
 
 				}else{
 
@@ -303,13 +289,7 @@ LongTermStatsBase
 						stat_averages[i].update( diff );
 					}
 
-					if ( day_cache != null ){
-
-						if ( day_cache.isForDay( year, month, day )){
-
-							day_cache.addRecord( now_mins, diffs );
-						}
-					}
+					recordSeries( now, diffs );
 				}
 
 				if ( record_type != RT_SESSION_STATS ){
@@ -462,6 +442,42 @@ LongTermStatsBase
 		}
 	}
 	
+		/**
+		 * Keeps the binary store in step with the text records, must be called before the text is written
+		 * @param diffs	null to just open the current day
+		 */
+
+	private void
+	recordSeries(
+		long		now,
+		long[]		diffs )
+	{
+		try{
+			if ( diffs == null ){
+
+				getSeries().startDay( now );
+
+			}else{
+
+				getSeries().addRecord( now, diffs );
+			}
+		}catch( Throwable e ){
+
+			Debug.out( "Failed to record long term stats", e );
+		}
+	}
+
+	private LongTermStatsSeries
+	getSeries()
+	{
+		if ( series == null ){
+
+			series = new LongTermStatsSeries( stats_dir, STAT_ENTRY_COUNT );
+		}
+
+		return( series );
+	}
+
 	@Override
 	public boolean
 	isEnabled()
@@ -496,6 +512,13 @@ LongTermStatsBase
 				writer = null;
 			}
 
+			if ( series != null ){
+
+				series.close();
+
+				series = null;
+			}
+
 			File[] files = stats_dir.listFiles();
 
 outer:
@@ -649,301 +672,17 @@ outer:
 		Date				end_date,
 		RecordAccepter		accepter )
 	{
-		boolean	enable_caching = accepter == null;
-
 		synchronized( this ){
 
-			long[] result = new long[STAT_ENTRY_COUNT];
-
-			long start_millis 	= start_date.getTime();
-			long end_millis 	= end_date.getTime();
-
-			long	now = SystemTime.getCurrentTime();
-
-			long	now_day	= (now/DAY_IN_MILLIS)*DAY_IN_MILLIS;
-
-				// day cache keeps totals for the current day handy but requires the period
-				// to run to "now"
-			
-			boolean	can_use_day_cache = end_millis >= now;
-			
-			if ( can_use_day_cache ){
-
-				end_millis = now;
-			}
-
-			long start_day 	= (start_millis/DAY_IN_MILLIS)*DAY_IN_MILLIS;
-			long end_day 	= (end_millis/DAY_IN_MILLIS)*DAY_IN_MILLIS;
-
-			if ( start_day > end_day ){
-
-				return( result );
-			}
-
-			long start_offset = start_millis - start_day;
-
-			start_offset = start_offset/MIN_IN_MILLIS;
-
-			boolean	offset_cachable = start_offset % 60 == 0;
-
-			//System.out.println( "start=" + debug_utc_format.format( start_date ) + ", end=" + debug_utc_format.format( end_date ) + ", offset=" + start_offset);
-
-			MonthCache	month_cache = null;
-
-			for ( long this_day=start_day;this_day<=end_day;this_day+=DAY_IN_MILLIS ){
-
-				String[] bits = utc_date_format.format( new Date( this_day )).split( "," );
-
-				String year_str 	= bits[0];
-				String month_str	= bits[1];
-				String day_str		= bits[2];
-
-				//int	year 	= Integer.parseInt( year_str );
-				//int	month	= Integer.parseInt( month_str );
-				int	day		= Integer.parseInt( day_str );
-
-				long	cache_offset = this_day == start_day?start_offset:0;
-				
-				boolean	can_use_month_cache;
-
-				if ( enable_caching ){
-
-					if ( month_cache == null || !month_cache.isForMonth( year_str, month_str )){
-
-						if ( month_cache != null && month_cache.isDirty()){
-
-							month_cache.save();
-						}
-
-						month_cache = getMonthCache( year_str, month_str );
-					}
-
-					can_use_month_cache =
-						this_day != now_day &&
-						( this_day > start_day || ( this_day == start_day && offset_cachable )) &&
-						this_day < end_day;
-
-					if ( can_use_month_cache ){
-
-						long[] cached_totals = month_cache.getTotals( day, cache_offset );
-
-						if ( cached_totals != null ){
-
-							for ( int i=0;i<cached_totals.length;i++){
-
-								result[i] += cached_totals[i];
-							}
-
-							continue;
-						}
-					}else{
-
-						if ( this_day == now_day ){
-
-							if ( day_cache != null && can_use_day_cache ){
-
-								if ( day_cache.isForDay( year_str, month_str, day_str )){
-
-									long[] cached_totals = day_cache.getTotals( cache_offset );
-
-									if ( cached_totals != null ){
-
-										for ( int i=0;i<cached_totals.length;i++){
-
-											result[i] += cached_totals[i];
-										}
-
-										continue;
-									}
-
-								}else{
-
-									day_cache = null;
-								}
-							}
-						}
-					}
-				}else{
-
-					can_use_month_cache = false;
-				}
-
-				File stats_file = FileUtil.newFile( stats_dir, bits[0], bits[1], bits[2] + ".dat" );
-
-				if ( !stats_file.exists()){
-
-					if ( can_use_month_cache ){
-
-						month_cache.setTotals( day, cache_offset, new long[0] );
-					}
-				}else{
-
-					LineNumberReader lnr = null;
-
-					try{
-						//System.out.println( "Reading " + stats_file );
-
-						lnr = new LineNumberReader( new InputStreamReader( FileUtil.newFileInputStream( stats_file )));
-
-						long	file_start_time	= 0;
-
-						long[]	file_totals = null;
-
-						long[]	file_result_totals  = new long[STAT_ENTRY_COUNT];
-
-						long[]	session_start_stats = null;
-						long	session_start_time	= 0;
-						long	session_time		= 0;
-
-						while( true ){
-
-							String line = lnr.readLine();
-
-							if ( line == null ){
-
-								break;
-							}
-
-							//System.out.println( line );
-
-							String[] fields = line.split( "," );
-
-							if ( fields.length < STAT_ENTRY_COUNT ){
-
-								continue;
-							}
-
-							try{
-								String first_field = fields[0];
-
-								if ( first_field.equals("s")){
-
-									session_start_time = Long.parseLong( fields[2] )*MIN_IN_MILLIS;
-
-									if ( file_totals == null ){
-
-										file_totals = new long[STAT_ENTRY_COUNT];
-
-										file_start_time = session_start_time;
-									}
-
-									session_time = session_start_time;
-
-									session_start_stats = new long[STAT_ENTRY_COUNT];
-
-									for ( int i=3;i<3+STAT_ENTRY_COUNT;i++){
-
-										session_start_stats[i-3] = Long.parseLong( fields[i] );
-									}
-								}else if ( session_start_time > 0 ){
-
-									session_time += MIN_IN_MILLIS;
-
-									int	field_offset = 0;
-
-									if ( first_field.equals( "e" )){
-
-										field_offset = 3;
-									}
-
-									long[] line_stats = new long[STAT_ENTRY_COUNT];
-
-									for ( int i=0;i<STAT_ENTRY_COUNT;i++){
-
-										line_stats[i] = Long.parseLong( fields[i+field_offset] );
-
-										file_totals[i] += line_stats[i];
-									}
-
-									if ( 	session_time >= start_millis &&
-											session_time <= end_millis ){
-
-										if ( accepter == null || accepter.acceptRecord( session_time )){
-
-											for ( int i=0;i<STAT_ENTRY_COUNT;i++){
-
-												result[i] += line_stats[i];
-
-												file_result_totals[i] += line_stats[i];
-											}
-										}
-									}
-
-									//System.out.println( getString( line_stats ));
-								}
-							}catch( Throwable e ){
-
-								// skip the record, not much else that can be done
-							}
-						}
-
-						if ( file_totals == null ){
-
-							file_totals = new long[0];
-						}
-
-						//System.out.println( "File total: start=" + debug_utc_format.format(file_start_time) + ", end=" + debug_utc_format.format(session_time) + " - " + getString( file_totals ));
-
-						if ( can_use_month_cache ){
-
-							month_cache.setTotals( day, cache_offset, file_result_totals );
-
-							if ( cache_offset != 0 ){
-
-								month_cache.setTotals( day, 0, file_totals );
-							}
-						}else{
-
-							if ( enable_caching ){
-
-								if ( this_day == now_day && can_use_day_cache ){
-
-									if ( day_cache == null ){
-
-										//System.out.println( "Creating day cache" );
-
-										day_cache = new DayCache( year_str, month_str, day_str );
-									}
-
-									day_cache.setTotals( cache_offset, file_result_totals );
-
-									if ( cache_offset != 0 ){
-
-										day_cache.setTotals( 0, file_totals );
-									}
-								}
-							}
-						}
-
-					}catch( Throwable e ){
-
-						Debug.out( e );
-
-					}finally{
-
-						if ( lnr != null ){
-
-							try{
-								lnr.close();
-
-							}catch( Throwable e ){
-							}
-						}
-					}
-				}
-			}
+			try{
+				return( getSeries().getTotals( start_date.getTime(), end_date.getTime(), accepter ));
 
-			if ( enable_caching ){
+			}catch( Throwable e ){
 
-				if ( month_cache != null && month_cache.isDirty()){
+				Debug.out( e );
 
-					month_cache.save();
-				}
+				return( new long[STAT_ENTRY_COUNT] );
 			}
-
-			//System.out.println( "    -> " + getString( result ));
-
-			return( result );
 		}
 	}
 	
@@ -1095,25 +834,6 @@ outer:
 		return( str );
 	}
 
-	private MonthCache
-	getMonthCache(
-		String	year,
-		String	month )
-	{
-		String	key = year + "_" + month;
-
-		MonthCache cache = month_cache_map.get( key );
-
-		if ( cache == null ){
-
-			cache = new MonthCache( year, month );
-
-			month_cache_map.put( key, cache );
-		}
-
-		return( cache );
-	}
-	
 	@Override
 	public void
 	addListener(
@@ -1149,248 +869,4 @@ outer:
 			}
 		}
 	}
-	
-	protected static class
-	DayCache
-	{
-		private final String			year;
-		private final String			month;
-		private final String			day;
-
-		private final Map<Long,long[]>	contents = new HashMap<>();
-
-		private
-		DayCache(
-			String		_year,
-			String		_month,
-			String		_day )
-		{
-			year	= _year;
-			month	= _month;
-			day		= _day;
-		}
-
-		protected boolean
-		isForDay(
-			String	_year,
-			String	_month,
-			String	_day )
-		{
-			return( year.equals( _year ) && month.equals( _month ) && day.equals( _day ));
-		}
-
-		protected void
-		addRecord(
-			long	offset,
-			long[]	stats )
-		{
-			for ( Map.Entry<Long,long[]> entry: contents.entrySet()){
-
-				if ( offset >= entry.getKey()){
-
-					long[] old = entry.getValue();
-
-					for ( int i=0;i<old.length;i++){
-
-						old[i] += stats[i];
-					}
-				}
-			}
-		}
-
-		private long[]
-		getTotals(
-			long	offset )
-		{
-			return( contents.get( offset ));
-		}
-
-		private void
-		setTotals(
-			long	offset,
-			long[]	value )
-		{
-			//System.out.println( "Updating day cache for " + offset );
-			
-			contents.put( offset, value );
-		}
-	}
-
-	private class
-	MonthCache
-	{
-		private final String			year;
-		private final String			month;
-
-		private boolean		dirty;
-
-		private Map<String,List<Long>>	contents;
-
-		private
-		MonthCache(
-			String		_year,
-			String		_month )
-		{
-			year	= _year;
-			month	= _month;
-		}
-
-		private File
-		getCacheFile()
-		{
-			return( FileUtil.newFile( stats_dir, year, month, "cache.dat" ));
-		}
-
-		private boolean
-		isForMonth(
-			String	_year,
-			String	_month )
-		{
-			return( year.equals( _year ) && month.equals( _month ));
-		}
-
-		private Map<String,List<Long>>
-		getContents()
-		{
-			if ( contents == null ){
-
-				File file = getCacheFile();
-
-				if ( file.exists()){
-
-					//System.out.println( "Reading cache: " + file );
-
-					contents = FileUtil.readResilientFile( file );
-
-				}else{
-
-					contents = new HashMap<>();
-				}
-			}
-
-			return( contents );
-		}
-
-		private long[]
-		getTotals(
-			int		day )
-		{
-			List<Long> records = getContents().get( String.valueOf( day ));
-
-			if ( records != null ){
-
-				long[] result = new long[STAT_ENTRY_COUNT];
-
-				if ( records.size() == STAT_ENTRY_COUNT ){
-
-					for ( int i=0;i<STAT_ENTRY_COUNT;i++){
-
-						result[i] = (Long)records.get(i);
-					}
-				}
-
-				return( result );
-			}
-
-			return( null );
-		}
-
-		private long[]
- 		getTotals(
- 			int		day,
- 			long	start_offset )
- 		{
-			if ( start_offset == 0 ){
-
-				return( getTotals( day ));
-
-			}else{
-
-	 			List<Long> records = getContents().get( day + "." + start_offset );
-
-	 			if ( records != null ){
-
-	 				long[] result = new long[STAT_ENTRY_COUNT];
-
-	 				if ( records.size() == STAT_ENTRY_COUNT ){
-
-	 					for ( int i=0;i<STAT_ENTRY_COUNT;i++){
-
-	 						result[i] = (Long)records.get(i);
-	 					}
-	 				}
-
-	 				return( result );
-	 			}
-
-	 			return( null );
-			}
- 		}
-
-		private void
-		setTotals(
-			int		day,
-			long[]	totals )
-		{
-			//System.out.println( "Updating month cache for " + day );
-			
-			List<Long>	records = new ArrayList<>();
-
-			for ( Long l: totals ){
-
-				records.add( l );
-			}
-
-			getContents().put( String.valueOf( day ), records );
-
-			dirty	= true;
-		}
-
-		private void
-		setTotals(
-			int		day,
-			long	start_offset,
-			long[]	totals )
-		{
-			//System.out.println( "Updating month cache for " + day + " / " + start_offset );
-			
-			if ( start_offset == 0 ){
-
-				setTotals( day, totals );
-
-			}else{
-
-				List<Long>	records = new ArrayList<>();
-
-				for ( Long l: totals ){
-
-					records.add( l );
-				}
-
-				getContents().put( day + "." + start_offset, records );
-
-				dirty	= true;
-			}
-		}
-
-		private boolean
-		isDirty()
-		{
-			return( dirty );
-		}
-
-		private void
-		save()
-		{
-			File file = getCacheFile();
-
-			file.getParentFile().mkdirs();
-
-			//System.out.println( "Writing cache: " + file );
-
-			FileUtil.writeResilientFile( file, contents );
-
-			dirty = false;
-		}
-	}
 }
@@ -0,0 +1,894 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.stats.transfer.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.biglybt.core.stats.transfer.LongTermStats.RecordAccepter;
+import com.biglybt.core.util.FileUtil;
+import com.biglybt.core.util.SystemTime;
+
+/**
+ * Fixed width, column oriented binary store of the per-minute records, maintained alongside the
+ * text ".dat" files so that period totals are summed from pre-aggregated values rather than by
+ * re-parsing a day of text per day in the period.
+ * <p>
+ * Each UTC day has a file holding, per stat, a column made up of the day total, 24 hourly totals and
+ * 1440 minute totals. Each month has an index file of the day totals so whole days are summed from
+ * a single read per month. Rollups are maintained as records are added. Days recorded before this
+ * store existed are converted from their text file when first queried.
+ * <p>
+ * Not thread safe, the owning stats instance's monitor protects it.
+ */
+
+final class
+LongTermStatsSeries
+{
+	private static final int	MAGIC			= 0x4C545343;	// "LTSC"
+	private static final int	VERSION			= 1;
+	private static final int	HEADER_SIZE		= 16;
+
+	private static final long	MIN_IN_MILLIS	= LongTermStatsBase.MIN_IN_MILLIS;
+	private static final long	DAY_IN_MILLIS	= LongTermStatsBase.DAY_IN_MILLIS;
+
+	private static final int	MINS_PER_DAY	= 24*60;
+
+		// column layout, in longs
+
+	private static final int	DAY_OFFSET		= 0;
+	private static final int	HOUR_OFFSET		= 1;
+	private static final int	MIN_OFFSET		= HOUR_OFFSET + 24;
+	private static final int	COLUMN_LONGS	= MIN_OFFSET + MINS_PER_DAY;
+
+	private static final String	DAY_SUFFIX		= ".lts";
+	private static final String	INDEX_NAME		= "index.lts";
+
+	private static final long	ROW_PRESENT		= 1;
+
+	private final File		dir;
+	private final int		entry_count;
+
+	private final SimpleDateFormat	utc_date_format = new SimpleDateFormat( "yyyy,MM,dd" );
+
+	private Day		current_day;
+
+	protected
+	LongTermStatsSeries(
+		File		_dir,
+		int			_entry_count )
+	{
+		dir				= _dir;
+		entry_count		= _entry_count;
+
+		utc_date_format.setTimeZone( TimeZone.getTimeZone( "UTC" ));
+	}
+
+		/**
+		 * Adds a record of stat deltas to the minute containing 'time'. Must be called before the
+		 * corresponding text record is written so a day being converted from text doesn't include it
+		 */
+
+	protected void
+	addRecord(
+		long		time,
+		long[]		values )
+
+		throws IOException
+	{
+		startDay( time );
+
+		current_day.add((int)(( time - current_day.start )/MIN_IN_MILLIS ), values );
+	}
+
+		/**
+		 * Opens the day containing 'time' for recording. As with addRecord this must happen before
+		 * any text for the day is written by this session
+		 */
+
+	protected void
+	startDay(
+		long		time )
+
+		throws IOException
+	{
+		long	day_start = ( time/DAY_IN_MILLIS )*DAY_IN_MILLIS;
+
+		if ( current_day == null || current_day.start != day_start ){
+
+			if ( current_day != null ){
+
+				current_day.close();
+
+				current_day = null;
+			}
+
+			current_day = new Day( day_start );
+		}
+	}
+
+		/**
+		 * @param accepter	if non-null the records are visited minute by minute, otherwise the rollups are used
+		 */
+
+	protected long[]
+	getTotals(
+		long				start_millis,
+		long				end_millis,
+		RecordAccepter		accepter )
+
+		throws IOException
+	{
+		long[]	result = new long[entry_count];
+
+		if ( start_millis > end_millis ){
+
+			return( result );
+		}
+
+		long	now_day		= ( SystemTime.getCurrentTime()/DAY_IN_MILLIS )*DAY_IN_MILLIS;
+
+		long	start_day 	= ( start_millis/DAY_IN_MILLIS )*DAY_IN_MILLIS;
+		long	end_day 	= ( end_millis/DAY_IN_MILLIS )*DAY_IN_MILLIS;
+
+		MonthIndex	index = null;
+
+		try{
+			for ( long day=start_day;day<=end_day;day+=DAY_IN_MILLIS ){
+
+					// records are stamped with the start of their minute
+
+				int	first_min	= day==start_day?(int)(( start_millis - day + MIN_IN_MILLIS - 1 )/MIN_IN_MILLIS ):0;
+				int	last_min	= day==end_day?(int)Math.min( MINS_PER_DAY-1, ( end_millis - day )/MIN_IN_MILLIS ):MINS_PER_DAY-1;
+
+				if ( first_min > last_min ){
+
+					continue;
+				}
+
+				if ( current_day != null && current_day.start == day ){
+
+					sum( current_day.columns, day, first_min, last_min, accepter, result );
+
+					continue;
+				}
+
+				String[]	bits = getDayBits( day );
+
+				if ( !FileUtil.newFile( dir, bits[0], bits[1] ).isDirectory()){
+
+						// nothing recorded that month
+
+					continue;
+				}
+
+				int	day_of_month = Integer.parseInt( bits[2] );
+
+				if ( accepter == null && first_min == 0 && last_min == MINS_PER_DAY-1 ){
+
+					if ( index == null || !index.isFor( bits )){
+
+						if ( index != null ){
+
+							index.close();
+						}
+
+						index = new MonthIndex( bits );
+					}
+
+					long[]	totals = index.getTotals( day_of_month );
+
+					if ( totals == null ){
+
+						long[][] columns = loadDay( day, bits );
+
+						totals = new long[entry_count];
+
+						if ( columns != null ){
+
+							for ( int i=0;i<entry_count;i++){
+
+								totals[i] = columns[i][DAY_OFFSET];
+							}
+						}
+
+							// the current day can still change and might not have been converted yet
+
+						if ( columns != null || day < now_day ){
+
+							index.setTotals( day_of_month, totals );
+						}
+					}
+
+					for ( int i=0;i<entry_count;i++){
+
+						result[i] += totals[i];
+					}
+				}else{
+
+					long[][] columns = loadDay( day, bits );
+
+					if ( columns != null ){
+
+						sum( columns, day, first_min, last_min, accepter, result );
+					}
+				}
+			}
+		}finally{
+
+			if ( index != null ){
+
+				index.close();
+			}
+		}
+
+		return( result );
+	}
+
+	protected void
+	close()
+	{
+		if ( current_day != null ){
+
+			current_day.close();
+
+			current_day = null;
+		}
+	}
+
+	private void
+	sum(
+		long[][]			columns,
+		long				day,
+		int					first_min,
+		int					last_min,
+		RecordAccepter		accepter,
+		long[]				result )
+	{
+		if ( accepter != null ){
+
+			for ( int m=first_min;m<=last_min;m++){
+
+				boolean	found = false;
+
+				for ( int i=0;i<entry_count;i++){
+
+					if ( columns[i][MIN_OFFSET+m] != 0 ){
+
+						found = true;
+
+						break;
+					}
+				}
+
+				if ( found && accepter.acceptRecord( day + m*MIN_IN_MILLIS )){
+
+					for ( int i=0;i<entry_count;i++){
+
+						result[i] += columns[i][MIN_OFFSET+m];
+					}
+				}
+			}
+		}else{
+
+				// minutes up to the first hour boundary, whole hours, then the remaining minutes
+
+			int	first_hour	= ( first_min + 59 )/60;
+			int	end_hour	= ( last_min + 1 )/60;
+
+			for ( int i=0;i<entry_count;i++){
+
+				long[]	column = columns[i];
+
+				long	total = 0;
+
+				if ( first_hour >= end_hour ){
+
+					for ( int m=first_min;m<=last_min;m++){
+
+						total += column[MIN_OFFSET+m];
+					}
+				}else{
+
+					for ( int m=first_min;m<first_hour*60;m++){
+
+						total += column[MIN_OFFSET+m];
+					}
+
+					for ( int h=first_hour;h<end_hour;h++){
+
+						total += column[HOUR_OFFSET+h];
+					}
+
+					for ( int m=end_hour*60;m<=last_min;m++){
+
+						total += column[MIN_OFFSET+m];
+					}
+				}
+
+				result[i] += total;
+			}
+		}
+	}
+
+	private String[]
+	getDayBits(
+		long		day )
+	{
+		return( utc_date_format.format( new Date( day )).split( "," ));
+	}
+
+	private File
+	getDayFile(
+		String[]	bits )
+	{
+		return( FileUtil.newFile( dir, bits[0], bits[1], bits[2] + DAY_SUFFIX ));
+	}
+
+		/**
+		 * @return the day's columns, converting the text records if needed, null if nothing was recorded
+		 */
+
+	private long[][]
+	loadDay(
+		long		day,
+		String[]	bits )
+
+		throws IOException
+	{
+		File	file = getDayFile( bits );
+
+		if ( file.exists()){
+
+			long[][] columns = readDay( file );
+
+			if ( columns != null ){
+
+				return( columns );
+			}
+		}
+
+		File	text_file = FileUtil.newFile( dir, bits[0], bits[1], bits[2] + ".dat" );
+
+		if ( !text_file.exists()){
+
+			return( null );
+		}
+
+		long[][] columns = convertDay( text_file, day );
+
+		writeDay( file, columns );
+
+		return( columns );
+	}
+
+	private long[][]
+	readDay(
+		File		file )
+
+		throws IOException
+	{
+		RandomAccessFile	raf = new RandomAccessFile( file, "r" );
+
+		try{
+			ByteBuffer	buffer = ByteBuffer.allocate( HEADER_SIZE + entry_count*COLUMN_LONGS*8 );
+
+			if ( raf.length() != buffer.capacity()){
+
+				return( null );
+			}
+
+			FileChannel	channel = raf.getChannel();
+
+			while( buffer.hasRemaining()){
+
+				if ( channel.read( buffer ) < 0 ){
+
+					return( null );
+				}
+			}
+
+			buffer.flip();
+
+			if ( !checkHeader( buffer )){
+
+				return( null );
+			}
+
+			long[][]	columns = new long[entry_count][COLUMN_LONGS];
+
+			for ( long[] column: columns ){
+
+				buffer.asLongBuffer().get( column );
+
+				buffer.position( buffer.position() + COLUMN_LONGS*8 );
+			}
+
+			return( columns );
+
+		}finally{
+
+			raf.close();
+		}
+	}
+
+	private void
+	writeDay(
+		File		file,
+		long[][]	columns )
+
+		throws IOException
+	{
+		file.getParentFile().mkdirs();
+
+		ByteBuffer	buffer = ByteBuffer.allocate( HEADER_SIZE + entry_count*COLUMN_LONGS*8 );
+
+		putHeader( buffer );
+
+		for ( long[] column: columns ){
+
+			buffer.asLongBuffer().put( column );
+
+			buffer.position( buffer.position() + COLUMN_LONGS*8 );
+		}
+
+		buffer.flip();
+
+		RandomAccessFile	raf = new RandomAccessFile( file, "rw" );
+
+		try{
+			raf.setLength( 0 );
+
+			FileChannel	channel = raf.getChannel();
+
+			while( buffer.hasRemaining()){
+
+				channel.write( buffer );
+			}
+		}finally{
+
+			raf.close();
+		}
+	}
+
+		/**
+		 * Builds the columns from a day's text records - see LongTermStatsBase.write for the format
+		 */
+
+	private long[][]
+	convertDay(
+		File		text_file,
+		long		day )
+
+		throws IOException
+	{
+		long[][]	columns = new long[entry_count][COLUMN_LONGS];
+
+		LineNumberReader lnr = new LineNumberReader( new InputStreamReader( FileUtil.newFileInputStream( text_file )));
+
+		try{
+			long	session_start_time	= 0;
+			long	session_time		= 0;
+
+			long[]	values = new long[entry_count];
+
+			while( true ){
+
+				String line = lnr.readLine();
+
+				if ( line == null ){
+
+					break;
+				}
+
+				String[] fields = line.split( "," );
+
+				if ( fields.length < entry_count ){
+
+					continue;
+				}
+
+				try{
+					String first_field = fields[0];
+
+					if ( first_field.equals( "s" )){
+
+						session_start_time = Long.parseLong( fields[2] )*MIN_IN_MILLIS;
+
+						session_time = session_start_time;
+
+					}else if ( session_start_time > 0 ){
+
+						session_time += MIN_IN_MILLIS;
+
+						int	field_offset = first_field.equals( "e" )?3:0;
+
+						for ( int i=0;i<entry_count;i++){
+
+							values[i] = Long.parseLong( fields[i+field_offset] );
+						}
+
+						long	min = ( session_time - day )/MIN_IN_MILLIS;
+
+						add( columns, (int)Math.max( 0, Math.min( MINS_PER_DAY-1, min )), values );
+					}
+				}catch( Throwable e ){
+
+					// skip the record, not much else that can be done
+				}
+			}
+		}finally{
+
+			lnr.close();
+		}
+
+		return( columns );
+	}
+
+	private void
+	add(
+		long[][]	columns,
+		int			min,
+		long[]		values )
+	{
+		for ( int i=0;i<entry_count;i++){
+
+			long	value = values[i];
+
+			long[]	column = columns[i];
+
+			column[DAY_OFFSET]				+= value;
+			column[HOUR_OFFSET + min/60]	+= value;
+			column[MIN_OFFSET + min]		+= value;
+		}
+	}
+
+	private void
+	putHeader(
+		ByteBuffer	buffer )
+	{
+		buffer.putInt( MAGIC );
+		buffer.putInt( VERSION );
+		buffer.putInt( entry_count );
+		buffer.putInt( 0 );
+	}
+
+	private boolean
+	checkHeader(
+		ByteBuffer	buffer )
+	{
+		boolean	ok = buffer.getInt() == MAGIC && buffer.getInt() == VERSION && buffer.getInt() == entry_count;
+
+		buffer.position( HEADER_SIZE );
+
+		return( ok );
+	}
+
+	private static void
+	writeFully(
+		FileChannel		channel,
+		ByteBuffer		buffer,
+		long			position )
+
+		throws IOException
+	{
+		while( buffer.hasRemaining()){
+
+			position += channel.write( buffer, position );
+		}
+	}
+
+		/**
+		 * The day currently being recorded, kept in memory with its files open
+		 */
+
+	private class
+	Day
+	{
+		private final long			start;
+		private final long[][]		columns;
+		private final int			day_of_month;
+
+		private final MonthIndex		index;
+		private final RandomAccessFile	raf;
+
+		private final ByteBuffer	value_buffer = ByteBuffer.allocate( 8 );
+
+		private
+		Day(
+			long		_start )
+
+			throws IOException
+		{
+			start	= _start;
+
+			String[]	bits = getDayBits( start );
+
+			day_of_month = Integer.parseInt( bits[2] );
+
+			long[][]	existing = loadDay( start, bits );
+
+			File	file = getDayFile( bits );
+
+			if ( existing == null ){
+
+				existing = new long[entry_count][COLUMN_LONGS];
+
+				writeDay( file, existing );
+			}
+
+			columns = existing;
+
+			index	= new MonthIndex( bits );
+			raf		= new RandomAccessFile( file, "rw" );
+
+			try{
+				updateIndex();
+
+			}catch( IOException e ){
+
+				close();
+
+				throw( e );
+			}
+		}
+
+		private void
+		add(
+			int			min,
+			long[]		values )
+
+			throws IOException
+		{
+			LongTermStatsSeries.this.add( columns, min, values );
+
+			FileChannel	channel = raf.getChannel();
+
+			for ( int i=0;i<entry_count;i++){
+
+				if ( values[i] == 0 ){
+
+					continue;
+				}
+
+				long	column_pos = HEADER_SIZE + (long)i*COLUMN_LONGS*8;
+
+				writeLong( channel, column_pos + DAY_OFFSET*8, columns[i][DAY_OFFSET] );
+				writeLong( channel, column_pos + ( HOUR_OFFSET + min/60 )*8, columns[i][HOUR_OFFSET + min/60] );
+				writeLong( channel, column_pos + ( MIN_OFFSET + min )*8, columns[i][MIN_OFFSET + min] );
+			}
+
+			updateIndex();
+		}
+
+		private void
+		updateIndex()
+
+			throws IOException
+		{
+			long[]	totals = new long[entry_count];
+
+			for ( int i=0;i<entry_count;i++){
+
+				totals[i] = columns[i][DAY_OFFSET];
+			}
+
+			index.setTotals( day_of_month, totals );
+		}
+
+		private void
+		writeLong(
+			FileChannel		channel,
+			long			position,
+			long			value )
+
+			throws IOException
+		{
+			value_buffer.clear();
+
+			value_buffer.putLong( value );
+
+			value_buffer.flip();
+
+			writeFully( channel, value_buffer, position );
+		}
+
+		private void
+		close()
+		{
+			try{
+				raf.close();
+
+			}catch( Throwable e ){
+			}
+
+			index.close();
+		}
+	}
+
+		/**
+		 * Day totals for a month, a row per day of a 'present' flag followed by the totals
+		 */
+
+	private class
+	MonthIndex
+	{
+		private final String[]		bits;
+		private final File			file;
+		private final long[][]		rows	= new long[31][];
+		private final int			row_size;
+
+		private boolean				valid;
+		private RandomAccessFile	raf;
+
+		private
+		MonthIndex(
+			String[]	_bits )
+
+			throws IOException
+		{
+			bits		= _bits;
+			file		= FileUtil.newFile( dir, bits[0], bits[1], INDEX_NAME );
+			row_size	= ( 1 + entry_count )*8;
+
+			for ( int i=0;i<rows.length;i++){
+
+				rows[i] = new long[ 1 + entry_count ];
+			}
+
+			if ( file.exists()){
+
+				RandomAccessFile	temp = new RandomAccessFile( file, "r" );
+
+				try{
+					ByteBuffer	buffer = ByteBuffer.allocate( HEADER_SIZE + rows.length*row_size );
+
+					if ( temp.length() == buffer.capacity()){
+
+						FileChannel	channel = temp.getChannel();
+
+						while( buffer.hasRemaining()){
+
+							if ( channel.read( buffer ) < 0 ){
+
+								break;
+							}
+						}
+
+						buffer.flip();
+
+						if ( buffer.remaining() == buffer.capacity() && checkHeader( buffer )){
+
+							for ( long[] row: rows ){
+
+								buffer.asLongBuffer().get( row );
+
+								buffer.position( buffer.position() + row_size );
+							}
+
+							valid = true;
+						}
+					}
+				}finally{
+
+					temp.close();
+				}
+			}
+		}
+
+		private boolean
+		isFor(
+			String[]	_bits )
+		{
+			return( bits[0].equals( _bits[0] ) && bits[1].equals( _bits[1] ));
+		}
+
+		private long[]
+		getTotals(
+			int		day_of_month )
+		{
+			long[]	row = rows[day_of_month-1];
+
+			if ( row[0] != ROW_PRESENT ){
+
+				return( null );
+			}
+
+			long[]	result = new long[entry_count];
+
+			System.arraycopy( row, 1, result, 0, entry_count );
+
+			return( result );
+		}
+
+		private void
+		setTotals(
+			int			day_of_month,
+			long[]		totals )
+
+			throws IOException
+		{
+			long[]	row = rows[day_of_month-1];
+
+			row[0] = ROW_PRESENT;
+
+			System.arraycopy( totals, 0, row, 1, entry_count );
+
+			if ( raf == null ){
+
+				raf = new RandomAccessFile( file, "rw" );
+
+					// create the file, or replace one we couldn't read
+
+				if ( !valid ){
+
+					ByteBuffer	buffer = ByteBuffer.allocate( HEADER_SIZE + rows.length*row_size );
+
+					putHeader( buffer );
+
+					for ( long[] r: rows ){
+
+						buffer.asLongBuffer().put( r );
+
+						buffer.position( buffer.position() + row_size );
+					}
+
+					buffer.flip();
+
+					raf.setLength( 0 );
+
+					writeFully( raf.getChannel(), buffer, 0 );
+
+					valid = true;
+
+					return;
+				}
+			}
+
+			ByteBuffer	buffer = ByteBuffer.allocate( row_size );
+
+			buffer.asLongBuffer().put( row );
+
+			writeFully( raf.getChannel(), buffer, HEADER_SIZE + (long)( day_of_month-1 )*row_size );
+		}
+
+		private void
+		close()
+		{
+			if ( raf != null ){
+
+				try{
+					raf.close();
+
+				}catch( Throwable e ){
+				}
+
+				raf = null;
+			}
+		}
+	}
+}
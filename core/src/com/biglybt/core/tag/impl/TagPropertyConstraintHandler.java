@@ -154,7 +154,7 @@ TagPropertyConstraintHandler
 				}
 				
 				if ( changed ){
-					nameEtcChanged( download );
+					nameEtcChanged( download, TagConstraint.KWS_FILE_SELECTION );
 				}
 			}
 		};
@@ -185,7 +185,23 @@ TagPropertyConstraintHandler
 				}
 				
 				if ( changed ){
-					nameEtcChanged( download );
+					
+					long	keywords;
+					
+					if ( attribute.equals( DownloadManagerState.AT_DISPLAY_NAME )){
+						
+						keywords = TagConstraint.KWS_NAME;
+						
+					}else if ( attribute.equals( DownloadManagerState.AT_CANONICAL_SD_DMAP )){
+						
+						keywords = TagConstraint.KWS_SAVE_LOCATION;
+						
+					}else{
+						
+						keywords = TagConstraint.KWS_FILE_LINKS;
+					}
+					
+					nameEtcChanged( download, keywords );
 				}
 			};	
 		};
@@ -895,9 +911,15 @@ TagPropertyConstraintHandler
 			});
 	}
 
+		/**
+		 * @param keywords	the attribute keywords (TagConstraint.KWS_*) whose values may have changed, only
+		 * constraints using one of them are re-applied
+		 */
+	
 	public void
 	nameEtcChanged(
-		DownloadManager		dm )
+		DownloadManager		dm,
+		long				keywords )
 	{
 		Set<TagConstraint>	interesting = new HashSet<>();
 		
@@ -910,7 +932,7 @@ TagPropertyConstraintHandler
 
 			for ( TagConstraint tc: constrained_tags.values()){
 
-				if ( tc.dependsOnNameEtc()){
+				if ( tc.dependsOnNameEtc() && tc.usesKeywords( keywords )){
 
 					interesting.add( tc );
 				}
@@ -1135,7 +1157,7 @@ TagPropertyConstraintHandler
 	private void
 	apply(
 		final DownloadManager				dm,
-		Tag									related_tag,
+		final Tag							related_tag,
 		boolean								auto,
 		boolean								is_new )
 	{
@@ -1173,7 +1195,12 @@ TagPropertyConstraintHandler
 
 					for ( TagConstraint con: cons ){
 
-						con.apply( dm, is_new );
+							// a change to a tag's taggables only needs to re-evaluate constraints that read it
+
+						if ( related_tag == null || con.isAffectedByTag( related_tag )){
+
+							con.apply( dm, is_new );
+						}
 					}
 				}
 			});
@@ -1401,6 +1428,15 @@ TagPropertyConstraintHandler
 		private Set<Tag>		dependent_on_tags;
 		private boolean			dependent_on_peer_sets;
 		
+			// names of tags whose taggables are read by the constraint, reads_any_tag if it can't be determined
+		
+		private Set<String>		reads_tag_names;
+		private boolean			reads_any_tag;
+		
+			// download attribute keywords used by the constraint, one bit per KW_ value
+		
+		private long			uses_keywords;
+		
 		private Set<Tag>		tag_weights;
 		private int				tag_weights_opt	= 0;
 		
@@ -1411,6 +1447,9 @@ TagPropertyConstraintHandler
 		
 		private Average			activity_average = Average.getInstance( 1000, 60 );
 		
+		private long			eval_count;
+		private long			eval_nanos;
+		
 		private String 			error;
 		
 		private
@@ -1473,6 +1512,13 @@ TagPropertyConstraintHandler
 		{
 			String result = activity_average.getAverage() + "/" +  TimeFormatter.getLongSuffix( TimeFormatter.TS_SECOND );
 			
+			long	count = eval_count;
+			
+			if ( count > 0 ){
+				
+				result += ", " + count + " evals, avg " + ( eval_nanos/count/1000 ) + "us";
+			}
+			
 			if ( Constants.IS_CVS_VERSION ){
 				
 				result +=  ", " + "DS=" + depends_on_download_state + ", DL=" + depends_on_level;
@@ -1499,6 +1545,32 @@ TagPropertyConstraintHandler
 			return( dependent_on_tags == null?Collections.emptySet():dependent_on_tags );
 		}
 		
+		private boolean
+		isAffectedByTag(
+			Tag		tag )
+		{
+			if ( reads_any_tag || tag == tag_maybe_null ){
+				
+				return( true );
+			}
+			
+			Set<String> names = reads_tag_names;
+			
+			return( names != null && names.contains( tag.getTagName( true )));
+		}
+		
+		private void
+		addReadsTag(
+			String		tag_name )
+		{
+			if ( reads_tag_names == null ){
+				
+				reads_tag_names = new HashSet<>();
+			}
+			
+			reads_tag_names.add( tag_name );
+		}
+		
 		private void
 		checkStuff()
 		{
@@ -1587,6 +1659,13 @@ TagPropertyConstraintHandler
 			return( depends_on_names_etc );
 		}
 		
+		private boolean
+		usesKeywords(
+			long		keywords )
+		{
+			return(( uses_keywords & keywords ) != 0 );
+		}
+		
 		private String
 		removeComments(
 			String	str )
@@ -2130,8 +2209,15 @@ TagPropertyConstraintHandler
 				
 				Map<String,Object>	context = new HashMap<>();
 				
+				long	start = SystemTime.getHighPrecisionCounter();
+				
 				Object o_result = expr.eval( context, dm, dm_tags, debug );
 				
+					// diagnostics only so unsynchronized updates are fine
+				
+				eval_count++;
+				eval_nanos += SystemTime.getHighPrecisionCounter() - start;
+				
 				if ( o_result instanceof Number ){
 					
 					o_result = ((Number)o_result).intValue() != 0;
@@ -2323,6 +2409,20 @@ TagPropertyConstraintHandler
 								
 								depends_on_level = Math.max( depends_on_level, kw_details[1] );
 							}
+							
+							int[] kw_lc = keyword_map.get(((String)obj).toLowerCase( Locale.US ));
+							
+							if ( kw_lc != null ){
+								
+									// keywords are evaluated case-insensitively
+								
+								uses_keywords |= 1L << kw_lc[0];
+								
+								if ( kw_lc[0] == KW_TAG_NAMES || kw_lc[0] == KW_MOC_PATH ){
+								
+									reads_any_tag = true;
+								}
+							}
 						}
 					}
 				}catch( Throwable e ){
@@ -3005,6 +3105,15 @@ TagPropertyConstraintHandler
 		private static final int	KW_POSITION				= 56;
 		private static final int	KW_LAST_QUEUED			= 57;
 	
+			// keyword groups affected by each kind of download attribute change
+		
+		static final long	KWS_NAME			= 1L << KW_NAME;
+		static final long	KWS_FILE_LINKS		= ( 1L << KW_FILE_PATHS ) | ( 1L << KW_FILE_PATHS_SELECTED );
+		static final long	KWS_SAVE_LOCATION	= ( 1L << KW_SAVE_PATH ) | ( 1L << KW_SAVE_FOLDER ) | KWS_FILE_LINKS;
+		static final long	KWS_FILE_SELECTION	=
+			( 1L << KW_FILE_NAMES_SELECTED ) | ( 1L << KW_FILE_EXTS_SELECTED ) |
+			( 1L << KW_FILE_PATHS_SELECTED ) | ( 1L << KW_FILE_COUNT_SELECTED );
+	
 		static{
 			keyword_map.put( "shareratio", 				new int[]{KW_SHARE_RATIO,			DEP_RUNNING });
 			keyword_map.put( "share_ratio", 			new int[]{KW_SHARE_RATIO,			DEP_RUNNING });
@@ -3149,6 +3258,9 @@ TagPropertyConstraintHandler
 			private final int	fn_type;
 
 			private Map<String, Object[]>	matches_cache = new HashMap<>();
+			
+			private String	contains_pattern_source;
+			private String	contains_pattern_str;
 						
 			private
 			ConstraintExprFunction(
@@ -3200,6 +3312,8 @@ TagPropertyConstraintHandler
 							
 							String tag_name = (String)params[0];
 							
+							addReadsTag( tag_name );
+							
 							if ( handler.tag_manager != null ){
 								
 								List<Tag> tags = handler.tag_manager.getTagsByName( tag_name, true );
@@ -3237,6 +3351,8 @@ TagPropertyConstraintHandler
 					case FT_GET_TAG_WEIGHT:{
 																
 						params_ok = num_params <= 2;
+						
+						reads_any_tag = true;
 							
 						for( int i=0;i<num_params&&params_ok;i++){
 						
@@ -3427,13 +3543,15 @@ TagPropertyConstraintHandler
 									}
 								}
 								
+									// keep the compiled pattern so evaluation never has to
+								
 								if ( case_insensitive ){
 									
-									Pattern.compile((String)params[1], Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE );
+									params[1] = Pattern.compile((String)params[1], Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE );
 									
 								}else{
 									
-									Pattern.compile((String)params[1] );
+									params[1] = Pattern.compile((String)params[1] );
 								}
 							}catch( Throwable e ) {
 								
@@ -3449,12 +3567,16 @@ TagPropertyConstraintHandler
 
 						depends_on_download_state = true;	// dunno so let's assume so
 						
+						reads_any_tag = true;
+						
 						break;
 					}
 					case FT_HAS_TAG_GROUP:{
 				
 						params_ok = num_params == 1 && getStringLiteral( params, 0 );
 						
+						reads_any_tag = true;
+						
 						break;
 					}
 					case FT_HOURS_TO_SECS:
@@ -3560,6 +3682,8 @@ TagPropertyConstraintHandler
 						
 						params_ok = num_params <= 2;
 						
+						reads_any_tag = true;
+						
 						for( int i=0;i<num_params&&params_ok;i++){
 						
 							params_ok = getStringLiteral( params, i );
@@ -4225,23 +4349,20 @@ TagPropertyConstraintHandler
 												
 						if ( s2.contains( "|" )){
 							
-							String pat_str = "";
-							String[] bits = s2.split( "\\|");
-							boolean hasSpace = s2.contains( " " );
-							if (hasSpace) {
-								s2 = "";
-							}
-							for ( String bit: bits ){
-								bit = bit.trim();
-								if ( !bit.isEmpty()){
-									if (hasSpace) {
-										s2 += (s2.isEmpty()?"":"|") + bit;
-									}
-									pat_str += (pat_str.isEmpty()?"":"|") + Pattern.quote(bit);
-								}
-							}
-							if (hasSpace) {
-								params[1] = "\"" + s2 + "\"";
+							String pat_str;
+							
+							if ( s2.equals( contains_pattern_source )){
+								
+									// usually a literal so don't rebuild the alternation each time
+								
+								pat_str = contains_pattern_str;
+								
+							}else{
+								
+								pat_str = buildContainsPattern( s2 );
+								
+								contains_pattern_source	= s2;
+								contains_pattern_str	= pat_str;
 							}
 							
 							Pattern pattern = RegExUtil.getCachedPattern( "tag:constraint:" + tag_maybe_null.getTagUID(), pat_str, case_insensitive?0:(Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
@@ -4831,6 +4952,32 @@ TagPropertyConstraintHandler
 				return( false );
 			}
 
+			private String
+			buildContainsPattern(
+				String		s2 )
+			{
+				String pat_str = "";
+				String[] bits = s2.split( "\\|");
+				boolean hasSpace = s2.contains( " " );
+				if (hasSpace) {
+					s2 = "";
+				}
+				for ( String bit: bits ){
+					bit = bit.trim();
+					if ( !bit.isEmpty()){
+						if (hasSpace) {
+							s2 += (s2.isEmpty()?"":"|") + bit;
+						}
+						pat_str += (pat_str.isEmpty()?"":"|") + Pattern.quote(bit);
+					}
+				}
+				if (hasSpace) {
+					params[1] = "\"" + s2 + "\"";
+				}
+				
+				return( pat_str );
+			}
+			
 			private String
 			getStringParam(
 				Object[] 		params,
@@ -24,6 +24,8 @@ public interface
 TOTorrentListener
 {
 	public static final int CT_ANNOUNCE_URLS	= 1;	// data either old,new {URL, URL} or { TOTorrentAnnounceURLSet[], TOTorrentAnnounceURLSet[] }
+	public static final int CT_PROPERTY			= 2;	// data is the name of the additional property set or removed
+	public static final int CT_METADATA			= 3;	// comment, creation date, created by or bulk property removal, data null
 
 	public void
 	torrentChanged(
@@ -412,7 +412,7 @@ TOTorrentCreateImpl
 
 				long length = file_hasher.add( link==null?torrent_base:link );
 
-				setFiles( new TOTorrentFileImpl[]{ new TOTorrentFileImpl( this, 0, 0, length, new byte[][]{ getName()})});
+				setFiles( new TOTorrentFileImpl[]{ new TOTorrentFileImpl( new TOTorrentFileTable( this, 1 ), 0, 0, length, new byte[][]{ getName()})});
 
 				setPieces( file_hasher.getPieces());
 
@@ -420,7 +420,7 @@ TOTorrentCreateImpl
 
 				List<TOTorrentFileImpl>	encoded = new ArrayList<>();
 
-				ignored = processDir( file_hasher, torrent_base, encoded, torrent_base.getName(), "", new long[1] );
+				ignored = processDir( file_hasher, new TOTorrentFileTable( this, (int)total_file_count_no_pad ), torrent_base, encoded, torrent_base.getName(), "", new long[1] );
 
 				TOTorrentFileImpl[] files = new TOTorrentFileImpl[ encoded.size()];
 
@@ -555,6 +555,7 @@ TOTorrentCreateImpl
 	private int
 	processDir(
 		TOTorrentFileHasher			hasher,
+		TOTorrentFileTable			table,
 		File						dir,
 		List<TOTorrentFileImpl>		encoded,
 		String						base_name,
@@ -608,7 +609,7 @@ TOTorrentCreateImpl
 						file_name = root + File.separator + file_name ;
 					}
 
-					ignored += processDir( hasher, file, encoded, base_name, file_name, torrent_offset );
+					ignored += processDir( hasher, table, file, encoded, base_name, file_name, torrent_offset );
 
 				}else{
 
@@ -636,7 +637,7 @@ TOTorrentCreateImpl
 									
 								pad_file_sizes += pad_size;
 								
-								TOTorrentFileImpl	tf = new TOTorrentFileImpl( this, i, torrent_offset[0], pad_size, pad_file );
+								TOTorrentFileImpl	tf = new TOTorrentFileImpl( table, i, torrent_offset[0], pad_size, pad_file );
 
 								tf.setAdditionalProperty( TOTorrentImpl.TK_BEP47_ATTRS, "p".getBytes( Constants.UTF_8 ));
 								
@@ -660,7 +661,7 @@ TOTorrentCreateImpl
 
 						long length = hasher.add( link==null?file:link );
 
-						TOTorrentFileImpl	tf = new TOTorrentFileImpl( this, i, torrent_offset[0], length, file_name );
+						TOTorrentFileImpl	tf = new TOTorrentFileImpl( table, i, torrent_offset[0], length, file_name );
 
 						torrent_offset[0] += length;
 
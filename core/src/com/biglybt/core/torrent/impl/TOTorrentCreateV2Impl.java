@@ -20,6 +20,8 @@ package com.biglybt.core.torrent.impl;
 
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 import com.biglybt.core.torrent.TOTorrentException;
@@ -52,6 +54,10 @@ TOTorrentCreateV2Impl
 	
 	private int		files_ignored;	
 	
+	private TOTorrentPieceHasher	piece_hasher;
+	
+	private final List<byte[]>		piece_hashes = new ArrayList<>();
+	
 	private final boolean flatten_files = false;		// for testing only
 	
 	public static byte[]
@@ -60,10 +66,12 @@ TOTorrentCreateV2Impl
 	
 		throws TOTorrentException
 	{
+			// the root hash doesn't depend on the piece size and larger pieces hash more efficiently
+		
 		TOTorrentCreateV2Impl temp =
 			new TOTorrentCreateV2Impl( 
 				file, 
-				16*1024, 
+				1024*1024, 
 				new Adapter(){
 			
 					@Override
@@ -321,10 +329,6 @@ TOTorrentCreateV2Impl
 		byte[] pieces_layer = null;
 		
 		try{
-			MessageDigest sha256 = MessageDigest.getInstance( "SHA-256" );
-												
-			byte[]	buffer = new byte[block_size];
-				
 			File link = adapter.resolveFile( file_index + synthetic_pad_file_count, file, relative_path );
 			
 			file_index++;
@@ -338,31 +342,41 @@ TOTorrentCreateV2Impl
 						
 			if ( file_length > 0 ){
 				
-				long leaf_width;
-				
-				long highestOneBit = Long.highestOneBit(file_length);
-				
-				if ( file_length == highestOneBit ) {
-					
-					leaf_width = file_length;
-					
-				}else{
-					
-					leaf_width =  highestOneBit << 1;
+					// each piece's subtree is hashed on the concurrent hasher while we read ahead, the
+					// levels above the pieces are then done here
+				
+				if ( piece_hasher == null ){
+					
+					piece_hasher = 
+						new TOTorrentPieceHasher( 
+							2, 
+							(int)piece_size,
+							new TOTorrentPieceHasher.Listener()
+							{
+								@Override
+								public void
+								pieceHashed(
+									byte[]		hash,
+									int			size )
+								{
+									piece_hashes.add( hash );
+									
+									file_bytes_hashed += size;
+									
+									adapter.reportHashedBytes( file_bytes_hashed );
+								}
+							});
 				}
-							
-				int leaf_count = (int)( leaf_width/block_size);
 				
-				if ( leaf_count == 0 ){
-					
-					leaf_count = 1;
-				}
+				piece_hashes.clear();
 				
 				FileInputStream fis = FileUtil.newFileInputStream(file);
 				
-				List<byte[]> leaf_digests = new ArrayList<>( leaf_count );
-	
-				try{				
+				try{
+					FileChannel channel = fis.getChannel();
+					
+					ByteBuffer	buffer = null;
+					
 					while( true ){
 
 						if ( adapter.cancelled()){
@@ -371,91 +385,139 @@ TOTorrentCreateV2Impl
 															TOTorrentException.RT_CANCELLED ));
 						}
 
-						int len = fis.read( buffer );
+						if ( buffer == null ){
+							
+							buffer = piece_hasher.getBuffer();
+						}
+						
+						int len = channel.read( buffer );
 						
 						if ( len <= 0 ){
 							
 							break;
 						}
 						
-						sha256.update( buffer, 0, len );
-						
-						byte[] digest = sha256.digest();
-						
-						file_bytes_hashed += len;
-						
-						adapter.reportHashedBytes( file_bytes_hashed );
+						if ( !buffer.hasRemaining()){
+							
+							piece_hasher.submit( buffer, file_length );
+							
+							buffer = null;
+						}
+					}
+					
+					if ( buffer != null ){
 						
-						leaf_digests.add( digest );
+						if ( buffer.position() > 0 ){
+							
+							piece_hasher.submit( buffer, file_length );
+							
+						}else{
+							
+							piece_hasher.release( buffer );
+						}
 					}
+					
+					piece_hasher.complete();
+					
+				}catch( Throwable e ){
+					
+					piece_hasher.cancel();
+					
+					throw( e );
+					
 				}finally{
 					
 					fis.close();
 				}
 				
-				byte[]	zero_buffer = new byte[digest_length];
-
-				while( leaf_digests.size() < leaf_count ){
-					
-					leaf_digests.add( zero_buffer );
-				}
-				
-				List<byte[]> current_level = leaf_digests;
-				
-				int current_size = block_size;
+				if ( file_length <= piece_size ){
 				
-				while( current_level.size() > 1 ){
+					root_hash = piece_hashes.get(0);
 					
-					if ( adapter.cancelled()){
-
-						throw( new TOTorrentException( 	"Operation cancelled",
-														TOTorrentException.RT_CANCELLED ));
+				}else{
+					
+					int useful_pieces = piece_hashes.size();
+					
+					pieces_layer = new byte[digest_length*useful_pieces];
+					
+					int pos = 0;
+					
+					for ( int i=0;i<useful_pieces;i++){
+						
+						System.arraycopy( piece_hashes.get(i), 0, pieces_layer, pos, digest_length );
+						
+						pos += digest_length;
 					}
+					
+					//System.out.println( "pieces_layer=" + ByteFormatter.encodeStringFully( pieces_layer ));
 
-					// System.out.println( "level " + current_size + "/" + current_level.size());
+					long leaf_width;
+					
+					long highestOneBit = Long.highestOneBit(file_length);
 					
-					List<byte[]> next_level = new ArrayList<byte[]>(current_level.size()/2);
-																	
-					for ( int i=0;i<current_level.size();i+=2 ){
+					if ( file_length == highestOneBit ) {
 						
-						sha256.update( current_level.get(i));
-						sha256.update( current_level.get(i+1));
+						leaf_width = file_length;
 						
-						byte[] hash = sha256.digest();
+					}else{
 						
-						next_level.add( hash );
+						leaf_width =  highestOneBit << 1;
 					}
 					
-					if ( current_size == piece_size ){
+					MessageDigest sha256 = MessageDigest.getInstance( "SHA-256" );
+
+						// pad out with the subtree hash of a piece of zero leaves
+					
+					int piece_count = (int)( leaf_width/piece_size );
+					
+					List<byte[]> current_level = new ArrayList<>( piece_count );
+					
+					current_level.addAll( piece_hashes );
+					
+					if ( current_level.size() < piece_count ){
 						
-						int useful_pieces = (int)( file_length/piece_size );
+						byte[] pad_hash = new byte[digest_length];
 						
-						if ( file_length%piece_size != 0 ){
+						for ( long size = block_size; size < piece_size; size *= 2 ){
+							
+							sha256.update( pad_hash );
+							sha256.update( pad_hash );
 							
-							useful_pieces++;
+							pad_hash = sha256.digest();
 						}
-								
-						pieces_layer = new byte[digest_length*useful_pieces];
 						
-						int pos = 0;
+						while( current_level.size() < piece_count ){
 						
-						for ( int i=0;i<useful_pieces;i++){
+							current_level.add( pad_hash );
+						}
+					}
+					
+					while( current_level.size() > 1 ){
+						
+						if ( adapter.cancelled()){
+	
+							throw( new TOTorrentException( 	"Operation cancelled",
+															TOTorrentException.RT_CANCELLED ));
+						}
+	
+						List<byte[]> next_level = new ArrayList<byte[]>(current_level.size()/2);
+																		
+						for ( int i=0;i<current_level.size();i+=2 ){
 							
-							System.arraycopy( current_level.get(i), 0, pieces_layer, pos, digest_length );
+							sha256.update( current_level.get(i));
+							sha256.update( current_level.get(i+1));
 							
-							pos += digest_length;
+							byte[] hash = sha256.digest();
+							
+							next_level.add( hash );
 						}
 						
-						//System.out.println( "pieces_layer=" + ByteFormatter.encodeStringFully( pieces_layer ));
+						current_level = next_level;
 					}
 					
-					current_level = next_level;
-					
-					current_size *= 2;
+					root_hash = current_level.get(0);
 				}
 				
-				root_hash = current_level.get(0);
-				
 				//System.out.println( "root=" + ByteFormatter.encodeString( root_hash ));
 			}
 					
@@ -483,7 +545,7 @@ TOTorrentCreateV2Impl
 				long[] torrent_offset	= { 0 };
 				long[] pad_details 		= { 0, 0 };
 				
-				lashUpV2Files( torrent, v2_files, new LinkedList<byte[]>(), file_tree, piece_length, torrent_offset, pad_details );
+				lashUpV2Files( new TOTorrentFileTable( torrent, 0 ), v2_files, new LinkedList<byte[]>(), file_tree, piece_length, torrent_offset, pad_details );
 				
 				TOTorrentFileImpl[]	v1_files = torrent.getFiles();
 				
@@ -538,7 +600,9 @@ TOTorrentCreateV2Impl
 		long[] torrent_offset	= { 0 };
 		long[] pad_details 		= { 0, 0 };
 		
-		lashUpV2Files( torrent, files, new LinkedList<byte[]>(), file_tree, piece_length, torrent_offset, pad_details );
+		TOTorrentFileTable	file_table = new TOTorrentFileTable( torrent, 0 );
+		
+		lashUpV2Files( file_table, files, new LinkedList<byte[]>(), file_tree, piece_length, torrent_offset, pad_details );
 		
 		torrent.setFiles( files.toArray( new TOTorrentFileImpl[ files.size() ]));
 		
@@ -681,7 +745,7 @@ TOTorrentCreateV2Impl
 	
 	private static void
 	lashUpV2Files(
-		TOTorrentImpl				torrent,
+		TOTorrentFileTable			table,
 		List<TOTorrentFileImpl>		files,
 		LinkedList<byte[]>			path,
 		Map<String,Object> 			node,
@@ -715,7 +779,7 @@ TOTorrentCreateV2Impl
 						
 						pad_details[1] += pad_size;
 						
-						TOTorrentFileImpl	tf = new TOTorrentFileImpl( torrent, files.size(), torrent_offset[0], pad_size, pad_file, pad_file, null );
+						TOTorrentFileImpl	tf = new TOTorrentFileImpl( table, files.size(), torrent_offset[0], pad_size, pad_file, pad_file, null );
 
 						tf.setAdditionalProperty( TOTorrentImpl.TK_BEP47_ATTRS, "p".getBytes( Constants.UTF_8 ));
 						
@@ -741,7 +805,7 @@ TOTorrentCreateV2Impl
 					}
 				}
 				
-				TOTorrentFileImpl file = new TOTorrentFileImpl( torrent, files.size(), torrent_offset[0], length, bpath, bpath, pieces_root );
+				TOTorrentFileImpl file = new TOTorrentFileImpl( table, files.size(), torrent_offset[0], length, bpath, bpath, pieces_root );
 				
 				files.add( file );
 				
@@ -753,7 +817,7 @@ TOTorrentCreateV2Impl
 				
 				try{
 					
-					lashUpV2Files( torrent, files, path, kid, piece_length, torrent_offset, pad_details );
+					lashUpV2Files( table, files, path, kid, piece_length, torrent_offset, pad_details );
 					
 				}finally{
 					
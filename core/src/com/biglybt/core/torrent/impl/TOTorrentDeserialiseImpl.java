@@ -24,6 +24,7 @@ package com.biglybt.core.torrent.impl;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.zip.GZIPInputStream;
 
@@ -41,6 +42,8 @@ public class
 TOTorrentDeserialiseImpl
 	extends TOTorrentImpl
 {
+	private static final int	LAZY_DECODE_MIN_SIZE	= 1024*1024;
+
 	public
 	TOTorrentDeserialiseImpl(
 		File		file )
@@ -298,11 +301,27 @@ TOTorrentDeserialiseImpl
 		throws TOTorrentException
 	{
 		try{
-			BDecoder decoder = new BDecoder();
+			byte[] data = bytes.getBytes();
+
+			Map meta_data;
+
+			if ( BLazyDecoder.ENABLED && data.length >= LAZY_DECODE_MIN_SIZE ){
+
+					// large torrents (and saved state with big resume data) are decoded on demand from
+					// the raw data, anything retained by the torrent is materialised as it is extracted
 
-			decoder.setVerifyMapOrder( true );
+				meta_data = BLazyDecoder.decode( ByteBuffer.wrap( data ), true );
 
-			Map meta_data = decoder.decodeByteArray( bytes.getBytes());
+			}else{
+
+				BDecoder decoder = new BDecoder();
+
+				decoder.setVerifyMapOrder( true );
+
+				meta_data = decoder.decodeByteArray( data );
+			}
+
+			data = null;
 
 			bytes.release();
 			
@@ -565,11 +584,11 @@ TOTorrentDeserialiseImpl
 
 					}else if ( prop instanceof List ){
 
-						setAdditionalListProperty( key, (List)prop );
+						setAdditionalListProperty( key, (List)BLazyDecoder.materialise( prop ));
 
 					}else{
 
-						setAdditionalMapProperty( key, (Map)prop );
+						setAdditionalMapProperty( key, (Map)BLazyDecoder.materialise( prop ));
 					}
 				}
 			}
@@ -700,7 +719,7 @@ TOTorrentDeserialiseImpl
 					setAdditionalStringProperty("encoding", ENCODING_ACTUALLY_UTF8_KEYS);
 				}
 
-				setFiles( new TOTorrentFileImpl[]{ new TOTorrentFileImpl( this, 0, 0, total_length, new byte[][]{getName()})});
+				setFiles( new TOTorrentFileImpl[]{ new TOTorrentFileImpl( new TOTorrentFileTable( this, 1 ), 0, 0, total_length, new byte[][]{getName()})});
 
 			}else{
 
@@ -736,7 +755,9 @@ TOTorrentDeserialiseImpl
 						}
 					}
 
-					ByteArrayHashMap<byte[]> comp_cache = new ByteArrayHashMap<>();
+						// the file table interns the path components
+					
+					TOTorrentFileTable file_table = new TOTorrentFileTable( this, files.length );
 					
 					for (int i=0;i<files.length;i++){
 	
@@ -752,29 +773,11 @@ TOTorrentDeserialiseImpl
 						
 						if ( paths != null ){
 		
-		  					int limit = paths.size()-1;
-
-		  					path_comps = new byte[limit+1][];
+		  					path_comps = new byte[paths.size()][];
 				  					
-		  					for ( int j=0; j<=limit; j++ ){
+		  					for ( int j=0; j<path_comps.length; j++ ){
 		
-		  						byte[] comp = (byte[])paths.get(j);
-		  						
-		  						if ( j < limit ){
-		  							
-		  							byte[] existing = comp_cache.get( comp );
-		  							
-		  							if ( existing == null ){
-		  								
-		  								comp_cache.put( comp, comp );
-		  								
-		  							}else{
-		  								
-		  								comp = existing;
-		  							}
-		  						}
-		  						
-		  						path_comps[j] = comp;
+		  						path_comps[j] = (byte[])paths.get(j);
 		  					}
 						}
 	
@@ -782,36 +785,18 @@ TOTorrentDeserialiseImpl
 	
 						if ( hasUTF8Keys ){
 							
-							int limit = paths8.size()-1;
+							byte[][]	path_comps8 = new byte[paths8.size()][];
 							
-							byte[][]	path_comps8 = new byte[limit+1][];
-							
-							for ( int j=0; j<=limit; j++){
-	
-								byte[] comp = (byte[])paths8.get(j);
-		  						
-		  						if ( j < limit ){
-		  							
-		  							byte[] existing = comp_cache.get( comp );
-		  							
-		  							if ( existing == null ){
-		  								
-		  								comp_cache.put( comp, comp );
-		  								
-		  							}else{
-		  								
-		  								comp = existing;
-		  							}
-		  						}
-		  						
-		  						path_comps8[j] = comp;
+							for ( int j=0; j<path_comps8.length; j++){
+	
+								path_comps8[j] = (byte[])paths8.get(j);
 							}
 	
-							file = files[i] = new TOTorrentFileImpl( this, i, total_length, len, path_comps, path_comps8 );
+							file = files[i] = new TOTorrentFileImpl( file_table, i, total_length, len, path_comps, path_comps8 );
 							
 						}else{
 							
-							file = files[i] = new TOTorrentFileImpl( this, i, total_length, len, path_comps );
+							file = files[i] = new TOTorrentFileImpl( file_table, i, total_length, len, path_comps );
 						}
 	
 						total_length += len;
@@ -831,7 +816,7 @@ TOTorrentDeserialiseImpl
 								// we don't skip TK_PATH_UTF8 because some code might assume getAdditionalProperty can get it
 							}else{
 	
-								file.setAdditionalProperty( key, file_map.get( key ));
+								file.setAdditionalProperty( key, BLazyDecoder.materialise( file_map.get( key )));
 							}
 						}
 					}
@@ -869,7 +854,20 @@ TOTorrentDeserialiseImpl
 				setHashFromInfo( info );
 			}
 			
-			byte[]	flat_pieces = (byte[])info.get( TK_PIECES );
+				// with a lazy map the piece hashes are read directly from the raw data
+
+			ByteBuffer	flat_pieces;
+
+			if ( info instanceof BLazyDecoder.LazyMap ){
+
+				flat_pieces = ((BLazyDecoder.LazyMap)info).getSlice( TK_PIECES );
+
+			}else{
+
+				byte[] temp = (byte[])info.get( TK_PIECES );
+
+				flat_pieces = temp==null?null:ByteBuffer.wrap( temp );
+			}
 
 			if ( flat_pieces == null ){
 				
@@ -882,7 +880,7 @@ TOTorrentDeserialiseImpl
 	
 				int	pieces_required = (int)((total_length + (piece_length-1)) / piece_length);
 	
-				int		pieces_supplied = flat_pieces.length/20;
+				int		pieces_supplied = flat_pieces.remaining()/20;
 	
 				if ( pieces_supplied < pieces_required ){
 	
@@ -899,7 +897,7 @@ TOTorrentDeserialiseImpl
 	
 				for (int i=0;i<pieces.length;i++){
 	
-					System.arraycopy( flat_pieces, i*20, pieces[i], 0, 20 );
+					flat_pieces.get( pieces[i] );
 				}
 	
 				setPieces( pieces );
@@ -923,7 +921,7 @@ TOTorrentDeserialiseImpl
 
 				}else{
 
-					addAdditionalInfoProperty( key, info.get( key ));
+					addAdditionalInfoProperty( key, BLazyDecoder.materialise( info.get( key )));
 				}
 			}
 
@@ -936,27 +934,33 @@ TOTorrentDeserialiseImpl
 
 				}else{
 
+					boolean	order_incorrect = false;
+
 					if ( info instanceof LightHashMapEx ){
 
-						LightHashMapEx	info_ex = (LightHashMapEx)info;
+						order_incorrect = ((LightHashMapEx)info).getFlag( LightHashMapEx.FL_MAP_ORDER_INCORRECT );
 
-						if ( info_ex.getFlag( LightHashMapEx.FL_MAP_ORDER_INCORRECT )){
+					}else if ( info instanceof BLazyDecoder.LazyMap ){
 
-							String name = getUTF8Name();
+						order_incorrect = ((BLazyDecoder.LazyMap)info).isOrderIncorrect();
+					}
 
-							if ( name == null ){
+					if ( order_incorrect ){
 
-								name = new String(getName());
-							}
+						String name = getUTF8Name();
 
-							String	message = MessageText.getString( "torrent.decode.info.order.bad", new String[]{ name });
+						if ( name == null ){
 
-							LogAlert alert = new LogAlert( this, LogAlert.UNREPEATABLE, LogAlert.AT_WARNING, message);
+							name = new String(getName());
+						}
 
-							alert.forceNotify = true;
+						String	message = MessageText.getString( "torrent.decode.info.order.bad", new String[]{ name });
 
-							Logger.log( alert );
-						}
+						LogAlert alert = new LogAlert( this, LogAlert.UNREPEATABLE, LogAlert.AT_WARNING, message);
+
+						alert.forceNotify = true;
+
+						Logger.log( alert );
 					}
 				}
 			}catch( Throwable e ){
@@ -21,11 +21,10 @@
 package com.biglybt.core.torrent.impl;
 
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 
 import com.biglybt.core.torrent.TOTorrentException;
@@ -33,6 +32,12 @@ import com.biglybt.core.util.ED2KHasher;
 import com.biglybt.core.util.FileUtil;
 import com.biglybt.core.util.SHA1Hasher;
 
+/**
+ * Files are read into piece sized direct buffers and the pieces are hashed on the concurrent
+ * hasher's threads while the next ones are being read. The optional overall and per-file hashes
+ * are inherently sequential so are still calculated as the data is read.
+ */
+
 public class
 TOTorrentFileHasher
 {
@@ -41,10 +46,14 @@ TOTorrentFileHasher
 	private final boolean	do_other_per_file_hash;
 	private final int		piece_length;
 
-	private final List<byte[]>	pieces = new LinkedList<>();
+	private final List<byte[]>	pieces = new ArrayList<>();
+
+	private int				buffer_pos;		// only used when skipping hashing
+
+	private final TOTorrentPieceHasher	piece_hasher;
 
-	private final byte[]	buffer;
-	private int				buffer_pos;
+	private ByteBuffer		current_piece;
+	private byte[]			copy_buffer;
 
 	private SHA1Hasher					overall_sha1_hash;
 	private ED2KHasher					overall_ed2k_hash;
@@ -59,7 +68,7 @@ TOTorrentFileHasher
 
 	private boolean		skip_hashing;
 	
-	private boolean		cancelled;
+	private volatile boolean		cancelled;
 
 	protected
 	TOTorrentFileHasher(
@@ -78,7 +87,26 @@ TOTorrentFileHasher
 		piece_length			= _piece_length;
 		listener				= _listener;
 
-		buffer = new byte[piece_length];
+		piece_hasher =
+			new TOTorrentPieceHasher(
+				1,
+				piece_length,
+				new TOTorrentPieceHasher.Listener()
+				{
+					@Override
+					public void
+					pieceHashed(
+						byte[]		hash,
+						int			size )
+					{
+						pieces.add( hash );
+
+						if ( listener != null ){
+
+							listener.pieceHashed( pieces.size());
+						}
+					}
+				});
 	}
 	
 	protected void
@@ -121,7 +149,7 @@ TOTorrentFileHasher
 		}else{
 			long		file_length = 0;
 	
-			InputStream is = null;
+			FileInputStream is = null;
 	
 			SHA1Hasher	sha1_hash		= null;
 			ED2KHasher	ed2k_hash		= null;
@@ -133,8 +161,10 @@ TOTorrentFileHasher
 					ed2k_hash		= new ED2KHasher();
 				}
 	
-				is = new BufferedInputStream(FileUtil.newFileInputStream( _file ), 65536);
+				is = FileUtil.newFileInputStream( _file );
 	
+				FileChannel	channel = is.getChannel();
+				
 				while(true){
 	
 					if ( cancelled ){
@@ -143,41 +173,41 @@ TOTorrentFileHasher
 														TOTorrentException.RT_CANCELLED ));
 					}
 	
-					int	len = is.read( buffer, buffer_pos, piece_length - buffer_pos );
+					if ( current_piece == null ){
+						
+						current_piece = piece_hasher.getBuffer();
+					}
+					
+					int	pos = current_piece.position();
+					
+					int	len = channel.read( current_piece );
 	
 					if ( len > 0 ){
 	
-						if ( do_other_per_file_hash ){
-	
-							sha1_hash.update( buffer, buffer_pos, len );
-							ed2k_hash.update( buffer, buffer_pos, len );
-						}
-	
-	
-						file_length += len;
-	
-						buffer_pos += len;
-	
-						if ( buffer_pos == piece_length ){
-	
-							// hash this piece
-	
-							byte[] hash = new SHA1Hasher().calculateHash(buffer);
+						if ( do_other_per_file_hash || overall_sha1_hash != null ){
 	
+							byte[] data = copyOut( pos, len );
+							
+							if ( do_other_per_file_hash ){
+								
+								sha1_hash.update( data, 0, len );
+								ed2k_hash.update( data, 0, len );
+							}
+							
 							if ( overall_sha1_hash != null ){
-	
-								overall_sha1_hash.update( buffer );
-								overall_ed2k_hash.update( buffer );
+								
+								overall_sha1_hash.update( data, 0, len );
+								overall_ed2k_hash.update( data, 0, len );
 							}
+						}
 	
-							pieces.add( hash );
+						file_length += len;
 	
-							if ( listener != null ){
+						if ( !current_piece.hasRemaining()){
 	
-								listener.pieceHashed( pieces.size() );
-							}
+							piece_hasher.submit( current_piece, 0 );
 	
-							buffer_pos = 0;
+							current_piece = null;
 						}
 					}else{
 	
@@ -193,10 +223,14 @@ TOTorrentFileHasher
 	
 			}catch( TOTorrentException e ){
 	
+				piece_hasher.cancel();
+				
 				throw( e );
 	
 			}catch( Throwable e ){
 	
+				piece_hasher.cancel();
+				
 				throw( new TOTorrentException( 	"TOTorrentFileHasher: file read fails '" + e.toString() + "'",
 												TOTorrentException.RT_READ_FAILS ));
 			}finally {
@@ -240,13 +274,12 @@ TOTorrentFileHasher
 			}
 		}else{
 			
-			InputStream is = null;
-
 			try{
-	
-				is = new ByteArrayInputStream( new byte[ pad_length ]);
-	
-				while(true){
+				byte[]	zeros = new byte[ Math.min( pad_length, 65536 )];
+				
+				int	rem = pad_length;
+				
+				while( rem > 0 ){
 	
 					if ( cancelled ){
 	
@@ -254,60 +287,66 @@ TOTorrentFileHasher
 														TOTorrentException.RT_CANCELLED ));
 					}
 	
-					int	len = is.read( buffer, buffer_pos, piece_length - buffer_pos );
-	
-					if ( len > 0 ){
-	
-	
-						buffer_pos += len;
-	
-						if ( buffer_pos == piece_length ){
-	
-							// hash this piece
-	
-							byte[] hash = new SHA1Hasher().calculateHash(buffer);
-	
-							if ( overall_sha1_hash != null ){
-	
-								overall_sha1_hash.update( buffer );
-								overall_ed2k_hash.update( buffer );
-							}
-	
-							pieces.add( hash );
-	
-							if ( listener != null ){
+					if ( current_piece == null ){
+						
+						current_piece = piece_hasher.getBuffer();
+					}
+					
+					int	len = Math.min( rem, Math.min( zeros.length, current_piece.remaining()));
+					
+					current_piece.put( zeros, 0, len );
+					
+					if ( overall_sha1_hash != null ){
 	
-								listener.pieceHashed( pieces.size() );
-							}
+						overall_sha1_hash.update( zeros, 0, len );
+						overall_ed2k_hash.update( zeros, 0, len );
+					}
+					
+					rem -= len;
+					
+					if ( !current_piece.hasRemaining()){
 	
-							buffer_pos = 0;
-						}
-					}else{
+						piece_hasher.submit( current_piece, 0 );
 	
-						break;
+						current_piece = null;
 					}
 				}
 	
 			}catch( TOTorrentException e ){
 	
+				piece_hasher.cancel();
+				
 				throw( e );
 	
 			}catch( Throwable e ){
 	
+				piece_hasher.cancel();
+				
 				throw( new TOTorrentException( 	"TOTorrentFileHasher: file read fails '" + e.toString() + "'",
 												TOTorrentException.RT_READ_FAILS ));
-			}finally {
-				if (is != null) {
-					try {
-						is.close();
-					}
-					catch (Exception e) {
-					}
-				}
 			}
 		}
 	}
 	
+	private byte[]
+	copyOut(
+		int		pos,
+		int		len )
+	{
+		if ( copy_buffer == null || copy_buffer.length < len ){
+			
+			copy_buffer = new byte[ piece_length ];
+		}
+		
+		ByteBuffer	dup = current_piece.duplicate();
+		
+		dup.position( pos );
+		
+		dup.get( copy_buffer, 0, len );
+		
+		return( copy_buffer );
+	}
+	
 	protected byte[]
 	getPerFileSHA1Digest()
 	{
@@ -326,28 +365,46 @@ TOTorrentFileHasher
 		throws TOTorrentException
 	{
 		try{
-			if ( buffer_pos > 0 ){
-
-				byte[] rem = new byte[buffer_pos];
-
-				System.arraycopy( buffer, 0, rem, 0, buffer_pos );
-
-				pieces.add(new SHA1Hasher().calculateHash(rem));
-
-				if ( overall_sha1_hash != null ){
-
-					overall_sha1_hash.update( rem );
-					overall_ed2k_hash.update( rem );
+			if ( skip_hashing ){
+				
+				if ( buffer_pos > 0 ){
+					
+					byte[] rem = new byte[buffer_pos];
+	
+					pieces.add(new SHA1Hasher().calculateHash(rem));
+	
+					if ( overall_sha1_hash != null ){
+	
+						overall_sha1_hash.update( rem );
+						overall_ed2k_hash.update( rem );
+					}
+	
+					if ( listener != null ){
+	
+						listener.pieceHashed( pieces.size() );
+					}
+					
+					buffer_pos = 0;
 				}
-
-				if ( listener != null ){
-
-					listener.pieceHashed( pieces.size() );
+			}else{
+				
+				if ( current_piece != null ){
+		
+					if ( current_piece.position() > 0 ){
+						
+						piece_hasher.submit( current_piece, 0 );
+						
+					}else{
+						
+						piece_hasher.release( current_piece );
+					}
+					
+					current_piece = null;
 				}
-
-				buffer_pos = 0;
+	
+				piece_hasher.complete();
 			}
-
+			
 			if ( overall_sha1_hash != null && sha1_digest == null ){
 
 				sha1_digest	= overall_sha1_hash.getDigest();
@@ -360,6 +417,10 @@ TOTorrentFileHasher
 
 			return( res );
 
+		}catch( TOTorrentException e ){
+
+			throw( e );
+			
 		}catch( Throwable e ){
 
 			throw( new TOTorrentException( 	"TOTorrentFileHasher: file read fails '" + e.toString() + "'",
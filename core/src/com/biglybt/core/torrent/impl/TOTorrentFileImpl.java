@@ -31,59 +31,31 @@ import com.biglybt.core.torrent.TOTorrentException;
 import com.biglybt.core.torrent.TOTorrentFile;
 import com.biglybt.core.util.*;
 
+/**
+ * A file of a torrent. The details are held in the torrent's {@link TOTorrentFileTable}, this is
+ * just a view onto the file's slot in it so as to keep torrents with very many files compact.
+ */
+
 public class
 TOTorrentFileImpl
 	implements TOTorrentFile
 {
-	private static final byte FLAG_BEP47_PAD			= 0x01;
-	private static final byte FLAG_OTHER_PAD			= 0x02;
-	private static final byte FLAG_OTHER_PAD_CHECKED	= 0x04;
-	
-	private final TOTorrentImpl	torrent;
-	
-	private final int		index;
-	private final long		file_length;
-	private final long		offset_in_torrent;
-	
-	private final byte[][]	path_components;
-	private final byte[][]	path_components_utf8;
-
-	private final int		first_piece_number;
-	private final int		last_piece_number;
-
-	private Map				additional_properties_maybe_null;
-
-	private final boolean	is_utf8;
+	private final TOTorrentFileTable	table;
+	private final int					slot;
 
-	private byte			flags;
-
-	private TOTorrentFileHashTreeImpl	hash_tree;
-	private byte[]	root_hash;
-	
-	
 	protected
 	TOTorrentFileImpl(
-		TOTorrentImpl	_torrent,
-		int				_index,
-		long			_torrent_offset,
-		long			_len,
-		String			_path )
+		TOTorrentFileTable	_table,
+		int					_index,
+		long				_torrent_offset,
+		long				_len,
+		String				_path )
 
 		throws TOTorrentException
 	{
-		torrent				= _torrent;
-		index				= _index;
-		file_length			= _len;
-		offset_in_torrent	= _torrent_offset;
+		table	= _table;
 
-		first_piece_number 	= (int)( _torrent_offset / torrent.getPieceLength());
-		last_piece_number	= (int)(( _torrent_offset + file_length - 1 ) /  torrent.getPieceLength());
-
-		hash_tree	= null;
-		
-		is_utf8	= true;
-
-		Vector temp = new Vector();
+		List<byte[]> temp = new ArrayList<>();
 
 		int pos = 0;
 
@@ -102,170 +74,127 @@ TOTorrentFileImpl
 			pos = p1 + 1;
 		}
 
-		path_components = new byte[temp.size()][];
-
-		temp.copyInto(path_components);
+		byte[][] path_components = temp.toArray( new byte[temp.size()][] );
 
-		path_components_utf8 = new byte[temp.size()][];
-
-		temp.copyInto(path_components_utf8);
-
-		checkComponents();
+		slot = table.add( _index, _torrent_offset, _len, path_components, path_components, true );
 	}
 
 	protected
 	TOTorrentFileImpl(
-		TOTorrentImpl	_torrent,
-		int				_index,
-		long			_torrent_offset,
-		long			_len,
-		byte[][]		_path_components )
+		TOTorrentFileTable	_table,
+		int					_index,
+		long				_torrent_offset,
+		long				_len,
+		byte[][]			_path_components )
 
 		throws TOTorrentException
 	{
-		torrent				= _torrent;
-		index				= _index;
-		file_length			= _len;
-		offset_in_torrent	= _torrent_offset;
-		
-		path_components		= _path_components;
-		path_components_utf8 = null;
-
-		first_piece_number 	= (int)( _torrent_offset / torrent.getPieceLength());
-		last_piece_number	= (int)(( _torrent_offset + file_length - 1 ) /  torrent.getPieceLength());
-
-		hash_tree	= null;
-
-		is_utf8				= false;
-
-		checkComponents();
+		table	= _table;
+		slot	= table.add( _index, _torrent_offset, _len, _path_components, null, false );
 	}
 
 	protected
 	TOTorrentFileImpl(
-		TOTorrentImpl	_torrent,
-		int				_index,
-		long			_torrent_offset,
-		long			_len,
-		byte[][]		_path_components,
-		byte[][]		_path_components_utf8 )
+		TOTorrentFileTable	_table,
+		int					_index,
+		long				_torrent_offset,
+		long				_len,
+		byte[][]			_path_components,
+		byte[][]			_path_components_utf8 )
 
 		throws TOTorrentException
 	{
-		this( _torrent, _index, _torrent_offset, _len, _path_components, _path_components_utf8, null );
+		this( _table, _index, _torrent_offset, _len, _path_components, _path_components_utf8, null );
 	}
 		
 	protected
 	TOTorrentFileImpl(
-		TOTorrentImpl	_torrent,
-		int				_index,
-		long			_torrent_offset,
-		long			_len,
-		byte[][]		_path_components,
-		byte[][]		_path_components_utf8,
-		byte[]			_v2_root_hash )
+		TOTorrentFileTable	_table,
+		int					_index,
+		long				_torrent_offset,
+		long				_len,
+		byte[][]			_path_components,
+		byte[][]			_path_components_utf8,
+		byte[]				_v2_root_hash )
 
 		throws TOTorrentException
 	{
-		torrent				= _torrent;
-		index				= _index;
-		file_length			= _len;
-		offset_in_torrent	= _torrent_offset;
-		
-		path_components		= _path_components;
-		path_components_utf8 = _path_components_utf8;
-
-		first_piece_number 	= (int)( _torrent_offset / torrent.getPieceLength());
-		last_piece_number	= (int)(( _torrent_offset + file_length - 1 ) /  torrent.getPieceLength());
-
-		hash_tree	= _v2_root_hash==null?null:new TOTorrentFileHashTreeImpl( this, _v2_root_hash );
-		root_hash	= _v2_root_hash;
-		
-		is_utf8				= false;
+		table	= _table;
+		slot	= table.add( _index, _torrent_offset, _len, _path_components, _path_components_utf8, false );
 
-		checkComponents();
+		if ( _v2_root_hash != null ){
+			
+			table.setRootHash( slot, _v2_root_hash, new TOTorrentFileHashTreeImpl( this, _v2_root_hash ));
+		}
 	}
 
-	protected void
-	checkComponents()
-
-		throws TOTorrentException
+	protected TOTorrentFileTable
+	getTable()
 	{
-		byte[][][] to_do = { path_components, path_components_utf8 };
-
-		for (byte[][] pc: to_do ){
-
-			if ( pc == null ){
-				continue;
-			}
-
-			for (int i=0;i<pc.length;i++){
-
-				byte[] comp = pc[i];
-				if (comp.length == 2 && comp[0] == (byte) '.' && comp[1] == (byte) '.')
-					throw (new TOTorrentException("Torrent file contains illegal '..' component", TOTorrentException.RT_DECODE_FAILS));
-
-				// intern directories as they're likely to repeat
-				// parg - removed this, costly and simpler to do on a per-torrent file basis when
-				// decoding the file components
-				//if(i < (pc.length - 1))
-				//	pc[i] = StringInterner.internBytes(pc[i]);
-			}
-		}
+		return( table );
 	}
-
+	
 	@Override
 	public TOTorrentImpl
 	getTorrent()
 	{
-		return( torrent );
+		return( table.getTorrent());
 	}
 
 	@Override
 	public int
 	getIndex()
 	{
-		return( index );
+		return( table.getIndex( slot ));
 	}
 
 	@Override
 	public long
 	getLength()
 	{
-		return( file_length );
+		return( table.getLength( slot ));
 	}
 
 	@Override
 	public long 
 	getOffsetInTorrent()
 	{
-		return( offset_in_torrent );
+		return( table.getOffset( slot ));
 	}
 	
+		/**
+		 * The path components are rebuilt from the table's shared path trie on each call,
+		 * callers that need them repeatedly should hold on to the result
+		 */
+
 	public byte[][]
 	getPathComponentsBasic()
 	{
-		return( path_components );
+		return( table.getPath( slot ));
 	}
 
+		/**
+		 * As {@link #getPathComponentsBasic()} this allocates a new path each call
+		 */
+
 	@Override
 	public byte[][]
 	getPathComponents()
 	{
-		return path_components_utf8 == null ? path_components : path_components_utf8;
+		return( table.getBestPath( slot ));
 	}
 
 	public byte[][]
 	getPathComponentsUTF8()
 	{
-		return( path_components_utf8 );
+		return( table.getPathUTF8( slot ));
 	}
 
 
 	protected boolean
 	isUTF8()
 	{
-		return( is_utf8 );
+		return( table.isUTF8( slot ));
 	}
 
 	protected void
@@ -273,38 +202,27 @@ TOTorrentFileImpl
 		String		name,
 		Object		value )
 	{
-		if ( additional_properties_maybe_null == null ){
-
-			additional_properties_maybe_null = new LightHashMap();
-		}
-
-		additional_properties_maybe_null.put( name, value );
-		
-		if ( name.equals( TOTorrentImpl.TK_BEP47_ATTRS ) && value instanceof byte[] ){
-			
-			String attr_str = new String((byte[])value, Constants.UTF_8 );
-			
-			if ( attr_str.contains( "p" )){
-				
-				flags |= FLAG_BEP47_PAD;
-			}
-		}			
+		table.setAdditionalProperty( slot, name, value );
 	}
 
 	@Override
 	public TOTorrentFileHashTreeImpl
 	getHashTree()
 	{
-		return( hash_tree );
+		return( table.getHashTree( slot ));
 	}
 	
 	@Override
 	public byte[]
 	getRootHash()
 	{
-		if ( root_hash == null && ( flags & FLAG_BEP47_PAD ) == 0 ){
+		byte[] root_hash = table.getRootHash( slot );
+		
+		if ( root_hash == null && ( table.getFlags( slot ) & TOTorrentFileTable.FLAG_BEP47_PAD ) == 0 ){
+			
+			getTorrent().fixupRootHashes();
 			
-			torrent.fixupRootHashes();
+			root_hash = table.getRootHash( slot );
 		}
 		
 		return( root_hash );
@@ -314,30 +232,28 @@ TOTorrentFileImpl
 	setRootHash(
 		byte[]		_root_hash )
 	{
-		root_hash	= _root_hash;
-		
-		hash_tree	= new TOTorrentFileHashTreeImpl( this, root_hash );
+		table.setRootHash( slot, _root_hash, new TOTorrentFileHashTreeImpl( this, _root_hash ));
 	}
 	
 	@Override
 	public Map
 	getAdditionalProperties()
 	{
-		return( additional_properties_maybe_null );
+		return( table.getAdditionalProperties( slot ));
 	}
 
 	@Override
 	public int
 	getFirstPieceNumber()
 	{
-		return( first_piece_number );
+		return( table.getFirstPieceNumber( slot ));
 	}
 
 	@Override
 	public int
 	getLastPieceNumber()
 	{
-		return( last_piece_number );
+		return( table.getLastPieceNumber( slot ));
 	}
 
 	@Override
@@ -351,22 +267,22 @@ TOTorrentFileImpl
 	public boolean 
 	isPadFile()
 	{		
-		if (( flags & FLAG_BEP47_PAD ) != 0 ){
+		byte	flags = table.getFlags( slot );
+		
+		if (( flags & TOTorrentFileTable.FLAG_BEP47_PAD ) != 0 ){
 			
 			return( true );
 		}
 		
-		if (( flags & FLAG_OTHER_PAD_CHECKED ) == 0 ){
+		if (( flags & TOTorrentFileTable.FLAG_OTHER_PAD_CHECKED ) == 0 ){
 
-			byte[][] comps = path_components_utf8 == null ? path_components : path_components_utf8;
-			
-			byte[] last = comps[ comps.length-1];
+			byte[] last = table.getBestPathLastComponent( slot );
 	
 				// "_____padding_file_0_" etc
 
 			byte	other_pad = 0;
 			
-			if ( last.length > 20 ){
+			if ( last != null && last.length > 20 ){
 				
 				if ( 	last[0]  == '_' &&
 						last[1]  == '_' &&
@@ -405,15 +321,17 @@ TOTorrentFileImpl
 						
 					if ( pos > 18 && pos < last.length && last[pos] == '_' ){
 						
-						other_pad = FLAG_OTHER_PAD;
+						other_pad = TOTorrentFileTable.FLAG_OTHER_PAD;
 					}
 				}
 			}
 			
-			flags |= ( FLAG_OTHER_PAD_CHECKED | other_pad );
+			flags |= ( TOTorrentFileTable.FLAG_OTHER_PAD_CHECKED | other_pad );
+			
+			table.setFlags( slot, flags );
 		}
 		
-		return( ( flags & FLAG_OTHER_PAD ) != 0 );
+		return( ( flags & TOTorrentFileTable.FLAG_OTHER_PAD ) != 0 );
 	}
 	
 	@Override
@@ -428,6 +346,8 @@ TOTorrentFileImpl
 	getRelativePath( 
 		LocaleUtilDecoder	decoder )
 	{
+		TOTorrentImpl torrent = getTorrent();
+		
 		if (torrent == null) {
 			return "";
 		}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.torrent.impl;
+
+import java.util.Arrays;
+
+/**
+ * Path components of a torrent's files held as a trie of interned components. A directory that
+ * holds many files is stored once however many paths pass through it, as is a path that appears
+ * both as a file's native and UTF-8 path.
+ * <p>
+ * Nodes are numbered from 0 and identified by their parent and component. The lookup table used
+ * to find existing nodes is only needed while paths are being added so it can be dropped with
+ * {@link #compact()}, it is rebuilt if any more paths are added afterwards.
+ * <p>
+ * Adding is not thread safe, reading is once the paths have been published.
+ */
+
+final class
+TOTorrentFilePathTrie
+{
+	protected static final int	NO_PATH		= -2;
+
+		// parent of the top level components, also the node of an empty path
+
+	private static final int	ROOT		= -1;
+
+	private int[]		parents;
+	private byte[][]	components;
+	private int			node_count;
+
+		// open addressing table of node+1, 0 = empty
+
+	private int[]		lookup;
+
+	protected
+	TOTorrentFilePathTrie(
+		int		expected_nodes )
+	{
+		int	size = Math.max( 16, expected_nodes );
+
+		parents		= new int[size];
+		components	= new byte[size][];
+	}
+
+		/**
+		 * @return the node of the path's last component, NO_PATH for a null path and ROOT for an empty one
+		 */
+
+	protected int
+	add(
+		byte[][]	path )
+	{
+		if ( path == null ){
+
+			return( NO_PATH );
+		}
+
+		int	node = ROOT;
+
+		for ( byte[] comp: path ){
+
+			node = getNode( node, comp );
+		}
+
+		return( node );
+	}
+
+		/**
+		 * Walks up from the node and builds a new array each call, paths aren't held in full
+		 * @return null for NO_PATH, an empty path for ROOT
+		 */
+
+	protected byte[][]
+	getPath(
+		int		node )
+	{
+		if ( node == NO_PATH ){
+
+			return( null );
+		}
+
+		int	depth = 0;
+
+		for ( int n = node; n != ROOT; n = parents[n] ){
+
+			depth++;
+		}
+
+		byte[][]	path = new byte[depth][];
+
+		for ( int n = node; n != ROOT; n = parents[n] ){
+
+			path[--depth] = components[n];
+		}
+
+		return( path );
+	}
+
+		/**
+		 * @return the node's component, null for an empty path
+		 */
+
+	protected byte[]
+	getComponent(
+		int		node )
+	{
+		if ( node == ROOT ){
+
+			return( null );
+		}
+
+		return( components[node] );
+	}
+
+	protected void
+	compact()
+	{
+		if ( parents.length > node_count ){
+
+			parents		= Arrays.copyOf( parents, node_count );
+			components	= Arrays.copyOf( components, node_count );
+		}
+
+		lookup = null;
+	}
+
+	private int
+	getNode(
+		int			parent,
+		byte[]		comp )
+	{
+		if ( lookup == null || node_count * 2 >= lookup.length ){
+
+			rehash( Math.max( 64, Integer.highestOneBit( Math.max( 1, node_count ) * 4 - 1 ) << 1 ));
+		}
+
+		int	mask	= lookup.length - 1;
+		int	pos		= hash( parent, comp ) & mask;
+
+		while( true ){
+
+			int	entry = lookup[pos];
+
+			if ( entry == 0 ){
+
+				break;
+			}
+
+			int	node = entry - 1;
+
+			if ( parents[node] == parent && Arrays.equals( components[node], comp )){
+
+				return( node );
+			}
+
+			pos = ( pos + 1 ) & mask;
+		}
+
+		if ( node_count == parents.length ){
+
+			int	new_size = node_count + ( node_count >> 1 ) + 16;
+
+			parents		= Arrays.copyOf( parents, new_size );
+			components	= Arrays.copyOf( components, new_size );
+		}
+
+		int	node = node_count++;
+
+		parents[node]		= parent;
+		components[node]	= comp;
+
+		lookup[pos] = node + 1;
+
+		return( node );
+	}
+
+	private void
+	rehash(
+		int		size )
+	{
+		lookup = new int[size];
+
+		int	mask = size - 1;
+
+		for ( int node=0;node<node_count;node++){
+
+			int	pos = hash( parents[node], components[node] ) & mask;
+
+			while( lookup[pos] != 0 ){
+
+				pos = ( pos + 1 ) & mask;
+			}
+
+			lookup[pos] = node + 1;
+		}
+	}
+
+	private static int
+	hash(
+		int			parent,
+		byte[]		comp )
+	{
+		int	h = parent * 0x9E3779B9 + Arrays.hashCode( comp );
+
+		return( h ^ ( h >>> 16 ));
+	}
+}
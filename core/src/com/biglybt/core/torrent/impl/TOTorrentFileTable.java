@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.torrent.impl;
+
+import java.util.*;
+
+import com.biglybt.core.torrent.TOTorrentException;
+import com.biglybt.core.util.Constants;
+import com.biglybt.core.util.LightHashMap;
+
+/**
+ * Per-file details of a torrent held as parallel primitive arrays so that a file costs a few
+ * dozen bytes rather than several objects. {@link TOTorrentFileImpl}s are views onto a slot of
+ * the table. Paths are held in a {@link TOTorrentFilePathTrie} shared by all of the files.
+ * <p>
+ * Rarely present details (additional properties, v2 hashes) are held in arrays that are only
+ * allocated once the first file needs them.
+ * <p>
+ * Files are added while the torrent is being constructed, which isn't thread safe, and the
+ * table is read-only afterwards apart from the lazily determined flags and v2 hashes.
+ */
+
+final class
+TOTorrentFileTable
+{
+	protected static final byte FLAG_BEP47_PAD			= 0x01;
+	protected static final byte FLAG_OTHER_PAD			= 0x02;
+	protected static final byte FLAG_OTHER_PAD_CHECKED	= 0x04;
+	protected static final byte FLAG_UTF8				= 0x08;
+	protected static final byte FLAG_UTF8_PROPERTY		= 0x10;	// path.utf-8 property is implied by the path
+
+	private final TOTorrentImpl		torrent;
+
+	private final TOTorrentFilePathTrie	paths;
+
+	private int			file_count;
+
+	private int[]		indexes;
+	private long[]		offsets;
+	private long[]		lengths;
+	private byte[]		flags;
+	private int[]		path_nodes;
+	private int[]		path_nodes_utf8;
+
+	private Map[]							additional_properties;
+	private byte[][]						root_hashes;
+	private TOTorrentFileHashTreeImpl[]		hash_trees;
+
+	protected
+	TOTorrentFileTable(
+		TOTorrentImpl	_torrent,
+		int				_expected_files )
+	{
+		torrent		= _torrent;
+
+		int	size = Math.max( 1, _expected_files );
+
+		indexes			= new int[size];
+		offsets			= new long[size];
+		lengths			= new long[size];
+		flags			= new byte[size];
+		path_nodes		= new int[size];
+		path_nodes_utf8	= new int[size];
+
+		paths = new TOTorrentFilePathTrie( size * 2 );
+	}
+
+	protected TOTorrentImpl
+	getTorrent()
+	{
+		return( torrent );
+	}
+
+	protected int
+	add(
+		int				index,
+		long			offset,
+		long			length,
+		byte[][]		path,
+		byte[][]		path_utf8,
+		boolean			is_utf8 )
+
+		throws TOTorrentException
+	{
+		checkComponents( path );
+		checkComponents( path_utf8 );
+
+		if ( file_count == indexes.length ){
+
+			int	new_size = file_count + ( file_count >> 1 ) + 1;
+
+			indexes			= Arrays.copyOf( indexes, new_size );
+			offsets			= Arrays.copyOf( offsets, new_size );
+			lengths			= Arrays.copyOf( lengths, new_size );
+			flags			= Arrays.copyOf( flags, new_size );
+			path_nodes		= Arrays.copyOf( path_nodes, new_size );
+			path_nodes_utf8	= Arrays.copyOf( path_nodes_utf8, new_size );
+
+			if ( additional_properties != null ){
+
+				additional_properties = Arrays.copyOf( additional_properties, new_size );
+			}
+
+			if ( root_hashes != null ){
+
+				root_hashes	= Arrays.copyOf( root_hashes, new_size );
+				hash_trees	= Arrays.copyOf( hash_trees, new_size );
+			}
+		}
+
+		int	slot = file_count++;
+
+		indexes[slot]			= index;
+		offsets[slot]			= offset;
+		lengths[slot]			= length;
+		flags[slot]				= is_utf8?FLAG_UTF8:0;
+		path_nodes[slot]		= paths.add( path );
+		path_nodes_utf8[slot]	= path_utf8==path?path_nodes[slot]:paths.add( path_utf8 );
+
+		return( slot );
+	}
+
+		/**
+		 * Trims the arrays and drops the state only needed while adding files
+		 */
+
+	protected void
+	compact()
+	{
+		if ( indexes.length > file_count ){
+
+			indexes			= Arrays.copyOf( indexes, file_count );
+			offsets			= Arrays.copyOf( offsets, file_count );
+			lengths			= Arrays.copyOf( lengths, file_count );
+			flags			= Arrays.copyOf( flags, file_count );
+			path_nodes		= Arrays.copyOf( path_nodes, file_count );
+			path_nodes_utf8	= Arrays.copyOf( path_nodes_utf8, file_count );
+
+			if ( additional_properties != null ){
+
+				additional_properties = Arrays.copyOf( additional_properties, file_count );
+			}
+
+			if ( root_hashes != null ){
+
+				root_hashes	= Arrays.copyOf( root_hashes, file_count );
+				hash_trees	= Arrays.copyOf( hash_trees, file_count );
+			}
+		}
+
+		paths.compact();
+	}
+
+	private static void
+	checkComponents(
+		byte[][]	path )
+
+		throws TOTorrentException
+	{
+		if ( path == null ){
+
+			return;
+		}
+
+		for ( byte[] comp: path ){
+
+			if ( comp.length == 2 && comp[0] == (byte)'.' && comp[1] == (byte)'.' ){
+
+				throw( new TOTorrentException( "Torrent file contains illegal '..' component", TOTorrentException.RT_DECODE_FAILS ));
+			}
+		}
+	}
+
+	protected int
+	getIndex(
+		int		slot )
+	{
+		return( indexes[slot] );
+	}
+
+	protected long
+	getLength(
+		int		slot )
+	{
+		return( lengths[slot] );
+	}
+
+	protected long
+	getOffset(
+		int		slot )
+	{
+		return( offsets[slot] );
+	}
+
+	protected int
+	getFirstPieceNumber(
+		int		slot )
+	{
+		return((int)( offsets[slot] / torrent.getPieceLength()));
+	}
+
+	protected int
+	getLastPieceNumber(
+		int		slot )
+	{
+		return((int)(( offsets[slot] + lengths[slot] - 1 ) / torrent.getPieceLength()));
+	}
+
+	protected boolean
+	isUTF8(
+		int		slot )
+	{
+		return(( flags[slot] & FLAG_UTF8 ) != 0 );
+	}
+
+	protected byte[][]
+	getPath(
+		int		slot )
+	{
+		return( paths.getPath( path_nodes[slot] ));
+	}
+
+	protected byte[][]
+	getPathUTF8(
+		int		slot )
+	{
+		return( paths.getPath( path_nodes_utf8[slot] ));
+	}
+
+		/**
+		 * @return the UTF-8 path if there is one, otherwise the native one
+		 */
+
+	protected byte[][]
+	getBestPath(
+		int		slot )
+	{
+		int	node = path_nodes_utf8[slot];
+
+		return( paths.getPath( node==TOTorrentFilePathTrie.NO_PATH?path_nodes[slot]:node ));
+	}
+
+	protected byte[]
+	getBestPathLastComponent(
+		int		slot )
+	{
+		int	node = path_nodes_utf8[slot];
+
+		if ( node == TOTorrentFilePathTrie.NO_PATH ){
+
+			node = path_nodes[slot];
+		}
+
+		return( node==TOTorrentFilePathTrie.NO_PATH?null:paths.getComponent( node ));
+	}
+
+	protected byte
+	getFlags(
+		int		slot )
+	{
+		return( flags[slot] );
+	}
+
+	protected void
+	setFlags(
+		int		slot,
+		byte	f )
+	{
+		flags[slot] |= f;
+	}
+
+	protected void
+	setAdditionalProperty(
+		int			slot,
+		String		name,
+		Object		value )
+	{
+		if ( name.equals( TOTorrentImpl.TK_PATH_UTF8 )){
+
+				// commonly just a copy of the path
+
+			if ( matchesBestPath( slot, value )){
+
+				Map	props = additional_properties==null?null:additional_properties[slot];
+
+				if ( props != null ){
+
+					props.remove( name );
+				}
+
+				flags[slot] |= FLAG_UTF8_PROPERTY;
+
+				return;
+			}
+
+			flags[slot] &= ~FLAG_UTF8_PROPERTY;
+		}
+
+		if ( additional_properties == null ){
+
+			additional_properties = new Map[indexes.length];
+		}
+
+		Map	props = additional_properties[slot];
+
+		if ( props == null ){
+
+			props = additional_properties[slot] = new LightHashMap();
+		}
+
+		props.put( name, value );
+
+		if ( name.equals( TOTorrentImpl.TK_BEP47_ATTRS ) && value instanceof byte[] ){
+
+			String attr_str = new String((byte[])value, Constants.UTF_8 );
+
+			if ( attr_str.contains( "p" )){
+
+				flags[slot] |= FLAG_BEP47_PAD;
+			}
+		}
+	}
+
+	protected Map
+	getAdditionalProperties(
+		int		slot )
+	{
+		Map	props = additional_properties==null?null:additional_properties[slot];
+
+		if (( flags[slot] & FLAG_UTF8_PROPERTY ) == 0 ){
+
+			return( props );
+		}
+
+		Map	result = props==null?new LightHashMap():new LightHashMap( props );
+
+		result.put( TOTorrentImpl.TK_PATH_UTF8, new ArrayList<>( Arrays.asList( getBestPath( slot ))));
+
+		return( result );
+	}
+
+	private boolean
+	matchesBestPath(
+		int			slot,
+		Object		value )
+	{
+		if ( !( value instanceof List )){
+
+			return( false );
+		}
+
+		List		list = (List)value;
+		byte[][]	path = getBestPath( slot );
+
+		if ( path == null || list.size() != path.length ){
+
+			return( false );
+		}
+
+		for ( int i=0;i<path.length;i++){
+
+			Object	o = list.get(i);
+
+			if ( !( o instanceof byte[] ) || !Arrays.equals((byte[])o, path[i] )){
+
+				return( false );
+			}
+		}
+
+		return( true );
+	}
+
+	protected byte[]
+	getRootHash(
+		int		slot )
+	{
+		return( root_hashes==null?null:root_hashes[slot] );
+	}
+
+	protected TOTorrentFileHashTreeImpl
+	getHashTree(
+		int		slot )
+	{
+		return( hash_trees==null?null:hash_trees[slot] );
+	}
+
+	protected void
+	setRootHash(
+		int							slot,
+		byte[]						root_hash,
+		TOTorrentFileHashTreeImpl	hash_tree )
+	{
+		if ( root_hashes == null ){
+
+			root_hashes	= new byte[indexes.length][];
+			hash_trees	= new TOTorrentFileHashTreeImpl[indexes.length];
+		}
+
+		root_hashes[slot]	= root_hash;
+		hash_trees[slot]	= hash_tree;
+	}
+}
@@ -764,6 +764,8 @@ TOTorrentImpl
 
 	{
 		comment = _comment;
+
+		fireChanged( TOTorrentListener.CT_METADATA, null );
 	}
 
 	@Override
@@ -839,6 +841,8 @@ TOTorrentImpl
 		}
 
 		creation_date 	= _creation_date;
+
+		fireChanged( TOTorrentListener.CT_METADATA, null );
 	}
 
 	@Override
@@ -847,6 +851,8 @@ TOTorrentImpl
 		byte[]		_created_by )
 	{
 		created_by	= _created_by;
+
+		fireChanged( TOTorrentListener.CT_METADATA, null );
 	}
 
 	protected void setCreatedBy(String _created_by) {
@@ -1360,6 +1366,20 @@ TOTorrentImpl
 	setFiles(
 		TOTorrentFileImpl[]		_files )
 	{
+		TOTorrentFileTable	last_table = null;
+		
+		for ( TOTorrentFileImpl file: _files ){
+			
+			TOTorrentFileTable table = file.getTable();
+			
+			if ( table != last_table ){
+				
+				table.compact();
+				
+				last_table = table;
+			}
+		}
+		
 		files	= _files;
 	}
 
@@ -1399,6 +1419,8 @@ TOTorrentImpl
 		byte[]		value )
 	{
 		additional_properties.put( name, value );
+
+		fireChanged( TOTorrentListener.CT_PROPERTY, name );
 	}
 
 	@Override
@@ -1414,6 +1436,8 @@ TOTorrentImpl
 		}else{
 
 			additional_properties.put( name, value );
+
+			fireChanged( TOTorrentListener.CT_PROPERTY, name );
 		}
 	}
 
@@ -1439,6 +1463,8 @@ TOTorrentImpl
 		Long		value )
 	{
 		additional_properties.put( name, value );
+
+		fireChanged( TOTorrentListener.CT_PROPERTY, name );
 	}
 
 	@Override
@@ -1463,6 +1489,8 @@ TOTorrentImpl
 		List		value )
 	{
 		additional_properties.put( name, value );
+
+		fireChanged( TOTorrentListener.CT_PROPERTY, name );
 	}
 
 	@Override
@@ -1487,6 +1515,8 @@ TOTorrentImpl
 		Map 		value )
 	{
 		additional_properties.put( name, value );
+
+		fireChanged( TOTorrentListener.CT_PROPERTY, name );
 	}
 
 	@Override
@@ -1518,6 +1548,8 @@ TOTorrentImpl
 		String name )
 	{
 		additional_properties.remove( name );
+
+		fireChanged( TOTorrentListener.CT_PROPERTY, name );
 	}
 
 	@Override
@@ -1539,6 +1571,8 @@ TOTorrentImpl
 		}
 
 		additional_properties = new_props;
+
+		fireChanged( TOTorrentListener.CT_METADATA, null );
 	}
 
 	protected void
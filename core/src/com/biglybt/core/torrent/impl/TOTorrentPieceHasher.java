@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.torrent.impl;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import com.biglybt.core.torrent.TOTorrentException;
+import com.biglybt.core.util.AEJavaManagement;
+import com.biglybt.core.util.ConcurrentHasher;
+import com.biglybt.core.util.ConcurrentHasherRequest;
+
+/**
+ * Hashes the pieces of a torrent being created on the concurrent hasher's threads while the
+ * caller carries on reading the next ones.
+ * <p>
+ * The caller fills piece sized direct buffers obtained from getBuffer() and hands them back via
+ * submit(). Results are delivered to the listener on the caller's thread in submission order.
+ * The number of buffers is bounded so when they are all in use getBuffer() waits for the oldest
+ * piece to be hashed, which keeps reading from getting too far ahead of hashing.
+ * <p>
+ * The buffers together are limited to a share of the JVM's direct memory. If a single piece doesn't
+ * fit in that then one heap buffer is used and pieces are hashed one at a time.
+ */
+
+final class
+TOTorrentPieceHasher
+{
+	private static final long	MAX_BUFFER_BYTES	= Math.min( 64*1024*1024, getMaxDirectMemory() / 4 );
+
+	private final int			hash_version;
+	private final int			piece_size;
+	private final Listener		listener;
+
+	private final int			max_buffers;
+	private final boolean		use_direct;
+	private int					buffers_allocated;
+
+	private final ArrayDeque<ByteBuffer>	free_buffers	= new ArrayDeque<>();
+	private final ArrayDeque<Piece>			pending			= new ArrayDeque<>();
+
+	private final ConcurrentHasher	hasher = ConcurrentHasher.getSingleton();
+
+	protected
+	TOTorrentPieceHasher(
+		int			_hash_version,
+		int			_piece_size,
+		Listener	_listener )
+	{
+		hash_version	= _hash_version;
+		piece_size		= _piece_size;
+		listener		= _listener;
+
+		int	processors = Math.max( 1, Runtime.getRuntime().availableProcessors());
+
+		long	fits = MAX_BUFFER_BYTES / piece_size;
+
+		use_direct	= fits > 0;
+		max_buffers = (int)Math.max( 1, Math.min( processors*2 + 1, fits ));
+	}
+
+		/**
+		 * The direct memory limit is the -XX:MaxDirectMemorySize option if present, otherwise the
+		 * JVM defaults it to the maximum heap size
+		 */
+
+	private static long
+	getMaxDirectMemory()
+	{
+		try{
+			List<String>	options = ManagementFactory.getRuntimeMXBean().getInputArguments();
+
+			long	max = AEJavaManagement.getJVMLongOption( options.toArray( new String[options.size()]), "-XX:MaxDirectMemorySize=" );
+
+			if ( max > 0 ){
+
+				return( max );
+			}
+		}catch( Throwable e ){
+
+				// management classes aren't available on all platforms
+		}
+
+		return( Runtime.getRuntime().maxMemory());
+	}
+
+		/**
+		 * @return an empty buffer of the piece size
+		 */
+
+	protected ByteBuffer
+	getBuffer()
+
+		throws TOTorrentException
+	{
+		if ( free_buffers.isEmpty()){
+
+			if ( buffers_allocated < max_buffers ){
+
+				buffers_allocated++;
+
+				return( use_direct?ByteBuffer.allocateDirect( piece_size ):ByteBuffer.allocate( piece_size ));
+			}
+
+			completeOldest();
+		}
+
+		ByteBuffer	buffer = free_buffers.removeFirst();
+
+		buffer.clear();
+
+		return( buffer );
+	}
+
+		/**
+		 * Queues the data between the start of the buffer and its position for hashing
+		 * @param v2_file_size size of the file the piece belongs to, only used for v2
+		 */
+
+	protected void
+	submit(
+		ByteBuffer	buffer,
+		long		v2_file_size )
+	{
+		buffer.flip();
+
+		int	size = buffer.remaining();
+
+		ConcurrentHasherRequest	request = hasher.addRequest( buffer, hash_version, piece_size, v2_file_size, null, false );
+
+		pending.addLast( new Piece( request, buffer, size ));
+	}
+
+		/**
+		 * Returns a buffer that turned out not to be needed
+		 */
+
+	protected void
+	release(
+		ByteBuffer	buffer )
+	{
+		free_buffers.addLast( buffer );
+	}
+
+		/**
+		 * Waits for all submitted pieces to be hashed
+		 */
+
+	protected void
+	complete()
+
+		throws TOTorrentException
+	{
+		while( !pending.isEmpty()){
+
+			completeOldest();
+		}
+	}
+
+	protected void
+	cancel()
+	{
+		for ( Piece piece: pending ){
+
+			piece.request.cancel();
+		}
+
+		pending.clear();
+	}
+
+	private void
+	completeOldest()
+
+		throws TOTorrentException
+	{
+		Piece	piece = pending.removeFirst();
+
+		byte[]	hash = piece.request.getResult();
+
+		free_buffers.addLast( piece.buffer );
+
+		if ( hash == null ){
+
+			cancel();
+
+			throw( new TOTorrentException( "TOTorrentCreate: hashing cancelled", TOTorrentException.RT_CANCELLED ));
+		}
+
+		listener.pieceHashed( hash, piece.size );
+	}
+
+	private static final class
+	Piece
+	{
+		final ConcurrentHasherRequest	request;
+		final ByteBuffer				buffer;
+		final int						size;
+
+		Piece(
+			ConcurrentHasherRequest		_request,
+			ByteBuffer					_buffer,
+			int							_size )
+		{
+			request		= _request;
+			buffer		= _buffer;
+			size		= _size;
+		}
+	}
+
+	protected interface
+	Listener
+	{
+		public void
+		pieceHashed(
+			byte[]		hash,
+			int			size )
+
+			throws TOTorrentException;
+	}
+}
@@ -303,7 +303,7 @@ TOTorrentXMLDeserialiser
 	
 				torrent.setFiles(
 					new TOTorrentFileImpl[]{
-							new TOTorrentFileImpl( 	torrent,
+							new TOTorrentFileImpl( 	new TOTorrentFileTable( torrent, 1 ),
 													0,
 													0,
 													torrent_length,
@@ -317,6 +317,8 @@ TOTorrentXMLDeserialiser
 	
 				TOTorrentFileImpl[]	files = new TOTorrentFileImpl[ file_nodes.length ];
 	
+				TOTorrentFileTable	file_table = new TOTorrentFileTable( torrent, files.length );
+
 				long	offset = 0;
 	
 				for (int j=0;j<files.length;j++){
@@ -366,7 +368,7 @@ TOTorrentXMLDeserialiser
 						throw( new TOTorrentException( "FILE element invalid (file length = " + file_length + ")", TOTorrentException.RT_DECODE_FAILS));
 					}
 	
-					files[j] = new TOTorrentFileImpl( torrent, j, offset, file_length, path_comps );
+					files[j] = new TOTorrentFileImpl( file_table, j, offset, file_length, path_comps );
 	
 					offset += file_length;
 	
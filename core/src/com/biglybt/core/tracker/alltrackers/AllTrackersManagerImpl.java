@@ -1046,6 +1046,11 @@ AllTrackersManagerImpl
 		int				change_type,
 		Object			data )
 	{
+		if ( change_type != CT_ANNOUNCE_URLS ){
+			
+			return;
+		}
+		
 		registerTorrentSupport( torrent );
 		
 		recalcTotals();
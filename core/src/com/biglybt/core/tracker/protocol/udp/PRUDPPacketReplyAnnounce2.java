@@ -47,6 +47,8 @@ PRUDPPacketReplyAnnounce2
 	protected byte[][]		addresses;
 	protected short[]		ports;
 
+	protected byte[]		compact_peers;
+
 	public
 	PRUDPPacketReplyAnnounce2(
 		int			trans_id,
@@ -127,6 +129,18 @@ PRUDPPacketReplyAnnounce2
 		ports		= _ports;
 	}
 
+		/**
+		 * Sets the peers as already encoded address+port entries of the size appropriate to
+		 * the address family of the reply
+		 */
+
+	public void
+	setPeers(
+		byte[]			_compact_peers )
+	{
+		compact_peers	= _compact_peers;
+	}
+
 	public byte[][]
 	getAddresses()
 	{
@@ -164,7 +178,11 @@ PRUDPPacketReplyAnnounce2
 		os.writeInt( leechers );
 		os.writeInt( seeders );
 
-		if ( addresses != null ){
+		if ( compact_peers != null ){
+
+			os.write( compact_peers );
+
+		}else if ( addresses != null ){
 
 			for (int i=0;i<addresses.length;i++){
 
@@ -182,7 +200,7 @@ PRUDPPacketReplyAnnounce2
 				"[interval="+interval+
 				",leechers="+leechers+
 				",seeders="+seeders+
-				",addresses="+addresses.length+"]");
+				",addresses="+(compact_peers==null?addresses.length:compact_peers.length/(is_ipv6?BYTES_PER_ENTRY_IPV6:BYTES_PER_ENTRY_IPV4))+"]");
 	}
 }
 
@@ -67,6 +67,8 @@ TRTrackerServerPeerImpl
 	private DHTNetworkPosition	network_position;
 	private Object				user_data;
 
+	private int					table_slot	= -1;		// index in the owning torrent's TRTrackerServerPeerTable
+
 	protected
 	TRTrackerServerPeerImpl(
 		HashWrapper			_peer_id,
@@ -436,6 +438,19 @@ TRTrackerServerPeerImpl
 		return( timeout );
 	}
 
+	protected int
+	getTableSlot()
+	{
+		return( table_slot );
+	}
+
+	protected void
+	setTableSlot(
+		int		slot )
+	{
+		table_slot	= slot;
+	}
+
 	@Override
 	public int
 	getSecsToLive()
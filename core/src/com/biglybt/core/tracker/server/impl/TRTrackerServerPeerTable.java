@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.tracker.server.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.biglybt.core.tracker.server.TRTrackerServerPeer;
+
+/**
+ * Dense table of a torrent's peers alongside their compact (BEP 23 / BEP 7) address+port
+ * encodings so that compact announce replies can be assembled by copying slices rather than
+ * building a map per peer.
+ * <p>
+ * Removal moves the last entry into the vacated slot so the table never has holes, and peer
+ * selection is a partial Fisher-Yates shuffle of the table itself which gives a uniform sample
+ * without duplicates or any per-peer allocation.
+ * <p>
+ * Encodings are refreshed lazily as a peer's address is resolved asynchronously and may change
+ * on re-announce. Not thread safe, the owning torrent's monitor protects it.
+ */
+
+final class
+TRTrackerServerPeerTable
+{
+	protected static final int	V4_ENTRY_SIZE	= 6;
+	protected static final int	V6_ENTRY_SIZE	= 18;
+
+	private static final int	SLOT_SIZE		= V6_ENTRY_SIZE;
+
+	private static final byte	ADDR_NONE		= 0;
+	private static final byte	ADDR_V4			= 1;
+	private static final byte	ADDR_V6			= 2;
+
+	private TRTrackerServerPeerImpl[]	peers			= new TRTrackerServerPeerImpl[16];
+	private byte[][]					encoded_ip		= new byte[16][];	// the address bytes each slot was encoded from
+	private int[]						encoded_port	= new int[16];
+	private byte[]						addr_type		= new byte[16];
+	private byte[]						addresses		= new byte[16*SLOT_SIZE];
+
+	private int		size;
+
+	private final byte[]	swap_buffer = new byte[SLOT_SIZE];
+
+		// results of the last selection, reused across calls
+
+	private byte[]	v4_out		= new byte[0];
+	private byte[]	v6_out		= new byte[0];
+	private byte[]	v4_crypto	= new byte[0];
+	private byte[]	v6_crypto	= new byte[0];
+	private int[]	deferred	= new int[0];
+
+	private int		v4_count;
+	private int		v6_count;
+
+	private final List<TRTrackerServerPeerImpl>	timed_out = new ArrayList<>();
+
+	protected int
+	size()
+	{
+		return( size );
+	}
+
+	protected void
+	add(
+		TRTrackerServerPeerImpl		peer )
+	{
+		if ( peer.getTableSlot() >= 0 ){
+
+			return;
+		}
+
+		if ( size == peers.length ){
+
+			int	new_length = size*2;
+
+			peers			= Arrays.copyOf( peers, new_length );
+			encoded_ip		= Arrays.copyOf( encoded_ip, new_length );
+			encoded_port	= Arrays.copyOf( encoded_port, new_length );
+			addr_type		= Arrays.copyOf( addr_type, new_length );
+			addresses		= Arrays.copyOf( addresses, new_length*SLOT_SIZE );
+		}
+
+		int	slot = size++;
+
+		peers[slot] = peer;
+
+		peer.setTableSlot( slot );
+
+		encode( slot );
+	}
+
+	protected void
+	remove(
+		TRTrackerServerPeerImpl		peer )
+	{
+		int	slot = peer.getTableSlot();
+
+		if ( slot < 0 || slot >= size || peers[slot] != peer ){
+
+			return;
+		}
+
+		int	last = --size;
+
+		if ( slot != last ){
+
+			move( last, slot );
+		}
+
+		peers[last]			= null;
+		encoded_ip[last]	= null;
+
+		peer.setTableSlot( -1 );
+
+			// give back space after a swarm has shrunk a lot
+
+		if ( peers.length > 64 && size < peers.length/4 ){
+
+			int	new_length = peers.length/2;
+
+			peers			= Arrays.copyOf( peers, new_length );
+			encoded_ip		= Arrays.copyOf( encoded_ip, new_length );
+			encoded_port	= Arrays.copyOf( encoded_port, new_length );
+			addr_type		= Arrays.copyOf( addr_type, new_length );
+			addresses		= Arrays.copyOf( addresses, new_length*SLOT_SIZE );
+		}
+	}
+
+		/**
+		 * Selects up to num_want peers at random. Peers found to have timed out are not returned
+		 * but are made available via getTimedOut() for the caller to remove
+		 * @param prefer_good_nat	only use peers with bad NAT status if there aren't enough others
+		 * @return number of peers selected
+		 */
+
+	protected int
+	select(
+		Random						random,
+		TRTrackerServerPeerImpl		requesting_peer,
+		int							num_want,
+		boolean						include_seeds,
+		byte						crypto_level,
+		boolean						prefer_good_nat,
+		long						now )
+	{
+		v4_count	= 0;
+		v6_count	= 0;
+
+		timed_out.clear();
+
+		if ( v4_out.length < num_want*V4_ENTRY_SIZE ){
+
+			v4_out		= new byte[num_want*V4_ENTRY_SIZE];
+			v6_out		= new byte[num_want*V6_ENTRY_SIZE];
+			v4_crypto	= new byte[num_want];
+			v6_crypto	= new byte[num_want];
+			deferred	= new int[num_want];
+		}
+
+			// some entries might not be usable so look at more than we want, but when
+			// they want (nearly) everything we might as well look at the lot
+
+		int	limit = num_want*3 > size?size:num_want*2;
+
+		int	added			= 0;
+		int	deferred_count	= 0;
+
+		for ( int i=0;i<limit && added < num_want;i++){
+
+			int	j = i + random.nextInt( size - i );
+
+			if ( j != i ){
+
+				swap( i, j );
+			}
+
+			TRTrackerServerPeerImpl	peer = peers[i];
+
+			if ( now > peer.getTimeout()){
+
+				timed_out.add( peer );
+
+			}else if ( peer == requesting_peer || peer.getTCPPort() == 0 ){
+
+					// a port of 0 means that the peer definitely can't accept incoming connections
+
+			}else if ( crypto_level == TRTrackerServerPeer.CRYPTO_NONE && peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED ){
+
+					// don't return "crypto required" peers to those that can't correctly connect to them
+
+			}else if ( include_seeds || !peer.isSeed()){
+
+				if ( prefer_good_nat && peer.isNATStatusBad()){
+
+					if ( deferred_count < num_want ){
+
+						deferred[deferred_count++] = i;
+					}
+				}else if ( output( i )){
+
+					added++;
+				}
+			}
+		}
+
+			// slots below the selection point aren't moved by the shuffle so are still valid
+
+		for ( int i=0;i<deferred_count && added < num_want;i++){
+
+			if ( output( deferred[i] )){
+
+				added++;
+			}
+		}
+
+		return( added );
+	}
+
+	protected List<TRTrackerServerPeerImpl>
+	getTimedOut()
+	{
+		return( timed_out );
+	}
+
+	protected byte[]
+	getV4Peers()
+	{
+		return( Arrays.copyOf( v4_out, v4_count*V4_ENTRY_SIZE ));
+	}
+
+	protected byte[]
+	getV6Peers()
+	{
+		return( Arrays.copyOf( v6_out, v6_count*V6_ENTRY_SIZE ));
+	}
+
+		/**
+		 * @return crypto flags for the selected IPv4 peers followed by those for the IPv6 ones
+		 */
+
+	protected byte[]
+	getCryptoFlags()
+	{
+		byte[]	result = new byte[v4_count + v6_count];
+
+		System.arraycopy( v4_crypto, 0, result, 0, v4_count );
+		System.arraycopy( v6_crypto, 0, result, v4_count, v6_count );
+
+		return( result );
+	}
+
+	protected int
+	getV4Count()
+	{
+		return( v4_count );
+	}
+
+	protected int
+	getV6Count()
+	{
+		return( v6_count );
+	}
+
+	private boolean
+	output(
+		int		slot )
+	{
+		TRTrackerServerPeerImpl	peer = peers[slot];
+
+		if ( peer.getIPAddressBytes() != encoded_ip[slot] || peer.getTCPPort() != encoded_port[slot] ){
+
+			encode( slot );
+		}
+
+		byte	type = addr_type[slot];
+
+		byte	crypto_flag = (byte)( peer.getCryptoLevel() == TRTrackerServerPeer.CRYPTO_REQUIRED?1:0 );
+
+		if ( type == ADDR_V4 ){
+
+			System.arraycopy( addresses, slot*SLOT_SIZE, v4_out, v4_count*V4_ENTRY_SIZE, V4_ENTRY_SIZE );
+
+			v4_crypto[v4_count++] = crypto_flag;
+
+			return( true );
+
+		}else if ( type == ADDR_V6 ){
+
+			System.arraycopy( addresses, slot*SLOT_SIZE, v6_out, v6_count*V6_ENTRY_SIZE, V6_ENTRY_SIZE );
+
+			v6_crypto[v6_count++] = crypto_flag;
+
+			return( true );
+		}
+
+		return( false );
+	}
+
+	private void
+	encode(
+		int		slot )
+	{
+		TRTrackerServerPeerImpl	peer = peers[slot];
+
+		byte[]	ip		= peer.getIPAddressBytes();
+		int		port	= peer.getTCPPort();
+
+		encoded_ip[slot]	= ip;
+		encoded_port[slot]	= port;
+
+		int	pos = slot*SLOT_SIZE;
+
+		if ( ip == null ){
+
+				// not yet resolved
+
+			addr_type[slot] = ADDR_NONE;
+
+		}else if ( ip.length == 4 ){
+
+			System.arraycopy( ip, 0, addresses, pos, 4 );
+
+			addresses[pos+4] = (byte)(port>>8);
+			addresses[pos+5] = (byte)(port&0xff);
+
+			addr_type[slot] = ADDR_V4;
+
+		}else if ( ip.length == 16 ){
+
+			System.arraycopy( ip, 0, addresses, pos, 16 );
+
+			addresses[pos+16] = (byte)(port>>8);
+			addresses[pos+17] = (byte)(port&0xff);
+
+			addr_type[slot] = ADDR_V6;
+
+		}else{
+
+			addr_type[slot] = ADDR_NONE;
+		}
+	}
+
+	private void
+	move(
+		int		from,
+		int		to )
+	{
+		TRTrackerServerPeerImpl	peer = peers[from];
+
+		peers[to]			= peer;
+		encoded_ip[to]		= encoded_ip[from];
+		encoded_port[to]	= encoded_port[from];
+		addr_type[to]		= addr_type[from];
+
+		System.arraycopy( addresses, from*SLOT_SIZE, addresses, to*SLOT_SIZE, SLOT_SIZE );
+
+		peer.setTableSlot( to );
+	}
+
+	private void
+	swap(
+		int		i,
+		int		j )
+	{
+		TRTrackerServerPeerImpl	peer_i	= peers[i];
+		byte[]					ip_i	= encoded_ip[i];
+		int						port_i	= encoded_port[i];
+		byte					type_i	= addr_type[i];
+
+		System.arraycopy( addresses, i*SLOT_SIZE, swap_buffer, 0, SLOT_SIZE );
+
+		move( j, i );
+
+		peers[j]			= peer_i;
+		encoded_ip[j]		= ip_i;
+		encoded_port[j]		= port_i;
+		addr_type[j]		= type_i;
+
+		System.arraycopy( swap_buffer, 0, addresses, j*SLOT_SIZE, SLOT_SIZE );
+
+		peer_i.setTableSlot( j );
+	}
+}
@@ -69,6 +69,10 @@ TRTrackerServerTorrentImpl
 
 	private List<TRTrackerServerPeerImpl>					peer_list		= new ArrayList<>();
 
+		// same peers with their pre-encoded compact addresses, used for compact announce replies
+
+	private final TRTrackerServerPeerTable					peer_table		= new TRTrackerServerPeerTable();
+
 	private int				peer_list_hole_count;
 	private boolean			peer_list_compaction_suspended;
 
@@ -182,6 +186,8 @@ TRTrackerServerTorrentImpl
 
 						peer_list.add( peer );
 
+						peer_table.add( peer );
+
 						peer_reuse_map.put( reuse_key, peer );
 
 						if ( peer.isSeed()){
@@ -415,6 +421,8 @@ TRTrackerServerTorrentImpl
 
 					peer_list.add( peer );
 
+					peer_table.add( peer );
+
 					peer_reuse_map.put( reuse_key, peer );
 
 					if ( biased ){
@@ -927,6 +935,8 @@ TRTrackerServerTorrentImpl
 				}
 			}
 
+			peer_table.remove( peer );
+
 			{
 				Object o = peer_map.remove( peer.getPeerId());
 
@@ -1292,6 +1302,28 @@ TRTrackerServerTorrentImpl
 				add_to_cache	= true;
 			}
 
+			if ( 	compact_mode == COMPACT_MODE_NORMAL &&
+					num_want > 0 &&
+					explicit_limited_peers == null &&
+					explicit_biased_peers == null &&
+					explicit_manual_biased_peers == null &&
+					remove_ips == null &&
+					( biased_peers == null || biased_peers.isEmpty()) &&
+					!( include_seeds && seed_count < 3 && queued_peers != null )){
+
+					// plain compact reply, no per-peer data needed so slice it out of the peer table
+
+				Map	root = new TreeMap();
+
+				if ( preprocess_map.size() > 0 ){
+
+					root.putAll( preprocess_map );
+				}
+
+				int	num_peers_returned = exportCompactPeers( root, requesting_peer, include_seeds, num_want, crypto_level, now );
+
+				return( completeAnnounce( root, requesting_peer, requester_is_biased, nat_warning, interval, min_interval, add_to_cache, num_peers_returned, send_peer_ids, compact_mode ));
+			}
 
 			LinkedList	rep_peers = new LinkedList();
 
@@ -2201,37 +2233,100 @@ TRTrackerServerTorrentImpl
 				}
 			}
 
-			root.put( "interval", new Long( interval ));
+			return( completeAnnounce( root, requesting_peer, requester_is_biased, nat_warning, interval, min_interval, add_to_cache, num_peers_returned, send_peer_ids, compact_mode ));
+
+		}finally{
+
+			this_mon.exit();
+		}
+	}
+
+	private int
+	exportCompactPeers(
+		Map							root,
+		TRTrackerServerPeerImpl		requesting_peer,
+		boolean						include_seeds,
+		int							num_want,
+		byte						crypto_level,
+		long						now )
+	{
+		boolean	prefer_good_nat = TRTrackerServerNATChecker.getSingleton().isEnabled();
+
+		int	num_peers_returned = peer_table.select( random, requesting_peer, num_want, include_seeds, crypto_level, prefer_good_nat, now );
 
-			root.put( "min interval", new Long( min_interval ));
+		List<TRTrackerServerPeerImpl>	timed_out = peer_table.getTimedOut();
 
-			if ( nat_warning ){
+		if ( !timed_out.isEmpty()){
 
-				requesting_peer.setNATStatus( TRTrackerServerPeerImpl.NAT_CHECK_FAILED_AND_REPORTED );
+			for ( TRTrackerServerPeerImpl peer: new ArrayList<>( timed_out )){
 
-				root.put(
-						"warning message",
-						("Unable to connect to your incoming data port (" + requesting_peer.getIP() + ":" + requesting_peer.getTCPPort() +"). " +
-						 "This will result in slow downloads. Please check your firewall/router settings").getBytes());
+				removePeer( peer, TRTrackerServerTorrentPeerListener.ET_TIMEOUT, null );
 			}
 
-				// also include scrape details
+			timed_out.clear();
+		}
+
+		if ( peer_table.getV6Count() == 0 ){
 
-			root.put( "complete", new Long( getSeedCountForScrape( requester_is_biased )));
-			root.put( "incomplete", new Long( getLeecherCount() ));
-			root.put( "downloaded", new Long(stats.getCompletedCount()));
+			root.put( "peers", peer_table.getV4Peers());
 
-			if ( add_to_cache ){
+		}else{
 
-				announce_cache.put( new Integer((num_peers_returned+9)/10), new announceCacheEntry( root, send_peer_ids, compact_mode ));
+			if ( peer_table.getV4Count() > 0 ){
+
+				root.put( "peers", peer_table.getV4Peers());
 			}
 
-			return( root );
+			root.put( "peers6", peer_table.getV6Peers());
+		}
 
-		}finally{
+		if ( crypto_level != TRTrackerServerPeer.CRYPTO_NONE ){
 
-			this_mon.exit();
+			root.put( "crypto_flags", peer_table.getCryptoFlags());
 		}
+
+		return( num_peers_returned );
+	}
+
+	private Map
+	completeAnnounce(
+		Map							root,
+		TRTrackerServerPeerImpl		requesting_peer,
+		boolean						requester_is_biased,
+		boolean						nat_warning,
+		long						interval,
+		long						min_interval,
+		boolean						add_to_cache,
+		int							num_peers_returned,
+		boolean						send_peer_ids,
+		byte						compact_mode )
+	{
+		root.put( "interval", new Long( interval ));
+
+		root.put( "min interval", new Long( min_interval ));
+
+		if ( nat_warning ){
+
+			requesting_peer.setNATStatus( TRTrackerServerPeerImpl.NAT_CHECK_FAILED_AND_REPORTED );
+
+			root.put(
+					"warning message",
+					("Unable to connect to your incoming data port (" + requesting_peer.getIP() + ":" + requesting_peer.getTCPPort() +"). " +
+					 "This will result in slow downloads. Please check your firewall/router settings").getBytes());
+		}
+
+			// also include scrape details
+
+		root.put( "complete", new Long( getSeedCountForScrape( requester_is_biased )));
+		root.put( "incomplete", new Long( getLeecherCount() ));
+		root.put( "downloaded", new Long(stats.getCompletedCount()));
+
+		if ( add_to_cache ){
+
+			announce_cache.put( new Integer((num_peers_returned+9)/10), new announceCacheEntry( root, send_peer_ids, compact_mode ));
+		}
+
+		return( root );
 	}
 
 
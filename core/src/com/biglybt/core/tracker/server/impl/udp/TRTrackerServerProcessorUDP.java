@@ -596,7 +596,7 @@ TRTrackerServerProcessorUDP
 				server, "", root_out, peer_out,
 				request_type,
 				(byte[][])hashbytes.toArray(new byte[0][0]), null, null,
-				peer_id, false, TRTrackerServerTorrentImpl.COMPACT_MODE_NONE, key, // currently no "no_peer_id" / "compact" in the packet and anyway they aren't returned / key
+				peer_id, true, TRTrackerServerTorrentImpl.COMPACT_MODE_NORMAL, key, // peer ids aren't returned and the reply uses the compact encoding / key
 				event, false,
 				port,
 				0, 0,
@@ -617,18 +617,21 @@ TRTrackerServerProcessorUDP
 
 				reply.setInterval(((Long)root.get("interval")).intValue());
 
-				List	peers = (List)root.get("peers");
+				byte[]	peers = (byte[])root.get("peers");
 
-				int[]	addresses 	= new int[peers.size()];
-				short[]	ports		= new short[addresses.length];
+				int		num_peers	= peers==null?0:peers.length/6;
 
-				for (int i=0;i<addresses.length;i++){
+				int[]	addresses 	= new int[num_peers];
+				short[]	ports		= new short[num_peers];
 
-					Map	peer = (Map)peers.get(i);
+				for (int i=0;i<num_peers;i++){
 
-					addresses[i] 	= PRHelpers.addressToInt(new String((byte[])peer.get("ip")));
+					int	pos = i*6;
 
-					ports[i]		= (short)((Long)peer.get("port")).shortValue();
+					addresses[i] 	= 	(( peers[pos]&0xff ) << 24 ) | (( peers[pos+1]&0xff ) << 16 ) |
+										(( peers[pos+2]&0xff ) << 8 ) | ( peers[pos+3]&0xff );
+
+					ports[i]		= (short)((( peers[pos+4]&0xff ) << 8 ) | ( peers[pos+5]&0xff ));
 				}
 
 				reply.setPeers( addresses, ports );
@@ -652,59 +655,12 @@ TRTrackerServerProcessorUDP
 
 				reply.setLeechersSeeders(leechers,seeders);
 
-				if ( ipv6 ){
-					
-					byte[]	v6peers = (byte[])root.get("peers6");
-					
-					if ( v6peers == null ){
-						
-						reply.setPeers( new byte[0][], new short[0]);
-						
-					}else{
-						int num_peers = v6peers.length/18;
-						
-						byte[][]	addresses 	= new byte[num_peers][];
-						short[]		ports		= new short[num_peers];
-		
-						int pos = 0;
-						
-						for (int i=0;i<v6peers.length;i+=18){
-		
-							final byte[] peer_bytes = new byte[16];
-							
-							System.arraycopy( v6peers, i, peer_bytes, 0, 16 );
-							
-				    		int	po1 = 0xFF & v6peers[i+16];
-				    		int	po2 = 0xFF & v6peers[i+17];
-
-							int peer_port = po1*256 + po2;
-									
-							addresses[pos]	= peer_bytes;
-							ports[pos]		= (short)peer_port;
-							
-							pos++;
-						}
-		
-						reply.setPeers( addresses, ports );
-					}
-				}else{
-					List	peers = (List)root.get("peers");
-	
-					byte[][]	addresses 	= new byte[peers.size()][];
-					short[]		ports		= new short[addresses.length];
-	
-					for (int i=0;i<addresses.length;i++){
-	
-						Map	peer = (Map)peers.get(i);
-	
-						addresses[i] 	= PRHelpers.addressToBytes(new String((byte[])peer.get("ip")));
-	
-						ports[i]		= (short)((Long)peer.get("port")).shortValue();
-					}
-	
-					reply.setPeers( addresses, ports );
-				}
-				
+					// compact entries are already in the on-the-wire format
+
+				byte[]	peers = (byte[])root.get( ipv6?"peers6":"peers" );
+
+				reply.setPeers( peers==null?new byte[0]:peers );
+
 				return( new Object[]{ reply, torrent });
 			}
 
@@ -39,7 +39,7 @@ public class BDecoder
 {
 	public static final int MAX_BYTE_ARRAY_SIZE		= 192*1024*1024;
 
-	private static final int MAX_MAP_KEY_SIZE		= 64*1024;
+	static final int MAX_MAP_KEY_SIZE		= 64*1024;
 
 	private static final boolean NEWDECODER_FOR_DEF_CHARSET = System.getProperty("bdecoder.new", "0").equals("1");
 
@@ -2041,6 +2041,42 @@ public class BDecoder
 		void mapDecoded(String context, Map<String, Object> map, int nestingLevel);
 	}
 
+	/**
+	 * Event based decoding of a ByteBuffer, see {@link BLazyDecoder#decode(ByteBuffer, StreamDecodeListener)}.
+	 * Each map and list encountered is offered to {@link #containerStarted} which decides whether it is
+	 * skipped, streamed (its contents reported as further events) or collected. Collected maps are passed to
+	 * {@link #mapDecoded} and collected lists to {@link #valueDecoded}, in both cases as lazy views over the
+	 * buffer.
+	 */
+	public interface StreamDecodeListener extends MapDecodeListener {
+
+		public static final int	ACT_SKIP		= 1;
+		public static final int	ACT_STREAM		= 2;
+		public static final int	ACT_COLLECT		= 3;
+
+		/**
+		 * @param context key of the enclosing map entry, root context is ""
+		 * @return one of the ACT_ constants
+		 */
+		int containerStarted(String context, boolean isMap, int nestingLevel);
+
+		/**
+		 * Only triggered for streamed containers
+		 */
+		void containerEnded(String context, boolean isMap, int nestingLevel);
+
+		/**
+		 * @param value a Long, a ByteBuffer slice for strings or a List for collected lists
+		 */
+		void valueDecoded(String context, Object value, int nestingLevel);
+	}
+
+	static boolean
+	isPortable()
+	{
+		return( PORTABLE_ROOT != null );
+	}
+
 	public static void
 	main(
 			String[]	args )
@@ -0,0 +1,1192 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Decodes bencoded data held in a ByteBuffer (heap or mapped) without materialising it up front.
+ * <p>
+ * {@link #decode(ByteBuffer,boolean)} validates the encoding and returns a {@link LazyMap}. Maps and lists
+ * are views that are only decoded when accessed and strings can be obtained as slices of the buffer.
+ * Decoded values are cached by the map or list holding them so repeated accesses return the same object
+ * and changes made to a nested map or list are retained. Modifying a list view itself turns it into a
+ * normal list.
+ * <p>
+ * Views reference the buffer so anything retained long term should be passed through {@link #materialise(Object)}.
+ * <p>
+ * {@link #decode(ByteBuffer,BDecoder.StreamDecodeListener)} walks the data reporting events instead of
+ * building views.
+ */
+
+public class
+BLazyDecoder
+{
+	public static final boolean	ENABLED = System.getProperty( "bdecoder.lazy", "0" ).equals( "1" ) && !BDecoder.isPortable();
+
+	private static final String	CTX_PIECE_LAYERS	= "piece layers";
+	private static final String	CTX_FILE_TREE		= "file tree";
+
+	private static final int	MAX_NUMBER_CHARS	= 32;
+
+	public static Map<String,Object>
+	decode(
+		ByteBuffer		buffer )
+
+		throws IOException
+	{
+		return( decode( buffer, false ));
+	}
+
+		/**
+		 * @param verify_map_order if set then {@link LazyMap#isOrderIncorrect()} reports maps whose keys
+		 * aren't correctly sorted
+		 */
+
+	public static Map<String,Object>
+	decode(
+		ByteBuffer		buffer,
+		boolean			verify_map_order )
+
+		throws IOException
+	{
+		BLazyDecoder	decoder = new BLazyDecoder( buffer, verify_map_order );
+
+		try{
+			decoder.validate();
+
+			return( new LazyMap( decoder, 0, false ));
+
+		}catch( DecodeException e ){
+
+			throw( new BEncodingException( "BDecoder: " + e.getMessage()));
+		}
+	}
+
+	public static void
+	decode(
+		ByteBuffer							buffer,
+		BDecoder.StreamDecodeListener		listener )
+
+		throws IOException
+	{
+		BLazyDecoder	decoder = new BLazyDecoder( buffer, false );
+
+		try{
+			decoder.validate();
+
+			decoder.walk( 0, "", false, 0, listener );
+
+		}catch( DecodeException e ){
+
+			throw( new BEncodingException( "BDecoder: " + e.getMessage()));
+		}
+	}
+
+		/**
+		 * Converts any lazy views within the object into normal maps and lists so that the result
+		 * no longer references the underlying buffer. Normal maps and lists are updated in place
+		 */
+
+	public static Object
+	materialise(
+		Object		obj )
+	{
+		if ( obj instanceof LazyMap ){
+
+			return(((LazyMap)obj).materialise());
+
+		}else if ( obj instanceof LazyList ){
+
+			return(((LazyList)obj).materialise());
+
+		}else if ( obj instanceof Map ){
+
+			for ( Map.Entry<Object,Object> entry: ((Map<Object,Object>)obj).entrySet()){
+
+				Object	value 	= entry.getValue();
+				Object	m_value	= materialise( value );
+
+				if ( m_value != value ){
+
+					entry.setValue( m_value );
+				}
+			}
+		}else if ( obj instanceof List ){
+
+			ListIterator<Object>	it = ((List<Object>)obj).listIterator();
+
+			while( it.hasNext()){
+
+				Object	value 	= it.next();
+				Object	m_value	= materialise( value );
+
+				if ( m_value != value ){
+
+					it.set( m_value );
+				}
+			}
+		}
+
+		return( obj );
+	}
+
+	private final ByteBuffer	buffer;
+	private final byte[]		array;
+	private final int			array_offset;
+	private final int			limit;
+	private final boolean		verify_map_order;
+
+	private
+	BLazyDecoder(
+		ByteBuffer		_buffer,
+		boolean			_verify_map_order )
+	{
+		buffer				= _buffer.slice();
+		limit				= buffer.limit();
+		verify_map_order	= _verify_map_order;
+
+		if ( buffer.hasArray()){
+
+			array			= buffer.array();
+			array_offset	= buffer.arrayOffset();
+
+		}else{
+
+			array			= null;
+			array_offset	= 0;
+		}
+	}
+
+	private void
+	validate()
+	{
+		if ( limit == 0 ){
+
+			throw( new DecodeException( "zero length file" ));
+		}
+
+		if ( buffer.get( 0 ) != 'd' ){
+
+			throw( new DecodeException( "top level isn't a Map" ));
+		}
+
+		skip( 0 );
+	}
+
+	private int
+	byteAt(
+		int		pos )
+	{
+		if ( pos >= limit ){
+
+			throw( new DecodeException( "invalid input data, truncated" ));
+		}
+
+		return( array==null?buffer.get( pos ):array[ array_offset + pos ]);
+	}
+
+		/**
+		 * @return the position following the value starting at pos
+		 */
+
+	private int
+	skip(
+		int		pos )
+	{
+		int	b = byteAt( pos );
+
+		if ( b == 'i' ){
+
+			return( numberEnd( pos ) + 1 );
+
+		}else if ( b == 'l' ){
+
+			pos++;
+
+			while( byteAt( pos ) != 'e' ){
+
+				pos = skip( pos );
+			}
+
+			return( pos + 1 );
+
+		}else if ( b == 'd' ){
+
+			pos++;
+
+			while( byteAt( pos ) != 'e' ){
+
+				pos = stringEnd( pos );
+
+					// as with BDecoder a key without a value terminates the map
+
+				if ( byteAt( pos ) == 'e' ){
+
+					break;
+				}
+
+				pos = skip( pos );
+			}
+
+			return( pos + 1 );
+
+		}else if ( b >= '0' && b <= '9' ){
+
+			return( stringEnd( pos ));
+
+		}else{
+
+			throw( new DecodeException( "unknown command '" + b + "' at " + pos ));
+		}
+	}
+
+		/**
+		 * @return the string's start position in the top 32 bits and its length in the bottom 32
+		 */
+
+	private long
+	readString(
+		int		pos )
+	{
+		int	b = byteAt( pos );
+
+		if ( b < '0' || b > '9' ){
+
+			throw( new DecodeException( "string expected at " + pos ));
+		}
+
+		long	len = 0;
+
+		while( b != ':' ){
+
+			if ( b < '0' || b > '9' ){
+
+				throw( new DecodeException( "invalid string length at " + pos ));
+			}
+
+			len = len*10 + ( b - '0' );
+
+			if ( len > BDecoder.MAX_BYTE_ARRAY_SIZE ){
+
+				throw( new DecodeException( "Byte array length too large (" + len + ")" ));
+			}
+
+			b = byteAt( ++pos );
+		}
+
+		int	start = pos + 1;
+
+		if ( start + len > limit ){
+
+			throw( new DecodeException( "invalid input data, truncated" ));
+		}
+
+		return(((long)start << 32 ) | len );
+	}
+
+	private int
+	stringEnd(
+		int		pos )
+	{
+		long	str = readString( pos );
+
+		return((int)( str >>> 32 ) + (int)str );
+	}
+
+	private boolean
+	isString(
+		int		pos )
+	{
+		int	b = byteAt( pos );
+
+		return( b >= '0' && b <= '9' );
+	}
+
+	private byte[]
+	getBytes(
+		int		pos )
+	{
+		long	str 	= readString( pos );
+		int		start	= (int)( str >>> 32 );
+		int		len		= (int)str;
+
+		byte[]	result = new byte[len];
+
+		if ( array != null ){
+
+			System.arraycopy( array, array_offset + start, result, 0, len );
+
+		}else{
+
+			ByteBuffer	temp = buffer.duplicate();
+
+			temp.position( start );
+
+			temp.get( result );
+		}
+
+		return( result );
+	}
+
+	private ByteBuffer
+	getSlice(
+		int		pos )
+	{
+		long	str 	= readString( pos );
+		int		start	= (int)( str >>> 32 );
+		int		len		= (int)str;
+
+		ByteBuffer	temp = buffer.duplicate();
+
+		temp.limit( start + len );
+		temp.position( start );
+
+		return( temp.slice());
+	}
+
+	private String
+	getKey(
+		int			start,
+		int			len,
+		boolean		utf8_keys )
+	{
+		String	key;
+
+		if ( utf8_keys ){
+
+			key = new String( getBytes( start, len ), Constants.DEFAULT_ENCODING_CHARSET );
+
+		}else{
+
+				// keys often repeat a lot - intern to save space. utf8 keys imply non-fixed keys (e.g. file names...)
+
+			key = StringInterner.intern( new String( getBytes( start, len ), Constants.BYTE_ENCODING_CHARSET ));
+		}
+
+		return( key );
+	}
+
+	private byte[]
+	getBytes(
+		int		start,
+		int		len )
+	{
+		byte[]	result = new byte[len];
+
+		if ( array != null ){
+
+			System.arraycopy( array, array_offset + start, result, 0, len );
+
+		}else{
+
+			for ( int i=0;i<len;i++){
+
+				result[i] = buffer.get( start + i );
+			}
+		}
+
+		return( result );
+	}
+
+	private int
+	compareKeys(
+		int		start1,
+		int		len1,
+		int		start2,
+		int		len2 )
+	{
+		int	len = Math.min( len1, len2 );
+
+		for ( int i=0;i<len;i++){
+
+			int	b1 = byteAt( start1 + i )&0x00ff;
+			int	b2 = byteAt( start2 + i )&0x00ff;
+
+			if ( b1 != b2 ){
+
+				return( b1 - b2 );
+			}
+		}
+
+		return( len1 - len2 );
+	}
+
+	private int
+	numberEnd(
+		int		pos )
+	{
+		int	end = pos + 1;
+
+		while( byteAt( end ) != 'e' ){
+
+			end++;
+
+			if ( end - pos > MAX_NUMBER_CHARS ){
+
+				throw( new DecodeException( "Number too large at " + pos ));
+			}
+		}
+
+		return( end );
+	}
+
+	private Long
+	parseNumber(
+		int		pos )
+	{
+		int	end = numberEnd( pos );
+
+		int	len = end - pos - 1;
+
+		if ( len == 0 ){
+
+				// support some borked impls that sometimes don't bother encoding anything
+
+			return( 0L );
+		}
+
+		char[]	chars = new char[len];
+
+		for ( int i=0;i<len;i++){
+
+			chars[i] = (char)( byteAt( pos + 1 + i )&0x00ff );
+		}
+
+		try{
+			return( BDecoder.parseLong( chars, 0, len ));
+
+		}catch( NumberFormatException e ){
+
+			String	temp = new String( chars );
+
+			try{
+				long l = (long)Double.parseDouble( temp );
+
+				Debug.out( "Invalid number '" + temp + "' - decoding as " + l + " and attempting recovery" );
+
+				return( l );
+
+			}catch( Throwable f ){
+			}
+
+			throw( e );
+		}
+	}
+
+	private Object
+	decodeValue(
+		int			pos,
+		String		context,
+		boolean		utf8_keys )
+	{
+		int	b = byteAt( pos );
+
+		if ( b == 'd' ){
+
+				// bt v2 has a raw byte key dictionary for 'piece layers', see BDecoder
+
+			if ( !utf8_keys && context.equals( CTX_PIECE_LAYERS )){
+
+				return( decodeByteKeyMap( pos ));
+			}
+
+			return( new LazyMap( this, pos, utf8_keys ));
+
+		}else if ( b == 'l' ){
+
+			return( new LazyList( this, pos, context, utf8_keys ));
+
+		}else if ( b == 'i' ){
+
+			return( parseNumber( pos ));
+
+		}else{
+
+			return( getBytes( pos ));
+		}
+	}
+
+	private Map<String,Object>
+	decodeByteKeyMap(
+		int		pos )
+	{
+		ByteEncodedKeyHashMap<String,Object> dict = new ByteEncodedKeyHashMap<>();
+
+		pos++;
+
+		while( byteAt( pos ) != 'e' ){
+
+			long	str 		= readString( pos );
+			int		key_start	= (int)( str >>> 32 );
+			int		key_len		= (int)str;
+			int		value_pos	= key_start + key_len;
+
+			if ( byteAt( value_pos ) == 'e' ){
+
+				break;
+			}
+
+			if ( key_len <= BDecoder.MAX_MAP_KEY_SIZE ){
+
+				byte[]	key_bytes = getBytes( key_start, key_len );
+
+				Object	value = materialise( decodeValue( value_pos, "<binary key>", false ));
+
+				if ( dict.put( new String( key_bytes, Constants.BYTE_ENCODING_CHARSET ), value ) != null ){
+
+					Debug.out( "BDecoder: binary key '" + Base32.encode( key_bytes ) + "' already exists!" );
+				}
+			}
+
+			pos = skip( value_pos );
+		}
+
+		return( dict );
+	}
+
+	private int
+	walk(
+		int									pos,
+		String								context,
+		boolean								utf8_keys,
+		int									nesting,
+		BDecoder.StreamDecodeListener		listener )
+	{
+		int	b = byteAt( pos );
+
+		if ( b == 'd' || b == 'l' ){
+
+			boolean	is_map = b == 'd';
+
+			int	act = listener.containerStarted( context, is_map, nesting );
+
+			if ( act == BDecoder.StreamDecodeListener.ACT_STREAM ){
+
+				pos++;
+
+				if ( is_map ){
+
+					while( byteAt( pos ) != 'e' ){
+
+						long	str 		= readString( pos );
+						int		key_start	= (int)( str >>> 32 );
+						int		key_len		= (int)str;
+						int		value_pos	= key_start + key_len;
+
+						if ( byteAt( value_pos ) == 'e' ){
+
+							pos = value_pos;
+
+							break;
+						}
+
+						if ( key_len > BDecoder.MAX_MAP_KEY_SIZE ){
+
+							pos = skip( value_pos );
+
+						}else{
+
+							String	key = getKey( key_start, key_len, utf8_keys );
+
+							pos = walk( value_pos, key, utf8_keys || key.equals( CTX_FILE_TREE ), nesting+1, listener );
+						}
+					}
+				}else{
+
+					while( byteAt( pos ) != 'e' ){
+
+						pos = walk( pos, context, utf8_keys, nesting+1, listener );
+					}
+				}
+
+				listener.containerEnded( context, is_map, nesting );
+
+				return( pos + 1 );
+
+			}else if ( act == BDecoder.StreamDecodeListener.ACT_COLLECT ){
+
+				Object	value = decodeValue( pos, context, utf8_keys );
+
+				if ( value instanceof Map ){
+
+					listener.mapDecoded( context, (Map<String,Object>)value, nesting );
+
+				}else{
+
+					listener.valueDecoded( context, value, nesting );
+				}
+			}
+
+			return( skip( pos ));
+
+		}else if ( b == 'i' ){
+
+			listener.valueDecoded( context, parseNumber( pos ), nesting );
+
+			return( numberEnd( pos ) + 1 );
+
+		}else{
+
+			listener.valueDecoded( context, getSlice( pos ), nesting );
+
+			return( stringEnd( pos ));
+		}
+	}
+
+	private static final class
+	Slot
+	{
+		final int		pos;
+
+		Object			value;
+
+		Slot(
+			int		_pos )
+		{
+			pos	= _pos;
+		}
+	}
+
+		/**
+		 * Map view, keys are decoded up front and values on first access
+		 */
+
+	public static class
+	LazyMap
+		extends AbstractMap<String,Object>
+	{
+		private final BLazyDecoder					decoder;
+		private final boolean						utf8_keys;
+		private final LightHashMap<String,Object>	map	= new LightHashMap<>();
+
+		private boolean		order_incorrect;
+
+		LazyMap(
+			BLazyDecoder	_decoder,
+			int				pos,
+			boolean			_utf8_keys )
+		{
+			decoder		= _decoder;
+			utf8_keys	= _utf8_keys;
+
+			int	prev_start	= -1;
+			int	prev_len	= 0;
+
+			pos++;
+
+			while( decoder.byteAt( pos ) != 'e' ){
+
+				long	str 		= decoder.readString( pos );
+				int		key_start	= (int)( str >>> 32 );
+				int		key_len		= (int)str;
+				int		value_pos	= key_start + key_len;
+
+				if ( decoder.byteAt( value_pos ) == 'e' ){
+
+					System.err.println( "Invalid encoding - value not serialised for key at " + key_start + " - ignoring" );
+
+					break;
+				}
+
+				if ( key_len > BDecoder.MAX_MAP_KEY_SIZE ){
+
+					System.err.println( "dictionary key is too large - " + key_len + ":, max=" + BDecoder.MAX_MAP_KEY_SIZE + ": skipping" );
+
+				}else{
+
+					if ( decoder.verify_map_order ){
+
+						if ( prev_start >= 0 && decoder.compareKeys( prev_start, prev_len, key_start, key_len ) > 0 ){
+
+							order_incorrect = true;
+						}
+
+						prev_start	= key_start;
+						prev_len	= key_len;
+					}
+
+					String	key = decoder.getKey( key_start, key_len, utf8_keys );
+
+					if ( map.put( key, new Slot( value_pos )) != null ){
+
+						Debug.out( "BDecoder: key '" + key + "' already exists!" );
+					}
+				}
+
+				pos = decoder.skip( value_pos );
+			}
+
+			map.compactify( -0.9f );
+		}
+
+			/**
+			 * Only valid if map order verification was requested when decoding
+			 */
+
+		public boolean
+		isOrderIncorrect()
+		{
+			return( order_incorrect );
+		}
+
+			/**
+			 * @return the value as a slice of the underlying buffer without copying it, null if the
+			 * key is missing or the value isn't a string
+			 */
+
+		public synchronized ByteBuffer
+		getSlice(
+			String		key )
+		{
+			Object	value = map.get( key );
+
+			if ( value instanceof Slot ){
+
+				Slot	slot = (Slot)value;
+
+				if ( slot.value == null ){
+
+					return( decoder.isString( slot.pos )?decoder.getSlice( slot.pos ):null );
+				}
+
+				value = slot.value;
+			}
+
+			return( value instanceof byte[]?ByteBuffer.wrap((byte[])value ):null );
+		}
+
+		private Object
+		resolve(
+			String		key,
+			Object		value )
+		{
+			if ( value instanceof Slot ){
+
+				Slot	slot = (Slot)value;
+
+				if ( slot.value == null ){
+
+					slot.value = decoder.decodeValue( slot.pos, key, utf8_keys || key.equals( CTX_FILE_TREE ));
+				}
+
+				value = slot.value;
+			}
+
+			return( value );
+		}
+
+		@Override
+		public synchronized Object
+		get(
+			Object		key )
+		{
+			Object	value = map.get( key );
+
+			return( value==null?null:resolve((String)key, value ));
+		}
+
+		@Override
+		public synchronized boolean
+		containsKey(
+			Object		key )
+		{
+			return( map.containsKey( key ));
+		}
+
+		@Override
+		public synchronized Object
+		put(
+			String		key,
+			Object		value )
+		{
+			return( resolve( key, map.put( key, value )));
+		}
+
+		@Override
+		public synchronized Object
+		remove(
+			Object		key )
+		{
+			Object	value = map.remove( key );
+
+			return( value==null?null:resolve((String)key, value ));
+		}
+
+		@Override
+		public synchronized int
+		size()
+		{
+			return( map.size());
+		}
+
+		@Override
+		public synchronized void
+		clear()
+		{
+			map.clear();
+		}
+
+		@Override
+		public Set<Map.Entry<String,Object>>
+		entrySet()
+		{
+			return(
+				new AbstractSet<Map.Entry<String,Object>>()
+				{
+					@Override
+					public Iterator<Map.Entry<String,Object>>
+					iterator()
+					{
+						final Iterator<Map.Entry<String,Object>> it = map.entrySet().iterator();
+
+						return(
+							new Iterator<Map.Entry<String,Object>>()
+							{
+								@Override
+								public boolean
+								hasNext()
+								{
+									return( it.hasNext());
+								}
+
+								@Override
+								public Map.Entry<String,Object>
+								next()
+								{
+									final Map.Entry<String,Object>	entry = it.next();
+
+									return(
+										new Map.Entry<String,Object>()
+										{
+											@Override
+											public String
+											getKey()
+											{
+												return( entry.getKey());
+											}
+
+											@Override
+											public Object
+											getValue()
+											{
+												synchronized( LazyMap.this ){
+
+													return( resolve( entry.getKey(), entry.getValue()));
+												}
+											}
+
+											@Override
+											public Object
+											setValue(
+												Object	value )
+											{
+												synchronized( LazyMap.this ){
+
+													return( resolve( entry.getKey(), entry.setValue( value )));
+												}
+											}
+
+											@Override
+											public boolean
+											equals(
+												Object	o )
+											{
+												if ( !( o instanceof Map.Entry )){
+
+													return( false );
+												}
+
+												Map.Entry	other = (Map.Entry)o;
+
+												return( getKey().equals( other.getKey()) && Objects.equals( getValue(), other.getValue()));
+											}
+
+											@Override
+											public int
+											hashCode()
+											{
+												return( getKey().hashCode() ^ Objects.hashCode( getValue()));
+											}
+										});
+								}
+
+								@Override
+								public void
+								remove()
+								{
+									it.remove();
+								}
+							});
+					}
+
+					@Override
+					public int
+					size()
+					{
+						return( LazyMap.this.size());
+					}
+				});
+		}
+
+		private synchronized Map<String,Object>
+		materialise()
+		{
+			LightHashMap<String,Object>	result = new LightHashMap<>( map.size());
+
+			for ( Map.Entry<String,Object> entry: ((Map<String,Object>)map).entrySet()){
+
+				String	key		= entry.getKey();
+				Object	value	= entry.getValue();
+
+				if ( value instanceof Slot ){
+
+					Slot	slot = (Slot)value;
+
+						// no point caching the decoded value here
+
+					value = slot.value==null?decoder.decodeValue( slot.pos, key, utf8_keys || key.equals( CTX_FILE_TREE )):slot.value;
+				}
+
+				result.put( key, BLazyDecoder.materialise( value ));
+			}
+
+			if ( order_incorrect ){
+
+				LightHashMapEx<String,Object>	ex = new LightHashMapEx<>( result );
+
+				ex.setFlag( LightHashMapEx.FL_MAP_ORDER_INCORRECT, true );
+
+				result = ex;
+			}
+
+			result.compactify( -0.9f );
+
+			return( result );
+		}
+	}
+
+		/**
+		 * List view, element offsets are located up front and elements decoded on first access
+		 */
+
+	public static class
+	LazyList
+		extends AbstractList<Object>
+		implements RandomAccess
+	{
+		private final BLazyDecoder		decoder;
+		private final String			context;
+		private final boolean			utf8_keys;
+
+		private int[]				offsets;
+		private Object[]			values;		// decoded elements, allocated on first access
+		private ArrayList<Object>	list;		// once modified
+
+		LazyList(
+			BLazyDecoder	_decoder,
+			int				pos,
+			String			_context,
+			boolean			_utf8_keys )
+		{
+			decoder		= _decoder;
+			context		= _context;
+			utf8_keys	= _utf8_keys;
+
+			int[]	temp	= new int[8];
+			int		num		= 0;
+
+			pos++;
+
+			while( decoder.byteAt( pos ) != 'e' ){
+
+				if ( num == temp.length ){
+
+					temp = Arrays.copyOf( temp, num*2 );
+				}
+
+				temp[num++] = pos;
+
+				pos = decoder.skip( pos );
+			}
+
+			offsets = num==temp.length?temp:Arrays.copyOf( temp, num );
+		}
+
+			/**
+			 * @return the element as a slice of the underlying buffer without copying it, null if it
+			 * isn't a string
+			 */
+
+		public synchronized ByteBuffer
+		getSlice(
+			int		index )
+		{
+			Object	value = list!=null?list.get( index ):( values==null?null:values[index] );
+
+			if ( value != null || list != null ){
+
+				return( value instanceof byte[]?ByteBuffer.wrap((byte[])value ):null );
+			}
+
+			int	pos = offsets[index];
+
+			return( decoder.isString( pos )?decoder.getSlice( pos ):null );
+		}
+
+		@Override
+		public synchronized Object
+		get(
+			int		index )
+		{
+			if ( list != null ){
+
+				return( list.get( index ));
+			}
+
+			int	pos = offsets[index];
+
+			if ( values == null ){
+
+				values = new Object[offsets.length];
+
+			}else{
+
+				Object	value = values[index];
+
+				if ( value != null ){
+
+					return( value );
+				}
+			}
+
+			Object	value = decoder.decodeValue( pos, context, utf8_keys );
+
+			values[index] = value;
+
+			return( value );
+		}
+
+		@Override
+		public synchronized int
+		size()
+		{
+			return( list==null?offsets.length:list.size());
+		}
+
+		@Override
+		public synchronized Object
+		set(
+			int		index,
+			Object	value )
+		{
+			return( getList().set( index, value ));
+		}
+
+		@Override
+		public synchronized void
+		add(
+			int		index,
+			Object	value )
+		{
+			getList().add( index, value );
+
+			modCount++;
+		}
+
+		@Override
+		public synchronized Object
+		remove(
+			int		index )
+		{
+			Object	result = getList().remove( index );
+
+			modCount++;
+
+			return( result );
+		}
+
+		private List<Object>
+		getList()
+		{
+			if ( list == null ){
+
+				list = new ArrayList<>( offsets.length );
+
+				for ( int i=0;i<offsets.length;i++){
+
+					Object	value = values==null?null:values[i];
+
+					list.add( value==null?decoder.decodeValue( offsets[i], context, utf8_keys ):value );
+				}
+
+				offsets	= null;
+				values	= null;
+			}
+
+			return( list );
+		}
+
+		private synchronized List<Object>
+		materialise()
+		{
+			int	num = size();
+
+			ArrayList<Object>	result = new ArrayList<>( num );
+
+			for ( int i=0;i<num;i++){
+
+				Object	value;
+
+				if ( list != null ){
+
+					value = list.get( i );
+
+				}else{
+
+						// as with maps, elements not yet accessed aren't cached here
+
+					value = values==null?null:values[i];
+
+					if ( value == null ){
+
+						value = decoder.decodeValue( offsets[i], context, utf8_keys );
+					}
+				}
+
+				result.add( BLazyDecoder.materialise( value ));
+			}
+
+			return( result );
+		}
+	}
+
+	private static class
+	DecodeException
+		extends RuntimeException
+	{
+		DecodeException(
+			String		str )
+		{
+			super( str );
+		}
+	}
+}
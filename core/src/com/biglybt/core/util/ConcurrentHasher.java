@@ -26,17 +26,31 @@ package com.biglybt.core.util;
 
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.config.ParameterListener;
+import com.biglybt.core.stats.CoreStats;
+import com.biglybt.core.stats.CoreStatsProvider;
 
 public class
 ConcurrentHasher
 {
 
+		// upper bound on the bytes hashed by a single batched dispatch
+
+	private static final int	BATCH_MAX_BYTES	= 1024*1024;
+
+	private static final Set<String>	stats_types = new HashSet<>();
+
+	static{
+		stats_types.add( CoreStats.ST_DISK_HASH_SHA1_COUNT );
+		stats_types.add( CoreStats.ST_DISK_HASH_SHA1_BYTES );
+		stats_types.add( CoreStats.ST_DISK_HASH_SHA256_COUNT );
+		stats_types.add( CoreStats.ST_DISK_HASH_SHA256_BYTES );
+	}
+
 	protected static final ConcurrentHasher		singleton	= new ConcurrentHasher();
 
 	protected int			processor_num;
@@ -51,6 +65,11 @@ ConcurrentHasher
 
 	protected final AEMonitor			requests_mon	= new AEMonitor( "ConcurrentHasher:R" );
 
+	private final AtomicLong	v1_count	= new AtomicLong();
+	private final AtomicLong	v1_bytes	= new AtomicLong();
+	private final AtomicLong	v2_count	= new AtomicLong();
+	private final AtomicLong	v2_bytes	= new AtomicLong();
+
 	private static boolean friendly_hashing;
 
 	static{
@@ -100,6 +119,35 @@ ConcurrentHasher
 
 		final ThreadPool pool	= new ThreadPool( "ConcurrentHasher", processor_num<64?64:128 );
 
+		CoreStats.registerProvider(
+			stats_types,
+			new CoreStatsProvider()
+			{
+				@Override
+				public void
+				updateStats(
+					Set<String>			types,
+					Map<String,Object>	values )
+				{
+					if ( types.contains( CoreStats.ST_DISK_HASH_SHA1_COUNT )){
+
+						values.put( CoreStats.ST_DISK_HASH_SHA1_COUNT, v1_count.get());
+					}
+					if ( types.contains( CoreStats.ST_DISK_HASH_SHA1_BYTES )){
+
+						values.put( CoreStats.ST_DISK_HASH_SHA1_BYTES, v1_bytes.get());
+					}
+					if ( types.contains( CoreStats.ST_DISK_HASH_SHA256_COUNT )){
+
+						values.put( CoreStats.ST_DISK_HASH_SHA256_COUNT, v2_count.get());
+					}
+					if ( types.contains( CoreStats.ST_DISK_HASH_SHA256_BYTES )){
+
+						values.put( CoreStats.ST_DISK_HASH_SHA256_BYTES, v2_bytes.get());
+					}
+				}
+			});
+
 		new AEThread2("ConcurrentHasher:scheduler", true )
 		{
 			@Override
@@ -112,48 +160,94 @@ ConcurrentHasher
 
 					request_sem.reserve();
 
-						// now extract the request
+						// now extract the request, plus any further small requests of the same
+						// hash version that are queued behind it so they can be hashed as a batch
+						// with a single hasher and pool dispatch
 
-					final ConcurrentHasherRequest	req;
-					final SHA1Hasher				v1_hasher;
-					final MessageDigest				v2_hasher;
+					final List<ConcurrentHasherRequest>	batch = new ArrayList<>( 4 );
+					final SHA1Hasher					v1_hasher;
+					final MessageDigest					v2_hasher;
 
 					try{
 						requests_mon.enter();
 
-						req	= requests.remove(0);
+						ConcurrentHasherRequest req	= requests.remove(0);
+
+						batch.add( req );
+
+						int	version = req.getHashVersion();
+
+							// only batch when there's more queued than we have processors to
+							// spread it across, otherwise we'd serialise work that could run in parallel
+
+						int	max_batch 	= Math.max( 1, ( requests.size() + 1 ) / processor_num );
+						int	batch_bytes	= req.getSize();
+
+						while( batch.size() < max_batch && !requests.isEmpty()){
+
+							ConcurrentHasherRequest next = requests.get(0);
+
+							if ( 	next.getHashVersion() != version ||
+									batch_bytes + next.getSize() > BATCH_MAX_BYTES ){
+
+								break;
+							}
+
+							if ( !request_sem.reserveIfAvailable()){
+
+								break;
+							}
+
+							batch.add( requests.remove(0));
+
+							batch_bytes += next.getSize();
+						}
+
+						if ( version == 1 ){
 
-						if ( req.getHashVersion() == 1 ){
-							
 							v2_hasher = null;
-							
+
 							if ( v1_hashers.size() == 0 ){
-	
+
 								v1_hasher = new SHA1Hasher();
-	
+
 							}else{
-	
+
 								v1_hasher	= v1_hashers.remove(0);
 							}
 						}else{
 							v1_hasher = null;
-							
+
 							if ( v2_hashers.size() == 0 ){
-	
+
+								MessageDigest md;
+
 								try{
-									v2_hasher = MessageDigest.getInstance( "SHA-256" );
-									
+									md = DigestProviderSelector.getInstance( "SHA-256" );
+
 								}catch( Throwable e ){
-									
+
 									Debug.out( e );
-									
-									req.cancel();
-									
+
+									md = null;
+								}
+
+								if ( md == null ){
+
+									for ( ConcurrentHasherRequest r: batch ){
+
+										r.cancel();
+
+										scheduler_sem.release();
+									}
+
 									continue;
 								}
-	
+
+								v2_hasher = md;
+
 							}else{
-	
+
 								v2_hasher	= v2_hashers.remove(0);
 							}
 						}
@@ -169,24 +263,47 @@ ConcurrentHasher
 								public void
 								runSupport()
 								{
+									long	total_size 		= 0;
+									boolean	low_priority	= true;
+
 									try{
+										for ( ConcurrentHasherRequest req: batch ){
+
+											total_size += req.getSize();
+
+											low_priority &= req.isLowPriority();
+
+											if ( v1_hasher != null ){
+
+												req.run( v1_hasher );
+
+											}else{
+
+												req.run( v2_hasher );
+											}
+										}
+									}finally{
+
 										if ( v1_hasher != null ){
-										
-											req.run( v1_hasher );
+
+											v1_count.addAndGet( batch.size());
+											v1_bytes.addAndGet( total_size );
+
 										}else{
-											
-											req.run( v2_hasher );
+
+											v2_count.addAndGet( batch.size());
+											v2_bytes.addAndGet( total_size );
 										}
-									}finally{
+
 										try{
 											requests_mon.enter();
 
 											if ( v1_hasher != null ){
-											
+
 												v1_hashers.add( v1_hasher );
-												
+
 											}else{
-												
+
 												v2_hashers.add( v2_hasher );
 											}
 										}finally{
@@ -194,17 +311,15 @@ ConcurrentHasher
 											requests_mon.exit();
 										}
 
-										if ( friendly_hashing && req.isLowPriority()){
+										if ( friendly_hashing && low_priority ){
 
 											try{
-												int	size = req.getSize();
-
 													// pieces can be several MB so delay based on size
 
-												final int max = 250;
-												final int min = 50;
+												final long max = 250;
+												final long min = 50;
 
-												size = size/1024;	// in K
+												long size = total_size/1024;	// in K
 
 												size = size/8;
 
@@ -222,7 +337,10 @@ ConcurrentHasher
 											}
 										}
 
-										scheduler_sem.release();
+										for ( int i=0;i<batch.size();i++){
+
+											scheduler_sem.release();
+										}
 									}
 								}
 							});
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.*;
+
+/**
+ * Selects the fastest available security provider for a digest algorithm by running a short
+ * micro-benchmark the first time the algorithm is requested. Providers backed by hardware
+ * instructions (SHA extensions etc.) will normally win by a large margin.
+ */
+
+public class
+DigestProviderSelector
+{
+	private static final int	BENCHMARK_BUFFER_SIZE	= 256*1024;
+	private static final int	BENCHMARK_WARMUP		= 4;
+	private static final long	BENCHMARK_NANOS			= 20*1000*1000L;
+
+		// algorithm -> Object[]{ Provider (null = platform default), Long bytes/sec }
+
+	private static final Map<String,Object[]>	selections = new HashMap<>();
+
+	static{
+		AEDiagnostics.addEvidenceGenerator(
+			new AEDiagnosticsEvidenceGenerator()
+			{
+				@Override
+				public void
+				generate(
+					IndentWriter writer )
+				{
+					writer.println( "Digest Providers" );
+
+					try{
+						writer.indent();
+
+						synchronized( selections ){
+
+							for ( Map.Entry<String,Object[]> entry: selections.entrySet()){
+
+								Object[]	sel = entry.getValue();
+
+								Provider	provider = (Provider)sel[0];
+
+								writer.println(
+									entry.getKey() + " -> " + ( provider==null?"<default>":provider.getName()) +
+									", " + ((Long)sel[1]/(1024*1024)) + " MB/s" );
+							}
+						}
+					}finally{
+
+						writer.exdent();
+					}
+				}
+			});
+	}
+
+	public static MessageDigest
+	getInstance(
+		String		algorithm )
+
+		throws NoSuchAlgorithmException
+	{
+		Provider	provider = getProvider( algorithm );
+
+		if ( provider != null ){
+
+			try{
+				return( MessageDigest.getInstance( algorithm, provider ));
+
+			}catch( Throwable e ){
+
+				Debug.out( e );
+			}
+		}
+
+		return( MessageDigest.getInstance( algorithm ));
+	}
+
+	private static Provider
+	getProvider(
+		String		algorithm )
+	{
+		synchronized( selections ){
+
+			Object[] sel = selections.get( algorithm );
+
+			if ( sel == null ){
+
+				sel = benchmark( algorithm );
+
+				selections.put( algorithm, sel );
+			}
+
+			return((Provider)sel[0]);
+		}
+	}
+
+	private static Object[]
+	benchmark(
+		String		algorithm )
+	{
+		Provider	best_provider	= null;
+		long		best_rate		= -1;
+
+		ByteBuffer	buffer = ByteBuffer.allocateDirect( BENCHMARK_BUFFER_SIZE );
+
+		byte[]	data = new byte[BENCHMARK_BUFFER_SIZE];
+
+		new Random().nextBytes( data );
+
+		buffer.put( data );
+
+		for ( Provider provider: Security.getProviders()){
+
+			if ( provider.getService( "MessageDigest", algorithm ) == null ){
+
+				continue;
+			}
+
+			try{
+				MessageDigest md = MessageDigest.getInstance( algorithm, provider );
+
+				for ( int i=0;i<BENCHMARK_WARMUP;i++){
+
+					buffer.clear();
+
+					md.update( buffer );
+
+					md.digest();
+				}
+
+				long	bytes	= 0;
+				long	start	= System.nanoTime();
+				long	elapsed;
+
+				do{
+					buffer.clear();
+
+					md.update( buffer );
+
+					md.digest();
+
+					bytes += BENCHMARK_BUFFER_SIZE;
+
+					elapsed = System.nanoTime() - start;
+
+				}while( elapsed < BENCHMARK_NANOS );
+
+				long	rate = (long)( bytes * 1000000000.0 / elapsed );
+
+				if ( rate > best_rate ){
+
+					best_rate		= rate;
+					best_provider	= provider;
+				}
+			}catch( Throwable e ){
+
+					// provider unusable, ignore it
+			}
+		}
+
+		return( new Object[]{ best_provider, best_rate });
+	}
+}
@@ -130,6 +130,10 @@ DirectByteBufferPoolReal
 	private long bytesIn = 0;
 	private long bytesOut = 0;
 
+		// optional, null if slab allocation is disabled
+
+	private final DirectByteBufferSlabAllocator	slabs;
+
 
 	protected
 	DirectByteBufferPoolReal()
@@ -159,6 +163,17 @@ DirectByteBufferPoolReal
 	    	buffersMap.put(sizes[i], bufferPool);
 	    }
 
+	    if ( COConfigurationManager.getBooleanParameter( "memory.slab.enable" )){
+
+	    	int	region_mb = COConfigurationManager.getIntParameter( "memory.slab.region.size.mb" );
+
+	    	slabs = new DirectByteBufferSlabAllocator( this, Math.max( 1, region_mb ) * 1024*1024 );
+
+	    }else{
+
+	    	slabs = null;
+	    }
+
 	    //initiate periodic timer to check free memory usage
 	    SimpleTimer.addPeriodicEvent(
 	    	"DirectBB:compact",
@@ -188,9 +203,9 @@ DirectByteBufferPoolReal
 
 
   /**
-   * Allocate and return a new direct ByteBuffer.
+   * Allocate and return a new direct ByteBuffer, also used for the slab regions.
    */
-  private ByteBuffer allocateNewBuffer(final int _size) {
+  protected ByteBuffer allocateNewBuffer(final int _size) {
     try {
       return ByteBuffer.allocateDirect(_size);
     }
@@ -255,9 +270,18 @@ DirectByteBufferPoolReal
 		byte	_allocator,
 		int 	_length)
 	{
-		DirectByteBuffer	res;
+		DirectByteBuffer	res = null;
+
+		if ( slabs != null && _length > SLICE_END_SIZE ){
+
+			res = slabs.allocate( _allocator, _length );
+		}
+
+		if ( res != null ){
 
-		if ( _length <= SLICE_END_SIZE ){
+				// allocated from slabs
+
+		}else if ( _length <= SLICE_END_SIZE ){
 
 			res = getSliceBuffer( _allocator, _length );
 
@@ -431,7 +455,11 @@ DirectByteBufferPoolReal
 
 	    // remInUse( buffer.capacity() );
 
-		if ( capacity <= SLICE_END_SIZE ){
+		if ( slabs != null && slabs.free( ddb )){
+
+			// returned to slabs
+
+		}else if ( capacity <= SLICE_END_SIZE ){
 
 			freeSliceBuffer( ddb );
 
@@ -489,9 +517,21 @@ DirectByteBufferPoolReal
    */
   private void compactBuffers() {
 
+		// idle slab slices count towards the free bytes, read before taking the pools lock as
+		// the slabs allocate their regions through this pool while holding their own locks
+
+	  long slabFreeSize = 0;
+
+	  if ( slabs != null ){
+
+		  slabs.reclaimDeadThreads();
+
+		  slabFreeSize = slabs.getFreeBytes();
+	  }
+
 	  nonsliecd: synchronized (poolsLock)
 		{
-			long freeSize = bytesFree();
+			long freeSize = bytesFree() + slabFreeSize;
 
 			if (freeSize < MIN_FREE_BYTES)
 				break nonsliecd;
@@ -525,6 +565,11 @@ DirectByteBufferPoolReal
 		}
 
 		compactSlices();
+
+		if ( slabs != null && slabs.releaseIdleRegions() > 0 ){
+
+			runGarbageCollection();
+		}
 	}
 
 
@@ -0,0 +1,707 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import com.biglybt.core.disk.DiskManager;
+
+/**
+ * Optional slab allocator used by DirectByteBufferPoolReal for block and piece sized buffers.
+ * <p>
+ * Buffers are carved as fixed size slices out of large direct regions. Each thread keeps a small
+ * 'magazine' of free slices per size class so that the common allocate/free path doesn't
+ * synchronize - the shared per-class depot is only locked when a magazine needs to be refilled
+ * or spilled.
+ * <p>
+ * Regions are allocated through the owning pool so that they're subject to its out-of-memory
+ * handling, and their idle slices count towards its free bytes. A region whose slices have all
+ * been back in the depot for a whole compaction period is released.
+ */
+
+final class
+DirectByteBufferSlabAllocator
+	implements AEDiagnosticsEvidenceGenerator
+{
+	private static final int	MAGAZINE_BYTES		= 512*1024;
+	private static final int	MAGAZINE_MAX_SLOTS	= 32;
+	private static final int	MAGAZINE_MIN_SLOTS	= 2;
+
+	private final DirectByteBufferPoolReal	pool;
+
+	private final int				region_size;
+	private final SizeClass[]		classes;
+
+	private final List<ThreadMagazines>	thread_magazines = new ArrayList<>();
+
+	private final ThreadLocal<ThreadMagazines>	tls =
+		new ThreadLocal<ThreadMagazines>()
+		{
+			@Override
+			protected ThreadMagazines
+			initialValue()
+			{
+				ThreadMagazines	result = new ThreadMagazines( Thread.currentThread());
+
+				synchronized( thread_magazines ){
+
+					thread_magazines.add( result );
+				}
+
+				return( result );
+			}
+		};
+
+	protected
+	DirectByteBufferSlabAllocator(
+		DirectByteBufferPoolReal	_pool,
+		int							_region_size )
+	{
+		pool		= _pool;
+		region_size	= _region_size;
+
+		List<Integer>	sizes = new ArrayList<>();
+
+			// 16K blocks plus protocol header, same as the extra pool bucket
+
+		sizes.add( DiskManager.BLOCK_SIZE + 128 );
+
+		for ( int size = 2*DiskManager.BLOCK_SIZE; size <= region_size/4; size <<= 1 ){
+
+			sizes.add( size );
+		}
+
+		classes = new SizeClass[sizes.size()];
+
+		for ( int i=0;i<classes.length;i++){
+
+			classes[i] = new SizeClass( i, sizes.get(i));
+		}
+
+		AEDiagnostics.addEvidenceGenerator( this );
+	}
+
+	private SizeClass
+	getSizeClass(
+		int		length )
+	{
+		for ( SizeClass cla: classes ){
+
+			if ( length <= cla.slice_size ){
+
+				return( cla );
+			}
+		}
+
+		return( null );
+	}
+
+		/**
+		 * @return null if the length isn't handled by the slabs or a region couldn't be allocated,
+		 * in which case the caller should fall back to the normal pools
+		 */
+
+	protected DirectByteBuffer
+	allocate(
+		byte		allocator,
+		int			length )
+	{
+		SizeClass	cla = getSizeClass( length );
+
+		if ( cla == null ){
+
+			return( null );
+		}
+
+		Magazine	mag = tls.get().magazines[ cla.index ];
+
+		if ( mag.count == 0 ){
+
+			if ( !cla.refill( mag )){
+
+				return( null );
+			}
+		}
+
+		int	pos = --mag.count;
+
+		Slice	slice = mag.slots[pos];
+
+		mag.slots[pos] = null;
+
+		mag.allocs++;
+		mag.requested += length;
+
+		return( new slabDBB( pool, allocator, slice, cla.index, length ));
+	}
+
+		/**
+		 * @return false if the buffer didn't originate from the slabs
+		 */
+
+	protected boolean
+	free(
+		DirectByteBuffer	dbb )
+	{
+		if ( !( dbb instanceof slabDBB )){
+
+			return( false );
+		}
+
+		slabDBB	sdbb = (slabDBB)dbb;
+
+		SizeClass	cla = classes[ sdbb.class_index ];
+
+		Magazine	mag = tls.get().magazines[ cla.index ];
+
+		if ( mag.count == mag.slots.length ){
+
+			cla.spill( mag );
+		}
+
+		mag.slots[mag.count++] = sdbb.slice;
+
+		mag.requested -= sdbb.requested;
+
+		return( true );
+	}
+
+		/**
+		 * Returns slices cached by threads that have since died to the depots
+		 */
+
+	protected void
+	reclaimDeadThreads()
+	{
+		List<ThreadMagazines>	dead = new ArrayList<>();
+
+		synchronized( thread_magazines ){
+
+			Iterator<ThreadMagazines>	it = thread_magazines.iterator();
+
+			while( it.hasNext()){
+
+				ThreadMagazines tm = it.next();
+
+				Thread	t = tm.thread.get();
+
+				if ( t == null || !t.isAlive()){
+
+					it.remove();
+
+					dead.add( tm );
+				}
+			}
+		}
+
+		for ( ThreadMagazines tm: dead ){
+
+			for ( Magazine mag: tm.magazines ){
+
+				classes[mag.class_index].reclaim( mag );
+			}
+		}
+	}
+
+		/**
+		 * @return bytes held in slices that are free, whether in the depots or cached by threads
+		 */
+
+	protected long
+	getFreeBytes()
+	{
+		long	total = 0;
+
+		synchronized( thread_magazines ){
+
+			for ( ThreadMagazines tm: thread_magazines ){
+
+				for ( Magazine mag: tm.magazines ){
+
+					total += (long)mag.count * classes[mag.class_index].slice_size;
+				}
+			}
+		}
+
+		for ( SizeClass cla: classes ){
+
+			synchronized( cla ){
+
+				total += (long)cla.depot_count * cla.slice_size;
+			}
+		}
+
+		return( total );
+	}
+
+		/**
+		 * Called periodically by the pool's compaction, releases regions that have been entirely
+		 * in the depot since the previous call
+		 * @return number of bytes released
+		 */
+
+	protected long
+	releaseIdleRegions()
+	{
+		long	total = 0;
+
+		for ( SizeClass cla: classes ){
+
+			total += cla.releaseIdleRegions();
+		}
+
+		return( total );
+	}
+
+	@Override
+	public void
+	generate(
+		IndentWriter		writer )
+	{
+		reclaimDeadThreads();
+
+		writer.println( "DirectByteBuffer Slabs: region size=" + formatKB( region_size ));
+
+		try{
+			writer.indent();
+
+			long	total_reserved	= 0;
+			long	total_in_use	= 0;
+			long	total_requested	= 0;
+
+			for ( SizeClass cla: classes ){
+
+				long	mag_free		= 0;
+				long	requested		= 0;
+				long	allocs			= 0;
+
+				synchronized( thread_magazines ){
+
+					for ( ThreadMagazines tm: thread_magazines ){
+
+						Magazine mag = tm.magazines[ cla.index ];
+
+						mag_free	+= mag.count;
+						requested	+= mag.requested;
+						allocs		+= mag.allocs;
+					}
+				}
+
+				int		regions;
+				long	released;
+				long	carved;
+				int		depot_free;
+				long	high_water;
+
+				synchronized( cla ){
+
+					regions		= cla.regions.size();
+					released	= cla.regions_released;
+					carved		= cla.carved;
+					depot_free	= cla.depot_count;
+					high_water	= cla.high_water;
+
+					requested	+= cla.reclaimed_requested;
+					allocs		+= cla.reclaimed_allocs;
+				}
+
+				if ( regions == 0 && released == 0 ){
+
+					continue;
+				}
+
+				long	in_use = carved - depot_free - mag_free;
+
+				long	in_use_bytes	= in_use * cla.slice_size;
+				long	reserved_bytes	= carved * cla.slice_size;
+
+				total_reserved	+= reserved_bytes;
+				total_in_use	+= in_use_bytes;
+				total_requested	+= requested;
+
+				writer.println(
+					"[" + cla.slice_size + "] regions=" + regions +
+					", released=" + released +
+					", slices=" + carved +
+					", in use=" + in_use +
+					", free(depot)=" + depot_free +
+					", free(threads)=" + mag_free +
+					", high water=" + high_water +
+					", allocs=" + allocs +
+					", internal frag=" + percent( in_use_bytes - requested, in_use_bytes ) +
+					", idle=" + percent( reserved_bytes - in_use_bytes, reserved_bytes ));
+			}
+
+			writer.println(
+				"Total: reserved=" + formatKB( total_reserved ) +
+				", in use=" + formatKB( total_in_use ) +
+				", requested=" + formatKB( total_requested ) +
+				", threads=" + thread_magazines.size());
+
+		}finally{
+
+			writer.exdent();
+		}
+	}
+
+	private static String
+	formatKB(
+		long	bytes )
+	{
+		return( ( bytes / 1024 ) + "KB" );
+	}
+
+	private static String
+	percent(
+		long	num,
+		long	den )
+	{
+		if ( den <= 0 ){
+
+			return( "0%" );
+		}
+
+		return( ( num * 100 / den ) + "%" );
+	}
+
+	private class
+	SizeClass
+	{
+		final int		index;
+		final int		slice_size;
+		final int		slices_per_region;
+		final int		magazine_size;
+
+			// guarded by 'this'
+
+		Slice[]			depot;
+		int				depot_count;
+
+		final List<Region>	regions = new ArrayList<>();
+
+		long			regions_released;
+		long			carved;
+		long			high_water;		// max slices outside of the depot
+
+		long			reclaimed_requested;
+		long			reclaimed_allocs;
+
+		SizeClass(
+			int		_index,
+			int		_slice_size )
+		{
+			index				= _index;
+			slice_size			= _slice_size;
+			slices_per_region	= region_size / slice_size;
+
+			magazine_size	= Math.max( MAGAZINE_MIN_SLOTS, Math.min( MAGAZINE_MAX_SLOTS, MAGAZINE_BYTES / slice_size ));
+
+			depot = new Slice[0];
+		}
+
+		synchronized boolean
+		refill(
+			Magazine	mag )
+		{
+			if ( depot_count == 0 ){
+
+				if ( !addRegion()){
+
+					return( false );
+				}
+			}
+
+				// half fill so that an immediate free doesn't have to spill
+
+			int	num = Math.min( depot_count, Math.max( 1, magazine_size/2 ));
+
+			for ( int i=0;i<num;i++){
+
+				int pos = --depot_count;
+
+				Slice	slice = depot[pos];
+
+				depot[pos] = null;
+
+				slice.region.depot_free--;
+				slice.region.idle = false;
+
+				mag.slots[mag.count++] = slice;
+			}
+
+			updateHighWater();
+
+			return( true );
+		}
+
+		synchronized void
+		spill(
+			Magazine	mag )
+		{
+			int	num = mag.count/2;
+
+			for ( int i=0;i<num;i++){
+
+				int pos = --mag.count;
+
+				toDepot( mag.slots[pos] );
+
+				mag.slots[pos] = null;
+			}
+		}
+
+		synchronized void
+		reclaim(
+			Magazine	mag )
+		{
+			while( mag.count > 0 ){
+
+				int pos = --mag.count;
+
+				toDepot( mag.slots[pos] );
+
+				mag.slots[pos] = null;
+			}
+
+			reclaimed_requested	+= mag.requested;
+			reclaimed_allocs	+= mag.allocs;
+
+			mag.requested	= 0;
+			mag.allocs		= 0;
+		}
+
+		synchronized long
+		releaseIdleRegions()
+		{
+			List<Region>	idle = null;
+
+			for ( Region region: regions ){
+
+				if ( region.depot_free < slices_per_region ){
+
+					region.idle = false;
+
+				}else if ( region.idle ){
+
+						// nothing taken from it for a whole period
+
+					if ( idle == null ){
+
+						idle = new ArrayList<>();
+					}
+
+					idle.add( region );
+
+				}else{
+
+					region.idle = true;
+				}
+			}
+
+			if ( idle == null ){
+
+				return( 0 );
+			}
+
+			regions.removeAll( idle );
+
+			regions_released	+= idle.size();
+			carved				-= (long)idle.size() * slices_per_region;
+
+				// the region's memory goes once the slices are unreferenced
+
+			Slice[]	new_depot = new Slice[ depot.length - idle.size() * slices_per_region ];
+
+			int	num = 0;
+
+			for ( int i=0;i<depot_count;i++){
+
+				Slice	slice = depot[i];
+
+				if ( !idle.contains( slice.region )){
+
+					new_depot[num++] = slice;
+				}
+			}
+
+			depot		= new_depot;
+			depot_count	= num;
+
+			return( (long)idle.size() * slices_per_region * slice_size );
+		}
+
+		private void
+		toDepot(
+			Slice		slice )
+		{
+			depot[depot_count++] = slice;
+
+			slice.region.depot_free++;
+		}
+
+		private boolean
+		addRegion()
+		{
+			ByteBuffer	buffer;
+
+			try{
+					// the pool frees up its own idle buffers and retries if direct memory is short
+
+				buffer = pool.allocateNewBuffer( slices_per_region * slice_size );
+
+			}catch( OutOfMemoryError e ){
+
+				Debug.out( "Slab region allocation for " + slice_size + " failed, reverting to normal allocation" );
+
+				return( false );
+			}
+
+			Region	region = new Region();
+
+			regions.add( region );
+
+			Slice[]	new_depot = new Slice[ depot.length + slices_per_region ];
+
+			System.arraycopy( depot, 0, new_depot, 0, depot_count );
+
+			depot = new_depot;
+
+			for ( int i=0;i<slices_per_region;i++){
+
+				buffer.limit((i+1)*slice_size);
+				buffer.position(i*slice_size);
+
+				toDepot( new Slice( buffer.slice(), region ));
+			}
+
+			carved += slices_per_region;
+
+			return( true );
+		}
+
+		private void
+		updateHighWater()
+		{
+			long	outside = carved - depot_count;
+
+			if ( outside > high_water ){
+
+				high_water = outside;
+			}
+		}
+	}
+
+		/**
+		 * Only the slices refer to their region's memory, so it's freed once the region has been
+		 * released and all of its slices are unreferenced
+		 */
+
+	private static class
+	Region
+	{
+			// guarded by the size class
+
+		int			depot_free;
+		boolean		idle;
+	}
+
+	private static class
+	Slice
+	{
+		final ByteBuffer	buffer;
+		final Region		region;
+
+		Slice(
+			ByteBuffer	_buffer,
+			Region		_region )
+		{
+			buffer	= _buffer;
+			region	= _region;
+		}
+	}
+
+	private class
+	ThreadMagazines
+	{
+		final WeakReference<Thread>	thread;
+		final Magazine[]			magazines;
+
+		ThreadMagazines(
+			Thread		_thread )
+		{
+			thread		= new WeakReference<>( _thread );
+			magazines	= new Magazine[ classes.length ];
+
+			for ( int i=0;i<magazines.length;i++){
+
+				magazines[i] = new Magazine( i, classes[i].magazine_size );
+			}
+		}
+	}
+
+		/**
+		 * Only ever accessed by the owning thread, other than unsynchronized reads of the
+		 * counters for diagnostics and reclaiming after the owner has died
+		 */
+
+	private static class
+	Magazine
+	{
+		final int			class_index;
+		final Slice[]		slots;
+
+		int		count;
+
+		long	allocs;
+		long	requested;		// may go negative if buffers are freed by a different thread
+
+		Magazine(
+			int		_class_index,
+			int		_size )
+		{
+			class_index	= _class_index;
+			slots		= new Slice[ _size ];
+		}
+	}
+
+	private static class
+	slabDBB
+		extends DirectByteBuffer
+	{
+		final Slice		slice;
+		final int		class_index;
+		final int		requested;
+
+		slabDBB(
+			DirectByteBufferPool	_pool,
+			byte					_allocator,
+			Slice					_slice,
+			int						_class_index,
+			int						_requested )
+		{
+			super( _allocator, _slice.buffer, _pool );
+
+			slice		= _slice;
+			class_index	= _class_index;
+			requested	= _requested;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A range of file data that a capable transport can write straight to its channel
+ * (sendfile) rather than it first being read into a DirectByteBuffer.
+ */
+
+public interface
+FileRegion
+{
+	public int
+	getLength();
+
+	public int
+	remaining();
+
+		/**
+		 * Writes up to max_bytes of the remaining data to the channel
+		 * @return bytes written, can be 0 if the channel is full
+		 */
+
+	public long
+	transferTo(
+		WritableByteChannel		channel,
+		int						max_bytes )
+
+		throws IOException;
+
+		/**
+		 * Releases any resources held, must be called whether or not the region was sent in full.
+		 * Subsequent calls are ignored
+		 */
+
+	public void
+	release();
+}
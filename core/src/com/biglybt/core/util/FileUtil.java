@@ -20,6 +20,8 @@
 package com.biglybt.core.util;
 
 import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
@@ -4520,6 +4522,88 @@ public class FileUtil {
 		return fileHandling.containsPathSegment(f, path, caseSensitive);
 	}
 
+		/**
+		 * Releases a mapped buffer's mapping straight away rather than leaving it to the garbage collector.
+		 * The buffer must not be used afterwards
+		 */
+
+	public static void
+	unmap(
+		ByteBuffer	buffer )
+	{
+		if ( buffer == null || !buffer.isDirect()){
+
+			return;
+		}
+
+		try{
+			if ( Unmapper.invoke_cleaner_method != null ){
+
+				Unmapper.invoke_cleaner_method.invoke( Unmapper.unsafe, buffer );
+
+			}else if ( Unmapper.cleaner_method != null ){
+
+				Object	cleaner = Unmapper.cleaner_method.invoke( buffer );
+
+				if ( cleaner != null ){
+
+					Unmapper.clean_method.invoke( cleaner );
+				}
+			}
+		}catch( Throwable e ){
+
+			Debug.out( e );
+		}
+	}
+
+	private static final class
+	Unmapper
+	{
+		static final Method		cleaner_method;
+		static final Method		clean_method;
+		static final Method		invoke_cleaner_method;
+		static final Object		unsafe;
+
+		static{
+			Method	_cleaner			= null;
+			Method	_clean				= null;
+			Method	_invoke_cleaner		= null;
+			Object	_unsafe				= null;
+
+			try{
+					// java 9+
+
+				Class<?> unsafe_class = Class.forName( "sun.misc.Unsafe" );
+
+				_invoke_cleaner = unsafe_class.getMethod( "invokeCleaner", ByteBuffer.class );
+
+				Field f = unsafe_class.getDeclaredField( "theUnsafe" );
+
+				f.setAccessible( true );
+
+				_unsafe = f.get( null );
+
+			}catch( Throwable e ){
+
+				_invoke_cleaner = null;
+
+				try{
+					_cleaner	= Class.forName( "sun.nio.ch.DirectBuffer" ).getMethod( "cleaner" );
+					_clean		= Class.forName( "sun.misc.Cleaner" ).getMethod( "clean" );
+
+				}catch( Throwable f ){
+
+						// mappings will be released by the garbage collector
+				}
+			}
+
+			cleaner_method			= _cleaner;
+			clean_method			= _clean;
+			invoke_cleaner_method	= _invoke_cleaner;
+			unsafe					= _unsafe;
+		}
+	}
+
 	/**
 	 * @return path string relative to <code>parentDir</code>. 
 	 *         <code>null</code> if file is not in parentDir.
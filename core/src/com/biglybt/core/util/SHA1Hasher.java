@@ -147,7 +147,7 @@ SHA1Hasher
 		DigestImpl()
 			throws NoSuchAlgorithmException
 		{
-			md = MessageDigest.getInstance( "SHA-1" );
+			md = DigestProviderSelector.getInstance( "SHA-1" );
 		}
 		
 		public byte[] 
@@ -40,7 +40,7 @@ public class Timer
 
 	private ThreadPool<TimerEvent>	thread_pool;
 
-	private Set<TimerEvent>	events = new TreeSet<>();
+	private final TimerWheel	events = new TimerWheel();
 
 	private long	unique_id_next	= 0;
 
@@ -121,9 +121,7 @@ public class Timer
 			
 		}else{
 			
-			TimerEvent ev = events.iterator().next();
-		
-			long lag = SystemTime.getCurrentTime()-ev.getWhen();
+			long lag = SystemTime.getCurrentTime()-events.getNextWhen();
 		
 			if ( lag < 0 ){
 			
@@ -145,27 +143,29 @@ public class Timer
 	public synchronized List<TimerEvent>
 	getEvents()
 	{
-		return(new ArrayList<>(events));
+		List<TimerEvent>	result = events.getEvents();
+		
+		Collections.sort( result );
+		
+		return( result );
 	}
 	
 	public synchronized List<TimerEvent>
 	getEvents(
 		long	up_to_when )
 	{
-		List<TimerEvent>	result = new ArrayList<>( events.size());
+		List<TimerEvent>	result = new ArrayList<>();
 				
-		for ( TimerEvent ev: events ){
+		for ( TimerEvent ev: events.getEvents()){
 			
 			if ( ev.getWhen() < up_to_when ){
 				
 				result.add( ev );
-				
-			}else{
-				
-				break;
 			}
 		}
 		
+		Collections.sort( result );
+		
 		return( result );
 	}
 	
@@ -182,14 +182,12 @@ public class Timer
 	{
 		int	result = 0;
 		
-		for ( TimerEvent ev: events ){
+		for ( TimerEvent ev: events.getEvents()){
 			
-			if ( ev.getWhen() >= up_to_when ){
+			if ( ev.getWhen() < up_to_when ){
 			
-				break;
+				result++;
 			}
-			
-			result++;
 		}
 		
 		return( result );
@@ -235,11 +233,11 @@ public class Timer
 	public void
 	runSupport()
 	{
+		List<TimerEvent>	events_to_run = new ArrayList<>();
+
 		while( true ){
 
 			try{
-				TimerEvent	event_to_run = null;
-
 				synchronized(this){
 
 					if ( destroyed ){
@@ -264,9 +262,7 @@ public class Timer
 
 						long	now = SystemTime.getCurrentTime();
 
-						TimerEvent	next_event = (TimerEvent)events.iterator().next();
-
-						long	when = next_event.getWhen();
+						long	when = events.getNextWhen();
 
 						long	delay = when - now;
 
@@ -296,46 +292,51 @@ public class Timer
 						continue;
 					}
 
+						// everything due within the clock granularity is dispatched as a batch
+
 					long	now = SystemTime.getCurrentTime();
 
-					Iterator<TimerEvent>	it = events.iterator();
+					events.getDue( now + SystemTime.TIME_GRANULARITY_MILLIS, events_to_run );
 
-					TimerEvent	next_event = it.next();
+					// System.out.println( getName() +": events=" + events.size() + ", to_run=" + events_to_run.size());
+				}
 
-					long rem = next_event.getWhen() - now;
+				if ( events_to_run.size() > 1 ){
 
-					if ( rem <= SystemTime.TIME_GRANULARITY_MILLIS ){
+					Collections.sort( events_to_run );
+				}
 
-						event_to_run = next_event;
+				for ( TimerEvent event_to_run: events_to_run ){
 
-						it.remove();
+						// may have been cancelled while earlier members of the batch were dispatched
 
-						/*
-						if ( rem < -100 ){
+					if ( event_to_run.isCancelled()){
 
-							System.out.println( "Late scheduling [" + (-rem) + "] of " + event_to_run.getString());
-						}
-						*/
+						continue;
 					}
 
-					// System.out.println( getName() +": events=" + events.size() + ", to_run=" +  (event_to_run==null?"null":event_to_run.getString()));
-				}
+					try{
+						event_to_run.setHasRun();
 
-				if ( event_to_run != null ){
+						if ( log ){
 
-					event_to_run.setHasRun();
+							System.out.println( "running: " + event_to_run.getString() );
+						}
 
-					if ( log ){
-						
-						System.out.println( "running: " + event_to_run.getString() );
+						event_to_run.execute();
+
+					}catch( Throwable e ){
+
+						Debug.printStackTrace( e );
 					}
-					
-					event_to_run.execute();
 				}
-
 			}catch( Throwable e ){
 
 				Debug.printStackTrace( e );
+
+			}finally{
+
+				events_to_run.clear();
 			}
 		}
 	}
@@ -359,13 +360,7 @@ public class Timer
 
 			synchronized( this ){
 
-				Iterator<TimerEvent>	it = events.iterator();
-
-				List<TimerEvent>	updated_events = new ArrayList<>(events.size());
-
-				while (it.hasNext()){
-
-					TimerEvent	event = (TimerEvent)it.next();
+				for ( TimerEvent event: events.getEvents()){
 
 						// absolute events don't have their timings fiddled with
 
@@ -407,15 +402,11 @@ public class Timer
 							event.setWhen( new_when );
 						}
 					}
-
-					updated_events.add( event );
 				}
 
-					// resort - we have to use an alternative list of events as input because if we just throw the
-					// treeset in the constructor optimises things under the assumption that the original set
-					// was correctly sorted...
+					// re-place everything against the new time
 
-				events = new TreeSet<>(updated_events);
+				events.rebuild( current_time );
 			}
 		}
 	}
@@ -435,13 +426,9 @@ public class Timer
 
 			synchronized( this ){
 
-				Iterator<TimerEvent>	it = events.iterator();
-
 				boolean	updated = false;
 
-				while ( it.hasNext()){
-
-					TimerEvent	event = (TimerEvent)it.next();
+				for ( TimerEvent event: events.getEvents()){
 
 						// absolute events don't have their timings fiddled with
 
@@ -475,7 +462,7 @@ public class Timer
 
 				if ( updated ){
 
-					events = new TreeSet<>(new ArrayList<>(events));
+					events.rebuild( current_time );
 				}
 
 				// must have this notify here as the scheduling code uses the current time to calculate
@@ -494,15 +481,7 @@ public class Timer
 
 		synchronized (this) {
 
-				// as we're adjusting all events by the same amount the ordering remains valid
-
-			Iterator<TimerEvent> it = events.iterator();
-
-			boolean resort = false;
-
-			while (it.hasNext()) {
-
-				TimerEvent event = it.next();
+			for ( TimerEvent event: events.getEvents()){
 
 				long old_when = event.getWhen();
 				long new_when = old_when + offset;
@@ -513,8 +492,6 @@ public class Timer
 
 					// Debug.out( "Ignoring wrap around for " + event.getName());
 
-					resort = true;
-
 				}else{
 
 					// System.out.println( "    adjusted: " + old_when + " -> " + new_when );
@@ -523,10 +500,9 @@ public class Timer
 				}
 			}
 
-			if ( resort ){
+				// wheel positions depend on the event times
 
-				events = new TreeSet<>(new ArrayList<>(events));
-			}
+			events.rebuild( SystemTime.getCurrentTime());
 
 			notify();
 		}
@@ -698,9 +674,7 @@ public class Timer
 	cancelEvent(
 		TimerEvent	event )
 	{
-		if ( events.contains( event )){
-
-			events.remove( event );
+		if ( events.remove( event )){
 
 			// System.out.println( "event cancelled (" + event.getWhen() + ") - queue = " + events.size());
 
@@ -752,11 +726,7 @@ public class Timer
 	{
 		System.out.println( "Timer '" + thread_pool.getName() + "': dump" );
 
-		Iterator<TimerEvent>	it = events.iterator();
-
-		while(it.hasNext()){
-
-			TimerEvent	ev = it.next();
+		for ( TimerEvent ev: getEvents()){
 
 			System.out.println( "\t" + ev.getString());
 		}
@@ -45,6 +45,12 @@ TimerEvent
 
 	private volatile long exec_start = -1;
 
+		// slot membership, maintained by the owning timer's TimerWheel under the timer's monitor
+
+	TimerEvent		wheel_next;
+	TimerEvent		wheel_prev;
+	int				wheel_slot	= -1;
+
 	protected
 	TimerEvent(
 		Timer					_timer,
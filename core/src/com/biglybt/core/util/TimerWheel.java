@@ -0,0 +1,489 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel holding the pending events of a {@link Timer}.
+ * <p>
+ * Time is divided into ticks. The first level has a slot per tick for the next 256 ticks, each further
+ * level has 64 slots each covering a whole revolution of the level below. Events beyond the top level
+ * go into an overflow slot. When the wheel crosses a revolution the corresponding slot of the level
+ * above is cascaded down. Events are intrusively linked into their slot so adding and removing are
+ * O(1). Occupancy bitmaps are used to locate the next non-empty slot.
+ * <p>
+ * Not thread safe, the Timer's monitor protects it.
+ */
+
+final class
+TimerWheel
+{
+	private static final int	TICK_SHIFT		= 4;		// 16ms ticks, below SystemTime.TIME_GRANULARITY_MILLIS
+
+	private static final int	L0_BITS			= 8;
+	private static final int	LN_BITS			= 6;		// one bitmap word per upper level
+	private static final int	LEVELS			= 4;
+
+	private static final int	L0_SLOTS		= 1 << L0_BITS;
+	private static final int	LN_SLOTS		= 1 << LN_BITS;
+
+	private static final int	OVERFLOW_SLOT	= L0_SLOTS + ( LEVELS - 1 ) * LN_SLOTS;
+
+		// stepping the wheel over a long idle period or a clock jump is more expensive than
+		// re-placing the events
+
+	private static final long	REBUILD_GAP		= 1L << 20;
+
+	private final TimerEvent[]	slots		= new TimerEvent[ OVERFLOW_SLOT + 1 ];
+	private final long[]		occupied	= new long[ OVERFLOW_SLOT/64 + 1 ];
+
+	private long	current;		// events in earlier ticks have all been handed out
+	private int		size;
+
+	protected void
+	add(
+		TimerEvent		event )
+	{
+		insert( event );
+
+		size++;
+	}
+
+	protected boolean
+	remove(
+		TimerEvent		event )
+	{
+		if ( event.wheel_slot < 0 ){
+
+			return( false );
+		}
+
+		unlink( event );
+
+		size--;
+
+		return( true );
+	}
+
+	protected int
+	size()
+	{
+		return( size );
+	}
+
+	protected boolean
+	isEmpty()
+	{
+		return( size == 0 );
+	}
+
+		/**
+		 * @return all events, unsorted
+		 */
+
+	protected List<TimerEvent>
+	getEvents()
+	{
+		List<TimerEvent>	result = new ArrayList<>( size );
+
+		for ( TimerEvent head: slots ){
+
+			for ( TimerEvent event = head; event != null; event = event.wheel_next ){
+
+				result.add( event );
+			}
+		}
+
+		return( result );
+	}
+
+		/**
+		 * Re-places all events, required after their times have been changed in place
+		 */
+
+	protected void
+	rebuild(
+		long		now )
+	{
+		List<TimerEvent>	events = getEvents();
+
+		for ( int i=0;i<slots.length;i++){
+
+			slots[i] = null;
+		}
+
+		for ( int i=0;i<occupied.length;i++){
+
+			occupied[i] = 0;
+		}
+
+		current = now >> TICK_SHIFT;
+
+		for ( TimerEvent event: events ){
+
+			event.wheel_slot = -1;
+
+			insert( event );
+		}
+	}
+
+		/**
+		 * @return time of the earliest event, Long.MAX_VALUE if none
+		 */
+
+	protected long
+	getNextWhen()
+	{
+		long	best = Long.MAX_VALUE;
+
+		if ( size == 0 ){
+
+			return( best );
+		}
+
+			// first level slots are in tick order starting from the current one
+
+		int	start	= (int)( current & ( L0_SLOTS - 1 ));
+		int	slot	= nextSetBit( start, L0_SLOTS - 1 );
+
+		if ( slot < 0 && start > 0 ){
+
+			slot = nextSetBit( 0, start - 1 );
+		}
+
+		if ( slot >= 0 ){
+
+			best = getEarliest( slot, best );
+		}
+
+			// the first occupied slot of each upper level holds that level's earliest events
+
+		for ( int level=1;level<LEVELS;level++){
+
+			int		shift	= L0_BITS + ( level - 1 ) * LN_BITS;
+			long	unit	= ( current >> shift ) + 1;
+			long	word	= occupied[( L0_SLOTS >> 6 ) + level - 1 ];
+
+			if ( word == 0 ){
+
+				continue;
+			}
+
+			int	first = (int)( unit & ( LN_SLOTS - 1 ));
+			int	skip	= Long.numberOfTrailingZeros( Long.rotateRight( word, first ));
+
+			long	range_start = (( unit + skip ) << shift ) << TICK_SHIFT;
+
+			if ( range_start < best ){
+
+				best = getEarliest( L0_SLOTS + ( level - 1 ) * LN_SLOTS + (( first + skip ) & ( LN_SLOTS - 1 )), best );
+			}
+		}
+
+		if ( slots[ OVERFLOW_SLOT ] != null ){
+
+			best = getEarliest( OVERFLOW_SLOT, best );
+		}
+
+		return( best );
+	}
+
+		/**
+		 * Removes the events due at or before 'limit' and adds them to 'result', unordered
+		 */
+
+	protected void
+	getDue(
+		long				limit,
+		List<TimerEvent>	result )
+	{
+		long	target = limit >> TICK_SHIFT;
+
+		if ( size == 0 ){
+
+			if ( target > current ){
+
+				current = target;
+			}
+
+			return;
+		}
+
+		if ( target - current > REBUILD_GAP ){
+
+			rebuild( limit );
+		}
+
+		while( true ){
+
+			drain((int)( current & ( L0_SLOTS - 1 )), limit, result );
+
+			if ( current >= target ){
+
+				break;
+			}
+
+			long	boundary = (( current >> L0_BITS ) + 1 ) << L0_BITS;
+
+			long	next = nextTick( current + 1, Math.min( target, boundary - 1 ));
+
+			if ( next >= 0 ){
+
+				current = next;
+
+			}else if ( boundary > target ){
+
+				current = target;
+
+			}else{
+
+				current = boundary;
+
+				cascade( boundary );
+			}
+		}
+	}
+
+	private void
+	insert(
+		TimerEvent		event )
+	{
+		long	tick	= Math.max( event.getWhen() >> TICK_SHIFT, current );
+		long	delta	= tick - current;
+
+		int	slot;
+
+		if ( delta < L0_SLOTS ){
+
+			slot = (int)( tick & ( L0_SLOTS - 1 ));
+
+		}else{
+
+			slot = OVERFLOW_SLOT;
+
+			for ( int level=1;level<LEVELS;level++){
+
+				int	shift = L0_BITS + ( level - 1 ) * LN_BITS;
+
+				if ( delta < 1L << ( shift + LN_BITS )){
+
+					slot = L0_SLOTS + ( level - 1 ) * LN_SLOTS + (int)(( tick >> shift ) & ( LN_SLOTS - 1 ));
+
+					break;
+				}
+			}
+		}
+
+		TimerEvent	head = slots[slot];
+
+		event.wheel_prev	= null;
+		event.wheel_next	= head;
+		event.wheel_slot	= slot;
+
+		if ( head != null ){
+
+			head.wheel_prev = event;
+		}
+
+		slots[slot] = event;
+
+		occupied[ slot >> 6 ] |= 1L << ( slot & 63 );
+	}
+
+	private void
+	unlink(
+		TimerEvent		event )
+	{
+		int	slot = event.wheel_slot;
+
+		TimerEvent	prev = event.wheel_prev;
+		TimerEvent	next = event.wheel_next;
+
+		if ( prev == null ){
+
+			slots[slot] = next;
+
+		}else{
+
+			prev.wheel_next = next;
+		}
+
+		if ( next != null ){
+
+			next.wheel_prev = prev;
+		}
+
+		if ( slots[slot] == null ){
+
+			occupied[ slot >> 6 ] &= ~( 1L << ( slot & 63 ));
+		}
+
+		event.wheel_prev	= null;
+		event.wheel_next	= null;
+		event.wheel_slot	= -1;
+	}
+
+	private void
+	drain(
+		int					slot,
+		long				limit,
+		List<TimerEvent>	result )
+	{
+		TimerEvent	event = slots[slot];
+
+		while( event != null ){
+
+			TimerEvent	next = event.wheel_next;
+
+			if ( event.getWhen() <= limit ){
+
+				unlink( event );
+
+				size--;
+
+				result.add( event );
+			}
+
+			event = next;
+		}
+	}
+
+		/**
+		 * Called when the wheel enters a new first level revolution
+		 */
+
+	private void
+	cascade(
+		long	tick )
+	{
+		int	top = 1;
+
+		while( top < LEVELS && (( tick >> ( L0_BITS + ( top - 1 ) * LN_BITS )) & ( LN_SLOTS - 1 )) == 0 ){
+
+			top++;
+		}
+
+		if ( top == LEVELS ){
+
+			reinsert( OVERFLOW_SLOT );
+
+			top = LEVELS - 1;
+		}
+
+		for ( int level=top;level>=1;level-- ){
+
+			int	shift = L0_BITS + ( level - 1 ) * LN_BITS;
+
+			reinsert( L0_SLOTS + ( level - 1 ) * LN_SLOTS + (int)(( tick >> shift ) & ( LN_SLOTS - 1 )));
+		}
+	}
+
+	private void
+	reinsert(
+		int		slot )
+	{
+		TimerEvent	event = slots[slot];
+
+		if ( event == null ){
+
+			return;
+		}
+
+		slots[slot] = null;
+
+		occupied[ slot >> 6 ] &= ~( 1L << ( slot & 63 ));
+
+		while( event != null ){
+
+			TimerEvent	next = event.wheel_next;
+
+			insert( event );
+
+			event = next;
+		}
+	}
+
+	private long
+	getEarliest(
+		int		slot,
+		long	best )
+	{
+		for ( TimerEvent event = slots[slot]; event != null; event = event.wheel_next ){
+
+			long	when = event.getWhen();
+
+			if ( when < best ){
+
+				best = when;
+			}
+		}
+
+		return( best );
+	}
+
+		/**
+		 * @return first occupied tick in [from,to], which must lie within a single first level revolution, or -1
+		 */
+
+	private long
+	nextTick(
+		long	from,
+		long	to )
+	{
+		if ( from > to ){
+
+			return( -1 );
+		}
+
+		int	first	= (int)( from & ( L0_SLOTS - 1 ));
+		int	slot	= nextSetBit( first, (int)( to & ( L0_SLOTS - 1 )));
+
+		return( slot<0?-1:( from + slot - first ));
+	}
+
+	private int
+	nextSetBit(
+		int		from,
+		int		to )
+	{
+		int		word	= from >> 6;
+		long	bits	= occupied[word] & ( -1L << ( from & 63 ));
+
+		while( true ){
+
+			if ( bits != 0 ){
+
+				int	bit = ( word << 6 ) + Long.numberOfTrailingZeros( bits );
+
+				return( bit<=to?bit:-1 );
+			}
+
+			word++;
+
+			if (( word << 6 ) > to ){
+
+				return( -1 );
+			}
+
+			bits = occupied[word];
+		}
+	}
+}
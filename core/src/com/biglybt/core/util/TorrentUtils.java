@@ -2013,6 +2013,20 @@ TorrentUtils
 		return( m );
 	}
 
+		/**
+		 * The property maps are updated in place, setting the map again lets torrent listeners
+		 * (e.g. the download state journal) know that it has changed
+		 */
+
+	private static void
+	azureusPropertiesChanged(
+		TOTorrent	torrent,
+		String		key,
+		Map			m )
+	{
+		torrent.setAdditionalMapProperty( key, m );
+	}
+
 	private static String
 	getContentMapString(
 		TOTorrent	torrent,
@@ -2096,6 +2110,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 
 	public static String
@@ -2141,6 +2157,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 
 	public static String
@@ -2179,6 +2197,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 
 	public static List<String>
@@ -2238,6 +2258,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 
 	public static List<String>
@@ -2289,6 +2311,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 
 	public static List<String>
@@ -2340,6 +2364,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 	
 	public static Map<String,Object>
@@ -2500,6 +2526,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 	
 	public static byte[]
@@ -2539,6 +2567,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 	
 	public static Map
@@ -2578,6 +2608,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 	
 	public static Map
@@ -2636,6 +2668,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 
 	public static void
@@ -2651,6 +2685,8 @@ TorrentUtils
 
 			Debug.printStackTrace(e);
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PRIVATE_PROPERTIES, m );
 	}
 
 	public static Map
@@ -2693,6 +2729,8 @@ TorrentUtils
 		}
 
 		m.put( TORRENT_AZ_PROP_TORRENT_FLAGS, new Long(flags.intValue() | flag ));
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PROPERTIES, m );
 	}
 
 	public static boolean
@@ -2788,6 +2826,8 @@ TorrentUtils
 
 			p.put( name, value.getBytes());
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PROPERTIES, m );
 	}
 
 	public static String
@@ -2845,6 +2885,8 @@ TorrentUtils
 
 			p.put( name, value );
 		}
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PROPERTIES, m );
 	}
 
 	public static Map
@@ -2879,6 +2921,8 @@ TorrentUtils
 		Map	m = getAzureusProperties( torrent );
 
 		m.put( TORRENT_AZ_PROP_DHT_BACKUP_ENABLE, new Long(enabled?1:0));
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PROPERTIES, m );
 	}
 
 	public static boolean
@@ -2925,6 +2969,8 @@ TorrentUtils
 		Map	m = getAzureusProperties( torrent );
 
 		m.put( TORRENT_AZ_PROP_DHT_BACKUP_REQUESTED, new Long(requested?1:0));
+
+		azureusPropertiesChanged( torrent, TOTorrent.AZUREUS_PROPERTIES, m );
 	}
 
 
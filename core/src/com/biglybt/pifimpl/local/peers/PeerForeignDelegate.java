@@ -75,6 +75,7 @@ PeerForeignDelegate
 	private int		consecutive_no_requests;
 
 	private BitFlags	bit_flags;
+	private boolean[]	bit_flags_source;
 
 	private boolean		priority_connection;
 
@@ -576,9 +577,10 @@ PeerForeignDelegate
 
 		if ( flags != null ){
 
-			if ( bit_flags == null || bit_flags.flags != flags ){
+			if ( bit_flags == null || bit_flags_source != flags ){
 
-				bit_flags = new BitFlags( flags );
+				bit_flags			= new BitFlags( flags );
+				bit_flags_source	= flags;
 			}
 		}
 
@@ -217,7 +217,7 @@ PeerImpl
 		if ( bf == null ){
 			return( null );
 		}
-		return( bf.flags );
+		return( bf.toBooleanArray());
 	}
 
 	@Override
@@ -677,13 +677,13 @@ PeerImpl
 				@Override
 				public void addAvailability(final PEPeer peer, BitFlags peerHavePieces)
 				{
-					fireEvent( PeerEvent.ET_ADD_AVAILABILITY,peerHavePieces.flags );
+					fireEvent( PeerEvent.ET_ADD_AVAILABILITY,peerHavePieces.toBooleanArray());
 				}
 
 				@Override
 				public void removeAvailability(final PEPeer peer, BitFlags peerHavePieces)
 				{
-					fireEvent( PeerEvent.ET_REMOVE_AVAILABILITY,peerHavePieces.flags );
+					fireEvent( PeerEvent.ET_REMOVE_AVAILABILITY,peerHavePieces.toBooleanArray());
 				}
 				protected void
 				fireEvent(
@@ -474,6 +474,10 @@ DHTPluginImpl
 				   	",div_f=" + dbv_details[DHTDBStats.VD_DIV_FREQ]+
 				   	",div_s=" + dbv_details[DHTDBStats.VD_DIV_SIZE] );
 
+		log.log(	"Latency" +
+					":get=" + getLatencyPercentiles( d_stats.getLatencyHistogram( DHTDBStats.LT_GET )) +
+					",store=" + getLatencyPercentiles( d_stats.getLatencyHistogram( DHTDBStats.LT_STORE )));
+
 		DHTNATPuncher np = dht.getNATPuncher();
 
 		if ( np != null ){
@@ -481,6 +485,53 @@ DHTPluginImpl
 		}
 	}
 
+		/**
+		 * @return the bucket upper bounds, in microseconds, below which 50% and 99% of operations completed
+		 */
+
+	private static String
+	getLatencyPercentiles(
+		long[]		buckets )
+	{
+		long	total = 0;
+
+		for ( long b: buckets ){
+
+			total += b;
+		}
+
+		if ( total == 0 ){
+
+			return( "n/a" );
+		}
+
+		long	p50 = -1;
+		long	p99 = -1;
+
+		long	seen = 0;
+
+		for ( int i=0;i<buckets.length;i++){
+
+			seen += buckets[i];
+
+			long	bound = 1L << i;
+
+			if ( p50 < 0 && seen*100 >= total*50 ){
+
+				p50 = bound;
+			}
+
+			if ( p99 < 0 && seen*100 >= total*99 ){
+
+				p99 = bound;
+
+				break;
+			}
+		}
+
+		return( "p50<" + p50 + "us,p99<" + p99 + "us,n=" + total );
+	}
+
 	protected File
 	getDataDir(
 		int		network )
@@ -19,6 +19,9 @@
 
 package com.biglybt.plugin.extseed.impl;
 
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URL;
 import java.util.*;
 
 import com.biglybt.core.config.COConfigurationManager;
@@ -26,6 +29,7 @@ import com.biglybt.core.config.ConfigKeys;
 import com.biglybt.core.config.ParameterListener;
 import com.biglybt.core.config.impl.TransferSpeedValidator;
 import com.biglybt.core.networkmanager.Transport;
+import com.biglybt.core.proxy.AEProxySelectorFactory;
 import com.biglybt.core.torrent.TOTorrent;
 import com.biglybt.core.util.*;
 import com.biglybt.pif.PluginInterface;
@@ -40,6 +44,7 @@ import com.biglybt.pif.utils.Semaphore;
 import com.biglybt.pifimpl.local.PluginCoreUtils;
 import com.biglybt.plugin.extseed.*;
 import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloaderListener;
+import com.biglybt.plugin.extseed.util.ExternalSeedHTTPPipeline;
 
 public abstract class
 ExternalSeedReaderImpl
@@ -105,6 +110,9 @@ ExternalSeedReaderImpl
 
 	private ExternalSeedReaderRequest	active_read_request;
 
+	private AESemaphore					pipeline_slots;
+	private List<PeerReadRequest>		pipelined_requests	= new ArrayList<>();
+
 	private int[]		priority_offsets;
 
 	private boolean		ws_fast_activate;
@@ -745,7 +753,7 @@ ExternalSeedReaderImpl
 
 						if ( requests.size() == 0 ){
 
-							dangling_requests = null;
+							dangling_requests = pipelined_requests.isEmpty()?null:new ArrayList<>( pipelined_requests );
 
 							request_thread	= null;
 
@@ -807,7 +815,9 @@ ExternalSeedReaderImpl
 							}
 						}
 
-						dangling_requests = new ArrayList<>(selected_requests);
+						dangling_requests = new ArrayList<>( pipelined_requests );
+
+						dangling_requests.addAll( selected_requests );
 
 					}finally{
 
@@ -904,6 +914,19 @@ ExternalSeedReaderImpl
 		return( rate_bytes_permitted );
 	}
 
+		/**
+		 * Non-blocking version for the pipelined client
+		 */
+
+	protected int
+	getPermittedBytesNoWait()
+	{
+		synchronized( rate_sem ){
+
+			return( rate_bytes_permitted );
+		}
+	}
+
 	public void
 	reportBytesRead(
 		int		num )
@@ -1231,6 +1254,274 @@ ExternalSeedReaderImpl
 
 		throws ExternalSeedException;
 
+		/**
+		 * Creates the pipelined client for a seed when it can be used: plain HTTP to a public
+		 * address without a proxy. The seed's "connections" and "pipeline" parameters override the
+		 * configured connection count and pipeline depth
+		 * @return null if requests should be made with the blocking downloaders
+		 */
+
+	protected ExternalSeedHTTPPipeline
+	createPipeline(
+		URL			url,
+		Map			params )
+	{
+		if ( !COConfigurationManager.getBooleanParameter( ConfigKeys.Connection.BCFG_WEBSEED_PIPELINE_ENABLE )){
+
+			return( null );
+		}
+
+		int	connections	= getIntParam( params, "connections", COConfigurationManager.getIntParameter( ConfigKeys.Connection.ICFG_WEBSEED_PIPELINE_CONNECTIONS ));
+		int	depth		= getIntParam( params, "pipeline", COConfigurationManager.getIntParameter( ConfigKeys.Connection.ICFG_WEBSEED_PIPELINE_DEPTH ));
+
+		if ( connections <= 0 || depth <= 0 ){
+
+			return( null );
+		}
+
+		if ( 	!url.getProtocol().equalsIgnoreCase( "http" ) ||
+				host_net != AENetworkClassifier.AT_PUBLIC ){
+
+			return( null );
+		}
+
+		if ( !isDirectConnection( url )){
+
+			return( null );
+		}
+
+		return(
+			new ExternalSeedHTTPPipeline(
+				url,
+				getUserAgent(),
+				connections,
+				depth,
+				new ExternalSeedHTTPPipeline.RateSource()
+				{
+					@Override
+					public int
+					getPermittedBytes()
+					{
+						return( getPermittedBytesNoWait());
+					}
+				}));
+	}
+
+		/**
+		 * The pipeline connects directly so must never be used when the blocking downloaders would
+		 * have gone through an HTTP or SOCKS proxy. Checked per request as proxy settings can change
+		 */
+
+	private boolean
+	isDirectConnection(
+		URL		url )
+	{
+		for ( String prop: new String[]{ "http.proxyHost", "socksProxyHost" }){
+
+			String	proxy = System.getProperty( prop );
+
+			if ( proxy != null && proxy.trim().length() > 0 ){
+
+				return( false );
+			}
+		}
+
+		try{
+			if ( AEProxySelectorFactory.getSelector().getActiveProxy() != null ){
+
+				return( false );
+			}
+
+			ProxySelector	selector = ProxySelector.getDefault();
+
+			if ( selector != null ){
+
+				for ( Proxy proxy: selector.select( url.toURI())){
+
+					if ( proxy.type() != Proxy.Type.DIRECT ){
+
+						return( false );
+					}
+				}
+			}
+
+			return( true );
+
+		}catch( Throwable e ){
+
+			Debug.out( e );
+
+			return( false );
+		}
+	}
+
+	protected ExternalSeedHTTPPipeline
+	getPipeline()
+	{
+		return( null );
+	}
+
+		/**
+		 * Adds the HTTP requests that fetch the given data to a pipelined transfer
+		 * @return false if the data can't be fetched this way
+		 */
+
+	protected boolean
+	addPipelineSegments(
+		ExternalSeedHTTPPipeline.Transfer	transfer,
+		int									piece_number,
+		int									piece_offset,
+		int									length )
+
+		throws ExternalSeedException
+	{
+		return( false );
+	}
+
+		/**
+		 * Hands the requests to the pipelined client without waiting for them to complete, blocks
+		 * while the client already has as many as it can usefully handle
+		 * @return false if the pipeline couldn't be used
+		 */
+
+	private boolean
+	processRequestsPipelined(
+		ExternalSeedHTTPPipeline		pipeline,
+		final ExternalSeedReaderRequest	request,
+		final List<PeerReadRequest>		requests )
+	{
+		if ( pipeline_slots == null ){
+
+			pipeline_slots = new AESemaphore( "ExternalSeedReaderPipeline", pipeline.getMaxOutstanding());
+		}
+
+		ExternalSeedHTTPPipeline.Transfer	transfer =
+			new ExternalSeedHTTPPipeline.Transfer(
+				request,
+				new ExternalSeedHTTPPipeline.TransferListener()
+				{
+					@Override
+					public void
+					complete(
+						ExternalSeedHTTPPipeline.Transfer	transfer )
+					{
+						pipelineComplete( request, requests, null );
+					}
+
+					@Override
+					public void
+					failed(
+						ExternalSeedHTTPPipeline.Transfer	transfer,
+						ExternalSeedException				error )
+					{
+						if ( transfer.getLastResponse() == 503 && transfer.getLast503RetrySecs() >= 0 ){
+
+							int	retry_secs = transfer.getLast503RetrySecs();
+
+							setReconnectDelay( retry_secs * 1000, true );
+
+							error = new ExternalSeedException( "Server temporarily unavailable, retrying in " + retry_secs + " seconds" );
+						}
+
+						pipelineComplete( request, requests, error );
+					}
+				},
+				isTransient());
+
+		try{
+			if ( !addPipelineSegments( transfer, request.getStartPieceNumber(), request.getStartPieceOffset(), request.getLength())){
+
+				return( false );
+			}
+		}catch( ExternalSeedException e ){
+
+			return( false );
+		}
+
+		pipeline_slots.reserve();
+
+		if ( !pipeline.isUsable()){
+
+			pipeline_slots.release();
+
+			return( false );
+		}
+
+		setReconnectDelay( RECONNECT_DEFAULT, false );
+
+		try{
+			requests_mon.enter();
+
+			pipelined_requests.addAll( requests );
+
+		}finally{
+
+			requests_mon.exit();
+		}
+
+		current_request = request;
+
+		try{
+			pipeline.submit( transfer );
+
+		}catch( ExternalSeedException e ){
+
+			pipelineComplete( request, requests, e );
+		}
+
+		return( true );
+	}
+
+	private void
+	pipelineComplete(
+		ExternalSeedReaderRequest	request,
+		List<PeerReadRequest>		requests,
+		ExternalSeedException		error )
+	{
+		try{
+			requests_mon.enter();
+
+			pipelined_requests.removeAll( requests );
+
+			if ( dangling_requests != null ){
+
+				dangling_requests.removeAll( requests );
+			}
+		}finally{
+
+			requests_mon.exit();
+		}
+
+		if ( error == null ){
+
+			last_failed_read	= 0;
+
+			consec_failures		= 0;
+
+		}else{
+
+			if ( error.isPermanentFailure()){
+
+				permanent_fail	= true;
+			}
+
+			status = "Failed: " + Debug.getNestedExceptionMessage( error );
+
+			request.failed();
+
+			last_failed_read	= getSystemTime();
+
+			consec_failures++;
+		}
+
+		if ( current_request == request ){
+
+			current_request = null;
+		}
+
+		pipeline_slots.release();
+	}
+
 	protected void
 	processRequests(
 		List<PeerReadRequest>		requests )
@@ -1239,6 +1530,16 @@ ExternalSeedReaderImpl
 
 		ExternalSeedReaderRequest	request = new ExternalSeedReaderRequest( this, requests );
 
+		ExternalSeedHTTPPipeline	pipeline = getPipeline();
+
+		if ( pipeline != null && pipeline.isUsable() && isDirectConnection( getURL())){
+
+			if ( processRequestsPipelined( pipeline, request, requests )){
+
+				return;
+			}
+		}
+
 		active_read_request = request;
 
 		try{
@@ -42,6 +42,7 @@ import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloader;
 import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloaderLinear;
 import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloaderListener;
 import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloaderRange;
+import com.biglybt.plugin.extseed.util.ExternalSeedHTTPPipeline;
 
 public class
 ExternalSeedReaderGetRight
@@ -56,6 +57,9 @@ ExternalSeedReaderGetRight
 	private ExternalSeedHTTPDownloader[]	http_downloaders;
 	private long[]							downloader_offsets;
 	private long[]							downloader_lengths;
+	private String[]						downloader_paths;
+
+	private ExternalSeedHTTPPipeline		pipeline;
 
 	private int			piece_size;
 	private int			piece_group_size;
@@ -97,6 +101,11 @@ ExternalSeedReaderGetRight
 			piece_group_size	= 1;
 		}
 
+		if ( !linear_download ){
+
+			pipeline = createPipeline( url, _params );
+		}
+
 			// delay the construction of the downloaders until needed
 	}
 
@@ -122,6 +131,7 @@ ExternalSeedReaderGetRight
 
 				downloader_offsets 	= new long[]{ 0 };
 				downloader_lengths	= new long[]{ to_torrent.getSize() };
+				downloader_paths	= new String[]{ url.getFile() };
 
 			}else{
 
@@ -132,6 +142,8 @@ ExternalSeedReaderGetRight
 				downloader_offsets 	= new long[ files.length ];
 				downloader_lengths	= new long[ files.length ];
 
+				String[]	paths	= new String[ files.length ];
+
 				long	offset	= 0;
 
 					// encoding is a problem, assume ISO-8859-1
@@ -161,13 +173,19 @@ ExternalSeedReaderGetRight
 							file_url_str += "/" + URLEncoder.encode( new String( bits[j], "ISO-8859-1" ), "ISO-8859-1" ).replaceAll("\\+", "%20");
 						}
 
-						http_downloaders[i] = linear_download?new ExternalSeedHTTPDownloaderLinear( new URL( file_url_str), ua ):new ExternalSeedHTTPDownloaderRange( new URL( file_url_str), ua );
+						URL	file_url = new URL( file_url_str );
+
+						http_downloaders[i] = linear_download?new ExternalSeedHTTPDownloaderLinear( file_url, ua ):new ExternalSeedHTTPDownloaderRange( file_url, ua );
+
+						paths[i] = file_url.getFile();
 
 						downloader_offsets[i]	= offset;
 						downloader_lengths[i]	= length;
 
 						offset += length;
 					}
+
+					downloader_paths = paths;
 				}catch( Throwable e ){
 
 					Debug.out( e );
@@ -312,6 +330,60 @@ ExternalSeedReaderGetRight
 		}
 	}
 
+	@Override
+	protected ExternalSeedHTTPPipeline
+	getPipeline()
+	{
+		return( pipeline );
+	}
+
+	@Override
+	protected boolean
+	addPipelineSegments(
+		ExternalSeedHTTPPipeline.Transfer	transfer,
+		int									start_piece_number,
+		int									start_piece_offset,
+		int									length )
+	{
+		setupDownloaders();
+
+		if ( downloader_paths == null ){
+
+			return( false );
+		}
+
+		long	request_start 	= start_piece_number * (long)piece_size + start_piece_offset;
+		long	request_end		= request_start + length;
+
+			// one range request per file touched, these are delivered in order into the same buffers
+
+		for ( int i=0;i<downloader_paths.length;i++){
+
+			long	this_start 	= downloader_offsets[i];
+			long	this_end	= this_start + downloader_lengths[i];
+
+			if ( this_end <= request_start ){
+
+				continue;
+			}
+
+			if ( this_start >= request_end ){
+
+				break;
+			}
+
+			long	sub_request_start 	= Math.max( request_start, 	this_start );
+			long	sub_request_end		= Math.min( request_end,	this_end );
+
+			if ( sub_request_end > sub_request_start ){
+
+				transfer.addSegment( downloader_paths[i], sub_request_start - this_start, (int)( sub_request_end - sub_request_start ));
+			}
+		}
+
+		return( true );
+	}
+
 	@Override
 	protected void
 	readData(
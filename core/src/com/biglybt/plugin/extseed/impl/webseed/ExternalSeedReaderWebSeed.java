@@ -34,6 +34,7 @@ import com.biglybt.plugin.extseed.impl.ExternalSeedReaderImpl;
 import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloader;
 import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloaderListener;
 import com.biglybt.plugin.extseed.util.ExternalSeedHTTPDownloaderRange;
+import com.biglybt.plugin.extseed.util.ExternalSeedHTTPPipeline;
 
 public class
 ExternalSeedReaderWebSeed
@@ -45,6 +46,8 @@ ExternalSeedReaderWebSeed
 
 	private boolean	supports_503;
 
+	private ExternalSeedHTTPPipeline	pipeline;
+
 	protected
 	ExternalSeedReaderWebSeed(
 		ExternalSeedPlugin _plugin,
@@ -74,6 +77,13 @@ ExternalSeedReaderWebSeed
 
 			Debug.printStackTrace(e);
 		}
+
+			// the HttpURLConnection route is used for its proxy support so leave that alone
+
+		if ( supports_503 ){
+
+			pipeline = createPipeline( url, _params );
+		}
 	}
 
 	@Override
@@ -132,6 +142,38 @@ ExternalSeedReaderWebSeed
 		return( false );
 	}
 
+	@Override
+	protected ExternalSeedHTTPPipeline
+	getPipeline()
+	{
+		return( pipeline );
+	}
+
+	@Override
+	protected boolean
+	addPipelineSegments(
+		ExternalSeedHTTPPipeline.Transfer	transfer,
+		int									piece_number,
+		int									piece_offset,
+		int									length )
+
+		throws ExternalSeedException
+	{
+		long	piece_end	= piece_offset + length - 1;
+
+		try{
+			URL	request_url = new URL( url_prefix + "&piece=" + piece_number + "&ranges=" + piece_offset + "-" + piece_end );
+
+			transfer.addSegment( request_url.getFile(), -1, length );
+
+			return( true );
+
+		}catch( MalformedURLException e ){
+
+			throw( new ExternalSeedException( "URL encode fails", e ));
+		}
+	}
+
 	@Override
 	protected void
 	readData(
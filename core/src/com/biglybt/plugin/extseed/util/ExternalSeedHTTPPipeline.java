@@ -0,0 +1,1979 @@
+/*
+ * Copyright (C) Bigly Software, Inc, All Rights Reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307  USA
+ */
+
+package com.biglybt.plugin.extseed.util;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+import com.biglybt.core.networkmanager.admin.NetworkAdmin;
+import com.biglybt.core.util.AEThread2;
+import com.biglybt.core.util.Constants;
+import com.biglybt.core.util.Debug;
+import com.biglybt.core.util.SystemTime;
+import com.biglybt.plugin.extseed.ExternalSeedException;
+
+/**
+ * Event driven HTTP/1.1 client for a single seed. Transfers are spread over a small number of
+ * persistent connections with several requests pipelined on each, and queued range requests for
+ * the same file are combined into single (multi-)range requests when all connections are busy.
+ * <p>
+ * All connections of all pipelines are serviced by one selector thread, listeners are called on it
+ * and must not block. Servers that answer in ways we don't handle here (redirects, 200 replies to
+ * range requests...) mark the pipeline unusable so the caller can fall back to the blocking
+ * downloaders.
+ */
+
+public class
+ExternalSeedHTTPPipeline
+{
+	private static final int	CONNECT_TIMEOUT		= 30*1000;
+	private static final int	READ_TIMEOUT		= 60*1000;
+	private static final int	IDLE_TIMEOUT		= 30*1000;
+	private static final int	RESOLVE_PERIOD		= 5*60*1000;
+	private static final int	THROTTLE_POLL		= 50;
+
+	private static final int	MAX_RANGES			= 16;
+	private static final int	MAX_MERGED_BYTES	= 1024*1024;
+	private static final int	MAX_HEADER_BYTES	= 16*1024;
+	private static final int	MAX_LINE_BYTES		= 1024;
+	private static final int	MAX_ERROR_BYTES		= 1024;
+	private static final int	MAX_REQUEUES		= 3;
+
+	private static final String	NL = "\r\n";
+
+	private static final int	ST_HEADER			= 0;
+	private static final int	ST_BODY_LENGTH		= 1;
+	private static final int	ST_BODY_CLOSE		= 2;
+	private static final int	ST_CHUNK_SIZE		= 3;
+	private static final int	ST_CHUNK_DATA		= 4;
+	private static final int	ST_CHUNK_DATA_END	= 5;
+	private static final int	ST_CHUNK_TRAILER	= 6;
+
+	private static final int	CM_DATA				= 0;
+	private static final int	CM_MULTIPART		= 1;
+	private static final int	CM_ERROR			= 2;
+
+	private static final int	MP_BOUNDARY			= 0;
+	private static final int	MP_HEADERS			= 1;
+	private static final int	MP_DATA				= 2;
+	private static final int	MP_END				= 3;
+
+	private static final Object			class_lock	= new Object();
+	private static Selector				selector;
+	private static final List<Runnable>	pending_ops	= new ArrayList<>();
+
+		// selector thread only
+
+	private static final List<ExternalSeedHTTPPipeline>	pipelines	= new ArrayList<>();
+	private static final ByteBuffer						read_buffer	= ByteBuffer.allocateDirect( 64*1024 );
+
+	private final String		host;
+	private final int			port;
+	private final String		host_header;
+	private final String		user_agent;
+	private final int			max_connections;
+	private final RateSource	rate_source;
+
+	private volatile boolean	usable			= true;
+	private volatile int		depth;
+	private volatile boolean	multi_range_ok	= true;
+
+	private InetSocketAddress	resolved_address;
+	private InetAddress			resolved_bind;
+	private long				resolve_time;
+
+		// selector thread only
+
+	private final LinkedList<Transfer>	queue			= new LinkedList<>();
+	private final List<Connection>		connections		= new ArrayList<>();
+
+	private InetSocketAddress	address;
+	private InetAddress			bind_address;
+	private boolean				registered;
+	private boolean				throttled;
+
+	private volatile long		connections_opened;
+	private volatile long		requests_sent;
+	private volatile long		responses_received;
+	private volatile long		bytes_received;
+
+	public
+	ExternalSeedHTTPPipeline(
+		URL				url,
+		String			_user_agent,
+		int				_max_connections,
+		int				_depth,
+		RateSource		_rate_source )
+	{
+		host			= url.getHost();
+		port			= url.getPort()==-1?url.getDefaultPort():url.getPort();
+		host_header		= host + (url.getPort()==-1?"":( ":" + url.getPort()));
+		user_agent		= _user_agent;
+		max_connections	= Math.max( 1, _max_connections );
+		depth			= Math.max( 1, _depth );
+		rate_source		= _rate_source;
+	}
+
+		/**
+		 * @return false if the server has turned out not to be suitable for this client
+		 */
+
+	public boolean
+	isUsable()
+	{
+		return( usable );
+	}
+
+		/**
+		 * @return number of transfers worth having in progress at once, those beyond what the
+		 * connections can take are folded into (multi-)range requests where possible
+		 */
+
+	public int
+	getMaxOutstanding()
+	{
+		return( max_connections * depth * 2 );
+	}
+
+	public long
+	getConnectionsOpened()
+	{
+		return( connections_opened );
+	}
+
+	public long
+	getRequestsSent()
+	{
+		return( requests_sent );
+	}
+
+	public long
+	getResponsesReceived()
+	{
+		return( responses_received );
+	}
+
+	public long
+	getBytesReceived()
+	{
+		return( bytes_received );
+	}
+
+	public String
+	getStatus()
+	{
+		long	cons = connections_opened;
+
+		return( "connections=" + cons + ", requests=" + requests_sent + ", reuse=" + ( cons==0?0:( responses_received / cons )) + ", depth=" + depth + ", multi-range=" + multi_range_ok );
+	}
+
+		/**
+		 * Queues a transfer, the outcome is reported to its listener on the selector thread
+		 */
+
+	public void
+	submit(
+		final Transfer		transfer )
+
+		throws ExternalSeedException
+	{
+		if ( !usable ){
+
+			throw( new ExternalSeedException( "HTTP pipeline not available" ));
+		}
+
+		if ( transfer.segments.isEmpty()){
+
+			throw( new ExternalSeedException( "Transfer has no content" ));
+		}
+
+		final InetSocketAddress	target;
+		final InetAddress		bind;
+
+		synchronized( this ){
+
+			long	now = SystemTime.getMonotonousTime();
+
+			if ( resolved_address == null || now - resolve_time > RESOLVE_PERIOD ){
+
+				NetworkAdmin	na = NetworkAdmin.getSingleton();
+
+				if ( na.hasMissingForcedBind()){
+
+					throw( new ExternalSeedException( "Forced bind address is missing" ));
+				}
+
+				InetSocketAddress	isa = new InetSocketAddress( host, port );
+
+				if ( isa.isUnresolved()){
+
+					throw( new ExternalSeedException( "Connection failed: unknown host " + host ));
+				}
+
+				resolved_address	= isa;
+				resolved_bind		= na.getMultiHomedOutgoingRoundRobinBindAddress( isa.getAddress());
+				resolve_time		= now;
+			}
+
+			target	= resolved_address;
+			bind	= resolved_bind;
+		}
+
+		runOnSelector(
+			new Runnable()
+			{
+				@Override
+				public void
+				run()
+				{
+					address			= target;
+					bind_address	= bind;
+
+					if ( !registered ){
+
+						registered = true;
+
+						pipelines.add( ExternalSeedHTTPPipeline.this );
+					}
+
+					queue.add( transfer );
+
+					dispatch();
+				}
+			});
+	}
+
+	private static void
+	runOnSelector(
+		Runnable	op )
+
+		throws ExternalSeedException
+	{
+		synchronized( class_lock ){
+
+			if ( selector == null ){
+
+				try{
+					selector = Selector.open();
+
+				}catch( IOException e ){
+
+					throw( new ExternalSeedException( "Failed to open selector", e ));
+				}
+
+				new AEThread2( "ES:HTTPPipeline", true )
+				{
+					@Override
+					public void
+					run()
+					{
+						selectLoop();
+					}
+				}.start();
+			}
+
+			pending_ops.add( op );
+		}
+
+		selector.wakeup();
+	}
+
+	private static void
+	selectLoop()
+	{
+		long	last_check = SystemTime.getMonotonousTime();
+
+		while( true ){
+
+			try{
+				List<Runnable>	ops = null;
+
+				synchronized( class_lock ){
+
+					if ( !pending_ops.isEmpty()){
+
+						ops = new ArrayList<>( pending_ops );
+
+						pending_ops.clear();
+					}
+				}
+
+				if ( ops != null ){
+
+					for ( Runnable op: ops ){
+
+						try{
+							op.run();
+
+						}catch( Throwable e ){
+
+							Debug.out( e );
+						}
+					}
+				}
+
+				boolean	any_throttled = false;
+
+				for ( ExternalSeedHTTPPipeline pipeline: pipelines ){
+
+					if ( pipeline.throttled ){
+
+						any_throttled = true;
+
+						break;
+					}
+				}
+
+				selector.select( any_throttled?THROTTLE_POLL:1000 );
+
+				Set<SelectionKey>	keys = selector.selectedKeys();
+
+				for ( SelectionKey key: keys ){
+
+					Connection	connection = (Connection)key.attachment();
+
+					try{
+						connection.process( key );
+
+					}catch( Throwable e ){
+
+						connection.failed( "Connection failed: " + Debug.getNestedExceptionMessage( e ));
+					}
+				}
+
+				keys.clear();
+
+				long	now = SystemTime.getMonotonousTime();
+
+				boolean	check_timeouts = now - last_check >= 1000;
+
+				if ( check_timeouts ){
+
+					last_check = now;
+				}
+
+				for ( ExternalSeedHTTPPipeline pipeline: new ArrayList<>( pipelines )){
+
+					try{
+						pipeline.checkThrottle();
+
+						if ( check_timeouts ){
+
+							pipeline.checkTimeouts( now );
+						}
+					}catch( Throwable e ){
+
+						Debug.out( e );
+					}
+				}
+			}catch( Throwable e ){
+
+				Debug.out( e );
+			}
+		}
+	}
+
+	private int
+	getPermittedBytes()
+	{
+		if ( rate_source == null ){
+
+			return( Integer.MAX_VALUE );
+		}
+
+		return( rate_source.getPermittedBytes());
+	}
+
+	private void
+	setThrottled(
+		boolean		_throttled )
+	{
+		if ( throttled != _throttled ){
+
+			throttled = _throttled;
+
+			for ( Connection connection: connections ){
+
+				connection.updateInterest();
+			}
+		}
+	}
+
+	private void
+	checkThrottle()
+	{
+		if ( throttled && getPermittedBytes() > 0 ){
+
+			setThrottled( false );
+		}
+	}
+
+	private void
+	checkTimeouts(
+		long		now )
+	{
+		for ( Connection connection: new ArrayList<>( connections )){
+
+			if ( !connection.connected ){
+
+				if ( now - connection.last_activity > CONNECT_TIMEOUT ){
+
+					connection.failed( "Connection failed: connect timeout" );
+				}
+			}else if ( !connection.outstanding.isEmpty()){
+
+				if ( throttled ){
+
+					connection.last_activity = now;
+
+				}else if ( now - connection.last_activity > READ_TIMEOUT ){
+
+					connection.failed( "Connection failed: read timeout" );
+				}
+			}else if ( now - connection.last_activity > IDLE_TIMEOUT ){
+
+				connection.close( null );
+			}
+		}
+
+		if ( connections.isEmpty() && queue.isEmpty()){
+
+			registered = false;
+
+			pipelines.remove( this );
+		}
+	}
+
+		/**
+		 * Sends queued transfers, preferring idle connections, then new ones and then pipelining on the
+		 * least loaded one
+		 */
+
+	private void
+	dispatch()
+	{
+		while( !queue.isEmpty()){
+
+			Connection	best = null;
+
+			for ( Connection connection: connections ){
+
+				if ( connection.closing || connection.outstanding.size() >= depth ){
+
+					continue;
+				}
+
+				if ( best == null || connection.outstanding.size() < best.outstanding.size()){
+
+					best = connection;
+				}
+			}
+
+			boolean	busy = best == null || !best.outstanding.isEmpty();
+
+			if ( busy && connections.size() < max_connections ){
+
+				best = openConnection();
+
+				if ( best == null ){
+
+					return;
+				}
+
+				busy = false;
+			}
+
+			if ( best == null ){
+
+				return;
+			}
+
+			Transfer	transfer = queue.removeFirst();
+
+			for ( Request request: buildRequests( transfer, busy )){
+
+				best.send( request );
+			}
+		}
+	}
+
+	private List<Request>
+	buildRequests(
+		Transfer		transfer,
+		boolean			merge )
+	{
+		List<Request>	result = new ArrayList<>( transfer.segments.size());
+
+		for ( Segment segment: transfer.segments ){
+
+			result.add( new Request( segment ));
+		}
+
+			// when every connection has work anyway fold following range requests for the same file
+			// into this one, adjacent ranges are sent as one and the rest as a multi-range request
+
+		if ( merge && result.size() == 1 ){
+
+			Request	request = result.get(0);
+
+			while( request.ranged && !queue.isEmpty() && request.segments.size() < MAX_RANGES ){
+
+				Transfer	next = queue.getFirst();
+
+				if ( next.segments.size() != 1 ){
+
+					break;
+				}
+
+				Segment	segment = next.segments.get(0);
+				Segment	last	= request.segments.get( request.segments.size() - 1 );
+
+				if ( 	segment.offset < last.offset + last.length ||
+						!segment.path.equals( request.path ) ||
+						request.length + segment.length > MAX_MERGED_BYTES ){
+
+					break;
+				}
+
+				if ( segment.offset != last.offset + last.length && !multi_range_ok ){
+
+					break;
+				}
+
+				queue.removeFirst();
+
+				request.add( segment );
+			}
+		}
+
+		return( result );
+	}
+
+	private Connection
+	openConnection()
+	{
+		Connection	connection = new Connection();
+
+		connections.add( connection );
+
+		connections_opened++;
+
+		try{
+			SocketChannel	channel = SocketChannel.open();
+
+			connection.channel = channel;
+
+			channel.configureBlocking( false );
+
+			channel.socket().setTcpNoDelay( true );
+
+			if ( bind_address != null && !bind_address.isAnyLocalAddress()){
+
+				channel.socket().bind( new InetSocketAddress( bind_address, 0 ));
+			}
+
+			connection.connected	= channel.connect( address );
+			connection.key			= channel.register( selector, 0, connection );
+
+			connection.updateInterest();
+
+			return( connection );
+
+		}catch( Throwable e ){
+
+			connections.remove( connection );
+
+			connection.closed = true;
+
+			if ( connection.channel != null ){
+
+				try{
+					connection.channel.close();
+
+				}catch( Throwable f ){
+				}
+			}
+
+				// nothing will retry these so report them now
+
+			List<Transfer>	failed = new ArrayList<>( queue );
+
+			queue.clear();
+
+			for ( Transfer transfer: failed ){
+
+				fail( transfer, connectFailure( transfer, "Connection failed: " + Debug.getNestedExceptionMessage( e )));
+			}
+
+			return( null );
+		}
+	}
+
+	private static ExternalSeedException
+	connectFailure(
+		Transfer	transfer,
+		String		message )
+	{
+		ExternalSeedException	error = new ExternalSeedException( message );
+
+		if ( transfer.con_fail_is_perm_fail ){
+
+			error.setPermanentFailure( true );
+		}
+
+		return( error );
+	}
+
+	private void
+	write(
+		Transfer		transfer,
+		ByteBuffer		buffer )
+	{
+		int	len = buffer.remaining();
+
+		if ( transfer.finished || transfer.cancelled ){
+
+			buffer.position( buffer.limit());
+
+			return;
+		}
+
+		ExternalSeedHTTPDownloaderListener	listener = transfer.listener;
+
+		transfer.started = true;
+
+		if ( listener.isCancelled()){
+
+				// keep reading to preserve the other requests pipelined on the connection
+
+			transfer.cancelled = true;
+
+			buffer.position( buffer.limit());
+
+			return;
+		}
+
+		try{
+			while( len > 0 ){
+
+				if ( transfer.buffer == null ){
+
+					transfer.buffer 	= listener.getBuffer();
+					transfer.buffer_pos	= listener.getBufferPosition();
+					transfer.buffer_len	= listener.getBufferLength();
+
+					if ( transfer.buffer_pos >= transfer.buffer_len ){
+
+						throw( new ExternalSeedException( "Invalid buffer" ));
+					}
+				}
+
+				int	chunk = Math.min( len, transfer.buffer_len - transfer.buffer_pos );
+
+				buffer.get( transfer.buffer, transfer.buffer_pos, chunk );
+
+				transfer.buffer_pos += chunk;
+
+				len -= chunk;
+
+				listener.setBufferPosition( transfer.buffer_pos );
+
+				listener.reportBytesRead( chunk );
+
+				if ( transfer.buffer_pos == transfer.buffer_len ){
+
+					transfer.buffer = null;
+
+					listener.done();
+				}
+			}
+		}catch( ExternalSeedException e ){
+
+			buffer.position( buffer.limit());
+
+			fail( transfer, e );
+		}
+	}
+
+	private void
+	segmentComplete(
+		Transfer		transfer )
+	{
+		transfer.segments_done++;
+
+		if ( transfer.segments_done == transfer.segments.size() && !transfer.finished ){
+
+			if ( transfer.cancelled ){
+
+				fail( transfer, new ExternalSeedException( "Request cancelled" ));
+
+			}else{
+
+				transfer.finished = true;
+
+				try{
+					transfer.transfer_listener.complete( transfer );
+
+				}catch( Throwable e ){
+
+					Debug.out( e );
+				}
+			}
+		}
+	}
+
+	private void
+	fail(
+		Transfer				transfer,
+		ExternalSeedException	error )
+	{
+		if ( transfer.finished ){
+
+			return;
+		}
+
+		transfer.finished = true;
+
+		try{
+			transfer.transfer_listener.failed( transfer, error );
+
+		}catch( Throwable e ){
+
+			Debug.out( e );
+		}
+	}
+
+		/**
+		 * @return seconds from a Retry-After value which can be either a delay or a date, -1 if invalid
+		 */
+
+	private static int
+	parseRetryAfter(
+		String		value )
+	{
+		if ( value == null ){
+
+			return( -1 );
+		}
+
+		value = value.trim();
+
+		try{
+			return( Math.max( -1, Integer.parseInt( value )));
+
+		}catch( Throwable e ){
+		}
+
+		try{
+			SimpleDateFormat format = new SimpleDateFormat( "EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US );
+
+			long	secs = ( format.parse( value ).getTime() - System.currentTimeMillis())/1000;
+
+			return( secs<0?-1:(int)secs );
+
+		}catch( Throwable e ){
+		}
+
+		return( -1 );
+	}
+
+	public interface
+	RateSource
+	{
+			/**
+			 * Must not block
+			 * @return number of bytes that may be read now, 0 if none
+			 */
+
+		public int
+		getPermittedBytes();
+	}
+
+	public interface
+	TransferListener
+	{
+		public void
+		complete(
+			Transfer	transfer );
+
+		public void
+		failed(
+			Transfer				transfer,
+			ExternalSeedException	error );
+	}
+
+	public static class
+	Transfer
+	{
+		private final ExternalSeedHTTPDownloaderListener	listener;
+		private final TransferListener						transfer_listener;
+		private final boolean								con_fail_is_perm_fail;
+
+		private final List<Segment>		segments = new ArrayList<>( 1 );
+
+		private int			segments_done;
+		private int			requeues;
+		private boolean		started;
+		private boolean		cancelled;
+		private boolean		finished;
+
+		private byte[]		buffer;
+		private int			buffer_pos;
+		private int			buffer_len;
+
+		private int			last_response;
+		private int			last_response_retry_after_secs	= -1;
+
+		public
+		Transfer(
+			ExternalSeedHTTPDownloaderListener	_listener,
+			TransferListener					_transfer_listener,
+			boolean								_con_fail_is_perm_fail )
+		{
+			listener				= _listener;
+			transfer_listener		= _transfer_listener;
+			con_fail_is_perm_fail	= _con_fail_is_perm_fail;
+		}
+
+			/**
+			 * Segments are requested and delivered in the order added
+			 * @param path		path and query to request
+			 * @param offset	offset of a Range request, -1 to request the path's content
+			 */
+
+		public void
+		addSegment(
+			String		path,
+			long		offset,
+			int			length )
+		{
+			segments.add( new Segment( this, path.length()==0?"/":path, offset, length ));
+		}
+
+		public int
+		getLastResponse()
+		{
+			return( last_response );
+		}
+
+		public int
+		getLast503RetrySecs()
+		{
+			return( last_response_retry_after_secs );
+		}
+	}
+
+	private static class
+	Segment
+	{
+		private final Transfer		transfer;
+		private final String		path;
+		private final long			offset;
+		private final int			length;
+
+		private
+		Segment(
+			Transfer	_transfer,
+			String		_path,
+			long		_offset,
+			int			_length )
+		{
+			transfer	= _transfer;
+			path		= _path;
+			offset		= _offset;
+			length		= _length;
+		}
+	}
+
+	private static class
+	Request
+	{
+		private final String			path;
+		private final boolean			ranged;
+		private final List<Segment>		segments = new ArrayList<>( 1 );
+
+		private long		length;
+
+		private
+		Request(
+			Segment		segment )
+		{
+			path	= segment.path;
+			ranged	= segment.offset >= 0;
+
+			add( segment );
+		}
+
+		private void
+		add(
+			Segment		segment )
+		{
+			segments.add( segment );
+
+			length += segment.length;
+		}
+
+		private byte[]
+		getHeader(
+			String		host_header,
+			String		user_agent )
+		{
+			StringBuilder	header = new StringBuilder( 256 );
+
+			header.append( "GET " ).append( path ).append( " HTTP/1.1" ).append( NL );
+			header.append( "Host: " ).append( host_header ).append( NL );
+			header.append( "User-Agent: " ).append( user_agent ).append( NL );
+			header.append( "Accept: */*" ).append( NL );
+			header.append( "Connection: Keep-Alive" ).append( NL );
+
+			if ( ranged ){
+
+				header.append( "Range: bytes=" );
+
+				long	start	= -1;
+				long	end		= -1;
+
+				for ( Segment segment: segments ){
+
+					if ( start == -1 ){
+
+						start	= segment.offset;
+						end		= segment.offset + segment.length;
+
+					}else if ( segment.offset == end ){
+
+						end += segment.length;
+
+					}else{
+
+						header.append( start ).append( '-' ).append( end - 1 ).append( ',' );
+
+						start	= segment.offset;
+						end		= segment.offset + segment.length;
+					}
+				}
+
+				header.append( start ).append( '-' ).append( end - 1 ).append( NL );
+			}
+
+			header.append( NL );
+
+			return( header.toString().getBytes( Constants.BYTE_ENCODING_CHARSET ));
+		}
+	}
+
+	private class
+	Connection
+	{
+		private SocketChannel		channel;
+		private SelectionKey		key;
+
+		private boolean		connected;
+		private boolean		closing;
+		private boolean		closed;
+		private long		last_activity	= SystemTime.getMonotonousTime();
+		private int			responses;
+
+		private final LinkedList<Request>		outstanding	= new LinkedList<>();
+		private final LinkedList<ByteBuffer>	writes		= new LinkedList<>();
+
+			// current response
+
+		private int				state			= ST_HEADER;
+		private byte[]			header			= new byte[1024];
+		private int				header_len;
+		private StringBuilder	line			= new StringBuilder();
+
+		private int				status;
+		private String			status_line;
+		private boolean			close_after;
+		private long			body_remaining;
+		private int				retry_after;
+
+		private int				content_mode;
+		private String			boundary;
+		private int				mp_state;
+		private long			mp_part_start;
+		private long			mp_part_length;
+
+		private StringBuilder	error_body;
+
+		private Request			current;
+		private int				segment_index;
+		private int				segment_done;
+		private long			part_remaining;
+
+		private void
+		updateInterest()
+		{
+			if ( closed ){
+
+				return;
+			}
+
+			int	ops;
+
+			if ( !connected ){
+
+				ops = SelectionKey.OP_CONNECT;
+
+			}else{
+
+				ops = 0;
+
+				if ( !writes.isEmpty()){
+
+					ops |= SelectionKey.OP_WRITE;
+				}
+
+				if ( !throttled ){
+
+					ops |= SelectionKey.OP_READ;
+				}
+			}
+
+			key.interestOps( ops );
+		}
+
+		private void
+		send(
+			Request		request )
+		{
+			outstanding.add( request );
+
+			writes.add( ByteBuffer.wrap( request.getHeader( host_header, user_agent )));
+
+			requests_sent++;
+
+			if ( connected ){
+
+				try{
+					flush();
+
+				}catch( IOException e ){
+
+					failed( "Connection failed: " + Debug.getNestedExceptionMessage( e ));
+
+					return;
+				}
+			}
+
+			updateInterest();
+		}
+
+		private void
+		flush()
+
+			throws IOException
+		{
+			while( !writes.isEmpty()){
+
+				ByteBuffer	buffer = writes.getFirst();
+
+				channel.write( buffer );
+
+				if ( buffer.hasRemaining()){
+
+					return;
+				}
+
+				writes.removeFirst();
+			}
+		}
+
+		private void
+		process(
+			SelectionKey	key )
+
+			throws IOException
+		{
+			if ( closed || !key.isValid()){
+
+				return;
+			}
+
+			if ( key.isConnectable()){
+
+				channel.finishConnect();
+
+				connected		= true;
+				last_activity	= SystemTime.getMonotonousTime();
+
+				flush();
+
+				updateInterest();
+
+				return;
+			}
+
+			if ( key.isWritable()){
+
+				flush();
+
+				updateInterest();
+			}
+
+			if ( key.isValid() && key.isReadable()){
+
+				read();
+			}
+		}
+
+		private void
+		read()
+
+			throws IOException
+		{
+			int	permitted = getPermittedBytes();
+
+			if ( permitted <= 0 ){
+
+				setThrottled( true );
+
+				return;
+			}
+
+			ByteBuffer	buffer = read_buffer;
+
+			buffer.clear();
+
+			if ( permitted < buffer.capacity()){
+
+				buffer.limit( permitted );
+			}
+
+			int	len = channel.read( buffer );
+
+			if ( len < 0 ){
+
+				endOfStream();
+
+				return;
+			}
+
+			if ( len == 0 ){
+
+				return;
+			}
+
+			bytes_received	+= len;
+			last_activity	= SystemTime.getMonotonousTime();
+
+			buffer.flip();
+
+			while( buffer.hasRemaining() && !closed ){
+
+				processResponse( buffer );
+			}
+
+			if ( !closed ){
+
+				dispatch();
+			}
+		}
+
+		private void
+		processResponse(
+			ByteBuffer		buffer )
+		{
+			switch( state ){
+
+				case ST_HEADER:{
+
+					readHeader( buffer );
+
+					break;
+				}
+				case ST_BODY_LENGTH:{
+
+					int	len = (int)Math.min( body_remaining, buffer.remaining());
+
+					body( buffer, len );
+
+					body_remaining -= len;
+
+					if ( body_remaining == 0 ){
+
+						responseComplete();
+					}
+
+					break;
+				}
+				case ST_BODY_CLOSE:{
+
+					body( buffer, buffer.remaining());
+
+					break;
+				}
+				case ST_CHUNK_SIZE:{
+
+					String	str = readLine( buffer );
+
+					if ( str != null ){
+
+						int	pos = str.indexOf( ';' );
+
+						if ( pos != -1 ){
+
+							str = str.substring( 0, pos );
+						}
+
+						try{
+							body_remaining = Long.parseLong( str.trim(), 16 );
+
+						}catch( Throwable e ){
+
+							protocolError( "invalid chunk size", false );
+
+							return;
+						}
+
+						state = body_remaining==0?ST_CHUNK_TRAILER:ST_CHUNK_DATA;
+					}
+
+					break;
+				}
+				case ST_CHUNK_DATA:{
+
+					int	len = (int)Math.min( body_remaining, buffer.remaining());
+
+					body( buffer, len );
+
+					body_remaining -= len;
+
+					if ( body_remaining == 0 ){
+
+						state = ST_CHUNK_DATA_END;
+					}
+
+					break;
+				}
+				case ST_CHUNK_DATA_END:{
+
+					if ( readLine( buffer ) != null ){
+
+						state = ST_CHUNK_SIZE;
+					}
+
+					break;
+				}
+				case ST_CHUNK_TRAILER:{
+
+					String	str = readLine( buffer );
+
+					if ( str != null && str.length() == 0 ){
+
+						responseComplete();
+					}
+
+					break;
+				}
+			}
+		}
+
+		private String
+		readLine(
+			ByteBuffer		buffer )
+		{
+			while( buffer.hasRemaining()){
+
+				char	c = (char)( buffer.get() & 0xff );
+
+				if ( c == '\n' ){
+
+					int	len = line.length();
+
+					if ( len > 0 && line.charAt( len-1 ) == '\r' ){
+
+						line.setLength( len-1 );
+					}
+
+					String	result = line.toString();
+
+					line.setLength( 0 );
+
+					return( result );
+				}
+
+				if ( line.length() >= MAX_LINE_BYTES ){
+
+					protocolError( "line too long", false );
+
+					buffer.position( buffer.limit());
+
+					return( null );
+				}
+
+				line.append( c );
+			}
+
+			return( null );
+		}
+
+		private void
+		readHeader(
+			ByteBuffer		buffer )
+		{
+			if ( outstanding.isEmpty()){
+
+				protocolError( "unexpected data", false );
+
+				return;
+			}
+
+			while( buffer.hasRemaining()){
+
+				byte	b = buffer.get();
+
+				if ( header_len == header.length ){
+
+					if ( header_len >= MAX_HEADER_BYTES ){
+
+						protocolError( "header too long", false );
+
+						return;
+					}
+
+					header = Arrays.copyOf( header, header_len*2 );
+				}
+
+				header[header_len++] = b;
+
+				if ( 	b == '\n' && header_len >= 4 &&
+						header[header_len-2] == '\r' && header[header_len-3] == '\n' && header[header_len-4] == '\r' ){
+
+					parseHeader( new String( header, 0, header_len, Constants.BYTE_ENCODING_CHARSET ));
+
+					return;
+				}
+			}
+		}
+
+		private void
+		parseHeader(
+			String		str )
+		{
+			header_len = 0;
+
+			while( str.startsWith( NL )){
+
+					// tolerate stray line ends after a previous body
+
+				str = str.substring( 2 );
+			}
+
+			String[]	lines = str.split( NL );
+
+			status_line = lines[0];
+
+			String[]	bits = status_line.split( " ", 3 );
+
+			if ( bits.length < 2 || !bits[0].startsWith( "HTTP/" )){
+
+				protocolError( "invalid status line", true );
+
+				return;
+			}
+
+			try{
+				status = Integer.parseInt( bits[1] );
+
+			}catch( Throwable e ){
+
+				protocolError( "invalid status line", true );
+
+				return;
+			}
+
+			if ( status >= 100 && status < 200 ){
+
+				return;
+			}
+
+			Map<String,String>	headers = new HashMap<>();
+
+			for ( int i=1;i<lines.length;i++){
+
+				String	l = lines[i];
+
+				int	pos = l.indexOf( ':' );
+
+				if ( pos > 0 ){
+
+					headers.put( l.substring( 0, pos ).trim().toLowerCase( Locale.US ), l.substring( pos+1 ).trim());
+				}
+			}
+
+			String	con_header = headers.get( "connection" );
+
+			con_header = con_header==null?"":con_header.toLowerCase( Locale.US );
+
+			close_after = con_header.contains( "close" ) || ( bits[0].equals( "HTTP/1.0" ) && !con_header.contains( "keep-alive" ));
+
+			if ( close_after ){
+
+					// no point pipelining requests that won't be answered
+
+				closing	= true;
+				depth	= 1;
+			}
+
+			retry_after = parseRetryAfter( headers.get( "retry-after" ));
+
+			current			= outstanding.getFirst();
+			segment_index	= 0;
+			segment_done	= 0;
+			part_remaining	= 0;
+
+			if ( status == 200 || status == 202 || status == 206 ){
+
+				String	content_type = headers.get( "content-type" );
+
+				if ( status == 206 && content_type != null && content_type.toLowerCase( Locale.US ).startsWith( "multipart/byteranges" )){
+
+					int	pos = content_type.toLowerCase( Locale.US ).indexOf( "boundary=" );
+
+					if ( pos == -1 ){
+
+						protocolError( "multipart boundary missing", true );
+
+						return;
+					}
+
+					boundary = content_type.substring( pos + 9 ).trim();
+
+					if ( boundary.startsWith( "\"" ) && boundary.endsWith( "\"" ) && boundary.length() > 1 ){
+
+						boundary = boundary.substring( 1, boundary.length()-1 );
+					}
+
+					content_mode	= CM_MULTIPART;
+					mp_state		= MP_BOUNDARY;
+
+				}else{
+
+					content_mode = CM_DATA;
+
+					if ( status == 206 ){
+
+						long[]	range = parseContentRange( headers.get( "content-range" ));
+
+						if ( range == null || !beginPart( range[0], range[1] )){
+
+							protocolError( "unexpected content range", current.segments.size() > 1 );
+
+							return;
+						}
+					}else if ( !current.ranged ){
+
+						beginPart( -1, current.length );
+
+					}else if ( current.segments.size() == 1 && current.segments.get(0).offset == 0 ){
+
+							// server ignored the range but the start of the content is what we want
+
+						beginPart( 0, current.length );
+
+					}else{
+
+						protocolError( "range not supported", true );
+
+						return;
+					}
+				}
+			}else{
+
+				content_mode	= CM_ERROR;
+				error_body		= new StringBuilder();
+			}
+
+			String	encoding 	= headers.get( "transfer-encoding" );
+			String	length		= headers.get( "content-length" );
+
+			if ( status == 204 || status == 304 ){
+
+				responseComplete();
+
+			}else if ( encoding != null && encoding.toLowerCase( Locale.US ).contains( "chunked" )){
+
+				state = ST_CHUNK_SIZE;
+
+			}else if ( length != null ){
+
+				try{
+					body_remaining = Long.parseLong( length );
+
+				}catch( Throwable e ){
+
+					protocolError( "invalid content length", false );
+
+					return;
+				}
+
+				if ( body_remaining == 0 ){
+
+					responseComplete();
+
+				}else{
+
+					state = ST_BODY_LENGTH;
+				}
+			}else{
+
+				close_after	= true;
+				closing		= true;
+
+				state = ST_BODY_CLOSE;
+			}
+		}
+
+		private long[]
+		parseContentRange(
+			String		str )
+		{
+				// bytes 0-499/1234
+
+			if ( str == null ){
+
+				return( null );
+			}
+
+			try{
+				str = str.trim();
+
+				if ( str.toLowerCase( Locale.US ).startsWith( "bytes" )){
+
+					str = str.substring( 5 ).trim();
+				}
+
+				int	dash	= str.indexOf( '-' );
+				int	slash	= str.indexOf( '/' );
+
+				long	start	= Long.parseLong( str.substring( 0, dash ).trim());
+				long	end		= Long.parseLong( str.substring( dash+1, slash==-1?str.length():slash ).trim());
+
+				return( new long[]{ start, end - start + 1 });
+
+			}catch( Throwable e ){
+
+				return( null );
+			}
+		}
+
+			/**
+			 * A part must exactly cover one or more adjacent requested segments, starting with the
+			 * next one not yet satisfied
+			 */
+
+		private boolean
+		beginPart(
+			long		start,
+			long		length )
+		{
+			if ( start >= 0 ){
+
+				long	pos		= start;
+				long	rem		= length;
+
+				for ( int i=segment_index;i<current.segments.size() && rem > 0;i++){
+
+					Segment	segment = current.segments.get(i);
+
+					if ( segment.offset != pos ){
+
+						return( false );
+					}
+
+					pos += segment.length;
+					rem -= segment.length;
+				}
+
+				if ( rem != 0 || length <= 0 ){
+
+					return( false );
+				}
+			}
+
+			part_remaining = length;
+
+			return( true );
+		}
+
+		private void
+		body(
+			ByteBuffer		buffer,
+			int				len )
+		{
+			int	limit = buffer.limit();
+
+			buffer.limit( buffer.position() + len );
+
+			try{
+				while( buffer.hasRemaining() && !closed ){
+
+					if ( content_mode == CM_DATA ){
+
+						deliver( buffer );
+
+					}else if ( content_mode == CM_MULTIPART ){
+
+						multipart( buffer );
+
+					}else{
+
+						while( buffer.hasRemaining()){
+
+							char	c = (char)( buffer.get() & 0xff );
+
+							if ( error_body.length() < MAX_ERROR_BYTES ){
+
+								error_body.append( c );
+							}
+						}
+					}
+				}
+			}finally{
+
+				buffer.limit( limit );
+			}
+		}
+
+		private void
+		multipart(
+			ByteBuffer		buffer )
+		{
+			if ( mp_state == MP_DATA ){
+
+				int	limit = buffer.limit();
+
+				int	len = (int)Math.min( part_remaining, buffer.remaining());
+
+				buffer.limit( buffer.position() + len );
+
+				deliver( buffer );
+
+				buffer.limit( limit );
+
+				if ( part_remaining == 0 ){
+
+					mp_state = MP_BOUNDARY;
+				}
+			}else if ( mp_state == MP_END ){
+
+				buffer.position( buffer.limit());
+
+			}else{
+
+				String	str = readLine( buffer );
+
+				if ( str == null ){
+
+					return;
+				}
+
+				if ( mp_state == MP_BOUNDARY ){
+
+					if ( str.equals( "--" + boundary )){
+
+						mp_state		= MP_HEADERS;
+						mp_part_start	= -1;
+
+					}else if ( str.equals( "--" + boundary + "--" )){
+
+						mp_state = MP_END;
+					}
+				}else if ( str.length() == 0 ){
+
+					if ( mp_part_start < 0 || !beginPart( mp_part_start, mp_part_length )){
+
+						protocolError( "unexpected multipart range", true );
+
+						return;
+					}
+
+					mp_state = MP_DATA;
+
+				}else if ( str.toLowerCase( Locale.US ).startsWith( "content-range:" )){
+
+					long[]	range = parseContentRange( str.substring( 14 ));
+
+					if ( range != null ){
+
+						mp_part_start	= range[0];
+						mp_part_length	= range[1];
+					}
+				}
+			}
+		}
+
+		private void
+		deliver(
+			ByteBuffer		buffer )
+		{
+			while( buffer.hasRemaining()){
+
+				if ( part_remaining == 0 || segment_index >= current.segments.size()){
+
+						// surplus, e.g. a full reply to a request for a prefix
+
+					buffer.position( buffer.limit());
+
+					return;
+				}
+
+				Segment	segment = current.segments.get( segment_index );
+
+				int	len = (int)Math.min( buffer.remaining(), Math.min( part_remaining, segment.length - segment_done ));
+
+				int	limit = buffer.limit();
+
+				buffer.limit( buffer.position() + len );
+
+				write( segment.transfer, buffer );
+
+				buffer.limit( limit );
+
+				segment_done	+= len;
+				part_remaining	-= len;
+
+				if ( segment_done == segment.length ){
+
+					segment_index++;
+					segment_done = 0;
+
+					segmentComplete( segment.transfer );
+				}
+			}
+		}
+
+		private void
+		responseComplete()
+		{
+			Request	request = outstanding.removeFirst();
+
+			responses++;
+
+			responses_received++;
+
+			if ( content_mode == CM_ERROR ){
+
+				int	retry_secs = -1;
+
+				if ( status == 503 ){
+
+						// webseeds return the retry delay as the content
+
+					retry_secs = retry_after;
+
+					if ( retry_secs < 0 ){
+
+						retry_secs = parseRetryAfter( error_body.toString());
+					}
+				}
+
+				String	message = "Connection failed: " + status_line;
+
+				if ( retry_secs >= 0 ){
+
+					message += ", Retry-After: " + retry_secs + " seconds";
+				}
+
+				if ( status >= 300 && status < 400 ){
+
+						// leave redirects to the blocking downloaders
+
+					usable = false;
+				}
+
+				for ( Segment segment: request.segments ){
+
+					Transfer	transfer = segment.transfer;
+
+					transfer.last_response					= status;
+					transfer.last_response_retry_after_secs	= retry_secs;
+
+					ExternalSeedException	error = new ExternalSeedException( message );
+
+					if ( status != 503 && ( status < 300 || status >= 400 )){
+
+						error.setPermanentFailure( true );
+					}
+
+					fail( transfer, error );
+				}
+			}else{
+
+				for ( int i=0;i<request.segments.size();i++){
+
+					Transfer	transfer = request.segments.get(i).transfer;
+
+					transfer.last_response = status;
+
+					if ( i >= segment_index ){
+
+						fail( transfer, new ExternalSeedException( "Connection failed: data too short" ));
+					}
+				}
+			}
+
+			state			= ST_HEADER;
+			current			= null;
+			error_body		= null;
+			last_activity	= SystemTime.getMonotonousTime();
+
+			if ( close_after ){
+
+				close( null );
+			}
+		}
+
+		private void
+		endOfStream()
+		{
+			if ( state == ST_BODY_CLOSE ){
+
+				responseComplete();
+
+				close( null );
+
+			}else if ( state == ST_HEADER && header_len == 0 ){
+
+					// server closed between responses - if it did so after the first one it is
+					// probably not expecting more than one request per connection
+
+				if ( responses == 1 && !outstanding.isEmpty()){
+
+					depth = 1;
+				}
+
+				close( null );
+
+			}else{
+
+				failed( "Connection failed: connection closed" );
+			}
+		}
+
+		private void
+		protocolError(
+			String		reason,
+			boolean		multi_range_related )
+		{
+			if ( multi_range_related && current != null && current.segments.size() > 1 ){
+
+				multi_range_ok = false;
+
+			}else{
+
+				usable = false;
+			}
+
+			failed( "Connection failed: " + reason );
+		}
+
+		private void
+		failed(
+			String		message )
+		{
+			close( message );
+		}
+
+			/**
+			 * Closes the connection, requests that haven't started being answered are queued again
+			 * unless this is an error and they can't be
+			 * @param error	null if this isn't an error
+			 */
+
+		private void
+		close(
+			String		error )
+		{
+			if ( closed ){
+
+				return;
+			}
+
+			closed = true;
+
+			connections.remove( this );
+
+			if ( key != null ){
+
+				key.cancel();
+			}
+
+			if ( channel != null ){
+
+				try{
+					channel.close();
+
+				}catch( Throwable e ){
+				}
+			}
+
+			List<Transfer>	requeue = new ArrayList<>();
+
+			for ( Request request: outstanding ){
+
+				for ( Segment segment: request.segments ){
+
+					Transfer	transfer = segment.transfer;
+
+					if ( transfer.finished || requeue.contains( transfer )){
+
+						continue;
+					}
+
+					if ( error != null && !connected ){
+
+						fail( transfer, connectFailure( transfer, error ));
+
+					}else if ( transfer.started || transfer.requeues >= MAX_REQUEUES ){
+
+						fail( transfer, new ExternalSeedException( error==null?"Connection failed: connection closed":error ));
+
+					}else{
+
+						transfer.requeues++;
+
+						transfer.segments_done = 0;
+
+						requeue.add( transfer );
+					}
+				}
+			}
+
+			outstanding.clear();
+
+			writes.clear();
+
+			queue.addAll( 0, requeue );
+
+			dispatch();
+		}
+	}
+}
@@ -22,11 +22,13 @@ package com.biglybt.plugin.rssgen;
 
 import java.io.*;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URLEncoder;
 import java.util.*;
 
 import com.biglybt.core.config.COConfigurationManager;
 import com.biglybt.core.networkmanager.admin.NetworkAdmin;
+import com.biglybt.core.stats.CoreMetrics;
 import com.biglybt.core.util.*;
 import com.biglybt.pif.PluginException;
 import com.biglybt.pif.PluginInterface;
@@ -52,6 +54,8 @@ RSSGeneratorPlugin
 	public static final int 	DEFAULT_PORT    = 6905;
 	public static final String	DEFAULT_ACCESS	= "all";
 
+	public static final String	METRICS_PROVIDER	= "metrics";
+
 	private static volatile RSSGeneratorPlugin		singleton;
 
 	private static boolean	loaded;
@@ -126,6 +130,48 @@ RSSGeneratorPlugin
 	    defaults.put( WebPlugin.PR_PAIRING_SID, "rss" );
 
 	    defaults.put( WebPlugin.PR_CONFIG_MODEL_PARAMS, new String[]{ ConfigSection.SECTION_ROOT, "rss" });
+
+	    registerProvider(
+	    	METRICS_PROVIDER,
+	    	new Provider()
+	    	{
+	    		@Override
+	    		public boolean
+	    		isEnabled()
+	    		{
+	    			return( true );
+	    		}
+
+	    		@Override
+	    		public boolean
+	    		generate(
+	    			TrackerWebPageRequest		request,
+	    			TrackerWebPageResponse		response )
+
+	    			throws IOException
+	    		{
+	    				// metrics are for local monitoring only, regardless of the access configured
+
+	    			InetSocketAddress	client = request.getClientAddress2();
+
+	    			if ( client == null || client.getAddress() == null || !client.getAddress().isLoopbackAddress()){
+
+	    				response.setReplyStatus( 403 );
+
+	    				return( true );
+	    			}
+
+	    			response.setContentType( CoreMetrics.CONTENT_TYPE );
+
+	    			PrintWriter pw = new PrintWriter( new OutputStreamWriter( response.getOutputStream(), "UTF-8" ));
+
+	    			CoreMetrics.writeOpenMetrics( pw );
+
+	    			pw.flush();
+
+	    			return( true );
+	    		}
+	    	});
 	}
 
 	public static RSSGeneratorPlugin
@@ -322,8 +322,6 @@ public class PeerFilesView
 				return;
 			}
 
-			boolean[] flags = pieces.flags;
-
 			int	first_piece = file.getFirstPieceNumber();
 
 			int	last_piece	= file.getLastPieceNumber();
@@ -332,7 +330,7 @@ public class PeerFilesView
 
 			for ( int i=first_piece;i<=last_piece;i++){
 
-				if ( flags[i] ){
+				if ( pieces.get( i )){
 
 					done++;
 				}
@@ -435,7 +433,6 @@ public class PeerFilesView
 				
 				BitFlags pieces = peer.getAvailable();
 
-				boolean[] flags = pieces==null?null:pieces.flags;
 				
 				int	firstPiece = file.getFirstPieceNumber();
 
@@ -443,11 +440,11 @@ public class PeerFilesView
 
 				int	done = 0;
 
-				if ( flags != null ){
+				if ( pieces != null ){
 					
 					for ( int i=firstPiece;i<=lastPiece;i++){
 	
-						if ( flags[i] ){
+						if ( pieces.get( i )){
 	
 							done++;
 						}
@@ -516,7 +513,7 @@ public class PeerFilesView
 					}
 					
 						
-					if ( flags != null ){
+					if ( pieces != null ){
 						
 						DiskManagerPiece[] 	dm_pieces 	= null;
 						PEPiece[] 			pe_pieces	= null;
@@ -672,7 +672,7 @@ public class PeerPieceMapView
 
 				BlockInfo newInfo = new BlockInfo();
 
-				newInfo.peerHas = peerHavePieces.flags[i];
+				newInfo.peerHas = peerHavePieces.get(i);
 				newInfo.showDown = i == iDLPieceID ? SHOW_BIG : i == iNextDLPieceID ? SHOW_SMALL : 0;
 				newInfo.showUp = i == peerNextRequestedPiece ? SHOW_BIG : Arrays.binarySearch(peerRequestedPieces, i) >= 0 ? SHOW_SMALL : 0;
 				newInfo.availNum = availability == null ? -1 : availability[i];
@@ -70,7 +70,7 @@ public class RemotePieceDistributionView extends PieceDistributionView {
 			if (avl == null)
 				hasPieces = null;
 			else
-				hasPieces = avl.flags;
+				hasPieces = avl.toBooleanArray();
 		} else
 		{
 			if (peer.isSeed())
@@ -61,9 +61,7 @@ public class PercentHaveTheyNeedItem
 			
 			if ( bf != null ){
 				
-				boolean[] peer_has = bf.flags;
-				
-				if ( peer_has != null ){
+				if ( bf.size() > 0 ){
 			
 						// we have to assume the peer wants everything as there is no way to
 						// figure out if they have skipped some files
@@ -81,7 +79,7 @@ public class PercentHaveTheyNeedItem
 								
 							we_have++;
 						
-							if ( !peer_has[i] ){
+							if ( !bf.get( i )){
 									
 								we_have_they_want++;
 							}
@@ -67,9 +67,7 @@ public class PercentHaveWeNeedItem
     				
     				if ( bf != null ){
     					
-    					boolean[] peer_has = bf.flags;
-    					
-    					if ( peer_has != null ){
+    					if ( bf.size() > 0 ){
     				
     						int we_have				= 0;
     						int we_need 			= 0;
@@ -91,7 +89,7 @@ public class PercentHaveWeNeedItem
 	
 										we_need++;
 										
-										if ( peer_has[i] ){
+										if ( bf.get( i )){
 											
 											they_have_we_need++;
 	    								}
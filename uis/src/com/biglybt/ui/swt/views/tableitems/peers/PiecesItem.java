@@ -274,16 +274,16 @@ public class PiecesItem
 					reconnect	= false;
 				}
 
-				if (established && peerHave != null && peerHave.flags.length > 0) {
+				if (established && peerHave != null && peerHave.size() > 0) {
 					if (imageBuffer == null || imageBuffer.length != drawWidth) {
 						imageBuffer = new int[drawWidth];
 					}
 					peer.setData("PiecesActive", true);
-					final boolean available[] = peerHave.flags;
+					final BitFlags available = peerHave;
 					try {
 
 						int nbComplete = 0;
-						int nbPieces = available.length;
+						int nbPieces = available.size();
 
 						DiskManager disk_manager = peer.getManager().getDiskManager();
 						DiskManagerPiece[] pieces = disk_manager == null ? null
@@ -312,7 +312,7 @@ public class PiecesItem
 							} else {
 								int nbAvailable = 0;
 								for (int j = a0; j < a1; j++) {
-									if (available[j]) {
+									if (available.get(j)) {
 										if (pieces == null || !pieces[j].isDone()) {
 											nbNeeded++;
 										}